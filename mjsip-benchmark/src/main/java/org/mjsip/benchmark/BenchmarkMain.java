@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.benchmark;
+
+import java.io.IOException;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the micro-benchmarks of the SIP stack.
+ *
+ * <p>
+ * Accepts the usual JMH command line options. In contrast to the plain JMH main, allocation rates
+ * are always measured with the GC profiler, and results are written to <code>jmh-result.json</code>
+ * unless another result file or format is given. Build and run with:
+ * </p>
+ *
+ * <pre>
+ * mvn package -pl mjsip-benchmark -am -DskipTests
+ * java -jar mjsip-benchmark/target/benchmarks.jar [regexp] [JMH options]
+ * </pre>
+ */
+public class BenchmarkMain {
+
+	/** The main method. */
+	public static void main(String[] args) throws RunnerException, IOException {
+		CommandLineOptions cmd;
+		try {
+			cmd = new CommandLineOptions(args);
+		} catch (CommandLineOptionException ex) {
+			System.err.println("Invalid command line: " + ex.getMessage());
+			System.exit(1);
+			return;
+		}
+
+		if (cmd.shouldHelp() || cmd.shouldList() || cmd.shouldListWithParams() || cmd.shouldListProfilers()
+				|| cmd.shouldListResultFormats()) {
+			org.openjdk.jmh.Main.main(args);
+			return;
+		}
+
+		ChainedOptionsBuilder options = new OptionsBuilder().parent(cmd);
+		if (cmd.getProfilers().stream().noneMatch(p -> p.getKlass().equals(GCProfiler.class.getName())
+				|| p.getKlass().equalsIgnoreCase("gc"))) {
+			options.addProfiler(GCProfiler.class);
+		}
+		if (!cmd.getResultFormat().hasValue()) {
+			options.resultFormat(ResultFormatType.JSON);
+		}
+		if (!cmd.getResult().hasValue()) {
+			options.result("jmh-result." + cmd.getResultFormat().orElse(ResultFormatType.JSON).toString().toLowerCase());
+		}
+
+		new Runner(options.build()).run();
+	}
+
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.mjsip.rtp.AmrRtpPayloadFormat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.zoolu.sound.codec.AMR;
+import org.zoolu.sound.codec.G711;
+import org.zoolu.sound.codec.G726;
+import org.zoolu.sound.codec.G726_32;
+
+/**
+ * Encoding and decoding of one 20ms audio frame (160 samples at 8kHz).
+ *
+ * <p>
+ * The AMR codec itself is a native library that is not part of this project. Only the pure Java
+ * RTP payload formatting of AMR frames is measured.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+
+	private static final int SAMPLES = 160;
+
+	private final byte[] _linear = new byte[2 * SAMPLES];
+
+	private final byte[] _law = new byte[SAMPLES];
+
+	private final byte[] _g726 = new byte[SAMPLES / 2];
+
+	private final byte[] _out = new byte[2 * SAMPLES];
+
+	private final G726_32 _encoder = new G726_32();
+
+	private final G726_32 _decoder = new G726_32();
+
+	private final AmrRtpPayloadFormat _amrFormat = new AmrRtpPayloadFormat(true);
+
+	private final byte[] _amrFrame = new byte[AMR.frameSize(AMR.M7_1220)];
+
+	private final byte[] _amrPayload = new byte[AMR.frameSize(AMR.M7_1220) + 1];
+
+	/**
+	 * Creates a frame of a 440Hz tone and its encoded versions.
+	 */
+	@Setup
+	public void setUp() {
+		for (int n = 0; n < SAMPLES; n++) {
+			int sample = (int) (8000 * Math.sin(2 * Math.PI * 440 * n / 8000));
+			_linear[2 * n] = (byte) sample;
+			_linear[2 * n + 1] = (byte) (sample >> 8);
+			_law[n] = (byte) G711.linear2alaw(sample);
+		}
+		new G726_32().encode(_linear, 0, _linear.length, G726.AUDIO_ENCODING_LINEAR, _g726, 0);
+
+		_amrFrame[0] = (byte) ((AMR.M7_1220 << 3) | 0x04);
+		for (int n = 1; n < _amrFrame.length; n++) {
+			_amrFrame[n] = (byte) (n * 37);
+		}
+	}
+
+	/**
+	 * Encodes a frame to G.711 A-law.
+	 */
+	@Benchmark
+	public byte[] alawEncode() {
+		byte[] linear = _linear;
+		byte[] out = _out;
+		for (int n = 0; n < SAMPLES; n++) {
+			out[n] = (byte) G711.linear2alaw((short) ((linear[2 * n] & 0xFF) | (linear[2 * n + 1] << 8)));
+		}
+		return out;
+	}
+
+	/**
+	 * Decodes a G.711 A-law frame.
+	 */
+	@Benchmark
+	public byte[] alawDecode() {
+		byte[] law = _law;
+		byte[] out = _out;
+		for (int n = 0; n < SAMPLES; n++) {
+			int sample = G711.alaw2linear(law[n] & 0xFF);
+			out[2 * n] = (byte) sample;
+			out[2 * n + 1] = (byte) (sample >> 8);
+		}
+		return out;
+	}
+
+	/**
+	 * Encodes a frame to G.711 u-law.
+	 */
+	@Benchmark
+	public byte[] ulawEncode() {
+		byte[] linear = _linear;
+		byte[] out = _out;
+		for (int n = 0; n < SAMPLES; n++) {
+			out[n] = (byte) G711.linear2ulaw((short) ((linear[2 * n] & 0xFF) | (linear[2 * n + 1] << 8)));
+		}
+		return out;
+	}
+
+	/**
+	 * Decodes a G.711 u-law frame.
+	 */
+	@Benchmark
+	public byte[] ulawDecode() {
+		byte[] law = _law;
+		byte[] out = _out;
+		for (int n = 0; n < SAMPLES; n++) {
+			int sample = G711.ulaw2linear(law[n] & 0xFF);
+			out[2 * n] = (byte) sample;
+			out[2 * n + 1] = (byte) (sample >> 8);
+		}
+		return out;
+	}
+
+	/**
+	 * Encodes a frame to G.726 at 32kbit/s.
+	 */
+	@Benchmark
+	public int g726Encode() {
+		return _encoder.encode(_linear, 0, _linear.length, G726.AUDIO_ENCODING_LINEAR, _out, 0);
+	}
+
+	/**
+	 * Decodes a G.726 frame at 32kbit/s.
+	 */
+	@Benchmark
+	public int g726Decode() {
+		return _decoder.decode(_g726, 0, _g726.length, G726.AUDIO_ENCODING_LINEAR, _out, 0);
+	}
+
+	/**
+	 * Packs an AMR 12.2 frame into a bandwidth-efficient RTP payload and unpacks it again.
+	 */
+	@Benchmark
+	public int amrPayloadFormat() throws Exception {
+		byte[] payload = _amrPayload;
+		System.arraycopy(_amrFrame, 0, payload, 0, _amrFrame.length);
+		int len = _amrFormat.setRtpPayloadFormat(payload, 0, _amrFrame.length);
+		return _amrFormat.removeRtpPayloadFormat(payload, 0, len);
+	}
+
+}
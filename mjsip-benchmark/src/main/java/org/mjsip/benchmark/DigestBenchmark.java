@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.mjsip.sip.authentication.DigestAuthentication;
+import org.mjsip.sip.authentication.DigestVerifier;
+import org.mjsip.sip.header.AuthorizationHeader;
+import org.mjsip.sip.header.WwwAuthenticateHeader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.zoolu.util.MD5;
+
+/**
+ * Computation and verification of digest authentication responses.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DigestBenchmark {
+
+	private static final String USER = "alice";
+
+	private static final String REALM = "atlanta.example.com";
+
+	private static final String PASSWD = "secret";
+
+	private static final String URI = "sip:bob@biloxi.example.com";
+
+	private final byte[] _data = ("alice:atlanta.example.com:secret:84a4cc6f3082121f32b42a2187831a9e")
+		.getBytes(StandardCharsets.UTF_8);
+
+	private WwwAuthenticateHeader _challenge;
+
+	private AuthorizationHeader _authorization;
+
+	private byte[] _ha1;
+
+	/**
+	 * Creates a challenge and the matching credentials.
+	 */
+	@Setup
+	public void setUp() {
+		_challenge = new WwwAuthenticateHeader(SampleMessages.CHALLENGE);
+		_authorization = new DigestAuthentication("INVITE", URI, _challenge, "auth", null, 1, null, USER, PASSWD)
+			.getAuthorizationHeader();
+		_ha1 = DigestVerifier.ha1(USER, REALM, PASSWD);
+	}
+
+	/**
+	 * Hashes a short string with the MD5 implementation of the stack.
+	 */
+	@Benchmark
+	public byte[] md5() {
+		return new MD5(_data).doFinal();
+	}
+
+	/**
+	 * Answers a challenge on the client side.
+	 */
+	@Benchmark
+	public AuthorizationHeader authorize() {
+		return new DigestAuthentication("INVITE", URI, _challenge, "auth", null, 1, null, USER, PASSWD)
+			.getAuthorizationHeader();
+	}
+
+	/**
+	 * Checks a response on the server side with the clear-text password.
+	 */
+	@Benchmark
+	public boolean checkPassword() {
+		return new DigestAuthentication("INVITE", _authorization, null, PASSWD).checkResponse();
+	}
+
+	/**
+	 * Checks a response on the server side with a precomputed HA1 value.
+	 */
+	@Benchmark
+	public boolean checkHa1() {
+		return DigestVerifier.checkResponse("INVITE", _authorization, null, _ha1);
+	}
+
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.mjsip.sip.address.NameAddress;
+import org.mjsip.sip.address.SipURI;
+import org.mjsip.sip.address.SipURIParser;
+import org.mjsip.sip.header.ViaHeader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Parsing of URIs and individual header values.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HeaderBenchmark {
+
+	private String _uri = SampleMessages.URI;
+
+	private String _via = SampleMessages.VIA;
+
+	private String _nameAddress = "\"Alice\" <" + SampleMessages.URI + ">";
+
+	/**
+	 * Parses a SIP URI with parameters.
+	 */
+	@Benchmark
+	public SipURI parseUri() {
+		return new SipURIParser(_uri).parse();
+	}
+
+	/**
+	 * Parses a name address with display name.
+	 */
+	@Benchmark
+	public NameAddress parseNameAddress() {
+		return NameAddress.parse(_nameAddress);
+	}
+
+	/**
+	 * Parses a Via header value and reads the values used for routing responses.
+	 */
+	@Benchmark
+	public void parseVia(Blackhole bh) {
+		ViaHeader via = ViaHeader.parse(_via);
+		bh.consume(via.getHost());
+		bh.consume(via.getPort());
+		bh.consume(via.getBranch());
+		bh.consume(via.getReceived());
+		bh.consume(via.getRport());
+	}
+
+}
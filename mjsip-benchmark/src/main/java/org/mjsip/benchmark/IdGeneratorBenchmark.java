@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.mjsip.sip.header.ViaHeader;
+import org.mjsip.sip.provider.IdGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Generation of branches, tags and Call-IDs with {@link IdGenerator} from all available cores
+ * concurrently.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(Threads.MAX)
+public class IdGeneratorBenchmark {
+
+	/**
+	 * Creates a random Via branch.
+	 */
+	@Benchmark
+	public String branch() {
+		return IdGenerator.randomHex(ViaHeader.MAGIC_COOKIE, 8);
+	}
+
+	/**
+	 * Creates a random From/To tag.
+	 */
+	@Benchmark
+	public String tag() {
+		return IdGenerator.randomDecimal(12);
+	}
+
+	/**
+	 * Creates a random Call-ID.
+	 */
+	@Benchmark
+	public String callId() {
+		return IdGenerator.randomDecimal(12, '@', "192.168.178.1");
+	}
+
+	/**
+	 * Derives a tag for a stateless response from the transaction of a request.
+	 */
+	@Benchmark
+	public String statelessTag() {
+		long hash = IdGenerator.hashStart();
+		hash = IdGenerator.hash(hash, "1234567890@192.168.178.1");
+		hash = IdGenerator.hash(hash, "987654321012");
+		hash = IdGenerator.hash(hash, 1);
+		hash = IdGenerator.hash(hash, "INVITE");
+		hash = IdGenerator.hash(hash, "z9hG4bK3f2a9c01");
+		return IdGenerator.hashHex("", hash, 16);
+	}
+
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.mjsip.sip.message.SipMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Parsing and serialization of complete {@link SipMessage}s.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageBenchmark {
+
+	private byte[] _invite;
+
+	private byte[] _ok;
+
+	private SipMessage _parsedInvite;
+
+	/**
+	 * Prepares the raw and parsed messages.
+	 */
+	@Setup
+	public void setUp() {
+		_invite = SampleMessages.bytes(SampleMessages.INVITE);
+		_ok = SampleMessages.bytes(SampleMessages.OK);
+		_parsedInvite = new SipMessage(_invite, 0, _invite.length);
+	}
+
+	/**
+	 * Creates a request from received bytes.
+	 */
+	@Benchmark
+	public SipMessage createInvite() {
+		return new SipMessage(_invite, 0, _invite.length);
+	}
+
+	/**
+	 * Creates a request from received bytes and accesses the headers needed for dispatching it.
+	 */
+	@Benchmark
+	public void parseInvite(Blackhole bh) {
+		SipMessage msg = new SipMessage(_invite, 0, _invite.length);
+		bh.consume(msg.getRequestLine());
+		bh.consume(msg.getViaHeader());
+		bh.consume(msg.getFromHeader());
+		bh.consume(msg.getToHeader());
+		bh.consume(msg.getCallIdHeader());
+		bh.consume(msg.getCSeqHeader());
+		bh.consume(msg.getContactHeader());
+		bh.consume(msg.getStringBody());
+	}
+
+	/**
+	 * Creates a response from received bytes and accesses the headers needed for matching it to a
+	 * transaction.
+	 */
+	@Benchmark
+	public void parseResponse(Blackhole bh) {
+		SipMessage msg = new SipMessage(_ok, 0, _ok.length);
+		bh.consume(msg.getStatusLine());
+		bh.consume(msg.getViaHeader());
+		bh.consume(msg.getCallIdHeader());
+		bh.consume(msg.getCSeqHeader());
+		bh.consume(msg.getToHeader());
+	}
+
+	/**
+	 * Serializes a request for sending.
+	 */
+	@Benchmark
+	public byte[] getBytes() {
+		return _parsedInvite.getBytes();
+	}
+
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.mjsip.rtp.RtpPacket;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Reading and writing the header fields of {@link RtpPacket}s carrying a 20ms G.711 frame.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RtpBenchmark {
+
+	private final byte[] _payload = new byte[160];
+
+	private byte[] _received;
+
+	private RtpPacket _packet;
+
+	private int _seqn;
+
+	/**
+	 * Creates a packet as received from the network.
+	 */
+	@Setup
+	public void setUp() {
+		RtpPacket packet = new RtpPacket(8, 0x12345678L, 1, 160, _payload, 0, _payload.length);
+		_received = new byte[packet.getPacketLength()];
+		System.arraycopy(packet.getPacketBuffer(), packet.getPacketOffset(), _received, 0, _received.length);
+		_packet = new RtpPacket(new byte[_received.length], _received.length);
+	}
+
+	/**
+	 * Wraps a received datagram and reads the header fields inspected by a receiver.
+	 */
+	@Benchmark
+	public void readHeader(Blackhole bh) {
+		RtpPacket packet = new RtpPacket(_received, _received.length);
+		bh.consume(packet.getVersion());
+		bh.consume(packet.getPayloadType());
+		bh.consume(packet.getSequenceNumber());
+		bh.consume(packet.getTimestamp());
+		bh.consume(packet.getSsrc());
+		bh.consume(packet.hasMarker());
+		bh.consume(packet.getHeaderLength());
+		bh.consume(packet.getPayloadLength());
+	}
+
+	/**
+	 * Fills a reused packet with the next frame, as a sender does.
+	 */
+	@Benchmark
+	public RtpPacket writePacket() {
+		int seqn = _seqn++;
+		RtpPacket packet = _packet;
+		packet.setHeader(8, 0x12345678L, seqn & 0xFFFF, 160L * seqn);
+		packet.setPayload(_payload, 0, _payload.length);
+		return packet;
+	}
+
+	/**
+	 * Creates a new packet for each frame.
+	 */
+	@Benchmark
+	public RtpPacket createPacket() {
+		int seqn = _seqn++;
+		return new RtpPacket(8, 0x12345678L, seqn & 0xFFFF, 160L * seqn, _payload, 0, _payload.length);
+	}
+
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.benchmark;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Typical SIP messages used as input for the benchmarks.
+ */
+final class SampleMessages {
+
+	/** Branch of the top-most Via header of {@link #INVITE}. */
+	static final String BRANCH = "z9hG4bK776asdhds";
+
+	/** Call-ID of {@link #INVITE}. */
+	static final String CALL_ID = "a84b4c76e66710@pc33.atlanta.example.com";
+
+	/** An INVITE request with SDP offer, as received from a proxy. */
+	static final String INVITE = "INVITE sip:bob@biloxi.example.com SIP/2.0\r\n"
+			+ "Via: SIP/2.0/UDP pc33.atlanta.example.com:5060;branch=" + BRANCH + ";rport\r\n"
+			+ "Via: SIP/2.0/UDP bigbox3.site3.atlanta.example.com;branch=z9hG4bK77ef4c2312983.1;received=192.0.2.101\r\n"
+			+ "Max-Forwards: 70\r\n"
+			+ "Record-Route: <sip:proxy.atlanta.example.com;lr>\r\n"
+			+ "To: Bob <sip:bob@biloxi.example.com>\r\n"
+			+ "From: Alice <sip:alice@atlanta.example.com>;tag=1928301774\r\n"
+			+ "Call-ID: " + CALL_ID + "\r\n"
+			+ "CSeq: 314159 INVITE\r\n"
+			+ "Contact: <sip:alice@pc33.atlanta.example.com;transport=udp>\r\n"
+			+ "Allow: INVITE, ACK, CANCEL, OPTIONS, BYE, REFER, NOTIFY, MESSAGE, INFO\r\n"
+			+ "Supported: replaces, timer\r\n"
+			+ "User-Agent: mjsip benchmark\r\n"
+			+ "Content-Type: application/sdp\r\n"
+			+ "Content-Length: 224\r\n"
+			+ "\r\n"
+			+ "v=0\r\n"
+			+ "o=alice 2890844526 2890844526 IN IP4 pc33.atlanta.example.com\r\n"
+			+ "s=-\r\n"
+			+ "c=IN IP4 192.0.2.101\r\n"
+			+ "t=0 0\r\n"
+			+ "m=audio 49172 RTP/AVP 0 8 101\r\n"
+			+ "a=rtpmap:0 PCMU/8000\r\n"
+			+ "a=rtpmap:8 PCMA/8000\r\n"
+			+ "a=rtpmap:101 telephone-event/8000\r\n"
+			+ "a=sendrecv\r\n";
+
+	/** The 200 response to {@link #INVITE}. */
+	static final String OK = "SIP/2.0 200 OK\r\n"
+			+ "Via: SIP/2.0/UDP pc33.atlanta.example.com:5060;branch=" + BRANCH + ";rport=5060\r\n"
+			+ "To: Bob <sip:bob@biloxi.example.com>;tag=a6c85cf\r\n"
+			+ "From: Alice <sip:alice@atlanta.example.com>;tag=1928301774\r\n"
+			+ "Call-ID: " + CALL_ID + "\r\n"
+			+ "CSeq: 314159 INVITE\r\n"
+			+ "Contact: <sip:bob@192.0.2.4>\r\n"
+			+ "Content-Length: 0\r\n"
+			+ "\r\n";
+
+	/** A SIP URI with user, port and parameters. */
+	static final String URI = "sip:alice;day=tuesday@atlanta.example.com:5061;transport=tcp;lr;maddr=192.0.2.1";
+
+	/** The value of a Via header with the usual parameters. */
+	static final String VIA = "SIP/2.0/UDP pc33.atlanta.example.com:5060;branch=" + BRANCH
+			+ ";received=192.0.2.101;rport=5060";
+
+	/** The value of a digest challenge. */
+	static final String CHALLENGE = "Digest realm=\"atlanta.example.com\", qop=\"auth\", "
+			+ "nonce=\"84a4cc6f3082121f32b42a2187831a9e\", opaque=\"\", algorithm=MD5";
+
+	private SampleMessages() {
+		// Constants only.
+	}
+
+	/**
+	 * The given message as received from the network.
+	 */
+	static byte[] bytes(String message) {
+		return message.getBytes(StandardCharsets.ISO_8859_1);
+	}
+
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.mjsip.server.sbc.SipMangler;
+import org.mjsip.sip.message.SipMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Rewriting of messages traversing the session border controller with {@link SipMangler}, on raw
+ * header values compared to parsing and rebuilding headers and bodies.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SipManglerBenchmark {
+
+	private static final String HOST = "192.0.2.2";
+
+	private static final int PORT = 5060;
+
+	private static final String[] MEDIA = { "audio", "video" };
+
+	private static final int[] PORTS = { 40000, 40002 };
+
+	private static final String[] CORPUS = {
+		"INVITE sip:bob@biloxi.example.com SIP/2.0\r\n"
+			+ "Via: SIP/2.0/UDP 10.0.0.1:5060;branch=z9hG4bK74bf9\r\n"
+			+ "Max-Forwards: 70\r\n"
+			+ "From: Alice <sip:alice@atlanta.example.com>;tag=9fxced76sl\r\n"
+			+ "To: Bob <sip:bob@biloxi.example.com>\r\n"
+			+ "Call-ID: 3848276298220188511@atlanta.example.com\r\n"
+			+ "CSeq: 1 INVITE\r\n"
+			+ "Contact: <sip:alice@10.0.0.1:5060;transport=udp>\r\n"
+			+ "Content-Type: application/sdp\r\n"
+			+ "Content-Length: 222\r\n"
+			+ "\r\n"
+			+ "v=0\r\n"
+			+ "o=alice 2890844526 2890844526 IN IP4 10.0.0.1\r\n"
+			+ "s=-\r\n"
+			+ "c=IN IP4 10.0.0.1\r\n"
+			+ "t=0 0\r\n"
+			+ "m=audio 49172 RTP/AVP 0 8 101\r\n"
+			+ "a=rtpmap:0 PCMU/8000\r\n"
+			+ "a=rtpmap:8 PCMA/8000\r\n"
+			+ "a=rtpmap:101 telephone-event/8000\r\n"
+			+ "a=fmtp:101 0-15\r\n"
+			+ "a=ptime:20\r\n",
+
+		"SIP/2.0 200 OK\r\n"
+			+ "Via: SIP/2.0/UDP 10.0.0.1:5060;branch=z9hG4bK74bf9;received=10.0.0.1\r\n"
+			+ "From: Alice <sip:alice@atlanta.example.com>;tag=9fxced76sl\r\n"
+			+ "To: Bob <sip:bob@biloxi.example.com>;tag=8321234356\r\n"
+			+ "Call-ID: 3848276298220188511@atlanta.example.com\r\n"
+			+ "CSeq: 1 INVITE\r\n"
+			+ "Contact: \"Bob\" <sip:bob@192.168.1.7:5062>\r\n"
+			+ "Content-Type: application/sdp\r\n"
+			+ "Content-Length: 221\r\n"
+			+ "\r\n"
+			+ "v=0\r\n"
+			+ "o=bob 2808844564 2808844564 IN IP4 192.168.1.7\r\n"
+			+ "s=-\r\n"
+			+ "c=IN IP4 192.168.1.7\r\n"
+			+ "t=0 0\r\n"
+			+ "m=audio 3456 RTP/AVP 0 101\r\n"
+			+ "a=rtpmap:0 PCMU/8000\r\n"
+			+ "a=rtpmap:101 telephone-event/8000\r\n"
+			+ "m=video 3458 RTP/AVP 31\r\n"
+			+ "a=rtpmap:31 H261/90000\r\n",
+
+		"ACK sip:ZMjSBC2U-bobZAT-192.168.1.7ZPORT-5062@192.0.2.2:5060 SIP/2.0\r\n"
+			+ "Via: SIP/2.0/UDP 10.0.0.1:5060;branch=z9hG4bK74bfa\r\n"
+			+ "Max-Forwards: 70\r\n"
+			+ "From: Alice <sip:alice@atlanta.example.com>;tag=9fxced76sl\r\n"
+			+ "To: Bob <sip:bob@biloxi.example.com>;tag=8321234356\r\n"
+			+ "Call-ID: 3848276298220188511@atlanta.example.com\r\n"
+			+ "CSeq: 1 ACK\r\n"
+			+ "Content-Length: 0\r\n"
+			+ "\r\n",
+
+		"BYE sip:ZMjSBC2U-bobZAT-192.168.1.7ZPORT-5062@192.0.2.2:5060 SIP/2.0\r\n"
+			+ "Via: SIP/2.0/UDP 10.0.0.1:5060;branch=z9hG4bK74bfb\r\n"
+			+ "Max-Forwards: 70\r\n"
+			+ "From: Alice <sip:alice@atlanta.example.com>;tag=9fxced76sl\r\n"
+			+ "To: Bob <sip:bob@biloxi.example.com>;tag=8321234356\r\n"
+			+ "Call-ID: 3848276298220188511@atlanta.example.com\r\n"
+			+ "CSeq: 2 BYE\r\n"
+			+ "Contact: <sip:alice@10.0.0.1:5060>\r\n"
+			+ "Content-Length: 0\r\n"
+			+ "\r\n",
+	};
+
+	/**
+	 * Index of the message in the corpus: INVITE, 200 OK, ACK, BYE.
+	 */
+	@Param({ "0", "1", "2", "3" })
+	public int _message;
+
+	private SipMessage _original;
+
+	/**
+	 * Parses the message.
+	 */
+	@Setup
+	public void setUp() {
+		_original = new SipMessage(CORPUS[_message]);
+	}
+
+	/**
+	 * Rewrites a copy of the message on raw header values.
+	 */
+	@Benchmark
+	public SipMessage inPlace() {
+		SipMessage msg = new SipMessage(_original);
+		if (msg.isRequest()) {
+			msg = SipMangler.unmangleRequestLine(msg);
+		}
+		msg = SipMangler.mangleContact(msg, HOST, PORT);
+		return SipMangler.mangleBody(msg, HOST, MEDIA, PORTS);
+	}
+
+	/**
+	 * Rewrites a copy of the message by parsing and rebuilding headers and body.
+	 */
+	@Benchmark
+	public SipMessage parsed() {
+		SipMessage msg = new SipMessage(_original);
+		if (msg.isRequest()) {
+			msg = SipMangler.unmangleRequestLineParsed(msg);
+		}
+		msg = SipMangler.mangleContactParsed(msg, HOST, PORT);
+		return SipMangler.mangleBodyParsed(msg, HOST, MEDIA, PORTS);
+	}
+
+}
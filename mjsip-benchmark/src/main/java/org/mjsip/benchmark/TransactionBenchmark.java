@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.mjsip.sip.message.SipMessage;
+import org.mjsip.sip.provider.SipConfig;
+import org.mjsip.sip.provider.SipId;
+import org.mjsip.sip.provider.SipProvider;
+import org.mjsip.sip.provider.SipProviderListener;
+import org.mjsip.time.ConfiguredScheduler;
+import org.mjsip.time.SchedulerConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Computation of transaction and dialog identifiers and dispatching of received messages to the
+ * listeners registered with a {@link SipProvider}.
+ *
+ * <p>
+ * The provider is created without transports, messages are passed directly to
+ * {@link SipProvider#onReceivedMessage(org.mjsip.sip.provider.SipTransport, SipMessage)} as a
+ * transport would do after parsing.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransactionBenchmark {
+
+	/**
+	 * Number of other transactions registered with the provider.
+	 */
+	@Param({ "10", "10000" })
+	public int _transactions;
+
+	private SipProvider _sipProvider;
+
+	private SipMessage _invite;
+
+	private SipMessage _ok;
+
+	private Blackhole _bh;
+
+	/**
+	 * Creates the provider and registers listeners for the given number of transactions.
+	 */
+	@Setup(Level.Trial)
+	public void setUp(Blackhole bh) {
+		_bh = bh;
+
+		SipConfig sipConfig = new SipConfig();
+		sipConfig.setViaAddrIPv4("127.0.0.1");
+		sipConfig.setTransportProtocols(new String[0]);
+		sipConfig.normalize();
+		_sipProvider = new SipProvider(sipConfig, new ConfiguredScheduler(new SchedulerConfig()));
+
+		SipProviderListener listener = this::onReceivedMessage;
+		for (int n = 0; n < _transactions; n++) {
+			_sipProvider.addSelectiveListener(SipId.createTransactionId(n % 2 == 0, n + SampleMessages.CALL_ID, n,
+					"INVITE", "pc33.atlanta.example.com:5060", "z9hG4bK" + n), listener);
+		}
+
+		_invite = received(SampleMessages.INVITE);
+		_ok = received(SampleMessages.OK);
+
+		_sipProvider.addSelectiveListener(SipId.createMethodId("INVITE"), listener);
+		_sipProvider.addSelectiveListener(SipId.createTransactionClientId(_ok), listener);
+	}
+
+	/**
+	 * Stops the provider.
+	 */
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		_sipProvider.halt();
+	}
+
+	private static SipMessage received(String message) {
+		byte[] data = SampleMessages.bytes(message);
+		SipMessage result = new SipMessage(data, 0, data.length);
+		result.setTransportProtocol(SipProvider.PROTO_UDP);
+		result.setRemoteAddress("192.0.2.101");
+		result.setRemotePort(5060);
+		return result;
+	}
+
+	private void onReceivedMessage(SipProvider sipProvider, SipMessage message) {
+		_bh.consume(message);
+	}
+
+	/**
+	 * Computes the client transaction identifier of a response.
+	 */
+	@Benchmark
+	public SipId transactionId() {
+		return SipId.createTransactionId(true, _ok);
+	}
+
+	/**
+	 * Computes the dialog identifier of a request.
+	 */
+	@Benchmark
+	public SipId dialogId() {
+		return SipId.createDialogId(_invite);
+	}
+
+	/**
+	 * Dispatches a response to its client transaction.
+	 */
+	@Benchmark
+	public void dispatchResponse() {
+		_sipProvider.onReceivedMessage(null, _ok);
+	}
+
+	/**
+	 * Dispatches a new request to the listener of its method after missing the transaction and
+	 * dialog lookup.
+	 */
+	@Benchmark
+	public void dispatchRequest() {
+		_sipProvider.onReceivedMessage(null, _invite);
+	}
+
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.benchmark;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.mjsip.rtp.RtpPacket;
+import org.mjsip.rtp.RtpSocket;
+import org.mjsip.sip.message.SipMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.zoolu.net.ByteBufferPool;
+import org.zoolu.net.IpAddress;
+import org.zoolu.net.SocketAddress;
+import org.zoolu.net.UdpPacket;
+import org.zoolu.net.UdpSocket;
+
+/**
+ * Sending SIP messages and RTP packets over the loopback interface to a socket that never reads.
+ *
+ * <p>
+ * Compares sending through freshly allocated arrays and {@link UdpPacket}s with sending through
+ * pooled direct buffers. Run with the GC profiler to compare the allocation rates.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UdpSendBenchmark {
+
+	private static final int BURST = 8;
+
+	private UdpSocket _sink;
+
+	private UdpSocket _socket;
+
+	private IpAddress _address;
+
+	private int _port;
+
+	private SipMessage _invite;
+
+	private RtpSocket _rtpSocket;
+
+	private RtpPacket[] _burst;
+
+	/**
+	 * Opens the sockets and prepares the messages.
+	 */
+	@Setup
+	public void setUp() throws IOException {
+		_address = new IpAddress(InetAddress.getLoopbackAddress());
+		_sink = new UdpSocket(0, _address);
+		_port = _sink.getLocalPort();
+		_socket = new UdpSocket(0, _address);
+
+		byte[] invite = SampleMessages.bytes(SampleMessages.INVITE);
+		_invite = new SipMessage(invite, 0, invite.length);
+
+		_rtpSocket = new RtpSocket(_socket, new SocketAddress(_address, _port));
+		_burst = new RtpPacket[BURST];
+		byte[] payload = new byte[160];
+		for (int n = 0; n < BURST; n++) {
+			_burst[n] = new RtpPacket(8, 0x12345678L, n, 160L * n, payload, 0, payload.length);
+		}
+	}
+
+	/**
+	 * Closes the sockets.
+	 */
+	@TearDown
+	public void tearDown() {
+		_rtpSocket.close();
+		_socket.close();
+		_sink.close();
+	}
+
+	/**
+	 * Serializes a message to a new array and sends it in a new packet.
+	 */
+	@Benchmark
+	public void sendMessageBytes() throws IOException {
+		byte[] data = _invite.getBytes();
+		UdpPacket packet = new UdpPacket(data, data.length);
+		packet.setIpAddress(_address);
+		packet.setPort(_port);
+		_socket.send(packet);
+	}
+
+	/**
+	 * Serializes a message into a pooled direct buffer and sends it through the channel.
+	 */
+	@Benchmark
+	public void sendMessagePooled() throws IOException {
+		ByteBuffer buffer = ByteBufferPool.DATAGRAMS.acquire();
+		try {
+			_invite.writeTo(buffer);
+			buffer.flip();
+			_socket.send(buffer, new InetSocketAddress(_address.getInetAddress(), _port));
+		} finally {
+			ByteBufferPool.DATAGRAMS.release(buffer);
+		}
+	}
+
+	/**
+	 * Sends a burst of RTP packets, each in a new {@link UdpPacket}.
+	 */
+	@Benchmark
+	public void sendRtpPackets() throws IOException {
+		for (RtpPacket rtp : _burst) {
+			UdpPacket packet = new UdpPacket(rtp.getPacketBuffer(), rtp.getPacketOffset(), rtp.getPacketLength());
+			packet.setIpAddress(_address);
+			packet.setPort(_port);
+			_socket.send(packet);
+		}
+	}
+
+	/**
+	 * Sends a burst of RTP packets through the batched {@link RtpSocket} API.
+	 */
+	@Benchmark
+	public void sendRtpBatch() throws IOException {
+		_rtpSocket.send(_burst, 0, BURST);
+	}
+
+}
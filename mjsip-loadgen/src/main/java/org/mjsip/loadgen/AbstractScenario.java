@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.loadgen;
+
+import org.mjsip.sip.address.NameAddress;
+import org.mjsip.sip.address.SipURI;
+import org.mjsip.sip.message.SipMessage;
+import org.mjsip.sip.provider.SipProvider;
+import org.mjsip.sip.transaction.TransactionClient;
+import org.mjsip.sip.transaction.TransactionClientListener;
+import org.zoolu.net.AddressType;
+
+/**
+ * Base class for {@link Scenario}s addressing users in the domain of the server under test.
+ */
+public abstract class AbstractScenario implements Scenario {
+
+	/** The provider to send requests with. */
+	protected final SipProvider _sipProvider;
+
+	/** The load options. */
+	protected final LoadConfig _config;
+
+	private final String _host;
+
+	private final int _port;
+
+	/**
+	 * Creates an {@link AbstractScenario}.
+	 *
+	 * @param sipProvider
+	 *        The provider to send requests with.
+	 * @param config
+	 *        The load options.
+	 */
+	protected AbstractScenario(SipProvider sipProvider, LoadConfig config) {
+		_sipProvider = sipProvider;
+		_config = config;
+
+		String target = config.getTarget();
+		if (target == null || target.isBlank()) {
+			_host = sipProvider.getViaAddress();
+			_port = sipProvider.getPort();
+		} else {
+			SipURI uri = SipURI.parseSipURI("sip:" + target);
+			_host = uri.getHost();
+			_port = uri.getPort();
+		}
+	}
+
+	/**
+	 * The user name of the user with the given number.
+	 */
+	protected String userName(int user) {
+		return _config.getUserPrefix() + (user % Math.max(1, _config.getUsers()));
+	}
+
+	/**
+	 * The address of the user with the given number in the domain of the server under test.
+	 */
+	protected NameAddress userAddress(int user) {
+		return new NameAddress(new SipURI(userName(user), _host, _port));
+	}
+
+	/**
+	 * The address of the server under test.
+	 */
+	protected SipURI serverAddress() {
+		return new SipURI(_host, _port);
+	}
+
+	/**
+	 * A contact address of the user with the given number at the generator.
+	 */
+	protected NameAddress contactAddress(int user) {
+		return _sipProvider.getContactAddress(userName(user), AddressType.DEFAULT);
+	}
+
+	/**
+	 * Sends the given request in a new transaction and reports the final response to the given
+	 * {@link Attempt}.
+	 */
+	protected void request(SipMessage request, Attempt attempt) {
+		new TransactionClient(_sipProvider, request, new TransactionClientListener() {
+			@Override
+			public void onTransProvisionalResponse(TransactionClient tc, SipMessage resp) {
+				// Wait for the final response.
+			}
+
+			@Override
+			public void onTransSuccessResponse(TransactionClient tc, SipMessage resp) {
+				attempt.succeeded();
+			}
+
+			@Override
+			public void onTransFailureResponse(TransactionClient tc, SipMessage resp) {
+				attempt.failed(resp.getStatusLine().getCode());
+			}
+
+			@Override
+			public void onTransTimeout(TransactionClient tc) {
+				attempt.timedOut();
+			}
+		}).request();
+	}
+
+}
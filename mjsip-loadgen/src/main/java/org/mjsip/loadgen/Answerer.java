@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.loadgen;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import org.mjsip.sdp.OfferAnswerModel;
+import org.mjsip.sdp.SdpMessage;
+import org.mjsip.sip.address.NameAddress;
+import org.mjsip.sip.call.Call;
+import org.mjsip.sip.call.CallListenerAdapter;
+import org.mjsip.sip.call.ExtendedCall;
+import org.mjsip.sip.message.SipMessage;
+import org.mjsip.sip.message.SipMethods;
+import org.mjsip.sip.message.SipResponses;
+import org.mjsip.sip.provider.SipId;
+import org.mjsip.sip.provider.SipProvider;
+import org.mjsip.sip.provider.SipProviderListener;
+import org.mjsip.sip.transaction.TransactionServer;
+
+/**
+ * Callee side of the load generator accepting all incoming calls and messages.
+ *
+ * <p>
+ * Allows to run call and message scenarios end-to-end over a proxy that routes requests back to
+ * the generator, or directly against the generator itself.
+ * </p>
+ */
+public class Answerer extends CallListenerAdapter implements SipProviderListener {
+
+	private final SipProvider _sipProvider;
+
+	private final String _answer;
+
+	private final LongAdder _calls = new LongAdder();
+
+	private final LongAdder _messages = new LongAdder();
+
+	/**
+	 * Creates an {@link Answerer}.
+	 */
+	public Answerer(SipProvider sipProvider) {
+		_sipProvider = sipProvider;
+		_answer = CallScenario.sdp(sipProvider.getViaAddress());
+	}
+
+	/**
+	 * Starts accepting calls and messages.
+	 */
+	public void start() {
+		_sipProvider.addSelectiveListener(SipId.createMethodId(SipMethods.INVITE), this);
+		_sipProvider.addSelectiveListener(SipId.createMethodId(SipMethods.MESSAGE), this);
+	}
+
+	/**
+	 * Stops accepting calls and messages.
+	 */
+	public void halt() {
+		_sipProvider.removeSelectiveListener(SipId.createMethodId(SipMethods.INVITE));
+		_sipProvider.removeSelectiveListener(SipId.createMethodId(SipMethods.MESSAGE));
+	}
+
+	/**
+	 * The number of accepted calls.
+	 */
+	public long getCalls() {
+		return _calls.sum();
+	}
+
+	/**
+	 * The number of accepted messages.
+	 */
+	public long getMessages() {
+		return _messages.sum();
+	}
+
+	@Override
+	public void onReceivedMessage(SipProvider sipProvider, SipMessage msg) {
+		if (!msg.isRequest()) {
+			return;
+		}
+		if (msg.isInvite()) {
+			new ExtendedCall(sipProvider, msg, this);
+		} else if (msg.isMessage()) {
+			_messages.increment();
+			new TransactionServer(sipProvider, msg, null)
+				.respondWith(sipProvider.messageFactory().createResponse(msg, SipResponses.OK, null, null));
+		}
+	}
+
+	@Override
+	public void onCallInvite(Call call, NameAddress callee, NameAddress caller, SdpMessage remoteSdp,
+			SipMessage invite) {
+		_calls.increment();
+		SdpMessage local = new SdpMessage(_answer);
+		call.accept(remoteSdp == null ? local : OfferAnswerModel.matchSdp(local, remoteSdp));
+	}
+
+}
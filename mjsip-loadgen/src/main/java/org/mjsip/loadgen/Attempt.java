@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.loadgen;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A single execution of a {@link Scenario}, e.g. one call or one registration.
+ *
+ * <p>
+ * The scenario reports the outcome exactly once through {@link #succeeded()}, {@link #failed(int)}
+ * or {@link #timedOut()}. Further reports are ignored, so that late responses after a timeout do
+ * not distort the statistics.
+ * </p>
+ */
+public final class Attempt {
+
+	private final int _index;
+
+	private final LoadStatistics _statistics;
+
+	private final Runnable _onDone;
+
+	private final long _start = System.nanoTime();
+
+	private final AtomicBoolean _measured = new AtomicBoolean();
+
+	private final AtomicBoolean _done = new AtomicBoolean();
+
+	/**
+	 * Creates an {@link Attempt}.
+	 *
+	 * @param index
+	 *        The sequence number of this attempt in the run.
+	 * @param statistics
+	 *        The statistics to report to.
+	 * @param onDone
+	 *        Called when the outcome is known.
+	 */
+	public Attempt(int index, LoadStatistics statistics, Runnable onDone) {
+		_index = index;
+		_statistics = statistics;
+		_onDone = onDone;
+		statistics.started();
+	}
+
+	/**
+	 * The sequence number of this attempt in the run.
+	 */
+	public int getIndex() {
+		return _index;
+	}
+
+	/**
+	 * Whether the outcome has already been reported.
+	 */
+	public boolean isDone() {
+		return _done.get();
+	}
+
+	/**
+	 * Records the time since the attempt was started as its latency.
+	 *
+	 * <p>
+	 * Scenarios that continue after the first final response (e.g. a call that is hung up after
+	 * being accepted) report the latency when the response arrives. Otherwise, the latency is
+	 * taken when the attempt succeeds.
+	 * </p>
+	 */
+	public void measure() {
+		if (_measured.compareAndSet(false, true)) {
+			_statistics.latency((System.nanoTime() - _start) / 1000);
+		}
+	}
+
+	/**
+	 * Reports success.
+	 */
+	public void succeeded() {
+		if (finish()) {
+			measure();
+			_statistics.succeeded();
+			_onDone.run();
+		}
+	}
+
+	/**
+	 * Reports a failure response.
+	 *
+	 * @param code
+	 *        The final response status code.
+	 */
+	public void failed(int code) {
+		if (finish()) {
+			_statistics.failed(code);
+			_onDone.run();
+		}
+	}
+
+	/**
+	 * Reports that no final response was received.
+	 */
+	public void timedOut() {
+		if (finish()) {
+			_statistics.timedOut();
+			_onDone.run();
+		}
+	}
+
+	private boolean finish() {
+		return _done.compareAndSet(false, true);
+	}
+
+}
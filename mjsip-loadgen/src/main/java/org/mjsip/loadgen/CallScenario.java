@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.loadgen;
+
+import java.util.Vector;
+
+import org.mjsip.sdp.SdpMessage;
+import org.mjsip.sip.call.Call;
+import org.mjsip.sip.call.CallListenerAdapter;
+import org.mjsip.sip.call.ExtendedCall;
+import org.mjsip.sip.call.SipUser;
+import org.mjsip.sip.message.SipMessage;
+import org.mjsip.sip.provider.SipProvider;
+
+/**
+ * {@link Scenario} placing a call from one user to the next: INVITE, 200, ACK, and BYE after the
+ * configured hold time.
+ *
+ * <p>
+ * The latency of a call is its setup time, i.e. the time until the INVITE is accepted. The call
+ * counts as successful when the BYE is answered.
+ * </p>
+ */
+public class CallScenario extends AbstractScenario {
+
+	private final String _offer;
+
+	/**
+	 * Creates a {@link CallScenario}.
+	 */
+	public CallScenario(SipProvider sipProvider, LoadConfig config) {
+		super(sipProvider, config);
+
+		_offer = sdp(sipProvider.getViaAddress());
+	}
+
+	/**
+	 * A minimal audio session description for the given address.
+	 */
+	static String sdp(String address) {
+		String type = address.indexOf(':') >= 0 ? "IP6" : "IP4";
+		return "v=0\r\n" +
+			"o=loadgen 0 0 IN " + type + " " + address + "\r\n" +
+			"s=-\r\n" +
+			"c=IN " + type + " " + address + "\r\n" +
+			"t=0 0\r\n" +
+			"m=audio 4000 RTP/AVP 0\r\n" +
+			"a=rtpmap:0 PCMU/8000\r\n";
+	}
+
+	@Override
+	public void start(Attempt attempt) {
+		int user = attempt.getIndex();
+		ExtendedCall call = new ExtendedCall(_sipProvider, new SipUser(userAddress(user)), new Caller(attempt));
+		call.call(userAddress(user + 1), userAddress(user), new SdpMessage(_offer));
+	}
+
+	private class Caller extends CallListenerAdapter {
+
+		private final Attempt _attempt;
+
+		Caller(Attempt attempt) {
+			_attempt = attempt;
+		}
+
+		@Override
+		public void onCallAccepted(Call call, SdpMessage remoteSdp, SipMessage resp) {
+			_attempt.measure();
+
+			long holdTime = _config.getHoldTime();
+			if (holdTime > 0) {
+				_sipProvider.scheduler().schedule(holdTime, call::hangup);
+			} else {
+				call.hangup();
+			}
+		}
+
+		@Override
+		public void onCallRefused(Call call, String reason, SipMessage resp) {
+			_attempt.failed(code(resp));
+		}
+
+		@Override
+		public void onCallRedirected(Call call, String reason, Vector contact_list, SipMessage resp) {
+			_attempt.failed(code(resp));
+		}
+
+		@Override
+		public void onCallTimeout(Call call) {
+			_attempt.timedOut();
+		}
+
+		@Override
+		public void onCallBye(Call call, SipMessage bye) {
+			// Hung up by the callee.
+			_attempt.succeeded();
+		}
+
+		@Override
+		public void onCallClosed(Call call, SipMessage resp) {
+			int code = code(resp);
+			if (code >= 200 && code < 300) {
+				_attempt.succeeded();
+			} else {
+				_attempt.failed(code);
+			}
+		}
+
+		private int code(SipMessage resp) {
+			return resp == null ? 0 : resp.getStatusLine().getCode();
+		}
+	}
+
+}
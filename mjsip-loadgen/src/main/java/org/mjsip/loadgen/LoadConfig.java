@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.loadgen;
+
+import org.kohsuke.args4j.Option;
+import org.mjsip.config.YesNoHandler;
+
+/**
+ * Configuration options of the {@link LoadGenerator}.
+ */
+public class LoadConfig {
+
+	@Option(name = "--scenario", usage = "The scenario to run: 'register' (REGISTER storm), "
+			+ "'call' (INVITE-200-ACK-BYE), or 'message' (MESSAGE flood).")
+	private String _scenario = "call";
+
+	@Option(name = "--target", usage = "Address 'host[:port]' of the server under test. "
+			+ "If not given, requests are sent to the generator itself, which requires '--answer yes'.")
+	private String _target;
+
+	@Option(name = "--rate", usage = "Scenario executions started per second.")
+	private double _rate = 100;
+
+	@Option(name = "--count", usage = "Total number of scenario executions.")
+	private int _count = 1000;
+
+	@Option(name = "--max-pending", usage = "Maximum number of executions in progress at the same time.")
+	private int _maxPending = 1000;
+
+	@Option(name = "--users", usage = "Number of distinct user names 'user<n>' used in requests.")
+	private int _users = 100;
+
+	@Option(name = "--user-prefix", usage = "Prefix of generated user names.")
+	private String _userPrefix = "user";
+
+	@Option(name = "--hold-time", usage = "Time in milliseconds an accepted call is held before sending BYE.")
+	private long _holdTime = 100;
+
+	@Option(name = "--expires", usage = "Expires value (in seconds) of REGISTER requests.")
+	private int _expires = 3600;
+
+	@Option(name = "--message-size", usage = "Body size in bytes of MESSAGE requests.")
+	private int _messageSize = 100;
+
+	@Option(name = "--answer", usage = "Whether to accept incoming calls and messages, "
+			+ "e.g. when calls are routed back to the generator through a proxy.", handler = YesNoHandler.class)
+	private boolean _answer = false;
+
+	@Option(name = "--register-users", usage = "Whether all users are registered with the generator as contact "
+			+ "before running the scenario.", handler = YesNoHandler.class)
+	private boolean _registerUsers = false;
+
+	@Option(name = "--report-interval", usage = "Seconds between progress reports, 0 to disable.")
+	private int _reportInterval = 1;
+
+	@Option(name = "--drain-timeout", usage = "Time in milliseconds to wait for pending executions after the last one was started.")
+	private long _drainTimeout = 40000;
+
+	/**
+	 * The name of the scenario to run.
+	 */
+	public String getScenario() {
+		return _scenario;
+	}
+
+	/**
+	 * @see #getScenario()
+	 */
+	public void setScenario(String scenario) {
+		_scenario = scenario;
+	}
+
+	/**
+	 * Address of the server under test, <code>null</code> for the generator itself.
+	 */
+	public String getTarget() {
+		return _target;
+	}
+
+	/**
+	 * @see #getTarget()
+	 */
+	public void setTarget(String target) {
+		_target = target;
+	}
+
+	/**
+	 * Scenario executions started per second.
+	 */
+	public double getRate() {
+		return _rate;
+	}
+
+	/**
+	 * @see #getRate()
+	 */
+	public void setRate(double rate) {
+		_rate = rate;
+	}
+
+	/**
+	 * Total number of scenario executions.
+	 */
+	public int getCount() {
+		return _count;
+	}
+
+	/**
+	 * @see #getCount()
+	 */
+	public void setCount(int count) {
+		_count = count;
+	}
+
+	/**
+	 * Maximum number of executions in progress at the same time.
+	 */
+	public int getMaxPending() {
+		return _maxPending;
+	}
+
+	/**
+	 * @see #getMaxPending()
+	 */
+	public void setMaxPending(int maxPending) {
+		_maxPending = maxPending;
+	}
+
+	/**
+	 * Number of distinct user names.
+	 */
+	public int getUsers() {
+		return _users;
+	}
+
+	/**
+	 * @see #getUsers()
+	 */
+	public void setUsers(int users) {
+		_users = users;
+	}
+
+	/**
+	 * Prefix of generated user names.
+	 */
+	public String getUserPrefix() {
+		return _userPrefix;
+	}
+
+	/**
+	 * Time in milliseconds an accepted call is held.
+	 */
+	public long getHoldTime() {
+		return _holdTime;
+	}
+
+	/**
+	 * @see #getHoldTime()
+	 */
+	public void setHoldTime(long holdTime) {
+		_holdTime = holdTime;
+	}
+
+	/**
+	 * Expires value (in seconds) of REGISTER requests.
+	 */
+	public int getExpires() {
+		return _expires;
+	}
+
+	/**
+	 * Body size in bytes of MESSAGE requests.
+	 */
+	public int getMessageSize() {
+		return _messageSize;
+	}
+
+	/**
+	 * Whether incoming calls and messages are accepted.
+	 */
+	public boolean isAnswer() {
+		return _answer;
+	}
+
+	/**
+	 * @see #isAnswer()
+	 */
+	public void setAnswer(boolean answer) {
+		_answer = answer;
+	}
+
+	/**
+	 * Whether all users are registered before running the scenario.
+	 */
+	public boolean isRegisterUsers() {
+		return _registerUsers;
+	}
+
+	/**
+	 * @see #isRegisterUsers()
+	 */
+	public void setRegisterUsers(boolean registerUsers) {
+		_registerUsers = registerUsers;
+	}
+
+	/**
+	 * Seconds between progress reports, 0 to disable.
+	 */
+	public int getReportInterval() {
+		return _reportInterval;
+	}
+
+	/**
+	 * @see #getReportInterval()
+	 */
+	public void setReportInterval(int reportInterval) {
+		_reportInterval = reportInterval;
+	}
+
+	/**
+	 * Time in milliseconds to wait for pending executions at the end of a run.
+	 */
+	public long getDrainTimeout() {
+		return _drainTimeout;
+	}
+
+	/**
+	 * @see #getDrainTimeout()
+	 */
+	public void setDrainTimeout(long drainTimeout) {
+		_drainTimeout = drainTimeout;
+	}
+
+}
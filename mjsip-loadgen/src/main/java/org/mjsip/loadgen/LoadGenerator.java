@@ -0,0 +1,241 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.loadgen;
+
+import java.io.PrintStream;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.mjsip.config.OptionParser;
+import org.mjsip.metrics.Histogram;
+import org.mjsip.sip.provider.SipConfig;
+import org.mjsip.sip.provider.SipProvider;
+import org.mjsip.time.ConfiguredScheduler;
+import org.mjsip.time.SchedulerConfig;
+import org.slf4j.LoggerFactory;
+
+/**
+ * SIP load generator running a {@link Scenario} at a configured rate and reporting throughput,
+ * latency percentiles and retransmissions.
+ *
+ * <p>
+ * Typical runs against the servers from <code>mjsip-server</code> and the examples over loopback:
+ * </p>
+ *
+ * <pre>
+ * # REGISTER storm against a Registrar on port 5070
+ * LoadGenerator --via-addr 127.0.0.1 --host-port 5080 --target 127.0.0.1:5070 --scenario register --rate 500 --count 10000
+ *
+ * # Calls through a StatefulProxy on port 5070, routed back to the registered generator
+ * LoadGenerator --via-addr 127.0.0.1 --host-port 5080 --target 127.0.0.1:5070 --scenario call --register-users yes --answer yes
+ *
+ * # Calls answered by the generator itself
+ * LoadGenerator --via-addr 127.0.0.1 --host-port 5080 --scenario call --answer yes --rate 200 --count 5000
+ * </pre>
+ *
+ * <p>
+ * The process exits with status 1, if any execution failed or did not complete.
+ * </p>
+ */
+public class LoadGenerator {
+
+	private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(LoadGenerator.class);
+
+	private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+	private static final double[] PERCENTILES = { 50, 90, 95, 99, 99.9 };
+
+	private final SipProvider _sipProvider;
+
+	private final LoadConfig _config;
+
+	private final PrintStream _out;
+
+	/**
+	 * Creates a {@link LoadGenerator}.
+	 *
+	 * @param sipProvider
+	 *        The provider to send requests with.
+	 * @param config
+	 *        The load options.
+	 * @param out
+	 *        The stream to write reports to.
+	 */
+	public LoadGenerator(SipProvider sipProvider, LoadConfig config, PrintStream out) {
+		_sipProvider = sipProvider;
+		_config = config;
+		_out = out;
+	}
+
+	/**
+	 * Creates the {@link Scenario} with the given name.
+	 */
+	public Scenario createScenario(String name) {
+		switch (name.toLowerCase()) {
+		case "register":
+			return new RegisterScenario(_sipProvider, _config);
+		case "call":
+			return new CallScenario(_sipProvider, _config);
+		case "message":
+			return new MessageScenario(_sipProvider, _config);
+		default:
+			throw new IllegalArgumentException("No such scenario: " + name);
+		}
+	}
+
+	/**
+	 * Executes the given scenario the given number of times at the configured rate.
+	 *
+	 * @return The statistics of the run.
+	 */
+	public LoadStatistics run(String name, Scenario scenario, int count) throws InterruptedException {
+		LoadStatistics statistics = new LoadStatistics();
+		int maxPending = Math.max(1, _config.getMaxPending());
+		Semaphore slots = new Semaphore(maxPending);
+
+		long retransmissions = _sipProvider.getRetransmissions();
+		long start = System.nanoTime();
+
+		ScheduledFuture<?> reporter = null;
+		int reportInterval = _config.getReportInterval();
+		if (reportInterval > 0) {
+			reporter = _sipProvider.scheduler().schedulerWithFixedDelay(reportInterval * 1000L,
+				new Runnable() {
+					private long _lastCompleted;
+
+					@Override
+					public void run() {
+						long completed = statistics.getCompleted();
+						_out.println(String.format(Locale.ROOT,
+							"%7.1fs started=%d ok=%d failed=%d timeout=%d pending=%d rate=%.1f/s retrans=%d",
+							seconds(System.nanoTime() - start), statistics.getStarted(), statistics.getSucceeded(),
+							statistics.getFailed(), statistics.getTimedOut(), statistics.getStarted() - completed,
+							(completed - _lastCompleted) / (double) reportInterval,
+							_sipProvider.getRetransmissions() - retransmissions));
+						_lastCompleted = completed;
+					}
+				});
+		}
+
+		double rate = _config.getRate();
+		long interval = rate > 0 ? (long) (SECOND / rate) : 0;
+		long next = System.nanoTime();
+		for (int n = 0; n < count; n++) {
+			slots.acquire();
+
+			long now;
+			while ((now = System.nanoTime()) < next) {
+				LockSupport.parkNanos(next - now);
+			}
+			if (now - next > SECOND) {
+				// Do not catch up with a burst after a stall.
+				next = now;
+			}
+
+			Attempt attempt = new Attempt(n, statistics, slots::release);
+			try {
+				scenario.start(attempt);
+			} catch (RuntimeException ex) {
+				LOG.error("Starting execution {} failed.", Integer.valueOf(n), ex);
+				attempt.failed(0);
+			}
+			next += interval;
+		}
+
+		boolean drained = slots.tryAcquire(maxPending, _config.getDrainTimeout(), TimeUnit.MILLISECONDS);
+
+		// Do not count the time waiting for executions that never finish.
+		long end = drained ? System.nanoTime() : statistics.getLastCompletion();
+		long elapsed = Math.max(1, end - start);
+
+		if (reporter != null) {
+			reporter.cancel(false);
+		}
+
+		report(name, statistics, elapsed, _sipProvider.getRetransmissions() - retransmissions);
+		return statistics;
+	}
+
+	/**
+	 * Writes the summary of a run.
+	 */
+	public void report(String name, LoadStatistics statistics, long elapsedNanos, long retransmissions) {
+		long completed = statistics.getCompleted();
+		_out.println("Scenario: " + name);
+		_out.println(String.format(Locale.ROOT,
+			"Executions: %d started, %d succeeded, %d failed, %d timed out, %d unfinished", statistics.getStarted(),
+			statistics.getSucceeded(), statistics.getFailed(), statistics.getTimedOut(),
+			statistics.getStarted() - completed));
+		_out.println(String.format(Locale.ROOT, "Duration: %.2f s", seconds(elapsedNanos)));
+		_out.println(String.format(Locale.ROOT, "Throughput: %.1f/s", completed / seconds(elapsedNanos)));
+
+		Histogram latency = statistics.getLatency();
+		StringBuilder line = new StringBuilder("Latency (ms):");
+		for (double percentile : PERCENTILES) {
+			line.append(String.format(Locale.ROOT, " p%s=%.2f", format(percentile),
+				latency.getPercentile(percentile) / 1000.0));
+		}
+		line.append(String.format(Locale.ROOT, " max=%.2f", latency.getMax() / 1000.0));
+		_out.println(line);
+
+		_out.println("Retransmissions: " + retransmissions);
+
+		Map<Integer, Long> failureCodes = statistics.getFailureCodes();
+		if (!failureCodes.isEmpty()) {
+			_out.println("Failures: " + failureCodes);
+		}
+	}
+
+	private static String format(double percentile) {
+		return percentile == Math.rint(percentile) ? Long.toString((long) percentile) : Double.toString(percentile);
+	}
+
+	private static double seconds(long nanos) {
+		return nanos / (double) SECOND;
+	}
+
+	/** The main method. */
+	public static void main(String[] args) throws InterruptedException {
+		SipConfig sipConfig = new SipConfig();
+		SchedulerConfig schedulerConfig = new SchedulerConfig();
+		LoadConfig config = new LoadConfig();
+
+		OptionParser.parseOptions(args, ".mjsip-loadgen", sipConfig, schedulerConfig, config);
+
+		sipConfig.normalize();
+
+		SipProvider sipProvider = new SipProvider(sipConfig, new ConfiguredScheduler(schedulerConfig));
+		LoadGenerator generator = new LoadGenerator(sipProvider, config, System.out);
+
+		Answerer answerer = null;
+		if (config.isAnswer()) {
+			answerer = new Answerer(sipProvider);
+			answerer.start();
+		}
+
+		boolean ok = true;
+		if (config.isRegisterUsers()) {
+			LoadStatistics registration = generator.run("register", new RegisterScenario(sipProvider, config),
+				config.getUsers());
+			ok = registration.getSucceeded() == registration.getStarted();
+		}
+
+		if (ok) {
+			String name = config.getScenario();
+			LoadStatistics statistics = generator.run(name, generator.createScenario(name), config.getCount());
+			ok = statistics.getSucceeded() == statistics.getStarted();
+		}
+
+		if (answerer != null) {
+			answerer.halt();
+		}
+		sipProvider.halt();
+		System.exit(ok ? 0 : 1);
+	}
+
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.loadgen;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.mjsip.metrics.Histogram;
+
+/**
+ * Outcome counters and latencies of a load run.
+ */
+public class LoadStatistics {
+
+	/** Pseudo status code for attempts that did not complete in time. */
+	public static final int TIMEOUT = 408;
+
+	private final LongAdder _started = new LongAdder();
+
+	private final LongAdder _succeeded = new LongAdder();
+
+	private final LongAdder _failed = new LongAdder();
+
+	private final LongAdder _timedOut = new LongAdder();
+
+	private final Map<Integer, LongAdder> _failureCodes = new ConcurrentHashMap<>();
+
+	private final Histogram _latency = new Histogram();
+
+	private final LongAccumulator _lastCompletion = new LongAccumulator(Math::max, Long.MIN_VALUE);
+
+	/**
+	 * Counts a started attempt.
+	 */
+	public void started() {
+		_started.increment();
+	}
+
+	/**
+	 * Counts a successful attempt.
+	 */
+	public void succeeded() {
+		_succeeded.increment();
+		completed();
+	}
+
+	/**
+	 * Counts a failed attempt.
+	 *
+	 * @param code
+	 *        The final response status code.
+	 */
+	public void failed(int code) {
+		_failed.increment();
+		_failureCodes.computeIfAbsent(Integer.valueOf(code), x -> new LongAdder()).increment();
+		completed();
+	}
+
+	/**
+	 * Counts an attempt that did not receive a final response.
+	 */
+	public void timedOut() {
+		_timedOut.increment();
+		completed();
+	}
+
+	private void completed() {
+		_lastCompletion.accumulate(System.nanoTime());
+	}
+
+	/**
+	 * Records the latency of an attempt.
+	 */
+	public void latency(long micros) {
+		_latency.record(micros);
+	}
+
+	/**
+	 * The number of started attempts.
+	 */
+	public long getStarted() {
+		return _started.sum();
+	}
+
+	/**
+	 * The number of successful attempts.
+	 */
+	public long getSucceeded() {
+		return _succeeded.sum();
+	}
+
+	/**
+	 * The number of attempts that were answered with an error response.
+	 */
+	public long getFailed() {
+		return _failed.sum();
+	}
+
+	/**
+	 * The number of attempts without final response.
+	 */
+	public long getTimedOut() {
+		return _timedOut.sum();
+	}
+
+	/**
+	 * The number of finished attempts.
+	 */
+	public long getCompleted() {
+		return getSucceeded() + getFailed() + getTimedOut();
+	}
+
+	/**
+	 * The {@link System#nanoTime()} of the last finished attempt, {@link Long#MIN_VALUE} if none
+	 * has finished.
+	 */
+	public long getLastCompletion() {
+		return _lastCompletion.get();
+	}
+
+	/**
+	 * Number of failures by status code.
+	 */
+	public Map<Integer, Long> getFailureCodes() {
+		Map<Integer, Long> result = new TreeMap<>();
+		_failureCodes.forEach((code, count) -> result.put(code, Long.valueOf(count.sum())));
+		return result;
+	}
+
+	/**
+	 * The latencies of all attempts.
+	 */
+	public Histogram getLatency() {
+		return _latency;
+	}
+
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.loadgen;
+
+import java.util.Arrays;
+
+import org.mjsip.sip.message.SipMessage;
+import org.mjsip.sip.provider.SipProvider;
+
+/**
+ * {@link Scenario} sending a MESSAGE request from one user to the next.
+ */
+public class MessageScenario extends AbstractScenario {
+
+	private final byte[] _body;
+
+	/**
+	 * Creates a {@link MessageScenario}.
+	 */
+	public MessageScenario(SipProvider sipProvider, LoadConfig config) {
+		super(sipProvider, config);
+
+		_body = new byte[Math.max(0, config.getMessageSize())];
+		Arrays.fill(_body, (byte) 'x');
+	}
+
+	@Override
+	public void start(Attempt attempt) {
+		int user = attempt.getIndex();
+		SipMessage request = _sipProvider.messageFactory().createMessageRequest(userAddress(user + 1),
+				userAddress(user), _sipProvider.pickCallId(), null, "text/plain", _body);
+		request(request, attempt);
+	}
+
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.loadgen;
+
+import org.mjsip.sip.address.NameAddress;
+import org.mjsip.sip.header.ExpiresHeader;
+import org.mjsip.sip.message.SipMessage;
+import org.mjsip.sip.provider.SipProvider;
+
+/**
+ * {@link Scenario} registering the generator as contact of a user.
+ *
+ * <p>
+ * Users are registered round-robin, so that a run with more executions than users also exercises
+ * binding refreshes in the registrar.
+ * </p>
+ */
+public class RegisterScenario extends AbstractScenario {
+
+	/**
+	 * Creates a {@link RegisterScenario}.
+	 */
+	public RegisterScenario(SipProvider sipProvider, LoadConfig config) {
+		super(sipProvider, config);
+	}
+
+	@Override
+	public void start(Attempt attempt) {
+		int user = attempt.getIndex();
+		NameAddress address = userAddress(user);
+		SipMessage request = _sipProvider.messageFactory().createRegisterRequest(serverAddress(), address, address,
+				contactAddress(user), _sipProvider.pickCallId());
+		request.setExpiresHeader(new ExpiresHeader(_config.getExpires()));
+		request(request, attempt);
+	}
+
+}
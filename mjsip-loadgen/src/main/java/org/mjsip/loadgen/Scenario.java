@@ -0,0 +1,21 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.loadgen;
+
+/**
+ * A scripted SIP interaction that is executed repeatedly by the {@link LoadGenerator}.
+ */
+public interface Scenario {
+
+	/**
+	 * Starts a new execution of this scenario.
+	 *
+	 * <p>
+	 * The method must not block. The outcome is reported asynchronously through the given
+	 * {@link Attempt}.
+	 * </p>
+	 */
+	void start(Attempt attempt);
+
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.loadgen;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.DatagramSocket;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mjsip.sip.provider.SipConfig;
+import org.mjsip.sip.provider.SipProvider;
+import org.mjsip.time.ConfiguredScheduler;
+import org.mjsip.time.SchedulerConfig;
+
+/**
+ * End-to-end test of the {@link LoadGenerator} answering its own requests over loopback.
+ */
+@SuppressWarnings("javadoc")
+class TestLoadGenerator {
+
+	private SipProvider _sipProvider;
+
+	private Answerer _answerer;
+
+	private LoadConfig _config;
+
+	private ByteArrayOutputStream _out;
+
+	private LoadGenerator _generator;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		int port;
+		try (DatagramSocket socket = new DatagramSocket()) {
+			port = socket.getLocalPort();
+		}
+
+		SipConfig sipConfig = new SipConfig();
+		sipConfig.setViaAddrIPv4("127.0.0.1");
+		sipConfig.setHostPort(port);
+		sipConfig.setTransportProtocols(new String[] { SipProvider.PROTO_UDP });
+		sipConfig.normalize();
+
+		_sipProvider = new SipProvider(sipConfig, new ConfiguredScheduler(new SchedulerConfig()));
+		_answerer = new Answerer(_sipProvider);
+		_answerer.start();
+
+		_config = new LoadConfig();
+		_config.setRate(0);
+		_config.setMaxPending(5);
+		_config.setUsers(3);
+		_config.setHoldTime(0);
+		_config.setReportInterval(0);
+		_config.setDrainTimeout(10000);
+
+		_out = new ByteArrayOutputStream();
+		_generator = new LoadGenerator(_sipProvider, _config, new PrintStream(_out, true, StandardCharsets.UTF_8));
+	}
+
+	@AfterEach
+	void tearDown() {
+		_answerer.halt();
+		_sipProvider.halt();
+	}
+
+	@Test
+	void testMessages() throws InterruptedException {
+		LoadStatistics statistics = _generator.run("message", _generator.createScenario("message"), 20);
+
+		Assertions.assertEquals(20, statistics.getSucceeded());
+		Assertions.assertEquals(20, _answerer.getMessages());
+		Assertions.assertEquals(20, statistics.getLatency().getCount());
+
+		String report = _out.toString(StandardCharsets.UTF_8);
+		Assertions.assertTrue(report.contains("Scenario: message"), report);
+		Assertions.assertTrue(report.contains("20 succeeded"), report);
+	}
+
+	@Test
+	void testCalls() throws InterruptedException {
+		LoadStatistics statistics = _generator.run("call", _generator.createScenario("call"), 5);
+
+		Assertions.assertEquals(5, statistics.getSucceeded());
+		Assertions.assertEquals(5, _answerer.getCalls());
+	}
+
+}
@@ -15,5 +15,6 @@ module org.mjsip.net {
 	requires java.desktop;
 
 	exports org.mjsip.net;
+	exports org.mjsip.net.dns;
 	exports org.zoolu.net;
 }
\ No newline at end of file
@@ -22,6 +22,9 @@
 package org.mjsip.net;
 
 
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
 import org.zoolu.net.IpAddress;
 import org.zoolu.net.SocketAddress;
 import org.zoolu.net.UdpPacket;
@@ -79,6 +82,14 @@ public class UdpConnectedSocket extends UdpSocket {
 		}
 	}   
 
+	/** Sends a datagram to the remote address (regardless of the given destination). */
+	@Override
+	public void send(ByteBuffer data, InetSocketAddress dest) throws java.io.IOException {
+		if (remote_soaddr!=null) {
+			super.send(data,new InetSocketAddress(remote_soaddr.getAddress().getInetAddress(),remote_soaddr.getPort()));
+		}
+	}   
+
 	/** Sends a packet to a given address (regardless of the address already set within the packet). */
 	public void sendTo(UdpPacket packet, SocketAddress soaddr) throws java.io.IOException {
 		if (remote_soaddr!=null) {
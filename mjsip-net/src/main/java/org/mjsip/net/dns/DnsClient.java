@@ -0,0 +1,448 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.net.dns;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.slf4j.LoggerFactory;
+
+/**
+ * Minimal stub resolver client sending recursive DNS queries to configured name servers.
+ *
+ * <p>
+ * Queries are sent over UDP and repeated over TCP if the answer is truncated. Each query uses a
+ * fresh socket and a random transaction ID, so that a {@link DnsClient} may be used by multiple
+ * threads concurrently. If a server does not answer within the timeout or fails, the next server
+ * is asked.
+ * </p>
+ */
+public class DnsClient {
+
+	private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(DnsClient.class);
+
+	/** The standard DNS port. */
+	public static final int DNS_PORT = 53;
+
+	/** Maximum size of a DNS message over UDP without EDNS. */
+	private static final int UDP_SIZE = 512;
+
+	private static final int CLASS_IN = 1;
+
+	private static final int FLAG_RESPONSE = 0x8000;
+
+	private static final int FLAG_TRUNCATED = 0x0200;
+
+	private static final int FLAG_RECURSION_DESIRED = 0x0100;
+
+	private static final SecureRandom RANDOM = new SecureRandom();
+
+	private final List<InetSocketAddress> _servers;
+
+	private final int _timeout;
+
+	private final int _attempts;
+
+	/**
+	 * Creates a {@link DnsClient}.
+	 *
+	 * @param servers
+	 *        The name servers to query in order.
+	 * @param timeout
+	 *        Milliseconds to wait for an answer from a single server.
+	 * @param attempts
+	 *        Number of times the list of servers is tried.
+	 */
+	public DnsClient(List<InetSocketAddress> servers, int timeout, int attempts) {
+		if (servers.isEmpty()) {
+			throw new IllegalArgumentException("No name servers given.");
+		}
+		_servers = new ArrayList<>(servers);
+		_timeout = timeout;
+		_attempts = attempts;
+	}
+
+	/**
+	 * The name servers queried.
+	 */
+	public List<InetSocketAddress> getServers() {
+		return Collections.unmodifiableList(_servers);
+	}
+
+	/**
+	 * Looks up records of the given type.
+	 *
+	 * @param name
+	 *        The domain name to look up.
+	 * @param type
+	 *        The record type, e.g. {@link DnsRecord#SRV}.
+	 * @return The answer, with an empty list of records if the name does not exist or has no
+	 *         records of the given type.
+	 * @throws IOException
+	 *         If no server gave a valid answer.
+	 */
+	public DnsResponse query(String name, int type) throws IOException {
+		IOException problem = null;
+		for (int attempt = 0; attempt < _attempts; attempt++) {
+			for (InetSocketAddress server : _servers) {
+				int id = RANDOM.nextInt() & 0xFFFF;
+				byte[] query = encodeQuery(id, name, type);
+				try {
+					DnsResponse response = queryUdp(server, query, id, type);
+					if (response == null) {
+						response = queryTcp(server, query, id, type);
+					}
+					int rcode = response.getRcode();
+					if (rcode == DnsResponse.NO_ERROR || rcode == DnsResponse.NAME_ERROR) {
+						return response;
+					}
+					problem = new IOException("Server " + server + " failed with rcode " + rcode + " for " + name + ".");
+				} catch (IOException ex) {
+					problem = ex;
+				}
+				LOG.debug("DNS query {} {} to {} failed.", name, DnsRecord.typeName(type), server, problem);
+			}
+		}
+		throw problem;
+	}
+
+	/**
+	 * Sends the query over UDP.
+	 *
+	 * @return The response, or <code>null</code> if the response was truncated.
+	 */
+	private DnsResponse queryUdp(InetSocketAddress server, byte[] query, int id, int type) throws IOException {
+		try (DatagramSocket socket = new DatagramSocket()) {
+			socket.setSoTimeout(_timeout);
+			socket.connect(server);
+			socket.send(new DatagramPacket(query, query.length));
+
+			byte[] buffer = new byte[UDP_SIZE];
+			DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+			long deadline = System.currentTimeMillis() + _timeout;
+			while (true) {
+				socket.receive(packet);
+				if (packet.getLength() >= 12 && (((buffer[0] & 0xFF) << 8) | (buffer[1] & 0xFF)) == id) {
+					break;
+				}
+				// Stray or spoofed answer, keep waiting.
+				int remaining = (int) (deadline - System.currentTimeMillis());
+				if (remaining <= 0) {
+					throw new SocketTimeoutException("No answer from " + server + ".");
+				}
+				socket.setSoTimeout(remaining);
+				packet.setLength(buffer.length);
+			}
+			return decodeResponse(buffer, packet.getLength(), id, type, true);
+		}
+	}
+
+	private DnsResponse queryTcp(InetSocketAddress server, byte[] query, int id, int type) throws IOException {
+		try (Socket socket = new Socket()) {
+			socket.connect(server, _timeout);
+			socket.setSoTimeout(_timeout);
+
+			OutputStream out = socket.getOutputStream();
+			ByteArrayOutputStream request = new ByteArrayOutputStream(query.length + 2);
+			request.write(query.length >> 8);
+			request.write(query.length);
+			request.write(query);
+			request.writeTo(out);
+			out.flush();
+
+			DataInputStream in = new DataInputStream(socket.getInputStream());
+			byte[] buffer = new byte[in.readUnsignedShort()];
+			in.readFully(buffer);
+			return decodeResponse(buffer, buffer.length, id, type, false);
+		}
+	}
+
+	static byte[] encodeQuery(int id, String name, int type) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(18 + name.length());
+		writeShort(out, id);
+		writeShort(out, FLAG_RECURSION_DESIRED);
+		// One question, no answer, authority or additional records.
+		writeShort(out, 1);
+		writeShort(out, 0);
+		writeShort(out, 0);
+		writeShort(out, 0);
+		for (String label : name.split("\\.")) {
+			if (label.isEmpty()) {
+				continue;
+			}
+			byte[] bytes = label.getBytes(StandardCharsets.US_ASCII);
+			if (bytes.length > 63) {
+				throw new IllegalArgumentException("Label too long in '" + name + "'.");
+			}
+			out.write(bytes.length);
+			out.write(bytes, 0, bytes.length);
+		}
+		out.write(0);
+		writeShort(out, type);
+		writeShort(out, CLASS_IN);
+		return out.toByteArray();
+	}
+
+	private static void writeShort(ByteArrayOutputStream out, int value) {
+		out.write(value >> 8);
+		out.write(value);
+	}
+
+	/**
+	 * Decodes a response message.
+	 *
+	 * @return The decoded response, <code>null</code> if the response is truncated and
+	 *         <code>udp</code> is set.
+	 */
+	static DnsResponse decodeResponse(byte[] data, int length, int id, int type, boolean udp) throws IOException {
+		Reader in = new Reader(data, length);
+		if (in.readShort() != id) {
+			throw new IOException("DNS transaction ID mismatch.");
+		}
+		int flags = in.readShort();
+		if ((flags & FLAG_RESPONSE) == 0) {
+			throw new IOException("Not a DNS response.");
+		}
+		if (udp && (flags & FLAG_TRUNCATED) != 0) {
+			return null;
+		}
+		int rcode = flags & 0x0F;
+		int questions = in.readShort();
+		int answers = in.readShort();
+		int authorities = in.readShort();
+		in.readShort();
+
+		for (int n = 0; n < questions; n++) {
+			in.skipName();
+			in.skip(4);
+		}
+
+		List<DnsRecord> records = new ArrayList<>(answers);
+		for (int n = 0; n < answers; n++) {
+			String name = in.readName();
+			int rtype = in.readShort();
+			in.skip(2);
+			long ttl = in.readInt() & 0xFFFFFFFFL;
+			int rdlength = in.readShort();
+			int end = in.position() + rdlength;
+			if (rtype == type) {
+				switch (rtype) {
+				case DnsRecord.A:
+				case DnsRecord.AAAA:
+					records.add(DnsRecord.address(name, ttl, InetAddress.getByAddress(in.readBytes(rdlength))));
+					break;
+				case DnsRecord.SRV:
+					int priority = in.readShort();
+					int weight = in.readShort();
+					int port = in.readShort();
+					records.add(DnsRecord.srv(name, ttl, priority, weight, port, in.readName()));
+					break;
+				default:
+					break;
+				}
+			}
+			in.seek(end);
+		}
+
+		long negativeTtl = -1;
+		if (records.isEmpty()) {
+			for (int n = 0; n < authorities; n++) {
+				in.skipName();
+				int rtype = in.readShort();
+				in.skip(2);
+				long ttl = in.readInt() & 0xFFFFFFFFL;
+				int rdlength = in.readShort();
+				int end = in.position() + rdlength;
+				if (rtype == DnsRecord.SOA) {
+					// MNAME, RNAME, SERIAL, REFRESH, RETRY, EXPIRE, MINIMUM
+					in.skipName();
+					in.skipName();
+					in.skip(16);
+					long minimum = in.readInt() & 0xFFFFFFFFL;
+					negativeTtl = Math.min(ttl, minimum);
+				}
+				in.seek(end);
+			}
+		}
+		return new DnsResponse(rcode, records, negativeTtl);
+	}
+
+	/**
+	 * The name servers configured in <code>/etc/resolv.conf</code>, empty if there is no such file.
+	 */
+	public static List<InetSocketAddress> systemServers() {
+		List<InetSocketAddress> result = new ArrayList<>();
+		Path resolvConf = Paths.get("/etc/resolv.conf");
+		if (!Files.isReadable(resolvConf)) {
+			return result;
+		}
+		try (BufferedReader in = Files.newBufferedReader(resolvConf, StandardCharsets.ISO_8859_1)) {
+			String line;
+			while ((line = in.readLine()) != null) {
+				String[] tokens = line.trim().split("\\s+");
+				if (tokens.length >= 2 && tokens[0].equals("nameserver")) {
+					result.add(new InetSocketAddress(InetAddress.getByName(stripZone(tokens[1])), DNS_PORT));
+				}
+			}
+		} catch (IOException ex) {
+			LOG.warn("Cannot read name servers from '{}'.", resolvConf, ex);
+		}
+		return result;
+	}
+
+	private static String stripZone(String address) {
+		int zone = address.indexOf('%');
+		return zone < 0 ? address : address.substring(0, zone);
+	}
+
+	/**
+	 * Parses a name server address of the form <code>host[:port]</code> or
+	 * <code>[ipv6][:port]</code>.
+	 */
+	public static InetSocketAddress parseServer(String server) throws IOException {
+		String host = server;
+		int port = DNS_PORT;
+		if (server.startsWith("[")) {
+			int close = server.indexOf(']');
+			host = server.substring(1, close);
+			if (close + 1 < server.length() && server.charAt(close + 1) == ':') {
+				port = Integer.parseInt(server.substring(close + 2));
+			}
+		} else {
+			int colon = server.indexOf(':');
+			if (colon >= 0 && colon == server.lastIndexOf(':')) {
+				host = server.substring(0, colon);
+				port = Integer.parseInt(server.substring(colon + 1));
+			}
+		}
+		return new InetSocketAddress(InetAddress.getByName(host), port);
+	}
+
+	/**
+	 * Cursor in a DNS message.
+	 */
+	private static final class Reader {
+
+		private final byte[] _data;
+
+		private final int _length;
+
+		private int _pos;
+
+		Reader(byte[] data, int length) {
+			_data = data;
+			_length = length;
+		}
+
+		int position() {
+			return _pos;
+		}
+
+		void seek(int pos) throws IOException {
+			if (pos > _length) {
+				throw new IOException("Truncated DNS message.");
+			}
+			_pos = pos;
+		}
+
+		void skip(int cnt) throws IOException {
+			seek(_pos + cnt);
+		}
+
+		int readByte() throws IOException {
+			if (_pos >= _length) {
+				throw new IOException("Truncated DNS message.");
+			}
+			return _data[_pos++] & 0xFF;
+		}
+
+		int readShort() throws IOException {
+			return (readByte() << 8) | readByte();
+		}
+
+		int readInt() throws IOException {
+			return (readShort() << 16) | readShort();
+		}
+
+		byte[] readBytes(int cnt) throws IOException {
+			if (_pos + cnt > _length) {
+				throw new IOException("Truncated DNS message.");
+			}
+			byte[] result = new byte[cnt];
+			System.arraycopy(_data, _pos, result, 0, cnt);
+			_pos += cnt;
+			return result;
+		}
+
+		void skipName() throws IOException {
+			while (true) {
+				int len = readByte();
+				if (len == 0) {
+					return;
+				}
+				if ((len & 0xC0) == 0xC0) {
+					readByte();
+					return;
+				}
+				skip(len);
+			}
+		}
+
+		/**
+		 * Reads a possibly compressed domain name.
+		 */
+		String readName() throws IOException {
+			StringBuilder result = new StringBuilder();
+			int pos = _pos;
+			int end = -1;
+			for (int jumps = 0; ; ) {
+				if (pos >= _length) {
+					throw new IOException("Truncated DNS message.");
+				}
+				int len = _data[pos++] & 0xFF;
+				if (len == 0) {
+					break;
+				}
+				if ((len & 0xC0) == 0xC0) {
+					if (pos >= _length || ++jumps > 32) {
+						throw new IOException("Invalid name compression in DNS message.");
+					}
+					if (end < 0) {
+						end = pos + 1;
+					}
+					pos = ((len & 0x3F) << 8) | (_data[pos] & 0xFF);
+					continue;
+				}
+				if (pos + len > _length) {
+					throw new IOException("Truncated DNS message.");
+				}
+				if (result.length() > 0) {
+					result.append('.');
+				}
+				result.append(new String(_data, pos, len, StandardCharsets.ISO_8859_1));
+				pos += len;
+			}
+			_pos = end < 0 ? pos : end;
+			return result.length() == 0 ? "." : result.toString();
+		}
+	}
+
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.net.dns;
+
+import java.net.InetAddress;
+
+/**
+ * A resource record from a DNS answer.
+ *
+ * <p>
+ * Only the record types needed for locating SIP servers (RFC 3263) are decoded: address records
+ * ({@link #A}, {@link #AAAA}) and service records ({@link #SRV}).
+ * </p>
+ */
+public final class DnsRecord {
+
+	/** IPv4 address record. */
+	public static final int A = 1;
+
+	/** Canonical name record. */
+	public static final int CNAME = 5;
+
+	/** Start of authority record, carrying the negative caching TTL. */
+	public static final int SOA = 6;
+
+	/** IPv6 address record. */
+	public static final int AAAA = 28;
+
+	/** Service location record (RFC 2782). */
+	public static final int SRV = 33;
+
+	private final String _name;
+
+	private final int _type;
+
+	private final long _ttl;
+
+	private final InetAddress _address;
+
+	private final String _target;
+
+	private final int _priority;
+
+	private final int _weight;
+
+	private final int _port;
+
+	private DnsRecord(String name, int type, long ttl, InetAddress address, String target, int priority, int weight,
+			int port) {
+		_name = name;
+		_type = type;
+		_ttl = ttl;
+		_address = address;
+		_target = target;
+		_priority = priority;
+		_weight = weight;
+		_port = port;
+	}
+
+	/**
+	 * Creates an {@link #A} or {@link #AAAA} record.
+	 */
+	public static DnsRecord address(String name, long ttl, InetAddress address) {
+		return new DnsRecord(name, address.getAddress().length == 4 ? A : AAAA, ttl, address, null, 0, 0, 0);
+	}
+
+	/**
+	 * Creates a {@link #SRV} record.
+	 */
+	public static DnsRecord srv(String name, long ttl, int priority, int weight, int port, String target) {
+		return new DnsRecord(name, SRV, ttl, null, target, priority, weight, port);
+	}
+
+	/**
+	 * The owner name of this record.
+	 */
+	public String getName() {
+		return _name;
+	}
+
+	/**
+	 * The record type, e.g. {@link #A}.
+	 */
+	public int getType() {
+		return _type;
+	}
+
+	/**
+	 * The time in seconds this record may be cached.
+	 */
+	public long getTtl() {
+		return _ttl;
+	}
+
+	/**
+	 * The address of an {@link #A} or {@link #AAAA} record.
+	 */
+	public InetAddress getAddress() {
+		return _address;
+	}
+
+	/**
+	 * The target host name of a {@link #SRV} record.
+	 */
+	public String getTarget() {
+		return _target;
+	}
+
+	/**
+	 * The priority of a {@link #SRV} record, lower values are preferred.
+	 */
+	public int getPriority() {
+		return _priority;
+	}
+
+	/**
+	 * The relative weight of a {@link #SRV} record among records with the same priority.
+	 */
+	public int getWeight() {
+		return _weight;
+	}
+
+	/**
+	 * The port of a {@link #SRV} record.
+	 */
+	public int getPort() {
+		return _port;
+	}
+
+	@Override
+	public String toString() {
+		switch (_type) {
+		case A:
+		case AAAA:
+			return _name + " " + _ttl + " " + typeName(_type) + " " + _address.getHostAddress();
+		default:
+			return _name + " " + _ttl + " SRV " + _priority + " " + _weight + " " + _port + " " + _target;
+		}
+	}
+
+	/**
+	 * The mnemonic of the given record type.
+	 */
+	public static String typeName(int type) {
+		switch (type) {
+		case A:
+			return "A";
+		case CNAME:
+			return "CNAME";
+		case SOA:
+			return "SOA";
+		case AAAA:
+			return "AAAA";
+		case SRV:
+			return "SRV";
+		default:
+			return "TYPE" + type;
+		}
+	}
+
+}
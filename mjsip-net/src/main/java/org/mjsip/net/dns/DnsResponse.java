@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.net.dns;
+
+import java.util.List;
+
+/**
+ * The decoded answer to a single DNS question.
+ */
+public final class DnsResponse {
+
+	/** Response code for a successful query. */
+	public static final int NO_ERROR = 0;
+
+	/** Response code for a name that does not exist. */
+	public static final int NAME_ERROR = 3;
+
+	private final int _rcode;
+
+	private final List<DnsRecord> _records;
+
+	private final long _negativeTtl;
+
+	/**
+	 * Creates a {@link DnsResponse}.
+	 *
+	 * @param rcode
+	 *        The response code.
+	 * @param records
+	 *        The answer records of the requested type.
+	 * @param negativeTtl
+	 *        The time in seconds an empty answer may be cached, <code>-1</code> if the server sent
+	 *        no SOA record.
+	 */
+	public DnsResponse(int rcode, List<DnsRecord> records, long negativeTtl) {
+		_rcode = rcode;
+		_records = records;
+		_negativeTtl = negativeTtl;
+	}
+
+	/**
+	 * The response code, {@link #NO_ERROR} or {@link #NAME_ERROR}.
+	 */
+	public int getRcode() {
+		return _rcode;
+	}
+
+	/**
+	 * The answer records of the requested type, empty if the name does not exist or has no such
+	 * records.
+	 */
+	public List<DnsRecord> getRecords() {
+		return _records;
+	}
+
+	/**
+	 * The time in seconds an empty answer may be cached (RFC 2308), <code>-1</code> if unknown.
+	 */
+	public long getNegativeTtl() {
+		return _negativeTtl;
+	}
+
+	@Override
+	public String toString() {
+		return "DnsResponse(rcode=" + _rcode + ", " + _records + ")";
+	}
+
+}
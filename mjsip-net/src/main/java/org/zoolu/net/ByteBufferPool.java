@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.zoolu.net;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * Pool of direct {@link ByteBuffer}s of a fixed size.
+ *
+ * <p>
+ * Direct buffers are expensive to allocate but can be passed to the operating system without
+ * copying. Senders acquire a buffer, serialize a packet into it, send it through a
+ * {@link java.nio.channels.DatagramChannel} and release the buffer again, so that no memory is
+ * allocated per packet.
+ * </p>
+ */
+public class ByteBufferPool {
+
+	/**
+	 * Shared pool of buffers large enough for any UDP datagram.
+	 */
+	public static final ByteBufferPool DATAGRAMS = new ByteBufferPool(UdpProvider.BUFFER_SIZE, 64);
+
+	private final int _bufferSize;
+
+	private final int _maxPooled;
+
+	private final ArrayDeque<ByteBuffer> _pool;
+
+	/**
+	 * Creates a {@link ByteBufferPool}.
+	 *
+	 * @param bufferSize
+	 *        The capacity of the buffers.
+	 * @param maxPooled
+	 *        The maximum number of released buffers kept for reuse.
+	 */
+	public ByteBufferPool(int bufferSize, int maxPooled) {
+		_bufferSize = bufferSize;
+		_maxPooled = maxPooled;
+		_pool = new ArrayDeque<>(maxPooled);
+	}
+
+	/**
+	 * The capacity of the buffers.
+	 */
+	public int getBufferSize() {
+		return _bufferSize;
+	}
+
+	/**
+	 * Takes a cleared buffer from the pool, or allocates a new one, if the pool is empty.
+	 */
+	public ByteBuffer acquire() {
+		ByteBuffer result;
+		synchronized (_pool) {
+			result = _pool.pollLast();
+		}
+		if (result == null) {
+			return ByteBuffer.allocateDirect(_bufferSize);
+		}
+		result.clear();
+		return result;
+	}
+
+	/**
+	 * Returns a buffer acquired from this pool.
+	 *
+	 * <p>
+	 * The buffer must not be used after it has been released.
+	 * </p>
+	 */
+	public void release(ByteBuffer buffer) {
+		if (buffer == null || buffer.capacity() != _bufferSize || !buffer.isDirect()) {
+			return;
+		}
+		synchronized (_pool) {
+			if (_pool.size() < _maxPooled) {
+				_pool.addLast(buffer);
+			}
+		}
+	}
+
+	/**
+	 * The number of buffers currently available for reuse.
+	 */
+	public int getPooled() {
+		synchronized (_pool) {
+			return _pool.size();
+		}
+	}
+
+}
@@ -25,6 +25,7 @@ package org.zoolu.net;
 
 
 import java.net.DatagramPacket;
+import java.net.InetAddress;
 //import java.net.InetAddress;
 
 
@@ -86,6 +87,11 @@ public class UdpPacket {
 		return new IpAddress(packet.getAddress());
 	}
 
+	/** Gets the address of the datagram without wrapping it into an IpAddress. */
+	public InetAddress getInetAddress() {
+		return packet.getAddress();
+	}
+
 	/** Gets the data received or the data to be sent. */
 	public byte[] getData() {
 		return packet.getData();
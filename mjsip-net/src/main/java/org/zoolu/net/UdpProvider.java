@@ -26,6 +26,8 @@ package org.zoolu.net;
 
 import java.io.IOException;
 import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 
 
 /** UdpProvider provides an UDP send/receive service.
@@ -151,6 +153,12 @@ public class UdpProvider extends Thread {
 	}
 
 
+	/** Sends the remaining bytes of the given buffer as one datagram. */      
+	public void send(ByteBuffer data, InetSocketAddress dest) throws IOException {
+		if (!stop) socket.send(data,dest);
+	}
+
+
 	/** Stops running. */
 	public void halt() {
 		stop=true;
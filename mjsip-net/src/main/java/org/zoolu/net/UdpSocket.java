@@ -25,8 +25,15 @@ package org.zoolu.net;
 
 
 import java.io.Closeable;
+import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.atomic.LongAdder;
 
 
 /** UdpSocket provides a uniform interface to UDP transport protocol,
@@ -38,17 +45,20 @@ public class UdpSocket implements Closeable {
 	/** DatagramSocket */
 	DatagramSocket socket;
 
-	/** Sender packet counter */
-	long sender_packet_count=0;   
+	/** DatagramChannel of the socket, or null */
+	DatagramChannel channel;
+
+	/** Sender packet counter (updated concurrently by sending threads) */
+	final LongAdder sender_packet_count=new LongAdder();
 
 	/** Sender octect counter */
-	long sender_octect_count=0;   
+	final LongAdder sender_octect_count=new LongAdder();
 
 	/** Receiver packet counter */
-	long receiver_packet_count=0;   
+	final LongAdder receiver_packet_count=new LongAdder();
 
 	/** Receiver octect counter */
-	long receiver_octect_count=0;   
+	final LongAdder receiver_octect_count=new LongAdder();
 
 
 
@@ -60,22 +70,47 @@ public class UdpSocket implements Closeable {
 	/** Creates a new UdpSocket */ 
 	protected UdpSocket(DatagramSocket sock) {
 		socket=sock;
+		channel=sock.getChannel();
 	}
 
 	/** Creates a new UdpSocket */ 
 	public UdpSocket(int port) throws java.net.SocketException {
-		socket=new DatagramSocket(port);
+		this(port,(InetAddress)null);
 	}
 
 	/** Creates a new UdpSocket */ 
 	public UdpSocket(int port, IpAddress ipaddr) throws java.net.SocketException {
-		socket=new DatagramSocket(port,ipaddr.getInetAddress());
+		this(port,ipaddr.getInetAddress());
+	}
+
+	/** Creates a new UdpSocket bound to the given port and address (null for the wildcard address) */ 
+	private UdpSocket(int port, InetAddress iaddr) throws java.net.SocketException {
+		try {
+			channel=DatagramChannel.open();
+			channel.bind(new InetSocketAddress(iaddr,port));
+		}
+		catch (SocketException e) {
+			close(channel);
+			throw e;
+		}
+		catch (IOException e) {
+			close(channel);
+			SocketException ex=new SocketException(e.getMessage());
+			ex.initCause(e);
+			throw ex;
+		}
+		socket=channel.socket();
+	}
+
+	private static void close(DatagramChannel channel) {
+		if (channel!=null) try { channel.close(); } catch (IOException e) {}
 	}
 	
 	/** Closes this datagram socket. */
 	@Override
 	public void close() {
 		socket.close();
+		close(channel);
 	}
 
 	/** Gets the local address to which the socket is bound. */
@@ -103,15 +138,47 @@ public class UdpSocket implements Closeable {
 		DatagramPacket dgram=pkt.getDatagramPacket();
 		socket.receive(dgram);
 		pkt.setDatagramPacket(dgram);
-		receiver_packet_count++;
-		receiver_octect_count+=pkt.getLength();
+		receiver_packet_count.increment();
+		receiver_octect_count.add(pkt.getLength());
 	}
 	
 	/** Sends an UDP packet from this socket. */ 
 	public void send(UdpPacket pkt) throws java.io.IOException {
 		socket.send(pkt.getDatagramPacket());
-		sender_packet_count++;
-		sender_octect_count+=pkt.getLength();
+		sender_packet_count.increment();
+		sender_octect_count.add(pkt.getLength());
+	}
+
+	/** Gets the DatagramChannel of this socket, or null if the socket was not created by a channel. */
+	public DatagramChannel getChannel() {
+		return channel;
+	}
+
+	/** Sends the remaining bytes of the given buffer as one datagram.
+	  * <p>
+	  * If the socket has a channel, the datagram is sent without copying a direct buffer, otherwise it is sent through {@link #send(UdpPacket)}.
+	  * In both cases, the buffer position is advanced to its limit. */ 
+	public void send(ByteBuffer data, InetSocketAddress dest) throws java.io.IOException {
+		int len=data.remaining();
+		if (channel!=null) {
+			channel.send(data,dest);
+			sender_packet_count.increment();
+			sender_octect_count.add(len);
+		}
+		else {
+			byte[] buf=new byte[len];
+			data.get(buf);
+			send(new UdpPacket(buf,0,len,new IpAddress(dest.getAddress()),dest.getPort()));
+		}
+	}
+
+	/** Sends several datagrams to the same destination, e.g. a burst of queued packets.
+	  * @param datagrams buffers, each containing one datagram in its remaining bytes
+	  * @param off index of the first buffer to send
+	  * @param count number of buffers to send
+	  * @param dest destination of all datagrams */ 
+	public void send(ByteBuffer[] datagrams, int off, int count, InetSocketAddress dest) throws java.io.IOException {
+		for (int i=off, end=off+count; i<end; i++) send(datagrams[i],dest);
 	}
 	
 	/** Converts this object to a String. */
@@ -122,22 +189,22 @@ public class UdpSocket implements Closeable {
 
 	/** Gets the total number of sent packets. */
 	public long getSenderPacketCounter() {
-		return sender_packet_count;
+		return sender_packet_count.sum();
 	}
 
 	/** Gets the total number of sent octects. */
 	public long getSenderOctectCounter() {
-		return sender_octect_count;
+		return sender_octect_count.sum();
 	}
 
 	/** Gets the total number of received packets. */
 	public long getReceiverPacketCounter() {
-		return receiver_packet_count;
+		return receiver_packet_count.sum();
 	}
 
 	/** Gets the total number of received octects. */
 	public long getReceiverOctectCounter() {
-		return receiver_octect_count;
+		return receiver_octect_count.sum();
 	}
 
 	/** Gets the buffer size used by the platform for input on this UDP socket.
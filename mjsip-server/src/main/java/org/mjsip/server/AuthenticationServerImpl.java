@@ -22,7 +22,7 @@
 package org.mjsip.server;
 
 
-import org.mjsip.sip.authentication.DigestAuthentication;
+import org.mjsip.sip.authentication.DigestVerifier;
 import org.mjsip.sip.header.AuthenticationHeader;
 import org.mjsip.sip.header.AuthenticationInfoHeader;
 import org.mjsip.sip.header.AuthorizationHeader;
@@ -65,6 +65,9 @@ public class AuthenticationServerImpl implements AuthenticationServer {
 	/** The current random value. */
 	protected byte[] rand;
 
+	/** The current nonce, i.e. the HEX of the current random value. */
+	private volatile String nonce;
+
 	private SipProvider sip_provider;
 
 	/** DIGEST */
@@ -86,7 +89,7 @@ public class AuthenticationServerImpl implements AuthenticationServer {
 	private void init(String realm, AuthenticationService authentication_service) {
 		this.realm=realm;
 		this.authentication_service=authentication_service;
-		this.rand=pickRandBytes();
+		pickRand();
 	}
 
 	/** Gets the realm. */
@@ -141,7 +144,7 @@ public class AuthenticationServerImpl implements AuthenticationServer {
 		if (type==SERVER_AUTHENTICATION) ah=msg.getAuthorizationHeader();
 		else ah=msg.getProxyAuthorizationHeader();
 			
-		if (ah!=null && ah.getNonceParam().equals(HEX(rand))) {
+		if (ah!=null && ah.getNonceParam().equals(nonce)) {
 			
 			//String username=ah.getUsernameParam();
 			String realm=ah.getRealmParam();
@@ -155,12 +158,11 @@ public class AuthenticationServerImpl implements AuthenticationServer {
 				
 				if (authentication_scheme.equalsIgnoreCase(scheme)) {
 					
-					DigestAuthentication auth=new DigestAuthentication(msg.getRequestLine().getMethod(),ah,msg.getBody(),keyToPasswd(authentication_service.getUserKey(user)));
-
 					// check user's authentication response
-					boolean is_authorized=auth.checkResponse();
+					byte[] ha1=authentication_service.getUserHa1(username,realm);
+					boolean is_authorized=DigestVerifier.checkResponse(msg.getRequestLine().getMethod(),ah,msg.getBody(),ha1);
 
-					rand=pickRandBytes();        
+					pickRand();
 						
 					if (!is_authorized) {
 						err_resp=sip_provider.messageFactory().createResponse(msg,SipResponses.FORBIDDEN,null,null);
@@ -196,7 +198,7 @@ public class AuthenticationServerImpl implements AuthenticationServer {
 			else wah=new ProxyAuthenticateHeader("Digest");
 			wah.addRealmParam(realm);
 			wah.addQopOptionsParam(qop_options);
-			wah.addNonceParam(HEX(rand));
+			wah.addNonceParam(nonce);
 			err_resp.setHeader(wah); 
 		}
 		return err_resp;
@@ -209,21 +211,22 @@ public class AuthenticationServerImpl implements AuthenticationServer {
 		AuthenticationInfoHeader aih=new AuthenticationInfoHeader();
 		aih.addRealmParam(realm);
 		aih.addQopOptionsParam(qop_options);
-		aih.addNextnonceParam(HEX(rand));
+		aih.addNextnonceParam(nonce);
 		return aih;
 	}
 
 
+	/** Picks a new random value and nonce. */
+	private void pickRand() {
+		rand=pickRandBytes();
+		nonce=HEX(rand);
+	}
+
 	/** Picks a random array of 16 bytes. */
 	private static byte[] pickRandBytes() {
 		return MD5(Long.toHexString(org.zoolu.util.Random.nextLong()));
 	}
 
-	/** Converts the byte[] key in a String passwd. */
-	private static String keyToPasswd(byte[] key) {
-		return new String(key);
-	}
-
 	/** Calculates the MD5 of a String. */
 	private static byte[] MD5(String str) {
 		return MD5.digest(str);
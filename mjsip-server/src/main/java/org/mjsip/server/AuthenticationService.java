@@ -22,6 +22,7 @@
 package org.mjsip.server;
 
 
+import org.mjsip.sip.authentication.DigestVerifier;
 
 
 /** AuthenticationService is the interface used by a SIP server to access to
@@ -54,6 +55,18 @@ public interface AuthenticationService extends Repository {
 	  * @return the user key */
 	public byte[] getUserKey(String user);
 
+	/** Gets the digest H(username:realm:passwd) of the user credentials, as used by HTTP Digest authentication.
+	  * <p> The default implementation computes it from the user key on every call. Implementations
+	  * should keep it precomputed.
+	  * @param username the user name without realm
+	  * @param realm the authentication realm
+	  * @return the digest, or null if the user <i>username@realm</i> is not present */
+	public default byte[] getUserHa1(String username, String realm) {
+		byte[] key=getUserKey(username+"@"+realm);
+		if (key==null) return null;
+		return DigestVerifier.ha1(username,realm,new String(key));
+	}
+
 	 
 	/** Sets the user sequence number.
 	  * @param user the user name
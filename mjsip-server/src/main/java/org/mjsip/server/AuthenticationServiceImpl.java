@@ -10,6 +10,7 @@ import java.io.IOException;
 import java.util.Enumeration;
 import java.util.Hashtable;
 
+import org.mjsip.sip.authentication.DigestVerifier;
 import org.slf4j.LoggerFactory;
 import org.zoolu.util.Base64;
 import org.zoolu.util.Parser;
@@ -136,6 +137,14 @@ public class AuthenticationServiceImpl implements AuthenticationService {
 		else return null;
 	}
 
+	/** Gets the digest of the user credentials, computed once per user key */
+	@Override
+	public byte[] getUserHa1(String username, String realm) {
+		UserAuthInfo ur=getUserAuthInfo(username+"@"+realm);
+		if (ur==null) return null;
+		return ur.getHa1(username,realm);
+	}
+
 
 	// ******************************* New methods *******************************
 
@@ -246,7 +255,18 @@ class UserAuthInfo {
 	/** User key */
 	byte[] key;
 	byte[] getKey() {  return key;  }  
-	void setKey(byte[] key) {  this.key=key;  }
+	void setKey(byte[] key) {  this.key=key;  ha1=null;  }
+
+	/** Digest H(username:realm:key), computed on first use */
+	private volatile byte[] ha1;
+	byte[] getHa1(String username, String realm) {
+		byte[] result=ha1;
+		if (result==null) {
+			result=DigestVerifier.ha1(username,realm,new String(key));
+			ha1=result;
+		}
+		return result;
+	}
 
 
 	/** Gets the String value of this Object.
@@ -12,4 +12,9 @@ public interface CallLogger {
 	
 	/** Updates log with the present message. */
 	public void update(SipMessage msg);
+
+	/** Writes all pending records and releases resources. */
+	public default void halt() {
+		// Nothing to release by default.
+	}
 }
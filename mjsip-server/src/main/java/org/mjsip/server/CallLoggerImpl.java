@@ -1,20 +1,28 @@
 package org.mjsip.server;
 
 
+import java.io.File;
 import java.util.Date;
-import java.util.Hashtable;
-import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.mjsip.sip.header.Header;
+import org.mjsip.sip.header.SipHeaders;
 import org.mjsip.sip.header.StatusLine;
 import org.mjsip.sip.message.SipMessage;
 import org.mjsip.sip.message.SipMethods;
-import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.zoolu.util.DateFormat;
 
 
 /** CallLoggerImpl implements a simple CallLogger.
   * <p> A CallLogger keeps trace of all processed calls.
+  * <p> Each call is kept as one {@link CallRecord} in a concurrent map. Calls are additionally
+  * queued in the order they have been started, so that the oldest call is evicted in constant time
+  * when the maximum number of calls is exceeded. Completed and failed calls are written as
+  * call-detail records (CDRs) by a background {@link CdrWriter}, so that logging does not block
+  * the processing of messages.
   */
 public class CallLoggerImpl implements CallLogger {
 	
@@ -23,138 +31,174 @@ public class CallLoggerImpl implements CallLogger {
 	/** Maximum number of concurrent calls. */
 	static final int MAX_SIZE=10000;
 
-	/** Table : (String)call_id --> (Long)invite date. */
-	Hashtable<String, Date> invite_dates;
-	/** Table : (String)call_id --> (Long)2xx date. */
-	Hashtable<String, Date> accepted_dates;
-	/** Table : (String)call_id --> (Long)4xx date. */
-	Hashtable<String, Date> refused_dates;
-	/** Table : (String)call_id --> (Long)bye date. */
-	Hashtable<String, Date> bye_dates;
-	
-	/** Table : (String)call_id --> (String)caller. */
-	Hashtable<String, String> callers;
-	/** Table : (String)call_id --> (String)callee. */
-	Hashtable<String, String> callees;
+	/** Table : (String)call_id --> call state. */
+	private final ConcurrentHashMap<String,CallRecord> calls=new ConcurrentHashMap<>();
+
+	/** Calls in the order they have been started. */
+	private final ConcurrentLinkedQueue<CallRecord> call_order=new ConcurrentLinkedQueue<>();
+
+	/** Number of calls in <i>call_order</i>. */
+	private final AtomicInteger size=new AtomicInteger();
 
-	/** Set : (String)call_id. */
-	Vector<String> calls;
+	/** Maximum number of calls. */
+	private final int max_size;
+
+	/** Writer for CDRs, or <i>null</i> if CDRs are only logged. */
+	private final CdrWriter cdr_writer;
 
 	/** 
 	 * Costructs a new CallLoggerImpl.
+	 * @param filename the file to write CDRs to, or <i>null</i> for logging only
 	 */
 	public CallLoggerImpl(String filename) {
-		invite_dates=new Hashtable<>();
-		accepted_dates=new Hashtable<>();
-		refused_dates=new Hashtable<>();
-		bye_dates=new Hashtable<>();
-		calls=new Vector<>();
-		callers=new Hashtable<>();
-		callees=new Hashtable<>();
-		
+		this(filename!=null? new CdrWriter(new File(filename)) : null, MAX_SIZE);
+	}
+
+	/** 
+	 * Costructs a new CallLoggerImpl.
+	 * @param cdr_writer the writer for CDRs, or <i>null</i> for logging only
+	 * @param max_size the maximum number of calls kept
+	 */
+	public CallLoggerImpl(CdrWriter cdr_writer, int max_size) {
+		this.cdr_writer=cdr_writer;
+		this.max_size=max_size;
 		LOG.info("Date \tCall-Id \tStatus \tCaller \tCallee \tSetup Time \tCall Time");
 	}
  
 	
+	/** Number of calls currently kept. */
+	public int size() {
+		return calls.size();
+	}
+
+
+	/** Gets the record of the given call, or <i>null</i> if the call is not (or no longer) known. */
+	public CallRecord getCall(String call_id) {
+		return calls.get(call_id);
+	}
+
+
+	/** Writes all pending CDRs and stops writing. */
+	@Override
+	public void halt() {
+		if (cdr_writer!=null) cdr_writer.halt();
+	}
+
+
 	/** Updates log with the present message.
 	  */
 	@Override
 	public void update(SipMessage msg) {
-		
-		String method=msg.getCSeqHeader().getMethod();
-		String call_id=msg.getCallIdHeader().getCallId();
-
-		if (method.equalsIgnoreCase(SipMethods.INVITE)) {
-			
-			if (msg.isRequest()) {
-				if (!invite_dates.containsKey(call_id)) {
-					Date time=new Date();
-					String caller=msg.getFromHeader().getNameAddress().getAddress().toString();
-					String callee=msg.getToHeader().getNameAddress().getAddress().toString();
-					insert(invite_dates,call_id,time);
-					callers.put(call_id,caller);
-					callees.put(call_id,callee);
-					eventlog(time,call_id,SipMethods.INVITE,caller,callee);
+		if (msg.isRequest()) {
+			if (msg.isInvite()) {
+				String call_id=callId(msg);
+				if (call_id==null || calls.containsKey(call_id) || !msg.hasFromHeader() || !msg.hasToHeader()) return;
+				// else
+				// parsed only once per call, other messages are classified from raw header values
+				String caller=msg.getFromHeader().getNameAddress().getAddress().toString();
+				String callee=msg.getToHeader().getNameAddress().getAddress().toString();
+				CallRecord call=new CallRecord(call_id,caller,callee,System.currentTimeMillis());
+				if (calls.putIfAbsent(call_id,call)==null) {
+					insert(call);
+					if (LOG.isInfoEnabled()) eventlog(call.getInviteTime(),call_id,SipMethods.INVITE,caller,callee);
 				}
 			}
-			else {
-				StatusLine status_line=msg.getStatusLine();
-				int code=status_line.getCode();
-				if (code>=200 && code<300 && !accepted_dates.containsKey(call_id)) {
-					Date time=new Date();
-					insert(accepted_dates,call_id,time);
-					String reason=status_line.getReason();     
-					eventlog(time,call_id,String.valueOf(code)+" "+reason,"","");
-				}
-				else
-				if (code>=300 && !refused_dates.containsKey(call_id)) {
-					Date time=new Date();
-					insert(refused_dates,call_id,time);
-					String reason=status_line.getReason();     
-					eventlog(time,call_id,String.valueOf(code)+" "+reason,"","");
+			else
+			if (msg.isBye()) {
+				CallRecord call=getCall(msg);
+				if (call!=null && call.bye(System.currentTimeMillis())) {
+					if (LOG.isInfoEnabled()) eventlog(call.getByeTime(),call.getCallId(),SipMethods.BYE,"","");
+					if (call.getAcceptedTime()>0) calllog(call);
 				}
 			}
 		}
-		else
-		if (method.equalsIgnoreCase(SipMethods.BYE)) {
-			
-			if (msg.isRequest()) {
-				if (!bye_dates.containsKey(call_id)) {
-					Date time=new Date();
-					insert(bye_dates,call_id,time);
-					eventlog(time,call_id,SipMethods.BYE,"","");
-					calllog(call_id);
-				}
-			}      
+		else {
+			// only responses to INVITE are of interest
+			String cseq=headerValue(msg,SipHeaders.CSeq);
+			if (cseq==null || !cseqMethod(cseq).equalsIgnoreCase(SipMethods.INVITE)) return;
+			// else
+			StatusLine status_line=msg.getStatusLine();
+			int code=status_line.getCode();
+			if (code<200) return;
+			// else
+			CallRecord call=getCall(msg);
+			if (call==null) return;
+			// else
+			long time=System.currentTimeMillis();
+			if (code<300) {
+				if (call.accept(time,code) && LOG.isInfoEnabled()) eventlog(time,call.getCallId(),code+" "+status_line.getReason(),"","");
+			}
+			else
+			if (call.refuse(time,code)) {
+				if (LOG.isInfoEnabled()) eventlog(time,call.getCallId(),code+" "+status_line.getReason(),"","");
+				calllog(call);
+			}
 		}
 	}
 
 
-	/** Insters/updates a call-state table.
+	/** Gets the record of the call the message belongs to. */
+	private CallRecord getCall(SipMessage msg) {
+		String call_id=callId(msg);
+		return call_id!=null? calls.get(call_id) : null;
+	}
+
+
+	/** Gets the Call-ID without parsing the header. */
+	private static String callId(SipMessage msg) {
+		String call_id=headerValue(msg,SipHeaders.Call_ID);
+		return call_id!=null? call_id.trim() : null;
+	}
+
+
+	/** Gets the raw value of a header field. */
+	private static String headerValue(SipMessage msg, String name) {
+		Header h=msg.getHeader(name);
+		return h!=null? h.getValue() : null;
+	}
+
+
+	/** Gets the method token of a raw CSeq value. */
+	private static String cseqMethod(String cseq) {
+		cseq=cseq.trim();
+		return cseq.substring(cseq.lastIndexOf(' ')+1);
+	}
+
+
+	/** Inserts a new call and evicts the oldest calls, if the maximum number of calls is exceeded.
 	  */
-	private void insert(Hashtable<String, Date> table, String call_id, Date time) {
-		if (!invite_dates.containsKey(call_id) && !accepted_dates.containsKey(call_id) && !refused_dates.containsKey(call_id) && !bye_dates.containsKey(call_id)); {
-			if (calls.size()>=MAX_SIZE)  {
-				String call_0=calls.elementAt(0);
-				invite_dates.remove(call_0);
-				accepted_dates.remove(call_0);
-				refused_dates.remove(call_0);
-				bye_dates.remove(call_0);
-				callers.remove(call_0);
-				callees.remove(call_0);
-				calls.removeElementAt(0);
+	private void insert(CallRecord call) {
+		call_order.add(call);
+		if (size.incrementAndGet()>max_size) {
+			CallRecord oldest=call_order.poll();
+			if (oldest!=null) {
+				size.decrementAndGet();
+				calls.remove(oldest.getCallId(),oldest);
 			}
-			calls.addElement(call_id);
 		}
-		table.put(call_id,time);
 	}
 
 
 	/** 
 	 * Prints a generic event log.
-	 * 
-	 * FIXME mybe this function partially replicates things {@link Logger} does
 	 */
-	private void eventlog(Date time, String call_id, String event, String caller, String callee) {
-		//call_logger.log(DateFormat.formatHHMMSS(time)+"\t"+call_id+"\t"+event+"\t"+caller+"\t"+callee);
-		LOG.info("{}\t{}\t{}\t{}\t{]", DateFormat.formatYyyyMMddHHmmssSSS(time), call_id, event, caller, callee);
+	private void eventlog(long time, String call_id, String event, String caller, String callee) {
+		LOG.info("{}\t{}\t{}\t{}\t{}", DateFormat.formatYyyyMMddHHmmssSSS(new Date(time)), call_id, event, caller, callee);
 	}
 
 
 	/** 
-	 * Prints a call report.
+	 * Reports a completed or failed call.
 	 */
-	private void calllog(String call_id) {
-		Date invite_time=invite_dates.get(call_id);
-		Date accepted_time=accepted_dates.get(call_id);
-		Date bye_time=bye_dates.get(call_id);
-		if (invite_time!=null && accepted_time!=null && bye_time!=null) 
-			//call_logger.log(DateFormat.formatHHMMSS(invite_time)+"\t"+call_id+"\tCALL \t"+callers.get(call_id)+"\t"+callees.get(call_id)+"\t"+(accepted_time.getTime()-invite_time.getTime())+"\t"+(bye_time.getTime()-accepted_time.getTime()));
-			LOG.info("{}\t{}\tCALL \t{}\t{}\t{}\t{}",
-					DateFormat.formatYyyyMMddHHmmssSSS(invite_time), call_id, callers.get(call_id), callees.get(call_id),
-					(accepted_time.getTime() - invite_time.getTime()),
-					(bye_time.getTime() - accepted_time.getTime())
-				);
+	private void calllog(CallRecord call) {
+		if (cdr_writer!=null) cdr_writer.write(call);
+		else
+		if (LOG.isInfoEnabled()) {
+			StringBuilder line=new StringBuilder();
+			CdrWriter.format(line,call);
+			line.setLength(line.length()-1);
+			LOG.info("{}", line);
+		}
 	}
 
 }
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.server;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * Compact state of a single call tracked by a {@link CallLoggerImpl}.
+ *
+ * <p>
+ * Event times are milliseconds since the epoch, <code>0</code> if the event has not (yet) happened.
+ * Each event time is set only once by the first matching message, also if messages of the same call
+ * are processed concurrently.
+ * </p>
+ */
+public final class CallRecord {
+
+	private static final AtomicLongFieldUpdater<CallRecord> ACCEPTED =
+		AtomicLongFieldUpdater.newUpdater(CallRecord.class, "_acceptedTime");
+
+	private static final AtomicLongFieldUpdater<CallRecord> REFUSED =
+		AtomicLongFieldUpdater.newUpdater(CallRecord.class, "_refusedTime");
+
+	private static final AtomicLongFieldUpdater<CallRecord> BYE =
+		AtomicLongFieldUpdater.newUpdater(CallRecord.class, "_byeTime");
+
+	private final String _callId;
+
+	private final String _caller;
+
+	private final String _callee;
+
+	private final long _inviteTime;
+
+	private volatile long _acceptedTime;
+
+	private volatile long _refusedTime;
+
+	private volatile long _byeTime;
+
+	private volatile int _status;
+
+	/**
+	 * Creates a {@link CallRecord} for a call started with an INVITE at the given time.
+	 */
+	public CallRecord(String callId, String caller, String callee, long inviteTime) {
+		_callId = callId;
+		_caller = caller;
+		_callee = callee;
+		_inviteTime = inviteTime;
+	}
+
+	/**
+	 * The Call-ID of the call.
+	 */
+	public String getCallId() {
+		return _callId;
+	}
+
+	/**
+	 * The address of the From header of the initial INVITE.
+	 */
+	public String getCaller() {
+		return _caller;
+	}
+
+	/**
+	 * The address of the To header of the initial INVITE.
+	 */
+	public String getCallee() {
+		return _callee;
+	}
+
+	/**
+	 * Time of the initial INVITE.
+	 */
+	public long getInviteTime() {
+		return _inviteTime;
+	}
+
+	/**
+	 * Time of the first 2xx response.
+	 */
+	public long getAcceptedTime() {
+		return _acceptedTime;
+	}
+
+	/**
+	 * Time of the first final error response.
+	 */
+	public long getRefusedTime() {
+		return _refusedTime;
+	}
+
+	/**
+	 * Time of the first BYE.
+	 */
+	public long getByeTime() {
+		return _byeTime;
+	}
+
+	/**
+	 * The status code of the first final response.
+	 */
+	public int getStatus() {
+		return _status;
+	}
+
+	/**
+	 * Records a 2xx response.
+	 *
+	 * @return Whether this is the first 2xx response of the call.
+	 */
+	boolean accept(long time, int status) {
+		if (ACCEPTED.compareAndSet(this, 0, time)) {
+			_status = status;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Records a final error response.
+	 *
+	 * @return Whether this is the first error response of a call not yet accepted.
+	 */
+	boolean refuse(long time, int status) {
+		if (_acceptedTime == 0 && REFUSED.compareAndSet(this, 0, time)) {
+			_status = status;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Records a BYE.
+	 *
+	 * @return Whether this is the first BYE of the call.
+	 */
+	boolean bye(long time) {
+		return BYE.compareAndSet(this, 0, time);
+	}
+
+	@Override
+	public String toString() {
+		return "CallRecord(" + _callId + ")";
+	}
+
+}
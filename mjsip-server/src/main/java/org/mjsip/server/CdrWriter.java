@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.server;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.LoggerFactory;
+import org.zoolu.util.DateFormat;
+
+/**
+ * Background writer appending call-detail records (CDRs) to rolling files.
+ *
+ * <p>
+ * Records are handed over through a bounded queue and written in batches by a single daemon
+ * thread, so that the thread processing a call never blocks on file I/O. If the writer cannot keep
+ * up and the queue is full, records are dropped and counted.
+ * </p>
+ *
+ * <p>
+ * Records are appended to the configured file. When the file exceeds its maximum size, it is
+ * renamed with a time stamp suffix and a new file is started.
+ * </p>
+ */
+public class CdrWriter {
+
+	private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(CdrWriter.class);
+
+	/** Default capacity of the record queue. */
+	public static final int DEFAULT_QUEUE_SIZE = 4096;
+
+	/** Default size in bytes after which a CDR file is rolled over. */
+	public static final long DEFAULT_MAX_FILE_SIZE = 10 * 1024 * 1024;
+
+	/** Maximum number of records written with a single flush. */
+	private static final int BATCH_SIZE = 256;
+
+	private final File _file;
+
+	private final long _maxFileSize;
+
+	private final ArrayBlockingQueue<CallRecord> _queue;
+
+	private final LongAdder _dropped = new LongAdder();
+
+	private final Thread _thread;
+
+	private volatile boolean _stop;
+
+	private Writer _out;
+
+	private long _fileSize;
+
+	/**
+	 * Creates a {@link CdrWriter} with default settings.
+	 */
+	public CdrWriter(File file) {
+		this(file, DEFAULT_QUEUE_SIZE, DEFAULT_MAX_FILE_SIZE);
+	}
+
+	/**
+	 * Creates a {@link CdrWriter}.
+	 *
+	 * @param file
+	 *        The file to append records to.
+	 * @param queueSize
+	 *        The maximum number of records waiting to be written.
+	 * @param maxFileSize
+	 *        The size in bytes after which the file is rolled over.
+	 */
+	public CdrWriter(File file, int queueSize, long maxFileSize) {
+		_file = file;
+		_maxFileSize = maxFileSize;
+		_queue = new ArrayBlockingQueue<>(queueSize);
+		_thread = new Thread(this::run, "cdr-writer");
+		_thread.setDaemon(true);
+		_thread.start();
+	}
+
+	/**
+	 * Schedules the given record for writing.
+	 *
+	 * @return Whether the record has been accepted, <code>false</code> if the queue is full.
+	 */
+	public boolean write(CallRecord record) {
+		if (_queue.offer(record)) {
+			return true;
+		}
+		_dropped.increment();
+		return false;
+	}
+
+	/**
+	 * Number of records dropped, because the queue was full.
+	 */
+	public long getDropped() {
+		return _dropped.sum();
+	}
+
+	/**
+	 * Writes all pending records and stops the writer thread.
+	 */
+	public void halt() {
+		_stop = true;
+		_thread.interrupt();
+		try {
+			_thread.join(1000);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void run() {
+		ArrayList<CallRecord> batch = new ArrayList<>(BATCH_SIZE);
+		StringBuilder line = new StringBuilder();
+		try {
+			while (!_stop || !_queue.isEmpty()) {
+				CallRecord first;
+				try {
+					first = _queue.poll(1, TimeUnit.SECONDS);
+				} catch (InterruptedException ex) {
+					continue;
+				}
+				if (first == null) {
+					continue;
+				}
+				batch.add(first);
+				_queue.drainTo(batch, BATCH_SIZE - 1);
+				try {
+					writeBatch(batch, line);
+				} catch (IOException ex) {
+					LOG.warn("Cannot write call detail records to '{}', {} records lost.", _file, batch.size(), ex);
+					closeFile();
+				}
+				batch.clear();
+			}
+		} finally {
+			closeFile();
+		}
+	}
+
+	private void writeBatch(ArrayList<CallRecord> batch, StringBuilder line) throws IOException {
+		for (int n = 0, cnt = batch.size(); n < cnt; n++) {
+			line.setLength(0);
+			format(line, batch.get(n));
+			if (_out == null || _fileSize >= _maxFileSize) {
+				rollOver();
+			}
+			_out.write(line.toString());
+			_fileSize += line.length();
+		}
+		_out.flush();
+	}
+
+	private void rollOver() throws IOException {
+		if (_out != null) {
+			closeFile();
+			String rolledName = _file.getPath() + "." + DateFormat.formatYyyyMMddHHmmssSSS(new Date()).replaceAll("[^0-9]", "");
+			File rolled = new File(rolledName);
+			for (int n = 1; rolled.exists(); n++) {
+				// Never overwrite a file rolled over within the same millisecond.
+				rolled = new File(rolledName + "-" + n);
+			}
+			if (!_file.renameTo(rolled)) {
+				LOG.warn("Cannot roll over call detail record file '{}'.", _file);
+			}
+		}
+		_out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(_file, true), StandardCharsets.UTF_8));
+		_fileSize = _file.length();
+	}
+
+	private void closeFile() {
+		if (_out != null) {
+			try {
+				_out.close();
+			} catch (IOException ex) {
+				LOG.warn("Cannot close call detail record file '{}'.", _file, ex);
+			}
+			_out = null;
+		}
+	}
+
+	/**
+	 * Formats a record as tab separated line: start time, Call-ID, result, caller, callee, setup
+	 * time and call duration in milliseconds.
+	 */
+	static void format(StringBuilder out, CallRecord record) {
+		long invite = record.getInviteTime();
+		long accepted = record.getAcceptedTime();
+		long bye = record.getByeTime();
+		out.append(DateFormat.formatYyyyMMddHHmmssSSS(new Date(invite)));
+		out.append('\t').append(record.getCallId());
+		out.append('\t').append(accepted > 0 ? "CALL" : "FAILED " + record.getStatus());
+		out.append('\t').append(record.getCaller());
+		out.append('\t').append(record.getCallee());
+		if (accepted > 0) {
+			out.append('\t').append(accepted - invite);
+			out.append('\t').append(bye > 0 ? bye - accepted : 0);
+		} else {
+			out.append('\t').append(record.getRefusedTime() - invite);
+			out.append('\t').append(0);
+		}
+		out.append('\n');
+	}
+
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.server;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.slf4j.LoggerFactory;
+import org.zoolu.net.SocketAddress;
+
+/**
+ * Consistent hash ring assigning keys (address-of-records or Call-IDs) to the nodes of a server
+ * cluster.
+ *
+ * <p>
+ * Each node is placed on the ring at a number of virtual positions, so that keys are spread evenly
+ * and adding or removing a node only moves the keys of the ring segments it takes over or gives up.
+ * The hash function is fixed (not keyed), so that all nodes configured with the same node list
+ * compute the same owner for each key.
+ * </p>
+ *
+ * <p>
+ * A ring is immutable and can be shared between threads.
+ * </p>
+ */
+public final class ClusterRing {
+
+	private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(ClusterRing.class);
+
+	/** Default number of ring positions per node. */
+	public static final int DEFAULT_VIRTUAL_NODES = 128;
+
+	private static final long FNV_OFFSET = 0xCBF29CE484222325L;
+
+	private static final long FNV_PRIME = 0x100000001B3L;
+
+	private final SocketAddress _self;
+
+	private final SocketAddress[] _nodes;
+
+	/** Resolved addresses of the nodes, <code>null</code> for nodes that cannot be resolved. */
+	private final InetAddress[] _nodeAddresses;
+
+	/** Sorted positions on the ring. */
+	private final long[] _positions;
+
+	/** Node owning the ring segment ending at the position with the same index. */
+	private final SocketAddress[] _owners;
+
+	/**
+	 * Creates a {@link ClusterRing} with {@link #DEFAULT_VIRTUAL_NODES}.
+	 *
+	 * @see #ClusterRing(List, SocketAddress, int)
+	 */
+	public ClusterRing(List<SocketAddress> nodes, SocketAddress self) {
+		this(nodes, self, DEFAULT_VIRTUAL_NODES);
+	}
+
+	/**
+	 * Creates a {@link ClusterRing}.
+	 *
+	 * @param nodes
+	 *        The addresses of all cluster nodes, including the local one.
+	 * @param self
+	 *        The address of the local node.
+	 * @param virtualNodes
+	 *        The number of ring positions per node.
+	 */
+	public ClusterRing(List<SocketAddress> nodes, SocketAddress self, int virtualNodes) {
+		if (nodes.isEmpty()) {
+			throw new IllegalArgumentException("A cluster requires at least one node.");
+		}
+		if (!nodes.contains(self)) {
+			throw new IllegalArgumentException("Local node " + self + " is not a cluster node: " + nodes);
+		}
+		_self = self;
+		_nodes = nodes.toArray(new SocketAddress[nodes.size()]);
+		_nodeAddresses = new InetAddress[_nodes.length];
+		for (int k = 0; k < _nodes.length; k++) {
+			String host = _nodes[k].getAddress().toString();
+			try {
+				_nodeAddresses[k] = InetAddress.getByName(host);
+			} catch (UnknownHostException ex) {
+				LOG.warn("Cannot resolve cluster node '{}', matching its name only.", host);
+			}
+		}
+
+		int size = _nodes.length * virtualNodes;
+		long[] positions = new long[size];
+		SocketAddress[] owners = new SocketAddress[size];
+		int n = 0;
+		for (SocketAddress node : _nodes) {
+			String name = node.toString();
+			for (int v = 0; v < virtualNodes; v++) {
+				positions[n] = hash(name + "#" + v);
+				owners[n] = node;
+				n++;
+			}
+		}
+
+		// Sort positions and owners together.
+		Integer[] order = new Integer[size];
+		for (int k = 0; k < size; k++) {
+			order[k] = k;
+		}
+		Arrays.sort(order, (a, b) -> Long.compare(positions[a], positions[b]));
+		_positions = new long[size];
+		_owners = new SocketAddress[size];
+		for (int k = 0; k < size; k++) {
+			_positions[k] = positions[order[k]];
+			_owners[k] = owners[order[k]];
+		}
+	}
+
+	/**
+	 * The address of the local node.
+	 */
+	public SocketAddress getSelf() {
+		return _self;
+	}
+
+	/**
+	 * The number of cluster nodes.
+	 */
+	public int size() {
+		return _nodes.length;
+	}
+
+	/**
+	 * The node responsible for the given key.
+	 */
+	public SocketAddress getOwner(String key) {
+		long position = hash(key);
+		int index = Arrays.binarySearch(_positions, position);
+		if (index < 0) {
+			index = -index - 1;
+			if (index == _positions.length) {
+				index = 0;
+			}
+		}
+		return _owners[index];
+	}
+
+	/**
+	 * Whether the local node is responsible for the given key.
+	 */
+	public boolean isLocal(String key) {
+		return _self.equals(getOwner(key));
+	}
+
+	/**
+	 * Whether the given address is one of the cluster nodes.
+	 *
+	 * <p>
+	 * A node matches, if the port is equal, and the host is either equal to the configured host name
+	 * (ignoring case), or a numeric address equal to the address the node has been resolved to when
+	 * creating the ring. Host names are never resolved by this method, so that it can be used while
+	 * processing messages.
+	 * </p>
+	 *
+	 * @param host
+	 *        The host name or numeric IP address, e.g. the source address of a received message.
+	 * @param port
+	 *        The port.
+	 */
+	public boolean isNode(String host, int port) {
+		InetAddress address = null;
+		for (int k = 0; k < _nodes.length; k++) {
+			SocketAddress node = _nodes[k];
+			if (node.getPort() != port) {
+				continue;
+			}
+			if (node.getAddress().toString().equalsIgnoreCase(host)) {
+				return true;
+			}
+			if (_nodeAddresses[k] == null) {
+				continue;
+			}
+			if (address == null) {
+				address = parseLiteral(host);
+				if (address == null) {
+					return false;
+				}
+			}
+			if (address.equals(_nodeAddresses[k])) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Parses a numeric IPv4 or IPv6 address, or returns <code>null</code> for host names.
+	 */
+	private static InetAddress parseLiteral(String host) {
+		if (host.startsWith("[") && host.endsWith("]")) {
+			host = host.substring(1, host.length() - 1);
+		}
+		boolean ipv6 = host.indexOf(':') >= 0;
+		if (!ipv6) {
+			for (int n = 0, cnt = host.length(); n < cnt; n++) {
+				char ch = host.charAt(n);
+				if (ch != '.' && (ch < '0' || ch > '9')) {
+					return null;
+				}
+			}
+		}
+		try {
+			// Does not query a name server for numeric addresses.
+			return InetAddress.getByName(host);
+		} catch (UnknownHostException ex) {
+			return null;
+		}
+	}
+
+	/**
+	 * 64 bit FNV-1a hash with a final avalanche step (from MurmurHash3).
+	 */
+	static long hash(CharSequence key) {
+		long hash = FNV_OFFSET;
+		for (int n = 0, cnt = key.length(); n < cnt; n++) {
+			hash = (hash ^ key.charAt(n)) * FNV_PRIME;
+		}
+		hash ^= hash >>> 33;
+		hash *= 0xFF51AFD7ED558CCDL;
+		hash ^= hash >>> 33;
+		hash *= 0xC4CEB9FE1A85EC53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+
+	@Override
+	public String toString() {
+		return "ClusterRing(self=" + _self + ", nodes=" + Arrays.toString(_nodes) + ")";
+	}
+
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.server;
+
+import java.util.HashMap;
+import java.util.Locale;
+
+/**
+ * Map from domain names to values, optionally with longest-suffix lookup.
+ *
+ * <p>
+ * Domain names are compared case-insensitively. By default, a value registered for
+ * <code>example.com</code> only matches <code>example.com</code> itself. If sub-domain matching
+ * is enabled, it also matches all sub-domains such as <code>sip.example.com</code>, unless a
+ * more specific domain has its own value. A lookup then probes one hash entry per label of the
+ * looked-up host.
+ * </p>
+ *
+ * <p>
+ * A map is not thread-safe while being filled. It may be shared between threads, after it has
+ * been safely published and is no longer modified.
+ * </p>
+ *
+ * @param <T>
+ *        The type of values.
+ */
+public final class DomainMap<T> {
+
+	private final HashMap<String, T> _entries = new HashMap<>();
+
+	private final boolean _matchSubdomains;
+
+	/**
+	 * Creates a {@link DomainMap} matching exact domains only.
+	 */
+	public DomainMap() {
+		this(false);
+	}
+
+	/**
+	 * Creates a {@link DomainMap}.
+	 *
+	 * @param matchSubdomains
+	 *        Whether a domain also matches all its sub-domains.
+	 */
+	public DomainMap(boolean matchSubdomains) {
+		_matchSubdomains = matchSubdomains;
+	}
+
+	/**
+	 * Whether a domain also matches all its sub-domains.
+	 */
+	public boolean isMatchSubdomains() {
+		return _matchSubdomains;
+	}
+
+	/**
+	 * Number of domains with values.
+	 */
+	public int size() {
+		return _entries.size();
+	}
+
+	/**
+	 * Associates the given domain with the given value.
+	 *
+	 * @return The value previously associated with the domain, or <code>null</code>.
+	 */
+	public T put(String domain, T value) {
+		return _entries.put(normalize(domain), value);
+	}
+
+	/**
+	 * The value associated with exactly the given domain.
+	 */
+	public T get(String domain) {
+		return _entries.get(normalize(domain));
+	}
+
+	/**
+	 * The value associated with the given host, or with its longest domain suffix, if sub-domain
+	 * matching is enabled.
+	 *
+	 * @return The value of the most specific matching domain, or <code>null</code> if no domain
+	 *         matches.
+	 */
+	public T lookup(String host) {
+		if (host == null || _entries.isEmpty()) {
+			return null;
+		}
+		String suffix = normalize(host);
+		if (!_matchSubdomains) {
+			return _entries.get(suffix);
+		}
+		while (true) {
+			T result = _entries.get(suffix);
+			if (result != null) {
+				return result;
+			}
+			int dot = suffix.indexOf('.');
+			if (dot < 0) {
+				return null;
+			}
+			suffix = suffix.substring(dot + 1);
+		}
+	}
+
+	private static String normalize(String domain) {
+		if (domain.endsWith(".")) {
+			domain = domain.substring(0, domain.length() - 1);
+		}
+		return domain.toLowerCase(Locale.ROOT);
+	}
+
+}
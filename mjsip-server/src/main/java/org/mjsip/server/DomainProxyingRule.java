@@ -28,6 +28,7 @@ import org.zoolu.net.SocketAddress;
 
 
 /** DomainProxyingRule is a ProxyingRule based on the domain or host name of URIs.
+  * Optionally, a rule for a domain also matches all its sub-domains.
   */
 class DomainProxyingRule implements ProxyingRule {
 	
@@ -37,12 +38,22 @@ class DomainProxyingRule implements ProxyingRule {
 
 	/** Next-hop server. */
 	SocketAddress nexthop;
+
+	/** Whether the rule also matches sub-domains. */
+	boolean subdomains;
 	
 	
-	/** Creates a new DomainProxyingRule. */
+	/** Creates a new DomainProxyingRule matching the given domain only. */
 	public DomainProxyingRule(String domain, SocketAddress nexthop) {
+		this(domain,nexthop,false);
+	}
+
+	/** Creates a new DomainProxyingRule.
+	  * @param subdomains whether the rule also matches all sub-domains of the given domain */
+	public DomainProxyingRule(String domain, SocketAddress nexthop, boolean subdomains) {
 		this.domain=domain;
 		this.nexthop=nexthop;
+		this.subdomains=subdomains;
 	}
 	
 
@@ -57,12 +68,21 @@ class DomainProxyingRule implements ProxyingRule {
 		// else
 		SipURI sip_uri=uri.toSipURI();
 		String host=sip_uri.getHost();
-		if ((host.equalsIgnoreCase(domain))) {
+		if (matches(host)) {
 			return new SipURI(sip_uri.getUserName(),nexthop.getAddress().toString(),nexthop.getPort());
 		}
 		else return null;
 	}
 
+	/** Whether the given host is the rule's domain or, if enabled, one of its sub-domains. */
+	boolean matches(String host) {
+		if (host==null) return false;
+		if (!subdomains) return host.equalsIgnoreCase(domain);
+		int start=host.length()-domain.length();
+		if (start<0 || !host.regionMatches(true,start,domain,0,domain.length())) return false;
+		return start==0 || host.charAt(start-1)=='.';
+	}
+
 	/** Gets the String value. */
 	@Override
 	public String toString() {
@@ -0,0 +1,440 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.server;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.mjsip.sip.authentication.DigestVerifier;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link AuthenticationService} storing the precomputed digest <code>H(username:realm:passwd)</code>
+ * of each user instead of the password.
+ *
+ * <p>
+ * The digests are kept in a compact binary file that is memory-mapped and searched in place, so
+ * that neither loading the service nor authenticating a request decodes the whole user database.
+ * Users are named <i>username@realm</i> as in {@link AuthenticationServiceImpl}. Keys passed to
+ * {@link #addUser(String, byte[])} and {@link #setUserKey(String, byte[])} are interpreted as
+ * passwords and only their digest is stored. {@link #getUserKey(String)} therefore always returns
+ * <code>null</code>.
+ * </p>
+ *
+ * <p>
+ * Changes are collected in memory and merged into the file by {@link #sync()}.
+ * </p>
+ *
+ * <p>
+ * File format (big endian): the magic number <code>MJH1</code>, the number of users <i>n</i>,
+ * <i>n</i> record offsets relative to the end of the offset table in ascending order of user
+ * names, and the records. Each record consists of the length of the UTF-8 encoded user name as
+ * unsigned short, the user name, and the 16 bytes of the digest.
+ * </p>
+ */
+public class Ha1AuthenticationService implements AuthenticationService {
+
+	private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(Ha1AuthenticationService.class);
+
+	private static final int MAGIC = ('M' << 24) | ('J' << 16) | ('H' << 8) | '1';
+
+	private static final int HA1_LENGTH = DigestVerifier.HA1_LENGTH;
+
+	/** Marker for a user removed since the last {@link #sync()}. */
+	private static final byte[] REMOVED = new byte[0];
+
+	private static final Table EMPTY = new Table(ByteBuffer.allocate(0), 0);
+
+	private final Path _file;
+
+	/** The users as stored in the file. */
+	private volatile Table _table = EMPTY;
+
+	/** Users changed since the last {@link #sync()}, {@link #REMOVED} for removed users. */
+	private final Map<String, byte[]> _changes = new ConcurrentHashMap<>();
+
+	/**
+	 * Creates a {@link Ha1AuthenticationService} and loads the given file.
+	 *
+	 * <p>
+	 * If the file does not exist, the service starts empty and creates it on the first
+	 * {@link #sync()}.
+	 * </p>
+	 */
+	public Ha1AuthenticationService(String fileName) {
+		_file = Paths.get(fileName);
+		load();
+	}
+
+	/**
+	 * Maps the file, dropping all changes not yet written.
+	 */
+	public synchronized void load() {
+		_changes.clear();
+		_table = map();
+	}
+
+	private Table map() {
+		try (FileChannel channel = FileChannel.open(_file, StandardOpenOption.READ)) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (buffer.capacity() < 8 || buffer.getInt(0) != MAGIC) {
+				LOG.error("File '{}' is not a digest credential file, starting with an empty DB.", _file);
+				return EMPTY;
+			}
+			Table result = Table.checked(buffer);
+			if (result == null) {
+				LOG.error("Digest credential file '{}' is corrupt, starting with an empty DB.", _file);
+				return EMPTY;
+			}
+			return result;
+		} catch (NoSuchFileException ex) {
+			LOG.warn("File '{}' not found: created new empty DB.", _file);
+			return EMPTY;
+		} catch (IOException ex) {
+			LOG.error("Cannot read file '{}', starting with an empty DB.", _file, ex);
+			return EMPTY;
+		}
+	}
+
+	@Override
+	public synchronized void sync() {
+		if (_changes.isEmpty()) {
+			return;
+		}
+
+		// Changes made while writing are kept for the next sync.
+		Map<String, byte[]> changes = new HashMap<>(_changes);
+		TreeMap<byte[], byte[]> users = new TreeMap<>(Arrays::compareUnsigned);
+		Table table = _table;
+		for (int n = 0; n < table._size; n++) {
+			users.put(table.name(n), table.ha1(n));
+		}
+		for (Entry<String, byte[]> change : changes.entrySet()) {
+			byte[] name = utf8(change.getKey());
+			if (change.getValue() == REMOVED) {
+				users.remove(name);
+			} else {
+				users.put(name, change.getValue());
+			}
+		}
+
+		try {
+			Path tmp = _file.resolveSibling(_file.getFileName() + ".tmp");
+			try (OutputStream stream = Files.newOutputStream(tmp)) {
+				write(new DataOutputStream(new BufferedOutputStream(stream)), users);
+			}
+			try {
+				Files.move(tmp, _file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException ex) {
+				Files.move(tmp, _file, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} catch (IOException ex) {
+			LOG.warn("Error trying to write on file '{}'.", _file, ex);
+			return;
+		}
+		_table = map();
+		for (Entry<String, byte[]> change : changes.entrySet()) {
+			_changes.remove(change.getKey(), change.getValue());
+		}
+	}
+
+	private static void write(DataOutputStream out, TreeMap<byte[], byte[]> users) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeInt(users.size());
+		int offset = 0;
+		for (byte[] name : users.keySet()) {
+			out.writeInt(offset);
+			offset += 2 + name.length + HA1_LENGTH;
+		}
+		for (Entry<byte[], byte[]> user : users.entrySet()) {
+			byte[] name = user.getKey();
+			out.writeShort(name.length);
+			out.write(name);
+			out.write(user.getValue());
+		}
+		out.flush();
+	}
+
+	@Override
+	public int size() {
+		Table table = _table;
+		int result = table._size;
+		for (Entry<String, byte[]> change : _changes.entrySet()) {
+			boolean stored = table.indexOf(utf8(change.getKey())) >= 0;
+			if (change.getValue() == REMOVED) {
+				if (stored) {
+					result--;
+				}
+			} else if (!stored) {
+				result++;
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public Enumeration<String> getUsers() {
+		TreeMap<String, byte[]> users = new TreeMap<>();
+		Table table = _table;
+		for (int n = 0; n < table._size; n++) {
+			users.put(new String(table.name(n), StandardCharsets.UTF_8), REMOVED);
+		}
+		for (Entry<String, byte[]> change : _changes.entrySet()) {
+			if (change.getValue() == REMOVED) {
+				users.remove(change.getKey());
+			} else {
+				users.put(change.getKey(), REMOVED);
+			}
+		}
+		return Collections.enumeration(users.keySet());
+	}
+
+	@Override
+	public boolean hasUser(String user) {
+		return lookup(user) != null;
+	}
+
+	@Override
+	public Repository addUser(String user) {
+		return addUser(user, new byte[0]);
+	}
+
+	@Override
+	public Repository removeUser(String user) {
+		_changes.put(user, REMOVED);
+		return this;
+	}
+
+	@Override
+	public synchronized Repository removeAllUsers() {
+		_changes.clear();
+		Table table = _table;
+		for (int n = 0; n < table._size; n++) {
+			_changes.put(new String(table.name(n), StandardCharsets.UTF_8), REMOVED);
+		}
+		return this;
+	}
+
+	@Override
+	public AuthenticationService addUser(String user, byte[] key) {
+		if (!hasUser(user)) {
+			setUserHa1(user, ha1(user, key));
+		}
+		return this;
+	}
+
+	@Override
+	public AuthenticationService setUserKey(String user, byte[] key) {
+		if (hasUser(user)) {
+			setUserHa1(user, ha1(user, key));
+		}
+		return this;
+	}
+
+	/**
+	 * Passwords are not stored.
+	 *
+	 * @return Always <code>null</code>.
+	 */
+	@Override
+	public byte[] getUserKey(String user) {
+		return null;
+	}
+
+	@Override
+	public byte[] getUserHa1(String username, String realm) {
+		return lookup(username + "@" + realm);
+	}
+
+	/**
+	 * Adds or replaces the user with the given precomputed digest of its credentials.
+	 *
+	 * @param user
+	 *        The user name as <i>username@realm</i>.
+	 * @param ha1
+	 *        The digest <code>H(username:realm:passwd)</code>, see
+	 *        {@link DigestVerifier#ha1(String, String, String)}.
+	 */
+	public Ha1AuthenticationService setUserHa1(String user, byte[] ha1) {
+		if (ha1.length != HA1_LENGTH) {
+			throw new IllegalArgumentException("Not an MD5 digest: " + ha1.length + " bytes.");
+		}
+		if (utf8(user).length > 0xFFFF) {
+			throw new IllegalArgumentException("User name too long.");
+		}
+		_changes.put(user, ha1.clone());
+		return this;
+	}
+
+	/**
+	 * Adds all users of the given service, whose keys are their passwords.
+	 */
+	public Ha1AuthenticationService importUsers(AuthenticationService other) {
+		for (Enumeration<String> e = other.getUsers(); e.hasMoreElements();) {
+			String user = e.nextElement();
+			byte[] key = other.getUserKey(user);
+			if (key != null) {
+				setUserHa1(user, ha1(user, key));
+			}
+		}
+		return this;
+	}
+
+	private byte[] lookup(String user) {
+		byte[] changed = _changes.get(user);
+		if (changed != null) {
+			return changed == REMOVED ? null : changed;
+		}
+		Table table = _table;
+		int index = table.indexOf(utf8(user));
+		return index < 0 ? null : table.ha1(index);
+	}
+
+	private static byte[] ha1(String user, byte[] key) {
+		int sep = user.lastIndexOf('@');
+		if (sep < 0) {
+			throw new IllegalArgumentException("User name without realm: " + user);
+		}
+		return DigestVerifier.ha1(user.substring(0, sep), user.substring(sep + 1), new String(key));
+	}
+
+	private static byte[] utf8(String user) {
+		return user.getBytes(StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public String toString() {
+		return "Ha1AuthenticationService(" + _file + ", " + size() + " users)";
+	}
+
+	/**
+	 * Read-only view of a mapped credential file.
+	 */
+	private static final class Table {
+
+		final ByteBuffer _buffer;
+
+		final int _size;
+
+		/** Position of the first record. */
+		final int _records;
+
+		Table(ByteBuffer buffer, int size) {
+			_buffer = buffer;
+			_size = size;
+			_records = 8 + 4 * size;
+		}
+
+		/**
+		 * Creates a {@link Table} for the given buffer, if the offsets and record lengths fill the
+		 * buffer exactly.
+		 *
+		 * <p>
+		 * Only the offset table and the record lengths are checked, user names are not decoded.
+		 * </p>
+		 *
+		 * @return The table, or <code>null</code> if the buffer is not a valid credential file.
+		 */
+		static Table checked(ByteBuffer buffer) {
+			int size = buffer.getInt(4);
+			int capacity = buffer.capacity();
+			if (size < 0 || size > (capacity - 8) / 4) {
+				return null;
+			}
+			Table result = new Table(buffer, size);
+			int end = result._records;
+			for (int n = 0; n < size; n++) {
+				int record = result.record(n);
+				if (record != end || record + 2 > capacity) {
+					return null;
+				}
+				end = record + 2 + (buffer.getShort(record) & 0xFFFF) + HA1_LENGTH;
+				if (end > capacity) {
+					return null;
+				}
+			}
+			return end == capacity ? result : null;
+		}
+
+		private int record(int index) {
+			return _records + _buffer.getInt(8 + 4 * index);
+		}
+
+		byte[] name(int index) {
+			int record = record(index);
+			byte[] result = new byte[_buffer.getShort(record) & 0xFFFF];
+			for (int n = 0; n < result.length; n++) {
+				result[n] = _buffer.get(record + 2 + n);
+			}
+			return result;
+		}
+
+		byte[] ha1(int index) {
+			int record = record(index);
+			int begin = record + 2 + (_buffer.getShort(record) & 0xFFFF);
+			byte[] result = new byte[HA1_LENGTH];
+			for (int n = 0; n < HA1_LENGTH; n++) {
+				result[n] = _buffer.get(begin + n);
+			}
+			return result;
+		}
+
+		/**
+		 * Binary search for the given UTF-8 encoded user name.
+		 *
+		 * @return The index of the user, or a negative value if not found.
+		 */
+		int indexOf(byte[] name) {
+			int low = 0;
+			int high = _size - 1;
+			while (low <= high) {
+				int mid = (low + high) >>> 1;
+				int cmp = compare(mid, name);
+				if (cmp < 0) {
+					low = mid + 1;
+				} else if (cmp > 0) {
+					high = mid - 1;
+				} else {
+					return mid;
+				}
+			}
+			return -1;
+		}
+
+		private int compare(int index, byte[] name) {
+			int record = record(index);
+			int length = _buffer.getShort(record) & 0xFFFF;
+			int begin = record + 2;
+			for (int n = 0, cnt = Math.min(length, name.length); n < cnt; n++) {
+				int cmp = (_buffer.get(begin + n) & 0xFF) - (name[n] & 0xFF);
+				if (cmp != 0) {
+					return cmp;
+				}
+			}
+			return length - name.length;
+		}
+	}
+
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.server;
+
+import java.util.Arrays;
+
+/**
+ * Compact trie mapping phone number prefixes to values with longest-prefix lookup.
+ *
+ * <p>
+ * Keys consist of the characters allowed in phone numbers (digits, <code>*</code>,
+ * <code>#</code>, <code>+</code>, and <code>-</code>). Each node is stored as its symbol, its
+ * first child, and its next sibling in parallel arrays, with siblings ordered by symbol. A node
+ * takes 13 bytes regardless of the size of the alphabet, so that even a table with hundreds of
+ * thousands of prefixes requires only a few allocations. A lookup visits at most
+ * <code>14</code> siblings per key character, regardless of the number of prefixes.
+ * </p>
+ *
+ * <p>
+ * A trie is not thread-safe while being filled. It may be shared between threads, after it has
+ * been safely published and is no longer modified.
+ * </p>
+ *
+ * @param <T>
+ *        The type of values.
+ */
+public final class PrefixTrie<T> {
+
+	private static final String ALPHABET = "0123456789*#+-";
+
+	private static final byte[] INDEX = new byte[128];
+
+	static {
+		Arrays.fill(INDEX, (byte) -1);
+		for (int n = 0, cnt = ALPHABET.length(); n < cnt; n++) {
+			INDEX[ALPHABET.charAt(n)] = (byte) n;
+		}
+	}
+
+	/**
+	 * Symbol index of the edge leading to each node.
+	 */
+	private byte[] _symbols;
+
+	/**
+	 * First child of each node. The root node has index <code>0</code>, which therefore also marks
+	 * a missing child or sibling.
+	 */
+	private int[] _firstChild;
+
+	/**
+	 * Next sibling of each node, with a larger symbol.
+	 */
+	private int[] _nextSibling;
+
+	private Object[] _values;
+
+	private int _nodes = 1;
+
+	private int _size;
+
+	/**
+	 * Creates an empty {@link PrefixTrie}.
+	 */
+	public PrefixTrie() {
+		this(64);
+	}
+
+	/**
+	 * Creates an empty {@link PrefixTrie} with space for the given number of nodes.
+	 */
+	public PrefixTrie(int capacity) {
+		capacity = Math.max(1, capacity);
+		_symbols = new byte[capacity];
+		_firstChild = new int[capacity];
+		_nextSibling = new int[capacity];
+		_values = new Object[capacity];
+	}
+
+	/**
+	 * Whether the given string can be used as key.
+	 */
+	public static boolean isKey(CharSequence key) {
+		for (int n = 0, cnt = key.length(); n < cnt; n++) {
+			if (index(key.charAt(n)) < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Number of prefixes with values.
+	 */
+	public int size() {
+		return _size;
+	}
+
+	/**
+	 * Associates the given prefix with the given value.
+	 *
+	 * @param prefix
+	 *        The prefix, the empty string is the default matching all keys.
+	 * @return The value previously associated with the prefix, or <code>null</code>.
+	 * @throws IllegalArgumentException
+	 *         If the prefix contains characters not allowed in phone numbers.
+	 */
+	public T put(CharSequence prefix, T value) {
+		int node = 0;
+		for (int n = 0, cnt = prefix.length(); n < cnt; n++) {
+			int symbol = index(prefix.charAt(n));
+			if (symbol < 0) {
+				throw new IllegalArgumentException("Invalid character in prefix '" + prefix + "'.");
+			}
+			node = addChild(node, symbol);
+		}
+
+		@SuppressWarnings("unchecked")
+		T before = (T) _values[node];
+		_values[node] = value;
+		if (before == null && value != null) {
+			_size++;
+		} else if (before != null && value == null) {
+			_size--;
+		}
+		return before;
+	}
+
+	/**
+	 * The value associated with exactly the given prefix.
+	 */
+	@SuppressWarnings("unchecked")
+	public T get(CharSequence prefix) {
+		int node = 0;
+		for (int n = 0, cnt = prefix.length(); n < cnt; n++) {
+			int symbol = index(prefix.charAt(n));
+			if (symbol < 0) {
+				return null;
+			}
+			node = child(node, symbol);
+			if (node == 0) {
+				return null;
+			}
+		}
+		return (T) _values[node];
+	}
+
+	/**
+	 * The value associated with the longest prefix of the given key.
+	 *
+	 * <p>
+	 * The lookup stops at the first character that is not allowed in phone numbers.
+	 * </p>
+	 *
+	 * @return The value of the longest matching prefix, or <code>null</code> if no prefix
+	 *         matches.
+	 */
+	@SuppressWarnings("unchecked")
+	public T lookup(CharSequence key) {
+		int node = 0;
+		Object result = _values[0];
+		for (int n = 0, cnt = key.length(); n < cnt; n++) {
+			int symbol = index(key.charAt(n));
+			if (symbol < 0) {
+				break;
+			}
+			node = child(node, symbol);
+			if (node == 0) {
+				break;
+			}
+			Object value = _values[node];
+			if (value != null) {
+				result = value;
+			}
+		}
+		return (T) result;
+	}
+
+	private int child(int node, int symbol) {
+		for (int child = _firstChild[node]; child != 0; child = _nextSibling[child]) {
+			int childSymbol = _symbols[child];
+			if (childSymbol == symbol) {
+				return child;
+			}
+			if (childSymbol > symbol) {
+				break;
+			}
+		}
+		return 0;
+	}
+
+	private int addChild(int node, int symbol) {
+		int before = 0;
+		int next = _firstChild[node];
+		while (next != 0 && _symbols[next] < symbol) {
+			before = next;
+			next = _nextSibling[next];
+		}
+		if (next != 0 && _symbols[next] == symbol) {
+			return next;
+		}
+
+		int child = newNode();
+		_symbols[child] = (byte) symbol;
+		_nextSibling[child] = next;
+		if (before == 0) {
+			_firstChild[node] = child;
+		} else {
+			_nextSibling[before] = child;
+		}
+		return child;
+	}
+
+	private int newNode() {
+		int node = _nodes++;
+		if (node == _values.length) {
+			int capacity = node * 2;
+			_symbols = Arrays.copyOf(_symbols, capacity);
+			_firstChild = Arrays.copyOf(_firstChild, capacity);
+			_nextSibling = Arrays.copyOf(_nextSibling, capacity);
+			_values = Arrays.copyOf(_values, capacity);
+		}
+		return node;
+	}
+
+	private static int index(char ch) {
+		return ch < 128 ? INDEX[ch] : -1;
+	}
+
+}
@@ -22,6 +22,8 @@
 package org.mjsip.server;
 
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Vector;
 
 import org.mjsip.config.MetaConfig;
@@ -42,6 +44,7 @@ import org.mjsip.sip.provider.SipProvider;
 import org.mjsip.time.ConfiguredScheduler;
 import org.mjsip.time.SchedulerConfig;
 import org.slf4j.LoggerFactory;
+import org.zoolu.net.SocketAddress;
 import org.zoolu.util.Flags;
 
 
@@ -53,6 +56,12 @@ public class Proxy extends Registrar {
 	
 	private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(Proxy.class);
 
+	/** The proxying rules in use, replaced atomically on reload. */
+	private volatile RoutingTable _routingTable;
+
+	/** Modification time of the routing file when it was last loaded. */
+	private volatile long _routingFileTime;
+
 	/** Costructs a void Proxy */
 	protected Proxy() {}
 
@@ -60,6 +69,30 @@ public class Proxy extends Registrar {
 	/** Costructs a new Proxy that acts also as location server for registered users. */
 	public Proxy(SipProvider provider, ServerProfile server_profile) {
 		super(provider,server_profile);
+		initRoutingTable();
+		initFastForwarding();
+	}
+
+
+	/** Whether this proxy may forward requests without parsing them, see {@link StatelessForwarder}.
+	  * Must be overridden by proxies that keep state or modify forwarded requests beyond what a stateless proxy does. */
+	protected boolean supportsFastForwarding() {
+		return true;
+	}
+
+
+	/** Installs the {@link StatelessForwarder}, if enabled and applicable with the current configuration. */
+	private void initFastForwarding() {
+		if (!server_profile.fastForwarding) return;
+		// else
+		if (!supportsFastForwarding() || !server_profile.isOpenProxy || server_profile.doProxyAuthentication
+				|| server_profile.onRoute || sip_provider.hasOutboundProxy() || cluster_ring!=null || call_logger!=null) {
+			LOG.info("Fast forwarding not applicable, all requests are parsed.");
+			return;
+		}
+		// else
+		sip_provider.setRawMessageHandler(new StatelessForwarder(this,sip_provider,server_profile.loopDetection));
+		LOG.info("Fast forwarding enabled.");
 	}
 
 
@@ -96,7 +129,7 @@ public class Proxy extends Registrar {
 		}*/
 
 		// message targets
-		Vector<String> targets=getTargets(msg);
+		Vector<String> targets=getProxyingTargets(msg);
 		
 		if (targets.isEmpty()) {
 			// prefix-based forwarding
@@ -125,6 +158,23 @@ public class Proxy extends Registrar {
 	}
 
 	
+	/** Gets the targets of a request for a local user.
+	  * In a cluster, the bindings of a user are looked up by the node owning the address-of-record. If this is
+	  * another node, the request is routed through that node without changing the request-URI. */
+	protected Vector<String> getProxyingTargets(SipMessage msg) {
+		SocketAddress location_owner=getLocationOwner(msg);
+		if (location_owner==null) return getTargets(msg);
+		// else
+		LOG.debug("bindings owned by cluster node {}, request routed through it", location_owner);
+		SipURI route=new SipURI(location_owner.getAddress().toString(),location_owner.getPort());
+		route.addLr();
+		msg.addRouteHeader(new RouteHeader(new NameAddress(route)));
+		Vector<String> targets=new Vector<>();
+		targets.addElement(msg.getRequestLine().getAddress().toString());
+		return targets;
+	}
+
+	
 	/** When a new request message is received for a remote UA */
 	@Override
 	public void processRequestToRemoteUA(SipMessage msg) {
@@ -272,37 +322,22 @@ public class Proxy extends Registrar {
 	/** Gets a new target according to the domain-based forwarding rules. */
 	protected SipURI getAuthDomainBasedProxyingTarget(GenericURI request_uri) {
 		LOG.trace("inside getAuthDomainBasedProxyingTarget(uri)");
+		if (!request_uri.isSipURI())  return null;
+		// else
 		// authenticated rules
-		for (int i=0; i<server_profile.authenticatedDomainProxyingRules.length; i++) {
-			ProxyingRule rule=(ProxyingRule)server_profile.authenticatedDomainProxyingRules[i];
-			SipURI nexthop=rule.getNexthop(request_uri);
-			if (nexthop!=null) {
-				LOG.debug("domain-based authenticated forwarding: {}; YES",rule);
-				LOG.debug("target={}",nexthop);
-				return nexthop;
-			}
-			else 
-				LOG.debug("domain-based authenticated forwarding: {}:NO",rule);
-		}
-		return null;
+		ProxyingRule rule=getRoutingTable().getAuthDomainRule(request_uri.toSipURI().getHost());
+		return getNexthop(rule,request_uri,"domain-based authenticated forwarding");
 	}
 
 
 	/** Gets a new target according to the domain-based forwarding rules. */
 	protected SipURI getDomainBasedProxyingTarget(GenericURI request_uri) {
 		LOG.trace("inside getDomainBasedForwardingTarget(uri)");
+		if (!request_uri.isSipURI())  return null;
+		// else
 		// non-authenticated rules
-		for (int i=0; i<server_profile.domainProxyingRules.length; i++) {
-			ProxyingRule rule=(ProxyingRule)server_profile.domainProxyingRules[i];
-			SipURI nexthop=rule.getNexthop(request_uri);
-			if (nexthop!=null) {
-				LOG.debug("domain-based forwarding: {}: YES", rule);
-				LOG.debug("target={}", nexthop);
-				return nexthop;
-			}
-			else LOG.debug("domain-based forwarding: {}: NO", rule);
-		}
-		return null;
+		ProxyingRule rule=getRoutingTable().getDomainRule(request_uri.toSipURI().getHost());
+		return getNexthop(rule,request_uri,"domain-based forwarding");
 	}
 
 
@@ -316,18 +351,8 @@ public class Proxy extends Registrar {
 		if (username==null || !isPhoneNumber(username))  return null;
 		// else
 		// authenticated rules
-		LOG.trace("authenticated prefix-based rules: {}", server_profile.authenticatedPhoneProxyingRules.length);
-		for (int i=0; i<server_profile.authenticatedPhoneProxyingRules.length; i++) {
-			ProxyingRule rule=(ProxyingRule)server_profile.authenticatedPhoneProxyingRules[i];
-			SipURI nexthop=rule.getNexthop(request_uri);
-			if (nexthop!=null) {
-				LOG.debug("prefix-based authenticated forwarding: {}: YES", rule);
-				LOG.debug("target={}", nexthop);
-				return nexthop;
-			}
-			else LOG.debug("prefix-based authenticated forwarding: {}: NO", rule);
-		}
-		return null;
+		ProxyingRule rule=getRoutingTable().getAuthPhoneRule(username);
+		return getNexthop(rule,request_uri,"prefix-based authenticated forwarding");
 	}
 
 
@@ -341,18 +366,86 @@ public class Proxy extends Registrar {
 		if (username==null || !isPhoneNumber(username))  return null;
 		// else
 		// non-authenticated rules
-		LOG.trace("prefix-based rules: {}", server_profile.phoneProxyingRules.length);
-		for (int i=0; i<server_profile.phoneProxyingRules.length; i++) {
-			ProxyingRule rule=(ProxyingRule)server_profile.phoneProxyingRules[i];
-			SipURI nexthop=rule.getNexthop(request_uri);
-			if (nexthop!=null) {
-				LOG.debug("prefix-based forwarding: {}: YES", rule);
-				LOG.debug("target= {}", nexthop.toString());
-				return nexthop;
-			}
-			else LOG.debug("prefix-based forwarding: {}: NO", rule);
+		ProxyingRule rule=getRoutingTable().getPhoneRule(username);
+		return getNexthop(rule,request_uri,"prefix-based forwarding");
+	}
+
+
+	/** Applies the most specific matching rule to the request URI.
+	  * @return the next-hop SipURI, or <i>null</i> if no rule matches */
+	private SipURI getNexthop(ProxyingRule rule, GenericURI request_uri, String kind) {
+		if (rule==null) {
+			LOG.debug("{}: NO", kind);
+			return null;
+		}
+		SipURI nexthop=rule.getNexthop(request_uri);
+		if (nexthop!=null) {
+			LOG.debug("{}: {}: YES", kind, rule);
+			LOG.debug("target={}", nexthop);
+		}
+		else LOG.debug("{}: {}: NO", kind, rule);
+		return nexthop;
+	}
+
+
+	// *************************** Routing rules ***************************
+
+	/** Gets the proxying rules currently in use. */
+	public RoutingTable getRoutingTable() {
+		RoutingTable routing_table=_routingTable;
+		if (routing_table==null) {
+			routing_table=RoutingTable.fromProfile(server_profile);
+			_routingTable=routing_table;
+		}
+		return routing_table;
+	}
+
+
+	/** Atomically replaces the proxying rules.
+	  * Requests being processed concurrently are routed either completely with the old or with the new rules. */
+	public void setRoutingTable(RoutingTable routing_table) {
+		_routingTable=routing_table;
+	}
+
+
+	/** Reloads the proxying rules from the configured routing file.
+	  * If the file cannot be read, the rules in use are kept.
+	  * @return whether the rules have been replaced */
+	public boolean reloadRoutingTable() {
+		if (server_profile.routingFile==null) return false;
+		// else
+		File file=new File(server_profile.routingFile);
+		_routingFileTime=file.lastModified();
+		try {
+			RoutingTable routing_table=RoutingTable.load(file,server_profile.domainRulesMatchSubdomains);
+			setRoutingTable(routing_table);
+			LOG.info("Routing rules loaded from '{}': {}", file, routing_table);
+			return true;
+		}
+		catch (IOException e) {
+			LOG.warn("Cannot load routing rules from '{}', keeping the rules in use.", file, e);
+			return false;
+		}
+	}
+
+
+	/** Initializes the proxying rules and watches the routing file for modifications, if configured. */
+	private void initRoutingTable() {
+		if (server_profile.routingFile==null) {
+			_routingTable=RoutingTable.fromProfile(server_profile);
+			return;
+		}
+		// else
+		if (!reloadRoutingTable()) _routingTable=RoutingTable.fromProfile(server_profile);
+		if (server_profile.routingReloadTime>0) {
+			sip_provider.scheduler().schedulerWithFixedDelay(server_profile.routingReloadTime, this::checkRoutingFile);
 		}
-		return null;
+	}
+
+
+	/** Reloads the routing file, if it has been modified since it was last loaded. */
+	private void checkRoutingFile() {
+		if (new File(server_profile.routingFile).lastModified()!=_routingFileTime) reloadRoutingTable();
 	}
 
 
@@ -384,7 +477,7 @@ public class Proxy extends Registrar {
 					
 		SipProvider sip_provider=new SipProvider(sipConfig, new ConfiguredScheduler(schedulerConfig));
 
-		new Proxy(sip_provider,server_profile);
+		haltOnShutdown(new Proxy(sip_provider,server_profile));
 	}
   
 }
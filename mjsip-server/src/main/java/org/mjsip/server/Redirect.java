@@ -35,6 +35,7 @@ import org.mjsip.sip.provider.SipProvider;
 import org.mjsip.time.ConfiguredScheduler;
 import org.mjsip.time.SchedulerConfig;
 import org.slf4j.LoggerFactory;
+import org.zoolu.net.SocketAddress;
 import org.zoolu.util.Flags;
 
 
@@ -55,6 +56,13 @@ public class Redirect extends Registrar {
 	@Override
 	public void processRequestToLocalUser(SipMessage msg) {
 		LOG.debug("inside processRequestToLocalUser(msg)");
+
+		// in a cluster, the node holding the bindings responds
+		SocketAddress location_owner=getLocationOwner(msg);
+		if (location_owner!=null) {
+			forwardToCluster(msg,location_owner);
+			return;
+		}
 		
 		// message targets
 		Vector<String> contacts=getTargets(msg);
@@ -107,7 +115,7 @@ public class Redirect extends Registrar {
 						
 		SipProvider sip_provider=new SipProvider(sipConfig, new ConfiguredScheduler(schedulerConfig));
 
-		new Redirect(sip_provider,server_profile);      
+		haltOnShutdown(new Redirect(sip_provider,server_profile));
 	}
   
 }
@@ -332,6 +332,6 @@ public class Registrar extends ServerEngine {
 			
 		SipProvider sip_provider=new SipProvider(sipConfig, new ConfiguredScheduler(schedulerConfig));
 		
-		new Registrar(sip_provider,server_profile);
+		haltOnShutdown(new Registrar(sip_provider,server_profile));
 	}
 }
@@ -0,0 +1,292 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.server;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+
+import org.slf4j.LoggerFactory;
+import org.zoolu.net.SocketAddress;
+
+/**
+ * Immutable set of prefix-based and domain-based {@link ProxyingRule}s of a {@link Proxy}.
+ *
+ * <p>
+ * Phone rules are indexed in a {@link PrefixTrie} and domain rules in a {@link DomainMap}, so
+ * that the most specific rule is found in time proportional to the length of the user name or host
+ * name, independent of the number of rules. If multiple rules are given for the same prefix or
+ * domain, the first one wins. Phone rules with a prefix that is not a phone number are skipped,
+ * since they can never match. Domain rules match sub-domains only if enabled when building the
+ * table.
+ * </p>
+ *
+ * <p>
+ * A routing table is never modified after construction. A {@link Proxy} switches to a new set of
+ * rules by atomically replacing its routing table.
+ * </p>
+ *
+ * <p>
+ * A routing file contains one rule per line in the form <code>&lt;type&gt; &lt;key&gt;
+ * &lt;nexthop&gt;</code>, where the type is one of <code>phone</code>, <code>auth-phone</code>,
+ * <code>domain</code>, or <code>auth-domain</code>. The key <code>*</code> (or
+ * <code>default</code>) for phone rules matches all phone numbers. Empty lines and lines starting
+ * with <code>#</code> are ignored.
+ * </p>
+ */
+public final class RoutingTable {
+
+	private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(RoutingTable.class);
+
+	/** Empty routing table. */
+	public static final RoutingTable EMPTY = new Builder().build();
+
+	private final PrefixTrie<ProxyingRule> _authPhoneRules;
+
+	private final PrefixTrie<ProxyingRule> _phoneRules;
+
+	private final DomainMap<ProxyingRule> _authDomainRules;
+
+	private final DomainMap<ProxyingRule> _domainRules;
+
+	RoutingTable(Builder builder) {
+		_authPhoneRules = builder._authPhoneRules;
+		_phoneRules = builder._phoneRules;
+		_authDomainRules = builder._authDomainRules;
+		_domainRules = builder._domainRules;
+	}
+
+	/**
+	 * Creates a {@link RoutingTable} from the static rules of the given {@link ServerProfile}.
+	 */
+	public static RoutingTable fromProfile(ServerProfile profile) {
+		Builder builder = new Builder(profile.domainRulesMatchSubdomains);
+		builder.addPhoneRules(builder._authPhoneRules, profile.authenticatedPhoneProxyingRules);
+		builder.addPhoneRules(builder._phoneRules, profile.phoneProxyingRules);
+		builder.addDomainRules(builder._authDomainRules, profile.authenticatedDomainProxyingRules);
+		builder.addDomainRules(builder._domainRules, profile.domainProxyingRules);
+		return builder.build();
+	}
+
+	/**
+	 * Reads a {@link RoutingTable} from the given routing file.
+	 *
+	 * @param matchSubdomains
+	 *        Whether domain rules also match all sub-domains of their domain.
+	 * @throws IOException
+	 *         If reading fails, or the file contains an invalid rule.
+	 */
+	public static RoutingTable load(File file, boolean matchSubdomains) throws IOException {
+		try (FileReader in = new FileReader(file)) {
+			return read(in, matchSubdomains);
+		}
+	}
+
+	/**
+	 * Reads a {@link RoutingTable} in routing file format.
+	 *
+	 * @param matchSubdomains
+	 *        Whether domain rules also match all sub-domains of their domain.
+	 * @throws IOException
+	 *         If reading fails, or the input contains an invalid rule.
+	 */
+	public static RoutingTable read(Reader in, boolean matchSubdomains) throws IOException {
+		Builder builder = new Builder(matchSubdomains);
+		BufferedReader reader = new BufferedReader(in);
+		int lineNumber = 0;
+		String line;
+		while ((line = reader.readLine()) != null) {
+			lineNumber++;
+			line = line.trim();
+			if (line.isEmpty() || line.startsWith("#")) {
+				continue;
+			}
+			String[] parts = line.split("\\s+");
+			if (parts.length != 3) {
+				throw new IOException("Invalid rule in line " + lineNumber + ": " + line);
+			}
+			try {
+				builder.add(parts[0], parts[1], new SocketAddress(parts[2]));
+			} catch (RuntimeException ex) {
+				throw new IOException("Invalid rule in line " + lineNumber + ": " + line, ex);
+			}
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Number of rules in this table.
+	 */
+	public int size() {
+		return _authPhoneRules.size() + _phoneRules.size() + _authDomainRules.size() + _domainRules.size();
+	}
+
+	/**
+	 * The most specific authenticated phone rule for the given user name.
+	 */
+	public ProxyingRule getAuthPhoneRule(String username) {
+		return _authPhoneRules.lookup(username);
+	}
+
+	/**
+	 * The most specific phone rule for the given user name.
+	 */
+	public ProxyingRule getPhoneRule(String username) {
+		return _phoneRules.lookup(username);
+	}
+
+	/**
+	 * The most specific authenticated domain rule for the given host.
+	 */
+	public ProxyingRule getAuthDomainRule(String host) {
+		return _authDomainRules.lookup(host);
+	}
+
+	/**
+	 * The most specific domain rule for the given host.
+	 */
+	public ProxyingRule getDomainRule(String host) {
+		return _domainRules.lookup(host);
+	}
+
+	@Override
+	public String toString() {
+		return "{phone=" + _phoneRules.size() + ", auth-phone=" + _authPhoneRules.size() + ", domain="
+			+ _domainRules.size() + ", auth-domain=" + _authDomainRules.size() + "}";
+	}
+
+	/**
+	 * Builder for a {@link RoutingTable}.
+	 */
+	public static final class Builder {
+
+		final PrefixTrie<ProxyingRule> _authPhoneRules = new PrefixTrie<>();
+
+		final PrefixTrie<ProxyingRule> _phoneRules = new PrefixTrie<>();
+
+		final DomainMap<ProxyingRule> _authDomainRules;
+
+		final DomainMap<ProxyingRule> _domainRules;
+
+		private final boolean _matchSubdomains;
+
+		private boolean _built;
+
+		/**
+		 * Creates a {@link Builder} for domain rules matching exact domains only.
+		 */
+		public Builder() {
+			this(false);
+		}
+
+		/**
+		 * Creates a {@link Builder}.
+		 *
+		 * @param matchSubdomains
+		 *        Whether domain rules also match all sub-domains of their domain.
+		 */
+		public Builder(boolean matchSubdomains) {
+			_matchSubdomains = matchSubdomains;
+			_authDomainRules = new DomainMap<>(matchSubdomains);
+			_domainRules = new DomainMap<>(matchSubdomains);
+		}
+
+		/**
+		 * Adds a rule.
+		 *
+		 * @param type
+		 *        One of <code>phone</code>, <code>auth-phone</code>, <code>domain</code>, or
+		 *        <code>auth-domain</code>.
+		 * @param key
+		 *        The phone number prefix or domain.
+		 * @param nexthop
+		 *        The next-hop server.
+		 */
+		public Builder add(String type, String key, SocketAddress nexthop) {
+			switch (type) {
+			case "phone":
+				addPhoneRule(_phoneRules, phoneRule(key, nexthop));
+				break;
+			case "auth-phone":
+				addPhoneRule(_authPhoneRules, phoneRule(key, nexthop));
+				break;
+			case "domain":
+				addDomainRule(_domainRules, new DomainProxyingRule(key, nexthop, _matchSubdomains));
+				break;
+			case "auth-domain":
+				addDomainRule(_authDomainRules, new DomainProxyingRule(key, nexthop, _matchSubdomains));
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown rule type '" + type + "'.");
+			}
+			return this;
+		}
+
+		/**
+		 * Creates the {@link RoutingTable}. The builder must not be used afterwards.
+		 */
+		public RoutingTable build() {
+			if (_built) {
+				throw new IllegalStateException("Routing table already built.");
+			}
+			_built = true;
+			return new RoutingTable(this);
+		}
+
+		private static PrefixProxyingRule phoneRule(String prefix, SocketAddress nexthop) {
+			if (prefix.equals("*")) {
+				prefix = PrefixProxyingRule.DEFAULT_PREFIX;
+			}
+			return new PrefixProxyingRule(prefix, nexthop);
+		}
+
+		void addPhoneRules(PrefixTrie<ProxyingRule> trie, ProxyingRule[] rules) {
+			if (rules == null) {
+				return;
+			}
+			for (ProxyingRule rule : rules) {
+				if (rule instanceof PrefixProxyingRule) {
+					addPhoneRule(trie, (PrefixProxyingRule) rule);
+				} else {
+					throw new IllegalArgumentException("Not a prefix rule: " + rule);
+				}
+			}
+		}
+
+		void addDomainRules(DomainMap<ProxyingRule> map, ProxyingRule[] rules) {
+			if (rules == null) {
+				return;
+			}
+			for (ProxyingRule rule : rules) {
+				if (rule instanceof DomainProxyingRule) {
+					DomainProxyingRule domainRule = (DomainProxyingRule) rule;
+					addDomainRule(map, new DomainProxyingRule(domainRule.domain, domainRule.nexthop, _matchSubdomains));
+				} else {
+					throw new IllegalArgumentException("Not a domain rule: " + rule);
+				}
+			}
+		}
+
+		private static void addPhoneRule(PrefixTrie<ProxyingRule> trie, PrefixProxyingRule rule) {
+			String prefix = rule.prefix.equalsIgnoreCase(PrefixProxyingRule.DEFAULT_PREFIX) ? "" : rule.prefix;
+			if (!PrefixTrie.isKey(prefix)) {
+				LOG.warn("Skipping phone rule {}, its prefix is not a phone number.", rule);
+				return;
+			}
+			if (trie.get(prefix) == null) {
+				trie.put(prefix, rule);
+			}
+		}
+
+		private static void addDomainRule(DomainMap<ProxyingRule> map, DomainProxyingRule rule) {
+			if (map.get(rule.domain) == null) {
+				map.put(rule.domain, rule);
+			}
+		}
+
+	}
+
+}
@@ -22,7 +22,9 @@
 package org.mjsip.server;
 
 
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.Vector;
 
 import org.mjsip.sip.address.GenericURI;
@@ -35,13 +37,14 @@ import org.mjsip.sip.header.RouteHeader;
 import org.mjsip.sip.header.ViaHeader;
 import org.mjsip.sip.message.SipMessage;
 import org.mjsip.sip.message.SipResponses;
+import org.mjsip.sip.provider.IdGenerator;
 import org.mjsip.sip.provider.SipId;
 import org.mjsip.sip.provider.SipProvider;
 import org.mjsip.sip.provider.SipProviderListener;
 import org.mjsip.sip.transaction.InviteTransactionServer;
 import org.mjsip.sip.transaction.TransactionServer;
 import org.slf4j.LoggerFactory;
-import org.zoolu.util.SimpleDigest;
+import org.zoolu.net.SocketAddress;
 
 
 /** Class ServerEngine implement a stateless abstract SIP Server.
@@ -79,6 +82,15 @@ public abstract class ServerEngine implements SipProviderListener {
 
 	/** AuthenticationServer. */
 	protected AuthenticationServer as;
+
+	/** Branch prefix of requests forwarded to the owning cluster node. */
+	protected static final String CLUSTER_BRANCH=ViaHeader.MAGIC_COOKIE+"cl";
+
+	/** CallLogger, or <i>null</i> if calls are not logged. */
+	protected CallLogger call_logger=null;
+
+	/** Ring of cluster nodes, or <i>null</i> if the server is not part of a cluster. */
+	protected ClusterRing cluster_ring=null;
 	
 	/** List of already supported location services */
 	protected static final String[] LOCATION_SERVICES={ "local" };
@@ -86,9 +98,9 @@ public abstract class ServerEngine implements SipProviderListener {
 	protected static final String[] LOCATION_SERVICE_CLASSES={ LocationServiceImpl.class.getName() };
 
 	/** List of already supported authentication services */
-	protected static final String[] AUTHENTICATION_SERVICES={ "local" };
+	protected static final String[] AUTHENTICATION_SERVICES={ "local", "ha1" };
 	/** List of authentication service Classes (ordered as in <i>AUTHENTICATION_SERVICES</i>) */
-	protected static final String[] AUTHENTICATION_SERVICE_CLASSES={ AuthenticationServiceImpl.class.getName() };
+	protected static final String[] AUTHENTICATION_SERVICE_CLASSES={ AuthenticationServiceImpl.class.getName(), Ha1AuthenticationService.class.getName() };
 
 	/** List of already supported authentication schemes */
 	protected static final String[] AUTHENTICATION_SCHEMES={ "Digest" };
@@ -232,6 +244,18 @@ public abstract class ServerEngine implements SipProviderListener {
 		}
 		else as=null;
 
+		// CALL LOG
+		if (server_profile.callLog) call_logger=new CallLoggerImpl(server_profile.cdrFile);
+
+		// CLUSTER
+		if (server_profile.clusterNodes!=null && server_profile.clusterNodes.length>0) {
+			List<SocketAddress> nodes=new ArrayList<>();
+			for (String node : server_profile.clusterNodes) nodes.add(new SocketAddress(node));
+			SocketAddress self=(server_profile.clusterSelf!=null)? new SocketAddress(server_profile.clusterSelf) : new SocketAddress(sip_provider.getViaAddress(),sip_provider.getPort());
+			cluster_ring=new ClusterRing(nodes,self);
+			LOG.info("Cluster: {}", cluster_ring);
+		}
+
 		// MEMORY MONITOR
 		/*if (server_profile.memory_log) {
 			String filename=SipStack.log_path+"//"+sip_provider.getViaAddress()+"."+sip_provider.getPort()+"_memory.log";
@@ -248,6 +272,17 @@ public abstract class ServerEngine implements SipProviderListener {
 	
 	// **************************** public methods ****************************
 
+	/** Stops the server and its SipProvider. */
+	public void halt() {
+		sip_provider.halt();
+		if (call_logger!=null) call_logger.halt();
+	}
+
+	/** Halts the given server when the JVM shuts down. */
+	protected static void haltOnShutdown(ServerEngine server) {
+		Runtime.getRuntime().addShutdownHook(new Thread(server::halt, "server-shutdown"));
+	}
+
 	/** When a new message is received by the SipProvider.
 	  * If the received message is a request, it cheks for loops, */
 	@Override
@@ -303,6 +338,12 @@ public abstract class ServerEngine implements SipProviderListener {
 				}
 			}*/
 
+			// check whether the request is owned by another cluster node
+			if (cluster_ring!=null && forwardToClusterOwner(msg)) return;
+
+			// requests routed through this node only for the location lookup belong to a call logged by another node
+			if (call_logger!=null && !isClusterLocationRequest(msg)) call_logger.update(msg);
+
 			// check whether the request is for a domain the server is responsible for
 			boolean is_for_this_domain=isResponsibleFor(msg);
 			LOG.trace("is for local doamin? "+((is_for_this_domain)?"yes":"no"));
@@ -330,7 +371,7 @@ public abstract class ServerEngine implements SipProviderListener {
 				LOG.trace("the recipient is NOT this server");
 				// check message authentication (proxy authentication)
 				boolean is_spiral=(msg.getRemotePort()==sip_provider.getPort() && (msg.getRemoteAddress().startsWith("127.") || msg.getRemoteAddress().equals(sip_provider.getViaAddress())));
-				if (server_profile.doProxyAuthentication && is_from_this_domain && !is_spiral && !msg.isAck() && !msg.isCancel()) {
+				if (server_profile.doProxyAuthentication && is_from_this_domain && !is_spiral && !isClusterLocationRequest(msg) && !msg.isAck() && !msg.isCancel()) {
 					err_resp=as.authenticateProxyRequest(msg);
 					if (err_resp!=null) {
 						//sip_provider.sendMessage(err_resp);
@@ -357,13 +398,124 @@ public abstract class ServerEngine implements SipProviderListener {
 			// the message may be a response
 			if (msg.isResponse()) {
 				LOG.trace("message is a response");
-				processResponse(msg);
+				if (cluster_ring!=null && isClusterResponse(msg)) relayClusterResponse(msg);
+				else {
+					if (call_logger!=null) call_logger.update(msg);
+					processResponse(msg);
+				}
 			}
 			else LOG.warn("received message is not recognized as a request nor a response: discarded");
 		}
 	}
 
 
+	/** Gets the key that determines the cluster node owning the request.
+	  * Registrations are owned by the node holding the bindings of the address-of-record, all other
+	  * requests by the node owning the Call-ID, so that all transactions of a call are handled by the
+	  * same node. The bindings of a local user are looked up by their owner, see {@link #getLocationOwner(SipMessage)}. */
+	protected String getClusterKey(SipMessage msg) {
+		if (msg.isRegister()) {
+			String aor=getAorKey(msg.getToHeader().getNameAddress().getAddress());
+			if (aor!=null) return aor;
+		}
+		return msg.getCallIdHeader().getCallId();
+	}
+
+
+	/** Gets the cluster key of the given address-of-record, or <i>null</i> if it has no user part. */
+	private static String getAorKey(GenericURI aor) {
+		if (aor==null || !aor.isSipURI()) return null;
+		// else
+		SipURI sip_uri=aor.toSipURI();
+		if (!sip_uri.hasUserName()) return null;
+		// else
+		return sip_uri.getUserName()+"@"+sip_uri.getHost();
+	}
+
+
+	/** Gets the cluster node holding the bindings of the user the request is addressed to.
+	  * @return the owner of the request's address-of-record, or <i>null</i> if the bindings are looked up locally */
+	protected SocketAddress getLocationOwner(SipMessage msg) {
+		if (cluster_ring==null || isClusterLocationRequest(msg)) return null;
+		// else
+		String aor=getAorKey(msg.getRequestLine().getAddress());
+		if (aor==null) return null;
+		// else
+		SocketAddress owner=cluster_ring.getOwner(aor);
+		return owner.equals(cluster_ring.getSelf())? null : owner;
+	}
+
+
+	/** Whether the request has been sent by another cluster node.
+	  * The transport source is checked, not the top Via, which can be written by any client. */
+	protected boolean isFromClusterNode(SipMessage msg) {
+		if (cluster_ring==null) return false;
+		// else
+		String remote_addr=msg.getRemoteAddress();
+		return remote_addr!=null && cluster_ring.isNode(remote_addr,msg.getRemotePort());
+	}
+
+
+	/** Whether the request has been routed through this node by the cluster node owning the call,
+	  * only for looking up the bindings of a local user. */
+	protected boolean isClusterLocationRequest(SipMessage msg) {
+		if (!isFromClusterNode(msg)) return false;
+		// else
+		ViaHeader top_via=msg.getViaHeader();
+		return top_via!=null && (!top_via.hasBranch() || !top_via.getBranch().startsWith(CLUSTER_BRANCH));
+	}
+
+
+	/** Forwards the request to the cluster node owning it, if this is not the local node.
+	  * Requests sent by another cluster node are always processed locally.
+	  * @return whether the request has been forwarded */
+	protected boolean forwardToClusterOwner(SipMessage msg) {
+		if (isFromClusterNode(msg)) return false;
+		// else
+		SocketAddress owner=cluster_ring.getOwner(getClusterKey(msg));
+		if (owner.equals(cluster_ring.getSelf())) return false;
+		// else
+		LOG.debug("request owned by cluster node {}, forwarded", owner);
+		forwardToCluster(msg,owner);
+		return true;
+	}
+
+
+	/** Dispatches the request to the given cluster node, which processes it as if received directly.
+	  * Responses are relayed back through this node. */
+	protected void forwardToCluster(SipMessage msg, SocketAddress owner) {
+		if (msg.hasHeader(Loop_Tag)) msg.removeHeader(Loop_Tag);
+		msg.clearTransport();
+		String proto=sip_provider.getDefaultTransport();
+		ViaHeader via=new ViaHeader(proto,sip_provider.getViaAddress(),sip_provider.getPort());
+		if (sip_provider.isRportSet()) via.setRport();
+		via.setBranch(CLUSTER_BRANCH+sip_provider.pickBranch(msg).substring(ViaHeader.MAGIC_COOKIE.length()));
+		msg.addViaHeader(via);
+		MaxForwardsHeader maxfwd=msg.getMaxForwardsHeader();
+		if (maxfwd!=null) maxfwd.decrement();
+		else maxfwd=new MaxForwardsHeader(sip_provider.sipConfig().getMaxForwards());
+		msg.setMaxForwardsHeader(maxfwd);
+		sip_provider.sendMessage(msg,proto,owner.getAddress().toString(),owner.getPort(),0);
+	}
+
+
+	/** Whether the response belongs to a request forwarded to another cluster node. */
+	protected boolean isClusterResponse(SipMessage resp) {
+		ViaHeader top_via=resp.getViaHeader();
+		return top_via!=null && top_via.hasBranch() && top_via.getBranch().startsWith(CLUSTER_BRANCH)
+				&& sip_provider.getViaAddress().equals(top_via.getHost()) && sip_provider.getPort()==top_via.getPort();
+	}
+
+
+	/** Relays a response received from another cluster node back to the originator of the request. */
+	protected void relayClusterResponse(SipMessage resp) {
+		resp.clearTransport();
+		resp.removeViaHeader();
+		if (resp.hasViaHeader()) sip_provider.sendMessage(resp);
+		else LOG.warn("no VIA header found: message discarded");
+	}
+
+
 	/** Relays the massage.
 	  * Called after a received message has been successful processed for being relayed */
 	//protected void sendMessage(SipMessage msg)
@@ -507,14 +659,21 @@ public abstract class ServerEngine implements SipProviderListener {
 
 	/** Picks the token used for loop detection. */
 	private String pickLoopTag(SipMessage msg) {
-		StringBuilder sb=new StringBuilder();
-		sb.append(msg.getRequestLine().getAddress().toString());
-		//sb.append(msg.getToHeader().getTag());
-		sb.append(msg.getFromHeader().getTag());
-		sb.append(msg.getCallIdHeader().getCallId());
-		sb.append(msg.getCSeqHeader().getSequenceNumber());
 		MultipleHeader rr=msg.getRoutes();
-		if (rr!=null) sb.append(rr.size());
-		return (new SimpleDigest(7,sb.toString())).asHex();
+		return pickLoopTag(msg.getRequestLine().getAddress().toString(),msg.getFromHeader().getTag(),
+				msg.getCallIdHeader().getCallId(),msg.getCSeqHeader().getSequenceNumber(),rr!=null? rr.size() : -1);
+	}
+
+	/** Picks the token used for loop detection from the relevant request fields.
+	  * @param routes the number of Route values, or -1 if there is no Route */
+	static String pickLoopTag(String request_uri, String from_tag, String call_id, long cseq, int routes) {
+		long hash=IdGenerator.hashStart();
+		hash=IdGenerator.hash(hash,request_uri);
+		//hash=IdGenerator.hash(hash,to_tag);
+		hash=IdGenerator.hash(hash,from_tag);
+		hash=IdGenerator.hash(hash,call_id);
+		hash=IdGenerator.hash(hash,cseq);
+		if (routes>=0) hash=IdGenerator.hash(hash,routes);
+		return IdGenerator.hashHex("",hash,14);
 	}
 }
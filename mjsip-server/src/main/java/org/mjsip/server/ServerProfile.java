@@ -71,7 +71,7 @@ public class ServerProfile {
 	public String authenticationRealm=null;
 	
 	@Option(name = "--authentication-service", usage = "The type of authentication service. "
-			+ "Valid authentication service types are 'local', 'ldap', 'radius', 'mysql', or a class name (e.g. local.server.AuthenticationServiceImpl).")
+			+ "Valid authentication service types are 'local', 'ha1' (precomputed digests in a binary file), 'ldap', 'radius', 'mysql', or a class name (e.g. local.server.AuthenticationServiceImpl).")
 	public String authenticationService="local";
 	
 	@Option(name = "--authentication-db", usage = "The fila name of the authentication DB.")
@@ -114,6 +114,36 @@ public class ServerProfile {
 	@Option(name = "--doman-proxying-rules", handler = DomainRuleHandler.class)
 	public ProxyingRule[] domainProxyingRules=null;
 
+	@Option(name = "--domain-rules-match-subdomains", usage = "Whether a domain proxying rule also matches all sub-domains of its domain.", handler = YesNoHandler.class)
+	public boolean domainRulesMatchSubdomains=false;
+
+	@Option(name = "--routing-file", usage = "File with phone prefix and domain proxying rules. "
+			+ "Each line has the form '<type> <prefix-or-domain> <nexthop>' with type one of 'phone', 'auth-phone', 'domain', 'auth-domain'. "
+			+ "If set, it replaces the static proxying rules.")
+	public String routingFile=null;
+
+	@Option(name = "--routing-reload-time", usage = "Interval (in milliseconds) for checking the routing file for modifications. "
+			+ "A modified file is reloaded without restarting the server. Set to 0 to disable reloading.")
+	public long routingReloadTime=0;
+
+	@Option(name = "--fast-forwarding", usage = "Whether a stateless open proxy forwards requests for remote domains directly from the received datagram "
+			+ "without parsing the complete message. Only used for UDP, without proxy authentication, Record-Route, clustering, and call logging.", handler = YesNoHandler.class)
+	public boolean fastForwarding=false;
+
+	@Option(name = "--cluster-nodes", usage = "Addresses of all nodes of a server cluster (including this one). "
+			+ "Registrations are partitioned between the nodes by address-of-record, other requests by Call-ID. "
+			+ "Requests owned by another node are forwarded to it.", handler = ClusterNodesHandler.class)
+	public String[] clusterNodes=null;
+
+	@Option(name = "--cluster-self", usage = "Address of this node in the cluster node list, defaults to the via address and SIP port.")
+	public String clusterSelf=null;
+
+	@Option(name = "--call-log", usage = "Whether to keep track of INVITE calls and report call-detail records (CDRs).", handler = YesNoHandler.class)
+	public boolean callLog=false;
+
+	@Option(name = "--cdr-file", usage = "File to write call-detail records to, rolled over when it exceeds 10MB. If not set, CDRs are only logged.")
+	public String cdrFile=null;
+
 	@Option(name = "--memory-log", usage = "Whether maintaining a memory log.")
 	public boolean memoryLog=false;
 
@@ -132,6 +162,7 @@ public class ServerProfile {
 		if (phoneProxyingRules==null) phoneProxyingRules=new ProxyingRule[0];
 		if (authenticatedDomainProxyingRules==null) authenticatedDomainProxyingRules=new ProxyingRule[0];
 		if (domainProxyingRules==null) domainProxyingRules=new ProxyingRule[0];
+		if (clusterNodes==null) clusterNodes=new String[0];
 	}
 	
 	public static class DomainNamesHandler extends OptionHandler<String> {
@@ -159,6 +190,17 @@ public class ServerProfile {
 		}
 	}
 	
+	public static class ClusterNodesHandler extends DomainNamesHandler {
+		public ClusterNodesHandler(CmdLineParser parser, OptionDef option, Setter<? super String> setter) {
+			super(parser, option, setter);
+		}
+
+		@Override
+		public String getDefaultMetaVariable() {
+			return "<host:port>,<host:port>,...";
+		}
+	}
+	
 	public static class ProxyRuleHandler extends OptionHandler<ProxyingRule> {
 		public ProxyRuleHandler(CmdLineParser parser, OptionDef option, Setter<? super ProxyingRule> setter) {
 			super(parser, option, setter);
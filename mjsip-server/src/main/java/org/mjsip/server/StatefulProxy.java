@@ -96,6 +96,13 @@ public class StatefulProxy extends Proxy implements TransactionClientListener {
 	}
 
 
+	/** Requests are forwarded within transactions, hence never without parsing. */
+	@Override
+	protected boolean supportsFastForwarding() {
+		return false;
+	}
+
+
 	/** When a new request is received for the local server */
 	@Override
 	public void processRequestToLocalServer(SipMessage req) {
@@ -130,7 +137,7 @@ public class StatefulProxy extends Proxy implements TransactionClientListener {
 		}*/
 
 		// message targets
-		Vector<String> targets=getTargets(msg);
+		Vector<String> targets=getProxyingTargets(msg);
 
 		if (targets.isEmpty()) {
 			// prefix-based forwarding
@@ -337,12 +344,14 @@ public class StatefulProxy extends Proxy implements TransactionClientListener {
 	/** When the TransactionClient goes into the "Completed" state, receiving a failure response */
 	@Override
 	public void onTransFailureResponse(TransactionClient transaction, SipMessage resp) {
+		if (call_logger!=null) call_logger.update(resp);
 		processFailureResponse(transaction,resp);
 	}
 			  
 	/** When an TransactionClient goes into the "Terminated" state, receiving a 2xx response */
 	@Override
 	public void onTransSuccessResponse(TransactionClient transaction, SipMessage resp)  {
+		if (call_logger!=null) call_logger.update(resp);
 		processSuccessResponse(transaction,resp);
 	}
 
@@ -367,7 +376,7 @@ public class StatefulProxy extends Proxy implements TransactionClientListener {
 						
 		SipProvider sip_provider=new SipProvider(sipConfig, new ConfiguredScheduler(schedulerConfig));
 		
-		StatefulProxy sproxy=new StatefulProxy(sip_provider,server_profile);   
+		haltOnShutdown(new StatefulProxy(sip_provider,server_profile));
 	}
 	
 }
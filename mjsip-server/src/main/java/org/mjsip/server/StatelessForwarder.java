@@ -0,0 +1,734 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.server;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.mjsip.metrics.Counter;
+import org.mjsip.metrics.MetricsRegistry;
+import org.mjsip.sip.address.SipURI;
+import org.mjsip.sip.header.ViaHeader;
+import org.mjsip.sip.provider.IdGenerator;
+import org.mjsip.sip.provider.RawMessageHandler;
+import org.mjsip.sip.provider.SipMetrics;
+import org.mjsip.sip.provider.SipProvider;
+import org.mjsip.sip.provider.SipResolver;
+import org.mjsip.sip.provider.SipTransport;
+import org.slf4j.LoggerFactory;
+import org.zoolu.net.IpAddress;
+
+/**
+ * Fast path of a stateless {@link Proxy} forwarding requests for remote domains directly from the
+ * received datagram.
+ *
+ * <p>
+ * Only the request line and the few header fields a stateless proxy has to inspect or modify are
+ * located in the received bytes. The forwarded request is written into a per-thread buffer by
+ * copying all other header fields and the body verbatim, inserting the proxy's Via, decrementing
+ * Max-Forwards, and removing the proxy's own Route value. No {@link org.mjsip.sip.message.SipMessage}
+ * and no header objects are created.
+ * </p>
+ *
+ * <p>
+ * Everything the fast path does not handle completely is passed on to the regular processing by
+ * returning <code>false</code> from {@link #onReceivedRawMessage(SipTransport, byte[], int, int,
+ * IpAddress, int)}. This is the case for datagrams from transports not supporting raw data,
+ * responses, <code>REGISTER</code> requests, requests for a
+ * domain the proxy is responsible for, requests with folded header lines or multiple Via values in
+ * one line, a top Via without RFC 3261 branch or with a <code>received</code> parameter,
+ * non-<code>sip:</code> or IPv6 targets, <code>maddr</code> or non-UDP <code>transport</code>
+ * parameters, strict routes, authenticated domain rules, an exhausted Max-Forwards, destinations
+ * whose IPv4 address is not in the resolver cache, and, if loop detection is enabled, requests
+ * already carrying a Via of the proxy. The regular processing then
+ * produces the appropriate result, e.g. a <code>483</code> or <code>482</code> response.
+ * </p>
+ *
+ * <p>
+ * The branch of the inserted Via is computed from the same request fields as
+ * {@link SipProvider#pickBranch(org.mjsip.sip.message.SipMessage)}, so that retransmissions are
+ * forwarded with the same branch. The loop detection tag is computed over the Request-URI as
+ * received.
+ * </p>
+ *
+ * <p>
+ * Requests forwarded by the fast path do not reach the provider's {@link SipMetrics}. They are
+ * counted in the provider's {@link MetricsRegistry} as <code>sip_fast_forwarded_total</code>,
+ * datagrams passed on to the regular processing as <code>sip_fast_forward_fallbacks_total</code>.
+ * </p>
+ */
+public class StatelessForwarder implements RawMessageHandler {
+
+	private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(StatelessForwarder.class);
+
+	/** Maximum size of a forwarded datagram. */
+	private static final int MAX_DATAGRAM = 65535;
+
+	private static final ThreadLocal<byte[]> BUFFER = ThreadLocal.withInitial(() -> new byte[MAX_DATAGRAM]);
+
+	private static final String SIP_VERSION = "SIP/2.0";
+
+	private final Proxy _proxy;
+
+	private final SipProvider _sipProvider;
+
+	private final boolean _loopDetection;
+
+	private final String _viaAddress;
+
+	private final byte[] _viaAddressBytes;
+
+	private final Counter _forwarded;
+
+	private final Counter _fallbacks;
+
+	/**
+	 * Creates a {@link StatelessForwarder}.
+	 *
+	 * @param proxy
+	 *        The proxy whose domains and routing rules are used.
+	 * @param sipProvider
+	 *        The provider to forward requests through.
+	 * @param loopDetection
+	 *        Whether to add a loop detection tag to the branch of inserted Via header fields.
+	 */
+	public StatelessForwarder(Proxy proxy, SipProvider sipProvider, boolean loopDetection) {
+		_proxy = proxy;
+		_sipProvider = sipProvider;
+		_loopDetection = loopDetection;
+		// Only IPv4 destinations are handled.
+		_viaAddress = sipProvider.getViaAddress(false);
+		_viaAddressBytes = _viaAddress.getBytes(StandardCharsets.US_ASCII);
+
+		SipMetrics metrics = sipProvider.metrics();
+		MetricsRegistry registry = metrics.getRegistry();
+		_forwarded = registry.counter("sip_fast_forwarded_total",
+			"Requests forwarded directly from the received datagram.", metrics.getLabels());
+		_fallbacks = registry.counter("sip_fast_forward_fallbacks_total",
+			"Received datagrams passed from fast forwarding to the regular processing.", metrics.getLabels());
+	}
+
+	/**
+	 * Number of requests forwarded by the fast path.
+	 */
+	public long getForwarded() {
+		return _forwarded.get();
+	}
+
+	/**
+	 * Number of datagrams passed on to the regular processing.
+	 */
+	public long getFallbacks() {
+		return _fallbacks.get();
+	}
+
+	@Override
+	public boolean onReceivedRawMessage(SipTransport transport, byte[] buf, int off, int len, IpAddress srcAddr,
+			int srcPort) {
+		try {
+			if (forward(transport, buf, off, off + len, srcAddr, srcPort)) {
+				_forwarded.increment();
+				return true;
+			}
+		} catch (IOException | RuntimeException ex) {
+			LOG.debug("Fast forwarding failed, using regular processing.", ex);
+		}
+		_fallbacks.increment();
+		return false;
+	}
+
+	private boolean forward(SipTransport transport, byte[] buf, int off, int end, IpAddress srcAddr, int srcPort)
+			throws IOException {
+		if (!transport.supportsRawData()) {
+			return false;
+		}
+
+		// Request line.
+		int lineEnd = indexOf(buf, off, end, '\n');
+		if (lineEnd < 0 || startsWith(buf, off, end, SIP_VERSION)) {
+			return false;
+		}
+		int methodEnd = indexOf(buf, off, lineEnd, ' ');
+		if (methodEnd <= off || equalsIgnoreCase(buf, off, methodEnd, "REGISTER")) {
+			return false;
+		}
+		int uriStart = methodEnd + 1;
+		int uriEnd = indexOf(buf, uriStart, lineEnd, ' ');
+		if (uriEnd <= uriStart || !equalsIgnoreCase(buf, uriEnd + 1, trimEnd(buf, uriEnd + 1, lineEnd), SIP_VERSION)) {
+			return false;
+		}
+
+		// Header fields.
+		int viaLine = -1, viaValue = 0, viaEnd = 0, viaLineEnd = 0;
+		int fromValue = -1, fromEnd = 0;
+		int callIdValue = -1, callIdEnd = 0;
+		int cseqValue = -1, cseqEnd = 0;
+		int maxFwdLine = -1, maxFwdValue = 0, maxFwdEnd = 0;
+		int routeLine = -1, routeValue = 0, routeEnd = 0, routeLineEnd = 0;
+		int nextRouteValue = -1, nextRouteEnd = 0;
+		int routes = 0;
+		boolean viaOfSelf = false;
+
+		int pos = lineEnd + 1;
+		int headersEnd = -1;
+		int emptyLine = -1;
+		while (pos < end) {
+			int next = indexOf(buf, pos, end, '\n');
+			if (next < 0) {
+				return false;
+			}
+			next++;
+			int contentEnd = trimEnd(buf, pos, next);
+			if (contentEnd == pos) {
+				emptyLine = pos;
+				headersEnd = next;
+				break;
+			}
+			byte first = buf[pos];
+			if (first == ' ' || first == '\t') {
+				// Folded header line.
+				return false;
+			}
+			int colon = indexOf(buf, pos, contentEnd, ':');
+			if (colon < 0) {
+				return false;
+			}
+			int nameEnd = trimEnd(buf, pos, colon);
+			int value = trimStart(buf, colon + 1, contentEnd);
+
+			if (isHeader(buf, pos, nameEnd, "Via", "v")) {
+				if (viaLine < 0) {
+					if (topLevelComma(buf, value, contentEnd) >= 0) {
+						return false;
+					}
+					viaLine = pos;
+					viaValue = value;
+					viaEnd = contentEnd;
+					viaLineEnd = next;
+				}
+				viaOfSelf |= contains(buf, value, contentEnd, _viaAddressBytes);
+			} else if (isHeader(buf, pos, nameEnd, "From", "f")) {
+				fromValue = value;
+				fromEnd = contentEnd;
+			} else if (isHeader(buf, pos, nameEnd, "Call-ID", "i")) {
+				callIdValue = value;
+				callIdEnd = contentEnd;
+			} else if (isHeader(buf, pos, nameEnd, "CSeq", null)) {
+				cseqValue = value;
+				cseqEnd = contentEnd;
+			} else if (isHeader(buf, pos, nameEnd, "Max-Forwards", null)) {
+				maxFwdLine = pos;
+				maxFwdValue = value;
+				maxFwdEnd = contentEnd;
+			} else if (isHeader(buf, pos, nameEnd, "Route", null)) {
+				int valueStart = value;
+				while (valueStart < contentEnd) {
+					int comma = topLevelComma(buf, valueStart, contentEnd);
+					if (comma == -2) {
+						return false;
+					}
+					int valueEnd = comma < 0 ? contentEnd : comma;
+					if (routes == 0) {
+						routeLine = pos;
+						routeValue = valueStart;
+						routeEnd = valueEnd;
+						routeLineEnd = next;
+					} else if (routes == 1) {
+						nextRouteValue = valueStart;
+						nextRouteEnd = valueEnd;
+					}
+					routes++;
+					valueStart = comma < 0 ? contentEnd : trimStart(buf, comma + 1, contentEnd);
+				}
+			}
+			pos = next;
+		}
+		if (headersEnd < 0 || viaLine < 0 || fromValue < 0 || callIdValue < 0 || cseqValue < 0) {
+			return false;
+		}
+		if (_loopDetection && viaOfSelf) {
+			return false;
+		}
+
+		int maxForwards = -1;
+		if (maxFwdLine >= 0) {
+			maxForwards = parseInt(buf, maxFwdValue, maxFwdEnd);
+			if (maxForwards <= 0) {
+				return false;
+			}
+		}
+
+		// Top Via.
+		int viaSentBy = indexOfWhitespace(buf, viaValue, viaEnd);
+		if (viaSentBy < 0) {
+			return false;
+		}
+		viaSentBy = trimStart(buf, viaSentBy, viaEnd);
+		int viaParams = indexOf(buf, viaSentBy, viaEnd, ';');
+		if (viaParams < 0) {
+			return false;
+		}
+		int viaHostEnd = indexOf(buf, viaSentBy, viaParams, ':');
+		int viaPort;
+		if (viaHostEnd < 0) {
+			viaHostEnd = trimEnd(buf, viaSentBy, viaParams);
+			viaPort = _sipProvider.sipConfig().getDefaultPort();
+		} else {
+			viaPort = parseInt(buf, viaHostEnd + 1, trimEnd(buf, viaHostEnd + 1, viaParams));
+			if (viaPort <= 0) {
+				return false;
+			}
+		}
+		int branchValue = -1, branchEnd = 0;
+		int rportParam = -1, rportEnd = 0;
+		for (int param = viaParams; param < viaEnd;) {
+			int paramEnd = indexOf(buf, param + 1, viaEnd, ';');
+			if (paramEnd < 0) {
+				paramEnd = viaEnd;
+			}
+			int nameStart = trimStart(buf, param + 1, paramEnd);
+			int eq = indexOf(buf, nameStart, paramEnd, '=');
+			int paramNameEnd = trimEnd(buf, nameStart, eq < 0 ? paramEnd : eq);
+			if (equalsIgnoreCase(buf, nameStart, paramNameEnd, "received")) {
+				return false;
+			} else if (equalsIgnoreCase(buf, nameStart, paramNameEnd, "rport")) {
+				if (eq >= 0) {
+					return false;
+				}
+				rportParam = param;
+				rportEnd = paramEnd;
+			} else if (equalsIgnoreCase(buf, nameStart, paramNameEnd, "branch") && eq >= 0) {
+				branchValue = trimStart(buf, eq + 1, paramEnd);
+				branchEnd = trimEnd(buf, branchValue, paramEnd);
+			}
+			param = paramEnd;
+		}
+		if (branchValue < 0 || !startsWith(buf, branchValue, branchEnd, ViaHeader.MAGIC_COOKIE)) {
+			return false;
+		}
+
+		// Request target.
+		String requestUri = new String(buf, uriStart, uriEnd - uriStart, StandardCharsets.US_ASCII);
+		Target target = Target.parse(requestUri);
+		if (target == null || _proxy.isResponsibleFor(target.host, target.port)) {
+			return false;
+		}
+		RoutingTable routingTable = _proxy.getRoutingTable();
+		if (routingTable.getAuthDomainRule(target.host) != null) {
+			return false;
+		}
+		String targetUri = requestUri;
+		ProxyingRule rule = routingTable.getDomainRule(target.host);
+		if (rule != null) {
+			SipURI nexthop = rule.getNexthop(SipURI.parseSipURI(requestUri));
+			if (nexthop != null) {
+				targetUri = nexthop.toString();
+				target = Target.parse(targetUri);
+				if (target == null) {
+					return false;
+				}
+			}
+		}
+
+		// Routes.
+		boolean removeRoute = false;
+		Target destination = target;
+		if (routes > 0) {
+			Target route = Target.parse(routeUri(buf, routeValue, routeEnd));
+			if (route == null) {
+				return false;
+			}
+			if (_proxy.isResponsibleFor(route.host, route.port)) {
+				removeRoute = true;
+				route = null;
+				if (routes > 1) {
+					route = Target.parse(routeUri(buf, nextRouteValue, nextRouteEnd));
+					if (route == null) {
+						return false;
+					}
+				}
+			}
+			if (route != null) {
+				if (!route.lr) {
+					// Strict routing requires rewriting the Request-URI.
+					return false;
+				}
+				destination = route;
+			}
+		}
+		List<SipResolver.Target> destinations = _sipProvider.resolver().resolveCached(destination.host, destination.port,
+			SipProvider.PROTO_UDP);
+		if (destinations == null || destinations.isEmpty()) {
+			// Resolving would block, the regular processing resolves asynchronously.
+			return false;
+		}
+		IpAddress destAddr = destinations.get(0).getAddress();
+		if (!(destAddr.getInetAddress() instanceof Inet4Address)) {
+			return false;
+		}
+		int destPort = destinations.get(0).getPort();
+
+		// Via of this proxy.
+		String viaAddress = _viaAddress;
+		int localPort = _sipProvider.getPort();
+		long hash = IdGenerator.hashStart();
+		hash = IdGenerator.hash(hash, targetUri);
+		hash = IdGenerator.hash(hash, viaAddress);
+		hash = IdGenerator.hash(hash, localPort);
+		hash = IdGenerator.hash(hash, buf, branchValue, branchEnd - branchValue);
+		String branch = IdGenerator.hashHex(ViaHeader.MAGIC_COOKIE, hash, 10);
+		if (_loopDetection) {
+			branch += ServerEngine.pickLoopTag(requestUri, fromTag(buf, fromValue, fromEnd),
+				new String(buf, callIdValue, callIdEnd - callIdValue, StandardCharsets.US_ASCII),
+				parseLong(buf, cseqValue, cseqEnd), routes > 0 ? routes : -1);
+		}
+
+		// Received and rport of the top Via, as set by the provider when parsing.
+		String srcHost = srcAddr.toString();
+		boolean forceRport = _sipProvider.forceRport();
+		boolean setReceived = forceRport && !regionEquals(buf, viaSentBy, viaHostEnd, srcHost);
+		boolean setRport = rportParam >= 0 || (forceRport && viaPort != srcPort);
+
+		// Compose the forwarded request.
+		byte[] out = BUFFER.get();
+		int o = 0;
+		o = put(out, o, buf, off, uriStart);
+		o = put(out, o, targetUri);
+		o = put(out, o, buf, uriEnd, lineEnd + 1);
+		for (pos = lineEnd + 1; pos < emptyLine;) {
+			int next = indexOf(buf, pos, emptyLine, '\n') + 1;
+			if (pos == viaLine) {
+				o = put(out, o, "Via: SIP/2.0/UDP ");
+				o = put(out, o, viaAddress);
+				o = put(out, o, ":");
+				o = put(out, o, Integer.toString(localPort));
+				if (_sipProvider.isRportSet()) {
+					o = put(out, o, ";rport");
+				}
+				o = put(out, o, ";branch=");
+				o = put(out, o, branch);
+				o = put(out, o, "\r\n");
+				if (setReceived || setRport) {
+					// Same parameter order as ViaHeader: an rport flag gets its value in place,
+					// new parameters are appended.
+					if (rportParam >= 0) {
+						o = put(out, o, buf, pos, rportParam);
+						o = put(out, o, ";rport=");
+						o = put(out, o, Integer.toString(srcPort));
+						o = put(out, o, buf, rportEnd, viaEnd);
+					} else {
+						o = put(out, o, buf, pos, viaEnd);
+					}
+					if (setReceived) {
+						o = put(out, o, ";received=");
+						o = put(out, o, srcHost);
+					}
+					if (setRport && rportParam < 0) {
+						o = put(out, o, ";rport=");
+						o = put(out, o, Integer.toString(srcPort));
+					}
+					o = put(out, o, "\r\n");
+				} else {
+					o = put(out, o, buf, pos, viaLineEnd);
+				}
+			} else if (pos == routeLine && removeRoute) {
+				if (routeEnd < trimEnd(buf, pos, next)) {
+					o = put(out, o, "Route: ");
+					o = put(out, o, buf, trimStart(buf, routeEnd + 1, next), routeLineEnd);
+				}
+			} else if (pos == maxFwdLine) {
+				o = put(out, o, "Max-Forwards: ");
+				o = put(out, o, Integer.toString(maxForwards - 1));
+				o = put(out, o, "\r\n");
+			} else {
+				o = put(out, o, buf, pos, next);
+			}
+			pos = next;
+		}
+		if (maxFwdLine < 0) {
+			o = put(out, o, "Max-Forwards: ");
+			o = put(out, o, Integer.toString(_sipProvider.sipConfig().getMaxForwards()));
+			o = put(out, o, "\r\n");
+		}
+		o = put(out, o, buf, pos, end);
+
+		transport.sendRawData(out, 0, o, destAddr, destPort);
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("Forwarded {} bytes from {}:{} to {}:{}", o, srcAddr, srcPort, destAddr, destPort);
+		}
+		return true;
+	}
+
+	private static String routeUri(byte[] buf, int start, int end) {
+		int open = indexOf(buf, start, end, '<');
+		if (open < 0) {
+			return null;
+		}
+		int close = indexOf(buf, open, end, '>');
+		if (close < 0) {
+			return null;
+		}
+		return new String(buf, open + 1, close - open - 1, StandardCharsets.US_ASCII);
+	}
+
+	private static String fromTag(byte[] buf, int start, int end) {
+		int params = start;
+		int open = indexOf(buf, start, end, '<');
+		if (open >= 0) {
+			params = indexOf(buf, open, end, '>');
+			if (params < 0) {
+				return null;
+			}
+		}
+		for (int n = params; n < end; n++) {
+			if (buf[n] == ';') {
+				int name = trimStart(buf, n + 1, end);
+				if (startsWithIgnoreCase(buf, name, end, "tag=")) {
+					int value = name + 4;
+					int valueEnd = indexOf(buf, value, end, ';');
+					valueEnd = trimEnd(buf, value, valueEnd < 0 ? end : valueEnd);
+					return new String(buf, value, valueEnd - value, StandardCharsets.US_ASCII);
+				}
+			}
+		}
+		return null;
+	}
+
+	private static boolean isHeader(byte[] buf, int start, int end, String name, String compact) {
+		return equalsIgnoreCase(buf, start, end, name) || (compact != null && equalsIgnoreCase(buf, start, end, compact));
+	}
+
+	/**
+	 * Index of the first comma separating header values, <code>-1</code> if there is none, or
+	 * <code>-2</code> if the value contains quoted text.
+	 */
+	private static int topLevelComma(byte[] buf, int start, int end) {
+		int depth = 0;
+		for (int n = start; n < end; n++) {
+			switch (buf[n]) {
+			case '"':
+				return -2;
+			case '<':
+				depth++;
+				break;
+			case '>':
+				depth--;
+				break;
+			case ',':
+				if (depth == 0) {
+					return n;
+				}
+				break;
+			default:
+				break;
+			}
+		}
+		return -1;
+	}
+
+	private static int indexOf(byte[] buf, int start, int end, char ch) {
+		for (int n = start; n < end; n++) {
+			if (buf[n] == ch) {
+				return n;
+			}
+		}
+		return -1;
+	}
+
+	private static int indexOfWhitespace(byte[] buf, int start, int end) {
+		for (int n = start; n < end; n++) {
+			if (buf[n] == ' ' || buf[n] == '\t') {
+				return n;
+			}
+		}
+		return -1;
+	}
+
+	private static boolean contains(byte[] buf, int start, int end, byte[] text) {
+		for (int n = start, last = end - text.length; n <= last; n++) {
+			int k = 0;
+			while (k < text.length && buf[n + k] == text[k]) {
+				k++;
+			}
+			if (k == text.length) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static int trimStart(byte[] buf, int start, int end) {
+		while (start < end && (buf[start] == ' ' || buf[start] == '\t')) {
+			start++;
+		}
+		return start;
+	}
+
+	private static int trimEnd(byte[] buf, int start, int end) {
+		while (end > start && buf[end - 1] <= ' ') {
+			end--;
+		}
+		return end;
+	}
+
+	private static boolean startsWith(byte[] buf, int start, int end, String prefix) {
+		return end - start >= prefix.length() && regionEquals(buf, start, start + prefix.length(), prefix);
+	}
+
+	private static boolean startsWithIgnoreCase(byte[] buf, int start, int end, String prefix) {
+		return end - start >= prefix.length() && equalsIgnoreCase(buf, start, start + prefix.length(), prefix);
+	}
+
+	private static boolean regionEquals(byte[] buf, int start, int end, String text) {
+		if (end - start != text.length()) {
+			return false;
+		}
+		for (int n = 0; n < text.length(); n++) {
+			if (buf[start + n] != text.charAt(n)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean equalsIgnoreCase(byte[] buf, int start, int end, String text) {
+		if (end - start != text.length()) {
+			return false;
+		}
+		for (int n = 0; n < text.length(); n++) {
+			if (Character.toLowerCase((char) buf[start + n]) != Character.toLowerCase(text.charAt(n))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int parseInt(byte[] buf, int start, int end) {
+		long result = parseLong(buf, start, end);
+		return result > Integer.MAX_VALUE ? -1 : (int) result;
+	}
+
+	/**
+	 * Parses the leading decimal number, or returns <code>-1</code> if there is none.
+	 */
+	private static long parseLong(byte[] buf, int start, int end) {
+		long result = 0;
+		int n = start;
+		for (; n < end && n - start < 18; n++) {
+			int digit = buf[n] - '0';
+			if (digit < 0 || digit > 9) {
+				break;
+			}
+			result = result * 10 + digit;
+		}
+		return n == start ? -1 : result;
+	}
+
+	private static int put(byte[] out, int pos, String text) {
+		int length = text.length();
+		checkCapacity(out, pos, length);
+		for (int n = 0; n < length; n++) {
+			out[pos++] = (byte) text.charAt(n);
+		}
+		return pos;
+	}
+
+	private static int put(byte[] out, int pos, byte[] buf, int start, int end) {
+		int length = end - start;
+		checkCapacity(out, pos, length);
+		System.arraycopy(buf, start, out, pos, length);
+		return pos + length;
+	}
+
+	private static void checkCapacity(byte[] out, int pos, int length) {
+		if (pos + length > out.length) {
+			throw new IllegalStateException("Forwarded message exceeds " + out.length + " bytes.");
+		}
+	}
+
+	/**
+	 * Host, port, and loose routing flag of a <code>sip:</code> URI that can be reached over UDP.
+	 */
+	static final class Target {
+
+		final String host;
+
+		final int port;
+
+		final boolean lr;
+
+		private Target(String host, int port, boolean lr) {
+			this.host = host;
+			this.port = port;
+			this.lr = lr;
+		}
+
+		/**
+		 * Parses the given URI, or returns <code>null</code> if it is not a <code>sip:</code> URI
+		 * with a host name or IPv4 address, or if it has parameters that require regular processing.
+		 */
+		static Target parse(String uri) {
+			if (uri == null || !uri.regionMatches(true, 0, "sip:", 0, 4)) {
+				return null;
+			}
+			int end = uri.indexOf('?');
+			if (end < 0) {
+				end = uri.length();
+			}
+			int hostStart = uri.lastIndexOf('@', end - 1) + 1;
+			if (hostStart < 4) {
+				hostStart = 4;
+			}
+			if (hostStart >= end || uri.charAt(hostStart) == '[') {
+				return null;
+			}
+			int hostEnd = hostStart;
+			while (hostEnd < end && uri.charAt(hostEnd) != ':' && uri.charAt(hostEnd) != ';') {
+				hostEnd++;
+			}
+			if (hostEnd == hostStart) {
+				return null;
+			}
+			String host = uri.substring(hostStart, hostEnd);
+
+			int port = -1;
+			int pos = hostEnd;
+			if (pos < end && uri.charAt(pos) == ':') {
+				int portStart = ++pos;
+				while (pos < end && uri.charAt(pos) != ';') {
+					pos++;
+				}
+				try {
+					port = Integer.parseInt(uri.substring(portStart, pos));
+				} catch (NumberFormatException ex) {
+					return null;
+				}
+			}
+
+			boolean lr = false;
+			while (pos < end) {
+				int paramEnd = uri.indexOf(';', pos + 1);
+				if (paramEnd < 0 || paramEnd > end) {
+					paramEnd = end;
+				}
+				int eq = uri.indexOf('=', pos + 1);
+				int nameEnd = eq < 0 || eq > paramEnd ? paramEnd : eq;
+				String name = uri.substring(pos + 1, nameEnd);
+				if (name.equalsIgnoreCase("lr")) {
+					lr = true;
+				} else if (name.equalsIgnoreCase("maddr")) {
+					return null;
+				} else if (name.equalsIgnoreCase("transport")
+					&& !uri.substring(nameEnd + 1, paramEnd).equalsIgnoreCase(SipProvider.PROTO_UDP)) {
+					return null;
+				}
+				pos = paramEnd;
+			}
+			return new Target(host, port, lr);
+		}
+	}
+
+}
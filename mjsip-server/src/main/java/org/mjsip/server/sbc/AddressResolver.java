@@ -23,10 +23,11 @@ package org.mjsip.server.sbc;
 
 
 
-import java.util.Date;
+import java.util.Collections;
 import java.util.Enumeration;
-import java.util.Hashtable;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ScheduledFuture;
 
 import org.mjsip.sip.provider.SipProvider;
@@ -42,6 +43,12 @@ import org.zoolu.net.SocketAddress;
   * to be used to reach a remote node, against to the address optained in other ways.
   * For example, it can be used to maintain correct remote address mapping
   * for symmetric NAT traversal.
+  * <p>
+  * Bindings are kept in a concurrent map keyed by a compact {@link Key} of address and port,
+  * so that lookups do not lock. Lookups use a per-thread probe key and do not allocate. Bindings are additionally queued in the order of their expiration.
+  * The refresh timer only inspects the head of the queue up to the first binding that is not yet
+  * due, instead of scanning the whole table: A binding that has been refreshed in the meantime
+  * is moved to the tail of the queue, an expired binding is removed.
   */
 public class AddressResolver {
 	
@@ -56,14 +63,17 @@ public class AddressResolver {
 	long expire_time;
 
 	/** Binding table */
-	Hashtable<String, SocketAddress> binding_table;
+	final ConcurrentHashMap<Key,Binding> binding_table=new ConcurrentHashMap<>();
 
-	/** Time table */
-	Hashtable<String, Long> time_table;
+	/** Bindings in the order of their expiration. */
+	final ConcurrentLinkedQueue<Binding> expire_queue=new ConcurrentLinkedQueue<>();
 
 	/** Refresh timer */
 	ScheduledFuture<?> timer;
 
+	/** Reusable key for lookups, never stored in <i>binding_table</i>. */
+	private static final ThreadLocal<Key> LOOKUP_KEY=ThreadLocal.withInitial(Key::new);
+
 	protected final SipProvider sip_provider;
 	
 	/**
@@ -73,8 +83,6 @@ public class AddressResolver {
 		this.sip_provider = sip_provider;
 		this.refresh_time=refresh_time;
 		expire_time=refresh_time/2;
-		binding_table=new Hashtable<>();
-		time_table=new Hashtable<>();
 		
 		timer=sip_provider.scheduler().schedulerWithFixedDelay(refresh_time, this::onTimeout);
 	}
@@ -87,14 +95,16 @@ public class AddressResolver {
 
 	/** Gets list of all reference SocketAddresses */
 	public Enumeration<String> getAllSocketAddresses() {
-		return binding_table.keys();
+		Vector<String> result=new Vector<>();
+		for (Binding binding : binding_table.values()) result.addElement(binding.refer_soaddr.toString());
+		return Collections.enumeration(result);
 	}
 
 
 	/** Whether there is a mapping for the selected SocketAddress */
 	public boolean contains(SocketAddress refer_soaddr) {
 		if (refer_soaddr!=null) {
-			return binding_table.containsKey(refer_soaddr.toString());
+			return binding_table.containsKey(lookupKey(refer_soaddr));
 		}
 		return false;
 	}
@@ -103,26 +113,29 @@ public class AddressResolver {
 	/** Adds or updates a new SocketAddress mapping */
 	public void updateBinding(SocketAddress refer_soaddr, SocketAddress actual_soaddr) {
 		if (refer_soaddr!=null) {
-			String key=refer_soaddr.toString();
-			long expire= new Date().getTime() + expire_time;
-			if (binding_table.containsKey(key)) {
-				if (!binding_table.get(key).equals(actual_soaddr)) {
-					LOG.info("change BINDING {} >> {}", refer_soaddr, actual_soaddr);
-					binding_table.remove(key);
-					binding_table.put(key,actual_soaddr);
+			long expire=System.currentTimeMillis() + expire_time;
+			Binding binding=binding_table.get(lookupKey(refer_soaddr));
+			if (binding==null) {
+				Key key=Key.of(refer_soaddr);
+				Binding added=new Binding(key,refer_soaddr,actual_soaddr,expire);
+				binding=binding_table.putIfAbsent(key,added);
+				if (binding==null) {
+					LOG.info("add BINDING {} >> {}", refer_soaddr, actual_soaddr);
+					expire_queue.add(added);
+					onBindingAdded(added);
+					return;
 				}
-				else {
-					LOG.debug("update BINDING {} >> {}", refer_soaddr, actual_soaddr);
-					// do not change binding_table
-				}
-				time_table.remove(key);
-				time_table.put(key,expire);
+			}
+			if (!binding.actual_soaddr.equals(actual_soaddr)) {
+				LOG.info("change BINDING {} >> {}", refer_soaddr, actual_soaddr);
+				binding.actual_soaddr=actual_soaddr;
+				onBindingChanged(binding);
 			}
 			else {
-				LOG.info("add BINDING {} >> {}", refer_soaddr, actual_soaddr);
-				binding_table.put(key,actual_soaddr);
-				time_table.put(key,expire);
+				LOG.debug("update BINDING {} >> {}", refer_soaddr, actual_soaddr);
+				// do not change binding_table
 			}
+			binding.expire=expire;
 		}
 	}
 
@@ -130,11 +143,10 @@ public class AddressResolver {
 	/** Removes a SocketAddress mapping */
 	public void removeBinding(SocketAddress refer_soaddr) {
 		if (refer_soaddr!=null) {
-			String key=refer_soaddr.toString();
-			if (binding_table.containsKey(key)) {
+			Binding binding=binding_table.remove(lookupKey(refer_soaddr));
+			if (binding!=null) {
 				LOG.info("remove BINDING for {}", refer_soaddr);
-				binding_table.remove(key);
-				time_table.remove(key);
+				onBindingRemoved(binding);
 			}
 		}
 	}
@@ -143,32 +155,190 @@ public class AddressResolver {
 	/** Gets the actual SocketAddress for the selected SocketAddress */
 	public SocketAddress getSocketAddress(SocketAddress refer_soaddr) {
 		if (refer_soaddr!=null) {
-			String key=refer_soaddr.toString();
-			if (binding_table.containsKey(key)) return binding_table.get(key);
+			Binding binding=binding_table.get(lookupKey(refer_soaddr));
+			if (binding!=null) return binding.actual_soaddr;
 		}
 		return null;
 	}
 
 
+	/** Gets the probe key of the current thread set to the given address. */
+	private static Key lookupKey(SocketAddress soaddr) {
+		return LOOKUP_KEY.get().set(soaddr.getAddress().toString(),soaddr.getPort());
+	}
+
+
+	/** When a new binding has been added. */
+	protected void onBindingAdded(Binding binding) {
+		// hook for sub-classes
+	}
+
+
+	/** When the actual address of a binding has changed. */
+	protected void onBindingChanged(Binding binding) {
+		// hook for sub-classes
+	}
+
+
+	/** When a binding has been removed or has expired. */
+	protected void onBindingRemoved(Binding binding) {
+		// hook for sub-classes
+	}
+
+
 	/** When the refresh timeout fires */
 	protected void onTimeout() {
-		// enumerate expired binding
-		LOG.debug("refresh all address bindings:");         
-		long now=(new Date()).getTime();
-		Vector<String> aux=new Vector<>();
-		for (Enumeration<String> e=time_table.keys(); e.hasMoreElements(); ) {
-			String key= e.nextElement();
-			long expire=(time_table.get(key)).longValue();
-			if (expire<now) aux.addElement(key);
-		}
-		// remove expired binding
-		for (int i=0; i<aux.size(); i++) {
-			String key= aux.elementAt(i);
-			LOG.info("remove BINDING for {}", key);         
-			binding_table.remove(key);
-			time_table.remove(key);
+		LOG.debug("refresh address bindings:");         
+		long now=System.currentTimeMillis();
+		int queued=expire_queue.size();
+		for (int i=0; i<queued; i++) {
+			Binding binding=expire_queue.peek();
+			if (binding==null || binding.queued_expire>=now) break;
+			// else
+			expire_queue.poll();
+			if (binding_table.get(binding.key)!=binding) continue;
+			// else
+			long expire=binding.expire;
+			if (expire<now) {
+				if (binding_table.remove(binding.key,binding)) {
+					LOG.info("remove BINDING for {}", binding.refer_soaddr);
+					onBindingRemoved(binding);
+				}
+			}
+			else {
+				// refreshed in the meantime
+				binding.queued_expire=expire;
+				expire_queue.add(binding);
+			}
 		}
 		LOG.debug("done.");         
 	}
 
+
+	/** A binding of a reference address to an actual address. */
+	public static final class Binding {
+		
+		final Key key;
+
+		final SocketAddress refer_soaddr;
+
+		volatile SocketAddress actual_soaddr;
+
+		/** Expiration time, moved forward each time the binding is refreshed. */
+		volatile long expire;
+
+		/** Expiration time when the binding was put into the expiration queue. */
+		long queued_expire;
+
+		Binding(Key key, SocketAddress refer_soaddr, SocketAddress actual_soaddr, long expire) {
+			this.key=key;
+			this.refer_soaddr=refer_soaddr;
+			this.actual_soaddr=actual_soaddr;
+			this.expire=expire;
+			this.queued_expire=expire;
+		}
+
+		/** Gets the reference address. */
+		public SocketAddress getReferSoAddress() {
+			return refer_soaddr;
+		}
+
+		/** Gets the actual address. */
+		public SocketAddress getActualSoAddress() {
+			return actual_soaddr;
+		}
+
+		@Override
+		public String toString() {
+			return refer_soaddr+" >> "+actual_soaddr;
+		}
+	}
+
+
+	/** Compact key of a socket address.
+	  * IPv4 addresses and port are packed into a single <code>long</code>, other addresses
+	  * (host names and IPv6 addresses) are kept as lower case string.
+	  * <p>
+	  * Keys created with {@link #of(String, int)} are never modified. Only the per-thread probe
+	  * keys used for lookups are reset to the address looked up. */
+	public static final class Key {
+
+		private long packed;
+
+		private String host;
+
+		private Key() {
+			// set before use
+		}
+
+		/** Creates the key of a socket address without resolving its host name. */
+		public static Key of(SocketAddress soaddr) {
+			return of(soaddr.getAddress().toString(),soaddr.getPort());
+		}
+
+		/** Creates the key of an address and port without resolving the address. */
+		public static Key of(String addr, int port) {
+			return new Key().set(addr,port);
+		}
+
+		/** Sets this key to the given address and port. */
+		Key set(String addr, int port) {
+			long ip=parseIPv4(addr);
+			if (ip>=0) {
+				packed=(ip<<16) | (port & 0xFFFF);
+				host=null;
+			}
+			else {
+				packed=port;
+				host=addr.toLowerCase();
+			}
+			return this;
+		}
+
+		/** Parses a dotted IPv4 address, or returns -1 if the address is not an IPv4 literal. */
+		static long parseIPv4(String addr) {
+			long result=0;
+			int octets=0;
+			int value=-1;
+			for (int i=0, cnt=addr.length(); i<cnt; i++) {
+				char c=addr.charAt(i);
+				if (c>='0' && c<='9') {
+					value=(value<0? 0 : value*10) + (c-'0');
+					if (value>255) return -1;
+				}
+				else
+				if (c=='.' && value>=0 && octets<3) {
+					result=(result<<8) | value;
+					octets++;
+					value=-1;
+				}
+				else return -1;
+			}
+			if (octets!=3 || value<0) return -1;
+			return (result<<8) | value;
+		}
+
+		@Override
+		public int hashCode() {
+			int result=Long.hashCode(packed * 0x9E3779B97F4A7C15L);
+			return host==null? result : result ^ host.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (obj==this) return true;
+			if (!(obj instanceof Key)) return false;
+			Key other=(Key)obj;
+			return packed==other.packed && (host==null? other.host==null : host.equals(other.host));
+		}
+
+		@Override
+		public String toString() {
+			if (host!=null) return host+":"+packed;
+			// else
+			long ip=packed>>>16;
+			return ((ip>>>24)&0xFF)+"."+((ip>>>16)&0xFF)+"."+((ip>>>8)&0xFF)+"."+(ip&0xFF)+":"+(packed&0xFFFF);
+		}
+	}
+
 }
@@ -41,6 +41,10 @@ import org.zoolu.net.SocketAddress;
   * the source address used in the opposite direction,
   * that is the address where the messages in the opposite direction came from
   * (reverse forwarding).
+  * <p>
+  * Received messages are processed without a provider-wide lock. Address bindings are kept in
+  * the concurrent table of the {@link AddressResolver} and message mangling only touches the
+  * message being processed, so messages may be delivered by several transport threads at a time.
   */
 public class ExtendedSipProvider extends org.mjsip.sip.provider.SipProvider {
 	
@@ -69,7 +73,7 @@ public class ExtendedSipProvider extends org.mjsip.sip.provider.SipProvider {
 
 	/** From TransportListener. When a new SIP message is received. */
 	@Override
-	public synchronized void onReceivedMessage(SipTransport transport, SipMessage msg) {
+	public void onReceivedMessage(SipTransport transport, SipMessage msg) {
 		
 		SocketAddress src_soaddr=new SocketAddress(msg.getRemoteAddress(),msg.getRemotePort());
 		
@@ -80,10 +84,8 @@ public class ExtendedSipProvider extends org.mjsip.sip.provider.SipProvider {
 			ViaHeader via=msg.getViaHeader();
 			SocketAddress via_soaddr=new SocketAddress(via.getHost(),(via.hasPort())?via.getPort():sipConfig().getDefaultPort());
 			if (via_soaddr.equals(src_soaddr)) {
-				if (address_resolver.contains(via_soaddr)) {
-					// remove binding
-					address_resolver.removeBinding(via_soaddr);        
-				}
+				// remove binding, if any
+				address_resolver.removeBinding(via_soaddr);        
 			}
 			else {
 				// update binding
@@ -124,8 +126,9 @@ public class ExtendedSipProvider extends org.mjsip.sip.provider.SipProvider {
 		//for (Enumeration e=address_resolver.getAllSocketAddresses(); e.hasMoreElements(); )
 		//{  printLog("DEBUG: resolv_soaddr="+((String)e.nextElement()),LogWriter.LEVEL_HIGH);
 		//}
-		if (address_resolver.contains(refer_soaddr)) {
-			dest_soaddr=address_resolver.getSocketAddress(refer_soaddr);
+		SocketAddress bound_soaddr=address_resolver.getSocketAddress(refer_soaddr);
+		if (bound_soaddr!=null) {
+			dest_soaddr=bound_soaddr;
 			LOG.info("CHANGING DESTINATION {} >> {}", refer_soaddr, dest_soaddr);
 			dest_addr=dest_soaddr.getAddress().toString();
 			dest_port=dest_soaddr.getPort();
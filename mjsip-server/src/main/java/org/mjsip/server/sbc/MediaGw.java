@@ -23,18 +23,20 @@ package org.mjsip.server.sbc;
 
 
 
-import java.util.HashSet;
-import java.util.Hashtable;
-import java.util.Vector;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
+import org.mjsip.capture.CaptureSink;
+import org.mjsip.capture.PcapWriter;
+import org.mjsip.metrics.MetricsRegistry;
 import org.mjsip.pool.PortPool;
-import org.mjsip.sdp.MediaDescriptor;
-import org.mjsip.sdp.SdpMessage;
-import org.mjsip.sdp.field.MediaField;
+import org.mjsip.sdp.SdpDocument;
 import org.mjsip.sip.message.SipMessage;
 import org.mjsip.time.Scheduler;
 import org.slf4j.LoggerFactory;
 import org.zoolu.net.SocketAddress;
+import org.zoolu.net.UdpSocket;
 
 
 
@@ -63,14 +65,26 @@ public class MediaGw implements SymmetricUdpRelayListener {
 	/** Media address */
 	//String media_addr=null;
 
-	/** Hashtable of pending Masquerades referred by call_id|leg|media (i.e., call_id|leg|media --> masq) */
-	Hashtable<String, Masquerade> masq_table;
+	/** Table of pending Masquerades referred by call_id|leg|media (i.e., call_id|leg|media --> masq) */
+	ConcurrentHashMap<String, Masquerade> masq_table;
 
-	/** Hashtable of established call_id. */
-	HashSet<String> call_set;
+	/** Table of established calls (i.e., call_id --> number of media relays not yet terminated) */
+	ConcurrentHashMap<String, Integer> call_table;
+
+	/** Table of media relays with the call and the keys of their Masquerades (i.e., relay --> {call_id, left key, right key}) */
+	ConcurrentHashMap<SymmetricUdpRelay, String[]> relay_table;
 
 	private Scheduler _scheduler;
 
+	/** Tap for passive interception shared by all relays */
+	private MediaTap _mediaTap;
+
+	/** Port allocated for sending intercepted packets to the sink address, or <i>0</i> */
+	private int _tapPort;
+
+	/** Traffic shaper shared by all regulated relays */
+	private TrafficShaper _trafficShaper;
+
 	/**
 	 * Constructs a new MediaGw.
 	 */
@@ -78,8 +92,9 @@ public class MediaGw implements SymmetricUdpRelayListener {
 		_scheduler = scheduler;
 		this.sbc_profile=sbc_profile;
 		_portPool=portPool;
-		masq_table=new Hashtable<>();
-		call_set=new HashSet<>();
+		masq_table=new ConcurrentHashMap<>();
+		call_table=new ConcurrentHashMap<>();
+		relay_table=new ConcurrentHashMap<>();
 	}
 	
 	/**
@@ -89,48 +104,97 @@ public class MediaGw implements SymmetricUdpRelayListener {
 		return _scheduler;
 	}
 
+	/** Gets the tap shared by all relays for passive interception, creating it on first use.
+	  * @return the media tap, or <i>null</i> if no interception target is configured */
+	protected synchronized MediaTap getMediaTap() {
+		if (_mediaTap==null) {
+			try {
+				CaptureSink sink;
+				if (sbc_profile.interceptFile!=null) {
+					sink=new PcapWriter(sbc_profile.interceptFile,0,0);
+				}
+				else
+				if (sbc_profile.sinkAddr!=null && sbc_profile.sinkPort>0) {
+					_tapPort=_portPool.allocate();
+					sink=new UdpMediaSink(new UdpSocket(_tapPort),new SocketAddress(sbc_profile.sinkAddr,sbc_profile.sinkPort));
+				}
+				else {
+					return null;
+				}
+				_mediaTap=new MediaTap(List.of(sink),sbc_profile.interceptQueueSize,MetricsRegistry.global());
+				LOG.info("media interception started: {}", sink);
+			}
+			catch (IOException e) {
+				LOG.warn("Cannot start media interception.", e);
+				releaseTapPort();
+			}
+		}
+		return _mediaTap;
+	}
+
+	/** Gets the traffic shaper shared by all regulated relays, creating it on first use. */
+	protected synchronized TrafficShaper getTrafficShaper() {
+		if (_trafficShaper==null) {
+			_trafficShaper=new TrafficShaper(sbc_profile.shapingBurst,sbc_profile.shapingQueueSize);
+		}
+		return _trafficShaper;
+	}
+
+	/** Stops media interception and traffic shaping, if started. */
+	public synchronized void halt() {
+		if (_mediaTap!=null) {
+			_mediaTap.halt();
+			_mediaTap=null;
+		}
+		releaseTapPort();
+		if (_trafficShaper!=null) {
+			_trafficShaper.halt();
+			_trafficShaper=null;
+		}
+	}
+
+	/** Releases the port of the interception sink socket, if allocated. */
+	private void releaseTapPort() {
+		if (_tapPort>0) {
+			_portPool.release(_tapPort);
+			_tapPort=0;
+		}
+	}
+
 	/** Processes the sdp data */
 	public SipMessage processSessionDescriptor(SipMessage msg) {
 		LOG.debug("inside processSessionDescriptor()");
 		
-		SdpMessage sdp=new SdpMessage(msg.getStringBody());
-		String dest_addr=sdp.getConnection().getAddress();
+		SdpDocument sdp=msg.getSdpDocument();
+		String dest_addr=sdp.getConnectionAddress();
 		// substitute 0.0.0.0 with 127.0.0.1
-		if (dest_addr.equals("0.0.0.0")) dest_addr="127.0.0.1";
+		if (dest_addr==null || dest_addr.equals("0.0.0.0")) dest_addr="127.0.0.1";
 		
 		String masq_addr=sbc_profile.mediaAddr;
 
 		//String[] media={ "audio" };
 		//int[] masq_port=new int[media.length];                   
-		Vector<MediaDescriptor> mediaDescriptors=sdp.getMediaDescriptors();
-		String[] mediaTypes=new String[mediaDescriptors.size()];                   
-		int[] masq_port=new int[mediaDescriptors.size()];                   
+		int media_cnt=sdp.getMediaCount();
+		String[] mediaTypes=new String[media_cnt];
+		int[] masq_port=new int[media_cnt];
 			
 		String call_id=msg.getCallIdHeader().getCallId();
 		String leg=(msg.isRequest())? "caller" : "callee";
 
 		//for (int i=0; i<media.length; i++)
-		for (int i=0; i<mediaDescriptors.size(); i++) {
+		for (int i=0; i<media_cnt; i++) {
 			//int dest_port=sdp.getMediaDescriptor(media[i]).getMedia().getPort();
-			MediaDescriptor media_descriptor=mediaDescriptors.elementAt(i);
-			MediaField mediaField=media_descriptor.getMediaField();
-			mediaTypes[i]=mediaField.getMediaType();
-			int dest_port=mediaField.getPort();
+			mediaTypes[i]=sdp.getMediaType(i);
+			int dest_port=sdp.getMediaPort(i);
 						
 			String key=call_id+"-"+leg+"-"+mediaTypes[i];
 			LOG.info("media-id: {}", key);
-			if (masq_table.containsKey(key)) {
-				// get masq
-				Masquerade masq=masq_table.get(key);
-				masq_addr=masq.getMasqSoaddr().getAddress().toString();
-				masq_port[i]=masq.getMasqSoaddr().getPort();
-			}
-			else {
-				// set masq
-				masq_port[i]=_portPool.allocate();
-				Masquerade masq=new Masquerade(new SocketAddress(dest_addr,dest_port),new SocketAddress(masq_addr,masq_port[i]));
-				masq_table.put(key,masq);
-			}
+			// get masq, or set it atomically, if the same leg is processed concurrently
+			SocketAddress peer_soaddr=new SocketAddress(dest_addr,dest_port);
+			String new_masq_addr=masq_addr;
+			Masquerade masq=masq_table.computeIfAbsent(key,k->new Masquerade(peer_soaddr,new SocketAddress(new_masq_addr,_portPool.allocate())));
+			masq_addr=masq.getMasqSoaddr().getAddress().toString();
+			masq_port[i]=masq.getMasqSoaddr().getPort();
 		}
 		// mangle sdp
 		for (int i=0; i<mediaTypes.length; i++) {
@@ -140,16 +204,23 @@ public class MediaGw implements SymmetricUdpRelayListener {
 
 		// creates the actual media relay (SymmetricUdpRelay) when both media legs are available
 		if (mediaTypes.length>0) {
-			if(masq_table.containsKey(call_id+"-caller"+"-"+mediaTypes[0]) && masq_table.containsKey(call_id+"-callee"+"-"+mediaTypes[0])) {
+			if (isComplete(call_id,mediaTypes)) {
 				LOG.info("complete call");
-				if (!call_set.contains(call_id)) {
+				if (call_table.putIfAbsent(call_id,mediaTypes.length)==null) {
 					LOG.info("creating new MediaGW");
 					for (int i=0; i<mediaTypes.length; i++) {
-						Masquerade masq_left=masq_table.get(call_id+"-caller"+"-"+mediaTypes[i]);
-						Masquerade masq_right=masq_table.get(call_id+"-callee"+"-"+mediaTypes[i]);
-						createSymmetricUdpRelay(masq_left,masq_right);
+						String left_key=call_id+"-caller"+"-"+mediaTypes[i];
+						String right_key=call_id+"-callee"+"-"+mediaTypes[i];
+						SymmetricUdpRelay symm_relay=createSymmetricUdpRelay(masq_table.get(left_key),masq_table.get(right_key));
+						if (symm_relay==null) {
+							release(call_id,left_key,right_key);
+							continue;
+						}
+						// else
+						relay_table.put(symm_relay,new String[]{call_id,left_key,right_key});
+						// the relay may have failed to start or terminated before it was registered
+						if (!symm_relay.isRunning()) onSymmetricUdpRelayTerminated(symm_relay);
 					}
-					call_set.add(call_id);
 				}
 				else {
 					LOG.info("MediaGW exists");
@@ -164,6 +235,32 @@ public class MediaGw implements SymmetricUdpRelayListener {
 	}
 
 
+	/** Whether the Masquerades of both legs are available for all media.
+	  * The leg that has been processed last finds all of them, also if both legs are processed concurrently. */
+	private boolean isComplete(String call_id, String[] mediaTypes) {
+		for (int i=0; i<mediaTypes.length; i++) {
+			if (!masq_table.containsKey(call_id+"-caller"+"-"+mediaTypes[i])) return false;
+			if (!masq_table.containsKey(call_id+"-callee"+"-"+mediaTypes[i])) return false;
+		}
+		return true;
+	}
+
+
+	/** Releases the Masquerades of a media relay and forgets the call, when its last relay is released. */
+	private void release(String call_id, String left_key, String right_key) {
+		releaseMasquerade(left_key);
+		releaseMasquerade(right_key);
+		call_table.computeIfPresent(call_id,(k,relays)->relays>1? Integer.valueOf(relays-1) : null);
+	}
+
+
+	/** Removes a Masquerade and returns its port to the pool. */
+	private void releaseMasquerade(String key) {
+		Masquerade masq=masq_table.remove(key);
+		if (masq!=null) _portPool.release(masq.getMasqSoaddr().getPort());
+	}
+
+
 	/** Creates a new SymmetricUdpRelay */
 	protected SymmetricUdpRelay createSymmetricUdpRelay(Masquerade masq_left, Masquerade masq_right) {
 		try {
@@ -171,8 +268,8 @@ public class MediaGw implements SymmetricUdpRelayListener {
 			int right_port=masq_left.getMasqSoaddr().getPort();
 			
 			SymmetricUdpRelay symm_relay;
-			if (sbc_profile.doInterception) {
-				// intercepting symmetric UDP relay
+			if (sbc_profile.doInterception && sbc_profile.doActiveInterception) {
+				// intercepting symmetric UDP relay injecting new flows
 				int left_intercept_port=_portPool.allocate();
 				int right_intercept_port=_portPool.allocate();
 				SocketAddress sink_soaddr=null;
@@ -185,7 +282,7 @@ public class MediaGw implements SymmetricUdpRelayListener {
 			else
 			if (sbc_profile.interpacketTime>0) {
 				// symmetric regulated UDP relay
-				symm_relay = new SymmetricRegulatedUdpRelay(scheduler(), left_port, masq_left.getPeerSoaddr(), right_port,
+				symm_relay = new SymmetricRegulatedUdpRelay(scheduler(), getTrafficShaper(), left_port, masq_left.getPeerSoaddr(), right_port,
 						masq_right.getPeerSoaddr(), sbc_profile.relayTimeout, sbc_profile.interpacketTime, this);
 				LOG.debug("MGW started: {}", symm_relay);
 			}
@@ -196,6 +293,11 @@ public class MediaGw implements SymmetricUdpRelayListener {
 				LOG.debug("MGW started: {}", symm_relay);
 			}
 
+			if (sbc_profile.doInterception && !sbc_profile.doActiveInterception) {
+				// passive interception through the shared tap
+				symm_relay.setMediaTap(getMediaTap());
+			}
+
 			return symm_relay;
 		}
 		catch (Exception e) {
@@ -236,7 +338,12 @@ public class MediaGw implements SymmetricUdpRelayListener {
 	/** When it stops relaying UDP datagrams (both directions). */
 	@Override
 	public void onSymmetricUdpRelayTerminated(SymmetricUdpRelay symm_relay) {
-		LOG.debug("MGW terminated: {}", symm_relay);
+		// may be reported once for each side of the relay
+		String[] relayed=relay_table.remove(symm_relay);
+		if (relayed!=null) {
+			LOG.debug("MGW terminated: {}", symm_relay);
+			release(relayed[0],relayed[1],relayed[2]);
+		}
 	}
 	
 }
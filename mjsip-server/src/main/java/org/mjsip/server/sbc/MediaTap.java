@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.server.sbc;
+
+import java.net.InetAddress;
+import java.util.List;
+
+import org.mjsip.capture.CaptureFilter;
+import org.mjsip.capture.CaptureSink;
+import org.mjsip.capture.CapturedPacket;
+import org.mjsip.capture.PacketCapture;
+import org.mjsip.metrics.MetricsRegistry;
+import org.zoolu.net.SocketAddress;
+
+/**
+ * Export channel for copies of relayed media packets, e.g. for lawful interception or call
+ * recording.
+ *
+ * <p>
+ * Relays hand over each forwarded packet through {@link #capture(SocketAddress, SocketAddress, byte[], int, int)}.
+ * The packet is copied once into the buffer of a {@link PacketCapture}, whose single background
+ * thread writes it to the {@link CaptureSink}s. When the sinks cannot keep up and the buffer is
+ * full, the packet is dropped instead of blocking the relay.
+ * </p>
+ *
+ * <p>
+ * A single tap is shared by all relays of a {@link MediaGw}, so interception neither requires
+ * additional ports nor additional threads per call.
+ * </p>
+ */
+public class MediaTap {
+
+	/** Default number of packets that can be queued. */
+	public static final int DEFAULT_QUEUE_SIZE = 4096;
+
+	private final PacketCapture _capture;
+
+	/**
+	 * Creates a {@link MediaTap} and starts its writer thread.
+	 *
+	 * @param sinks
+	 *        The destinations of captured packets, closed when the tap is halted.
+	 * @param queueSize
+	 *        The maximum number of packets waiting to be written.
+	 * @param registry
+	 *        The registry to add capture counters to.
+	 */
+	public MediaTap(List<CaptureSink> sinks, int queueSize, MetricsRegistry registry) {
+		_capture = new PacketCapture(queueSize, CaptureFilter.ALL, sinks, registry,
+			MetricsRegistry.labels("capture", "media"));
+	}
+
+	/**
+	 * Captures a relayed packet.
+	 *
+	 * <p>
+	 * This method never blocks. If the queue is full, or one of the addresses is not resolved, the
+	 * packet is dropped.
+	 * </p>
+	 *
+	 * @param src
+	 *        The address the packet was received from.
+	 * @param dst
+	 *        The address the packet was relayed to.
+	 * @param buf
+	 *        The buffer containing the packet.
+	 * @param off
+	 *        The offset of the packet data.
+	 * @param len
+	 *        The length of the packet data.
+	 * @return Whether the packet was queued.
+	 */
+	public boolean capture(SocketAddress src, SocketAddress dst, byte[] buf, int off, int len) {
+		InetAddress source = src.getAddress().getInetAddress();
+		InetAddress destination = dst.getAddress().getInetAddress();
+		return _capture.capture(CapturedPacket.UDP, source, src.getPort(), destination, dst.getPort(), 0, buf, off,
+			len);
+	}
+
+	/**
+	 * The number of packets captured so far.
+	 */
+	public long getCapturedCount() {
+		return _capture.getCaptured();
+	}
+
+	/**
+	 * The number of packets dropped because the sinks could not keep up.
+	 */
+	public long getDroppedCount() {
+		return _capture.getDropped();
+	}
+
+	/**
+	 * Stops capturing, writes all pending packets and closes the sinks.
+	 */
+	public void halt() {
+		_capture.close();
+	}
+
+}
@@ -26,9 +26,9 @@ package org.mjsip.server.sbc;
 
 
 import java.net.DatagramSocket;
-import java.util.Vector;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 
-import org.mjsip.time.Scheduler;
 import org.zoolu.net.IpAddress;
 import org.zoolu.net.UdpPacket;
 import org.zoolu.net.UdpSocket;
@@ -38,100 +38,109 @@ import org.zoolu.net.UdpSocket;
 /**
  * Provides a shaped UDP transport protocol. A minimum inter-packets time is guaranteed on
  * departures.
+ * <p>
+ * Delayed packets are queued in a {@link TrafficShaper.Flow} and sent by the shaper's pacing
+ * thread.
  */
 public class OutputRegulatedUdpSocket extends UdpSocket {
-	
-	/** Minimum inter-packet departure time (in milliseconds) */
-	long inter_time=0; 
 
-	/** Last departure time */
-	long last_departure=0; 
+	/** The regulated flow */
+	private final TrafficShaper.Flow flow;
 
-	/** Packet buffer */
-	Vector<UdpPacket> buffer=new Vector<>();
 
-	private Scheduler _scheduler; 
-
-
-	/** Creates a new OutputRegulatedUdpSocket */ 
-	public OutputRegulatedUdpSocket(Scheduler scheduler, int port, long inter_time) throws java.net.SocketException {
+	/** Creates a new OutputRegulatedUdpSocket */
+	public OutputRegulatedUdpSocket(TrafficShaper shaper, int port, long inter_time) throws java.net.SocketException {
 		super(port);
-		_scheduler = scheduler;
-		this.inter_time=inter_time;
+		flow=shaper.createFlow(new Unregulated(this),inter_time);
 	}
 
 
-	/** Creates a new OutputRegulatedUdpSocket */ 
-	public OutputRegulatedUdpSocket(Scheduler scheduler, int port, IpAddress ipaddr, long inter_time) throws java.net.SocketException {
+	/** Creates a new OutputRegulatedUdpSocket */
+	public OutputRegulatedUdpSocket(TrafficShaper shaper, int port, IpAddress ipaddr, long inter_time) throws java.net.SocketException {
 		super(port,ipaddr);
-		_scheduler = scheduler;
-		this.inter_time=inter_time;
+		flow=shaper.createFlow(new Unregulated(this),inter_time);
 	}
- 
 
-	/** Creates a new OutputRegulatedUdpSocket */ 
-	OutputRegulatedUdpSocket(DatagramSocket sock, long inter_time) {
+
+	/** Creates a new OutputRegulatedUdpSocket */
+	OutputRegulatedUdpSocket(TrafficShaper shaper, DatagramSocket sock, long inter_time) {
 		super(sock);
-		this.inter_time=inter_time;
+		flow=shaper.createFlow(new Unregulated(this),inter_time);
 	}
 
 
 	/** Sets the minimum inter-packet departure time (in milliseconds) */
-	synchronized public void setMinimumInterPacketTime(long time) {
-		inter_time=time;
+	public void setMinimumInterPacketTime(long time) {
+		flow.setInterPacketTime(time);
 	}
 
 
 	/** Gets the minimum inter-packet departure time (in milliseconds) */
-	synchronized public long getMinimumInterPacketTime() {
-		return inter_time;
+	public long getMinimumInterPacketTime() {
+		return flow.getInterPacketTime();
 	}
 
 
-	/** Sends an UDP packet from this socket. */ 
+	/** Gets the number of packets dropped because the queue was full */
+	public long getDroppedPacketCounter() {
+		return flow.getDroppedCount();
+	}
+
+
+	/** Sends an UDP packet from this socket. */
 	@Override
 	public void send(UdpPacket pkt) throws java.io.IOException {
-		sendRegulated(pkt);
+		flow.send(pkt);
 	}
 
-	/** When the timer exceeds */
-	private void onTimeout() {
-		try {
-			sendTop(); 
-		} catch (Exception e) {
-			e.printStackTrace();
-		}
+
+	/** Sends a datagram from this socket, copied into the queue of the regulated flow, if delayed. */
+	@Override
+	public void send(ByteBuffer data, InetSocketAddress dest) throws java.io.IOException {
+		flow.send(data,dest);
+	}
+
+
+	/** Sends a packet without regulation. */
+	void sendUnregulated(UdpPacket pkt) throws java.io.IOException {
+		super.send(pkt);
 	}
 
-	/** Sends an UDP packet from this socket. */ 
-	synchronized private void sendRegulated(UdpPacket pkt) throws java.io.IOException {
-		long now=System.currentTimeMillis();
-		if (buffer.isEmpty() && now>=(last_departure+inter_time))  {
-			super.send(pkt);
-			last_departure=now;
+
+	/** Sends a datagram without regulation. */
+	void sendUnregulated(ByteBuffer data, InetSocketAddress dest) throws java.io.IOException {
+		super.send(data,dest);
+	}
+
+
+	/** View of an OutputRegulatedUdpSocket that sends without regulation. */
+	private static class Unregulated extends UdpSocket {
+
+		private final OutputRegulatedUdpSocket socket;
+
+		Unregulated(OutputRegulatedUdpSocket socket) {
+			this.socket=socket;
 		}
-		else {
-			buffer.addElement(pkt);
-			if (buffer.size()==1) {
-				if (inter_time<=0) sendTop();
-				else
-					_scheduler.schedule(last_departure+inter_time-now, this::onTimeout);
-			}
+
+		@Override
+		public void send(UdpPacket pkt) throws java.io.IOException {
+			socket.sendUnregulated(pkt);
 		}
-	}
 
+		@Override
+		public void send(ByteBuffer data, InetSocketAddress dest) throws java.io.IOException {
+			socket.sendUnregulated(data,dest);
+		}
 
-	/** Sends the first UdpPacket in queue. */ 
-	synchronized private void sendTop() throws java.io.IOException {
-		UdpPacket pkt=buffer.elementAt(0);
-		buffer.removeElementAt(0);
-		super.send(pkt);
-		last_departure=System.currentTimeMillis();
-		if (buffer.size()>0) {
-			if (inter_time<=0) sendTop();
-			else
-				_scheduler.schedule(inter_time, this::onTimeout);
+		@Override
+		public void close() {
+			socket.close();
+		}
+
+		@Override
+		public String toString() {
+			return socket.toString();
 		}
 	}
-	
+
 }
@@ -23,14 +23,13 @@ package org.mjsip.server.sbc;
 
 
 
-import java.util.Hashtable;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.mjsip.config.MetaConfig;
 import org.mjsip.config.OptionParser;
 import org.mjsip.pool.PortConfig;
 import org.mjsip.pool.PortPool;
-import org.mjsip.sdp.SdpMessage;
 import org.mjsip.server.Proxy;
 import org.mjsip.server.ServerProfile;
 import org.mjsip.sip.address.GenericURI;
@@ -44,7 +43,7 @@ import org.mjsip.sip.header.ViaHeader;
 import org.mjsip.sip.message.SipMessage;
 import org.mjsip.sip.message.SipMethods;
 import org.mjsip.sip.provider.SipConfig;
-import org.mjsip.sip.provider.SipKeepAlive;
+import org.mjsip.sip.provider.KeepAliveEngine;
 import org.mjsip.time.ConfiguredScheduler;
 import org.mjsip.time.SchedulerConfig;
 import org.slf4j.LoggerFactory;
@@ -97,8 +96,11 @@ public class SessionBorderController extends Proxy {
 	/** The media GW box */
 	MediaGw media_gw;
 
-	/** Sip keep-alive daemons for registered users. */
-	Hashtable<String, SipKeepAlive> keepalive_daemons=null;
+	/** Engine sending keep-alive tokens to registered users. */
+	KeepAliveEngine keepalive_engine=null;
+
+	/** Keep-alive targets for registered users, updated concurrently by responses to REGISTER requests. */
+	ConcurrentHashMap<String, KeepAliveEngine.Target> keepalive_daemons=null;
 
 	/** Maximum time between two handovers (in milliseconds). */
 	//long handover_time=5000;
@@ -114,7 +116,12 @@ public class SessionBorderController extends Proxy {
 		this.sip_provider=sip_provider;
 		this.sbc_profile=sbc_profile;
 		
-		if (sbc_profile.keepaliveTime>0 && !sbc_profile.keepaliveAggressive) keepalive_daemons=new Hashtable<>();
+		if (sbc_profile.keepaliveTime>0 && !sbc_profile.keepaliveAggressive) {
+			keepalive_daemons=new ConcurrentHashMap<>();
+			keepalive_engine=sip_provider.keepAliveEngine();
+			keepalive_engine.setDeadTime(sbc_profile.keepaliveDeadTime);
+			keepalive_engine.setListener(this::onKeepAliveTimeout);
+		}
 		if (sbc_profile.mediaAddr==null || sbc_profile.mediaAddr.equals("0.0.0.0")) sbc_profile.mediaAddr=sip_provider.getViaAddress();
 		
 		media_gw = new MediaGw(sip_provider.scheduler(), portPool, sbc_profile);
@@ -123,6 +130,19 @@ public class SessionBorderController extends Proxy {
 		//server_profile.on_route=true;
 	}
 
+	/** Stops the SBC and its media GW. */
+	@Override
+	public void halt() {
+		super.halt();
+		media_gw.halt();
+	}
+
+	/** Forwarded requests are mangled, hence never forwarded without parsing. */
+	@Override
+	protected boolean supportsFastForwarding() {
+		return false;
+	}
+
 	/** When a new request message is received for a local user. */
 	@Override
 	public void processRequestToLocalUser(SipMessage msg) {
@@ -239,31 +259,25 @@ public class SessionBorderController extends Proxy {
 				if (port<=0) port=sip_provider.sipConfig().getDefaultPort();
 				SocketAddress soaddr=new SocketAddress(host,port);
 				int time=ch.getExpires();
+				String key=soaddr.toString();
 				if (time>0) {
-					SipKeepAlive keepalive;
-					String key=soaddr.toString();
-					if (keepalive_daemons.containsKey(key)) {
-						keepalive=keepalive_daemons.get(key);
-						if (!keepalive.isRunning()) {
-							keepalive_daemons.remove(key);
-							keepalive=new SipKeepAlive(sip_provider,soaddr,sbc_profile.keepaliveTime);
-							keepalive_daemons.put(key,keepalive);
+					KeepAliveEngine.Target keepalive=keepalive_daemons.compute(key,(k,current)->{
+						if (current==null) {
+							LOG.debug("KeepAlive: start: {} ({}secs)", soaddr, time);
+							return keepalive_engine.add(soaddr,sbc_profile.keepaliveTime);
+						}
+						if (!current.isRunning()) {
 							LOG.debug("KeepAlive: restart: {} ({}secs)", soaddr, time);
+							return keepalive_engine.add(soaddr,sbc_profile.keepaliveTime);
 						}
-						else LOG.debug("KeepAlive: update: {} ({}secs)", soaddr, time);
-					}
-					else {
-						keepalive=new SipKeepAlive(sip_provider,soaddr,sbc_profile.keepaliveTime);
-						keepalive_daemons.put(key,keepalive);
-						LOG.debug("KeepAlive: start: {} ({}secs)", soaddr, time);
-					}
+						LOG.debug("KeepAlive: update: {} ({}secs)", soaddr, time);
+						return current;
+					});
 					keepalive.setExpirationTime(((long)time)*1000);
 				}
 				else {
-					String key=soaddr.toString();
-					if (keepalive_daemons.containsKey(key)) {
-						SipKeepAlive keepalive=keepalive_daemons.get(key);
-						keepalive_daemons.remove(key);
+					KeepAliveEngine.Target keepalive=keepalive_daemons.remove(key);
+					if (keepalive!=null) {
 						keepalive.halt();
 						LOG.debug("KeepAlive: halt: {}", soaddr);
 					}
@@ -274,16 +288,23 @@ public class SessionBorderController extends Proxy {
 	}
 
 
+	/** When a registered user does not respond to keep-alive tokens anymore. */
+	private void onKeepAliveTimeout(KeepAliveEngine engine, KeepAliveEngine.Target target) {
+		SocketAddress soaddr=target.getDestSoAddress();
+		keepalive_daemons.remove(soaddr.toString(),target);
+		LOG.info("KeepAlive: dead binding: {}", soaddr);
+	}
+
+
 	/** Mangles the body */
 	private SipMessage mangleBody(SipMessage msg) {
 		LOG.debug("inside mangleBody()");
 
 		String content_type=msg.getContentTypeHeader().getContentType();
 		if (content_type.equalsIgnoreCase("application/sdp")) {
-			SdpMessage sdp=msg.getSdpBody();
-			String dest_addr=sdp.getConnection().getAddress();
+			String dest_addr=msg.getSdpDocument().getConnectionAddress();
 			// substitute 0.0.0.0 with 127.0.0.1
-			if (dest_addr.equals("0.0.0.0")) dest_addr="127.0.0.1";
+			if (dest_addr==null || dest_addr.equals("0.0.0.0")) dest_addr="127.0.0.1";
 
 			// checking whether acts as media gw
 			if (doRelay(dest_addr)) msg=media_gw.processSessionDescriptor(msg);
@@ -371,6 +392,7 @@ public class SessionBorderController extends Proxy {
 		ExtendedSipProvider extended_provider=new ExtendedSipProvider(sipConfig, new ConfiguredScheduler(schedulerConfig), sbc_profile.bindingTimeout,keepalive_aggressive_time);
 
 		// create and start the SBC
-		new SessionBorderController(extended_provider, portConfig.createPool(), server_profile,sbc_profile);
+		SessionBorderController sbc=new SessionBorderController(extended_provider, portConfig.createPool(), server_profile,sbc_profile);
+		haltOnShutdown(sbc);
 	}
 }
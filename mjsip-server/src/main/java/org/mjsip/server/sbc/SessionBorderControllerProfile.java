@@ -22,6 +22,9 @@ public class SessionBorderControllerProfile {
 	@Option(name = "--keepalive-time", usage = "Rate of keep-alive datagrams sent toward all registered UAs (in milliseconds). Set keepalive_time=0 to disable the sending of keep-alive datagrams.")
 	public long keepaliveTime=0;
 
+	@Option(name = "--keepalive-dead-time", usage = "Time (in milliseconds) without any message or keep-alive response from a registered UA, after which it is no longer kept alive and reported as dead. Set to 0 to disable liveness checks.")
+	public long keepaliveDeadTime=0;
+
 	// /** Whether sending keepalive datagram only to UAs that explicitely request it through 'keep-alive' parameter. */
 	// public boolean keepalive_selective=false;
 
@@ -34,6 +37,12 @@ public class SessionBorderControllerProfile {
 	@Option(name = "--interpacket-time", usage = "Minimum inter-packet departure time.")
 	public long interpacketTime=0; 
 
+	@Option(name = "--shaping-burst", usage = "Number of packets a regulated flow may send back-to-back after being idle.")
+	public int shapingBurst=1;
+
+	@Option(name = "--shaping-queue-size", usage = "Maximum number of packets delayed per regulated flow. Packets are dropped when the queue is full.")
+	public int shapingQueueSize=TrafficShaper.DEFAULT_QUEUE_SIZE;
+
 	@Option(name = "--do-interception", usage = "Whether to intercept media traffic.", handler = YesNoHandler.class)
 	public boolean doInterception=false;
 
@@ -46,6 +55,13 @@ public class SessionBorderControllerProfile {
 	@Option(name = "--sink-port", usage = "Sink port for media traffic interception.")
 	public int sinkPort=0;
 
+	@Option(name = "--intercept-file", usage = "File where intercepted media traffic is recorded in pcap format. "
+			+ "If set, passive interception records to this file instead of relaying copies to the sink address.")
+	public String interceptFile=null;
+
+	@Option(name = "--intercept-queue-size", usage = "Maximum number of intercepted packets waiting to be exported. Packets are dropped when the queue is full.")
+	public int interceptQueueSize=4096;
+
 	@Option(name = "--media-addr", usage = "Media address.")
 	public String mediaAddr="0.0.0.0";
 
@@ -26,6 +26,7 @@ package org.mjsip.server.sbc;
 import java.util.Vector;
 
 import org.mjsip.sdp.MediaDescriptor;
+import org.mjsip.sdp.SdpDocument;
 import org.mjsip.sdp.SdpMessage;
 import org.mjsip.sdp.field.ConnectionField;
 import org.mjsip.sdp.field.MediaField;
@@ -33,12 +34,23 @@ import org.mjsip.sip.address.GenericURI;
 import org.mjsip.sip.address.NameAddress;
 import org.mjsip.sip.address.SipURI;
 import org.mjsip.sip.header.ContactHeader;
+import org.mjsip.sip.header.Header;
+import org.mjsip.sip.header.LegacyHeader;
 import org.mjsip.sip.header.RequestLine;
+import org.mjsip.sip.header.SipHeaders;
 import org.mjsip.sip.message.SipMessage;
 
 
 
 /** Class SipMangler collects static methods for mangling SIP messages.
+  * <p>
+  * Contact headers and request-lines are rewritten on their raw values in a single pass, using
+  * precomputed tables for stuffing and unstuffing URIs and a per-thread buffer, and session
+  * descriptions are rewritten on the {@link SdpDocument} cached by the message, so that only the
+  * changed lines are serialized anew. Values not covered by
+  * this fast path (e.g. multiple contacts, quoted display names with escapes, IPv6 hosts, or
+  * session descriptions without session-level connection) are handled by parsing and rebuilding
+  * the header or body, with the same result.
   */
 public class SipMangler {
 	
@@ -63,6 +75,39 @@ public class SipMangler {
 	  * It is equal to the start sequence, formed as <i>ESC</i>+<i>startof_URI</i>. */
 	public static final String magic_cookie=ESC+startof_URI; 
 
+	/** Start of a mangled SIP URI. */
+	private static final String SIP_COOKIE="sip:"+magic_cookie;
+
+	/** Start of a mangled SIPS URI. */
+	private static final String SIPS_COOKIE="sips:"+magic_cookie;
+
+	/** Escaped sequences (with the leading ESC) for each ASCII char, <i>null</i> for chars that are not escaped. */
+	private static final String[] STUFFING=new String[128];
+
+	/** Escaped sequences (without the leading ESC), indexed by their first char. */
+	private static final String[] UNSTUFFING=new String[128];
+
+	/** Chars encoded by the sequences in {@link #UNSTUFFING}. */
+	private static final char[] UNSTUFFED=new char[128];
+
+	static {
+		STUFFING[ESC]=ESC+escaped_ESC;
+		STUFFING['@']=ESC+escaped_AT;
+		STUFFING[':']=ESC+escaped_PORT;
+		UNSTUFFING[escaped_ESC.charAt(0)]=escaped_ESC;
+		UNSTUFFED[escaped_ESC.charAt(0)]=ESC;
+		UNSTUFFING[escaped_AT.charAt(0)]=escaped_AT;
+		UNSTUFFED[escaped_AT.charAt(0)]='@';
+		UNSTUFFING[escaped_PORT.charAt(0)]=escaped_PORT;
+		UNSTUFFED[escaped_PORT.charAt(0)]=':';
+	}
+
+	/** Per-thread buffer for building header values. */
+	private static final ThreadLocal<StringBuilder> BUFFER=ThreadLocal.withInitial(() -> new StringBuilder(256));
+
+	/** Per-thread positions within a parsed Contact header value. */
+	private static final ThreadLocal<ContactValue> CONTACT=ThreadLocal.withInitial(ContactValue::new);
+
 
 	/** Mangles request-uri */
 	/*public static SipMessage mangleRequestLine(SipMessage msg, SipURI uri) {
@@ -75,17 +120,33 @@ public class SipMangler {
 
 	/** Whether request-uri has been mangled. */
 	public static boolean isRequestLineMangled(SipMessage msg) {
-		GenericURI request_uri=msg.getRequestLine().getAddress();
-		if (!request_uri.isSipURI()) return false;
-		// else
-		SipURI sip_uri=request_uri.toSipURI();
-		String username=sip_uri.getUserName();
-		return (username!=null && username.startsWith(magic_cookie));
+		String uri=msg.getRequestLine().getAddress().toString();
+		return mangledUserStart(uri)>=0 && indexOfUserEnd(uri)>=0;
 	}
 
 
 	/** Unmangles request-uri */
 	public static SipMessage unmangleRequestLine(SipMessage msg) {
+		RequestLine rl=msg.getRequestLine();
+		String uri=rl.getAddress().toString();
+		int user_start=mangledUserStart(uri);
+		if (user_start<0) return msg;
+		// else
+		int user_end=indexOfUserEnd(uri);
+		if (user_end<0) return msg;
+		// else
+		StringBuilder sb=buffer().append("sip:");
+		if (unstuffUserInfo(uri,user_start,user_end,sb)) {
+			msg.setRequestLine(new RequestLine(rl.getMethod(),sb.toString()));
+			return msg;
+		}
+		// else
+		return unmangleRequestLineParsed(msg);
+	}
+
+
+	/** Unmangles request-uri by parsing and rebuilding it. */
+	public static SipMessage unmangleRequestLineParsed(SipMessage msg) {
 		RequestLine rl=msg.getRequestLine();
 		GenericURI request_uri=msg.getRequestLine().getAddress();
 		if (!request_uri.isSipURI()) return msg;
@@ -135,6 +196,36 @@ public class SipMangler {
 
 	/** Mangles Contact address in automatic and reversible manner. */
 	public static SipMessage mangleContact(SipMessage msg, String host, int port) {
+		Header h=msg.getHeader(SipHeaders.Contact);
+		if (h==null) return msg;
+		// else
+		String value=h.getValue();
+		ContactValue contact=CONTACT.get();
+		if (!contact.parse(value)) return mangleContactParsed(msg,host,port);
+		// else
+		StringBuilder sb=buffer();
+		contact.appendDisplayName(value,sb);
+		sb.append('<').append(SIP_COOKIE);
+		// stuff [user@]host[:port] of the original URI
+		for (int i=contact.user_start; i<contact.hostport_end; i++) {
+			char c=value.charAt(i);
+			String stuffed=(c<STUFFING.length)? STUFFING[c] : null;
+			if (stuffed!=null) sb.append(stuffed);
+			else sb.append(c);
+		}
+		sb.append('@');
+		if (SipURI.isIPv6(host)) sb.append('[').append(host).append(']');
+		else sb.append(host);
+		if (port>0) sb.append(':').append(port);
+		sb.append('>');
+		contact.appendExpires(sb);
+		setContact(msg,sb.toString());
+		return msg;
+	}
+
+
+	/** Mangles Contact address by parsing and rebuilding the header. */
+	public static SipMessage mangleContactParsed(SipMessage msg, String host, int port) {
 		if (!msg.hasContactHeader()) return msg;
 		//else
 		ContactHeader ch=msg.getContactHeader();
@@ -159,6 +250,29 @@ public class SipMangler {
 
 	/** Unmangles Contact address. */
 	public static SipMessage unmangleContact(SipMessage msg) {
+		Header h=msg.getHeader(SipHeaders.Contact);
+		if (h==null) return msg;
+		// else
+		String value=h.getValue();
+		ContactValue contact=CONTACT.get();
+		if (!contact.parse(value)) return unmangleContactParsed(msg);
+		// else
+		if (!contact.isMangled(value)) return msg;
+		// else
+		StringBuilder sb=buffer();
+		contact.appendDisplayName(value,sb);
+		sb.append("<sip:");
+		if (!unstuffUserInfo(value,contact.user_start+magic_cookie.length(),contact.user_end,sb)) return unmangleContactParsed(msg);
+		// else
+		sb.append('>');
+		contact.appendExpires(sb);
+		setContact(msg,sb.toString());
+		return msg;
+	}
+
+
+	/** Unmangles Contact address by parsing and rebuilding the header. */
+	public static SipMessage unmangleContactParsed(SipMessage msg) {
 		if (!msg.hasContactHeader()) return msg;
 		//else
 		ContactHeader ch=msg.getContactHeader();
@@ -246,6 +360,253 @@ public class SipMangler {
 	}
 
 
+	/** Gets the cleared per-thread buffer. */
+	private static StringBuilder buffer() {
+		StringBuilder sb=BUFFER.get();
+		sb.setLength(0);
+		return sb;
+	}
+
+
+	/** Replaces all Contact headers with a single one with the given value. */
+	private static void setContact(SipMessage msg, String value) {
+		msg.removeContacts();
+		msg.addHeader(new LegacyHeader(SipHeaders.Contact,value),false);
+	}
+
+
+	/** Gets the position of the stuffed part of a mangled SIP URI.
+	  * @return the index after the magic cookie, or -1 if the URI is not mangled */
+	private static int mangledUserStart(String uri) {
+		if (uri.startsWith(SIP_COOKIE)) return SIP_COOKIE.length();
+		if (uri.startsWith(SIPS_COOKIE)) return SIPS_COOKIE.length();
+		return -1;
+	}
+
+
+	/** Gets the position of the '@' that ends the user part of a SIP URI.
+	  * @return the index of the '@', or -1 if the URI has no user part */
+	private static int indexOfUserEnd(String uri) {
+		for (int i=0, len=uri.length(); i<len; i++) {
+			char c=uri.charAt(i);
+			if (c=='@') return i;
+			if (c==';' || c=='?' || c=='>') return -1;
+		}
+		return -1;
+	}
+
+
+	/** Unstuffes the given range of a string, that must result in <i>[user@]host[:port]</i>.
+	  * @return whether the unstuffed value has been appended, <i>false</i> if it cannot be used as it is */
+	private static boolean unstuffUserInfo(String str, int begin, int end, StringBuilder sb) {
+		int start=sb.length();
+		int at=-1;
+		int colon=-1;
+		for (int i=begin; i<end; ) {
+			char c=str.charAt(i++);
+			if (c==ESC) {
+				if (i==end) break;
+				// else
+				char next=str.charAt(i);
+				String escaped=(next<UNSTUFFING.length)? UNSTUFFING[next] : null;
+				if (escaped!=null && str.startsWith(escaped,i)) {
+					c=UNSTUFFED[next];
+					i+=escaped.length();
+				}
+				else continue;
+			}
+			if (c=='@') {
+				if (at>=0) return false;
+				// else
+				at=sb.length();
+				colon=-1;
+			}
+			else
+			if (c==':') {
+				if (colon>=0) return false;
+				// else
+				colon=sb.length();
+			}
+			else
+			if (c==';' || c=='?' || c=='[' || c=='<' || c=='>') return false;
+			sb.append(c);
+		}
+		int host_start=(at>=0)? at+1 : start;
+		if (colon>=0) {
+			// a password, or a port that is not a positive number
+			if (colon<host_start || !isPort(sb,colon+1,sb.length())) return false;
+		}
+		return host_start<(colon>=0? colon : sb.length());
+	}
+
+
+	/** Whether the given range contains a positive decimal number without leading zeros. */
+	private static boolean isPort(CharSequence str, int begin, int end) {
+		if (begin==end || end-begin>5 || str.charAt(begin)=='0') return false;
+		// else
+		int port=0;
+		for (int i=begin; i<end; i++) {
+			char c=str.charAt(i);
+			if (c<'0' || c>'9') return false;
+			port=port*10+(c-'0');
+		}
+		return port>0;
+	}
+
+
+	/** Positions of the parts of a Contact header value with a single SIP URI.
+	  * <p>
+	  * Only the forms that result in the same header value as parsing and rebuilding
+	  * the header are accepted. */
+	private static final class ContactValue {
+
+		int display_start;
+		int display_end;
+		int user_start;
+		int user_end;
+		int hostport_end;
+		int expires;
+
+		/** Parses a Contact header value.
+		  * @return whether the value is supported */
+		boolean parse(String value) {
+			int len=value.length();
+			if (value.indexOf('*')>=0 || value.indexOf(',')>=0) return false;
+			// else
+			int pos=skipWSP(value,0,len);
+			display_start=-1;
+			display_end=-1;
+			int uri_start;
+			int uri_end;
+			int params_start;
+			if (pos<len && value.charAt(pos)=='"') {
+				int quote_end=value.indexOf('"',pos+1);
+				if (quote_end<0 || quote_end==pos+1 || value.indexOf('\\',pos)>=0) return false;
+				// else
+				display_start=pos+1;
+				display_end=quote_end;
+				pos=skipWSP(value,quote_end+1,len);
+				if (pos==len || value.charAt(pos)!='<') return false;
+			}
+			int lt=value.indexOf('<',pos);
+			if (lt>=0) {
+				if (display_start<0) {
+					int end=lt;
+					while (end>pos && isWSP(value.charAt(end-1))) end--;
+					if (end>pos) {
+						display_start=pos;
+						display_end=end;
+					}
+				}
+				uri_start=lt+1;
+				uri_end=value.indexOf('>',uri_start);
+				if (uri_end<0) return false;
+				// else
+				params_start=uri_end+1;
+			}
+			else {
+				uri_start=pos;
+				uri_end=value.indexOf(';',pos);
+				if (uri_end<0) uri_end=len;
+				params_start=uri_end;
+				while (uri_end>uri_start && isWSP(value.charAt(uri_end-1))) uri_end--;
+			}
+			// URI
+			if (value.startsWith("sip:",uri_start)) user_start=uri_start+4;
+			else
+			if (value.startsWith("sips:",uri_start)) user_start=uri_start+5;
+			else return false;
+			// else
+			hostport_end=user_start;
+			user_end=-1;
+			while (hostport_end<uri_end) {
+				char c=value.charAt(hostport_end);
+				if (c==';' || c=='?') break;
+				if (c=='@') {
+					if (user_end>=0) return false;
+					user_end=hostport_end;
+				}
+				hostport_end++;
+			}
+			int host_start=(user_end>=0)? user_end+1 : user_start;
+			if (host_start==hostport_end || value.charAt(host_start)=='[') return false;
+			// else
+			if (user_end>=0 && value.lastIndexOf(':',user_end)>=user_start) return false;
+			// else
+			int colon=value.indexOf(':',host_start);
+			if (colon>=0 && colon<hostport_end) {
+				if (colon==host_start || !isPort(value,colon+1,hostport_end)) return false;
+			}
+			// header parameters
+			expires=-1;
+			pos=params_start;
+			while (pos<len) {
+				pos=skipWSP(value,pos,len);
+				if (pos==len) break;
+				// else
+				if (value.charAt(pos)!=';') return false;
+				// else
+				int name_start=skipWSP(value,pos+1,len);
+				int name_end=name_start;
+				while (name_end<len && "=; \t".indexOf(value.charAt(name_end))<0) name_end++;
+				pos=skipWSP(value,name_end,len);
+				int value_start=-1;
+				int value_end=-1;
+				if (pos<len && value.charAt(pos)=='=') {
+					value_start=skipWSP(value,pos+1,len);
+					if (value_start<len && value.charAt(value_start)=='"') {
+						value_end=value.indexOf('"',value_start+1);
+						if (value_end<0) return false;
+						// else
+						value_end++;
+					}
+					else {
+						value_end=value_start;
+						while (value_end<len && value.charAt(value_end)!=';' && !isWSP(value.charAt(value_end))) value_end++;
+					}
+					pos=value_end;
+				}
+				if (name_end-name_start==7 && value.startsWith("expires",name_start) && expires<0) {
+					if (value_start<0 || value_start==value_end || value_end-value_start>9) return false;
+					// else
+					int secs=0;
+					for (int i=value_start; i<value_end; i++) {
+						char c=value.charAt(i);
+						if (c<'0' || c>'9') return false;
+						secs=secs*10+(c-'0');
+					}
+					expires=secs;
+				}
+			}
+			return true;
+		}
+
+		/** Whether the URI user part is mangled. */
+		boolean isMangled(String value) {
+			return user_end>=0 && value.startsWith(magic_cookie,user_start);
+		}
+
+		/** Appends the quoted display name and a separating space, if any. */
+		void appendDisplayName(String value, StringBuilder sb) {
+			if (display_start>=0) sb.append('"').append(value,display_start,display_end).append("\" ");
+		}
+
+		/** Appends the expires parameter, if any. */
+		void appendExpires(StringBuilder sb) {
+			if (expires>=0) sb.append(";expires=").append(expires);
+		}
+
+		private static int skipWSP(String value, int pos, int len) {
+			while (pos<len && isWSP(value.charAt(pos))) pos++;
+			return pos;
+		}
+
+		private static boolean isWSP(char c) {
+			return c==' ' || c=='\t';
+		}
+	}
+
+
 	/** Mangles the Record-Route URI */
 	/*public static SipMessage mangleRecordRoute(SipMessage msg, SipURI uri) {
 		if (!msg.hasRecordRouteHeader()) return msg;
@@ -289,6 +650,34 @@ public class SipMangler {
 		if (!msg.hasBody()) {
 			return msg;
 		}
+		SdpDocument sdp=msg.getSdpDocument();
+		// validate first, the document is cached by the message and must not be left half-changed
+		int cnt=sdp.getMediaCount();
+		boolean supported=sdp.getConnectionAddress()!=null;
+		for (int media=0; supported && media<cnt; media++) supported=sdp.hasMediaPort(media);
+		if (!supported) {
+			return mangleBodyParsed(msg,masq_addr,mediaTypes,masq_port);
+		}
+		// else
+		sdp.setConnectionAddress(masq_addr);
+		for (int media=0; media<cnt; media++) {
+			for (int i=0; i<mediaTypes.length; i++) {
+				if (sdp.isMediaType(media,mediaTypes[i])) {
+					// masquerade the port
+					sdp.setMediaPort(media,masq_port[i]);
+					break;
+				}
+			}
+		}
+		msg.setSdpDocument(sdp);
+		return msg;
+	}
+
+	/** Mangles the body by parsing and rebuilding the session description. */
+	public static SipMessage mangleBodyParsed(SipMessage msg, String masq_addr, String[] mediaTypes, int[] masq_port) {
+		if (!msg.hasBody()) {
+			return msg;
+		}
 	
 		SdpMessage sdp=msg.getSdpBody();
 		ConnectionField newConn = mapConnection(sdp.getConnection(), masq_addr);
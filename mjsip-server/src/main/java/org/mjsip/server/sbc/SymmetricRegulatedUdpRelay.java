@@ -26,7 +26,7 @@ package org.mjsip.server.sbc;
 import org.mjsip.time.Scheduler;
 import org.slf4j.LoggerFactory;
 import org.zoolu.net.SocketAddress;
-import org.zoolu.net.UdpSocket;
+import org.zoolu.net.UdpProvider;
 
 
 
@@ -40,11 +40,16 @@ public class SymmetricRegulatedUdpRelay extends SymmetricUdpRelay {
 	/** Minimum inter-packet departure time */
 	long inter_time=0;
 
+	/** Shaper regulating the departures of both sides */
+	TrafficShaper shaper;
+
 	/** Costructs a new SymmetricRegulatedUdpRelay. 
-	 * @param scheduler */
-	public SymmetricRegulatedUdpRelay(Scheduler scheduler, int left_port, SocketAddress left_soaddr, int right_port,
+	 * @param scheduler
+	 * @param shaper the traffic shaper regulating packet departures */
+	public SymmetricRegulatedUdpRelay(Scheduler scheduler, TrafficShaper shaper, int left_port, SocketAddress left_soaddr, int right_port,
 			SocketAddress right_soaddr, long relay_time, long inter_time, SymmetricUdpRelayListener listener) {
 		super(scheduler);
+		this.shaper=shaper;
 		init(left_port, left_soaddr, right_port, right_soaddr, relay_time, inter_time, listener);
 	}
 
@@ -61,13 +66,11 @@ public class SymmetricRegulatedUdpRelay extends SymmetricUdpRelay {
 		this.inter_time=inter_time;
 
 		try {
-			//left_udp=new UdpProvider(new OutputRegulatedUdpSocket(left_port,inter_time),0,this);
-			left_udp=new InputRegulatedUdpProvider(new UdpSocket(left_port),0,inter_time,this);
+			left_udp=new UdpProvider(new OutputRegulatedUdpSocket(shaper,left_port,inter_time),0,this);
 			LOG.info("udp interfce: {} started", left_udp);    
 			LOG.info("udp interfce regulated with {} millisecs of minimum inter-packet departure time", inter_time);    
 	
-			//right_udp=new UdpProvider(new OutputRegulatedUdpSocket(right_port,inter_time),0,this);
-			right_udp=new InputRegulatedUdpProvider(new UdpSocket(right_port),0,inter_time,this);
+			right_udp=new UdpProvider(new OutputRegulatedUdpSocket(shaper,right_port,inter_time),0,this);
 			LOG.info("udp interfce: {} started", right_udp);
 			LOG.info("udp interfce regulated with {} millisecs of minimum inter-packet departure time", inter_time);    
 		}   
@@ -78,6 +78,9 @@ public class SymmetricUdpRelay implements UdpProviderListener {
 	/** Last change time of right soaddr (in milliseconds) */
 	protected long last_right_change;
 
+	/** Tap receiving copies of all relayed packets, or <i>null</i> */
+	protected MediaTap media_tap=null;
+
 	private final Scheduler _scheduler;
 
 	/** Constructs a new SymmetricUdpRelay. */
@@ -175,6 +178,13 @@ public class SymmetricUdpRelay implements UdpProviderListener {
 	}
 
 
+	/** Sets the tap that receives a copy of each relayed packet.
+	  * @param media_tap the tap, or <i>null</i> to stop interception */
+	public void setMediaTap(MediaTap media_tap) {
+		this.media_tap=media_tap;
+	}
+
+
 	/** Gets the time of the last change of left soaddr. */
 	public long getLastLeftChangeTime() {
 		return last_left_change;
@@ -231,6 +241,9 @@ public class SymmetricUdpRelay implements UdpProviderListener {
 			catch (java.io.IOException e) {
 				// noop
 			}
+			// copy to the interception channel
+			MediaTap tap=media_tap;
+			if (tap!=null) tap.capture(src_soaddr,dest_soaddr,packet.getData(),packet.getOffset(),packet.getLength());
 		}
 	}
 
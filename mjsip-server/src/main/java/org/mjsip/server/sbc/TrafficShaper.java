@@ -0,0 +1,368 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.server.sbc;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.LoggerFactory;
+import org.zoolu.net.IpAddress;
+import org.zoolu.net.UdpPacket;
+import org.zoolu.net.UdpSocket;
+
+/**
+ * Traffic shaping engine regulating the packet rate of many UDP flows from a single pacing thread.
+ *
+ * <p>
+ * Each {@link Flow} is regulated by a token bucket with a configurable inter-packet time and
+ * burst size. A packet that conforms to its flow's bucket is sent immediately by the calling
+ * thread. Otherwise, it is copied into the flow's array-backed queue and sent later by the pacing
+ * thread. When the queue is full, the packet is dropped.
+ * </p>
+ *
+ * <p>
+ * In contrast to scheduling a timer task for every delayed packet, the pacing thread only visits
+ * flows that have queued packets, and sleeps until the earliest of them may send again.
+ * </p>
+ */
+public class TrafficShaper implements Runnable {
+
+	private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(TrafficShaper.class);
+
+	/** Default number of packets that can be queued per flow. */
+	public static final int DEFAULT_QUEUE_SIZE = 64;
+
+	/**
+	 * Flows that got packets queued and are not yet known to the pacing thread.
+	 */
+	private final ConcurrentLinkedQueue<Flow> _activated = new ConcurrentLinkedQueue<>();
+
+	private final int _burst;
+
+	private final int _queueSize;
+
+	private final Thread _thread;
+
+	private volatile boolean _running = true;
+
+	/**
+	 * Creates a {@link TrafficShaper} and starts its pacing thread.
+	 *
+	 * @param burst
+	 *        The number of packets a flow may send back-to-back after being idle.
+	 * @param queueSize
+	 *        The maximum number of packets queued per flow.
+	 */
+	public TrafficShaper(int burst, int queueSize) {
+		_burst = Math.max(1, burst);
+		_queueSize = queueSize;
+		_thread = new Thread(this, "TrafficShaper");
+		_thread.setDaemon(true);
+		_thread.start();
+	}
+
+	/**
+	 * Creates a regulated flow.
+	 *
+	 * @param socket
+	 *        The socket to send packets through.
+	 * @param interTime
+	 *        The minimum inter-packet departure time in milliseconds.
+	 */
+	public Flow createFlow(UdpSocket socket, long interTime) {
+		return new Flow(socket, interTime);
+	}
+
+	/**
+	 * Stops the pacing thread. Packets still queued are dropped.
+	 */
+	public void halt() {
+		_running = false;
+		LockSupport.unpark(_thread);
+	}
+
+	void activate(Flow flow) {
+		_activated.offer(flow);
+		LockSupport.unpark(_thread);
+	}
+
+	@Override
+	public void run() {
+		ArrayList<Flow> active = new ArrayList<>();
+		while (_running) {
+			Flow activated;
+			while ((activated = _activated.poll()) != null) {
+				active.add(activated);
+			}
+
+			long now = System.nanoTime();
+			long next = Long.MAX_VALUE;
+			for (int n = 0; n < active.size();) {
+				Flow flow = active.get(n);
+				long due = flow.drain(now);
+				if (due < 0) {
+					// Flow is empty, remove by swapping with the last entry.
+					int last = active.size() - 1;
+					active.set(n, active.get(last));
+					active.remove(last);
+				} else {
+					next = Math.min(next, due);
+					n++;
+				}
+			}
+
+			if (next == Long.MAX_VALUE) {
+				LockSupport.park(this);
+			} else {
+				long delay = next - System.nanoTime();
+				if (delay > 0) {
+					LockSupport.parkNanos(this, delay);
+				}
+			}
+		}
+	}
+
+	/**
+	 * A single regulated UDP flow.
+	 */
+	public final class Flow {
+
+		private final UdpSocket _socket;
+
+		/**
+		 * Minimum time between two packets in nanoseconds.
+		 */
+		private long _interval;
+
+		/**
+		 * Theoretical arrival time of the next conforming packet (generic cell rate algorithm).
+		 */
+		private long _tat;
+
+		private final byte[][] _data = new byte[_queueSize][];
+
+		/**
+		 * Buffers wrapping the arrays in {@link #_data} for sending datagrams queued through
+		 * {@link #send(ByteBuffer, InetSocketAddress)}.
+		 */
+		private final ByteBuffer[] _buffer = new ByteBuffer[_queueSize];
+
+		private final int[] _length = new int[_queueSize];
+
+		private final IpAddress[] _address = new IpAddress[_queueSize];
+
+		private final int[] _port = new int[_queueSize];
+
+		/**
+		 * Destinations of datagrams queued through {@link #send(ByteBuffer, InetSocketAddress)},
+		 * <code>null</code> for packets queued through {@link #send(UdpPacket)}.
+		 */
+		private final InetSocketAddress[] _destination = new InetSocketAddress[_queueSize];
+
+		/**
+		 * Index of the oldest queued packet.
+		 */
+		private int _head;
+
+		/**
+		 * Number of queued packets.
+		 */
+		private int _count;
+
+		/**
+		 * Whether this flow is known to the pacing thread.
+		 */
+		private boolean _scheduled;
+
+		private final UdpPacket _out = new UdpPacket(new byte[0], 0);
+
+		private long _dropped;
+
+		Flow(UdpSocket socket, long interTime) {
+			_socket = socket;
+			setInterPacketTime(interTime);
+			_tat = System.nanoTime();
+		}
+
+		/**
+		 * Sets the minimum inter-packet departure time in milliseconds.
+		 */
+		public synchronized void setInterPacketTime(long interTime) {
+			_interval = TimeUnit.MILLISECONDS.toNanos(Math.max(0, interTime));
+		}
+
+		/**
+		 * The minimum inter-packet departure time in milliseconds.
+		 */
+		public synchronized long getInterPacketTime() {
+			return TimeUnit.NANOSECONDS.toMillis(_interval);
+		}
+
+		/**
+		 * Number of packets dropped due to queue overflow.
+		 */
+		public synchronized long getDroppedCount() {
+			return _dropped;
+		}
+
+		/**
+		 * Sends the given packet, or queues a copy, if it does not conform to the rate limit.
+		 */
+		public void send(UdpPacket pkt) throws IOException {
+			boolean activate = false;
+			synchronized (this) {
+				long now = System.nanoTime();
+				if (_count == 0 && conforms(now)) {
+					consume(now);
+					_socket.send(pkt);
+					return;
+				}
+
+				int length = pkt.getLength();
+				int index = reserve(length);
+				if (index < 0) {
+					return;
+				}
+				System.arraycopy(pkt.getData(), pkt.getOffset(), _data[index], 0, length);
+				_address[index] = pkt.getIpAddress();
+				_port[index] = pkt.getPort();
+				activate = enqueue();
+			}
+			if (activate) {
+				activate(this);
+			}
+		}
+
+		/**
+		 * Sends the remaining bytes of the given buffer as datagram, or copies them into the queue,
+		 * if the datagram does not conform to the rate limit.
+		 *
+		 * <p>
+		 * In all cases, the buffer position is advanced to its limit.
+		 * </p>
+		 *
+		 * @see UdpSocket#send(ByteBuffer, InetSocketAddress)
+		 */
+		public void send(ByteBuffer data, InetSocketAddress dest) throws IOException {
+			boolean activate = false;
+			synchronized (this) {
+				long now = System.nanoTime();
+				if (_count == 0 && conforms(now)) {
+					consume(now);
+					_socket.send(data, dest);
+					return;
+				}
+
+				int length = data.remaining();
+				int index = reserve(length);
+				if (index < 0) {
+					data.position(data.limit());
+					return;
+				}
+				data.get(_data[index], 0, length);
+				_destination[index] = dest;
+				activate = enqueue();
+			}
+			if (activate) {
+				activate(this);
+			}
+		}
+
+		/**
+		 * Allocates the queue slot for a datagram of the given length.
+		 *
+		 * @return The index of the slot, or <code>-1</code>, if the queue is full and the
+		 *         datagram is dropped.
+		 */
+		private int reserve(int length) {
+			if (_count == _queueSize) {
+				_dropped++;
+				return -1;
+			}
+
+			int index = _head + _count;
+			if (index >= _queueSize) {
+				index -= _queueSize;
+			}
+			byte[] data = _data[index];
+			if (data == null || data.length < length) {
+				data = new byte[Math.max(length, 256)];
+				_data[index] = data;
+				_buffer[index] = ByteBuffer.wrap(data);
+			}
+			_length[index] = length;
+			return index;
+		}
+
+		/**
+		 * Adds the datagram in the slot allocated last to the queue.
+		 *
+		 * @return Whether the flow must be passed to the pacing thread.
+		 */
+		private boolean enqueue() {
+			_count++;
+			if (_scheduled) {
+				return false;
+			}
+			_scheduled = true;
+			return true;
+		}
+
+		private boolean conforms(long now) {
+			return now - (_tat - (_burst - 1) * _interval) >= 0;
+		}
+
+		private void consume(long now) {
+			_tat = Math.max(now, _tat) + _interval;
+		}
+
+		/**
+		 * Sends all queued packets that conform to the rate limit.
+		 *
+		 * @return The time when the next queued packet may be sent, or <code>-1</code>, if the
+		 *         queue is empty.
+		 */
+		synchronized long drain(long now) {
+			while (_count > 0) {
+				if (!conforms(now)) {
+					return _tat - (_burst - 1) * _interval;
+				}
+				consume(now);
+
+				int index = _head;
+				IpAddress address = _address[index];
+				InetSocketAddress destination = _destination[index];
+				_address[index] = null;
+				_destination[index] = null;
+				_head = index + 1 == _queueSize ? 0 : index + 1;
+				_count--;
+
+				try {
+					if (destination != null) {
+						ByteBuffer buffer = _buffer[index];
+						buffer.clear();
+						buffer.limit(_length[index]);
+						_socket.send(buffer, destination);
+					} else {
+						UdpPacket out = _out;
+						out.setData(_data[index], 0, _length[index]);
+						out.setIpAddress(address);
+						out.setPort(_port[index]);
+						_socket.send(out);
+					}
+				} catch (IOException ex) {
+					LOG.debug("Sending shaped packet failed.", ex);
+				}
+			}
+			_scheduled = false;
+			return -1;
+		}
+	}
+
+}
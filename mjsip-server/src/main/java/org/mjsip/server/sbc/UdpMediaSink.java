@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.server.sbc;
+
+import java.io.IOException;
+
+import org.mjsip.capture.CaptureSink;
+import org.mjsip.capture.CapturedPacket;
+import org.zoolu.net.SocketAddress;
+import org.zoolu.net.UdpPacket;
+import org.zoolu.net.UdpSocket;
+
+/**
+ * {@link CaptureSink} forwarding the payload of captured packets to a single sink address.
+ *
+ * <p>
+ * All copies are sent from one local socket, regardless of the number of intercepted calls.
+ * </p>
+ */
+public class UdpMediaSink implements CaptureSink {
+
+	private final UdpSocket _socket;
+
+	private final UdpPacket _packet;
+
+	/**
+	 * Creates a {@link UdpMediaSink}.
+	 *
+	 * @param socket
+	 *        The local socket to send from, closed with this sink.
+	 * @param sink
+	 *        The address to send captured packets to.
+	 */
+	public UdpMediaSink(UdpSocket socket, SocketAddress sink) {
+		_socket = socket;
+		_packet = new UdpPacket(new byte[0], 0, sink.getAddress(), sink.getPort());
+	}
+
+	@Override
+	public void write(CapturedPacket packet) throws IOException {
+		_packet.setData(packet.getData(), 0, packet.getLength());
+		_socket.send(_packet);
+	}
+
+	@Override
+	public void close() {
+		_socket.close();
+	}
+
+	@Override
+	public String toString() {
+		return "udp " + _packet.getIpAddress() + ":" + _packet.getPort();
+	}
+
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mjsip.sip.message.SipMessage;
+
+/**
+ * Test for {@link CallLoggerImpl}.
+ */
+@SuppressWarnings("javadoc")
+class TestCallLoggerImpl {
+
+	@TempDir
+	File _dir;
+
+	@Test
+	void testCallerAndCalleeAreAddresses() {
+		CallLoggerImpl logger = new CallLoggerImpl(null, 10);
+		logger.update(invite("c1"));
+
+		CallRecord call = logger.getCall("c1");
+		Assertions.assertNotNull(call);
+		Assertions.assertEquals("sip:alice@a.example", call.getCaller());
+		Assertions.assertEquals("sip:bob@b.example", call.getCallee());
+	}
+
+	@Test
+	void testCallLifecycle() {
+		CallLoggerImpl logger = new CallLoggerImpl(null, 10);
+		logger.update(invite("c1"));
+		logger.update(response("c1", 180, "Ringing", "INVITE"));
+		CallRecord call = logger.getCall("c1");
+		Assertions.assertEquals(0, call.getAcceptedTime());
+
+		logger.update(response("c1", 200, "OK", "INVITE"));
+		long accepted = call.getAcceptedTime();
+		Assertions.assertTrue(accepted > 0);
+		Assertions.assertEquals(200, call.getStatus());
+
+		// Retransmissions do not change the recorded times.
+		logger.update(response("c1", 200, "OK", "INVITE"));
+		Assertions.assertEquals(accepted, call.getAcceptedTime());
+
+		// Responses to other requests are ignored.
+		logger.update(response("c1", 500, "Server Error", "BYE"));
+		Assertions.assertEquals(0, call.getRefusedTime());
+		logger.update(response("c1", 500, "Server Error", "REINVITE"));
+		Assertions.assertEquals(0, call.getRefusedTime());
+
+		logger.update(bye("c1"));
+		Assertions.assertTrue(call.getByeTime() > 0);
+
+		// Unknown calls are ignored.
+		logger.update(response("unknown", 200, "OK", "INVITE"));
+		logger.update(bye("unknown"));
+		Assertions.assertEquals(1, logger.size());
+	}
+
+	@Test
+	void testMethodCase() {
+		CallLoggerImpl logger = new CallLoggerImpl(null, 10);
+		logger.update(invite("c1"));
+		logger.update(response("c1", 486, "Busy Here", "invite"));
+		Assertions.assertEquals(486, logger.getCall("c1").getStatus());
+	}
+
+	@Test
+	void testEviction() {
+		CallLoggerImpl logger = new CallLoggerImpl(null, 3);
+		for (int n = 0; n < 5; n++) {
+			logger.update(invite("c" + n));
+		}
+		Assertions.assertEquals(3, logger.size());
+		Assertions.assertNull(logger.getCall("c0"));
+		Assertions.assertNull(logger.getCall("c1"));
+		Assertions.assertNotNull(logger.getCall("c4"));
+	}
+
+	@Test
+	void testHaltWritesRecords() throws IOException {
+		File file = new File(_dir, "cdr.log");
+		CallLoggerImpl logger = new CallLoggerImpl(file.getPath());
+		CallLogger api = logger;
+
+		logger.update(invite("ok"));
+		logger.update(response("ok", 200, "OK", "INVITE"));
+		logger.update(bye("ok"));
+		logger.update(invite("busy"));
+		logger.update(response("busy", 486, "Busy Here", "INVITE"));
+		// Incomplete calls are not written.
+		logger.update(invite("open"));
+
+		api.halt();
+
+		List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+		Assertions.assertEquals(2, lines.size());
+		Assertions.assertTrue(lines.get(0).contains("\tok\tCALL\tsip:alice@a.example\tsip:bob@b.example\t"), lines.get(0));
+		Assertions.assertTrue(lines.get(1).contains("\tbusy\tFAILED 486\t"), lines.get(1));
+	}
+
+	private static SipMessage invite(String callId) {
+		return new SipMessage("INVITE sip:bob@b.example SIP/2.0\r\n"
+			+ "Via: SIP/2.0/UDP 127.0.0.1:5070;branch=z9hG4bK" + callId + "\r\n"
+			+ "Max-Forwards: 70\r\n"
+			+ "From: \"Alice\" <sip:alice@a.example>;tag=a1\r\n"
+			+ "To: Bob <sip:bob@b.example>\r\n"
+			+ "Call-ID: " + callId + "\r\n"
+			+ "CSeq: 1 INVITE\r\n"
+			+ "Content-Length: 0\r\n\r\n");
+	}
+
+	private static SipMessage bye(String callId) {
+		return new SipMessage("BYE sip:bob@127.0.0.1:5080 SIP/2.0\r\n"
+			+ "Via: SIP/2.0/UDP 127.0.0.1:5070;branch=z9hG4bKbye" + callId + "\r\n"
+			+ "Max-Forwards: 70\r\n"
+			+ "From: \"Alice\" <sip:alice@a.example>;tag=a1\r\n"
+			+ "To: Bob <sip:bob@b.example>;tag=b1\r\n"
+			+ "Call-ID: " + callId + "\r\n"
+			+ "CSeq: 2 BYE\r\n"
+			+ "Content-Length: 0\r\n\r\n");
+	}
+
+	private static SipMessage response(String callId, int code, String reason, String method) {
+		return new SipMessage("SIP/2.0 " + code + " " + reason + "\r\n"
+			+ "Via: SIP/2.0/UDP 127.0.0.1:5070;branch=z9hG4bK" + callId + "\r\n"
+			+ "From: \"Alice\" <sip:alice@a.example>;tag=a1\r\n"
+			+ "To: Bob <sip:bob@b.example>;tag=b1\r\n"
+			+ "Call-ID: " + callId + "\r\n"
+			+ "CSeq: 1 " + method + "\r\n"
+			+ "Content-Length: 0\r\n\r\n");
+	}
+
+}
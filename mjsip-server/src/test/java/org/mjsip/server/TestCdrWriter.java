@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Test for {@link CdrWriter}.
+ */
+@SuppressWarnings("javadoc")
+class TestCdrWriter {
+
+	@TempDir
+	File _dir;
+
+	@Test
+	void testFormat() {
+		CallRecord accepted = new CallRecord("id1", "sip:alice@a.example", "sip:bob@b.example", 1000);
+		accepted.accept(1500, 200);
+		accepted.bye(4500);
+		StringBuilder line = new StringBuilder();
+		CdrWriter.format(line, accepted);
+		Assertions.assertTrue(line.toString().endsWith("\tid1\tCALL\tsip:alice@a.example\tsip:bob@b.example\t500\t3000\n"),
+			line.toString());
+
+		CallRecord failed = new CallRecord("id2", "sip:alice@a.example", "sip:bob@b.example", 1000);
+		failed.refuse(1200, 486);
+		line.setLength(0);
+		CdrWriter.format(line, failed);
+		Assertions.assertTrue(line.toString().endsWith("\tid2\tFAILED 486\tsip:alice@a.example\tsip:bob@b.example\t200\t0\n"),
+			line.toString());
+	}
+
+	@Test
+	void testHaltFlushesPendingRecords() throws IOException {
+		File file = new File(_dir, "cdr.log");
+		CdrWriter writer = new CdrWriter(file, 10000, CdrWriter.DEFAULT_MAX_FILE_SIZE);
+		int cnt = 5000;
+		for (int n = 0; n < cnt; n++) {
+			Assertions.assertTrue(writer.write(record(n)));
+		}
+		writer.halt();
+
+		List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+		Assertions.assertEquals(cnt, lines.size());
+		for (int n = 0; n < cnt; n++) {
+			Assertions.assertTrue(lines.get(n).contains("\tcall-" + n + "\t"), lines.get(n));
+		}
+		Assertions.assertEquals(0, writer.getDropped());
+	}
+
+	@Test
+	void testConcurrentWriters() throws Exception {
+		File file = new File(_dir, "cdr.log");
+		CdrWriter writer = new CdrWriter(file, 100000, CdrWriter.DEFAULT_MAX_FILE_SIZE);
+		int threads = 4;
+		int perThread = 2000;
+		List<Thread> writers = new ArrayList<>();
+		for (int t = 0; t < threads; t++) {
+			int offset = t * perThread;
+			Thread thread = new Thread(() -> {
+				for (int n = 0; n < perThread; n++) {
+					writer.write(record(offset + n));
+				}
+			});
+			writers.add(thread);
+			thread.start();
+		}
+		for (Thread thread : writers) {
+			thread.join();
+		}
+		writer.halt();
+
+		Assertions.assertEquals(threads * perThread,
+			Files.readAllLines(file.toPath(), StandardCharsets.UTF_8).stream().distinct().count());
+	}
+
+	@Test
+	void testDropWhenFull() {
+		File file = new File(_dir, "cdr.log");
+		CdrWriter writer = new CdrWriter(file, 1, CdrWriter.DEFAULT_MAX_FILE_SIZE);
+		int accepted = 0;
+		for (int n = 0; n < 10000; n++) {
+			if (writer.write(record(n))) {
+				accepted++;
+			}
+		}
+		writer.halt();
+		Assertions.assertEquals(10000, accepted + writer.getDropped());
+		Assertions.assertTrue(writer.getDropped() > 0);
+	}
+
+	@Test
+	void testRollOver() throws IOException {
+		File file = new File(_dir, "cdr.log");
+		CdrWriter writer = new CdrWriter(file, 1000, 1000);
+		int cnt = 100;
+		for (int n = 0; n < cnt; n++) {
+			writer.write(record(n));
+		}
+		writer.halt();
+
+		File[] files = _dir.listFiles();
+		Assertions.assertTrue(files.length > 1);
+		int lines = 0;
+		for (File written : files) {
+			Assertions.assertTrue(written.getName().startsWith("cdr.log"));
+			lines += Files.readAllLines(written.toPath(), StandardCharsets.UTF_8).size();
+		}
+		Assertions.assertEquals(cnt, lines);
+	}
+
+	private static CallRecord record(int n) {
+		CallRecord result = new CallRecord("call-" + n, "sip:alice@a.example", "sip:bob@b.example", 1000);
+		result.accept(2000, 200);
+		return result;
+	}
+
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mjsip.metrics.MetricsRegistry;
+import org.mjsip.sip.header.Header;
+import org.mjsip.sip.header.ViaHeader;
+import org.mjsip.sip.message.SipMessage;
+import org.mjsip.sip.provider.SipConfig;
+import org.mjsip.sip.provider.SipProvider;
+import org.mjsip.time.ConfiguredScheduler;
+import org.mjsip.time.SchedulerConfig;
+import org.zoolu.net.SocketAddress;
+
+/**
+ * Test for dispatching requests between the nodes of a {@link Proxy} cluster.
+ */
+@SuppressWarnings("javadoc")
+class TestClusterDispatch {
+
+	private static final String LOCALHOST = "127.0.0.1";
+
+	private static final String AOR = "bob@example.com";
+
+	private final List<SipProvider> _providers = new ArrayList<>();
+
+	private final List<SocketAddress> _nodes = new ArrayList<>();
+
+	private ClusterRing _ring;
+
+	private DatagramSocket _client;
+
+	private DatagramSocket _ua;
+
+	private int _cseq;
+
+	@TempDir
+	File _dir;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		_client = socket();
+		_ua = socket();
+
+		List<DatagramSocket> probes = Arrays.asList(socket(), socket());
+		for (DatagramSocket probe : probes) {
+			_nodes.add(new SocketAddress(LOCALHOST, probe.getLocalPort()));
+			probe.close();
+		}
+		_ring = new ClusterRing(_nodes, _nodes.get(0));
+
+		for (SocketAddress node : _nodes) {
+			SipConfig sipConfig = new SipConfig();
+			sipConfig.setViaAddrIPv4(LOCALHOST);
+			sipConfig.setHostPort(node.getPort());
+			sipConfig.setTransportProtocols(new String[] { SipProvider.PROTO_UDP });
+			sipConfig.normalize();
+			SipProvider sipProvider = new SipProvider(sipConfig, new ConfiguredScheduler(new SchedulerConfig()),
+				new MetricsRegistry());
+			_providers.add(sipProvider);
+
+			ServerProfile profile = new ServerProfile();
+			profile.locationDb = null;
+			profile.isOpenProxy = true;
+			profile.doProxyAuthentication = true;
+			profile.authenticationDb = new File(_dir, "aaa.db").getPath();
+			profile.domainNames = new String[] { "example.com" };
+			profile.clusterNodes = new String[] { _nodes.get(0).toString(), _nodes.get(1).toString() };
+			profile.clusterSelf = node.toString();
+			profile.normalize();
+			new Proxy(sipProvider, profile);
+		}
+	}
+
+	@AfterEach
+	void tearDown() {
+		for (SipProvider sipProvider : _providers) {
+			sipProvider.halt();
+		}
+		_client.close();
+		_ua.close();
+	}
+
+	@Test
+	void testCallOwnedByCallId() throws IOException {
+		for (int owner = 0; owner < 2; owner++) {
+			String callId = callIdOwnedBy(owner, "remote");
+			String target = "sip:carol@" + LOCALHOST + ":" + _ua.getLocalPort();
+
+			// Requests of the call arrive at different nodes, but are all processed by the owner.
+			for (int entry = 0; entry < 2; entry++) {
+				for (String method : new String[] { "INVITE", "BYE" }) {
+					send(entry, request(method, target, callId));
+					SipMessage forwarded = receive(_ua);
+					Assertions.assertEquals(method, forwarded.getRequestLine().getMethod());
+					List<ViaHeader> vias = vias(forwarded);
+					Assertions.assertEquals(_nodes.get(owner).getPort(), vias.get(0).getPort());
+					Assertions.assertEquals(entry == owner ? 2 : 3, vias.size());
+				}
+			}
+		}
+	}
+
+	@Test
+	void testLocationLookupByAorOwner() throws IOException {
+		int aorOwner = _ring.getOwner(AOR).equals(_nodes.get(0)) ? 0 : 1;
+		int callOwner = 1 - aorOwner;
+		String contact = "sip:bob@" + LOCALHOST + ":" + _ua.getLocalPort();
+
+		// Registrations are dispatched to the node owning the address-of-record.
+		send(callOwner, "REGISTER sip:example.com SIP/2.0\r\n"
+			+ via() + "\r\n"
+			+ "Max-Forwards: 70\r\n"
+			+ "From: <sip:" + AOR + ">;tag=r1\r\n"
+			+ "To: <sip:" + AOR + ">\r\n"
+			+ "Call-ID: " + callIdOwnedBy(callOwner, "reg") + "\r\n"
+			+ "CSeq: " + (++_cseq) + " REGISTER\r\n"
+			+ "Contact: <" + contact + ">\r\n"
+			+ "Expires: 3600\r\n"
+			+ "Content-Length: 0\r\n\r\n");
+		SipMessage response = receive(_client);
+		Assertions.assertEquals(200, response.getStatusLine().getCode());
+
+		// The call is processed by its owner, the bindings are looked up by the owner of the AOR.
+		String callId = callIdOwnedBy(callOwner, "call");
+		send(aorOwner, request("INVITE", "sip:" + AOR, callId));
+		SipMessage forwarded = receive(_ua);
+		Assertions.assertEquals(contact, forwarded.getRequestLine().getAddress().toString());
+		Assertions.assertFalse(forwarded.hasRouteHeader());
+		List<ViaHeader> vias = vias(forwarded);
+		Assertions.assertEquals(4, vias.size());
+		Assertions.assertEquals(_nodes.get(aorOwner).getPort(), vias.get(0).getPort());
+		Assertions.assertEquals(_nodes.get(callOwner).getPort(), vias.get(1).getPort());
+		Assertions.assertEquals(_nodes.get(aorOwner).getPort(), vias.get(2).getPort());
+		Assertions.assertEquals(_client.getLocalPort(), vias.get(3).getPort());
+	}
+
+	@Test
+	void testSpoofedNodeViaIsChallenged() throws IOException {
+		int aorOwner = _ring.getOwner(AOR).equals(_nodes.get(0)) ? 0 : 1;
+		SocketAddress other = _nodes.get(1 - aorOwner);
+		String target = "sip:carol@" + LOCALHOST + ":" + _ua.getLocalPort();
+
+		// The sender is a user of the local domain, so requests of its own are subject to proxy authentication.
+		send(aorOwner, "REGISTER sip:example.com SIP/2.0\r\n"
+			+ via() + "\r\n"
+			+ "Max-Forwards: 70\r\n"
+			+ "From: <sip:" + AOR + ">;tag=r1\r\n"
+			+ "To: <sip:" + AOR + ">\r\n"
+			+ "Call-ID: " + callIdOwnedBy(aorOwner, "reg") + "\r\n"
+			+ "CSeq: " + (++_cseq) + " REGISTER\r\n"
+			+ "Contact: <sip:bob@" + LOCALHOST + ":" + _client.getLocalPort() + ">\r\n"
+			+ "Expires: 3600\r\n"
+			+ "Content-Length: 0\r\n\r\n");
+		Assertions.assertEquals(200, receive(_client).getStatusLine().getCode());
+
+		// A client pretends to be a cluster node by writing the node's address into its top Via.
+		send(aorOwner, "INVITE " + target + " SIP/2.0\r\n"
+			+ "Via: SIP/2.0/UDP " + other + ";rport;branch=z9hG4bKspoofed" + (++_cseq) + "\r\n"
+			+ "Max-Forwards: 70\r\n"
+			+ "From: <sip:" + AOR + ">;tag=b1\r\n"
+			+ "To: <" + target + ">\r\n"
+			+ "Call-ID: " + callIdOwnedBy(aorOwner, "spoofed") + "\r\n"
+			+ "CSeq: " + (++_cseq) + " INVITE\r\n"
+			+ "Content-Length: 0\r\n\r\n");
+
+		SipMessage response;
+		do {
+			response = receive(_client);
+		} while (response.getStatusLine().getCode() < 200);
+		Assertions.assertEquals(407, response.getStatusLine().getCode());
+
+		_ua.setSoTimeout(500);
+		Assertions.assertThrows(SocketTimeoutException.class, () -> receive(_ua));
+	}
+
+	private String callIdOwnedBy(int node, String prefix) {
+		for (int n = 0;; n++) {
+			String callId = prefix + n + "@client";
+			if (_ring.getOwner(callId).equals(_nodes.get(node))) {
+				return callId;
+			}
+		}
+	}
+
+	private String request(String method, String uri, String callId) {
+		return method + " " + uri + " SIP/2.0\r\n"
+			+ via() + "\r\n"
+			+ "Max-Forwards: 70\r\n"
+			+ "From: <sip:alice@client.example>;tag=a1\r\n"
+			+ "To: <" + uri + ">\r\n"
+			+ "Call-ID: " + callId + "\r\n"
+			+ "CSeq: " + (++_cseq) + " " + method + "\r\n"
+			+ "Content-Length: 0\r\n\r\n";
+	}
+
+	private String via() {
+		return "Via: SIP/2.0/UDP " + LOCALHOST + ":" + _client.getLocalPort() + ";branch=z9hG4bK" + (++_cseq);
+	}
+
+	private void send(int node, String message) throws IOException {
+		byte[] data = message.getBytes(StandardCharsets.ISO_8859_1);
+		_client.send(new DatagramPacket(data, data.length, InetAddress.getByName(LOCALHOST), _nodes.get(node).getPort()));
+	}
+
+	private static SipMessage receive(DatagramSocket socket) throws IOException {
+		DatagramPacket packet = new DatagramPacket(new byte[65535], 65535);
+		socket.receive(packet);
+		return new SipMessage(packet.getData(), 0, packet.getLength());
+	}
+
+	private static List<ViaHeader> vias(SipMessage msg) {
+		List<ViaHeader> result = new ArrayList<>();
+		for (Header header : msg.getVias().getHeaders()) {
+			result.add(ViaHeader.parse(header.getValue()));
+		}
+		return result;
+	}
+
+	private static DatagramSocket socket() throws IOException {
+		DatagramSocket result = new DatagramSocket(0, InetAddress.getByName(LOCALHOST));
+		result.setSoTimeout(5000);
+		return result;
+	}
+
+}
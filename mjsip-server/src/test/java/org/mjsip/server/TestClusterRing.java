@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.server;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.zoolu.net.SocketAddress;
+
+/**
+ * Test for {@link ClusterRing}.
+ */
+@SuppressWarnings("javadoc")
+class TestClusterRing {
+
+	private static final SocketAddress A = new SocketAddress("10.0.0.1", 5060);
+
+	private static final SocketAddress B = new SocketAddress("10.0.0.2", 5060);
+
+	private static final SocketAddress C = new SocketAddress("10.0.0.3", 5060);
+
+	private static final int KEYS = 30000;
+
+	@Test
+	void testSameOwnerOnAllNodes() {
+		ClusterRing ringA = new ClusterRing(Arrays.asList(A, B, C), A);
+		ClusterRing ringC = new ClusterRing(Arrays.asList(C, A, B), C);
+		for (int n = 0; n < 1000; n++) {
+			String key = "call-" + n + "@host";
+			Assertions.assertEquals(ringA.getOwner(key), ringC.getOwner(key));
+			Assertions.assertEquals(ringA.getOwner(key).equals(A), ringA.isLocal(key));
+		}
+	}
+
+	@Test
+	void testBalanced() {
+		ClusterRing ring = new ClusterRing(Arrays.asList(A, B, C), A);
+		Map<SocketAddress, Integer> counts = new HashMap<>();
+		for (int n = 0; n < KEYS; n++) {
+			counts.merge(ring.getOwner("user" + n + "@example.com"), 1, Integer::sum);
+		}
+		Assertions.assertEquals(3, counts.size());
+		for (int count : counts.values()) {
+			// Each node gets its third of the keys, give or take 20%.
+			Assertions.assertTrue(Math.abs(count - KEYS / 3) < KEYS / 15, "Unbalanced: " + counts);
+		}
+	}
+
+	@Test
+	void testAddNodeMovesOnlyItsKeys() {
+		ClusterRing before = new ClusterRing(Arrays.asList(A, B), A);
+		ClusterRing after = new ClusterRing(Arrays.asList(A, B, C), A);
+		int moved = 0;
+		for (int n = 0; n < KEYS; n++) {
+			String key = "call-" + n;
+			SocketAddress owner = after.getOwner(key);
+			if (!owner.equals(before.getOwner(key))) {
+				Assertions.assertEquals(C, owner, "Key moved between existing nodes.");
+				moved++;
+			}
+		}
+		Assertions.assertTrue(Math.abs(moved - KEYS / 3) < KEYS / 15, "Moved: " + moved);
+	}
+
+	@Test
+	void testSingleNode() {
+		ClusterRing ring = new ClusterRing(Arrays.asList(A), A);
+		Assertions.assertEquals(1, ring.size());
+		Assertions.assertTrue(ring.isLocal("anything"));
+	}
+
+	@Test
+	void testInvalidConfiguration() {
+		Assertions.assertThrows(IllegalArgumentException.class, () -> new ClusterRing(new ArrayList<>(), A));
+		Assertions.assertThrows(IllegalArgumentException.class, () -> new ClusterRing(Arrays.asList(A, B), C));
+	}
+
+	@Test
+	void testIsNode() {
+		List<SocketAddress> nodes = Arrays.asList(new SocketAddress("localhost", 5060), A,
+			new SocketAddress("unresolvable.invalid", 5062));
+		ClusterRing ring = new ClusterRing(nodes, A);
+
+		Assertions.assertTrue(ring.isNode("10.0.0.1", 5060));
+		Assertions.assertFalse(ring.isNode("10.0.0.1", 5062));
+		Assertions.assertFalse(ring.isNode("10.0.0.2", 5060));
+
+		// Configured by name, matched by name or by resolved address.
+		Assertions.assertTrue(ring.isNode("LocalHost", 5060));
+		Assertions.assertTrue(ring.isNode("127.0.0.1", 5060));
+		Assertions.assertFalse(ring.isNode("127.0.0.1", 5061));
+
+		Assertions.assertTrue(ring.isNode("unresolvable.invalid", 5062));
+		Assertions.assertFalse(ring.isNode("other.invalid", 5062));
+	}
+
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.server;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test for {@link DomainMap}.
+ */
+@SuppressWarnings("javadoc")
+class TestDomainMap {
+
+	@Test
+	void testExactMatch() {
+		DomainMap<String> map = new DomainMap<>();
+		Assertions.assertFalse(map.isMatchSubdomains());
+		map.put("example.com", "a");
+
+		Assertions.assertEquals("a", map.lookup("example.com"));
+		Assertions.assertEquals("a", map.lookup("EXAMPLE.com."));
+		Assertions.assertNull(map.lookup("sip.example.com"));
+		Assertions.assertNull(map.lookup("com"));
+		Assertions.assertNull(map.lookup("otherexample.com"));
+		Assertions.assertNull(map.lookup(null));
+	}
+
+	@Test
+	void testSubdomains() {
+		DomainMap<String> map = new DomainMap<>(true);
+		map.put("example.com", "a");
+		map.put("eu.example.com", "b");
+
+		Assertions.assertEquals("a", map.lookup("example.com"));
+		Assertions.assertEquals("a", map.lookup("sip.example.com"));
+		Assertions.assertEquals("b", map.lookup("eu.example.com"));
+		Assertions.assertEquals("b", map.lookup("sip.Eu.example.com"));
+		Assertions.assertNull(map.lookup("otherexample.com"));
+		Assertions.assertNull(map.lookup("com"));
+	}
+
+	@Test
+	void testPutAndGet() {
+		DomainMap<String> map = new DomainMap<>(true);
+		Assertions.assertNull(map.put("Example.com.", "a"));
+		Assertions.assertEquals("a", map.put("example.com", "b"));
+		Assertions.assertEquals(1, map.size());
+		Assertions.assertEquals("b", map.get("EXAMPLE.COM"));
+		Assertions.assertNull(map.get("sip.example.com"));
+	}
+
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mjsip.sip.authentication.DigestVerifier;
+
+/**
+ * Test for {@link Ha1AuthenticationService}.
+ */
+@SuppressWarnings("javadoc")
+class TestHa1AuthenticationService {
+
+	@TempDir
+	File _dir;
+
+	@Test
+	void testRoundTrip() {
+		String file = file();
+		Ha1AuthenticationService service = new Ha1AuthenticationService(file);
+		Assertions.assertEquals(0, service.size());
+		service.addUser("bob@example.com", key("secret"));
+		service.addUser("alice@example.com", key("wonderland"));
+		service.addUser("jürgen@example.de", key("geheim"));
+		service.sync();
+
+		Ha1AuthenticationService reloaded = new Ha1AuthenticationService(file);
+		Assertions.assertEquals(3, reloaded.size());
+		Assertions.assertEquals(Arrays.asList("alice@example.com", "bob@example.com", "jürgen@example.de"),
+			users(reloaded));
+		Assertions.assertArrayEquals(DigestVerifier.ha1("alice", "example.com", "wonderland"),
+			reloaded.getUserHa1("alice", "example.com"));
+		Assertions.assertArrayEquals(DigestVerifier.ha1("jürgen", "example.de", "geheim"),
+			reloaded.getUserHa1("jürgen", "example.de"));
+		Assertions.assertNull(reloaded.getUserHa1("alice", "example.org"));
+		Assertions.assertNull(reloaded.getUserHa1("carol", "example.com"));
+		Assertions.assertNull(reloaded.getUserKey("alice@example.com"), "Passwords are not stored.");
+	}
+
+	@Test
+	void testLookupAllUsers() {
+		String file = file();
+		Ha1AuthenticationService service = new Ha1AuthenticationService(file);
+		int cnt = 500;
+		for (int n = 0; n < cnt; n++) {
+			service.setUserHa1("user" + n + "@example.com", DigestVerifier.ha1("user" + n, "example.com", "pw" + n));
+		}
+		service.sync();
+
+		Ha1AuthenticationService reloaded = new Ha1AuthenticationService(file);
+		Assertions.assertEquals(cnt, reloaded.size());
+		for (int n = 0; n < cnt; n++) {
+			Assertions.assertArrayEquals(DigestVerifier.ha1("user" + n, "example.com", "pw" + n),
+				reloaded.getUserHa1("user" + n, "example.com"));
+		}
+		Assertions.assertFalse(reloaded.hasUser("user" + cnt + "@example.com"));
+		Assertions.assertFalse(reloaded.hasUser("user@example.com"));
+	}
+
+	@Test
+	void testChangesAcrossSync() {
+		String file = file();
+		Ha1AuthenticationService service = new Ha1AuthenticationService(file);
+		service.addUser("a@example.com", key("a"));
+		service.addUser("b@example.com", key("b"));
+		service.addUser("c@example.com", key("c"));
+		Assertions.assertEquals(3, service.size());
+		service.sync();
+		Assertions.assertEquals(3, service.size());
+
+		// Pending changes are visible before they are written.
+		service.removeUser("b@example.com");
+		Assertions.assertEquals(2, service.size());
+		Assertions.assertFalse(service.hasUser("b@example.com"));
+		service.addUser("d@example.com", key("d"));
+		Assertions.assertEquals(3, service.size());
+		// Removing a user that does not exist does not change the size.
+		service.removeUser("x@example.com");
+		Assertions.assertEquals(3, service.size());
+		Assertions.assertEquals(Arrays.asList("a@example.com", "c@example.com", "d@example.com"), users(service));
+
+		// The file is unchanged until the next sync.
+		Assertions.assertEquals(Arrays.asList("a@example.com", "b@example.com", "c@example.com"),
+			users(new Ha1AuthenticationService(file)));
+
+		service.sync();
+		Assertions.assertEquals(3, service.size());
+		Ha1AuthenticationService reloaded = new Ha1AuthenticationService(file);
+		Assertions.assertEquals(Arrays.asList("a@example.com", "c@example.com", "d@example.com"), users(reloaded));
+
+		service.removeAllUsers();
+		service.addUser("e@example.com", key("e"));
+		Assertions.assertEquals(1, service.size());
+		service.sync();
+		Assertions.assertEquals(Arrays.asList("e@example.com"), users(new Ha1AuthenticationService(file)));
+	}
+
+	@Test
+	void testKeys() {
+		Ha1AuthenticationService service = new Ha1AuthenticationService(file());
+		service.addUser("a@example.com", key("first"));
+		// Adding an existing user does not change its key.
+		service.addUser("a@example.com", key("second"));
+		Assertions.assertArrayEquals(DigestVerifier.ha1("a", "example.com", "first"), service.getUserHa1("a", "example.com"));
+
+		service.setUserKey("a@example.com", key("third"));
+		Assertions.assertArrayEquals(DigestVerifier.ha1("a", "example.com", "third"), service.getUserHa1("a", "example.com"));
+
+		// Keys are only set for existing users.
+		service.setUserKey("b@example.com", key("b"));
+		Assertions.assertFalse(service.hasUser("b@example.com"));
+
+		Assertions.assertThrows(IllegalArgumentException.class, () -> service.addUser("no-realm", key("x")));
+		Assertions.assertThrows(IllegalArgumentException.class, () -> service.setUserHa1("a@example.com", new byte[3]));
+	}
+
+	@Test
+	void testLoadDropsPendingChanges() {
+		String file = file();
+		Ha1AuthenticationService service = new Ha1AuthenticationService(file);
+		service.addUser("a@example.com", key("a"));
+		service.sync();
+		service.addUser("b@example.com", key("b"));
+		service.removeUser("a@example.com");
+
+		service.load();
+		Assertions.assertEquals(Arrays.asList("a@example.com"), users(service));
+	}
+
+	@Test
+	void testImport() {
+		String file = file();
+		AuthenticationServiceImpl plain = new AuthenticationServiceImpl(new File(_dir, "plain.db").getPath());
+		plain.addUser("a@example.com", key("a"));
+		plain.addUser("b@example.com", key("b"));
+
+		Ha1AuthenticationService service = new Ha1AuthenticationService(file);
+		service.importUsers(plain).sync();
+
+		Ha1AuthenticationService reloaded = new Ha1AuthenticationService(file);
+		Assertions.assertEquals(2, reloaded.size());
+		Assertions.assertArrayEquals(plain.getUserHa1("b", "example.com"), reloaded.getUserHa1("b", "example.com"));
+	}
+
+	@Test
+	void testRejectCorruptFile() throws IOException {
+		String file = file();
+		Ha1AuthenticationService service = new Ha1AuthenticationService(file);
+		service.addUser("a@example.com", key("a"));
+		service.addUser("b@example.com", key("b"));
+		service.sync();
+		Path path = new File(file).toPath();
+		byte[] valid = Files.readAllBytes(path);
+
+		List<byte[]> corrupt = new ArrayList<>();
+		// Wrong magic number.
+		corrupt.add(modified(valid, 0, 'X'));
+		// Too short for the header.
+		corrupt.add(Arrays.copyOf(valid, 6));
+		// Truncated record.
+		corrupt.add(Arrays.copyOf(valid, valid.length - 1));
+		// Trailing garbage.
+		corrupt.add(Arrays.copyOf(valid, valid.length + 1));
+		// Negative and too large user counts.
+		corrupt.add(withInt(valid, 4, -1));
+		corrupt.add(withInt(valid, 4, 1000));
+		corrupt.add(withInt(valid, 4, 1));
+		// Record offset out of range.
+		corrupt.add(withInt(valid, 12, 100000));
+		// Name length beyond the end of the file.
+		corrupt.add(modified(valid, 16, 0x7F));
+
+		for (byte[] content : corrupt) {
+			Files.write(path, content);
+			Ha1AuthenticationService loaded = new Ha1AuthenticationService(file);
+			Assertions.assertEquals(0, loaded.size());
+			Assertions.assertFalse(loaded.hasUser("a@example.com"));
+			Assertions.assertNull(loaded.getUserHa1("b", "example.com"));
+		}
+
+		// A valid file is written again with the next change.
+		Ha1AuthenticationService recovered = new Ha1AuthenticationService(file);
+		recovered.addUser("c@example.com", key("c"));
+		recovered.sync();
+		Assertions.assertEquals(Arrays.asList("c@example.com"), users(new Ha1AuthenticationService(file)));
+	}
+
+	@Test
+	void testMissingFile() {
+		String file = file();
+		Ha1AuthenticationService service = new Ha1AuthenticationService(file);
+		Assertions.assertEquals(0, service.size());
+		// Nothing to write.
+		service.sync();
+		Assertions.assertFalse(new File(file).exists());
+
+		service.addUser("a@example.com", key("a"));
+		service.sync();
+		Assertions.assertTrue(new File(file).exists());
+	}
+
+	private String file() {
+		return new File(_dir, "users.ha1").getPath();
+	}
+
+	private static byte[] key(String password) {
+		return password.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static List<String> users(Ha1AuthenticationService service) {
+		return Collections.list(service.getUsers());
+	}
+
+	private static byte[] modified(byte[] content, int index, int value) {
+		byte[] result = content.clone();
+		result[index] = (byte) value;
+		return result;
+	}
+
+	private static byte[] withInt(byte[] content, int index, int value) {
+		byte[] result = content.clone();
+		ByteBuffer.wrap(result).putInt(index, value);
+		return result;
+	}
+
+}
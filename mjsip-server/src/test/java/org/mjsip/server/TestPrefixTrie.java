@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.server;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test for {@link PrefixTrie}.
+ */
+@SuppressWarnings("javadoc")
+class TestPrefixTrie {
+
+	@Test
+	void testLongestPrefix() {
+		PrefixTrie<String> trie = new PrefixTrie<>(1);
+		Assertions.assertNull(trie.put("0049", "de"));
+		Assertions.assertNull(trie.put("00496", "de-6"));
+		Assertions.assertNull(trie.put("0033", "fr"));
+		Assertions.assertEquals(3, trie.size());
+
+		Assertions.assertEquals("de", trie.lookup("004930123"));
+		Assertions.assertEquals("de-6", trie.lookup("0049691234"));
+		Assertions.assertEquals("fr", trie.lookup("0033"));
+		Assertions.assertNull(trie.lookup("004"));
+		Assertions.assertNull(trie.lookup("0044123"));
+		Assertions.assertNull(trie.lookup(""));
+	}
+
+	@Test
+	void testDefault() {
+		PrefixTrie<String> trie = new PrefixTrie<>();
+		trie.put("", "default");
+		trie.put("110", "police");
+
+		Assertions.assertEquals("default", trie.lookup(""));
+		Assertions.assertEquals("default", trie.lookup("11"));
+		Assertions.assertEquals("police", trie.lookup("110"));
+		Assertions.assertEquals("default", trie.lookup("alice"));
+	}
+
+	@Test
+	void testSpecialCharacters() {
+		PrefixTrie<String> trie = new PrefixTrie<>();
+		trie.put("*31#", "hide");
+		trie.put("+49", "de");
+		trie.put("0-", "dash");
+
+		Assertions.assertEquals("hide", trie.lookup("*31#0123"));
+		Assertions.assertEquals("de", trie.lookup("+4930"));
+		Assertions.assertEquals("dash", trie.lookup("0-1"));
+
+		// The lookup stops at the first character not allowed in phone numbers.
+		Assertions.assertNull(trie.lookup("+x49"));
+	}
+
+	@Test
+	void testGetAndReplace() {
+		PrefixTrie<String> trie = new PrefixTrie<>();
+		trie.put("12", "a");
+		Assertions.assertEquals("a", trie.put("12", "b"));
+		Assertions.assertEquals(1, trie.size());
+		Assertions.assertEquals("b", trie.get("12"));
+		Assertions.assertNull(trie.get("1"));
+		Assertions.assertNull(trie.get("123"));
+		Assertions.assertNull(trie.get("1a"));
+
+		Assertions.assertEquals("b", trie.put("12", null));
+		Assertions.assertEquals(0, trie.size());
+		Assertions.assertNull(trie.lookup("123"));
+	}
+
+	@Test
+	void testInvalidKey() {
+		Assertions.assertTrue(PrefixTrie.isKey("+49-30*#"));
+		Assertions.assertTrue(PrefixTrie.isKey(""));
+		Assertions.assertFalse(PrefixTrie.isKey("alice"));
+		Assertions.assertFalse(PrefixTrie.isKey("0ä"));
+
+		PrefixTrie<String> trie = new PrefixTrie<>();
+		Assertions.assertThrows(IllegalArgumentException.class, () -> trie.put("12a", "x"));
+	}
+
+	@Test
+	void testSiblingOrder() {
+		// Insert siblings in an order different from the alphabet, to check sorted insertion.
+		PrefixTrie<String> trie = new PrefixTrie<>(2);
+		String alphabet = "-+#*9876543210";
+		for (int n = 0; n < alphabet.length(); n++) {
+			String key = "5" + alphabet.charAt(n);
+			trie.put(key, key);
+		}
+		for (int n = 0; n < alphabet.length(); n++) {
+			String key = "5" + alphabet.charAt(n);
+			Assertions.assertEquals(key, trie.lookup(key + "77"));
+		}
+		Assertions.assertNull(trie.lookup("5"));
+	}
+
+	@Test
+	void testRandom() {
+		Random rnd = new Random(42);
+		PrefixTrie<String> trie = new PrefixTrie<>();
+		Map<String, String> expected = new HashMap<>();
+		for (int n = 0; n < 5000; n++) {
+			String key = randomNumber(rnd, 1 + rnd.nextInt(8));
+			trie.put(key, key);
+			expected.put(key, key);
+		}
+		Assertions.assertEquals(expected.size(), trie.size());
+
+		for (int n = 0; n < 5000; n++) {
+			String number = randomNumber(rnd, 10);
+			String match = null;
+			for (int length = number.length(); length > 0; length--) {
+				match = expected.get(number.substring(0, length));
+				if (match != null) {
+					break;
+				}
+			}
+			Assertions.assertEquals(match, trie.lookup(number), number);
+		}
+	}
+
+	private static String randomNumber(Random rnd, int length) {
+		StringBuilder result = new StringBuilder();
+		for (int n = 0; n < length; n++) {
+			result.append((char) ('0' + rnd.nextInt(10)));
+		}
+		return result.toString();
+	}
+
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mjsip.metrics.MetricsRegistry;
+import org.mjsip.sip.address.SipURI;
+import org.mjsip.sip.provider.SipConfig;
+import org.mjsip.sip.provider.SipProvider;
+import org.mjsip.time.ConfiguredScheduler;
+import org.mjsip.time.SchedulerConfig;
+import org.zoolu.net.SocketAddress;
+
+/**
+ * Test for {@link RoutingTable}.
+ */
+@SuppressWarnings("javadoc")
+class TestRoutingTable {
+
+	private static final String RULES = String.join("\n",
+		"# Test rules.",
+		"",
+		"phone 0049 10.0.0.1:5060",
+		"phone 00496 10.0.0.2:5060",
+		"phone 0049 10.0.0.3:5060",
+		"phone * 10.0.0.4:5060",
+		"auth-phone 110 10.0.0.5:5060",
+		"  domain   example.com   10.0.0.6:5060  ",
+		"auth-domain secure.example.com 10.0.0.7:5060");
+
+	@TempDir
+	Path _tmp;
+
+	@Test
+	void testRead() throws IOException {
+		RoutingTable table = RoutingTable.read(new StringReader(RULES), false);
+		Assertions.assertEquals(6, table.size());
+
+		// The first rule for a prefix wins.
+		Assertions.assertEquals("sip:00493012@10.0.0.1:5060", nexthop(table.getPhoneRule("00493012"), "sip:00493012@x"));
+		Assertions.assertEquals("sip:0049691@10.0.0.2:5060", nexthop(table.getPhoneRule("0049691"), "sip:0049691@x"));
+		Assertions.assertEquals("sip:0033@10.0.0.4:5060", nexthop(table.getPhoneRule("0033"), "sip:0033@x"));
+		Assertions.assertEquals("sip:110@10.0.0.5:5060", nexthop(table.getAuthPhoneRule("110"), "sip:110@x"));
+		Assertions.assertNull(table.getAuthPhoneRule("112"));
+
+		Assertions.assertEquals("sip:bob@10.0.0.6:5060",
+			nexthop(table.getDomainRule("EXAMPLE.com"), "sip:bob@EXAMPLE.com"));
+		Assertions.assertNull(table.getDomainRule("sip.example.com"));
+		Assertions.assertNotNull(table.getAuthDomainRule("secure.example.com"));
+		Assertions.assertNull(table.getAuthDomainRule("example.com"));
+	}
+
+	@Test
+	void testSubdomains() throws IOException {
+		RoutingTable table = RoutingTable.read(new StringReader(RULES), true);
+
+		Assertions.assertEquals("sip:bob@10.0.0.6:5060",
+			nexthop(table.getDomainRule("sip.example.com"), "sip:bob@sip.example.com"));
+		Assertions.assertNull(table.getDomainRule("otherexample.com"));
+	}
+
+	@Test
+	void testInvalidRule() {
+		Assertions.assertThrows(IOException.class,
+			() -> RoutingTable.read(new StringReader("phone 0049"), false));
+		Assertions.assertThrows(IOException.class,
+			() -> RoutingTable.read(new StringReader("unknown 0049 10.0.0.1:5060"), false));
+	}
+
+	@Test
+	void testSkipNonPhonePrefix() throws IOException {
+		RoutingTable table = RoutingTable.read(new StringReader("phone alice 10.0.0.1:5060\nphone 0 10.0.0.2:5060"), false);
+		Assertions.assertEquals(1, table.size());
+
+		ServerProfile profile = new ServerProfile();
+		profile.phoneProxyingRules = new ProxyingRule[] {
+			new PrefixProxyingRule("bob", new SocketAddress("10.0.0.1:5060")),
+			new PrefixProxyingRule("0", new SocketAddress("10.0.0.2:5060")),
+		};
+		profile.normalize();
+		RoutingTable fromProfile = RoutingTable.fromProfile(profile);
+		Assertions.assertEquals(1, fromProfile.size());
+		Assertions.assertNotNull(fromProfile.getPhoneRule("012"));
+	}
+
+	@Test
+	void testFromProfile() {
+		ServerProfile profile = new ServerProfile();
+		profile.domainProxyingRules = new ProxyingRule[] {
+			new DomainProxyingRule("example.com", new SocketAddress("10.0.0.6:5060")),
+		};
+		profile.normalize();
+
+		Assertions.assertNull(RoutingTable.fromProfile(profile).getDomainRule("sip.example.com"));
+
+		profile.domainRulesMatchSubdomains = true;
+		RoutingTable table = RoutingTable.fromProfile(profile);
+		Assertions.assertEquals("sip:bob@10.0.0.6:5060",
+			nexthop(table.getDomainRule("sip.example.com"), "sip:bob@sip.example.com"));
+	}
+
+	@Test
+	void testReload() throws IOException {
+		File file = _tmp.resolve("routing.txt").toFile();
+		write(file, "phone 0049 10.0.0.1:5060");
+
+		ServerProfile profile = new ServerProfile();
+		profile.locationDb = null;
+		profile.routingFile = file.getPath();
+		profile.normalize();
+
+		SipProvider sipProvider = sipProvider();
+		try {
+			Proxy proxy = new Proxy(sipProvider, profile);
+			RoutingTable initial = proxy.getRoutingTable();
+			Assertions.assertEquals(1, initial.size());
+			Assertions.assertNull(initial.getPhoneRule("0033"));
+
+			write(file, "phone 0049 10.0.0.1:5060\nphone 0033 10.0.0.2:5060");
+			Assertions.assertTrue(proxy.reloadRoutingTable());
+			Assertions.assertEquals(2, proxy.getRoutingTable().size());
+			Assertions.assertNotNull(proxy.getRoutingTable().getPhoneRule("0033"));
+
+			// A broken file keeps the rules in use.
+			RoutingTable before = proxy.getRoutingTable();
+			write(file, "phone 0033");
+			Assertions.assertFalse(proxy.reloadRoutingTable());
+			Assertions.assertSame(before, proxy.getRoutingTable());
+		} finally {
+			sipProvider.halt();
+		}
+	}
+
+	private static String nexthop(ProxyingRule rule, String uri) {
+		Assertions.assertNotNull(rule);
+		return rule.getNexthop(SipURI.parseSipURI(uri)).toString();
+	}
+
+	private static void write(File file, String content) throws IOException {
+		Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static SipProvider sipProvider() throws IOException {
+		int port;
+		try (DatagramSocket probe = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+			port = probe.getLocalPort();
+		}
+		SipConfig sipConfig = new SipConfig();
+		sipConfig.setViaAddrIPv4("127.0.0.1");
+		sipConfig.setHostPort(port);
+		sipConfig.setTransportProtocols(new String[] { SipProvider.PROTO_UDP });
+		sipConfig.normalize();
+		return new SipProvider(sipConfig, new ConfiguredScheduler(new SchedulerConfig()), new MetricsRegistry());
+	}
+
+}
@@ -0,0 +1,335 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.server;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mjsip.metrics.MetricsRegistry;
+import org.mjsip.sip.provider.SipConfig;
+import org.mjsip.sip.provider.SipProvider;
+import org.mjsip.sip.provider.SipTransport;
+import org.mjsip.time.ConfiguredScheduler;
+import org.mjsip.time.SchedulerConfig;
+import org.zoolu.net.IpAddress;
+import org.zoolu.net.SocketAddress;
+
+/**
+ * Test for {@link StatelessForwarder} comparing its output with the regular processing of a
+ * {@link Proxy}.
+ */
+@SuppressWarnings("javadoc")
+class TestStatelessForwarder {
+
+	private static final String LOCALHOST = "127.0.0.1";
+
+	private DatagramSocket _client;
+
+	private DatagramSocket _downstream;
+
+	private SipProvider _sipProvider;
+
+	private Proxy _proxy;
+
+	private StatelessForwarder _forwarder;
+
+	private final List<byte[]> _sent = new ArrayList<>();
+
+	private final List<String> _destinations = new ArrayList<>();
+
+	private SipTransport _transport;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		_client = new DatagramSocket(0, InetAddress.getByName(LOCALHOST));
+		_client.setSoTimeout(5000);
+		_downstream = new DatagramSocket(0, InetAddress.getByName(LOCALHOST));
+		_downstream.setSoTimeout(5000);
+		_transport = recordingTransport(true);
+	}
+
+	@AfterEach
+	void tearDown() {
+		if (_sipProvider != null) {
+			_sipProvider.halt();
+		}
+		_client.close();
+		_downstream.close();
+	}
+
+	@Test
+	void testForward() throws IOException {
+		start(false, false);
+		assertSameOutput(request("INVITE", "sip:bob@" + downstream(), via("10.0.0.1:5060"), "Max-Forwards: 70"));
+	}
+
+	@Test
+	void testMissingMaxForwards() throws IOException {
+		start(false, false);
+		assertSameOutput(request("MESSAGE", "sip:bob@" + downstream(), via(client())));
+	}
+
+	@Test
+	void testRport() throws IOException {
+		start(false, false);
+		assertSameOutput(request("OPTIONS", "sip:bob@" + downstream(), via(client(), ";rport"), "Max-Forwards: 10"));
+	}
+
+	@Test
+	void testForceRport() throws IOException {
+		start(true, false);
+		assertSameOutput(request("OPTIONS", "sip:bob@" + downstream(), via("10.0.0.1:5070"), "Max-Forwards: 10"));
+		assertSameOutput(request("OPTIONS", "sip:bob@" + downstream(), via(client()), "Max-Forwards: 10"));
+	}
+
+	@Test
+	void testRemoveOwnRoute() throws IOException {
+		start(false, false);
+		assertSameOutput(request("BYE", "sip:bob@10.9.9.9:5060", via(client()), "Max-Forwards: 70",
+			"Route: <sip:" + LOCALHOST + ":" + _sipProvider.getPort() + ";lr>, <sip:" + downstream() + ";lr>"));
+		assertSameOutput(request("BYE", "sip:bob@10.9.9.9:5060", via(client()), "Max-Forwards: 70",
+			"Route: <sip:" + LOCALHOST + ":" + _sipProvider.getPort() + ";lr>", "Route: <sip:" + downstream() + ";lr>"));
+	}
+
+	@Test
+	void testForeignRoute() throws IOException {
+		start(false, false);
+		assertSameOutput(request("BYE", "sip:bob@10.9.9.9:5060", via(client()), "Max-Forwards: 70",
+			"Route: <sip:" + downstream() + ";lr>"));
+	}
+
+	@Test
+	void testDomainRule() throws IOException {
+		start(false, false);
+		_proxy.setRoutingTable(new RoutingTable.Builder()
+			.add("domain", "remote.example", new SocketAddress(downstream())).build());
+		assertSameOutput(request("INVITE", "sip:bob@remote.example", via(client()), "Max-Forwards: 70"));
+	}
+
+	@Test
+	void testLoopDetection() throws IOException {
+		start(false, true);
+		assertSameOutput(request("INVITE", "sip:bob@" + downstream(), via("10.0.0.1:5060"), "Max-Forwards: 70"));
+	}
+
+	@Test
+	void testFallbacks() throws IOException {
+		start(false, true);
+		_proxy.setRoutingTable(new RoutingTable.Builder()
+			.add("auth-domain", "secure.example", new SocketAddress(downstream())).build());
+		String target = "sip:bob@" + downstream();
+		String self = LOCALHOST + ":" + _sipProvider.getPort();
+
+		List<String> fallbacks = Arrays.asList(
+			// Response.
+			"SIP/2.0 200 OK\r\n" + via(client()) + "\r\nFrom: <sip:a@x>;tag=1\r\nTo: <sip:b@y>\r\nCall-ID: 1\r\nCSeq: 1 INVITE\r\n\r\n",
+			request("REGISTER", "sip:" + self, via(client())),
+			// Responsible domain.
+			request("INVITE", "sip:bob@" + self, via(client())),
+			// Folded header line.
+			request("INVITE", target, via(client()), "Subject: a\r\n b"),
+			// Multiple Via values in one line.
+			request("INVITE", target, via(client()) + ", SIP/2.0/UDP 10.0.0.2:5060;branch=z9hG4bK2"),
+			// No RFC 3261 branch.
+			request("INVITE", target, "Via: SIP/2.0/UDP 10.0.0.1:5060;branch=1234"),
+			request("INVITE", target, via("10.0.0.1:5060", ";received=10.0.0.2")),
+			request("INVITE", "sips:bob@" + downstream(), via(client())),
+			request("INVITE", "tel:+4930123", via(client())),
+			request("INVITE", "sip:bob@[::1]:5060", via(client())),
+			request("INVITE", target + ";maddr=10.0.0.9", via(client())),
+			request("INVITE", target + ";transport=tcp", via(client())),
+			// Strict route.
+			request("INVITE", target, via(client()), "Route: <sip:10.0.0.8:5060>"),
+			// Authenticated domain rule.
+			request("INVITE", "sip:bob@secure.example", via(client())),
+			request("INVITE", target, via(client()), "Max-Forwards: 0"),
+			// Loop.
+			request("INVITE", target, via(client()), via(self)),
+			// Not in the resolver cache.
+			request("INVITE", "sip:bob@unknown.invalid", via(client())),
+			// Missing Call-ID.
+			request("INVITE", target, via(client())).replace("Call-ID: ", "X-Call-ID: "));
+
+		for (String message : fallbacks) {
+			long before = _forwarder.getFallbacks();
+			Assertions.assertFalse(forwardFast(_transport, message), message);
+			Assertions.assertEquals(before + 1, _forwarder.getFallbacks());
+		}
+		Assertions.assertTrue(_sent.isEmpty());
+		Assertions.assertEquals(0, _forwarder.getForwarded());
+	}
+
+	@Test
+	void testTransportWithoutRawData() throws IOException {
+		start(false, false);
+		String message = request("INVITE", "sip:bob@" + downstream(), via(client()));
+		Assertions.assertFalse(forwardFast(recordingTransport(false), message));
+		Assertions.assertTrue(forwardFast(_transport, message));
+
+		// Fast forwarded traffic is visible in the provider's metrics.
+		String labels = _sipProvider.metrics().getLabels();
+		Map<String, Long> snapshot = _sipProvider.metrics().getRegistry().snapshot();
+		Assertions.assertEquals(Long.valueOf(1), snapshot.get("sip_fast_forwarded_total{" + labels + "}"));
+		Assertions.assertEquals(Long.valueOf(1), snapshot.get("sip_fast_forward_fallbacks_total{" + labels + "}"));
+	}
+
+	private void start(boolean forceRport, boolean loopDetection) throws IOException {
+		int port;
+		try (DatagramSocket probe = new DatagramSocket(0, InetAddress.getByName(LOCALHOST))) {
+			port = probe.getLocalPort();
+		}
+		SipConfig sipConfig = new SipConfig();
+		sipConfig.setViaAddrIPv4(LOCALHOST);
+		sipConfig.setHostPort(port);
+		sipConfig.setTransportProtocols(new String[] { SipProvider.PROTO_UDP });
+		sipConfig.setForceRport(forceRport);
+		sipConfig.normalize();
+		_sipProvider = new SipProvider(sipConfig, new ConfiguredScheduler(new SchedulerConfig()), new MetricsRegistry());
+
+		ServerProfile profile = new ServerProfile();
+		profile.locationDb = null;
+		profile.isOpenProxy = true;
+		profile.loopDetection = loopDetection;
+		profile.normalize();
+		_proxy = new Proxy(_sipProvider, profile);
+		_forwarder = new StatelessForwarder(_proxy, _sipProvider, loopDetection);
+	}
+
+	/**
+	 * Checks that the fast path forwards the given request exactly like the regular processing.
+	 */
+	private void assertSameOutput(String request) throws IOException {
+		_sent.clear();
+		Assertions.assertTrue(forwardFast(_transport, request), "Not forwarded by the fast path: " + request);
+		Assertions.assertEquals(1, _sent.size());
+		Assertions.assertEquals(List.of(downstream()), _destinations);
+		String fast = new String(_sent.get(0), StandardCharsets.ISO_8859_1);
+
+		send(request);
+		String parsed = receive(_downstream);
+
+		Assertions.assertEquals(normalize(parsed), normalize(fast));
+		_destinations.clear();
+	}
+
+	/**
+	 * Header lines of a forwarded message, with canonical header names. The regular processing
+	 * writes header names in canonical form and may reorder header fields of different names.
+	 */
+	private static String normalize(String message) {
+		String[] lines = message.split("\r\n", -1);
+		StringBuilder result = new StringBuilder(lines[0]).append('\n');
+		List<String> headers = new ArrayList<>();
+		int n = 1;
+		for (; n < lines.length && !lines[n].isEmpty(); n++) {
+			String line = lines[n];
+			int colon = line.indexOf(':');
+			String name = line.substring(0, colon).trim();
+			String value = line.substring(colon + 1).trim();
+			for (String part : value.split(",\\s*")) {
+				headers.add(name.toLowerCase() + ": " + part);
+			}
+		}
+		// Keep the relative order of header fields with the same name.
+		headers.sort((a, b) -> a.substring(0, a.indexOf(':')).compareTo(b.substring(0, b.indexOf(':'))));
+		for (String header : headers) {
+			result.append(header).append('\n');
+		}
+		for (n++; n < lines.length; n++) {
+			result.append(lines[n]).append('\n');
+		}
+		return result.toString();
+	}
+
+	private boolean forwardFast(SipTransport transport, String message) {
+		byte[] data = message.getBytes(StandardCharsets.ISO_8859_1);
+		return _forwarder.onReceivedRawMessage(transport, data, 0, data.length, new IpAddress(LOCALHOST),
+			_client.getLocalPort());
+	}
+
+	private SipTransport recordingTransport(boolean rawData) {
+		return (SipTransport) java.lang.reflect.Proxy.newProxyInstance(getClass().getClassLoader(),
+			new Class<?>[] { SipTransport.class }, (proxy, method, args) -> {
+				switch (method.getName()) {
+				case "supportsRawData":
+					return rawData;
+				case "sendRawData":
+					byte[] buf = (byte[]) args[0];
+					int off = (Integer) args[1];
+					int len = (Integer) args[2];
+					_sent.add(Arrays.copyOfRange(buf, off, off + len));
+					_destinations.add(args[3] + ":" + args[4]);
+					return null;
+				case "getProtocol":
+					return SipProvider.PROTO_UDP;
+				case "toString":
+					return "recording";
+				default:
+					throw new UnsupportedOperationException(method.getName());
+				}
+			});
+	}
+
+	private void send(String message) throws IOException {
+		byte[] data = message.getBytes(StandardCharsets.ISO_8859_1);
+		_client.send(new DatagramPacket(data, data.length, InetAddress.getByName(LOCALHOST), _sipProvider.getPort()));
+	}
+
+	private static String receive(DatagramSocket socket) throws IOException {
+		DatagramPacket packet = new DatagramPacket(new byte[65535], 65535);
+		try {
+			socket.receive(packet);
+		} catch (SocketTimeoutException ex) {
+			Assertions.fail("Request was not forwarded by the regular processing.");
+		}
+		return new String(packet.getData(), 0, packet.getLength(), StandardCharsets.ISO_8859_1);
+	}
+
+	private String client() {
+		return LOCALHOST + ":" + _client.getLocalPort();
+	}
+
+	private String downstream() {
+		return LOCALHOST + ":" + _downstream.getLocalPort();
+	}
+
+	private static String via(String sentBy) {
+		return via(sentBy, "");
+	}
+
+	private static String via(String sentBy, String params) {
+		return "Via: SIP/2.0/UDP " + sentBy + params + ";branch=z9hG4bK" + Integer.toHexString(sentBy.hashCode());
+	}
+
+	private static String request(String method, String uri, String... headers) {
+		StringBuilder result = new StringBuilder();
+		result.append(method).append(' ').append(uri).append(" SIP/2.0\r\n");
+		for (String header : headers) {
+			result.append(header).append("\r\n");
+		}
+		result.append("From: <sip:alice@10.0.0.1>;tag=a1\r\n");
+		result.append("To: <").append(uri.replace(";maddr=10.0.0.9", "").replace(";transport=tcp", ""))
+			.append(">\r\n");
+		result.append("Call-ID: ").append(Integer.toHexString(uri.hashCode())).append("@10.0.0.1\r\n");
+		result.append("CSeq: 1 ").append(method).append("\r\n");
+		result.append("Content-Type: text/plain\r\n");
+		result.append("Content-Length: 5\r\n");
+		result.append("\r\n");
+		result.append("hello");
+		return result.toString();
+	}
+
+}
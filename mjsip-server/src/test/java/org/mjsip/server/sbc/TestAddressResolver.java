@@ -0,0 +1,274 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.server.sbc;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mjsip.metrics.MetricsRegistry;
+import org.mjsip.server.sbc.AddressResolver.Binding;
+import org.mjsip.server.sbc.AddressResolver.Key;
+import org.mjsip.sip.provider.SipConfig;
+import org.mjsip.sip.provider.SipProvider;
+import org.mjsip.time.ConfiguredScheduler;
+import org.mjsip.time.SchedulerConfig;
+import org.zoolu.net.SocketAddress;
+
+/**
+ * Test for {@link AddressResolver}.
+ */
+@SuppressWarnings("javadoc")
+class TestAddressResolver {
+
+	/** Long enough that the refresh timer never fires during a test. */
+	private static final long REFRESH_TIME = 3600000;
+
+	private static final SocketAddress REFER_A = new SocketAddress("10.0.0.1", 5060);
+
+	private static final SocketAddress REFER_B = new SocketAddress("10.0.0.2", 5060);
+
+	private static final SocketAddress REFER_C = new SocketAddress("example.com", 5060);
+
+	private static final SocketAddress ACTUAL_A = new SocketAddress("192.0.2.1", 40001);
+
+	private static final SocketAddress ACTUAL_B = new SocketAddress("192.0.2.2", 40002);
+
+	private static final SocketAddress ACTUAL_C = new SocketAddress("192.0.2.3", 40003);
+
+	private SipProvider _sipProvider;
+
+	private RecordingResolver _resolver;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		int port;
+		try (DatagramSocket probe = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+			port = probe.getLocalPort();
+		}
+		SipConfig sipConfig = new SipConfig();
+		sipConfig.setViaAddrIPv4("127.0.0.1");
+		sipConfig.setHostPort(port);
+		sipConfig.setTransportProtocols(new String[] { SipProvider.PROTO_UDP });
+		sipConfig.normalize();
+		_sipProvider = new SipProvider(sipConfig, new ConfiguredScheduler(new SchedulerConfig()), new MetricsRegistry());
+		_resolver = new RecordingResolver(_sipProvider);
+	}
+
+	@AfterEach
+	void tearDown() {
+		_resolver.timer.cancel(false);
+		_sipProvider.halt();
+	}
+
+	@Test
+	void testKey() {
+		Assertions.assertEquals(Key.of("10.0.0.1", 5060), Key.of(REFER_A));
+		Assertions.assertEquals(Key.of("10.0.0.1", 5060).hashCode(), Key.of(REFER_A).hashCode());
+		Assertions.assertNotEquals(Key.of("10.0.0.1", 5061), Key.of(REFER_A));
+		Assertions.assertNotEquals(Key.of(REFER_B), Key.of(REFER_A));
+		Assertions.assertEquals("10.0.0.1:5060", Key.of(REFER_A).toString());
+
+		Assertions.assertEquals(Key.of("Example.COM", 5060), Key.of(REFER_C));
+		Assertions.assertNotEquals(Key.of("example.com", 5061), Key.of(REFER_C));
+		Assertions.assertEquals("example.com:5060", Key.of(REFER_C).toString());
+
+		// IPv4 address and port are packed without colliding with a host name key.
+		Assertions.assertNotEquals(Key.of("10.0.0.1", 5060), Key.of("10.0.0.1.example.com", 5060));
+	}
+
+	@Test
+	void testParseIPv4() {
+		Assertions.assertEquals(0x0A000001L, Key.parseIPv4("10.0.0.1"));
+		Assertions.assertEquals(0xFFFFFFFFL, Key.parseIPv4("255.255.255.255"));
+		for (String invalid : Arrays.asList("", "10.0.0", "10.0.0.1.2", "10.0.0.256", "10..0.1", "10.0.0.", "::1",
+			"host")) {
+			Assertions.assertEquals(-1, Key.parseIPv4(invalid), invalid);
+		}
+	}
+
+	@Test
+	void testBindings() {
+		_resolver.updateBinding(REFER_A, ACTUAL_A);
+		_resolver.updateBinding(REFER_C, ACTUAL_C);
+		Assertions.assertEquals(2, _resolver.size());
+		Assertions.assertTrue(_resolver.contains(new SocketAddress("10.0.0.1", 5060)));
+		Assertions.assertTrue(_resolver.contains(new SocketAddress("EXAMPLE.com", 5060)));
+		Assertions.assertFalse(_resolver.contains(REFER_B));
+		Assertions.assertEquals(ACTUAL_A, _resolver.getSocketAddress(REFER_A));
+		Assertions.assertNull(_resolver.getSocketAddress(REFER_B));
+
+		// Looking up other addresses does not modify the keys in the table.
+		for (int n = 0; n < 100; n++) {
+			_resolver.getSocketAddress(new SocketAddress("10.1.0." + n, 5060));
+		}
+		Assertions.assertEquals(ACTUAL_A, _resolver.getSocketAddress(REFER_A));
+		Assertions.assertEquals(ACTUAL_C, _resolver.getSocketAddress(REFER_C));
+
+		_resolver.updateBinding(REFER_A, ACTUAL_A);
+		_resolver.updateBinding(REFER_A, ACTUAL_B);
+		Assertions.assertEquals(ACTUAL_B, _resolver.getSocketAddress(REFER_A));
+
+		_resolver.removeBinding(REFER_A);
+		Assertions.assertFalse(_resolver.contains(REFER_A));
+		Assertions.assertEquals(1, _resolver.size());
+
+		Assertions.assertEquals(Arrays.asList("add 10.0.0.1:5060", "add example.com:5060", "change 10.0.0.1:5060",
+			"remove 10.0.0.1:5060"), _resolver.events);
+	}
+
+	@Test
+	void testLookupDoesNotAllocate() {
+		Assumptions.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		Assumptions.assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+
+		_resolver.updateBinding(REFER_A, ACTUAL_A);
+		SocketAddress referA = new SocketAddress("10.0.0.1", 5060);
+		SocketAddress referB = new SocketAddress("10.0.0.2", 5060);
+		int cnt = 10000;
+		for (int n = 0; n < cnt; n++) {
+			_resolver.getSocketAddress(referA);
+			_resolver.contains(referB);
+		}
+
+		long thread = Thread.currentThread().getId();
+		long before = threads.getThreadAllocatedBytes(thread);
+		for (int n = 0; n < cnt; n++) {
+			Assertions.assertSame(ACTUAL_A, _resolver.getSocketAddress(referA));
+			Assertions.assertFalse(_resolver.contains(referB));
+		}
+		long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+		// A key per lookup would be at least 24 bytes for each of the 2 * cnt lookups, allow for some
+		// unrelated allocations of the JVM.
+		Assertions.assertTrue(allocated < 8 * cnt, "Allocated " + allocated + " bytes.");
+	}
+
+	@Test
+	void testExpiry() {
+		_resolver.updateBinding(REFER_A, ACTUAL_A);
+		_resolver.updateBinding(REFER_B, ACTUAL_B);
+		Binding a = binding(REFER_A);
+		Binding b = binding(REFER_B);
+
+		// Nothing is due.
+		_resolver.onTimeout();
+		Assertions.assertEquals(2, _resolver.size());
+		Assertions.assertEquals(Arrays.asList(a, b), queue());
+
+		expire(a);
+		expire(b);
+		_resolver.onTimeout();
+		Assertions.assertEquals(0, _resolver.size());
+		Assertions.assertTrue(queue().isEmpty());
+		Assertions.assertTrue(_resolver.events.contains("remove 10.0.0.1:5060"));
+		Assertions.assertTrue(_resolver.events.contains("remove 10.0.0.2:5060"));
+	}
+
+	@Test
+	void testRefreshedBindingIsRequeued() {
+		_resolver.updateBinding(REFER_A, ACTUAL_A);
+		_resolver.updateBinding(REFER_B, ACTUAL_B);
+		Binding a = binding(REFER_A);
+		Binding b = binding(REFER_B);
+
+		// A was queued with an expiration that has passed, but was refreshed since.
+		a.queued_expire = System.currentTimeMillis() - 1;
+		expire(b);
+		_resolver.onTimeout();
+
+		Assertions.assertEquals(1, _resolver.size());
+		Assertions.assertSame(a, binding(REFER_A));
+		Assertions.assertEquals(Arrays.asList(a), queue());
+		Assertions.assertEquals(a.expire, a.queued_expire);
+		Assertions.assertFalse(_resolver.events.contains("remove 10.0.0.1:5060"));
+	}
+
+	@Test
+	void testQueueStopsAtFirstBindingNotDue() {
+		_resolver.updateBinding(REFER_A, ACTUAL_A);
+		_resolver.updateBinding(REFER_B, ACTUAL_B);
+		Binding a = binding(REFER_A);
+		Binding b = binding(REFER_B);
+
+		// B is due, but queued behind A, which is not.
+		expire(b);
+		_resolver.onTimeout();
+		Assertions.assertEquals(2, _resolver.size());
+		Assertions.assertEquals(Arrays.asList(a, b), queue());
+
+		expire(a);
+		_resolver.onTimeout();
+		Assertions.assertEquals(0, _resolver.size());
+	}
+
+	@Test
+	void testRemovedBindingIsDequeued() {
+		_resolver.updateBinding(REFER_A, ACTUAL_A);
+		Binding removed = binding(REFER_A);
+		_resolver.removeBinding(REFER_A);
+
+		// Added again, the new binding is queued behind the removed one.
+		_resolver.updateBinding(REFER_A, ACTUAL_B);
+		Binding added = binding(REFER_A);
+		Assertions.assertNotSame(removed, added);
+		Assertions.assertEquals(Arrays.asList(removed, added), queue());
+
+		expire(removed);
+		_resolver.onTimeout();
+		Assertions.assertSame(added, binding(REFER_A));
+		Assertions.assertEquals(Arrays.asList(added), queue());
+		Assertions.assertEquals(Arrays.asList("add 10.0.0.1:5060", "remove 10.0.0.1:5060", "add 10.0.0.1:5060"),
+			_resolver.events);
+	}
+
+	private Binding binding(SocketAddress refer) {
+		return _resolver.binding_table.get(Key.of(refer));
+	}
+
+	private List<Binding> queue() {
+		return new ArrayList<>(_resolver.expire_queue);
+	}
+
+	private static void expire(Binding binding) {
+		long past = System.currentTimeMillis() - 1;
+		binding.expire = past;
+		binding.queued_expire = past;
+	}
+
+	private static class RecordingResolver extends AddressResolver {
+
+		final List<String> events = new ArrayList<>();
+
+		RecordingResolver(SipProvider sipProvider) {
+			super(sipProvider, REFRESH_TIME);
+		}
+
+		@Override
+		protected void onBindingAdded(Binding binding) {
+			events.add("add " + binding.getReferSoAddress());
+		}
+
+		@Override
+		protected void onBindingChanged(Binding binding) {
+			events.add("change " + binding.getReferSoAddress());
+		}
+
+		@Override
+		protected void onBindingRemoved(Binding binding) {
+			events.add("remove " + binding.getReferSoAddress());
+		}
+	}
+
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.server.sbc;
+
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mjsip.pool.PortPool;
+import org.mjsip.sdp.SdpDocument;
+import org.mjsip.sip.message.SipMessage;
+import org.mjsip.time.ConfiguredScheduler;
+import org.mjsip.time.SchedulerConfig;
+
+/**
+ * Test for allocating and releasing media relays in {@link MediaGw}.
+ */
+@SuppressWarnings("javadoc")
+class TestMediaGw {
+
+	private static final int CALLS = 20;
+
+	private static final int THREADS = 8;
+
+	private static final String MEDIA_ADDR = "127.0.0.1";
+
+	private PortPool _pool;
+
+	private MediaGw _gw;
+
+	private ExecutorService _executor;
+
+	@BeforeEach
+	void setUp() {
+		SessionBorderControllerProfile profile = new SessionBorderControllerProfile();
+		profile.mediaAddr = MEDIA_ADDR;
+		profile.relayTimeout = 3000;
+		_pool = new PortPool(freePorts(CALLS * 4), CALLS * 4);
+		_gw = new MediaGw(new ConfiguredScheduler(new SchedulerConfig()), _pool, profile);
+		_executor = Executors.newFixedThreadPool(THREADS);
+	}
+
+	@AfterEach
+	void tearDown() {
+		_executor.shutdownNow();
+		for (SymmetricUdpRelay relay : _gw.relay_table.keySet()) {
+			relay.halt();
+		}
+		_gw.halt();
+	}
+
+	@Test
+	void testConcurrentAllocationAndRelease() throws Exception {
+		for (int round = 0; round < 2; round++) {
+			// Both legs of all calls are processed concurrently, each leg twice as if retransmitted.
+			List<Future<int[]>> invites = new ArrayList<>();
+			List<Future<int[]>> responses = new ArrayList<>();
+			for (int n = 0; n < CALLS; n++) {
+				String callId = "call-" + round + "-" + n;
+				for (int copy = 0; copy < 2; copy++) {
+					invites.add(_executor.submit(process(invite(callId))));
+					responses.add(_executor.submit(process(response(callId))));
+				}
+			}
+
+			Set<Integer> ports = new HashSet<>();
+			for (List<Future<int[]>> leg : List.of(invites, responses)) {
+				for (int n = 0; n < leg.size(); n += 2) {
+					int[] first = leg.get(n).get();
+					int[] retransmitted = leg.get(n + 1).get();
+					Assertions.assertArrayEquals(first, retransmitted);
+					for (int port : first) {
+						Assertions.assertTrue(ports.add(port), "Port used twice: " + port);
+					}
+				}
+			}
+
+			// One relay per call and media, each using the two masquerade ports of the call.
+			Assertions.assertEquals(CALLS * 4, ports.size());
+			Assertions.assertEquals(CALLS * 4, _pool.getAllocated());
+			Assertions.assertEquals(CALLS * 4, _gw.masq_table.size());
+			Assertions.assertEquals(CALLS * 2, _gw.relay_table.size());
+			Assertions.assertEquals(CALLS, _gw.call_table.size());
+
+			// Inactive relays terminate and release their ports.
+			long timeout = System.currentTimeMillis() + 15000;
+			while (_pool.getAllocated() > 0 && System.currentTimeMillis() < timeout) {
+				Thread.sleep(100);
+			}
+			Assertions.assertEquals(0, _pool.getAllocated());
+			Assertions.assertTrue(_gw.masq_table.isEmpty());
+			Assertions.assertTrue(_gw.relay_table.isEmpty());
+			Assertions.assertTrue(_gw.call_table.isEmpty());
+		}
+	}
+
+	private Callable<int[]> process(SipMessage msg) {
+		return () -> {
+			SdpDocument sdp = _gw.processSessionDescriptor(msg).getSdpDocument();
+			Assertions.assertEquals(MEDIA_ADDR, sdp.getConnectionAddress());
+			int[] result = new int[sdp.getMediaCount()];
+			for (int i = 0; i < result.length; i++) {
+				result[i] = sdp.getMediaPort(i);
+			}
+			return result;
+		};
+	}
+
+	private static SipMessage invite(String callId) {
+		String sdp = sdp("192.0.2.10");
+		return new SipMessage("INVITE sip:bob@b.example SIP/2.0\r\n"
+			+ "Via: SIP/2.0/UDP 192.0.2.10:5060;branch=z9hG4bK" + callId + "\r\n"
+			+ "Max-Forwards: 70\r\n"
+			+ "From: <sip:alice@a.example>;tag=a1\r\n"
+			+ "To: <sip:bob@b.example>\r\n"
+			+ "Call-ID: " + callId + "\r\n"
+			+ "CSeq: 1 INVITE\r\n"
+			+ "Content-Type: application/sdp\r\n"
+			+ "Content-Length: " + sdp.length() + "\r\n\r\n"
+			+ sdp);
+	}
+
+	private static SipMessage response(String callId) {
+		String sdp = sdp("192.0.2.20");
+		return new SipMessage("SIP/2.0 200 OK\r\n"
+			+ "Via: SIP/2.0/UDP 192.0.2.10:5060;branch=z9hG4bK" + callId + "\r\n"
+			+ "From: <sip:alice@a.example>;tag=a1\r\n"
+			+ "To: <sip:bob@b.example>;tag=b1\r\n"
+			+ "Call-ID: " + callId + "\r\n"
+			+ "CSeq: 1 INVITE\r\n"
+			+ "Content-Type: application/sdp\r\n"
+			+ "Content-Length: " + sdp.length() + "\r\n\r\n"
+			+ sdp);
+	}
+
+	private static String sdp(String addr) {
+		return "v=0\r\n"
+			+ "o=- 1 1 IN IP4 " + addr + "\r\n"
+			+ "s=-\r\n"
+			+ "c=IN IP4 " + addr + "\r\n"
+			+ "t=0 0\r\n"
+			+ "m=audio 4000 RTP/AVP 0\r\n"
+			+ "m=video 4002 RTP/AVP 96\r\n";
+	}
+
+	/**
+	 * Finds a range of consecutive free UDP ports.
+	 */
+	private static int freePorts(int cnt) {
+		for (int attempt = 0; attempt < 100; attempt++) {
+			int first = ThreadLocalRandom.current().nextInt(20000, 60000 - cnt);
+			List<DatagramSocket> probes = new ArrayList<>();
+			try {
+				for (int n = 0; n < cnt; n++) {
+					probes.add(new DatagramSocket(first + n));
+				}
+				return first;
+			} catch (IOException ex) {
+				// Try another range.
+			} finally {
+				for (DatagramSocket probe : probes) {
+					probe.close();
+				}
+			}
+		}
+		throw new AssertionError("No free port range found.");
+	}
+
+}
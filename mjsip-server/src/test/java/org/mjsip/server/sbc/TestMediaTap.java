@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.server.sbc;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mjsip.capture.CaptureSink;
+import org.mjsip.capture.CapturedPacket;
+import org.mjsip.metrics.MetricsRegistry;
+import org.mjsip.pool.PortPool;
+import org.zoolu.net.SocketAddress;
+
+/**
+ * Test for {@link MediaTap} and its use in {@link MediaGw}.
+ */
+@SuppressWarnings("javadoc")
+class TestMediaTap {
+
+	private static final SocketAddress LEFT = new SocketAddress("127.0.0.1", 4000);
+
+	private static final SocketAddress RIGHT = new SocketAddress("127.0.0.1", 4002);
+
+	@TempDir
+	Path _tmp;
+
+	@Test
+	void testSinkFailure() {
+		List<String> written = new ArrayList<>();
+		boolean[] closed = { false };
+		CaptureSink sink = new CaptureSink() {
+			@Override
+			public void write(CapturedPacket packet) {
+				String data = new String(packet.getData(), 0, packet.getLength(), StandardCharsets.ISO_8859_1);
+				if (data.equals("broken")) {
+					throw new IllegalStateException("Cannot write.");
+				}
+				written.add(data + ":" + packet.getSourcePort() + ">" + packet.getDestinationPort());
+			}
+
+			@Override
+			public void close() {
+				closed[0] = true;
+			}
+		};
+
+		MediaTap tap = new MediaTap(List.of(sink), 16, new MetricsRegistry());
+		Assertions.assertTrue(capture(tap, "first"));
+		Assertions.assertTrue(capture(tap, "broken"));
+		Assertions.assertTrue(capture(tap, "last"));
+		tap.halt();
+
+		Assertions.assertEquals(List.of("first:4000>4002", "last:4000>4002"), written);
+		Assertions.assertTrue(closed[0]);
+		Assertions.assertEquals(3, tap.getCapturedCount());
+		Assertions.assertFalse(capture(tap, "late"));
+	}
+
+	@Test
+	void testPcapFile() {
+		File file = _tmp.resolve("media.pcap").toFile();
+		SessionBorderControllerProfile profile = new SessionBorderControllerProfile();
+		profile.interceptFile = file.getPath();
+		MediaGw gw = new MediaGw(null, new PortPool(40000, 2), profile);
+
+		MediaTap tap = gw.getMediaTap();
+		Assertions.assertSame(tap, gw.getMediaTap());
+		Assertions.assertTrue(capture(tap, "0123456789"));
+		gw.halt();
+
+		// File header, record header, IPv4 and UDP header, payload.
+		Assertions.assertEquals(24 + 16 + 20 + 8 + 10, file.length());
+	}
+
+	@Test
+	void testUdpSinkReleasesPort() throws IOException {
+		int port;
+		try (DatagramSocket probe = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+			port = probe.getLocalPort();
+		}
+		PortPool pool = new PortPool(port, 1);
+
+		try (DatagramSocket receiver = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+			receiver.setSoTimeout(5000);
+			SessionBorderControllerProfile profile = new SessionBorderControllerProfile();
+			profile.sinkAddr = "127.0.0.1";
+			profile.sinkPort = receiver.getLocalPort();
+			MediaGw gw = new MediaGw(null, pool, profile);
+
+			Assertions.assertTrue(capture(gw.getMediaTap(), "rtp"));
+			Assertions.assertEquals(1, pool.getAllocated());
+
+			DatagramPacket packet = new DatagramPacket(new byte[100], 100);
+			receiver.receive(packet);
+			Assertions.assertEquals("rtp", new String(packet.getData(), 0, packet.getLength(), StandardCharsets.ISO_8859_1));
+			Assertions.assertEquals(port, packet.getPort());
+
+			gw.halt();
+			Assertions.assertEquals(0, pool.getAllocated());
+		}
+	}
+
+	private static boolean capture(MediaTap tap, String data) {
+		byte[] buf = ("xx" + data).getBytes(StandardCharsets.ISO_8859_1);
+		return tap.capture(LEFT, RIGHT, buf, 2, buf.length - 2);
+	}
+
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.server.sbc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mjsip.sdp.SdpDocument;
+import org.mjsip.sdp.SdpMessage;
+import org.mjsip.sip.header.Header;
+import org.mjsip.sip.header.SipHeaders;
+import org.mjsip.sip.message.SipMessage;
+
+/**
+ * Test for {@link SipMangler}, comparing each fast path with its <code>*Parsed</code> counterpart.
+ */
+@SuppressWarnings("javadoc")
+class TestSipMangler {
+
+	private static final String HOST = "192.0.2.1";
+
+	private static final int PORT = 5070;
+
+	/** Contact values, including all forms handled by parsing and rebuilding the header. */
+	private static final List<String> CONTACTS = Arrays.asList(
+		"<sip:alice@10.0.0.1:5060>",
+		"<sip:alice@10.0.0.1>",
+		"<sip:10.0.0.1:5060>",
+		"<sip:alice@pc.example.com;transport=udp>",
+		"<sips:alice@10.0.0.1:5061>",
+		"sip:alice@10.0.0.1:5060",
+		"sip:alice@10.0.0.1:5060;expires=3600",
+		"Alice <sip:alice@10.0.0.1:5060>",
+		"\"Alice Liddell\" <sip:alice@10.0.0.1:5060>;expires=60",
+		"<sip:alice@10.0.0.1:5060>;q=0.7;expires=3600;+sip.instance=\"<urn:uuid:1>\"",
+		"<sip:alice@10.0.0.1:5060> ; expires = 120",
+		"<sip:user:with:colons@10.0.0.1>",
+		"<sip:aliceZcookie@10.0.0.1:5060>",
+		"<sip:alice@10.0.0.1:5060?Subject=x>",
+		// fallbacks
+		"*",
+		"<sip:alice@10.0.0.1>, <sip:alice@10.0.0.2>",
+		"\"Alice \\\"A\\\"\" <sip:alice@10.0.0.1>",
+		"<sip:alice:secret@10.0.0.1:5060>",
+		"<sip:alice@[2001:db8::1]:5060>",
+		"<sip:alice@10.0.0.1:0>",
+		"<sip:alice@10.0.0.1:05060>",
+		"<sip:alice@10.0.0.1>;expires=\"Thu, 01 Dec 1994 16:00:00 GMT\"",
+		"<sip:alice@10.0.0.1>;expires=",
+		"<tel:+1-201-555-0123>",
+		"\"\" <sip:alice@10.0.0.1>");
+
+	private static final List<String> REQUEST_URIS = Arrays.asList(
+		"sip:alice@10.0.0.1:5060",
+		"sip:bob@example.com",
+		"sip:" + SipMangler.magic_cookie + "aliceZAT-10.0.0.1ZPORT-5060@" + HOST + ":" + PORT,
+		"sip:" + SipMangler.magic_cookie + "10.0.0.1ZPORT-5060@" + HOST,
+		"sip:" + SipMangler.magic_cookie + "aZ~bZAT-10.0.0.1@" + HOST + ";transport=udp",
+		"sips:" + SipMangler.magic_cookie + "aliceZAT-10.0.0.1@" + HOST,
+		// fallbacks
+		"sip:" + SipMangler.magic_cookie + "aliceZPORT-secretZAT-10.0.0.1@" + HOST,
+		"sip:" + SipMangler.magic_cookie + "aliceZAT-10.0.0.1ZPORT-0@" + HOST,
+		"sip:" + SipMangler.magic_cookie + "aliceZAT-bZAT-10.0.0.1@" + HOST,
+		"sip:" + SipMangler.magic_cookie + "aliceZAT-10.0.0.1ZX@" + HOST,
+		"sip:" + SipMangler.magic_cookie + "ZAT-10.0.0.1@" + HOST,
+		"sip:" + SipMangler.magic_cookie + HOST,
+		"tel:+1-201-555-0123");
+
+	private static final String[] MEDIA_TYPES = { "audio", "video" };
+
+	private static final int[] MASQ_PORTS = { 40000, 40002 };
+
+	/** Session descriptions, including all forms handled by parsing and rebuilding the body. */
+	private static final List<String> BODIES = Arrays.asList(
+		"v=0\r\n"
+			+ "o=alice 2890844526 2890844526 IN IP4 10.0.0.1\r\n"
+			+ "s=-\r\n"
+			+ "c=IN IP4 10.0.0.1\r\n"
+			+ "t=0 0\r\n"
+			+ "m=audio 49170 RTP/AVP 0 8 101\r\n"
+			+ "a=rtpmap:0 PCMU/8000\r\n"
+			+ "a=rtpmap:101 telephone-event/8000\r\n"
+			+ "a=sendrecv\r\n",
+		"v=0\r\n"
+			+ "o=bob 1 1 IN IP4 10.0.0.2\r\n"
+			+ "s=call\r\n"
+			+ "c=IN IP4 224.2.1.1/127/3\r\n"
+			+ "t=0 0\r\n"
+			+ "m=audio 49170 RTP/AVP 0\r\n"
+			+ "m=video 51372/2 RTP/AVP 31\r\n"
+			+ "c=IN IP4 10.0.0.3\r\n"
+			+ "a=rtpmap:31 H261/90000\r\n"
+			+ "m=application 9 TCP/MSRP *\r\n",
+		"v=0\n"
+			+ "o=bob 1 1 IN IP4 10.0.0.2\n"
+			+ "s=-\n"
+			+ "c=IN IP4 10.0.0.2\n"
+			+ "t=0 0\n"
+			+ "m=video 51372 RTP/AVP 31\n",
+		// fallback: no session-level connection
+		"v=0\r\n"
+			+ "o=bob 1 1 IN IP4 10.0.0.2\r\n"
+			+ "s=-\r\n"
+			+ "t=0 0\r\n"
+			+ "m=audio 49170 RTP/AVP 0\r\n"
+			+ "c=IN IP4 10.0.0.2\r\n");
+
+	@Test
+	void testMangleContact() {
+		for (String contact : CONTACTS) {
+			assertSameResult(contact, request("sip:bob@example.com", contact, null),
+				msg -> SipMangler.mangleContact(msg, HOST, PORT),
+				msg -> SipMangler.mangleContactParsed(msg, HOST, PORT));
+		}
+	}
+
+	@Test
+	void testUnmangleContact() {
+		for (String contact : CONTACTS) {
+			List<String> values = new ArrayList<>(Arrays.asList(contact));
+			try {
+				values.add(contactValue(SipMangler.mangleContactParsed(request("sip:bob@example.com", contact, null), HOST, PORT)));
+			} catch (RuntimeException ex) {
+				// Not supported by the parsed path, compared in testMangleContact().
+			}
+			for (String value : values) {
+				assertSameResult(value, request("sip:bob@example.com", value, null),
+					SipMangler::unmangleContact,
+					SipMangler::unmangleContactParsed);
+			}
+		}
+	}
+
+	@Test
+	void testContactRoundTrip() {
+		for (String contact : Arrays.asList("<sip:alice@10.0.0.1:5060>", "<sip:aliceZcookie@10.0.0.1>",
+			"\"Alice\" <sip:10.0.0.1:5060>;expires=60")) {
+			SipMessage msg = request("sip:bob@example.com", contact, null);
+			String mangled = contactValue(SipMangler.mangleContact(msg, HOST, PORT));
+			Assertions.assertNotEquals(contact, mangled);
+			Assertions.assertEquals(contact, contactValue(SipMangler.unmangleContact(msg)));
+		}
+	}
+
+	@Test
+	void testUnmangleRequestLine() {
+		for (String uri : REQUEST_URIS) {
+			SipMessage msg = request(uri, "<sip:alice@10.0.0.1>", null);
+			assertSameResult(uri, msg,
+				SipMangler::unmangleRequestLine,
+				SipMangler::unmangleRequestLineParsed);
+		}
+	}
+
+	@Test
+	void testMangleBody() {
+		for (String body : BODIES) {
+			SipMessage fast = SipMangler.mangleBody(request("sip:bob@example.com", null, body), HOST, MEDIA_TYPES, MASQ_PORTS);
+			SipMessage parsed = SipMangler.mangleBodyParsed(request("sip:bob@example.com", null, body), HOST, MEDIA_TYPES, MASQ_PORTS);
+			Assertions.assertEquals(normalize(parsed.getStringBody()), normalize(fast.getStringBody()), body);
+			Assertions.assertEquals(fast.getBody().length, fast.getContentLengthHeader().getContentLength(), body);
+
+			// The cached session description is the one of the new body.
+			SdpDocument sdp = fast.getSdpDocument();
+			if (sdp.hasConnection()) {
+				Assertions.assertEquals(HOST, sdp.getConnectionAddress());
+			}
+			Assertions.assertEquals(fast.getStringBody(), sdp.toString());
+		}
+	}
+
+	@Test
+	void testMangleInvalidBody() {
+		String body = "v=0\r\n"
+			+ "o=bob 1 1 IN IP4 10.0.0.2\r\n"
+			+ "s=-\r\n"
+			+ "c=IN IP4 10.0.0.2\r\n"
+			+ "t=0 0\r\n"
+			+ "m=audio 49170 RTP/AVP 0\r\n"
+			+ "m=video\r\n";
+		SipMessage msg = request("sip:bob@example.com", null, body);
+		SdpDocument cached = msg.getSdpDocument();
+		try {
+			SipMangler.mangleBody(msg, HOST, MEDIA_TYPES, MASQ_PORTS);
+		} catch (RuntimeException ex) {
+			// The parsed path does not support the media line either.
+			Assertions.assertEquals(body, msg.getStringBody());
+		}
+		// The session description cached by the message is never left half-changed.
+		Assertions.assertFalse(cached.isModified());
+		Assertions.assertEquals(msg.getStringBody(), msg.getSdpDocument().toString());
+	}
+
+	@Test
+	void testMangleEmptyBody() {
+		assertSameResult("empty body", request("sip:bob@example.com", null, null),
+			msg -> SipMangler.mangleBody(msg, HOST, MEDIA_TYPES, MASQ_PORTS),
+			msg -> SipMangler.mangleBodyParsed(msg, HOST, MEDIA_TYPES, MASQ_PORTS));
+	}
+
+	/**
+	 * Asserts that both paths produce the same message, or fail with the same exception.
+	 */
+	private static void assertSameResult(String input, SipMessage msg, UnaryOperator<SipMessage> fast,
+			UnaryOperator<SipMessage> parsed) {
+		String expected;
+		try {
+			expected = parsed.apply(new SipMessage(msg)).toString();
+		} catch (RuntimeException ex) {
+			Assertions.assertThrows(ex.getClass(), () -> fast.apply(msg), input);
+			return;
+		}
+		Assertions.assertEquals(expected, fast.apply(msg).toString(), input);
+	}
+
+	/** Session description with its fields in canonical order and format. */
+	private static String normalize(String body) {
+		return new SdpMessage(body).toString();
+	}
+
+	private static String contactValue(SipMessage msg) {
+		Header contact = msg.getHeader(SipHeaders.Contact);
+		return contact == null ? null : contact.getValue();
+	}
+
+	private static SipMessage request(String uri, String contact, String body) {
+		return new SipMessage("INVITE " + uri + " SIP/2.0\r\n"
+			+ "Via: SIP/2.0/UDP 10.0.0.1:5060;branch=z9hG4bK776asdhds\r\n"
+			+ "Max-Forwards: 70\r\n"
+			+ "From: <sip:alice@example.com>;tag=1928301774\r\n"
+			+ "To: <sip:bob@example.com>\r\n"
+			+ "Call-ID: a84b4c76e66710@pc33.example.com\r\n"
+			+ "CSeq: 314159 INVITE\r\n"
+			+ (contact != null ? "Contact: " + contact + "\r\n" : "")
+			+ (body != null ? "Content-Type: application/sdp\r\n" : "")
+			+ "Content-Length: " + (body != null ? body.length() : 0) + "\r\n\r\n"
+			+ (body != null ? body : ""));
+	}
+
+}
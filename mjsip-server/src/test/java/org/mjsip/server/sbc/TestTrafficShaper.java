@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.server.sbc;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.zoolu.net.IpAddress;
+import org.zoolu.net.UdpPacket;
+import org.zoolu.net.UdpSocket;
+
+/**
+ * Test for {@link TrafficShaper}.
+ */
+@SuppressWarnings("javadoc")
+class TestTrafficShaper {
+
+	private static final IpAddress LOCALHOST = new IpAddress(InetAddress.getLoopbackAddress());
+
+	private DatagramSocket _receiver;
+
+	private UdpSocket _socket;
+
+	private TrafficShaper _shaper;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		_receiver = new DatagramSocket(0, LOCALHOST.getInetAddress());
+		_receiver.setSoTimeout(2000);
+		_socket = new UdpSocket(0, LOCALHOST);
+	}
+
+	@AfterEach
+	void tearDown() {
+		if (_shaper != null) {
+			_shaper.halt();
+		}
+		_socket.close();
+		_receiver.close();
+	}
+
+	@Test
+	void testPacing() throws IOException {
+		_shaper = new TrafficShaper(1, 16);
+		TrafficShaper.Flow flow = _shaper.createFlow(_socket, 20);
+
+		for (int n = 0; n < 5; n++) {
+			flow.send(packet(n));
+		}
+
+		Assertions.assertEquals(0, receive().getData()[0]);
+		long first = System.nanoTime();
+		for (int n = 1; n < 5; n++) {
+			Assertions.assertEquals(n, receive().getData()[0], "Packets keep their order.");
+		}
+		long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - first);
+		Assertions.assertTrue(elapsed >= 4 * 20 - 5, "Packets were not paced: " + elapsed + "ms");
+		Assertions.assertEquals(0, flow.getDroppedCount());
+	}
+
+	@Test
+	void testBurst() throws IOException {
+		_shaper = new TrafficShaper(3, 16);
+		TrafficShaper.Flow flow = _shaper.createFlow(_socket, 1000);
+
+		long start = System.nanoTime();
+		for (int n = 0; n < 3; n++) {
+			flow.send(packet(n));
+		}
+		for (int n = 0; n < 3; n++) {
+			Assertions.assertEquals(n, receive().getData()[0]);
+		}
+		long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		Assertions.assertTrue(elapsed < 500, "Burst was delayed: " + elapsed + "ms");
+	}
+
+	@Test
+	void testOverflow() throws IOException {
+		_shaper = new TrafficShaper(1, 2);
+		TrafficShaper.Flow flow = _shaper.createFlow(_socket, 10);
+
+		// One packet is sent immediately, two are queued, the rest is dropped.
+		for (int n = 0; n < 5; n++) {
+			flow.send(packet(n));
+		}
+		Assertions.assertEquals(2, flow.getDroppedCount());
+
+		for (int n = 0; n < 3; n++) {
+			Assertions.assertEquals(n, receive().getData()[0]);
+		}
+		Assertions.assertThrows(SocketTimeoutException.class, () -> {
+			_receiver.setSoTimeout(100);
+			receive();
+		});
+	}
+
+	@Test
+	void testByteBuffers() throws IOException {
+		_shaper = new TrafficShaper(1, 16);
+		TrafficShaper.Flow flow = _shaper.createFlow(_socket, 10);
+		InetSocketAddress dest = new InetSocketAddress(LOCALHOST.getInetAddress(), _receiver.getLocalPort());
+
+		// Buffers and packets share the queue of the flow.
+		ByteBuffer buffer = ByteBuffer.allocateDirect(100);
+		for (int n = 0; n < 4; n++) {
+			if (n % 2 == 0) {
+				buffer.clear();
+				buffer.put(new byte[] { 9, 9, (byte) n, 1, 2, 3 });
+				buffer.flip();
+				buffer.position(2);
+				flow.send(buffer, dest);
+				Assertions.assertFalse(buffer.hasRemaining());
+			} else {
+				flow.send(packet(n));
+			}
+		}
+
+		for (int n = 0; n < 4; n++) {
+			DatagramPacket received = receive();
+			Assertions.assertEquals(4, received.getLength());
+			Assertions.assertEquals(n, received.getData()[0]);
+			Assertions.assertEquals(3, received.getData()[3]);
+		}
+		Assertions.assertEquals(0, flow.getDroppedCount());
+	}
+
+	private UdpPacket packet(int n) {
+		byte[] data = { (byte) n, 1, 2, 3 };
+		UdpPacket result = new UdpPacket(data, data.length);
+		result.setIpAddress(LOCALHOST);
+		result.setPort(_receiver.getLocalPort());
+		return result;
+	}
+
+	private DatagramPacket receive() throws IOException {
+		DatagramPacket result = new DatagramPacket(new byte[100], 100);
+		_receiver.receive(result);
+		return result;
+	}
+
+}
@@ -13,13 +13,17 @@ module org.mjsip.sip {
 	requires args4j;
 	requires org.slf4j;
 	requires java.desktop;
+	requires java.management;
+	requires jdk.httpserver;
 
 	opens org.mjsip.sip.provider to args4j;
 	opens org.mjsip.pool to args4j;
 
+	exports org.mjsip.capture;
 	exports org.mjsip.media;
 	exports org.mjsip.media.rx;
 	exports org.mjsip.media.tx;
+	exports org.mjsip.metrics;
 	exports org.mjsip.pool;
 	exports org.mjsip.rtp;
 	exports org.mjsip.sdp;
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.capture;
+
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+
+/**
+ * Selection of the packets written by a {@link PacketCapture}.
+ *
+ * <p>
+ * A packet is selected, if its source or destination is one of the configured addresses, and if
+ * its <i>Call-ID</i> is one of the configured call IDs. An empty set of addresses or call IDs
+ * selects all packets. The address check is done when capturing, the call ID check on the writer
+ * thread, so that the transports do not have to scan packets for headers.
+ * </p>
+ */
+public class CaptureFilter {
+
+	/** Filter selecting all packets. */
+	public static final CaptureFilter ALL = new CaptureFilter(Set.of(), Set.of());
+
+	private final Set<InetAddress> _addresses;
+
+	private final Set<String> _callIds;
+
+	/**
+	 * Creates a {@link CaptureFilter}.
+	 *
+	 * @param addresses
+	 *        The source or destination addresses of captured packets, empty for all.
+	 * @param callIds
+	 *        The call IDs of captured packets, empty for all.
+	 */
+	public CaptureFilter(Set<InetAddress> addresses, Set<String> callIds) {
+		_addresses = addresses;
+		_callIds = callIds;
+	}
+
+	/**
+	 * Whether a packet between the given addresses may be captured.
+	 */
+	public boolean matchesAddress(InetAddress source, InetAddress destination) {
+		return _addresses.isEmpty() || _addresses.contains(source) || _addresses.contains(destination);
+	}
+
+	/**
+	 * Whether the given packet is selected.
+	 */
+	public boolean matches(CapturedPacket packet) {
+		if (_callIds.isEmpty()) {
+			return true;
+		}
+		String callId = callId(packet.getData(), 0, packet.getLength());
+		return callId != null && _callIds.contains(callId);
+	}
+
+	/**
+	 * Extracts the value of the <i>Call-ID</i> header from the given raw SIP message.
+	 *
+	 * @return The call ID, or <code>null</code> if the message has no <i>Call-ID</i> header.
+	 */
+	public static String callId(byte[] buf, int off, int len) {
+		int end = off + len;
+		int line = off;
+		while (line < end) {
+			int eol = line;
+			while (eol < end && buf[eol] != '\n') {
+				eol++;
+			}
+			int contentEnd = eol > line && buf[eol - 1] == '\r' ? eol - 1 : eol;
+			if (contentEnd == line) {
+				// End of headers.
+				return null;
+			}
+
+			int value = headerValue(buf, line, contentEnd, "call-id");
+			if (value < 0) {
+				value = headerValue(buf, line, contentEnd, "i");
+			}
+			if (value >= 0) {
+				while (value < contentEnd && isSpace(buf[value])) {
+					value++;
+				}
+				int valueEnd = contentEnd;
+				while (valueEnd > value && isSpace(buf[valueEnd - 1])) {
+					valueEnd--;
+				}
+				return new String(buf, value, valueEnd - value, StandardCharsets.ISO_8859_1);
+			}
+			line = eol + 1;
+		}
+		return null;
+	}
+
+	/**
+	 * The start of the value, if the line is a header with the given lower case name, otherwise
+	 * <code>-1</code>.
+	 */
+	private static int headerValue(byte[] buf, int start, int end, String name) {
+		int length = name.length();
+		if (end - start <= length) {
+			return -1;
+		}
+		for (int n = 0; n < length; n++) {
+			if (Character.toLowerCase((char) buf[start + n]) != name.charAt(n)) {
+				return -1;
+			}
+		}
+		int pos = start + length;
+		while (pos < end && isSpace(buf[pos])) {
+			pos++;
+		}
+		if (pos < end && buf[pos] == ':') {
+			return pos + 1;
+		}
+		return -1;
+	}
+
+	private static boolean isSpace(byte ch) {
+		return ch == ' ' || ch == '\t';
+	}
+
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.capture;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Destination of packets captured by a {@link PacketCapture}.
+ *
+ * <p>
+ * All methods are called from the single writer thread of the {@link PacketCapture}.
+ * </p>
+ */
+public interface CaptureSink extends Closeable {
+
+	/**
+	 * Writes the given packet.
+	 *
+	 * @param packet
+	 *        The packet, which is only valid during the call.
+	 */
+	void write(CapturedPacket packet) throws IOException;
+
+	/**
+	 * Called when no more packets are pending, e.g. to flush buffered output.
+	 */
+	default void flush() throws IOException {
+		// No buffering by default.
+	}
+
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.capture;
+
+import java.net.InetAddress;
+
+/**
+ * A packet taken from the buffer of a {@link PacketCapture}.
+ *
+ * <p>
+ * The writer thread of the capture reuses a single instance for all packets.
+ * </p>
+ */
+public final class CapturedPacket {
+
+	/** Protocol number of UDP. */
+	public static final int UDP = 17;
+
+	/** Protocol number of TCP. */
+	public static final int TCP = 6;
+
+	long _timeMicros;
+
+	int _protocol;
+
+	InetAddress _source;
+
+	int _sourcePort;
+
+	InetAddress _destination;
+
+	int _destinationPort;
+
+	int _sequence;
+
+	byte[] _data;
+
+	int _length;
+
+	int _originalLength;
+
+	/**
+	 * The capture time in microseconds since the epoch.
+	 */
+	public long getTimeMicros() {
+		return _timeMicros;
+	}
+
+	/**
+	 * The transport protocol number, {@link #UDP} or {@link #TCP}.
+	 */
+	public int getProtocol() {
+		return _protocol;
+	}
+
+	/**
+	 * The source address.
+	 */
+	public InetAddress getSource() {
+		return _source;
+	}
+
+	/**
+	 * The source port.
+	 */
+	public int getSourcePort() {
+		return _sourcePort;
+	}
+
+	/**
+	 * The destination address.
+	 */
+	public InetAddress getDestination() {
+		return _destination;
+	}
+
+	/**
+	 * The destination port.
+	 */
+	public int getDestinationPort() {
+		return _destinationPort;
+	}
+
+	/**
+	 * For {@link #TCP}, the stream offset of the first data byte in the direction of the packet.
+	 */
+	public int getSequence() {
+		return _sequence;
+	}
+
+	/**
+	 * The buffer containing the captured data starting at offset <code>0</code>.
+	 */
+	public byte[] getData() {
+		return _data;
+	}
+
+	/**
+	 * The number of bytes captured.
+	 */
+	public int getLength() {
+		return _length;
+	}
+
+	/**
+	 * The number of bytes sent or received, which is larger than {@link #getLength()}, if the
+	 * packet was truncated.
+	 */
+	public int getOriginalLength() {
+		return _originalLength;
+	}
+
+}
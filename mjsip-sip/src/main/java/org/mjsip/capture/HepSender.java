@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.capture;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.Inet4Address;
+import java.net.InetSocketAddress;
+
+/**
+ * {@link CaptureSink} sending packets to a HEP (Homer encapsulation protocol, version 3) collector
+ * over UDP.
+ */
+public class HepSender implements CaptureSink {
+
+	private static final int HEADER_LENGTH = 6;
+
+	private static final int CHUNK_HEADER_LENGTH = 6;
+
+	/** Protocol family chunk value for IPv4. */
+	static final int FAMILY_IPV4 = 2;
+
+	/** Protocol family chunk value for IPv6. */
+	static final int FAMILY_IPV6 = 10;
+
+	/** Protocol type chunk value for SIP. */
+	static final int PROTOCOL_SIP = 1;
+
+	static final int CHUNK_FAMILY = 0x01;
+
+	static final int CHUNK_PROTOCOL = 0x02;
+
+	static final int CHUNK_IPV4_SOURCE = 0x03;
+
+	static final int CHUNK_IPV4_DESTINATION = 0x04;
+
+	static final int CHUNK_IPV6_SOURCE = 0x05;
+
+	static final int CHUNK_IPV6_DESTINATION = 0x06;
+
+	static final int CHUNK_SOURCE_PORT = 0x07;
+
+	static final int CHUNK_DESTINATION_PORT = 0x08;
+
+	static final int CHUNK_SECONDS = 0x09;
+
+	static final int CHUNK_MICROS = 0x0a;
+
+	static final int CHUNK_PROTOCOL_TYPE = 0x0b;
+
+	static final int CHUNK_CAPTURE_ID = 0x0c;
+
+	static final int CHUNK_PAYLOAD = 0x0f;
+
+	private final DatagramSocket _socket;
+
+	private final InetSocketAddress _collector;
+
+	private final int _captureId;
+
+	private final byte[] _buffer = new byte[65507];
+
+	/**
+	 * Creates a {@link HepSender}.
+	 *
+	 * @param collector
+	 *        The address of the HEP collector.
+	 * @param captureId
+	 *        The ID identifying this agent at the collector.
+	 */
+	public HepSender(InetSocketAddress collector, int captureId) throws IOException {
+		_socket = new DatagramSocket();
+		_collector = collector;
+		_captureId = captureId;
+	}
+
+	@Override
+	public void write(CapturedPacket packet) throws IOException {
+		int length = encode(_buffer, packet, _captureId);
+		if (length > 0) {
+			_socket.send(new DatagramPacket(_buffer, length, _collector));
+		}
+	}
+
+	/**
+	 * Encodes the given packet as HEP3 message.
+	 *
+	 * @return The length of the message, or <code>0</code> if the packet does not fit into the
+	 *         buffer.
+	 */
+	static int encode(byte[] buf, CapturedPacket packet, int captureId) {
+		boolean ipv4 = packet.getSource() instanceof Inet4Address
+			&& packet.getDestination() instanceof Inet4Address;
+		int addressLength = ipv4 ? 4 : 16;
+		int length = HEADER_LENGTH + 10 * CHUNK_HEADER_LENGTH + 1 + 1 + 2 * addressLength + 2 + 2 + 4 + 4 + 1 + 4
+				+ CHUNK_HEADER_LENGTH + packet.getLength();
+		if (length > buf.length) {
+			return 0;
+		}
+
+		buf[0] = 'H';
+		buf[1] = 'E';
+		buf[2] = 'P';
+		buf[3] = '3';
+		putShort(buf, 4, length);
+
+		int pos = HEADER_LENGTH;
+		pos = chunkHeader(buf, pos, CHUNK_FAMILY, 1);
+		buf[pos++] = (byte) (ipv4 ? FAMILY_IPV4 : FAMILY_IPV6);
+		pos = chunkHeader(buf, pos, CHUNK_PROTOCOL, 1);
+		buf[pos++] = (byte) packet.getProtocol();
+
+		pos = chunkHeader(buf, pos, ipv4 ? CHUNK_IPV4_SOURCE : CHUNK_IPV6_SOURCE, addressLength);
+		pos = putAddress(buf, pos, packet.getSource().getAddress(), addressLength);
+		pos = chunkHeader(buf, pos, ipv4 ? CHUNK_IPV4_DESTINATION : CHUNK_IPV6_DESTINATION, addressLength);
+		pos = putAddress(buf, pos, packet.getDestination().getAddress(), addressLength);
+
+		pos = chunkHeader(buf, pos, CHUNK_SOURCE_PORT, 2);
+		putShort(buf, pos, packet.getSourcePort());
+		pos += 2;
+		pos = chunkHeader(buf, pos, CHUNK_DESTINATION_PORT, 2);
+		putShort(buf, pos, packet.getDestinationPort());
+		pos += 2;
+
+		long time = packet.getTimeMicros();
+		pos = chunkHeader(buf, pos, CHUNK_SECONDS, 4);
+		putInt(buf, pos, (int) (time / 1000000));
+		pos += 4;
+		pos = chunkHeader(buf, pos, CHUNK_MICROS, 4);
+		putInt(buf, pos, (int) (time % 1000000));
+		pos += 4;
+
+		pos = chunkHeader(buf, pos, CHUNK_PROTOCOL_TYPE, 1);
+		buf[pos++] = PROTOCOL_SIP;
+		pos = chunkHeader(buf, pos, CHUNK_CAPTURE_ID, 4);
+		putInt(buf, pos, captureId);
+		pos += 4;
+
+		pos = chunkHeader(buf, pos, CHUNK_PAYLOAD, packet.getLength());
+		System.arraycopy(packet.getData(), 0, buf, pos, packet.getLength());
+		pos += packet.getLength();
+		return pos;
+	}
+
+	private static int chunkHeader(byte[] buf, int pos, int type, int valueLength) {
+		// Generic chunk vendor.
+		putShort(buf, pos, 0);
+		putShort(buf, pos + 2, type);
+		putShort(buf, pos + 4, CHUNK_HEADER_LENGTH + valueLength);
+		return pos + CHUNK_HEADER_LENGTH;
+	}
+
+	private static int putAddress(byte[] buf, int pos, byte[] address, int length) {
+		if (address.length == length) {
+			System.arraycopy(address, 0, buf, pos, length);
+		} else {
+			// IPv4 address mapped to IPv6.
+			for (int n = 0; n < 10; n++) {
+				buf[pos + n] = 0;
+			}
+			buf[pos + 10] = (byte) 0xFF;
+			buf[pos + 11] = (byte) 0xFF;
+			System.arraycopy(address, 0, buf, pos + 12, 4);
+		}
+		return pos + length;
+	}
+
+	private static void putShort(byte[] buf, int pos, int value) {
+		buf[pos] = (byte) (value >>> 8);
+		buf[pos + 1] = (byte) value;
+	}
+
+	private static void putInt(byte[] buf, int pos, int value) {
+		buf[pos] = (byte) (value >>> 24);
+		buf[pos + 1] = (byte) (value >>> 16);
+		buf[pos + 2] = (byte) (value >>> 8);
+		buf[pos + 3] = (byte) value;
+	}
+
+	@Override
+	public void close() {
+		_socket.close();
+	}
+
+	@Override
+	public String toString() {
+		return "HEP " + _collector;
+	}
+
+}
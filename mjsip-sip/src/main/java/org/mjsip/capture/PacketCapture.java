@@ -0,0 +1,343 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.capture;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.mjsip.metrics.Counter;
+import org.mjsip.metrics.MetricsRegistry;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Capture of packets sent and received by transports, written to {@link CaptureSink}s in the
+ * background.
+ *
+ * <p>
+ * Transports pass the raw bytes of each packet to {@link #capture(int, InetAddress, int,
+ * InetAddress, int, int, byte[], int, int)}, which copies them into a bounded ring buffer
+ * without taking locks. A single writer thread takes packets from the buffer, applies the
+ * {@link CaptureFilter} and passes matching packets to the sinks. If the buffer is full, e.g.
+ * because a sink is slow, packets are dropped and counted instead of blocking the transport.
+ * </p>
+ *
+ * <p>
+ * The buffer consists of a fixed number of slots (multi-producer, single-consumer queue with a
+ * sequence number per slot). The data buffer of a slot grows to the largest packet stored in it,
+ * so that capturing does not allocate once all slots have been used.
+ * </p>
+ */
+public class PacketCapture implements AutoCloseable {
+
+	private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(PacketCapture.class);
+
+	/** Maximum number of bytes captured per packet. */
+	public static final int SNAP_LENGTH = 65535 - 60;
+
+	private static final int INITIAL_SLOT_SIZE = 2048;
+
+	private static final long IDLE_WAIT = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private final int _mask;
+
+	private final AtomicLongArray _sequence;
+
+	private final AtomicLong _tail = new AtomicLong();
+
+	private long _head;
+
+	private final long[] _time;
+
+	private final int[] _protocol;
+
+	private final InetAddress[] _source;
+
+	private final int[] _sourcePort;
+
+	private final InetAddress[] _destination;
+
+	private final int[] _destinationPort;
+
+	private final int[] _streamSequence;
+
+	private final byte[][] _data;
+
+	private final int[] _originalLength;
+
+	private final CaptureFilter _filter;
+
+	private final List<CaptureSink> _sinks;
+
+	private final long _baseMicros;
+
+	private final long _baseNanos;
+
+	private final Counter _captured;
+
+	private final Counter _dropped;
+
+	private final Thread _writer;
+
+	private volatile boolean _stopped;
+
+	/**
+	 * Creates a {@link PacketCapture} and starts its writer thread.
+	 *
+	 * @param capacity
+	 *        The number of packets that can be buffered, rounded up to a power of two.
+	 * @param filter
+	 *        The filter selecting the packets to write.
+	 * @param sinks
+	 *        The sinks to write packets to, closed when the capture is closed.
+	 * @param registry
+	 *        The registry to add capture counters to.
+	 * @param labels
+	 *        The labels of the counters.
+	 */
+	public PacketCapture(int capacity, CaptureFilter filter, List<CaptureSink> sinks, MetricsRegistry registry,
+			String labels) {
+		int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+		_mask = size - 1;
+		_sequence = new AtomicLongArray(size);
+		for (int n = 0; n < size; n++) {
+			_sequence.set(n, n);
+		}
+		_time = new long[size];
+		_protocol = new int[size];
+		_source = new InetAddress[size];
+		_sourcePort = new int[size];
+		_destination = new InetAddress[size];
+		_destinationPort = new int[size];
+		_streamSequence = new int[size];
+		_data = new byte[size][];
+		_originalLength = new int[size];
+
+		_filter = filter;
+		_sinks = sinks;
+
+		_baseMicros = TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+		_baseNanos = System.nanoTime();
+
+		_captured = registry.counter("sip_capture_packets_total", "Packets passed to capture sinks.", labels);
+		_dropped = registry.counter("sip_capture_dropped_total", "Packets not captured due to a full buffer.",
+			labels);
+
+		_writer = new Thread(this::run, "PacketCapture");
+		_writer.setDaemon(true);
+		_writer.start();
+	}
+
+	/**
+	 * Captures a packet.
+	 *
+	 * @param protocol
+	 *        The transport protocol, {@link CapturedPacket#UDP} or {@link CapturedPacket#TCP}.
+	 * @param source
+	 *        The source address.
+	 * @param sourcePort
+	 *        The source port.
+	 * @param destination
+	 *        The destination address.
+	 * @param destinationPort
+	 *        The destination port.
+	 * @param streamSequence
+	 *        For stream transports, the stream offset of the first byte in the direction of the
+	 *        packet.
+	 * @param buf
+	 *        The buffer containing the packet, which is not referenced after the call returns.
+	 * @param off
+	 *        The offset of the packet in the buffer.
+	 * @param len
+	 *        The length of the packet.
+	 * @return Whether the packet was buffered, <code>false</code> if it was dropped.
+	 */
+	public boolean capture(int protocol, InetAddress source, int sourcePort, InetAddress destination,
+			int destinationPort, int streamSequence, byte[] buf, int off, int len) {
+		return capture(protocol, source, sourcePort, destination, destinationPort, streamSequence, buf, off, null,
+			len);
+	}
+
+	/**
+	 * Captures the packet in the remaining bytes of the given buffer.
+	 *
+	 * <p>
+	 * The position of the buffer is not changed.
+	 * </p>
+	 *
+	 * @see #capture(int, InetAddress, int, InetAddress, int, int, byte[], int, int)
+	 */
+	public boolean capture(int protocol, InetAddress source, int sourcePort, InetAddress destination,
+			int destinationPort, int streamSequence, ByteBuffer buffer) {
+		return capture(protocol, source, sourcePort, destination, destinationPort, streamSequence, null, 0, buffer,
+			buffer.remaining());
+	}
+
+	private boolean capture(int protocol, InetAddress source, int sourcePort, InetAddress destination,
+			int destinationPort, int streamSequence, byte[] buf, int off, ByteBuffer buffer, int len) {
+		if (_stopped || source == null || destination == null || !_filter.matchesAddress(source, destination)) {
+			return false;
+		}
+
+		long position = _tail.get();
+		int index;
+		while (true) {
+			index = (int) position & _mask;
+			long difference = _sequence.get(index) - position;
+			if (difference == 0) {
+				if (_tail.compareAndSet(position, position + 1)) {
+					break;
+				}
+				position = _tail.get();
+			} else if (difference < 0) {
+				// Full.
+				_dropped.increment();
+				return false;
+			} else {
+				position = _tail.get();
+			}
+		}
+
+		int length = Math.min(len, SNAP_LENGTH);
+		byte[] data = _data[index];
+		if (data == null || data.length < length) {
+			data = new byte[Math.max(length, INITIAL_SLOT_SIZE)];
+			_data[index] = data;
+		}
+		if (buffer == null) {
+			System.arraycopy(buf, off, data, 0, length);
+		} else {
+			buffer.duplicate().get(data, 0, length);
+		}
+		_time[index] = _baseMicros + (System.nanoTime() - _baseNanos) / 1000;
+		_protocol[index] = protocol;
+		_source[index] = source;
+		_sourcePort[index] = sourcePort;
+		_destination[index] = destination;
+		_destinationPort[index] = destinationPort;
+		_streamSequence[index] = streamSequence;
+		_originalLength[index] = len;
+
+		// Publish.
+		_sequence.set(index, position + 1);
+		return true;
+	}
+
+	private void run() {
+		CapturedPacket packet = new CapturedPacket();
+		boolean pending = false;
+		while (true) {
+			if (poll(packet)) {
+				if (_filter.matches(packet)) {
+					_captured.increment();
+					for (CaptureSink sink : _sinks) {
+						try {
+							sink.write(packet);
+						} catch (IOException | RuntimeException ex) {
+							// A single broken packet or sink must not stop the writer thread.
+							LOG.warn("Writing captured packet to {} failed.", sink, ex);
+						}
+					}
+					pending = true;
+				}
+				release();
+			} else {
+				if (pending) {
+					flushSinks();
+					pending = false;
+				}
+				if (_stopped) {
+					break;
+				}
+				LockSupport.parkNanos(this, IDLE_WAIT);
+			}
+		}
+	}
+
+	/**
+	 * Fills the given packet with the next buffered packet without releasing its slot.
+	 */
+	private boolean poll(CapturedPacket packet) {
+		long position = _head;
+		int index = (int) position & _mask;
+		if (_sequence.get(index) != position + 1) {
+			return false;
+		}
+
+		packet._timeMicros = _time[index];
+		packet._protocol = _protocol[index];
+		packet._source = _source[index];
+		packet._sourcePort = _sourcePort[index];
+		packet._destination = _destination[index];
+		packet._destinationPort = _destinationPort[index];
+		packet._sequence = _streamSequence[index];
+		packet._data = _data[index];
+		packet._length = Math.min(_originalLength[index], SNAP_LENGTH);
+		packet._originalLength = _originalLength[index];
+		return true;
+	}
+
+	/**
+	 * Releases the slot of the last polled packet for reuse by producers.
+	 */
+	private void release() {
+		long position = _head;
+		int index = (int) position & _mask;
+		_source[index] = null;
+		_destination[index] = null;
+		_sequence.set(index, position + _mask + 1);
+		_head = position + 1;
+	}
+
+	private void flushSinks() {
+		for (CaptureSink sink : _sinks) {
+			try {
+				sink.flush();
+			} catch (IOException | RuntimeException ex) {
+				LOG.warn("Flushing {} failed.", sink, ex);
+			}
+		}
+	}
+
+	/**
+	 * The number of packets written to the sinks.
+	 */
+	public long getCaptured() {
+		return _captured.get();
+	}
+
+	/**
+	 * The number of packets dropped due to a full buffer.
+	 */
+	public long getDropped() {
+		return _dropped.get();
+	}
+
+	/**
+	 * Stops capturing, writes all buffered packets and closes the sinks.
+	 */
+	@Override
+	public void close() {
+		_stopped = true;
+		LockSupport.unpark(_writer);
+		try {
+			_writer.join(TimeUnit.SECONDS.toMillis(5));
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		for (CaptureSink sink : _sinks) {
+			try {
+				sink.close();
+			} catch (IOException ex) {
+				LOG.warn("Closing {} failed.", sink, ex);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.capture;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link CaptureSink} writing packets to pcap files that can be analyzed with tools like
+ * Wireshark.
+ *
+ * <p>
+ * Since packets are captured above the socket layer, IP and UDP or TCP headers are synthesized
+ * from the packet addresses (link type <i>raw IP</i>). Packets between an IPv4 and an IPv6
+ * address are written as IPv6 packets with the IPv4 address mapped to IPv6.
+ * </p>
+ *
+ * <p>
+ * If a maximum file size is given, the output is split into files named
+ * <code>&lt;name&gt;-&lt;n&gt;.pcap</code>. When the configured number of files is exceeded,
+ * the oldest file is deleted.
+ * </p>
+ */
+public class PcapWriter implements CaptureSink {
+
+	private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(PcapWriter.class);
+
+	/** Magic number of pcap files with microsecond timestamps. */
+	static final int MAGIC = 0xa1b2c3d4;
+
+	/** Link type of packets starting with the IP header. */
+	static final int LINKTYPE_RAW = 101;
+
+	private static final int SNAP_LENGTH = 65535;
+
+	private static final int FILE_HEADER_LENGTH = 24;
+
+	private static final int RECORD_HEADER_LENGTH = 16;
+
+	private static final int IPV4_HEADER_LENGTH = 20;
+
+	private static final int IPV6_HEADER_LENGTH = 40;
+
+	private static final int UDP_HEADER_LENGTH = 8;
+
+	private static final int TCP_HEADER_LENGTH = 20;
+
+	private static final int TCP_PSH_ACK = 0x18;
+
+	private final String _base;
+
+	private final long _maxSize;
+
+	private final int _maxFiles;
+
+	private final Deque<File> _files = new ArrayDeque<>();
+
+	private final byte[] _header = new byte[RECORD_HEADER_LENGTH + IPV6_HEADER_LENGTH + TCP_HEADER_LENGTH];
+
+	private int _fileNumber;
+
+	private OutputStream _out;
+
+	private long _size;
+
+	/**
+	 * Creates a {@link PcapWriter}.
+	 *
+	 * @param fileName
+	 *        The name of the output file.
+	 * @param maxSize
+	 *        The size in bytes after which a new file is started, <code>0</code> for a single
+	 *        file.
+	 * @param maxFiles
+	 *        The maximum number of files to keep, <code>0</code> for no limit.
+	 */
+	public PcapWriter(String fileName, long maxSize, int maxFiles) throws IOException {
+		_base = fileName.endsWith(".pcap") ? fileName.substring(0, fileName.length() - ".pcap".length())
+				: fileName;
+		_maxSize = maxSize;
+		_maxFiles = maxFiles;
+		open();
+	}
+
+	private void open() throws IOException {
+		File file;
+		if (_maxSize > 0) {
+			file = new File(_base + "-" + (++_fileNumber) + ".pcap");
+			_files.addLast(file);
+			while (_maxFiles > 0 && _files.size() > _maxFiles) {
+				File oldest = _files.removeFirst();
+				if (!oldest.delete()) {
+					LOG.warn("Cannot delete capture file: {}", oldest);
+				}
+			}
+		} else {
+			file = new File(_base + ".pcap");
+		}
+
+		_out = new BufferedOutputStream(new FileOutputStream(file), 64 * 1024);
+
+		byte[] header = new byte[FILE_HEADER_LENGTH];
+		putInt(header, 0, MAGIC);
+		putShort(header, 4, 2);
+		putShort(header, 6, 4);
+		// Time zone offset and timestamp accuracy are zero.
+		putInt(header, 16, SNAP_LENGTH);
+		putInt(header, 20, LINKTYPE_RAW);
+		_out.write(header);
+		_size = header.length;
+	}
+
+	@Override
+	public void write(CapturedPacket packet) throws IOException {
+		if (_maxSize > 0 && _size >= _maxSize) {
+			_out.close();
+			open();
+		}
+
+		int headerLength = writeHeaders(_header, packet);
+		_out.write(_header, 0, headerLength);
+		_out.write(packet.getData(), 0, packet.getLength());
+		_size += headerLength + packet.getLength();
+	}
+
+	/**
+	 * Writes the pcap record header and the synthetic IP and transport headers of the given packet
+	 * to the given buffer.
+	 *
+	 * @return The number of bytes written.
+	 */
+	static int writeHeaders(byte[] buf, CapturedPacket packet) {
+		boolean tcp = packet.getProtocol() == CapturedPacket.TCP;
+		int transportLength = tcp ? TCP_HEADER_LENGTH : UDP_HEADER_LENGTH;
+
+		InetAddress source = packet.getSource();
+		InetAddress destination = packet.getDestination();
+		boolean ipv4 = source instanceof Inet4Address && destination instanceof Inet4Address;
+		int ipLength = ipv4 ? IPV4_HEADER_LENGTH : IPV6_HEADER_LENGTH;
+
+		int headersLength = ipLength + transportLength;
+		int originalLength = Math.min(packet.getOriginalLength(), SNAP_LENGTH - headersLength);
+
+		long time = packet.getTimeMicros();
+		putInt(buf, 0, (int) (time / 1000000));
+		putInt(buf, 4, (int) (time % 1000000));
+		putInt(buf, 8, headersLength + packet.getLength());
+		putInt(buf, 12, headersLength + originalLength);
+
+		int pos = RECORD_HEADER_LENGTH;
+		if (ipv4) {
+			buf[pos] = 0x45;
+			buf[pos + 1] = 0;
+			putShort(buf, pos + 2, headersLength + originalLength);
+			putShort(buf, pos + 4, 0);
+			// Don't fragment.
+			putShort(buf, pos + 6, 0x4000);
+			buf[pos + 8] = 64;
+			buf[pos + 9] = (byte) packet.getProtocol();
+			putShort(buf, pos + 10, 0);
+			System.arraycopy(source.getAddress(), 0, buf, pos + 12, 4);
+			System.arraycopy(destination.getAddress(), 0, buf, pos + 16, 4);
+			putShort(buf, pos + 10, checksum(buf, pos, IPV4_HEADER_LENGTH));
+		} else {
+			putInt(buf, pos, 0x60000000);
+			putShort(buf, pos + 4, transportLength + originalLength);
+			buf[pos + 6] = (byte) packet.getProtocol();
+			buf[pos + 7] = 64;
+			putIPv6(buf, pos + 8, source);
+			putIPv6(buf, pos + 24, destination);
+		}
+		pos += ipLength;
+
+		putShort(buf, pos, packet.getSourcePort());
+		putShort(buf, pos + 2, packet.getDestinationPort());
+		if (tcp) {
+			putInt(buf, pos + 4, packet.getSequence());
+			putInt(buf, pos + 8, 0);
+			buf[pos + 12] = (TCP_HEADER_LENGTH / 4) << 4;
+			buf[pos + 13] = TCP_PSH_ACK;
+			putShort(buf, pos + 14, 0xFFFF);
+			putShort(buf, pos + 16, 0);
+			putShort(buf, pos + 18, 0);
+		} else {
+			putShort(buf, pos + 4, UDP_HEADER_LENGTH + originalLength);
+			// No checksum.
+			putShort(buf, pos + 6, 0);
+		}
+		pos += transportLength;
+		return pos;
+	}
+
+	private static void putIPv6(byte[] buf, int pos, InetAddress address) {
+		byte[] bytes = address.getAddress();
+		if (bytes.length == 4) {
+			for (int n = 0; n < 10; n++) {
+				buf[pos + n] = 0;
+			}
+			buf[pos + 10] = (byte) 0xFF;
+			buf[pos + 11] = (byte) 0xFF;
+			System.arraycopy(bytes, 0, buf, pos + 12, 4);
+		} else {
+			System.arraycopy(bytes, 0, buf, pos, 16);
+		}
+	}
+
+	/**
+	 * The Internet checksum of the given header.
+	 */
+	static int checksum(byte[] buf, int off, int len) {
+		int sum = 0;
+		for (int n = 0; n < len; n += 2) {
+			sum += ((buf[off + n] & 0xFF) << 8) | (buf[off + n + 1] & 0xFF);
+		}
+		while ((sum >>> 16) != 0) {
+			sum = (sum & 0xFFFF) + (sum >>> 16);
+		}
+		return ~sum & 0xFFFF;
+	}
+
+	private static void putShort(byte[] buf, int pos, int value) {
+		buf[pos] = (byte) (value >>> 8);
+		buf[pos + 1] = (byte) value;
+	}
+
+	private static void putInt(byte[] buf, int pos, int value) {
+		buf[pos] = (byte) (value >>> 24);
+		buf[pos + 1] = (byte) (value >>> 16);
+		buf[pos + 2] = (byte) (value >>> 8);
+		buf[pos + 3] = (byte) value;
+	}
+
+	@Override
+	public void flush() throws IOException {
+		_out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		_out.close();
+	}
+
+	@Override
+	public String toString() {
+		return "pcap " + _base;
+	}
+
+}
@@ -26,8 +26,11 @@ import java.io.IOException;
 import java.io.OutputStream;
 
 import org.mjsip.media.rx.RtpReceiverOptions;
+import org.mjsip.metrics.Counter;
+import org.mjsip.metrics.MetricsRegistry;
 import org.mjsip.rtp.RtpPacket;
 import org.mjsip.rtp.RtpPayloadFormat;
+import org.mjsip.rtp.RtpReceptionStatistics;
 import org.mjsip.rtp.RtpSocket;
 import org.slf4j.LoggerFactory;
 import org.zoolu.net.SocketAddress;
@@ -63,6 +66,17 @@ public class RtpStreamReceiver implements Runnable, RtpControlledReceiver {
 	/** Long value 2^32 */
 	private static final long TWO_32=(1<<32);
 
+	/** Default RTP timestamp clock rate, if not set explicitly */
+	public static final int DEFAULT_CLOCK_RATE=8000;
+
+	/** RTP packets received by all streams */
+	private static final Counter RECEIVED_PACKETS=MetricsRegistry.global().counter("rtp_packets_received_total",
+			"RTP packets received by all streams.", "");
+
+	/** RTP packet octets received by all streams */
+	private static final Counter RECEIVED_BYTES=MetricsRegistry.global().counter("rtp_bytes_received_total",
+			"RTP packet bytes received by all streams.", "");
+
 	/** Listener */
 	private RtpStreamReceiverListener listener = null;
 
@@ -99,6 +113,9 @@ public class RtpStreamReceiver implements Runnable, RtpControlledReceiver {
 	/** Additional RTP payload decoder */
 	private Encoder additional_decoder;
 
+	/** Reception statistics */
+	private final RtpReceptionStatistics statistics=new RtpReceptionStatistics(DEFAULT_CLOCK_RATE);
+
 	/**
 	 * Constructs a RtpStreamReceiver.
 	 * 
@@ -137,44 +154,49 @@ public class RtpStreamReceiver implements Runnable, RtpControlledReceiver {
 		else return 0;
 	}
 
+	/** Sets the RTP timestamp clock rate of the received stream, used for computing the interarrival jitter. */
+	public void setClockRate(int clock_rate) {
+		statistics.setClockRate(clock_rate);
+	}
+
+	/** Gets the reception statistics of the received stream. */
+	public RtpReceptionStatistics getStatistics() {
+		return statistics;
+	}
+
 	/** Gets SSRC.
 	  * @return he synchronization source (SSRC) identifier of the received RTP packets */
 	@Override
 	public long getSSRC() {
-		// to be implemented..
-		return 0;
+		return statistics.getSsrc();
 	}
 
 	/** Gets fraction lost.
 	  * @return the fraction of RTP data packets lost since the previous SR or RR packet was sent; the fraction loss is defined as the number of packets lost divided by the number of packets expected; it is represented by the integer part after multiplying the loss fraction by 256 (8 bit) */
 	@Override
 	public int getFractionLost() {
-		// to be implemented..
-		return 0;
+		return statistics.getFractionLost();
 	}
 
 	/** Gets cumulative number of packets lost.
 	  * @return cumulative number of packets lost that is the total number of RTP data packets that have been lost since the beginning of reception; it is the number of packets expected less the number of packets actually received, where the number of packets received includes any which are late or duplicates */
 	@Override
 	public long getCumulativePacketLost() {
-		// to be implemented..
-		return 0;
+		return statistics.getCumulativeLost();
 	}
 
 	/** Gets the extended highest sequence number received.
 	  * @return the extended highest sequence number received (32bit); the low 16 bits contain the highest sequence number received in an RTP data packet, and the most significant 16 bits extend that sequence number with the corresponding count of sequence number cycles */
 	@Override
 	public long getHighestSqnReceived() {
-		// to be implemented..
-		return 0;
+		return statistics.getExtendedHighestSeq();
 	}
 
 	/** Gets the interarrival jitter.
 	  * @return the interarrival jitter, that is an estimate of the statistical variance of the RTP data packet interarrival time, measured in timestamp units and expressed as an unsigned integer */
 	@Override
 	public long getInterarrivalJitter() {
-		// to be implemented..
-		return 0;
+		return statistics.getJitter();
 	}
 
 	/** Gets last SR timestamp (LSR).
@@ -222,6 +244,9 @@ public class RtpStreamReceiver implements Runnable, RtpControlledReceiver {
 
 		running=true;    
 
+		String metric_labels=MetricsRegistry.labels("local_port",Integer.toString(getLocalPort()));
+		registerMetrics(metric_labels);
+
 		if (DEBUG)
 			LOG.debug("RTP: localhost:{} <-- remotesocket", rtp_socket.getUdpSocket().getLocalPort());
 		if (DEBUG)
@@ -242,6 +267,10 @@ public class RtpStreamReceiver implements Runnable, RtpControlledReceiver {
 				try {
 					// read a block of data from the rtp socket
 					rtp_socket.receive(rtp_packet);
+					statistics.update(rtp_packet.getSsrc(),rtp_packet.getSequenceNumber(),rtp_packet.getTimestamp(),System.nanoTime());
+					statistics.octets(rtp_packet.getPayloadLength());
+					RECEIVED_PACKETS.increment();
+					RECEIVED_BYTES.add(rtp_packet.getPacketLength());
 					// drop the first packets in order to reduce the effect of an eventual initial packet burst
 					if (early_drop_to>0 && System.currentTimeMillis()<early_drop_to) continue;
 					else early_drop_to=-1;
@@ -324,6 +353,8 @@ public class RtpStreamReceiver implements Runnable, RtpControlledReceiver {
 				LOG.debug("Exception.", e);
 		}
 		
+		MetricsRegistry.global().removeAll(metric_labels);
+
 		// close RtpSocket
 		rtp_socket.close();
 		
@@ -334,6 +365,14 @@ public class RtpStreamReceiver implements Runnable, RtpControlledReceiver {
 		onRtpStreamReceiverTerminated(error);
 	}
 
+	/** Adds the reception statistics of this stream to the global metrics. */
+	private void registerMetrics(String labels) {
+		MetricsRegistry metrics=MetricsRegistry.global();
+		metrics.register("rtp_stream_packets_received","RTP packets received by a stream.",labels,statistics::getReceived);
+		metrics.register("rtp_stream_packets_lost","Cumulative RTP packets lost by a stream.",labels,statistics::getCumulativeLost);
+		metrics.register("rtp_stream_jitter_microseconds","Interarrival jitter of a stream.",labels,statistics::getJitterMicros);
+	}
+
 	/**
 	 * Callback invoked when stream terminates.
 	 *
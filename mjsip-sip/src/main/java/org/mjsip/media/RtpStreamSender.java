@@ -25,6 +25,8 @@ package org.mjsip.media;
 import java.io.InputStream;
 
 import org.mjsip.media.tx.RtpSenderOptions;
+import org.mjsip.metrics.Counter;
+import org.mjsip.metrics.MetricsRegistry;
 import org.mjsip.rtp.RtpControl;
 import org.mjsip.rtp.RtpPacket;
 import org.mjsip.rtp.RtpPayloadFormat;
@@ -65,6 +67,14 @@ public class RtpStreamSender implements Runnable, RtpControlledSender {
 	/** Whether working in debug mode. */
 	public static final boolean DEBUG = LOG.isDebugEnabled();
 
+	/** RTP packets sent by all streams */
+	private static final Counter SENT_PACKETS=MetricsRegistry.global().counter("rtp_packets_sent_total",
+			"RTP packets sent by all streams.", "");
+
+	/** RTP packet octets sent by all streams */
+	private static final Counter SENT_BYTES=MetricsRegistry.global().counter("rtp_bytes_sent_total",
+			"RTP packet bytes sent by all streams.", "");
+
 	// DEBUG DROP RATE
 	/** Mean interval between two dropping periods (in mean number of packets) */
 	//public static int DEBUG_DROP_RATE=500; // drop interval every 10s 
@@ -342,6 +352,8 @@ public class RtpStreamSender implements Runnable, RtpControlledSender {
 					//rtp_socket.send(rtp_packet);
 					if (debug_drop_count==0) {
 						rtp_socket.send(rtp_packet);
+						SENT_PACKETS.increment();
+						SENT_BYTES.add(rtp_packet.getPacketLength());
 						if (DEBUG_DROP_RATE>0 && Random.nextInt(DEBUG_DROP_RATE)==0) debug_drop_count=DEBUG_DROP_TIME;
 					}
 					else debug_drop_count--;
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.media.conference;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.mjsip.media.AudioStreamer;
+import org.mjsip.time.Scheduler;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Conference media engine mixing the audio of many {@link ConferenceRoom}s.
+ *
+ * <p>
+ * In contrast to an {@link AudioStreamer} that connects a single local source and sink to one
+ * remote party, the bridge connects all participants of a room with each other. All rooms are
+ * mixed from a single periodic task on a shared {@link Scheduler}, so that the number of threads
+ * does not grow with the number of rooms.
+ * </p>
+ */
+public class ConferenceBridge {
+
+	private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(ConferenceBridge.class);
+
+	private final Scheduler _scheduler;
+
+	private final int _sampleRate;
+
+	private final int _frameTime;
+
+	private volatile ConferenceRoom[] _rooms = new ConferenceRoom[0];
+
+	private ScheduledFuture<?> _ticker;
+
+	/**
+	 * Creates a {@link ConferenceBridge} with 8 kHz sample rate and 20 ms frames.
+	 */
+	public ConferenceBridge(Scheduler scheduler) {
+		this(scheduler, AudioStreamer.DEFAULT_SAMPLE_RATE, AudioStreamer.DEFAULT_PACKET_TIME);
+	}
+
+	/**
+	 * Creates a {@link ConferenceBridge}.
+	 *
+	 * @param scheduler
+	 *        The scheduler to run the mixer on.
+	 * @param sampleRate
+	 *        The sample rate of all participants.
+	 * @param frameTime
+	 *        The time in milliseconds mixed in each tick.
+	 */
+	public ConferenceBridge(Scheduler scheduler, int sampleRate, int frameTime) {
+		_scheduler = scheduler;
+		_sampleRate = sampleRate;
+		_frameTime = frameTime;
+	}
+
+	/**
+	 * Starts mixing.
+	 */
+	public synchronized void start() {
+		if (_ticker != null) {
+			return;
+		}
+		_ticker = _scheduler.scheduler().scheduleAtFixedRate(this::tick, _frameTime, _frameTime,
+				TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stops mixing and closes all rooms.
+	 */
+	public synchronized void halt() {
+		if (_ticker != null) {
+			_ticker.cancel(false);
+			_ticker = null;
+		}
+		for (ConferenceRoom room : _rooms) {
+			room.close();
+		}
+		_rooms = new ConferenceRoom[0];
+	}
+
+	/**
+	 * Creates a new room.
+	 */
+	public synchronized ConferenceRoom createRoom(String name) {
+		ConferenceRoom room = new ConferenceRoom(name, _sampleRate, _frameTime);
+		ConferenceRoom[] before = _rooms;
+		ConferenceRoom[] rooms = Arrays.copyOf(before, before.length + 1);
+		rooms[before.length] = room;
+		_rooms = rooms;
+		return room;
+	}
+
+	/**
+	 * Looks up the room with the given name.
+	 *
+	 * @return The room, or <code>null</code> if no such room exists.
+	 */
+	public ConferenceRoom getRoom(String name) {
+		for (ConferenceRoom room : _rooms) {
+			if (room.getName().equals(name)) {
+				return room;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * All current rooms.
+	 */
+	public List<ConferenceRoom> getRooms() {
+		return Arrays.asList(_rooms.clone());
+	}
+
+	/**
+	 * Removes the given room and all its participants.
+	 */
+	public synchronized void removeRoom(ConferenceRoom room) {
+		List<ConferenceRoom> rooms = new ArrayList<>(Arrays.asList(_rooms));
+		if (rooms.remove(room)) {
+			_rooms = rooms.toArray(new ConferenceRoom[rooms.size()]);
+			room.close();
+		}
+	}
+
+	/**
+	 * Mixes one frame in all rooms.
+	 */
+	void tick() {
+		for (ConferenceRoom room : _rooms) {
+			try {
+				room.tick();
+			} catch (RuntimeException ex) {
+				LOG.error("Mixing conference {} failed.", room, ex);
+			}
+		}
+	}
+
+}
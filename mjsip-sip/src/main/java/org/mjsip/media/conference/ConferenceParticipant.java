@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.media.conference;
+
+import java.io.IOException;
+
+/**
+ * Participant in a {@link ConferenceRoom}.
+ *
+ * <p>
+ * A participant buffers decoded samples received from its remote party until the room's mixer
+ * picks them up in the next tick. The mixed signal is passed back through
+ * {@link #sendFrame(byte[], int, int)}.
+ * </p>
+ *
+ * <p>
+ * All buffers are allocated when the participant is created, no allocation happens while
+ * receiving or mixing.
+ * </p>
+ */
+public abstract class ConferenceParticipant {
+
+	/**
+	 * Number of frames buffered before samples are dropped.
+	 */
+	public static final int JITTER_FRAMES = 8;
+
+	private final String _id;
+
+	private final FrameCodec _codec;
+
+	/**
+	 * Ring buffer of received but not yet mixed samples.
+	 */
+	private short[] _jitter;
+
+	/**
+	 * Position in {@link #_jitter} where to write the next sample.
+	 */
+	private int _in;
+
+	/**
+	 * Number of samples in {@link #_jitter}.
+	 */
+	private int _available;
+
+	/**
+	 * Temporary buffer for decoding a single RTP payload.
+	 */
+	private short[] _decoded;
+
+	/**
+	 * The samples of the current tick, valid if {@link #_active}.
+	 */
+	short[] _frame;
+
+	/**
+	 * Whether the participant contributed samples in the current tick.
+	 */
+	boolean _active;
+
+	/**
+	 * Buffer for the participant's individual (N-1) mix.
+	 */
+	byte[] _payload;
+
+	private long _droppedSamples;
+
+	private long _missingFrames;
+
+	/**
+	 * Creates a {@link ConferenceParticipant}.
+	 *
+	 * @param id
+	 *        Identifier of the participant for logging.
+	 * @param codec
+	 *        The codec used by the remote party.
+	 */
+	protected ConferenceParticipant(String id, FrameCodec codec) {
+		_id = id;
+		_codec = codec;
+	}
+
+	/**
+	 * Allocates buffers for the given frame size.
+	 */
+	final void init(int frameSize, int maxPayloadSamples) {
+		_jitter = new short[JITTER_FRAMES * frameSize];
+		_decoded = new short[maxPayloadSamples];
+		_frame = new short[frameSize];
+		_payload = new byte[_codec.getPayloadSize(frameSize)];
+		_in = 0;
+		_available = 0;
+	}
+
+	/**
+	 * Identifier of this participant.
+	 */
+	public String getId() {
+		return _id;
+	}
+
+	/**
+	 * The codec of the remote party.
+	 */
+	public FrameCodec getCodec() {
+		return _codec;
+	}
+
+	/**
+	 * Number of received samples dropped due to jitter buffer overflow.
+	 */
+	public synchronized long getDroppedSamples() {
+		return _droppedSamples;
+	}
+
+	/**
+	 * Number of ticks in which no complete frame was available from this participant.
+	 */
+	public synchronized long getMissingFrames() {
+		return _missingFrames;
+	}
+
+	/**
+	 * Starts receiving media.
+	 */
+	protected abstract void start();
+
+	/**
+	 * Stops receiving media and releases resources.
+	 */
+	protected abstract void halt();
+
+	/**
+	 * Passes an encoded frame of the mixed signal to the remote party.
+	 *
+	 * @param payload
+	 *        Buffer with the encoded payload. The buffer may be reused after the call returns.
+	 * @param length
+	 *        The length of the payload.
+	 * @param samples
+	 *        The number of samples encoded in the payload.
+	 */
+	protected abstract void sendFrame(byte[] payload, int length, int samples) throws IOException;
+
+	/**
+	 * Buffers an encoded payload received from the remote party.
+	 *
+	 * @param buf
+	 *        The buffer containing the payload.
+	 * @param off
+	 *        The offset of the payload.
+	 * @param len
+	 *        The length of the payload.
+	 */
+	protected final void onPayload(byte[] buf, int off, int len) {
+		short[] decoded = _decoded;
+		if (decoded == null) {
+			// Not yet added to a room.
+			return;
+		}
+		int maxLen = _codec.getPayloadSize(decoded.length);
+		int cnt = _codec.decode(buf, off, Math.min(len, maxLen), decoded, 0);
+
+		synchronized (this) {
+			short[] jitter = _jitter;
+			int size = jitter.length;
+			int in = _in;
+			for (int n = 0; n < cnt; n++) {
+				jitter[in++] = decoded[n];
+				if (in == size) {
+					in = 0;
+				}
+			}
+			_in = in;
+
+			int available = _available + cnt;
+			if (available > size) {
+				_droppedSamples += available - size;
+				available = size;
+			}
+			_available = available;
+		}
+	}
+
+	/**
+	 * Moves the next frame from the jitter buffer to {@link #_frame}.
+	 *
+	 * @return Whether a complete frame was available.
+	 */
+	final synchronized boolean readFrame() {
+		short[] frame = _frame;
+		int frameSize = frame.length;
+		if (_available < frameSize) {
+			_missingFrames++;
+			return false;
+		}
+
+		short[] jitter = _jitter;
+		int size = jitter.length;
+		int out = _in - _available;
+		if (out < 0) {
+			out += size;
+		}
+		int first = Math.min(frameSize, size - out);
+		System.arraycopy(jitter, out, frame, 0, first);
+		if (first < frameSize) {
+			System.arraycopy(jitter, 0, frame, first, frameSize - first);
+		}
+		_available -= frameSize;
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return _id + " (" + _codec + ")";
+	}
+
+}
@@ -0,0 +1,322 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.media.conference;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.slf4j.LoggerFactory;
+
+/**
+ * Room of a {@link ConferenceBridge} mixing the audio of all its participants.
+ *
+ * <p>
+ * In each tick, one frame is taken from every participant. The frames are summed up and each
+ * participant receives the sum of all other participants (N-minus-one mix). Participants that did
+ * not contribute to the current frame receive the complete mix, which is encoded only once per
+ * distinct codec.
+ * </p>
+ *
+ * <p>
+ * Mixing works on pre-allocated primitive buffers and does not allocate. Adding or removing
+ * participants replaces an immutable snapshot of the room members that the mixer picks up in the
+ * next tick.
+ * </p>
+ */
+public class ConferenceRoom {
+
+	private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(ConferenceRoom.class);
+
+	/**
+	 * Maximum number of samples decoded from a single received packet.
+	 */
+	public static final int MAX_PAYLOAD_SAMPLES = 8000;
+
+	private final String _name;
+
+	private final int _frameSize;
+
+	private final int _frameTime;
+
+	/**
+	 * Sum of all active participants' samples in the current tick.
+	 */
+	private final int[] _mix;
+
+	/**
+	 * Mixed samples clipped to 16 bit.
+	 */
+	private final short[] _out;
+
+	private volatile Members _members = new Members(new ConferenceParticipant[0], new int[0], new CodecGroup[0]);
+
+	private volatile long _ticks;
+
+	private volatile long _cpuNanos;
+
+	private volatile long _maxTickNanos;
+
+	/**
+	 * Creates a {@link ConferenceRoom}.
+	 *
+	 * @param name
+	 *        The name of the room.
+	 * @param sampleRate
+	 *        The sample rate of all participants.
+	 * @param frameTime
+	 *        The time in milliseconds mixed in each tick.
+	 */
+	public ConferenceRoom(String name, int sampleRate, int frameTime) {
+		_name = name;
+		_frameTime = frameTime;
+		_frameSize = sampleRate * frameTime / 1000;
+		_mix = new int[_frameSize];
+		_out = new short[_frameSize];
+	}
+
+	/**
+	 * The name of this room.
+	 */
+	public String getName() {
+		return _name;
+	}
+
+	/**
+	 * The number of samples mixed per tick.
+	 */
+	public int getFrameSize() {
+		return _frameSize;
+	}
+
+	/**
+	 * The current participants.
+	 */
+	public List<ConferenceParticipant> getParticipants() {
+		return Arrays.asList(_members._participants.clone());
+	}
+
+	/**
+	 * Adds a new participant and starts receiving its media.
+	 */
+	public synchronized void addParticipant(ConferenceParticipant participant) {
+		participant.init(_frameSize, MAX_PAYLOAD_SAMPLES);
+
+		ConferenceParticipant[] before = _members._participants;
+		ConferenceParticipant[] participants = Arrays.copyOf(before, before.length + 1);
+		participants[before.length] = participant;
+		_members = createMembers(participants);
+
+		participant.start();
+		LOG.info("Participant {} joined conference {}.", participant, _name);
+	}
+
+	/**
+	 * Removes the given participant and stops receiving its media.
+	 *
+	 * @return Whether the participant was a member of this room.
+	 */
+	public synchronized boolean removeParticipant(ConferenceParticipant participant) {
+		ConferenceParticipant[] before = _members._participants;
+		List<ConferenceParticipant> participants = new ArrayList<>(Arrays.asList(before));
+		if (!participants.remove(participant)) {
+			return false;
+		}
+		_members = createMembers(participants.toArray(new ConferenceParticipant[participants.size()]));
+
+		participant.halt();
+		LOG.info("Participant {} left conference {}.", participant, _name);
+		return true;
+	}
+
+	/**
+	 * Removes all participants.
+	 */
+	public synchronized void close() {
+		ConferenceParticipant[] participants = _members._participants;
+		_members = createMembers(new ConferenceParticipant[0]);
+		for (ConferenceParticipant participant : participants) {
+			participant.halt();
+		}
+	}
+
+	private Members createMembers(ConferenceParticipant[] participants) {
+		List<CodecGroup> groups = new ArrayList<>();
+		int[] groupIndex = new int[participants.length];
+		for (int p = 0; p < participants.length; p++) {
+			FrameCodec codec = participants[p].getCodec();
+			int index = 0;
+			for (int size = groups.size(); index < size; index++) {
+				if (groups.get(index)._codec == codec) {
+					break;
+				}
+			}
+			if (index == groups.size()) {
+				groups.add(new CodecGroup(codec, _frameSize));
+			}
+			groupIndex[p] = index;
+		}
+		return new Members(participants, groupIndex, groups.toArray(new CodecGroup[groups.size()]));
+	}
+
+	/**
+	 * Mixes and sends one frame.
+	 *
+	 * <p>
+	 * Must only be called from a single thread at a time.
+	 * </p>
+	 */
+	public void tick() {
+		long start = System.nanoTime();
+
+		Members members = _members;
+		ConferenceParticipant[] participants = members._participants;
+		int[] groupIndex = members._groupIndex;
+		CodecGroup[] groups = members._groups;
+		int frameSize = _frameSize;
+		int[] mix = _mix;
+		short[] out = _out;
+
+		Arrays.fill(mix, 0);
+		for (ConferenceParticipant participant : participants) {
+			boolean active = participant.readFrame();
+			participant._active = active;
+			if (active) {
+				short[] frame = participant._frame;
+				for (int n = 0; n < frameSize; n++) {
+					mix[n] += frame[n];
+				}
+			}
+		}
+
+		for (CodecGroup group : groups) {
+			group._encoded = false;
+		}
+
+		for (int p = 0; p < participants.length; p++) {
+			ConferenceParticipant participant = participants[p];
+			FrameCodec codec = participant.getCodec();
+			try {
+				if (participant._active) {
+					// Individual mix without the participant's own contribution.
+					short[] frame = participant._frame;
+					for (int n = 0; n < frameSize; n++) {
+						out[n] = clip(mix[n] - frame[n]);
+					}
+					byte[] payload = participant._payload;
+					int length = codec.encode(out, 0, frameSize, payload, 0);
+					participant.sendFrame(payload, length, frameSize);
+				} else {
+					// Shared mix of all active participants.
+					CodecGroup group = groups[groupIndex[p]];
+					if (!group._encoded) {
+						for (int n = 0; n < frameSize; n++) {
+							out[n] = clip(mix[n]);
+						}
+						group._length = codec.encode(out, 0, frameSize, group._payload, 0);
+						group._encoded = true;
+					}
+					participant.sendFrame(group._payload, group._length, frameSize);
+				}
+			} catch (IOException ex) {
+				LOG.warn("Sending to participant {} in conference {} failed.", participant, _name, ex);
+			}
+		}
+
+		long elapsed = System.nanoTime() - start;
+		_ticks++;
+		_cpuNanos += elapsed;
+		if (elapsed > _maxTickNanos) {
+			_maxTickNanos = elapsed;
+		}
+	}
+
+	private static short clip(int value) {
+		if (value > Short.MAX_VALUE) {
+			return Short.MAX_VALUE;
+		}
+		if (value < Short.MIN_VALUE) {
+			return Short.MIN_VALUE;
+		}
+		return (short) value;
+	}
+
+	/**
+	 * Number of frames mixed so far.
+	 */
+	public long getTickCount() {
+		return _ticks;
+	}
+
+	/**
+	 * Total CPU time in nanoseconds spent in mixing this room.
+	 */
+	public long getCpuNanos() {
+		return _cpuNanos;
+	}
+
+	/**
+	 * The maximum time in nanoseconds a single tick took.
+	 */
+	public long getMaxTickNanos() {
+		return _maxTickNanos;
+	}
+
+	/**
+	 * The fraction of real time spent in mixing this room.
+	 *
+	 * <p>
+	 * A value of <code>1.0</code> means that mixing this room takes as much time as the frame time.
+	 * </p>
+	 */
+	public double getCpuLoad() {
+		long ticks = _ticks;
+		if (ticks == 0) {
+			return 0.0;
+		}
+		return ((double) _cpuNanos) / (ticks * _frameTime * 1000000.0);
+	}
+
+	@Override
+	public String toString() {
+		return _name;
+	}
+
+	/**
+	 * Immutable snapshot of the room members.
+	 */
+	private static final class Members {
+		final ConferenceParticipant[] _participants;
+
+		/**
+		 * Index into {@link #_groups} for each participant in {@link #_participants}.
+		 */
+		final int[] _groupIndex;
+
+		final CodecGroup[] _groups;
+
+		Members(ConferenceParticipant[] participants, int[] groupIndex, CodecGroup[] groups) {
+			_participants = participants;
+			_groupIndex = groupIndex;
+			_groups = groups;
+		}
+	}
+
+	/**
+	 * The shared mix encoded for all participants with the same codec.
+	 */
+	private static final class CodecGroup {
+		final FrameCodec _codec;
+		final byte[] _payload;
+		int _length;
+		boolean _encoded;
+
+		CodecGroup(FrameCodec codec, int frameSize) {
+			_codec = codec;
+			_payload = new byte[codec.getPayloadSize(frameSize)];
+		}
+	}
+
+}
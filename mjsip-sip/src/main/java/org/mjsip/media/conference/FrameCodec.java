@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.media.conference;
+
+import org.zoolu.sound.CodecType;
+import org.zoolu.sound.codec.G711;
+
+/**
+ * Codec converting RTP payload frames from and to 16 bit linear samples without allocating
+ * intermediate buffers.
+ *
+ * <p>
+ * Used by the {@link ConferenceRoom} to decode each participant's stream before mixing and to
+ * re-encode the mixed signal.
+ * </p>
+ */
+public abstract class FrameCodec {
+
+	/**
+	 * {@link FrameCodec} for G711 A-law.
+	 */
+	public static final FrameCodec ALAW = new G711Codec(CodecType.G711_ALAW, true);
+
+	/**
+	 * {@link FrameCodec} for G711 u-law.
+	 */
+	public static final FrameCodec ULAW = new G711Codec(CodecType.G711_ULAW, false);
+
+	/**
+	 * {@link FrameCodec} for 16 bit linear PCM in network byte order.
+	 */
+	public static final FrameCodec LINEAR = new LinearCodec();
+
+	private final CodecType _type;
+
+	/**
+	 * Creates a {@link FrameCodec}.
+	 */
+	protected FrameCodec(CodecType type) {
+		_type = type;
+	}
+
+	/**
+	 * The {@link CodecType} implemented.
+	 */
+	public final CodecType getType() {
+		return _type;
+	}
+
+	/**
+	 * The default RTP payload type of this codec.
+	 */
+	public int getPayloadType() {
+		return _type.getPayloadType();
+	}
+
+	/**
+	 * The number of payload bytes required to encode the given number of samples.
+	 */
+	public abstract int getPayloadSize(int samples);
+
+	/**
+	 * Decodes an RTP payload.
+	 *
+	 * @param buf
+	 *        The buffer with the encoded payload.
+	 * @param off
+	 *        The offset of the payload in the given buffer.
+	 * @param len
+	 *        The length of the payload.
+	 * @param samples
+	 *        The buffer to write decoded samples to.
+	 * @param samplesOff
+	 *        The offset in the samples buffer where to start writing.
+	 * @return The number of decoded samples.
+	 */
+	public abstract int decode(byte[] buf, int off, int len, short[] samples, int samplesOff);
+
+	/**
+	 * Encodes samples to an RTP payload.
+	 *
+	 * @param samples
+	 *        The samples to encode.
+	 * @param samplesOff
+	 *        The offset of the first sample to encode.
+	 * @param cnt
+	 *        The number of samples to encode.
+	 * @param buf
+	 *        The buffer to write the payload to.
+	 * @param off
+	 *        The offset in the payload buffer.
+	 * @return The number of payload bytes written.
+	 */
+	public abstract int encode(short[] samples, int samplesOff, int cnt, byte[] buf, int off);
+
+	@Override
+	public String toString() {
+		return _type.toString();
+	}
+
+	/**
+	 * Looks up the {@link FrameCodec} for the given {@link CodecType}.
+	 *
+	 * @return The codec, or <code>null</code>, if the given codec type cannot be mixed.
+	 */
+	public static FrameCodec forType(CodecType type) {
+		if (CodecType.G711_ALAW.equals(type)) {
+			return ALAW;
+		}
+		if (CodecType.G711_ULAW.equals(type)) {
+			return ULAW;
+		}
+		if (CodecType.PCM_LINEAR.equals(type)) {
+			return LINEAR;
+		}
+		return null;
+	}
+
+	private static final class G711Codec extends FrameCodec {
+
+		/**
+		 * Number of least significant bits that are irrelevant for both, A-law and u-law encoding.
+		 */
+		private static final int SHIFT = 2;
+
+		/**
+		 * Linear value for each 8 bit code.
+		 */
+		private final short[] _decode = new short[256];
+
+		/**
+		 * Code for each 16 bit linear value shifted right by {@link #SHIFT}.
+		 */
+		private final byte[] _encode = new byte[1 << (16 - SHIFT)];
+
+		G711Codec(CodecType type, boolean alaw) {
+			super(type);
+
+			for (int code = 0; code < 256; code++) {
+				_decode[code] = (short) (alaw ? G711.alaw2linear(code) : G711.ulaw2linear(code));
+			}
+			for (int n = 0; n < _encode.length; n++) {
+				int linear = (short) (n << SHIFT);
+				_encode[n] = (byte) (alaw ? G711.linear2alaw(linear) : G711.linear2ulaw(linear));
+			}
+		}
+
+		@Override
+		public int getPayloadSize(int samples) {
+			return samples;
+		}
+
+		@Override
+		public int decode(byte[] buf, int off, int len, short[] samples, int samplesOff) {
+			short[] table = _decode;
+			for (int n = 0; n < len; n++) {
+				samples[samplesOff + n] = table[buf[off + n] & 0xFF];
+			}
+			return len;
+		}
+
+		@Override
+		public int encode(short[] samples, int samplesOff, int cnt, byte[] buf, int off) {
+			byte[] table = _encode;
+			for (int n = 0; n < cnt; n++) {
+				buf[off + n] = table[(samples[samplesOff + n] & 0xFFFF) >>> SHIFT];
+			}
+			return cnt;
+		}
+	}
+
+	private static final class LinearCodec extends FrameCodec {
+
+		LinearCodec() {
+			super(CodecType.PCM_LINEAR);
+		}
+
+		@Override
+		public int getPayloadSize(int samples) {
+			return 2 * samples;
+		}
+
+		@Override
+		public int decode(byte[] buf, int off, int len, short[] samples, int samplesOff) {
+			int cnt = len / 2;
+			for (int n = 0; n < cnt; n++) {
+				int pos = off + 2 * n;
+				samples[samplesOff + n] = (short) ((buf[pos] << 8) | (buf[pos + 1] & 0xFF));
+			}
+			return cnt;
+		}
+
+		@Override
+		public int encode(short[] samples, int samplesOff, int cnt, byte[] buf, int off) {
+			for (int n = 0; n < cnt; n++) {
+				short sample = samples[samplesOff + n];
+				int pos = off + 2 * n;
+				buf[pos] = (byte) (sample >> 8);
+				buf[pos + 1] = (byte) sample;
+			}
+			return 2 * cnt;
+		}
+	}
+
+}
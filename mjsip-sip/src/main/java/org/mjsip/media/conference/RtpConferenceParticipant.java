@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.media.conference;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Executor;
+
+import org.mjsip.media.RtpStreamReceiver;
+import org.mjsip.rtp.RtpPacket;
+import org.slf4j.LoggerFactory;
+import org.zoolu.net.SocketAddress;
+import org.zoolu.net.UdpPacket;
+import org.zoolu.net.UdpSocket;
+import org.zoolu.util.Random;
+
+/**
+ * {@link ConferenceParticipant} exchanging media with its remote party over RTP.
+ *
+ * <p>
+ * Packets are received in a loop on the given {@link Executor}. Received and sent packets use
+ * buffers that are allocated once per participant.
+ * </p>
+ */
+public class RtpConferenceParticipant extends ConferenceParticipant implements Runnable {
+
+	private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(RtpConferenceParticipant.class);
+
+	private final Executor _executor;
+
+	private final UdpSocket _socket;
+
+	private final int _payloadType;
+
+	private final byte[] _receiveBuffer = new byte[RtpStreamReceiver.BUFFER_SIZE];
+
+	private final UdpPacket _receivePacket = new UdpPacket(_receiveBuffer, _receiveBuffer.length);
+
+	private final RtpPacket _receiveRtp = new RtpPacket(_receiveBuffer, 0);
+
+	private byte[] _sendBuffer = new byte[0];
+
+	private UdpPacket _sendPacket;
+
+	private RtpPacket _sendRtp;
+
+	private final long _ssrc = Random.nextInt() & 0xFFFFFFFFL;
+
+	private int _sequenceNumber = Random.nextInt() & 0xFFFF;
+
+	private long _timestamp = Random.nextInt() & 0xFFFFFFFFL;
+
+	/**
+	 * The remote address to send to, <code>null</code> to use the address of the first received
+	 * packet (symmetric RTP).
+	 */
+	private volatile SocketAddress _remote;
+
+	private volatile boolean _running;
+
+	/**
+	 * Creates a {@link RtpConferenceParticipant}.
+	 *
+	 * @param id
+	 *        Identifier of the participant for logging.
+	 * @param executor
+	 *        The executor running the receive loop.
+	 * @param socket
+	 *        The local RTP socket.
+	 * @param codec
+	 *        The codec of the remote party.
+	 * @param payloadType
+	 *        The negotiated RTP payload type.
+	 * @param remote
+	 *        The remote RTP address, or <code>null</code> for learning it from the first received
+	 *        packet.
+	 */
+	public RtpConferenceParticipant(String id, Executor executor, UdpSocket socket, FrameCodec codec,
+			int payloadType, SocketAddress remote) {
+		super(id, codec);
+		_executor = executor;
+		_socket = socket;
+		_payloadType = payloadType;
+		_remote = remote;
+	}
+
+	@Override
+	protected void start() {
+		_running = true;
+		_executor.execute(this);
+	}
+
+	@Override
+	protected void halt() {
+		_running = false;
+	}
+
+	@Override
+	public void run() {
+		try {
+			_socket.setSoTimeout(RtpStreamReceiver.SO_TIMEOUT);
+			while (_running) {
+				try {
+					_receivePacket.setLength(_receiveBuffer.length);
+					_socket.receive(_receivePacket);
+				} catch (InterruptedIOException ex) {
+					continue;
+				}
+				if (!_running) {
+					break;
+				}
+
+				RtpPacket rtp = _receiveRtp;
+				rtp.setPacketLength(_receivePacket.getLength());
+				if (rtp.getPayloadType() != _payloadType) {
+					// E.g. comfort noise or DTMF events, that cannot be decoded with the codec.
+					continue;
+				}
+				if (_remote == null) {
+					_remote = new SocketAddress(_receivePacket.getIpAddress(), _receivePacket.getPort());
+				}
+				onPayload(_receiveBuffer, rtp.getHeaderLength(), rtp.getPayloadLength());
+			}
+		} catch (IOException ex) {
+			if (_running) {
+				LOG.warn("Receiving media for conference participant '{}' failed.", getId(), ex);
+			}
+		} finally {
+			_running = false;
+			_socket.close();
+		}
+	}
+
+	@Override
+	protected void sendFrame(byte[] payload, int length, int samples) throws IOException {
+		SocketAddress remote = _remote;
+		if (remote == null) {
+			return;
+		}
+
+		if (_sendRtp == null || _sendBuffer.length < 12 + length) {
+			_sendBuffer = new byte[12 + length];
+			_sendRtp = new RtpPacket(_sendBuffer, 0, 12);
+			_sendPacket = new UdpPacket(_sendBuffer, _sendBuffer.length, remote.getAddress(), remote.getPort());
+		}
+
+		RtpPacket rtp = _sendRtp;
+		rtp.setPacketLength(12);
+		rtp.setHeader(_payloadType, _ssrc, _sequenceNumber, _timestamp);
+		System.arraycopy(payload, 0, _sendBuffer, 12, length);
+		rtp.setPacketLength(12 + length);
+
+		_sequenceNumber = (_sequenceNumber + 1) & 0xFFFF;
+		_timestamp = (_timestamp + samples) & 0xFFFFFFFFL;
+
+		_sendPacket.setLength(12 + length);
+		_socket.send(_sendPacket);
+	}
+
+}
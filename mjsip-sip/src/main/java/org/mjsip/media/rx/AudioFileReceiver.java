@@ -54,6 +54,7 @@ public class AudioFileReceiver implements AudioReceiver {
 				}
 			}
 		};
+		receiver.setClockRate(sample_rate);
 		return new RtpAudioRxHandler(receiver);
 	}
 
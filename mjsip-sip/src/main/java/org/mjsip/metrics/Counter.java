@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Monotonically increasing count of events.
+ *
+ * <p>
+ * Updates are striped over multiple cells, so that concurrent increments from transport and
+ * timer threads do not contend. Incrementing does not allocate once the counter has been
+ * used by a thread.
+ * </p>
+ */
+public final class Counter {
+
+	private final LongAdder _value = new LongAdder();
+
+	/**
+	 * Counts an event.
+	 */
+	public void increment() {
+		_value.increment();
+	}
+
+	/**
+	 * Counts the given number of events.
+	 */
+	public void add(long amount) {
+		_value.add(amount);
+	}
+
+	/**
+	 * The number of events counted so far.
+	 */
+	public long get() {
+		return _value.sum();
+	}
+
+}
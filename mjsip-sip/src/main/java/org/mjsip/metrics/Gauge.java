@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Current number of things, e.g. active transactions, that is increased and decreased
+ * concurrently.
+ *
+ * @see MetricsRegistry#register(String, String, String, java.util.function.LongSupplier) for
+ *      values that are computed on demand.
+ */
+public final class Gauge {
+
+	private final LongAdder _value = new LongAdder();
+
+	/**
+	 * Increases the value by one.
+	 */
+	public void increment() {
+		_value.increment();
+	}
+
+	/**
+	 * Decreases the value by one.
+	 */
+	public void decrement() {
+		_value.decrement();
+	}
+
+	/**
+	 * Changes the value by the given amount.
+	 */
+	public void add(long amount) {
+		_value.add(amount);
+	}
+
+	/**
+	 * The current value.
+	 */
+	public long get() {
+		return _value.sum();
+	}
+
+}
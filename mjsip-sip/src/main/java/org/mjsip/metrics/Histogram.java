@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of non-negative values, e.g. latencies in microseconds, with a relative precision of
+ * about 3%.
+ *
+ * <p>
+ * Values below 64 are counted exactly, larger values are counted in 32 sub-buckets per power of
+ * two. Recording does not allocate and is safe to call from multiple threads, so that the
+ * histogram can be updated directly on the message dispatching path.
+ * </p>
+ */
+public class Histogram {
+
+	private static final int SUB_BITS = 5;
+
+	private static final int SUB_COUNT = 1 << SUB_BITS;
+
+	private static final int LINEAR = 2 * SUB_COUNT;
+
+	private static final int MAX_MAGNITUDE = 40;
+
+	private final AtomicLongArray _counts = new AtomicLongArray(index(1L << MAX_MAGNITUDE) + 1);
+
+	private final LongAccumulator _max = new LongAccumulator(Math::max, 0);
+
+	private final LongAdder _sum = new LongAdder();
+
+	/**
+	 * Records a value.
+	 *
+	 * @param value
+	 *        The value in the unit of this histogram, negative values are recorded as
+	 *        <code>0</code>.
+	 */
+	public void record(long value) {
+		long positive = Math.max(0, value);
+		_counts.incrementAndGet(index(Math.min(positive, 1L << MAX_MAGNITUDE)));
+		_max.accumulate(positive);
+		_sum.add(positive);
+	}
+
+	/**
+	 * The number of recorded values.
+	 */
+	public long getCount() {
+		long result = 0;
+		for (int n = 0, cnt = _counts.length(); n < cnt; n++) {
+			result += _counts.get(n);
+		}
+		return result;
+	}
+
+	/**
+	 * The sum of all recorded values.
+	 */
+	public long getSum() {
+		return _sum.sum();
+	}
+
+	/**
+	 * The largest recorded value.
+	 */
+	public long getMax() {
+		return _max.get();
+	}
+
+	/**
+	 * The value below which the given fraction of recorded values lie.
+	 *
+	 * @param percentile
+	 *        The percentile, e.g. <code>99.9</code>.
+	 * @return The (upper bound of the) percentile, <code>0</code> if nothing was recorded.
+	 */
+	public long getPercentile(double percentile) {
+		long total = getCount();
+		if (total == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+		long seen = 0;
+		for (int n = 0, cnt = _counts.length(); n < cnt; n++) {
+			seen += _counts.get(n);
+			if (seen >= rank) {
+				return Math.min(upperBound(n), getMax());
+			}
+		}
+		return getMax();
+	}
+
+	static int index(long value) {
+		if (value < LINEAR) {
+			return (int) value;
+		}
+		int magnitude = 63 - Long.numberOfLeadingZeros(value);
+		int shift = magnitude - SUB_BITS;
+		return LINEAR + (magnitude - SUB_BITS - 1) * SUB_COUNT + (int) ((value >> shift) - SUB_COUNT);
+	}
+
+	static long upperBound(int index) {
+		if (index < LINEAR) {
+			return index;
+		}
+		int bucket = index - LINEAR;
+		int shift = bucket / SUB_COUNT + 1;
+		long sub = bucket % SUB_COUNT + SUB_COUNT;
+		return ((sub + 1) << shift) - 1;
+	}
+
+}
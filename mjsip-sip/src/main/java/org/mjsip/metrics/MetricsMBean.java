@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanException;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+/**
+ * Read-only JMX view of a {@link MetricsRegistry}.
+ *
+ * <p>
+ * Each sample of the registry is exposed as <code>long</code> attribute named like in the text
+ * format, e.g. <code>sip_messages_received_total{port="5060",method="INVITE"}</code>. The set of
+ * attributes follows the registry, when metrics are added or removed.
+ * </p>
+ */
+public class MetricsMBean implements DynamicMBean {
+
+	/**
+	 * The name under which the {@link MetricsRegistry#global() global registry} is registered.
+	 */
+	public static final String GLOBAL_NAME = "org.mjsip:type=Metrics";
+
+	private final MetricsRegistry _registry;
+
+	/**
+	 * Creates a {@link MetricsMBean}.
+	 */
+	public MetricsMBean(MetricsRegistry registry) {
+		_registry = registry;
+	}
+
+	/**
+	 * Registers the {@link MetricsRegistry#global() global registry} with the platform MBean
+	 * server under {@link #GLOBAL_NAME}, if not yet done.
+	 */
+	public static synchronized void registerGlobal() throws JMException {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName(GLOBAL_NAME);
+		if (server.isRegistered(name)) {
+			return;
+		}
+		try {
+			server.registerMBean(new MetricsMBean(MetricsRegistry.global()), name);
+		} catch (InstanceAlreadyExistsException ex) {
+			// Registered concurrently by another class loader.
+		}
+	}
+
+	@Override
+	public Object getAttribute(String attribute) throws AttributeNotFoundException {
+		Long result = _registry.snapshot().get(attribute);
+		if (result == null) {
+			throw new AttributeNotFoundException(attribute);
+		}
+		return result;
+	}
+
+	@Override
+	public AttributeList getAttributes(String[] attributes) {
+		Map<String, Long> snapshot = _registry.snapshot();
+		AttributeList result = new AttributeList();
+		for (String attribute : attributes) {
+			Long value = snapshot.get(attribute);
+			if (value != null) {
+				result.add(new Attribute(attribute, value));
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+		throw new AttributeNotFoundException("Metrics are read-only: " + attribute.getName());
+	}
+
+	@Override
+	public AttributeList setAttributes(AttributeList attributes) {
+		return new AttributeList();
+	}
+
+	@Override
+	public Object invoke(String actionName, Object[] params, String[] signature)
+			throws MBeanException, ReflectionException {
+		throw new ReflectionException(new NoSuchMethodException(actionName));
+	}
+
+	@Override
+	public MBeanInfo getMBeanInfo() {
+		Map<String, Long> snapshot = _registry.snapshot();
+		MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[snapshot.size()];
+		int n = 0;
+		for (Entry<String, Long> entry : snapshot.entrySet()) {
+			String sample = entry.getKey();
+			int labelStart = sample.indexOf('{');
+			String help = _registry.getHelp(labelStart < 0 ? sample : sample.substring(0, labelStart));
+			attributes[n++] = new MBeanAttributeInfo(sample, long.class.getName(), help == null ? sample : help,
+				true, false, false);
+		}
+		return new MBeanInfo(getClass().getName(), "mjSIP metrics.", attributes, null, null, null);
+	}
+
+}
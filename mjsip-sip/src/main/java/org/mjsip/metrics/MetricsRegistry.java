@@ -0,0 +1,318 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.metrics;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Registry of named {@link Counter}s, {@link Gauge}s and {@link Histogram}s.
+ *
+ * <p>
+ * Metrics are identified by a name and a (possibly empty) label string in the Prometheus syntax
+ * <code>key="value",...</code>, see {@link #labels(String...)}. Components look up their metrics
+ * once when they are created and update them directly afterwards, so that the registry itself is
+ * never involved in instrumented code paths.
+ * </p>
+ *
+ * <p>
+ * The registry is exported in the Prometheus text format by {@link #write(Appendable)} (e.g.
+ * through a {@link MetricsServer}) and over JMX by a {@link MetricsMBean}.
+ * </p>
+ */
+public class MetricsRegistry {
+
+	private static final MetricsRegistry GLOBAL = new MetricsRegistry();
+
+	private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999, 1 };
+
+	private enum Type {
+		COUNTER, GAUGE, SUMMARY;
+
+		String externalName() {
+			return name().toLowerCase();
+		}
+	}
+
+	private static final class Family {
+
+		final String _name;
+
+		final String _help;
+
+		final Type _type;
+
+		final ConcurrentNavigableMap<String, Object> _metrics = new ConcurrentSkipListMap<>();
+
+		Family(String name, String help, Type type) {
+			_name = name;
+			_help = help;
+			_type = type;
+		}
+
+	}
+
+	private final ConcurrentNavigableMap<String, Family> _families = new ConcurrentSkipListMap<>();
+
+	/**
+	 * The registry shared by all components of this process, unless configured otherwise.
+	 */
+	public static MetricsRegistry global() {
+		return GLOBAL;
+	}
+
+	/**
+	 * The {@link Counter} with the given name and labels, created on first access.
+	 *
+	 * @param name
+	 *        The metric name, by convention ending with <code>_total</code>.
+	 * @param help
+	 *        Description of the metric.
+	 * @param labels
+	 *        The labels in the form created by {@link #labels(String...)}.
+	 */
+	public Counter counter(String name, String help, String labels) {
+		return (Counter) family(name, help, Type.COUNTER)._metrics.computeIfAbsent(labels, x -> new Counter());
+	}
+
+	/**
+	 * The {@link Gauge} with the given name and labels, created on first access.
+	 *
+	 * @see #counter(String, String, String)
+	 */
+	public Gauge gauge(String name, String help, String labels) {
+		Object result = family(name, help, Type.GAUGE)._metrics.computeIfAbsent(labels, x -> new Gauge());
+		if (!(result instanceof Gauge)) {
+			throw new IllegalArgumentException("Metric '" + name + "{" + labels + "}' is a computed value.");
+		}
+		return (Gauge) result;
+	}
+
+	/**
+	 * The {@link Histogram} with the given name and labels, created on first access.
+	 *
+	 * @param name
+	 *        The metric name, by convention ending with the unit of recorded values, e.g.
+	 *        <code>_microseconds</code>.
+	 *
+	 * @see #counter(String, String, String)
+	 */
+	public Histogram histogram(String name, String help, String labels) {
+		return (Histogram) family(name, help, Type.SUMMARY)._metrics.computeIfAbsent(labels, x -> new Histogram());
+	}
+
+	/**
+	 * Registers a gauge whose value is computed on demand, e.g. the size of a queue.
+	 *
+	 * <p>
+	 * A value registered before with the same name and labels is replaced.
+	 * </p>
+	 *
+	 * @see #counter(String, String, String)
+	 */
+	public void register(String name, String help, String labels, LongSupplier value) {
+		family(name, help, Type.GAUGE)._metrics.put(labels, value);
+	}
+
+	/**
+	 * Removes the metric with the given name and labels.
+	 */
+	public void remove(String name, String labels) {
+		Family family = _families.get(name);
+		if (family != null) {
+			family._metrics.remove(labels);
+		}
+	}
+
+	/**
+	 * Removes all metrics with the given labels, or with labels starting with the given ones, e.g.
+	 * when the component that owned them terminates.
+	 */
+	public void removeAll(String labels) {
+		String prefix = labels + ",";
+		for (Family family : _families.values()) {
+			family._metrics.remove(labels);
+			family._metrics.subMap(prefix, prefix + Character.MAX_VALUE).clear();
+		}
+	}
+
+	private Family family(String name, String help, Type type) {
+		Family result = _families.computeIfAbsent(name, x -> new Family(name, help, type));
+		if (result._type != type) {
+			throw new IllegalArgumentException(
+				"Metric '" + name + "' is a " + result._type.externalName() + ", not a " + type.externalName() + ".");
+		}
+		return result;
+	}
+
+	/**
+	 * Writes all metrics in the Prometheus text exposition format.
+	 *
+	 * <p>
+	 * {@link Histogram}s are written as summaries with the quantiles 0.5, 0.9, 0.99, 0.999 and 1
+	 * (the maximum).
+	 * </p>
+	 */
+	public void write(Appendable out) throws IOException {
+		for (Family family : _families.values()) {
+			if (family._metrics.isEmpty()) {
+				continue;
+			}
+			String name = family._name;
+			out.append("# HELP ").append(name).append(' ').append(escapeHelp(family._help)).append('\n');
+			out.append("# TYPE ").append(name).append(' ').append(family._type.externalName()).append('\n');
+			for (Entry<String, Object> entry : family._metrics.entrySet()) {
+				String labels = entry.getKey();
+				Object metric = entry.getValue();
+				if (metric instanceof Histogram) {
+					Histogram histogram = (Histogram) metric;
+					for (double quantile : QUANTILES) {
+						sample(out, name, join(labels, "quantile=\"" + quantile + "\""),
+							histogram.getPercentile(quantile * 100));
+					}
+					sample(out, name + "_sum", labels, histogram.getSum());
+					sample(out, name + "_count", labels, histogram.getCount());
+				} else {
+					sample(out, name, labels, value(metric));
+				}
+			}
+		}
+	}
+
+	/**
+	 * All metrics in the Prometheus text exposition format.
+	 *
+	 * @see #write(Appendable)
+	 */
+	public String toText() {
+		StringWriter result = new StringWriter();
+		try {
+			write(result);
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+		return result.toString();
+	}
+
+	/**
+	 * The current values of all metrics by their sample name <code>name{labels}</code>.
+	 *
+	 * <p>
+	 * {@link Histogram}s contribute the same samples as in {@link #write(Appendable)}.
+	 * </p>
+	 */
+	public Map<String, Long> snapshot() {
+		Map<String, Long> result = new TreeMap<>();
+		for (Family family : _families.values()) {
+			String name = family._name;
+			for (Entry<String, Object> entry : family._metrics.entrySet()) {
+				String labels = entry.getKey();
+				Object metric = entry.getValue();
+				if (metric instanceof Histogram) {
+					Histogram histogram = (Histogram) metric;
+					for (double quantile : QUANTILES) {
+						result.put(sampleName(name, join(labels, "quantile=\"" + quantile + "\"")),
+							Long.valueOf(histogram.getPercentile(quantile * 100)));
+					}
+					result.put(sampleName(name + "_sum", labels), Long.valueOf(histogram.getSum()));
+					result.put(sampleName(name + "_count", labels), Long.valueOf(histogram.getCount()));
+				} else {
+					result.put(sampleName(name, labels), Long.valueOf(value(metric)));
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * The help text of the metric with the given name, <code>null</code> if there is no such
+	 * metric.
+	 */
+	public String getHelp(String name) {
+		Family family = _families.get(name);
+		return family == null ? null : family._help;
+	}
+
+	private static long value(Object metric) {
+		if (metric instanceof Counter) {
+			return ((Counter) metric).get();
+		} else if (metric instanceof Gauge) {
+			return ((Gauge) metric).get();
+		} else {
+			return ((LongSupplier) metric).getAsLong();
+		}
+	}
+
+	private static void sample(Appendable out, String name, String labels, long value) throws IOException {
+		out.append(sampleName(name, labels)).append(' ').append(Long.toString(value)).append('\n');
+	}
+
+	private static String sampleName(String name, String labels) {
+		return labels.isEmpty() ? name : name + "{" + labels + "}";
+	}
+
+	private static String join(String labels, String label) {
+		return labels.isEmpty() ? label : labels + "," + label;
+	}
+
+	/**
+	 * Creates a label string from alternating label names and values.
+	 *
+	 * @param nameValues
+	 *        Label names and values, e.g. <code>"method", "INVITE"</code>.
+	 * @return The label string, e.g. <code>method="INVITE"</code>.
+	 */
+	public static String labels(String... nameValues) {
+		StringBuilder result = new StringBuilder();
+		for (int n = 0; n + 1 < nameValues.length; n += 2) {
+			if (result.length() > 0) {
+				result.append(',');
+			}
+			result.append(nameValues[n]).append("=\"");
+			escapeValue(result, nameValues[n + 1]);
+			result.append('"');
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Appends further labels to the given label string.
+	 *
+	 * @see #labels(String...)
+	 */
+	public static String addLabels(String labels, String... nameValues) {
+		return labels.isEmpty() ? labels(nameValues) : join(labels, labels(nameValues));
+	}
+
+	private static void escapeValue(StringBuilder out, String value) {
+		for (int n = 0, cnt = value.length(); n < cnt; n++) {
+			char ch = value.charAt(n);
+			switch (ch) {
+			case '\\':
+				out.append("\\\\");
+				break;
+			case '"':
+				out.append("\\\"");
+				break;
+			case '\n':
+				out.append("\\n");
+				break;
+			default:
+				out.append(ch);
+			}
+		}
+	}
+
+	private static String escapeHelp(String help) {
+		return help.replace("\\", "\\\\").replace("\n", "\\n");
+	}
+
+}
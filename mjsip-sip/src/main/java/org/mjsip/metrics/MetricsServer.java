@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+import org.slf4j.LoggerFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * HTTP endpoint serving a {@link MetricsRegistry} in the Prometheus text format at
+ * <code>/metrics</code>.
+ */
+public class MetricsServer {
+
+	private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(MetricsServer.class);
+
+	/** The path under which metrics are served. */
+	public static final String PATH = "/metrics";
+
+	private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+	private final MetricsRegistry _registry;
+
+	private final HttpServer _server;
+
+	/**
+	 * Creates and starts a {@link MetricsServer}.
+	 *
+	 * @param registry
+	 *        The metrics to serve.
+	 * @param address
+	 *        The address to listen on, port <code>0</code> for an arbitrary free port.
+	 */
+	public MetricsServer(MetricsRegistry registry, InetSocketAddress address) throws IOException {
+		_registry = registry;
+		_server = HttpServer.create(address, 0);
+		_server.createContext(PATH, this::handle);
+		_server.start();
+		LOG.info("Serving metrics at http://{}:{}{}", address.getHostString(), Integer.valueOf(getPort()), PATH);
+	}
+
+	/**
+	 * The port the server listens on.
+	 */
+	public int getPort() {
+		return _server.getAddress().getPort();
+	}
+
+	/**
+	 * Stops serving metrics.
+	 */
+	public void stop() {
+		_server.stop(0);
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try {
+			if (!"GET".equals(exchange.getRequestMethod()) && !"HEAD".equals(exchange.getRequestMethod())) {
+				exchange.sendResponseHeaders(405, -1);
+				return;
+			}
+			byte[] body = _registry.toText().getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+			if ("HEAD".equals(exchange.getRequestMethod())) {
+				exchange.sendResponseHeaders(200, -1);
+				return;
+			}
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		} finally {
+			exchange.close();
+		}
+	}
+
+}
@@ -4,6 +4,7 @@
 package org.mjsip.pool;
 
 import org.kohsuke.args4j.Option;
+import org.mjsip.metrics.MetricsRegistry;
 
 /**
  * Configuration options for specifying a port range to serve RTP streams.
@@ -38,9 +39,20 @@ public class PortConfig implements PortOptions {
 
 	/** 
 	 * Creates a {@link PortPool} with this configuration.
+	 * 
+	 * <p>
+	 * The usage of the pool is reported to the {@link MetricsRegistry#global() global metrics}.
+	 * </p>
 	 */
 	public PortPool createPool() {
-		return new PortPool(getMediaPort(), getPortCount());
+		PortPool result = new PortPool(getMediaPort(), getPortCount());
+
+		MetricsRegistry metrics = MetricsRegistry.global();
+		String labels = MetricsRegistry.labels("first_port", Integer.toString(getMediaPort()));
+		metrics.register("media_ports_total", "Ports in a media port pool.", labels, result::getSize);
+		metrics.register("media_ports_allocated", "Ports allocated from a media port pool.", labels,
+			result::getAllocated);
+		return result;
 	}
 
 }
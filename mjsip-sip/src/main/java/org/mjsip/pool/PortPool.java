@@ -71,6 +71,20 @@ public class PortPool {
 		return true;
 	}
 
+	/**
+	 * The number of ports managed by this pool.
+	 */
+	public int getSize() {
+		return _ports.length;
+	}
+
+	/**
+	 * The number of ports currently allocated from this pool.
+	 */
+	public synchronized int getAllocated() {
+		return _next;
+	}
+
 	/** 
 	 * Whether there is some port available to allocate.
 	 */
@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.rtp;
+
+/**
+ * Reception statistics of an RTP stream as reported in RTCP receiver reports (RFC 3550,
+ * appendix A.1, A.3 and A.8).
+ *
+ * <p>
+ * {@link #update(long, int, long, long)} is called by the single thread receiving the stream and
+ * does not allocate. The values may be read concurrently, e.g. when sending RTCP reports or
+ * exporting metrics.
+ * </p>
+ */
+public class RtpReceptionStatistics {
+
+	private static final int RTP_SEQ_MOD = 1 << 16;
+
+	private static final int MAX_DROPOUT = 3000;
+
+	private static final int MAX_MISORDER = 100;
+
+	private volatile int _clockRate;
+
+	private boolean _initialized;
+
+	private long _firstArrival;
+
+	private int _maxSeq;
+
+	private int _badSeq = -1;
+
+	private int _lastTransit;
+
+	private volatile long _ssrc;
+
+	private volatile long _cycles;
+
+	private volatile long _baseSeq;
+
+	private volatile long _extendedMax;
+
+	private volatile long _received;
+
+	private volatile long _octets;
+
+	/** Interarrival jitter in timestamp units, scaled by 16. */
+	private volatile long _jitter;
+
+	private long _expectedPrior;
+
+	private long _receivedPrior;
+
+	/**
+	 * Creates a {@link RtpReceptionStatistics}.
+	 *
+	 * @param clockRate
+	 *        The RTP timestamp clock rate of the stream.
+	 */
+	public RtpReceptionStatistics(int clockRate) {
+		_clockRate = clockRate;
+	}
+
+	/**
+	 * The RTP timestamp clock rate of the stream.
+	 */
+	public int getClockRate() {
+		return _clockRate;
+	}
+
+	/**
+	 * @see #getClockRate()
+	 */
+	public void setClockRate(int clockRate) {
+		_clockRate = clockRate;
+	}
+
+	/**
+	 * Accounts a received packet.
+	 *
+	 * @param ssrc
+	 *        The SSRC of the packet.
+	 * @param seq
+	 *        The 16 bit sequence number of the packet.
+	 * @param timestamp
+	 *        The RTP timestamp of the packet.
+	 * @param arrivalNanos
+	 *        The arrival time in {@link System#nanoTime()} units.
+	 */
+	public void update(long ssrc, int seq, long timestamp, long arrivalNanos) {
+		if (!_initialized) {
+			_initialized = true;
+			_firstArrival = arrivalNanos;
+			_ssrc = ssrc;
+			restart(seq);
+		} else {
+			int delta = (seq - _maxSeq) & 0xFFFF;
+			if (delta < MAX_DROPOUT) {
+				// In order, with permissible gap.
+				if (seq < _maxSeq) {
+					_cycles += RTP_SEQ_MOD;
+				}
+				_maxSeq = seq;
+				_extendedMax = _cycles + seq;
+			} else if (delta <= RTP_SEQ_MOD - MAX_MISORDER) {
+				// Very large jump: Restart, if the sender continues from the new sequence number.
+				if (seq != _badSeq) {
+					_badSeq = (seq + 1) & 0xFFFF;
+					return;
+				}
+				_ssrc = ssrc;
+				restart(seq);
+			}
+			// Otherwise duplicate or re-ordered packet.
+		}
+		_received++;
+
+		long arrival = (arrivalNanos - _firstArrival) / 1000 * _clockRate / 1_000_000;
+		int transit = (int) (arrival - timestamp);
+		if (_received > 1) {
+			int d = Math.abs(transit - _lastTransit);
+			_jitter += d - ((_jitter + 8) >> 4);
+		}
+		_lastTransit = transit;
+	}
+
+	/**
+	 * Accounts the payload size of a received packet.
+	 */
+	public void octets(int length) {
+		_octets += length;
+	}
+
+	private void restart(int seq) {
+		_badSeq = -1;
+		_maxSeq = seq;
+		_cycles = 0;
+		_baseSeq = seq;
+		_extendedMax = seq;
+		_received = 0;
+		_jitter = 0;
+	}
+
+	/**
+	 * The SSRC of the stream, <code>0</code> before a packet has been received.
+	 */
+	public long getSsrc() {
+		return _ssrc;
+	}
+
+	/**
+	 * The number of packets received including late and duplicate packets.
+	 */
+	public long getReceived() {
+		return _received;
+	}
+
+	/**
+	 * The number of payload octets received.
+	 */
+	public long getOctets() {
+		return _octets;
+	}
+
+	/**
+	 * The extended highest sequence number received, the number of sequence number cycles in the
+	 * upper 16 bits.
+	 */
+	public long getExtendedHighestSeq() {
+		return _extendedMax;
+	}
+
+	/**
+	 * The number of packets expected from the sequence numbers seen.
+	 */
+	public long getExpected() {
+		return _received == 0 ? 0 : _extendedMax - _baseSeq + 1;
+	}
+
+	/**
+	 * The number of packets lost since the beginning of reception, negative if duplicates were
+	 * received.
+	 */
+	public long getCumulativeLost() {
+		return getExpected() - _received;
+	}
+
+	/**
+	 * The fraction of packets lost since the last call of this method in units of 1/256.
+	 */
+	public synchronized int getFractionLost() {
+		long expected = getExpected();
+		long received = _received;
+		long expectedInterval = expected - _expectedPrior;
+		long lostInterval = expectedInterval - (received - _receivedPrior);
+		_expectedPrior = expected;
+		_receivedPrior = received;
+		if (expectedInterval <= 0 || lostInterval <= 0) {
+			return 0;
+		}
+		return (int) Math.min(255, (lostInterval << 8) / expectedInterval);
+	}
+
+	/**
+	 * The interarrival jitter in timestamp units.
+	 */
+	public long getJitter() {
+		return _jitter >> 4;
+	}
+
+	/**
+	 * The interarrival jitter in microseconds.
+	 */
+	public long getJitterMicros() {
+		return getJitter() * 1_000_000 / _clockRate;
+	}
+
+}
@@ -23,7 +23,10 @@ package org.mjsip.rtp;
 
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 
+import org.zoolu.net.ByteBufferPool;
 import org.zoolu.net.IpAddress;
 import org.zoolu.net.SocketAddress;
 import org.zoolu.net.UdpPacket;
@@ -35,6 +38,9 @@ import org.zoolu.net.UdpSocket;
   */
 public class RtpSocket {
 	
+	/** Pool of direct buffers for sending RTP packets (Ethernet MTU - IP header - UDP header) */
+	static final ByteBufferPool SEND_BUFFERS=new ByteBufferPool(1472,256);
+
 	/** UDP socket */
 	UdpSocket udp_socket;
 		  
@@ -47,6 +53,15 @@ public class RtpSocket {
 	/** Whether outgoing RTP packets have to be sent to the same address where incoming RTP packets come from (symmetric RTP mode) */
 	boolean symmetric_rtp=true;
 
+	/** Direct buffer for sending, taken from {@link #SEND_BUFFERS} with the first packet sent */
+	ByteBuffer send_buffer=null;
+
+	/** Remote destination address for sending, resolved from <i>dest_inet_soaddr_source</i> */
+	InetSocketAddress dest_inet_soaddr=null;
+
+	/** The remote destination UDP socket address <i>dest_inet_soaddr</i> was resolved from */
+	SocketAddress dest_inet_soaddr_source=null;
+
 
 
 	/** Creates a new RTP socket (only receiver).
@@ -105,20 +120,58 @@ public class RtpSocket {
 	/** Sends a RTP packet from this socket      
 	  * @param rtp_packet RTP packet to be sent */
 	public void send(RtpPacket rtp_packet) throws IOException {
-		if (remote_dest_soaddr==null) {
+		InetSocketAddress dest=destination();
+		if (dest==null) return;
+		// else
+		send(rtp_packet,dest);
+	}
+
+	/** Sends several RTP packets at once, e.g. a burst of queued or retransmitted packets.
+	  * The destination is resolved once and all packets are sent through the same direct buffer.
+	  * @param rtp_packets array containing the RTP packets to be sent
+	  * @param off index of the first packet to send
+	  * @param count number of packets to send */
+	public void send(RtpPacket[] rtp_packets, int off, int count) throws IOException {
+		InetSocketAddress dest=destination();
+		if (dest==null) return;
+		// else
+		for (int i=off, end=off+count; i<end; i++) send(rtp_packets[i],dest);
+	}
+
+	/** Gets the remote destination address, or null if not yet known in symmetric RTP mode. */
+	private InetSocketAddress destination() throws IOException {
+		SocketAddress soaddr=remote_dest_soaddr;
+		if (soaddr==null) {
 			if (!symmetric_rtp) throw new IOException("Null destination address");
+			return null;
+		}
+		// else
+		if (soaddr!=dest_inet_soaddr_source) {
+			dest_inet_soaddr=new InetSocketAddress(soaddr.getAddress().getInetAddress(),soaddr.getPort());
+			dest_inet_soaddr_source=soaddr;
+		}
+		return dest_inet_soaddr;
+	}
+
+	/** Sends a RTP packet to the given destination. */
+	private synchronized void send(RtpPacket rtp_packet, InetSocketAddress dest) throws IOException {
+		if (rtp_packet.length>SEND_BUFFERS.getBufferSize()) {
+			udp_socket.send(ByteBuffer.wrap(rtp_packet.buffer,rtp_packet.offset,rtp_packet.length),dest);
 			return;
 		}
 		// else
-		UdpPacket udp_packet=new UdpPacket(rtp_packet.buffer,rtp_packet.offset,rtp_packet.length);
-		udp_packet.setIpAddress(remote_dest_soaddr.getAddress());
-		udp_packet.setPort(remote_dest_soaddr.getPort());
-		udp_socket.send(udp_packet);
+		if (send_buffer==null) send_buffer=SEND_BUFFERS.acquire();
+		send_buffer.clear();
+		send_buffer.put(rtp_packet.buffer,rtp_packet.offset,rtp_packet.length);
+		send_buffer.flip();
+		udp_socket.send(send_buffer,dest);
 	}
 
 	/** Closes this socket. */      
-	public void close() {
+	public synchronized void close() {
 		//udp_socket.close();
+		SEND_BUFFERS.release(send_buffer);
+		send_buffer=null;
 	}
 
 }
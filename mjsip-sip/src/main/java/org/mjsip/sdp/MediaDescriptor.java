@@ -110,7 +110,7 @@ public class MediaDescriptor {
 	  * @return true if found, otherwise returns null */
 	public boolean hasAttribute(String a_name) {
 		for (int i=0; i<av.size(); i++) {
-			if (av.get(i).getAttributeName().equals(a_name))
+			if (hasName(i,a_name))
 				return true;
 		}
 		return false;
@@ -121,8 +121,7 @@ public class MediaDescriptor {
 	  * @return the AttributeField, or null if not found */
 	public AttributeField getAttribute(String a_name) {
 		for (int i=0; i<av.size(); i++) {
-			AttributeField a = av.get(i);
-			if (a.getAttributeName().equals(a_name)) return a;
+			if (hasName(i,a_name)) return av.get(i);
 		}
 		return null;
 	} 
@@ -133,11 +132,17 @@ public class MediaDescriptor {
 	public AttributeField[] getAttributes(String a_name) {
 		List<AttributeField> v = new ArrayList<>(av.size());
 		for (int i=0; i<av.size(); i++) {
-			AttributeField a = av.get(i);
-			if (a.getAttributeName().equals(a_name)) v.add(a);
+			if (hasName(i,a_name)) v.add(av.get(i));
 		}
 		return v.toArray(new AttributeField[] {});
 	} 
+
+	/** Whether the attribute at the given index has the given name,
+	  * without decoding attributes of a parsed session description. */
+	private boolean hasName(int i, String a_name) {
+		if (av instanceof SdpAttributeList) return ((SdpAttributeList)av).hasName(i,a_name);
+		return av.get(i).getAttributeName().equals(a_name);
+	} 
 	
 	/** Gets a String rapresentation of the MediaDescriptor.
 	  * @return the string representation */
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.sdp;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.RandomAccess;
+
+/**
+ * List of the attribute fields of a media description in a {@link SdpDocument}, decoding each
+ * attribute on first access.
+ *
+ * <p>
+ * Attribute names can be matched without decoding the attribute, so that looking up a single
+ * attribute of a large multi-codec media description does not materialize all others. When the
+ * list is modified, all attributes are decoded and the list continues as a plain list.
+ * </p>
+ */
+final class SdpAttributeList extends AbstractList<AttributeField> implements RandomAccess {
+
+	private final byte[] _body;
+
+	/** Start of the value of each attribute line. */
+	private final int[] _begin;
+
+	/** End of the value of each attribute line. */
+	private final int[] _end;
+
+	private final AttributeField[] _decoded;
+
+	/** All attributes, after the list has been modified. */
+	private ArrayList<AttributeField> _list;
+
+	SdpAttributeList(byte[] body, int[] begin, int[] end) {
+		_body = body;
+		_begin = begin;
+		_end = end;
+		_decoded = new AttributeField[begin.length];
+	}
+
+	@Override
+	public int size() {
+		return _list != null ? _list.size() : _begin.length;
+	}
+
+	@Override
+	public AttributeField get(int index) {
+		if (_list != null) {
+			return _list.get(index);
+		}
+		AttributeField result = _decoded[index];
+		if (result == null) {
+			int begin = _begin[index];
+			result = new AttributeField(new String(_body, begin, _end[index] - begin, StandardCharsets.ISO_8859_1));
+			_decoded[index] = result;
+		}
+		return result;
+	}
+
+	/**
+	 * Whether the attribute at the given index has the given name.
+	 */
+	boolean hasName(int index, String name) {
+		if (_list != null || _decoded[index] != null) {
+			return get(index).getAttributeName().equals(name);
+		}
+		int begin = _begin[index];
+		int end = _end[index];
+		int length = name.length();
+		if (end - begin < length || (end - begin > length && _body[begin + length] != ':')) {
+			return false;
+		}
+		for (int n = 0; n < length; n++) {
+			if (_body[begin + n] != name.charAt(n)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public AttributeField set(int index, AttributeField element) {
+		return list().set(index, element);
+	}
+
+	@Override
+	public void add(int index, AttributeField element) {
+		list().add(index, element);
+		modCount++;
+	}
+
+	@Override
+	public AttributeField remove(int index) {
+		modCount++;
+		return list().remove(index);
+	}
+
+	private ArrayList<AttributeField> list() {
+		if (_list == null) {
+			ArrayList<AttributeField> list = new ArrayList<>(_begin.length + 4);
+			for (int n = 0; n < _begin.length; n++) {
+				list.add(get(n));
+			}
+			_list = list;
+		}
+		return _list;
+	}
+
+}
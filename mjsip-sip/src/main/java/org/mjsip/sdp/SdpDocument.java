@@ -0,0 +1,495 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.sdp;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.mjsip.sdp.field.MediaField;
+
+/**
+ * Session description parsed once into an index of its lines.
+ *
+ * <p>
+ * Parsing a body only records where each line starts and ends, where the session-level connection
+ * line is, and where each media description starts. Field values are decoded on demand: media type
+ * and port, and the session-level connection address are read directly from the line index, and
+ * attribute fields of an {@link SdpMessage} created with {@link #toSdpMessage()} are decoded only
+ * when accessed.
+ * </p>
+ *
+ * <p>
+ * Changing a line only records its new value. When serializing with {@link #toBytes()}, unchanged
+ * lines are copied byte by byte and only the changed lines are written anew.
+ * </p>
+ *
+ * <p>
+ * A {@link SdpDocument} is not thread-safe.
+ * </p>
+ *
+ * @see org.mjsip.sip.message.BasicSipMessage#getSdpDocument()
+ */
+public final class SdpDocument {
+
+	private static final int[] NONE = {};
+
+	private byte[] _body;
+
+	private int _lineCnt;
+
+	/** Start of each line. */
+	private int[] _begin;
+
+	/** Start of the line terminator of each line. */
+	private int[] _eol;
+
+	/** Index of the m= line of each media description. */
+	private int[] _media;
+
+	private int _mediaCnt;
+
+	/** Index of the session-level c= line, <code>-1</code> if there is none. */
+	private int _connection;
+
+	/** New values of changed lines, <code>null</code> if no line has been changed. */
+	private String[] _changed;
+
+	private SdpDocument(byte[] body) {
+		index(body);
+	}
+
+	/**
+	 * Parses the given session description.
+	 */
+	public static SdpDocument parse(byte[] body) {
+		return new SdpDocument(body);
+	}
+
+	private void index(byte[] body) {
+		_body = body;
+		_lineCnt = 0;
+		_mediaCnt = 0;
+		_connection = -1;
+		_changed = null;
+		int capacity = Math.max(8, body.length / 16);
+		_begin = new int[capacity];
+		_eol = new int[capacity];
+		_media = NONE;
+
+		int pos = 0;
+		int length = body.length;
+		while (pos < length) {
+			int eol = pos;
+			while (eol < length && body[eol] != '\r' && body[eol] != '\n') {
+				eol++;
+			}
+			int next = eol;
+			if (next < length && body[next] == '\r') {
+				next++;
+			}
+			if (next < length && body[next] == '\n') {
+				next++;
+			}
+
+			if (_lineCnt == _eol.length) {
+				_eol = Arrays.copyOf(_eol, _lineCnt * 2);
+				_begin = Arrays.copyOf(_begin, _lineCnt * 2);
+			}
+			_begin[_lineCnt] = pos;
+			_eol[_lineCnt] = eol;
+			switch (getType(_lineCnt)) {
+				case 'm':
+					if (_mediaCnt == _media.length) {
+						_media = Arrays.copyOf(_media, Math.max(4, _mediaCnt * 2));
+					}
+					_media[_mediaCnt++] = _lineCnt;
+					break;
+				case 'c':
+					if (_mediaCnt == 0 && _connection < 0) {
+						_connection = _lineCnt;
+					}
+					break;
+				default:
+					break;
+			}
+			_lineCnt++;
+			pos = next;
+		}
+	}
+
+	/**
+	 * Whether this document has been parsed from (or serialized to) the given body.
+	 */
+	public boolean isIndexOf(byte[] body) {
+		return _body == body;
+	}
+
+	/**
+	 * The number of lines.
+	 */
+	public int getLineCount() {
+		return _lineCnt;
+	}
+
+	/**
+	 * The type of the given line, <code>0</code> if the line is not of the form
+	 * <code>&lt;type&gt;=&lt;value&gt;</code>.
+	 */
+	public char getType(int line) {
+		int begin = _begin[line];
+		if (_eol[line] - begin < 2 || _body[begin + 1] != '=') {
+			return 0;
+		}
+		return (char) _body[begin];
+	}
+
+	/**
+	 * The (trimmed) value of the given line.
+	 */
+	public String getValue(int line) {
+		if (_changed != null && _changed[line] != null) {
+			return _changed[line];
+		}
+		int begin = valueBegin(line);
+		int end = valueEnd(line, begin);
+		return new String(_body, begin, end - begin, StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * Sets a new value for the given line.
+	 */
+	public void setValue(int line, String value) {
+		if (_changed == null) {
+			_changed = new String[_lineCnt];
+		}
+		_changed[line] = value;
+	}
+
+	/**
+	 * Whether a line has been changed since the last serialization.
+	 */
+	public boolean isModified() {
+		return _changed != null;
+	}
+
+	/**
+	 * The number of media descriptions.
+	 */
+	public int getMediaCount() {
+		return _mediaCnt;
+	}
+
+	/**
+	 * The index of the m= line of the given media description.
+	 */
+	public int getMediaLine(int media) {
+		return _media[media];
+	}
+
+	/**
+	 * The media type of the given media description.
+	 */
+	public String getMediaType(int media) {
+		int line = _media[media];
+		if (isChanged(line)) {
+			return new MediaField(_changed[line]).getMediaType();
+		}
+		int begin = valueBegin(line);
+		int end = tokenEnd(begin, _eol[line]);
+		return new String(_body, begin, end - begin, StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * Whether the given media description has the given media type.
+	 */
+	public boolean isMediaType(int media, String mediaType) {
+		int line = _media[media];
+		if (isChanged(line)) {
+			return getMediaType(media).equals(mediaType);
+		}
+		int begin = valueBegin(line);
+		int end = tokenEnd(begin, _eol[line]);
+		return equals(begin, end, mediaType);
+	}
+
+	/**
+	 * The port of the given media description.
+	 */
+	public int getMediaPort(int media) {
+		int line = _media[media];
+		if (isChanged(line)) {
+			return new MediaField(_changed[line]).getPort();
+		}
+		int begin = tokenEnd(valueBegin(line), _eol[line]) + 1;
+		int port = 0;
+		for (int n = begin, end = _eol[line]; n < end; n++) {
+			int c = _body[n];
+			if (c < '0' || c > '9') {
+				break;
+			}
+			port = port * 10 + (c - '0');
+		}
+		return port;
+	}
+
+	/**
+	 * Replaces the port (and port count) of the given media description.
+	 */
+	public void setMediaPort(int media, int port) {
+		int line = _media[media];
+		String value = getValue(line);
+		int portEnd = portEnd(value);
+		if (portEnd < 0) {
+			throw new IllegalArgumentException("Invalid media line: " + value);
+		}
+		setValue(line, value.substring(0, value.indexOf(' ') + 1) + port + value.substring(portEnd));
+	}
+
+	/**
+	 * Whether the given media description has a port that can be replaced with
+	 * {@link #setMediaPort(int, int)}.
+	 */
+	public boolean hasMediaPort(int media) {
+		return portEnd(getValue(_media[media])) >= 0;
+	}
+
+	private static int portEnd(String mediaValue) {
+		int typeEnd = mediaValue.indexOf(' ');
+		return typeEnd < 0 ? -1 : mediaValue.indexOf(' ', typeEnd + 1);
+	}
+
+	/**
+	 * Whether there is a session-level connection line.
+	 */
+	public boolean hasConnection() {
+		return _connection >= 0;
+	}
+
+	/**
+	 * The address of the session-level connection line, <code>null</code> if there is none.
+	 */
+	public String getConnectionAddress() {
+		if (_connection < 0) {
+			return null;
+		}
+		String value = getValue(_connection);
+		int begin = addressBegin(value);
+		if (begin < 0) {
+			return null;
+		}
+		int end = value.indexOf('/', begin);
+		return value.substring(begin, end < 0 ? value.length() : end);
+	}
+
+	/**
+	 * Replaces the address of the session-level connection line, keeping TTL and number of
+	 * addresses.
+	 *
+	 * @return Whether there is a session-level connection line that could be changed.
+	 */
+	public boolean setConnectionAddress(String address) {
+		if (_connection < 0) {
+			return false;
+		}
+		String value = getValue(_connection);
+		int begin = addressBegin(value);
+		if (begin < 0) {
+			return false;
+		}
+		int end = value.indexOf('/', begin);
+		setValue(_connection, value.substring(0, begin) + address + (end < 0 ? "" : value.substring(end)));
+		return true;
+	}
+
+	private static int addressBegin(String connection) {
+		int space = connection.indexOf(' ');
+		if (space >= 0) {
+			space = connection.indexOf(' ', space + 1);
+		}
+		return space < 0 ? -1 : space + 1;
+	}
+
+	/**
+	 * Serializes the session description.
+	 *
+	 * <p>
+	 * Unchanged lines are copied as they are, changed lines are written with their new value and
+	 * their original line terminator. Afterwards, this document is an index of the returned body.
+	 * </p>
+	 */
+	public byte[] toBytes() {
+		if (_changed == null) {
+			return _body;
+		}
+		byte[] result = serialize();
+		index(result);
+		return result;
+	}
+
+	private byte[] serialize() {
+		int size = _body.length;
+		for (int line = 0; line < _lineCnt; line++) {
+			String value = _changed[line];
+			if (value != null) {
+				size += 2 + value.length() - (_eol[line] - _begin[line]);
+			}
+		}
+		byte[] result = new byte[size];
+		int pos = 0;
+		int copied = 0;
+		for (int line = 0; line < _lineCnt; line++) {
+			String value = _changed[line];
+			if (value == null) {
+				continue;
+			}
+			int begin = _begin[line];
+			System.arraycopy(_body, copied, result, pos, begin - copied);
+			pos += begin - copied;
+			result[pos++] = _body[begin];
+			result[pos++] = '=';
+			byte[] bytes = value.getBytes(StandardCharsets.ISO_8859_1);
+			System.arraycopy(bytes, 0, result, pos, bytes.length);
+			pos += bytes.length;
+			copied = _eol[line];
+		}
+		System.arraycopy(_body, copied, result, pos, _body.length - copied);
+		return result;
+	}
+
+	/**
+	 * Creates a {@link SdpMessage} for this session description.
+	 *
+	 * <p>
+	 * Fields are created from the line index and attributes of media descriptions are decoded only
+	 * when accessed.
+	 * </p>
+	 */
+	public SdpMessage toSdpMessage() {
+		return new SdpMessage(this);
+	}
+
+	/**
+	 * The first session-level field of the given type, <code>null</code> if there is none.
+	 */
+	SdpField getSessionField(char type) {
+		int end = sessionEnd();
+		for (int line = 0; line < end; line++) {
+			if (getType(line) == type) {
+				return new SdpField(type, getValue(line));
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * All session-level fields of the given type.
+	 */
+	SdpField[] getSessionFields(char type) {
+		int end = sessionEnd();
+		int cnt = 0;
+		for (int line = 0; line < end; line++) {
+			if (getType(line) == type) {
+				cnt++;
+			}
+		}
+		SdpField[] result = new SdpField[cnt];
+		for (int line = 0, n = 0; n < cnt; line++) {
+			if (getType(line) == type) {
+				result[n++] = new SdpField(type, getValue(line));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * The first field of the given type within the given media description, <code>null</code> if
+	 * there is none.
+	 */
+	SdpField getMediaField(int media, char type) {
+		for (int line = _media[media] + 1, end = mediaEnd(media); line < end; line++) {
+			if (getType(line) == type) {
+				return new SdpField(type, getValue(line));
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * The lazily decoded attributes of the given media description.
+	 */
+	SdpAttributeList getMediaAttributes(int media) {
+		int end = mediaEnd(media);
+		int cnt = 0;
+		for (int line = _media[media] + 1; line < end; line++) {
+			if (getType(line) == 'a') {
+				cnt++;
+			}
+		}
+		int[] begin = new int[cnt];
+		int[] eol = new int[cnt];
+		for (int line = _media[media] + 1, n = 0; n < cnt; line++) {
+			if (getType(line) == 'a') {
+				begin[n] = valueBegin(line);
+				eol[n] = valueEnd(line, begin[n]);
+				n++;
+			}
+		}
+		return new SdpAttributeList(_body, begin, eol);
+	}
+
+	private int sessionEnd() {
+		return _mediaCnt == 0 ? _lineCnt : _media[0];
+	}
+
+	private int mediaEnd(int media) {
+		return media + 1 < _mediaCnt ? _media[media + 1] : _lineCnt;
+	}
+
+	private boolean isChanged(int line) {
+		return _changed != null && _changed[line] != null;
+	}
+
+	private int valueBegin(int line) {
+		int begin = _begin[line] + 2;
+		int eol = _eol[line];
+		while (begin < eol && _body[begin] <= ' ') {
+			begin++;
+		}
+		return begin;
+	}
+
+	private int valueEnd(int line, int begin) {
+		int end = _eol[line];
+		while (end > begin && _body[end - 1] <= ' ') {
+			end--;
+		}
+		return end;
+	}
+
+	private int tokenEnd(int begin, int eol) {
+		int end = begin;
+		while (end < eol && _body[end] != ' ') {
+			end++;
+		}
+		return end;
+	}
+
+	private boolean equals(int begin, int end, String value) {
+		if (end - begin != value.length()) {
+			return false;
+		}
+		for (int n = begin, k = 0; n < end; n++, k++) {
+			if (_body[n] != value.charAt(k)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return new String(_changed == null ? _body : serialize(), StandardCharsets.ISO_8859_1);
+	}
+
+}
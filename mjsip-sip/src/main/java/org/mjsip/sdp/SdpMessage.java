@@ -28,6 +28,7 @@ import java.util.Vector;
 
 import org.mjsip.sdp.field.ConnectionField;
 import org.mjsip.sdp.field.KeyField;
+import org.mjsip.sdp.field.MediaField;
 import org.mjsip.sdp.field.OriginField;
 import org.mjsip.sdp.field.SessionNameField;
 import org.mjsip.sdp.field.TimeField;
@@ -215,6 +216,63 @@ public class SdpMessage {
 		}
 	} 
 	
+	/**
+	 * Creates a SDP message from the line index of a {@link SdpDocument}.
+	 * 
+	 * <p>
+	 * Fields are taken from the session-level and media-level lines of the document, with the
+	 * same defaults as {@link #SdpMessage(String)}. Attributes of media descriptions are decoded
+	 * on first access.
+	 * </p>
+	 */
+	SdpMessage(SdpDocument sdp) {
+		SdpField version = sdp.getSessionField('v');
+		_version = version != null ? version : new SdpField('v', "0");
+
+		SdpField origin = sdp.getSessionField('o');
+		_origin = origin != null ? new OriginField(origin) : new OriginField("unknown");
+
+		SdpField sessionName = sdp.getSessionField('s');
+		_sessionName = sessionName != null ? new SessionNameField(sessionName) : new SessionNameField("-");
+
+		_info = sdp.getSessionField('i');
+		_uri = sdp.getSessionField('u');
+		_email = sdp.getSessionField('e');
+		_phone = sdp.getSessionField('p');
+
+		SdpField connection = sdp.getSessionField('c');
+		_connection = connection != null ? new ConnectionField(connection) : new ConnectionField(AddressType.IP4, "0.0.0.0");
+
+		SdpField[] bandwidthInfos = sdp.getSessionFields('b');
+		_bandwidthInfos = bandwidthInfos.length > 0 ? bandwidthInfos : null;
+
+		SdpField[] times = sdp.getSessionFields('t');
+		if (times.length > 0) {
+			_timeDescriptions = new TimeDescription[times.length];
+			for (int i = 0; i < times.length; i++) {
+				_timeDescriptions[i] = new TimeDescription(new TimeField(times[i]));
+			}
+		} else {
+			_timeDescriptions = null;
+		}
+
+		_zone = sdp.getSessionField('z');
+		SdpField key = sdp.getSessionField('k');
+		_key = key != null ? new KeyField(key) : null;
+
+		for (SdpField attribute : sdp.getSessionFields('a')) {
+			_attributeFields.addElement(new AttributeField(attribute));
+		}
+
+		for (int media = 0, cnt = sdp.getMediaCount(); media < cnt; media++) {
+			MediaField mediaField = new MediaField(sdp.getValue(sdp.getMediaLine(media)));
+			SdpField mediaConnection = sdp.getMediaField(media, 'c');
+			_mediaDescriptors.addElement(new MediaDescriptor(mediaField,
+				mediaConnection != null ? new ConnectionField(mediaConnection) : null,
+				sdp.getMediaAttributes(media)));
+		}
+	}
+
 	/**
 	 * A copy of this {@link SdpMessage} with a replaced connection field.
 	 */
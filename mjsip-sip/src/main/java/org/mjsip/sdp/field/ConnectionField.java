@@ -116,8 +116,8 @@ public class ConnectionField extends SdpField {
 		String address=(new Parser(value)).skipString().skipString().getString();
 		int i=address.indexOf("/");
 		if (i<0) return 0;
-		int j=address.indexOf("/",i);
-		if (j<0) return Integer.parseInt(address.substring(i)); else return Integer.parseInt(address.substring(i,j));
+		int j=address.indexOf("/",i+1);
+		if (j<0) return Integer.parseInt(address.substring(i+1)); else return Integer.parseInt(address.substring(i+1,j));
 	}
 
 	/** Gets the number of addresses.
@@ -126,9 +126,9 @@ public class ConnectionField extends SdpField {
 		String address=(new Parser(value)).skipString().skipString().getString();
 		int i=address.indexOf("/");
 		if (i<0) return 0;
-		int j=address.indexOf("/",i);
+		int j=address.indexOf("/",i+1);
 		if (j<0) return 0;
-		return Integer.parseInt(address.substring(j));
+		return Integer.parseInt(address.substring(j+1));
 	}
 	
 }
@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.sip.authentication;
+
+import java.nio.charset.StandardCharsets;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.mjsip.sip.header.AuthenticationHeader;
+
+/**
+ * Server-side verification of HTTP Digest authentication responses (RFC 2617) from a precomputed
+ * <code>H(A1)</code>.
+ *
+ * <p>
+ * Computes the same response as {@link DigestAuthentication#getResponse()}, but starts from the
+ * stored digest of <code>username:realm:password</code> instead of the clear text password, uses
+ * the JDK {@link MessageDigest} (one instance per thread), and compares the expected response
+ * byte-wise with the one sent by the client without creating intermediate hex strings.
+ * </p>
+ */
+public final class DigestVerifier {
+
+	/** Length of an MD5 digest in bytes. */
+	public static final int HA1_LENGTH = 16;
+
+	private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+	private static final byte COLON = ':';
+
+	private static final ThreadLocal<DigestVerifier> INSTANCE = ThreadLocal.withInitial(DigestVerifier::new);
+
+	private final MessageDigest _md5;
+
+	private final byte[] _digest = new byte[HA1_LENGTH];
+
+	private final byte[] _secret = new byte[2 * HA1_LENGTH];
+
+	private final byte[] _hex = new byte[2 * HA1_LENGTH];
+
+	private byte[] _buffer = new byte[128];
+
+	private DigestVerifier() {
+		try {
+			_md5 = MessageDigest.getInstance("MD5");
+		} catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException("MD5 not supported.", ex);
+		}
+	}
+
+	/**
+	 * Computes <code>H(A1)</code> for the given credentials, the value to store instead of the
+	 * password.
+	 */
+	public static byte[] ha1(String username, String realm, String passwd) {
+		DigestVerifier verifier = INSTANCE.get();
+		verifier.update(username);
+		verifier._md5.update(COLON);
+		verifier.update(realm);
+		verifier._md5.update(COLON);
+		verifier.update(passwd);
+		return verifier._md5.digest();
+	}
+
+	/**
+	 * Whether the response parameter of the given authorization header is correct.
+	 *
+	 * @param method
+	 *        The method of the request to authenticate.
+	 * @param ah
+	 *        The (proxy) authorization header of the request.
+	 * @param body
+	 *        The body of the request, only relevant for <code>qop=auth-int</code>.
+	 * @param ha1
+	 *        The precomputed digest of the user's credentials, see
+	 *        {@link #ha1(String, String, String)}.
+	 */
+	public static boolean checkResponse(String method, AuthenticationHeader ah, byte[] body, byte[] ha1) {
+		return checkResponse(method, ah.getUriParam(), body, ha1, ah.getNonceParam(), ah.getCnonceParam(),
+				ah.getNcParam(), ah.getQopParam(), ah.getAlgorithParam(), ah.getResponseParam());
+	}
+
+	/**
+	 * Whether the given digest response is correct.
+	 */
+	public static boolean checkResponse(String method, String uri, byte[] body, byte[] ha1, String nonce,
+			String cnonce, String nc, String qop, String algorithm, String response) {
+		if (ha1 == null || response == null || response.length() != 2 * HA1_LENGTH) {
+			return false;
+		}
+		return INSTANCE.get().check(method, uri, body, ha1, nonce, cnonce, nc, qop, algorithm, response);
+	}
+
+	private boolean check(String method, String uri, byte[] body, byte[] ha1, String nonce, String cnonce,
+			String nc, String qop, String algorithm, String response) {
+		MessageDigest md5 = _md5;
+
+		byte[] secret = ha1;
+		if (algorithm != null && algorithm.equalsIgnoreCase("MD5-sess")) {
+			// A1 = H(username:realm:passwd) ":" nonce ":" cnonce
+			md5.update(ha1);
+			md5.update(COLON);
+			update(nonce);
+			md5.update(COLON);
+			update(cnonce);
+			secret = digest();
+		}
+		hex(secret, _secret);
+
+		// A2 = method ":" uri [ ":" H(body) ]
+		boolean authInt = qop != null && qop.equalsIgnoreCase("auth-int");
+		if (authInt) {
+			if (body != null) {
+				md5.update(body);
+			}
+			hex(digest(), _hex);
+		}
+		update(method);
+		md5.update(COLON);
+		update(uri);
+		if (authInt) {
+			md5.update(COLON);
+			md5.update(_hex);
+		}
+		hex(digest(), _hex);
+
+		// KD(H(A1), nonce ":" [ nc ":" cnonce ":" qop ":" ] H(A2))
+		md5.update(_secret);
+		md5.update(COLON);
+		update(nonce);
+		md5.update(COLON);
+		if (qop != null) {
+			update(nc);
+			md5.update(COLON);
+			update(cnonce);
+			md5.update(COLON);
+			update(qop);
+			md5.update(COLON);
+		}
+		md5.update(_hex);
+		hex(digest(), _hex);
+
+		// Compare in constant time, no early exit on the first differing digit.
+		int diff = 0;
+		for (int n = 0; n < _hex.length; n++) {
+			diff |= _hex[n] ^ response.charAt(n);
+		}
+		return diff == 0;
+	}
+
+	private byte[] digest() {
+		try {
+			_md5.digest(_digest, 0, HA1_LENGTH);
+		} catch (DigestException ex) {
+			throw new IllegalStateException(ex);
+		}
+		return _digest;
+	}
+
+	private static void hex(byte[] digest, byte[] hex) {
+		for (int n = 0, i = 0; n < HA1_LENGTH; n++) {
+			int b = digest[n];
+			hex[i++] = HEX_DIGITS[(b >> 4) & 0x0F];
+			hex[i++] = HEX_DIGITS[b & 0x0F];
+		}
+	}
+
+	/**
+	 * Feeds the UTF-8 encoding of the given value into the digest, copying pure ASCII values through
+	 * a reused buffer.
+	 */
+	private void update(String value) {
+		if (value == null) {
+			return;
+		}
+		int length = value.length();
+		if (length > _buffer.length) {
+			_buffer = new byte[Math.max(length, 2 * _buffer.length)];
+		}
+		byte[] buffer = _buffer;
+		for (int n = 0; n < length; n++) {
+			char c = value.charAt(n);
+			if (c >= 0x80) {
+				_md5.update(value.getBytes(StandardCharsets.UTF_8));
+				return;
+			}
+			buffer[n] = (byte) c;
+		}
+		_md5.update(buffer, 0, length);
+	}
+
+}
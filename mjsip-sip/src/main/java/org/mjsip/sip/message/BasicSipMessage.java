@@ -22,8 +22,15 @@
  */
 package org.mjsip.sip.message;
 
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 import java.util.Vector;
 
+import org.mjsip.sdp.SdpDocument;
 import org.mjsip.sdp.SdpMessage;
 import org.mjsip.sip.header.ContentDispositionHeader;
 import org.mjsip.sip.header.ContentLengthHeader;
@@ -54,6 +61,10 @@ public abstract class BasicSipMessage {
 	/** Whether printing debugging information on standard error output. */
 	public static final boolean DEBUG = LOG.isDebugEnabled();
 
+	/** Encoder of the message header, using the same charset as {@link #getBytes()}. */
+	private static final ThreadLocal<CharsetEncoder> ENCODER=ThreadLocal.withInitial(() -> Charset.defaultCharset().newEncoder()
+			.onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE));
+
 
 	/** UDP */
 	public static final String PROTO_UDP="udp"; 
@@ -96,6 +107,9 @@ public abstract class BasicSipMessage {
 	/** Message body */
 	protected byte[] body=null;
 
+	/** Session description parsed from the body, <code>null</code> if not (yet) parsed. */
+	private SdpDocument _sdp=null;
+
 	/** Costructs a new empty Message. */
 	public BasicSipMessage() {
 		//headers=new Vector();
@@ -301,6 +315,26 @@ public abstract class BasicSipMessage {
 	}
 
 
+	/** Writes this message to the given buffer, with the same bytes as returned by {@link #getBytes()}.
+	  * <p>
+	  * The message header is encoded directly into the buffer, without creating intermediate strings and arrays.
+	  * @return whether the message was written; false, if it does not fit into the remaining space of the buffer,
+	  * in which case the buffer position is not changed */
+	public boolean writeTo(ByteBuffer buffer) {
+		int start=buffer.position();
+		CharsetEncoder encoder=ENCODER.get();
+		encoder.reset();
+		CoderResult result=encoder.encode(CharBuffer.wrap(getMessageHeader()),buffer,true);
+		if (!result.isOverflow()) result=encoder.flush(buffer);
+		if (result.isOverflow() || (body!=null && buffer.remaining()<body.length)) {
+			buffer.position(start);
+			return false;
+		}
+		if (body!=null) buffer.put(body);
+		return true;
+	}
+
+
 	/** Gets the message header. */
 	private StringBuilder getMessageHeader() {
 		StringBuilder sb=new StringBuilder();
@@ -747,10 +781,49 @@ public abstract class BasicSipMessage {
 
 	/**
 	 * The body as parsed {@link SdpMessage}
+	 * 
+	 * <p>
+	 * The message is created from the {@link #getSdpDocument() cached line index} of the body, so
+	 * that the body is parsed only once, also if the message is requested several times.
+	 * </p>
 	 */
 	public SdpMessage getSdpBody() {
-		return body == null ? null : new SdpMessage(new String(body));
-	}  
+		SdpDocument sdp = getSdpDocument();
+		return sdp == null ? null : sdp.toSdpMessage();
+	}
+
+	/**
+	 * The body as session description parsed into an index of its lines.
+	 * 
+	 * <p>
+	 * The body is parsed on first access, and the result is kept until the body is replaced. Changes
+	 * to the returned document become effective with {@link #setSdpDocument(SdpDocument)}.
+	 * </p>
+	 * 
+	 * @return The parsed body, or <code>null</code>, if no body is present.
+	 */
+	public SdpDocument getSdpDocument() {
+		if (body == null) {
+			return null;
+		}
+		if (_sdp == null || !_sdp.isIndexOf(body)) {
+			_sdp = SdpDocument.parse(body);
+		}
+		return _sdp;
+	}
+
+	/**
+	 * Sets the SDP body from a (modified) session description.
+	 * 
+	 * <p>
+	 * Only changed lines of the document are serialized anew, and the document is kept as parsed
+	 * body of this message.
+	 * </p>
+	 */
+	public void setSdpDocument(SdpDocument sdp) {
+		setBody("application/sdp", sdp.toBytes());
+		_sdp = sdp;
+	}
 
 	//**************************** Specific Headers ****************************/
   
@@ -0,0 +1,413 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.sip.provider;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.mjsip.metrics.Counter;
+import org.mjsip.metrics.MetricsRegistry;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Filter for received datagrams that is applied before a datagram is parsed.
+ *
+ * <p>
+ * Each source address may send datagrams at a configured rate with a configured burst (token
+ * bucket, implemented as generic cell rate algorithm with a single time stamp per source).
+ * Datagrams exceeding the rate are dropped. A source that keeps exceeding its rate is blocked for
+ * a configured time, during which all of its datagrams are dropped. Datagrams within the rate are
+ * dropped, if their first line is neither a valid request line nor a valid status line.
+ * </p>
+ *
+ * <p>
+ * Sources are kept in a fixed size open addressing table split into independently locked
+ * segments. If the table is full, the source that was idle for the longest time among the
+ * candidate slots is replaced. Each slot stores the full source address, so that distinct
+ * sources never share a slot. Filtering a datagram from an IPv4 source does not allocate.
+ * </p>
+ */
+public class FloodFilter {
+
+	private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(FloodFilter.class);
+
+	/** Reason for dropping a datagram from a source exceeding its rate. */
+	public static final String RATE = "rate";
+
+	/** Reason for dropping a datagram from a blocked source. */
+	public static final String BLOCKED = "blocked";
+
+	/** Reason for dropping a datagram without valid SIP first line. */
+	public static final String INVALID = "invalid";
+
+	/** Maximum length of a first line accepted. */
+	static final int MAX_FIRST_LINE = 1024;
+
+	/** Maximum length of a method name. */
+	private static final int MAX_METHOD = 32;
+
+	private static final byte[] SIP_VERSION = { 'S', 'I', 'P', '/', '2', '.', '0' };
+
+	private static final int SEGMENT_BITS = 4;
+
+	private static final int SEGMENT_SIZE = 4096;
+
+	/** Number of slots searched for a source. */
+	private static final int PROBES = 8;
+
+	private static final boolean[] TOKEN = new boolean[128];
+
+	static {
+		for (char ch = 'a'; ch <= 'z'; ch++) {
+			TOKEN[ch] = true;
+			TOKEN[Character.toUpperCase(ch)] = true;
+		}
+		for (char ch = '0'; ch <= '9'; ch++) {
+			TOKEN[ch] = true;
+		}
+		for (char ch : "-.!%*_+`'~".toCharArray()) {
+			TOKEN[ch] = true;
+		}
+	}
+
+	/** Family of an empty slot. */
+	private static final byte EMPTY = 0;
+
+	private static final byte IPV4 = 4;
+
+	private static final byte IPV6 = 6;
+
+	private static final class Segment {
+
+		/** The address family of the source, {@link #EMPTY} for an unused slot. */
+		final byte[] _family = new byte[SEGMENT_SIZE];
+
+		/** The IPv4 address, or the high 64 bits of the IPv6 address of the source. */
+		final long[] _high = new long[SEGMENT_SIZE];
+
+		/** The low 64 bits of the IPv6 address of the source. */
+		final long[] _low = new long[SEGMENT_SIZE];
+
+		/** Theoretical arrival time of the next datagram from the source. */
+		final long[] _tat = new long[SEGMENT_SIZE];
+
+		final long[] _blockedUntil = new long[SEGMENT_SIZE];
+
+		final int[] _violations = new int[SEGMENT_SIZE];
+
+	}
+
+	private final Segment[] _segments = new Segment[1 << SEGMENT_BITS];
+
+	private final long _interval;
+
+	private final long _tolerance;
+
+	private final int _blockAfter;
+
+	private final long _blockTime;
+
+	private final Set<InetAddress> _exempt;
+
+	private final Counter _droppedRate;
+
+	private final Counter _droppedBlocked;
+
+	private final Counter _droppedInvalid;
+
+	private final Counter _blocks;
+
+	/**
+	 * Creates a {@link FloodFilter} from the given options.
+	 *
+	 * @param registry
+	 *        The registry to add drop counters to.
+	 * @param labels
+	 *        The labels of the counters.
+	 */
+	public FloodFilter(SipOptions options, MetricsRegistry registry, String labels) {
+		this(options.getFloodRate(), options.getFloodBurst(), options.getFloodBlockAfter(),
+				options.getFloodBlockTime(), resolve(options.getFloodExempt()), registry, labels);
+	}
+
+	/**
+	 * Creates a {@link FloodFilter}.
+	 *
+	 * @param rate
+	 *        Datagrams per second accepted from a single source.
+	 * @param burst
+	 *        Number of datagrams a source may send at once.
+	 * @param blockAfter
+	 *        Number of datagrams dropped from a source before it is blocked, <code>0</code> to
+	 *        never block sources.
+	 * @param blockTime
+	 *        Milliseconds a source is blocked.
+	 * @param exempt
+	 *        Source addresses that are never dropped, e.g. of peer proxies.
+	 * @param registry
+	 *        The registry to add drop counters to.
+	 * @param labels
+	 *        The labels of the counters.
+	 */
+	public FloodFilter(double rate, int burst, int blockAfter, long blockTime, Set<InetAddress> exempt,
+			MetricsRegistry registry, String labels) {
+		_interval = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+		_tolerance = _interval * (Math.max(1, burst) - 1);
+		_blockAfter = blockAfter;
+		_blockTime = TimeUnit.MILLISECONDS.toNanos(blockTime);
+		_exempt = exempt;
+		for (int n = 0; n < _segments.length; n++) {
+			_segments[n] = new Segment();
+		}
+
+		String dropped = "sip_flood_dropped_total";
+		String droppedHelp = "Received datagrams dropped before parsing.";
+		_droppedRate = registry.counter(dropped, droppedHelp, MetricsRegistry.addLabels(labels, "reason", RATE));
+		_droppedBlocked = registry.counter(dropped, droppedHelp,
+			MetricsRegistry.addLabels(labels, "reason", BLOCKED));
+		_droppedInvalid = registry.counter(dropped, droppedHelp,
+			MetricsRegistry.addLabels(labels, "reason", INVALID));
+		_blocks = registry.counter("sip_flood_blocks_total", "Sources blocked due to flooding.", labels);
+		registry.register("sip_flood_blocked_sources", "Sources currently blocked.", labels,
+			() -> getBlockedSources(System.nanoTime()));
+	}
+
+	private static Set<InetAddress> resolve(String[] addresses) {
+		Set<InetAddress> result = new HashSet<>();
+		if (addresses != null) {
+			for (String address : addresses) {
+				try {
+					result.add(InetAddress.getByName(address));
+				} catch (UnknownHostException ex) {
+					LOG.warn("Ignoring unknown address exempt from flood protection: {}", address);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Whether the given datagram is passed on for parsing.
+	 *
+	 * @param source
+	 *        The source address of the datagram.
+	 * @param buf
+	 *        The buffer containing the datagram.
+	 * @param off
+	 *        The offset of the datagram within the buffer.
+	 * @param len
+	 *        The length of the datagram.
+	 */
+	public boolean accept(InetAddress source, byte[] buf, int off, int len) {
+		return accept(source, buf, off, len, System.nanoTime());
+	}
+
+	boolean accept(InetAddress source, byte[] buf, int off, int len, long now) {
+		if (_exempt.contains(source)) {
+			return true;
+		}
+
+		byte family;
+		long high;
+		long low;
+		if (source instanceof Inet4Address) {
+			// The hash code of an IPv4 address is the address itself.
+			family = IPV4;
+			high = source.hashCode() & 0xFFFFFFFFL;
+			low = 0;
+		} else {
+			byte[] address = source.getAddress();
+			family = IPV6;
+			high = toLong(address, 0);
+			low = toLong(address, 8);
+		}
+		int hash = hash(high, low);
+		Segment segment = _segments[hash >>> (32 - SEGMENT_BITS)];
+		boolean valid;
+		synchronized (segment) {
+			int slot = slot(segment, family, high, low, hash, now);
+			if (segment._blockedUntil[slot] - now > 0) {
+				_droppedBlocked.increment();
+				return false;
+			}
+
+			long tat = segment._tat[slot];
+			if (tat - now > _tolerance) {
+				_droppedRate.increment();
+				violation(segment, slot, source, now);
+				return false;
+			}
+			if (tat - now <= 0) {
+				// The source is well within its rate.
+				segment._violations[slot] = 0;
+				tat = now;
+			}
+			segment._tat[slot] = tat + _interval;
+
+			valid = isValidFirstLine(buf, off, len);
+			if (!valid) {
+				violation(segment, slot, source, now);
+			}
+		}
+		if (!valid) {
+			_droppedInvalid.increment();
+		}
+		return valid;
+	}
+
+	private void violation(Segment segment, int slot, InetAddress source, long now) {
+		if (_blockAfter > 0 && ++segment._violations[slot] >= _blockAfter) {
+			segment._violations[slot] = 0;
+			segment._blockedUntil[slot] = now + _blockTime;
+			_blocks.increment();
+			LOG.warn("Blocking {} for {} ms due to flooding.", source,
+				Long.valueOf(TimeUnit.NANOSECONDS.toMillis(_blockTime)));
+		}
+	}
+
+	/**
+	 * The slot of the given source, a free slot, or the slot of the source idle for the longest
+	 * time.
+	 */
+	private static int slot(Segment segment, byte family, long high, long low, int hash, long now) {
+		int mask = SEGMENT_SIZE - 1;
+		int victim = -1;
+		long victimIdle = Long.MIN_VALUE;
+		for (int probe = 0; probe < PROBES; probe++) {
+			int slot = (hash + probe) & mask;
+			byte slotFamily = segment._family[slot];
+			if (slotFamily == family && segment._high[slot] == high && segment._low[slot] == low) {
+				return slot;
+			}
+			if (slotFamily == EMPTY) {
+				victim = slot;
+				break;
+			}
+			long idle = now - Math.max(segment._tat[slot], segment._blockedUntil[slot]);
+			if (victim < 0 || idle > victimIdle) {
+				victim = slot;
+				victimIdle = idle;
+			}
+		}
+		segment._family[victim] = family;
+		segment._high[victim] = high;
+		segment._low[victim] = low;
+		segment._tat[victim] = now;
+		segment._blockedUntil[victim] = now;
+		segment._violations[victim] = 0;
+		return victim;
+	}
+
+	private static long toLong(byte[] buf, int off) {
+		long result = 0;
+		for (int n = off, stop = off + 8; n < stop; n++) {
+			result = (result << 8) | (buf[n] & 0xFF);
+		}
+		return result;
+	}
+
+	private static int hash(long high, long low) {
+		long key = high * 0x9E3779B97F4A7C15L ^ low;
+		return (int) (key ^ (key >>> 32)) * 0x9E3779B9;
+	}
+
+	/**
+	 * The number of sources currently blocked.
+	 */
+	public int getBlockedSources(long now) {
+		int result = 0;
+		for (Segment segment : _segments) {
+			synchronized (segment) {
+				for (int n = 0; n < SEGMENT_SIZE; n++) {
+					if (segment._family[n] != EMPTY && segment._blockedUntil[n] - now > 0) {
+						result++;
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Whether the given datagram starts with a SIP request or status line, or is a keep-alive
+	 * consisting of line breaks only.
+	 */
+	public static boolean isValidFirstLine(byte[] buf, int off, int len) {
+		int end = off + Math.min(len, MAX_FIRST_LINE);
+		int lineEnd = off;
+		while (lineEnd < end && buf[lineEnd] != '\r' && buf[lineEnd] != '\n') {
+			lineEnd++;
+		}
+		if (len <= 0) {
+			return false;
+		}
+		if (lineEnd == off) {
+			// Keep-alive.
+			for (int n = off, stop = off + len; n < stop; n++) {
+				if (buf[n] != '\r' && buf[n] != '\n') {
+					return false;
+				}
+			}
+			return true;
+		}
+		if (lineEnd == end) {
+			// No line break within the limit.
+			return false;
+		}
+
+		if (matchesVersion(buf, off, lineEnd)) {
+			// Status-Line: SIP-Version SP Status-Code SP Reason-Phrase
+			int pos = off + SIP_VERSION.length;
+			return pos + 4 <= lineEnd && buf[pos] == ' ' && isDigit(buf[pos + 1]) && isDigit(buf[pos + 2])
+				&& isDigit(buf[pos + 3]) && (pos + 4 == lineEnd || buf[pos + 4] == ' ');
+		}
+
+		// Request-Line: Method SP Request-URI SP SIP-Version
+		int pos = off;
+		while (pos < lineEnd && isToken(buf[pos])) {
+			pos++;
+		}
+		if (pos == off || pos - off > MAX_METHOD || pos == lineEnd || buf[pos] != ' ') {
+			return false;
+		}
+		int uriStart = ++pos;
+		while (pos < lineEnd && buf[pos] != ' ') {
+			pos++;
+		}
+		if (pos == uriStart || pos == lineEnd) {
+			return false;
+		}
+		pos++;
+		return lineEnd - pos == SIP_VERSION.length && matchesVersion(buf, pos, lineEnd);
+	}
+
+	private static boolean matchesVersion(byte[] buf, int pos, int end) {
+		if (end - pos < SIP_VERSION.length) {
+			return false;
+		}
+		for (int n = 0; n < SIP_VERSION.length; n++) {
+			byte b = buf[pos + n];
+			if (b >= 'a' && b <= 'z') {
+				b -= 'a' - 'A';
+			}
+			if (b != SIP_VERSION[n]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isDigit(byte b) {
+		return b >= '0' && b <= '9';
+	}
+
+	private static boolean isToken(byte b) {
+		return b >= 0 && TOKEN[b];
+	}
+
+}
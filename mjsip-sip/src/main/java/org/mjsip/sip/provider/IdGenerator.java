@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.sip.provider;
+
+import java.security.SecureRandom;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Generator for random and stateless identifiers such as branches, tags, and Call-IDs.
+ *
+ * <p>
+ * Random identifiers are drawn from {@link ThreadLocalRandom}, so that threads creating
+ * identifiers concurrently do not contend on a shared generator. Stateless identifiers are derived
+ * from a 64 bit hash over the message fields that identify a request. The hash is computed
+ * incrementally over the field values without concatenating them first and is keyed with a
+ * per-process random secret, so that stateless identifiers cannot be predicted from outside.
+ * </p>
+ *
+ * <p>
+ * Digits are written directly into a per-thread character buffer, so that creating an identifier
+ * allocates only the resulting string.
+ * </p>
+ */
+public final class IdGenerator {
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	/** Maximum length of a generated identifier including its prefix. */
+	private static final int MAX_LENGTH = 256;
+
+	private static final ThreadLocal<char[]> BUFFER = ThreadLocal.withInitial(() -> new char[MAX_LENGTH]);
+
+	/** Secret for keying stateless hashes. */
+	private static final long SECRET = new SecureRandom().nextLong();
+
+	private static final long PRIME = 0x9E3779B97F4A7C15L;
+
+	private IdGenerator() {
+		// Static utility.
+	}
+
+	/**
+	 * Creates a random identifier of hexadecimal digits.
+	 *
+	 * @param prefix
+	 *        The prefix to prepend, e.g. a branch magic cookie.
+	 * @param digits
+	 *        The number of random digits.
+	 */
+	public static String randomHex(String prefix, int digits) {
+		char[] buffer = buffer(prefix.length() + digits);
+		prefix.getChars(0, prefix.length(), buffer, 0);
+		int pos = prefix.length();
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		while (digits > 0) {
+			long bits = random.nextLong();
+			for (int n = Math.min(digits, 16); n > 0; n--, digits--) {
+				buffer[pos++] = HEX[(int) (bits & 0xF)];
+				bits >>>= 4;
+			}
+		}
+		return new String(buffer, 0, pos);
+	}
+
+	/**
+	 * Creates a random identifier of decimal digits.
+	 *
+	 * @param digits
+	 *        The number of random digits.
+	 */
+	public static String randomDecimal(int digits) {
+		char[] buffer = buffer(digits);
+		int pos = decimalDigits(buffer, digits);
+		return new String(buffer, 0, pos);
+	}
+
+	/**
+	 * Creates a random identifier of decimal digits followed by a separator and suffix.
+	 *
+	 * @param digits
+	 *        The number of random digits.
+	 * @param separator
+	 *        The character between digits and suffix, e.g. <code>@</code> in a Call-ID.
+	 * @param suffix
+	 *        The suffix to append, e.g. the host of a Call-ID.
+	 */
+	public static String randomDecimal(int digits, char separator, String suffix) {
+		char[] buffer = buffer(digits + 1 + suffix.length());
+		int pos = decimalDigits(buffer, digits);
+		buffer[pos++] = separator;
+		suffix.getChars(0, suffix.length(), buffer, pos);
+		return new String(buffer, 0, pos + suffix.length());
+	}
+
+	private static int decimalDigits(char[] buffer, int digits) {
+		int pos = 0;
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		while (digits > 0) {
+			// 18 decimal digits fit into a positive long.
+			long value = random.nextLong(1_000_000_000_000_000_000L);
+			for (int n = Math.min(digits, 18); n > 0; n--, digits--) {
+				buffer[pos++] = (char) ('0' + (int) (value % 10));
+				value /= 10;
+			}
+		}
+		return pos;
+	}
+
+	/**
+	 * Creates a stateless identifier from a hash.
+	 *
+	 * @param prefix
+	 *        The prefix to prepend.
+	 * @param hash
+	 *        The hash computed with {@link #hash(long, CharSequence)} and {@link #hash(long, long)}.
+	 * @param digits
+	 *        The number of hexadecimal digits, at most 16.
+	 */
+	public static String hashHex(String prefix, long hash, int digits) {
+		digits = Math.min(digits, 16);
+		char[] buffer = buffer(prefix.length() + digits);
+		prefix.getChars(0, prefix.length(), buffer, 0);
+		int pos = prefix.length();
+		long bits = finish(hash);
+		for (int n = digits; n > 0; n--) {
+			buffer[pos++] = HEX[(int) (bits & 0xF)];
+			bits >>>= 4;
+		}
+		return new String(buffer, 0, pos);
+	}
+
+	/**
+	 * The initial value for computing a stateless hash.
+	 */
+	public static long hashStart() {
+		return SECRET;
+	}
+
+	/**
+	 * Adds the given string value to a stateless hash.
+	 *
+	 * @param hash
+	 *        The hash value so far.
+	 * @param value
+	 *        The value to add, <code>null</code> is allowed.
+	 * @return The new hash value.
+	 */
+	public static long hash(long hash, CharSequence value) {
+		if (value == null) {
+			return hash(hash, -1L);
+		}
+		int length = value.length();
+		for (int n = 0; n < length; n++) {
+			hash = (hash ^ value.charAt(n)) * PRIME;
+		}
+		// Separate values, so that ("ab", "c") and ("a", "bc") hash differently.
+		return (hash ^ length) * PRIME;
+	}
+
+	/**
+	 * Adds the given range of (ASCII) bytes to a stateless hash.
+	 *
+	 * <p>
+	 * For ASCII text, the result is the same as for {@link #hash(long, CharSequence)} with the
+	 * corresponding string.
+	 * </p>
+	 */
+	public static long hash(long hash, byte[] buf, int off, int len) {
+		for (int n = off, end = off + len; n < end; n++) {
+			hash = (hash ^ (buf[n] & 0xFF)) * PRIME;
+		}
+		return (hash ^ len) * PRIME;
+	}
+
+	/**
+	 * Adds the given numeric value to a stateless hash.
+	 *
+	 * @see #hash(long, CharSequence)
+	 */
+	public static long hash(long hash, long value) {
+		return (Long.rotateLeft(hash, 29) ^ value) * PRIME;
+	}
+
+	/**
+	 * Final avalanche step spreading all input bits over the result (from MurmurHash3).
+	 */
+	private static long finish(long hash) {
+		hash ^= hash >>> 33;
+		hash *= 0xFF51AFD7ED558CCDL;
+		hash ^= hash >>> 33;
+		hash *= 0xC4CEB9FE1A85EC53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+
+	private static char[] buffer(int length) {
+		if (length > MAX_LENGTH) {
+			throw new IllegalArgumentException("Identifier too long: " + length);
+		}
+		return BUFFER.get();
+	}
+
+}
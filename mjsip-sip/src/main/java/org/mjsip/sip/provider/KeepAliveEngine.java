@@ -0,0 +1,429 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.sip.provider;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.mjsip.sip.message.SipMessage;
+import org.slf4j.LoggerFactory;
+import org.zoolu.net.SocketAddress;
+
+/**
+ * Sends keep-alive tokens to many remote targets from the transports of a single
+ * {@link SipProvider}.
+ *
+ * <p>
+ * In contrast to {@link SipKeepAlive}, which runs one thread per target, all targets are kept in
+ * a hashed timer wheel that is advanced by a single periodic task of the provider's scheduler.
+ * Initial send times are spread randomly over the keep-alive interval, so that tokens to targets
+ * registered at the same time are not sent in one burst. The token is encoded once per tick and
+ * sent to all targets due in that tick.
+ * </p>
+ *
+ * <p>
+ * By default, an RFC 5626 "PING" (CRLF CRLF) is sent. Every message or "PONG" received from a
+ * target marks it as alive. If a dead time is set, targets that have not sent anything within that
+ * time are dropped and reported to the {@link KeepAliveListener}.
+ * </p>
+ */
+public class KeepAliveEngine {
+
+	private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(KeepAliveEngine.class);
+
+	/** Default resolution of the timer wheel in milliseconds. */
+	public static final long DEFAULT_TICK = 500;
+
+	/** RFC 5626 keep-alive "PING". */
+	public static final String PING = "\r\n\r\n";
+
+	/** Number of slots in the timer wheel, must be a power of two. */
+	private static final int WHEEL_SIZE = 1024;
+
+	private final SipProvider _sipProvider;
+
+	private final SipMessage _token;
+
+	private final long _tick;
+
+	/** Heads of the doubly linked target lists of all wheel slots. */
+	private final Target[] _wheel = new Target[WHEEL_SIZE];
+
+	/**
+	 * Targets by destination host address for liveness tracking.
+	 *
+	 * <p>
+	 * Targets behind the same address (e.g. a NAT) are distinguished by their port. The arrays are
+	 * replaced on modification, so that a received message is matched without allocating a key.
+	 * </p>
+	 */
+	private final ConcurrentHashMap<String, Target[]> _targets = new ConcurrentHashMap<>();
+
+	private int _size;
+
+	/** Buffer for targets due in the current tick. */
+	private final ArrayList<Target> _due = new ArrayList<>();
+
+	/** Buffer for the destinations to send a token to in the current tick. */
+	private final ArrayList<SocketAddress> _destinations = new ArrayList<>();
+
+	private long _currentTick;
+
+	private long _deadTime;
+
+	private KeepAliveListener _listener;
+
+	private ScheduledFuture<?> _task;
+
+	/**
+	 * Creates a {@link KeepAliveEngine} sending RFC 5626 "PING"s.
+	 */
+	public KeepAliveEngine(SipProvider sipProvider) {
+		this(sipProvider, new SipKeepAlive.SipToken(PING), DEFAULT_TICK);
+	}
+
+	/**
+	 * Creates a {@link KeepAliveEngine}.
+	 *
+	 * @param sipProvider
+	 *        The provider whose transports are used to send tokens.
+	 * @param token
+	 *        The keep-alive token to send.
+	 * @param tick
+	 *        The resolution of keep-alive intervals in milliseconds.
+	 */
+	public KeepAliveEngine(SipProvider sipProvider, SipMessage token, long tick) {
+		_sipProvider = sipProvider;
+		_token = token;
+		_tick = tick;
+	}
+
+	/**
+	 * Time in milliseconds without receiving anything from a target, after which it is considered
+	 * dead, or <code>0</code> if liveness is not checked.
+	 */
+	public synchronized long getDeadTime() {
+		return _deadTime;
+	}
+
+	/**
+	 * @see #getDeadTime()
+	 */
+	public synchronized void setDeadTime(long deadTime) {
+		_deadTime = deadTime;
+	}
+
+	/**
+	 * Sets the listener to inform about dead targets.
+	 */
+	public synchronized void setListener(KeepAliveListener listener) {
+		_listener = listener;
+	}
+
+	/**
+	 * Number of targets currently kept alive.
+	 */
+	public synchronized int size() {
+		return _size;
+	}
+
+	/**
+	 * Starts sending keep-alive tokens to the given target.
+	 *
+	 * @param target
+	 *        The destination of keep-alive tokens.
+	 * @param interval
+	 *        The time between two tokens in milliseconds.
+	 * @return Handle to update or stop sending tokens. A target previously added for the same
+	 *         destination is stopped.
+	 */
+	public synchronized Target add(SocketAddress target, long interval) {
+		Target result = new Target(target, interval);
+		long intervalTicks = result._intervalTicks;
+		link(result, _currentTick + 1 + ThreadLocalRandom.current().nextLong(intervalTicks));
+		Target clash = lookup(target.getAddress().toString(), target.getPort());
+		if (clash != null) {
+			clash._stop = true;
+			remove(clash);
+		}
+		index(result);
+
+		if (_task == null) {
+			_task = _sipProvider.scheduler().scheduler().scheduleAtFixedRate(this::onTick, _tick, _tick,
+				TimeUnit.MILLISECONDS);
+		}
+		return result;
+	}
+
+	/**
+	 * Stops all keep-alive tokens.
+	 */
+	public synchronized void halt() {
+		if (_task != null) {
+			_task.cancel(false);
+			_task = null;
+		}
+		for (int n = 0; n < WHEEL_SIZE; n++) {
+			for (Target target = _wheel[n]; target != null; target = target._next) {
+				target._stop = true;
+				target._slot = -1;
+			}
+			_wheel[n] = null;
+		}
+		_targets.clear();
+		_size = 0;
+	}
+
+	/**
+	 * Notifies that a message (or keep-alive "PONG") has been received from the given address.
+	 */
+	public void onReceived(String address, int port) {
+		if (_targets.isEmpty()) {
+			return;
+		}
+		Target target = lookup(address, port);
+		if (target != null) {
+			target._lastReceived = System.currentTimeMillis();
+		}
+	}
+
+	private Target lookup(String address, int port) {
+		Target[] targets = _targets.get(address);
+		if (targets != null) {
+			for (Target target : targets) {
+				if (target._destination.getPort() == port) {
+					return target;
+				}
+			}
+		}
+		return null;
+	}
+
+	synchronized void remove(Target target) {
+		if (target._slot >= 0) {
+			unlink(target);
+		}
+		unindex(target);
+	}
+
+	synchronized void move(Target target, SocketAddress destination) {
+		unindex(target);
+		target._destination = destination;
+		if (!target._stop) {
+			Target clash = lookup(destination.getAddress().toString(), destination.getPort());
+			if (clash != null) {
+				clash._stop = true;
+				remove(clash);
+			}
+			index(target);
+		}
+	}
+
+	private void index(Target target) {
+		String address = target._destination.getAddress().toString();
+		Target[] before = _targets.get(address);
+		Target[] after;
+		if (before == null) {
+			after = new Target[] { target };
+		} else {
+			after = Arrays.copyOf(before, before.length + 1);
+			after[before.length] = target;
+		}
+		_targets.put(address, after);
+		_size++;
+	}
+
+	private void unindex(Target target) {
+		String address = target._destination.getAddress().toString();
+		Target[] before = _targets.get(address);
+		if (before == null) {
+			return;
+		}
+		for (int n = 0; n < before.length; n++) {
+			if (before[n] == target) {
+				if (before.length == 1) {
+					_targets.remove(address);
+				} else {
+					Target[] after = new Target[before.length - 1];
+					System.arraycopy(before, 0, after, 0, n);
+					System.arraycopy(before, n + 1, after, n, after.length - n);
+					_targets.put(address, after);
+				}
+				_size--;
+				return;
+			}
+		}
+	}
+
+	private void onTick() {
+		long now = System.currentTimeMillis();
+		ArrayList<Target> due = _due;
+		ArrayList<SocketAddress> destinations = _destinations;
+		KeepAliveListener listener;
+		long deadTime;
+		synchronized (this) {
+			listener = _listener;
+			deadTime = _deadTime;
+
+			long tick = ++_currentTick;
+			int slot = (int) (tick & (WHEEL_SIZE - 1));
+			Target target = _wheel[slot];
+			while (target != null) {
+				Target next = target._next;
+				if (target._dueTick <= tick) {
+					unlink(target);
+					due.add(target);
+				}
+				target = next;
+			}
+		}
+
+		for (int n = 0, cnt = due.size(); n < cnt; n++) {
+			Target target = due.get(n);
+			if (target._stop) {
+				continue;
+			}
+			if (target._expire > 0 && now > target._expire) {
+				LOG.debug("KeepAlive: expired: {}", target);
+				target.halt();
+				continue;
+			}
+			if (deadTime > 0 && now - target._lastReceived > deadTime) {
+				LOG.debug("KeepAlive: dead: {}", target);
+				target.halt();
+				if (listener != null) {
+					listener.onKeepAliveTimeout(this, target);
+				}
+				continue;
+			}
+
+			destinations.add(target._destination);
+
+			synchronized (this) {
+				if (!target._stop) {
+					link(target, _currentTick + target._intervalTicks);
+				}
+			}
+		}
+		due.clear();
+
+		if (!destinations.isEmpty()) {
+			_sipProvider.sendRawMessage(_token, _sipProvider.getDefaultTransport(), destinations, 127);
+			destinations.clear();
+		}
+	}
+
+	private void link(Target target, long dueTick) {
+		int slot = (int) (dueTick & (WHEEL_SIZE - 1));
+		Target head = _wheel[slot];
+		target._dueTick = dueTick;
+		target._slot = slot;
+		target._prev = null;
+		target._next = head;
+		if (head != null) {
+			head._prev = target;
+		}
+		_wheel[slot] = target;
+	}
+
+	private void unlink(Target target) {
+		if (target._prev == null) {
+			_wheel[target._slot] = target._next;
+		} else {
+			target._prev._next = target._next;
+		}
+		if (target._next != null) {
+			target._next._prev = target._prev;
+		}
+		target._prev = null;
+		target._next = null;
+		target._slot = -1;
+	}
+
+	/**
+	 * Handle of a single target kept alive by a {@link KeepAliveEngine}.
+	 */
+	public final class Target {
+
+		volatile SocketAddress _destination;
+
+		final long _intervalTicks;
+
+		final long _interval;
+
+		volatile long _expire;
+
+		volatile long _lastReceived = System.currentTimeMillis();
+
+		volatile boolean _stop;
+
+		long _dueTick;
+
+		int _slot = -1;
+
+		Target _prev;
+
+		Target _next;
+
+		Target(SocketAddress destination, long interval) {
+			_destination = destination;
+			_interval = interval;
+			_intervalTicks = Math.max(1, (interval + _tick - 1) / _tick);
+		}
+
+		/**
+		 * Whether tokens are still sent to this target.
+		 */
+		public boolean isRunning() {
+			return !_stop;
+		}
+
+		/**
+		 * The destination of keep-alive tokens.
+		 */
+		public SocketAddress getDestSoAddress() {
+			return _destination;
+		}
+
+		/**
+		 * Changes the destination of keep-alive tokens.
+		 */
+		public void setDestSoAddress(SocketAddress destination) {
+			move(this, destination);
+		}
+
+		/**
+		 * Sets the time in milliseconds from now after which sending tokens stops, or
+		 * <code>0</code> for no expiration.
+		 */
+		public void setExpirationTime(long time) {
+			_expire = time == 0 ? 0 : System.currentTimeMillis() + time;
+		}
+
+		/**
+		 * The time in milliseconds when the last message was received from this target.
+		 */
+		public long getLastReceivedTime() {
+			return _lastReceived;
+		}
+
+		/**
+		 * Stops sending tokens to this target.
+		 */
+		public void halt() {
+			_stop = true;
+			remove(this);
+		}
+
+		@Override
+		public String toString() {
+			return _destination + " (" + _interval + "ms)";
+		}
+	}
+
+}
@@ -0,0 +1,20 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.sip.provider;
+
+/**
+ * Listener informed about targets of a {@link KeepAliveEngine} that stopped responding.
+ */
+public interface KeepAliveListener {
+
+	/**
+	 * Called when nothing has been received from the given target within the engine's dead time.
+	 *
+	 * <p>
+	 * The target has already been removed from the engine, when this method is called.
+	 * </p>
+	 */
+	void onKeepAliveTimeout(KeepAliveEngine engine, KeepAliveEngine.Target target);
+
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.sip.provider;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.mjsip.capture.CapturedPacket;
+import org.mjsip.capture.PacketCapture;
+import org.slf4j.LoggerFactory;
+import org.zoolu.net.IpAddress;
+import org.zoolu.net.UdpProvider;
+
+/**
+ * {@link UdpTransport} receiving on several sockets bound to the same port.
+ *
+ * <p>
+ * All sockets are opened with <code>SO_REUSEPORT</code>, so that the kernel distributes received
+ * datagrams among them by a hash of the source and destination addresses. Each socket has its
+ * own receiving thread that also dispatches the received messages, which scales the processing of
+ * received messages beyond a single core.
+ * </p>
+ *
+ * <p>
+ * Messages sent while dispatching a received message (e.g. responses) are sent through the
+ * socket that received the message. Messages sent from other threads are distributed among all
+ * sockets. Since all sockets share the same local address, the choice is not visible to the
+ * remote end.
+ * </p>
+ */
+public class MultiUdpTransport extends UdpTransport {
+
+	private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(MultiUdpTransport.class);
+
+	private final DatagramChannel[] _channels;
+
+	private final Receiver[] _receivers;
+
+	private final InetAddress _localAddress;
+
+	private final int _localPort;
+
+	private final AtomicInteger _next = new AtomicInteger();
+
+	private volatile boolean _halted;
+
+	/**
+	 * Creates a {@link MultiUdpTransport}.
+	 *
+	 * @param local_port
+	 *        The port to bind the sockets to, <code>0</code> for an ephemeral port.
+	 * @param host_ipaddr
+	 *        The address to bind the sockets to, <code>null</code> for the wildcard address.
+	 * @param sockets
+	 *        The number of sockets to open.
+	 */
+	public MultiUdpTransport(int local_port, IpAddress host_ipaddr, int sockets) throws IOException {
+		InetAddress bindAddress = host_ipaddr == null ? null : host_ipaddr.getInetAddress();
+		_channels = new DatagramChannel[Math.max(1, sockets)];
+		try {
+			int port = local_port;
+			for (int n = 0; n < _channels.length; n++) {
+				DatagramChannel channel = DatagramChannel.open();
+				_channels[n] = channel;
+				channel.setOption(StandardSocketOptions.SO_REUSEPORT, Boolean.TRUE);
+				channel.bind(new InetSocketAddress(bindAddress, port));
+
+				// Further sockets must share the port actually chosen for the first one.
+				port = ((InetSocketAddress) channel.getLocalAddress()).getPort();
+			}
+			InetSocketAddress local = (InetSocketAddress) _channels[0].getLocalAddress();
+			_localAddress = local.getAddress();
+			_localPort = local.getPort();
+		} catch (IOException | RuntimeException ex) {
+			closeChannels();
+			throw ex;
+		}
+
+		_receivers = new Receiver[_channels.length];
+		for (int n = 0; n < _channels.length; n++) {
+			_receivers[n] = new Receiver(_channels[n], "SipUdp-" + _localPort + "-" + n);
+		}
+		for (Receiver receiver : _receivers) {
+			receiver.start();
+		}
+	}
+
+	/**
+	 * Whether sockets can share a port on this platform.
+	 */
+	public static boolean isSupported() {
+		try (DatagramChannel channel = DatagramChannel.open()) {
+			return channel.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT);
+		} catch (IOException ex) {
+			return false;
+		}
+	}
+
+	/**
+	 * The number of sockets receiving datagrams.
+	 */
+	public int getSockets() {
+		return _channels.length;
+	}
+
+	@Override
+	public int getLocalPort() {
+		return _localPort;
+	}
+
+	@Override
+	InetAddress getLocalInetAddress() {
+		return _localAddress;
+	}
+
+	@Override
+	void sendBuffer(ByteBuffer data, IpAddress dest_ipaddr, int dest_port) throws IOException {
+		if (_halted) {
+			return;
+		}
+		InetAddress destination = dest_ipaddr.getInetAddress();
+		PacketCapture c = capture;
+		if (c != null) {
+			c.capture(CapturedPacket.UDP, _localAddress, _localPort, destination, dest_port, 0, data);
+		}
+		channel().send(data, new InetSocketAddress(destination, dest_port));
+	}
+
+	/**
+	 * The channel to send through from the current thread.
+	 */
+	private DatagramChannel channel() {
+		Thread current = Thread.currentThread();
+		if (current instanceof Receiver && ((Receiver) current).owner() == this) {
+			return ((Receiver) current)._channel;
+		}
+		return _channels[(_next.getAndIncrement() & Integer.MAX_VALUE) % _channels.length];
+	}
+
+	@Override
+	public void halt() {
+		_halted = true;
+		closeChannels();
+	}
+
+	private void closeChannels() {
+		for (DatagramChannel channel : _channels) {
+			if (channel != null) {
+				try {
+					channel.close();
+				} catch (IOException ex) {
+					LOG.debug("Closing UDP socket failed.", ex);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Called when a receiving thread stops due to an error.
+	 */
+	void processReceiverFailed(Exception error) {
+		synchronized (this) {
+			if (_halted) {
+				return;
+			}
+			_halted = true;
+		}
+		LOG.warn("Receiving UDP datagrams failed, closing {}.", this, error);
+		closeChannels();
+
+		SipTransportListener l = listener;
+		listener = null;
+		if (l != null) {
+			l.onTransportTerminated(this, error);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "udp:" + _localAddress.getHostAddress() + ":" + _localPort + "(" + _channels.length + " sockets)";
+	}
+
+	/**
+	 * Thread receiving and dispatching datagrams from a single socket.
+	 */
+	private final class Receiver extends Thread {
+
+		final DatagramChannel _channel;
+
+		Receiver(DatagramChannel channel, String name) {
+			super(name);
+			_channel = channel;
+		}
+
+		MultiUdpTransport owner() {
+			return MultiUdpTransport.this;
+		}
+
+		@Override
+		public void run() {
+			ByteBuffer buffer = ByteBuffer.allocate(UdpProvider.BUFFER_SIZE);
+			while (!_halted) {
+				InetSocketAddress source;
+				try {
+					buffer.clear();
+					source = (InetSocketAddress) _channel.receive(buffer);
+				} catch (ClosedChannelException ex) {
+					if (!_halted) {
+						processReceiverFailed(ex);
+					}
+					return;
+				} catch (IOException ex) {
+					processReceiverFailed(ex);
+					return;
+				}
+
+				try {
+					processReceivedData(buffer.array(), 0, buffer.position(), source.getAddress(), source.getPort());
+				} catch (Exception ex) {
+					LOG.warn("Processing datagram from {} failed.", source, ex);
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.sip.provider;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.mjsip.sip.header.ToHeader;
+import org.mjsip.sip.message.SipMessage;
+import org.mjsip.sip.message.SipResponses;
+
+/**
+ * Admission control for new requests received by a {@link SipProvider}.
+ *
+ * <p>
+ * The provider reports the time spent dispatching each received message. From that, the
+ * occupancy of the dispatching threads is computed for short measurement intervals. If the
+ * occupancy exceeds the configured target, the fraction of admitted initial requests is reduced
+ * proportionally, and increased again when the occupancy drops below the target (occupancy
+ * algorithm, see RFC 7415 for the rate based variant). Additionally, initial requests are
+ * rejected while more than the configured number of messages are dispatched concurrently.
+ * </p>
+ *
+ * <p>
+ * Only initial requests, i.e. requests outside of a dialog, are subject to admission control.
+ * Responses, requests within a dialog, <code>ACK</code> and <code>CANCEL</code> requests and
+ * retransmissions of admitted requests are always processed, so that established calls and
+ * transactions complete and the accepted work (goodput) stays constant under overload instead of
+ * collapsing.
+ * </p>
+ *
+ * <p>
+ * Rejected requests are answered statelessly with <code>503 Service Unavailable</code>, which is
+ * assembled from pre-built parts and the transaction headers of the request without parsing the
+ * remaining message. The <i>Retry-After</i> value is randomized between the configured value and
+ * twice that value to spread retries of rejected clients.
+ * </p>
+ */
+public class OverloadControl {
+
+	/** Length of the measurement interval in nanoseconds. */
+	static final long INTERVAL = TimeUnit.MILLISECONDS.toNanos(100);
+
+	/** Fraction of initial requests admitted even at the highest load, to probe the load. */
+	static final double MIN_ADMIT = 0.01;
+
+	/** Maximum factor by which the admitted fraction increases per interval. */
+	static final double MAX_INCREASE = 2;
+
+	private static final String STATUS_LINE = "SIP/2.0 " + SipResponses.SERVICE_UNAVAILABLE + " "
+			+ SipResponses.reasonOf(SipResponses.SERVICE_UNAVAILABLE) + "\r\n";
+
+	private final double _targetOccupancy;
+
+	private final int _maxPending;
+
+	private final int _capacity;
+
+	private final String _tag = SipProvider.pickTag();
+
+	private final String[] _trailers;
+
+	private final LongAdder _busy = new LongAdder();
+
+	private final AtomicInteger _pending = new AtomicInteger();
+
+	private final AtomicLong _intervalStart;
+
+	private volatile double _admit = 1;
+
+	private volatile double _occupancy;
+
+	/**
+	 * Creates an {@link OverloadControl} from the given options.
+	 */
+	public OverloadControl(SipOptions options) {
+		this(options, 1);
+	}
+
+	/**
+	 * Creates an {@link OverloadControl} from the given options.
+	 *
+	 * @param capacity
+	 *        The number of threads dispatching received messages.
+	 */
+	public OverloadControl(SipOptions options, int capacity) {
+		this(options.getOverloadOccupancy() / 100.0, options.getOverloadMaxPending(), capacity,
+				options.getOverloadRetryAfter(), options.getServerInfo(), System.nanoTime());
+	}
+
+	/**
+	 * Creates an {@link OverloadControl}.
+	 *
+	 * @param targetOccupancy
+	 *        The fraction of time the dispatching threads may be busy before initial requests are
+	 *        rejected, <code>0</code> for no occupancy control.
+	 * @param maxPending
+	 *        The maximum number of messages dispatched concurrently before initial requests are
+	 *        rejected, <code>0</code> for no limit.
+	 * @param capacity
+	 *        The number of threads dispatching received messages.
+	 * @param retryAfter
+	 *        The minimum <i>Retry-After</i> value in seconds of rejections.
+	 * @param serverInfo
+	 *        The value of the <i>Server</i> header of rejections, <code>null</code> for none.
+	 * @param now
+	 *        The current {@link System#nanoTime()}.
+	 */
+	OverloadControl(double targetOccupancy, int maxPending, int capacity, int retryAfter, String serverInfo,
+			long now) {
+		_targetOccupancy = targetOccupancy;
+		_maxPending = maxPending;
+		_capacity = Math.max(1, capacity);
+		_intervalStart = new AtomicLong(now);
+
+		int minRetry = Math.max(1, retryAfter);
+		String server = serverInfo == null ? "" : "Server: " + serverInfo + "\r\n";
+		_trailers = new String[minRetry + 1];
+		for (int n = 0; n < _trailers.length; n++) {
+			_trailers[n] = "Retry-After: " + (minRetry + n) + "\r\n" + server + "Content-Length: 0\r\n\r\n";
+		}
+	}
+
+	/**
+	 * Notifies the start of dispatching a received message.
+	 *
+	 * @return The start time to pass to {@link #exit(long)}.
+	 */
+	public long enter() {
+		long now = System.nanoTime();
+		enter(now);
+		return now;
+	}
+
+	void enter(long now) {
+		_pending.incrementAndGet();
+		long start = _intervalStart.get();
+		if (now - start >= INTERVAL && _intervalStart.compareAndSet(start, now)) {
+			update(now - start);
+		}
+	}
+
+	/**
+	 * Notifies the end of dispatching a received message.
+	 *
+	 * @param start
+	 *        The value returned from {@link #enter()}.
+	 */
+	public void exit(long start) {
+		exit(start, System.nanoTime());
+	}
+
+	void exit(long start, long now) {
+		_busy.add(now - start);
+		_pending.decrementAndGet();
+	}
+
+	private void update(long elapsed) {
+		double occupancy = _busy.sumThenReset() / ((double) elapsed * _capacity);
+		_occupancy = occupancy;
+		if (_targetOccupancy <= 0) {
+			return;
+		}
+
+		double factor = occupancy > 0 ? Math.min(_targetOccupancy / occupancy, MAX_INCREASE) : MAX_INCREASE;
+		_admit = Math.max(MIN_ADMIT, Math.min(1, _admit * factor));
+	}
+
+	/**
+	 * Whether the given message is an initial request that is subject to admission control.
+	 */
+	public static boolean isInitialRequest(SipMessage msg) {
+		return msg.isRequest() && !msg.isAck() && !msg.isCancel() && !msg.getToHeader().hasTag();
+	}
+
+	/**
+	 * Whether a new initial request is admitted.
+	 *
+	 * <p>
+	 * Must be called between {@link #enter()} and {@link #exit(long)}.
+	 * </p>
+	 */
+	public boolean admit() {
+		if (_maxPending > 0 && _pending.get() > _maxPending) {
+			return false;
+		}
+		double admit = _admit;
+		return admit >= 1 || ThreadLocalRandom.current().nextDouble() < admit;
+	}
+
+	/**
+	 * Whether the given request acknowledges a rejection created by this instance.
+	 */
+	public boolean isRejectionAck(SipMessage msg) {
+		return msg.isAck() && _tag.equals(msg.getToHeader().getTag());
+	}
+
+	/**
+	 * Creates a stateless <code>503 Service Unavailable</code> response rejecting the given
+	 * request.
+	 */
+	public SipMessage createRejection(SipMessage req) {
+		ToHeader to = req.getToHeader();
+		to.setTag(_tag);
+
+		StringBuilder buffer = new StringBuilder(512);
+		buffer.append(STATUS_LINE);
+		buffer.append(req.getVias().toString());
+		buffer.append(req.getFromHeader().toString());
+		buffer.append(to.toString());
+		buffer.append(req.getCallIdHeader().toString());
+		buffer.append(req.getCSeqHeader().toString());
+		buffer.append(_trailers[ThreadLocalRandom.current().nextInt(_trailers.length)]);
+
+		SipMessage result = new SipMessage(buffer.toString());
+		result.setConnectionId(req.getConnectionId());
+		return result;
+	}
+
+	/**
+	 * The occupancy of the dispatching threads in the last measurement interval.
+	 */
+	public double getOccupancy() {
+		return _occupancy;
+	}
+
+	/**
+	 * The fraction of initial requests currently admitted.
+	 */
+	public double getAdmitRatio() {
+		return _admit;
+	}
+
+	/**
+	 * The number of messages currently dispatched.
+	 */
+	public int getPending() {
+		return _pending.get();
+	}
+
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.sip.provider;
+
+import org.zoolu.net.IpAddress;
+
+/**
+ * Handler that may process received datagrams of a {@link SipProvider} before they are parsed
+ * into {@link org.mjsip.sip.message.SipMessage}s.
+ *
+ * @see SipProvider#setRawMessageHandler(RawMessageHandler)
+ */
+public interface RawMessageHandler {
+
+	/**
+	 * Called for each datagram received by a connection-less transport.
+	 *
+	 * <p>
+	 * The buffer is reused after the call returns.
+	 * </p>
+	 *
+	 * @param transport
+	 *        The transport the datagram was received from.
+	 * @param buf
+	 *        The buffer containing the datagram.
+	 * @param off
+	 *        The offset of the datagram within the buffer.
+	 * @param len
+	 *        The length of the datagram.
+	 * @param srcAddr
+	 *        The source address.
+	 * @param srcPort
+	 *        The source port.
+	 * @return Whether the datagram has been completely handled. If <code>false</code> is
+	 *         returned, the datagram is parsed and processed as usual.
+	 */
+	boolean onReceivedRawMessage(SipTransport transport, byte[] buf, int off, int len, IpAddress srcAddr,
+			int srcPort);
+
+}
@@ -163,9 +163,93 @@ public class SipConfig implements SipOptions {
 
 	private SipURI _telGateway = null;
 
-	@Option(name = "--log-all-packets", handler = YesNoHandler.class, usage = "Whether to log all SIP messages.")
+	@Option(name = "--dns-servers", usage = "Name servers (host[:port]) for locating SIP servers. By default, the system name servers are used.")
+	private String[] _dnsServers = null;
+
+	@Option(name = "--dns-timeout", usage = "Milliseconds to wait for the answer of a name server.")
+	private long _dnsTimeout = 2000;
+
+	@Option(name = "--dns-negative-ttl", usage = "Milliseconds a failed DNS lookup is remembered.")
+	private long _dnsNegativeTtl = 30000;
+
+	@Option(name = "--dns-blacklist-time", usage = "Milliseconds a next-hop that could not be reached is avoided.")
+	private long _dnsBlacklistTime = 60000;
+
+	@Option(name = "--log-all-packets", handler = YesNoHandler.class, usage = "Whether to log all SIP messages as text, use --capture-file for production.")
 	private boolean _logAllPackets = false;
 
+	@Option(name = "--metrics-port", usage = "Port of the HTTP endpoint serving metrics in Prometheus text format, 0 to disable.")
+	private int _metricsPort = 0;
+
+	@Option(name = "--metrics-jmx", handler = YesNoHandler.class, usage = "Whether to export metrics over JMX.")
+	private boolean _metricsJmx = false;
+
+	@Option(name = "--overload-occupancy", usage = "Percentage of time the receiving thread may be busy dispatching messages before new requests are rejected, 0 to disable.")
+	private int _overloadOccupancy = 0;
+
+	@Option(name = "--overload-max-pending", usage = "Number of messages dispatched concurrently before new requests are rejected, 0 for no limit.")
+	private int _overloadMaxPending = 0;
+
+	@Option(name = "--overload-retry-after", usage = "Minimum seconds a client is asked to wait after a request was rejected due to overload.")
+	private int _overloadRetryAfter = 5;
+
+	@Option(name = "--flood-rate", usage = "Datagrams per second accepted from a single source address before parsing, 0 to disable flood protection.")
+	private double _floodRate = 0;
+
+	@Option(name = "--flood-burst", usage = "Number of datagrams a single source address may send at once.")
+	private int _floodBurst = 100;
+
+	@Option(name = "--flood-block-after", usage = "Number of datagrams dropped from a source address before it is blocked, 0 to never block.")
+	private int _floodBlockAfter = 200;
+
+	@Option(name = "--flood-block-time", usage = "Milliseconds a flooding source address is blocked.")
+	private long _floodBlockTime = 60000;
+
+	@Option(name = "--flood-exempt", usage = "Source addresses exempt from flood protection, e.g. of peer proxies.")
+	private String[] _floodExempt = null;
+
+	@Option(name = "--capture-file", usage = "Name of the pcap file to capture SIP traffic to.")
+	private String _captureFile = null;
+
+	@Option(name = "--capture-file-size", usage = "Megabytes after which a new capture file is started, 0 for a single file.")
+	private int _captureFileSize = 100;
+
+	@Option(name = "--capture-files", usage = "Number of capture files to keep, 0 for no limit.")
+	private int _captureFiles = 10;
+
+	@Option(name = "--capture-hep", usage = "Address of a HEP collector (host:port) to send captured SIP traffic to.")
+	private String _captureHep = null;
+
+	@Option(name = "--capture-hep-id", usage = "Capture agent ID sent to the HEP collector.")
+	private int _captureHepId = 0;
+
+	@Option(name = "--capture-buffer", usage = "Number of packets buffered for capture before packets are dropped.")
+	private int _captureBuffer = 4096;
+
+	@Option(name = "--capture-filter-address", usage = "Capture only traffic from or to the given addresses.")
+	private String[] _captureFilterAddress = null;
+
+	@Option(name = "--capture-filter-call-id", usage = "Capture only messages with the given Call-IDs.")
+	private String[] _captureFilterCallId = null;
+
+	@Option(name = "--tls-engine", handler = YesNoHandler.class, usage = "Whether to serve TLS connections from a single thread with non-blocking SSLEngines instead of a thread per connection.")
+	private boolean _tlsEngine = false;
+
+	@Option(name = "--tls-session-cache", usage = "Number of TLS sessions cached for resumption, 0 for no limit (with --tls-engine).")
+	private int _tlsSessionCacheSize = 20000;
+
+	@Option(name = "--tls-session-timeout", usage = "Seconds a cached TLS session can be resumed, 0 for no limit (with --tls-engine).")
+	private int _tlsSessionTimeout = 86400;
+
+	@Option(name = "--tls-handshake-threads", usage = "Number of threads for TLS handshake computations, 0 for half of the processors (with --tls-engine).")
+	private int _tlsHandshakeThreads = 0;
+
+	@Option(name = "--tls-max-handshakes", usage = "Number of concurrent TLS handshakes after which incoming connections are closed, 0 for no limit (with --tls-engine).")
+	private int _tlsMaxHandshakes = 0;
+
+	@Option(name = "--udp-sockets", usage = "Number of sockets sharing each UDP port (SO_REUSEPORT), each with its own receiving thread.")
+	private int _udpSockets = 1;
+
 	@Option(name = "--trust-all", handler = YesNoHandler.class)
 	private boolean _trustAll;
 
@@ -561,6 +645,43 @@ public class SipConfig implements SipOptions {
 		this._telGateway = telGateway;
 	}
 
+	@Override
+	public String[] getDnsServers() {
+		return _dnsServers;
+	}
+
+	/** @see #getDnsServers() */
+	public void setDnsServers(String[] dnsServers) {
+		this._dnsServers = dnsServers;
+	}
+
+	@Override
+	public long getDnsTimeout() {
+		return _dnsTimeout;
+	}
+
+	public void setDnsTimeout(long dnsTimeout) {
+		this._dnsTimeout = dnsTimeout;
+	}
+
+	@Override
+	public long getDnsNegativeTtl() {
+		return _dnsNegativeTtl;
+	}
+
+	public void setDnsNegativeTtl(long dnsNegativeTtl) {
+		this._dnsNegativeTtl = dnsNegativeTtl;
+	}
+
+	@Override
+	public long getDnsBlacklistTime() {
+		return _dnsBlacklistTime;
+	}
+
+	public void setDnsBlacklistTime(long dnsBlacklistTime) {
+		this._dnsBlacklistTime = dnsBlacklistTime;
+	}
+
 	@Override
 	public boolean isLogAllPackets() {
 		return _logAllPackets;
@@ -570,6 +691,222 @@ public class SipConfig implements SipOptions {
 		this._logAllPackets = logAllPackets;
 	}
 
+	@Override
+	public int getMetricsPort() {
+		return _metricsPort;
+	}
+
+	public void setMetricsPort(int metricsPort) {
+		this._metricsPort = metricsPort;
+	}
+
+	@Override
+	public boolean isMetricsJmx() {
+		return _metricsJmx;
+	}
+
+	public void setMetricsJmx(boolean metricsJmx) {
+		this._metricsJmx = metricsJmx;
+	}
+
+	@Override
+	public int getOverloadOccupancy() {
+		return _overloadOccupancy;
+	}
+
+	public void setOverloadOccupancy(int overloadOccupancy) {
+		this._overloadOccupancy = overloadOccupancy;
+	}
+
+	@Override
+	public int getOverloadMaxPending() {
+		return _overloadMaxPending;
+	}
+
+	public void setOverloadMaxPending(int overloadMaxPending) {
+		this._overloadMaxPending = overloadMaxPending;
+	}
+
+	@Override
+	public int getOverloadRetryAfter() {
+		return _overloadRetryAfter;
+	}
+
+	public void setOverloadRetryAfter(int overloadRetryAfter) {
+		this._overloadRetryAfter = overloadRetryAfter;
+	}
+
+	@Override
+	public double getFloodRate() {
+		return _floodRate;
+	}
+
+	public void setFloodRate(double floodRate) {
+		this._floodRate = floodRate;
+	}
+
+	@Override
+	public int getFloodBurst() {
+		return _floodBurst;
+	}
+
+	public void setFloodBurst(int floodBurst) {
+		this._floodBurst = floodBurst;
+	}
+
+	@Override
+	public int getFloodBlockAfter() {
+		return _floodBlockAfter;
+	}
+
+	public void setFloodBlockAfter(int floodBlockAfter) {
+		this._floodBlockAfter = floodBlockAfter;
+	}
+
+	@Override
+	public long getFloodBlockTime() {
+		return _floodBlockTime;
+	}
+
+	public void setFloodBlockTime(long floodBlockTime) {
+		this._floodBlockTime = floodBlockTime;
+	}
+
+	@Override
+	public String[] getFloodExempt() {
+		return _floodExempt;
+	}
+
+	public void setFloodExempt(String[] floodExempt) {
+		this._floodExempt = floodExempt;
+	}
+
+	@Override
+	public String getCaptureFile() {
+		return _captureFile;
+	}
+
+	public void setCaptureFile(String captureFile) {
+		this._captureFile = captureFile;
+	}
+
+	@Override
+	public int getCaptureFileSize() {
+		return _captureFileSize;
+	}
+
+	public void setCaptureFileSize(int captureFileSize) {
+		this._captureFileSize = captureFileSize;
+	}
+
+	@Override
+	public int getCaptureFiles() {
+		return _captureFiles;
+	}
+
+	public void setCaptureFiles(int captureFiles) {
+		this._captureFiles = captureFiles;
+	}
+
+	@Override
+	public String getCaptureHep() {
+		return _captureHep;
+	}
+
+	public void setCaptureHep(String captureHep) {
+		this._captureHep = captureHep;
+	}
+
+	@Override
+	public int getCaptureHepId() {
+		return _captureHepId;
+	}
+
+	public void setCaptureHepId(int captureHepId) {
+		this._captureHepId = captureHepId;
+	}
+
+	@Override
+	public int getCaptureBuffer() {
+		return _captureBuffer;
+	}
+
+	public void setCaptureBuffer(int captureBuffer) {
+		this._captureBuffer = captureBuffer;
+	}
+
+	@Override
+	public String[] getCaptureFilterAddress() {
+		return _captureFilterAddress;
+	}
+
+	public void setCaptureFilterAddress(String[] captureFilterAddress) {
+		this._captureFilterAddress = captureFilterAddress;
+	}
+
+	@Override
+	public String[] getCaptureFilterCallId() {
+		return _captureFilterCallId;
+	}
+
+	public void setCaptureFilterCallId(String[] captureFilterCallId) {
+		this._captureFilterCallId = captureFilterCallId;
+	}
+
+	@Override
+	public boolean isTlsEngine() {
+		return _tlsEngine;
+	}
+
+	public void setTlsEngine(boolean tlsEngine) {
+		this._tlsEngine = tlsEngine;
+	}
+
+	@Override
+	public int getTlsSessionCacheSize() {
+		return _tlsSessionCacheSize;
+	}
+
+	public void setTlsSessionCacheSize(int tlsSessionCacheSize) {
+		this._tlsSessionCacheSize = tlsSessionCacheSize;
+	}
+
+	@Override
+	public int getTlsSessionTimeout() {
+		return _tlsSessionTimeout;
+	}
+
+	public void setTlsSessionTimeout(int tlsSessionTimeout) {
+		this._tlsSessionTimeout = tlsSessionTimeout;
+	}
+
+	@Override
+	public int getTlsHandshakeThreads() {
+		return _tlsHandshakeThreads;
+	}
+
+	public void setTlsHandshakeThreads(int tlsHandshakeThreads) {
+		this._tlsHandshakeThreads = tlsHandshakeThreads;
+	}
+
+	@Override
+	public int getTlsMaxHandshakes() {
+		return _tlsMaxHandshakes;
+	}
+
+	public void setTlsMaxHandshakes(int tlsMaxHandshakes) {
+		this._tlsMaxHandshakes = tlsMaxHandshakes;
+	}
+
+	@Override
+	public int getUdpSockets() {
+		return _udpSockets;
+	}
+
+	public void setUdpSockets(int udpSockets) {
+		this._udpSockets = udpSockets;
+	}
+
 	@Override
 	public boolean isTrustAll() {
 		return _trustAll;
@@ -23,6 +23,9 @@ package org.mjsip.sip.provider;
 
 
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
 import org.mjsip.sip.message.SipMessage;
 import org.zoolu.net.SocketAddress;
 
@@ -37,7 +40,7 @@ import org.zoolu.net.SocketAddress;
 public class SipKeepAlive extends UdpKeepAlive {
 	
 	/** Class SipToken extends class SipMessage in order to support simple and eventually malformed SIP message tokens. */
-	private static class SipToken extends SipMessage {
+	static class SipToken extends SipMessage {
 		/** The raw message */
 		String token;   
 		/** Creates a new SipToken. */
@@ -50,6 +53,17 @@ public class SipKeepAlive extends UdpKeepAlive {
 		/** Gets message length */
 		@Override
 		public int getLength() {  return token.length();  }   
+		/** Gets the raw token bytes. */
+		@Override
+		public byte[] getBytes() {  return token.getBytes(StandardCharsets.ISO_8859_1);  }
+		/** Writes the raw token to the given buffer. */
+		@Override
+		public boolean writeTo(ByteBuffer buffer) {
+			byte[] data=getBytes();
+			if (buffer.remaining()<data.length) return false;
+			buffer.put(data);
+			return true;
+		}
 	}
 
 	/** SipProvider */
@@ -0,0 +1,351 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.sip.provider;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.mjsip.metrics.Counter;
+import org.mjsip.metrics.Gauge;
+import org.mjsip.metrics.Histogram;
+import org.mjsip.metrics.MetricsRegistry;
+import org.mjsip.sip.dialog.Dialog;
+import org.mjsip.sip.message.SipMessage;
+import org.mjsip.sip.message.SipMethods;
+import org.mjsip.sip.transaction.AckTransactionClient;
+import org.mjsip.sip.transaction.Transaction;
+import org.mjsip.sip.transaction.TransactionClient;
+import org.mjsip.time.Scheduler;
+
+/**
+ * Metrics of a {@link SipProvider}.
+ *
+ * <p>
+ * All metrics are registered in a {@link MetricsRegistry} with a <code>port</code> label
+ * identifying the provider. Counters for the standard methods are looked up when the provider is
+ * created, counters for response codes on first use of the code, so that counting a message
+ * does not allocate.
+ * </p>
+ */
+public class SipMetrics {
+
+	/** Label value for requests with a non-standard method and responses with an invalid status code. */
+	public static final String OTHER = "other";
+
+	/** Reason for dropping a message that is not a SIP message. */
+	public static final String NOT_SIP = "not_sip";
+
+	/** Reason for dropping a request without Via header. */
+	public static final String NO_VIA = "no_via";
+
+	/** Reason for dropping a message that could not be parsed. */
+	public static final String PARSE_ERROR = "parse_error";
+
+	/** Reason for dropping a message for which no listener was found. */
+	public static final String NO_LISTENER = "no_listener";
+
+	private static final String[] METHODS = { SipMethods.ACK, SipMethods.BYE, SipMethods.CANCEL, SipMethods.INFO,
+		SipMethods.INVITE, SipMethods.MESSAGE, SipMethods.NOTIFY, SipMethods.OPTIONS, SipMethods.PRACK,
+		SipMethods.PUBLISH, SipMethods.REFER, SipMethods.REGISTER, SipMethods.SUBSCRIBE, SipMethods.UPDATE };
+
+	private static final int MAX_CODE = 700;
+
+	private final MetricsRegistry _registry;
+
+	private final String _labels;
+
+	private final Traffic _received;
+
+	private final Traffic _sent;
+
+	private final Counter _notSip;
+
+	private final Counter _noVia;
+
+	private final Counter _parseErrors;
+
+	private final Counter _noListener;
+
+	private final Counter _listenerErrors;
+
+	private final Histogram _dispatchLatency;
+
+	private final Gauge _clientTransactions;
+
+	private final Gauge _serverTransactions;
+
+	private final Gauge _dialogs;
+
+	private final Counter _retransmissions;
+
+	private final Counter _overloadRejected;
+
+	/**
+	 * Creates {@link SipMetrics}.
+	 *
+	 * @param registry
+	 *        The registry to add metrics to.
+	 * @param port
+	 *        The port identifying the provider.
+	 */
+	public SipMetrics(MetricsRegistry registry, int port) {
+		_registry = registry;
+		_labels = MetricsRegistry.labels("port", Integer.toString(port));
+
+		_received = new Traffic("received");
+		_sent = new Traffic("sent");
+
+		String discarded = "sip_messages_discarded_total";
+		String discardedHelp = "Received SIP messages discarded before reaching a listener.";
+		_notSip = registry.counter(discarded, discardedHelp, MetricsRegistry.addLabels(_labels, "reason", NOT_SIP));
+		_noVia = registry.counter(discarded, discardedHelp, MetricsRegistry.addLabels(_labels, "reason", NO_VIA));
+		_parseErrors = registry.counter(discarded, discardedHelp,
+			MetricsRegistry.addLabels(_labels, "reason", PARSE_ERROR));
+		_noListener = registry.counter(discarded, discardedHelp,
+			MetricsRegistry.addLabels(_labels, "reason", NO_LISTENER));
+		_listenerErrors = registry.counter("sip_listener_errors_total",
+			"Received SIP messages whose listener failed with an exception.", _labels);
+
+		_dispatchLatency = registry.histogram("sip_dispatch_latency_microseconds",
+			"Time from passing a received message to the provider until its listener returns.", _labels);
+
+		String transactions = "sip_transactions_active";
+		String transactionsHelp = "Transactions registered with the provider.";
+		_clientTransactions = registry.gauge(transactions, transactionsHelp,
+			MetricsRegistry.addLabels(_labels, "type", "client"));
+		_serverTransactions = registry.gauge(transactions, transactionsHelp,
+			MetricsRegistry.addLabels(_labels, "type", "server"));
+		_dialogs = registry.gauge("sip_dialogs_active", "Dialogs registered with the provider.", _labels);
+
+		_retransmissions = registry.counter("sip_retransmissions_total",
+			"Requests and responses retransmitted by transactions.", _labels);
+
+		_overloadRejected = registry.counter("sip_overload_rejected_total",
+			"Requests rejected with 503 due to overload.", _labels);
+	}
+
+	/**
+	 * Adds the number of pending timer tasks of the given scheduler.
+	 */
+	public void registerTimerQueue(Scheduler scheduler) {
+		ScheduledExecutorService executor = scheduler.scheduler();
+		if (executor instanceof ThreadPoolExecutor) {
+			ThreadPoolExecutor pool = (ThreadPoolExecutor) executor;
+			_registry.register("sip_timer_queue_depth", "Tasks waiting in the timer queue of the provider.",
+				_labels, () -> pool.getQueue().size());
+		}
+	}
+
+	/**
+	 * Adds the state of the given {@link OverloadControl}.
+	 */
+	public void registerOverloadControl(OverloadControl overloadControl) {
+		_registry.register("sip_overload_occupancy_percent",
+			"Time the receiving threads were busy dispatching messages in the last measurement interval.", _labels,
+			() -> Math.round(overloadControl.getOccupancy() * 100));
+		_registry.register("sip_overload_admit_percent", "Fraction of new requests currently admitted.", _labels,
+			() -> Math.round(overloadControl.getAdmitRatio() * 100));
+		_registry.register("sip_dispatch_pending", "Received messages currently dispatched.", _labels,
+			overloadControl::getPending);
+	}
+
+	/**
+	 * Removes all metrics of the provider from the registry.
+	 */
+	public void unregister() {
+		_registry.removeAll(_labels);
+	}
+
+	/**
+	 * The registry the metrics of the provider are added to.
+	 */
+	public MetricsRegistry getRegistry() {
+		return _registry;
+	}
+
+	/**
+	 * The labels identifying the provider.
+	 */
+	public String getLabels() {
+		return _labels;
+	}
+
+	/**
+	 * Counts a received message.
+	 */
+	public void received(SipMessage msg) {
+		_received.count(msg);
+	}
+
+	/**
+	 * Counts a sent message.
+	 */
+	public void sent(SipMessage msg) {
+		_sent.count(msg);
+	}
+
+	/**
+	 * Counts a received message that is not a SIP message.
+	 */
+	public void notSip() {
+		_notSip.increment();
+	}
+
+	/**
+	 * Counts a received request without Via header.
+	 */
+	public void noVia() {
+		_noVia.increment();
+	}
+
+	/**
+	 * Counts a received message that failed to parse.
+	 */
+	public void parseError() {
+		_parseErrors.increment();
+	}
+
+	/**
+	 * Counts a received message whose listener failed with an exception.
+	 */
+	public void listenerError() {
+		_listenerErrors.increment();
+	}
+
+	/**
+	 * Counts a received message for which no listener was found.
+	 */
+	public void noListener() {
+		_noListener.increment();
+	}
+
+	/**
+	 * Records the time spent dispatching a received message.
+	 *
+	 * @param nanos
+	 *        The time in nanoseconds.
+	 */
+	public void dispatched(long nanos) {
+		_dispatchLatency.record(nanos / 1000);
+	}
+
+	/**
+	 * Counts a retransmission.
+	 */
+	public void retransmission() {
+		_retransmissions.increment();
+	}
+
+	/**
+	 * Counts a request rejected by the {@link OverloadControl}.
+	 */
+	public void overloadRejected() {
+		_overloadRejected.increment();
+	}
+
+	/**
+	 * The number of retransmissions counted so far.
+	 */
+	public long getRetransmissions() {
+		return _retransmissions.get();
+	}
+
+	/**
+	 * Updates the number of active transactions and dialogs, when a listener is registered.
+	 *
+	 * @param replaced
+	 *        The listener that was registered before with the same identifier, or
+	 *        <code>null</code>.
+	 */
+	void listenerAdded(SipProviderListener listener, SipProviderListener replaced) {
+		if (replaced == listener) {
+			return;
+		}
+		listenerRemoved(replaced);
+		Gauge gauge = gauge(listener);
+		if (gauge != null) {
+			gauge.increment();
+		}
+	}
+
+	/**
+	 * Updates the number of active transactions and dialogs, when a listener is removed.
+	 */
+	void listenerRemoved(SipProviderListener listener) {
+		Gauge gauge = gauge(listener);
+		if (gauge != null) {
+			gauge.decrement();
+		}
+	}
+
+	private Gauge gauge(SipProviderListener listener) {
+		if (listener instanceof Dialog) {
+			return _dialogs;
+		}
+		if (listener instanceof TransactionClient || listener instanceof AckTransactionClient) {
+			return _clientTransactions;
+		}
+		if (listener instanceof Transaction) {
+			return _serverTransactions;
+		}
+		return null;
+	}
+
+	/**
+	 * Counters for messages in one direction.
+	 */
+	private final class Traffic {
+
+		private final String _requestName;
+
+		private final String _responseName;
+
+		private final String _responseHelp;
+
+		private final Map<String, Counter> _requests = new HashMap<>();
+
+		private final Counter _otherRequests;
+
+		private final AtomicReferenceArray<Counter> _responses = new AtomicReferenceArray<>(MAX_CODE);
+
+		Traffic(String direction) {
+			_requestName = "sip_requests_" + direction + "_total";
+			_responseName = "sip_responses_" + direction + "_total";
+			_responseHelp = "SIP responses " + direction + " by status code.";
+
+			String requestHelp = "SIP requests " + direction + " by method.";
+			for (String method : METHODS) {
+				_requests.put(method,
+					_registry.counter(_requestName, requestHelp, MetricsRegistry.addLabels(_labels, "method", method)));
+			}
+			_otherRequests = _registry.counter(_requestName, requestHelp,
+				MetricsRegistry.addLabels(_labels, "method", OTHER));
+		}
+
+		void count(SipMessage msg) {
+			if (msg.isRequest()) {
+				Counter counter = _requests.get(msg.getRequestLine().getMethod());
+				(counter == null ? _otherRequests : counter).increment();
+			} else if (msg.isResponse()) {
+				response(msg.getStatusLine().getCode()).increment();
+			}
+		}
+
+		private Counter response(int code) {
+			int index = code >= 100 && code < MAX_CODE ? code : 0;
+			Counter result = _responses.get(index);
+			if (result == null) {
+				result = _registry.counter(_responseName, _responseHelp,
+					MetricsRegistry.addLabels(_labels, "code", index == 0 ? OTHER : Integer.toString(code)));
+				_responses.compareAndSet(index, null, result);
+			}
+			return result;
+		}
+
+	}
+
+}
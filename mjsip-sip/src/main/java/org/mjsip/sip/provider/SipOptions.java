@@ -119,6 +119,21 @@ public interface SipOptions {
 	 */
 	SipURI getTelGateway();
 
+	/**
+	 * Name servers (<code>host[:port]</code>) used for locating SIP servers (RFC 3263). If not set,
+	 * the name servers of the system configuration are used.
+	 */
+	String[] getDnsServers();
+
+	/** Milliseconds to wait for the answer of a name server. */
+	long getDnsTimeout();
+
+	/** Milliseconds a failed DNS lookup is remembered, if the name server does not tell otherwise. */
+	long getDnsNegativeTtl();
+
+	/** Milliseconds a next-hop that could not be reached is avoided. */
+	long getDnsBlacklistTime();
+
 	/** Transaction timeout (milliseconds); RFC2361 suggests 64*T1=32000ms */
 	long getTransactionTimeout();
 
@@ -217,9 +232,122 @@ public interface SipOptions {
 	/** Whether 1xx responses create an "early dialog" for methods that create dialog. */
 	boolean isEarlyDialog();
 
-	/** Whether logging all packets (including non-SIP keepalive tokens). */
+	/**
+	 * Whether logging all packets (including non-SIP keepalive tokens) as text.
+	 *
+	 * @see #getCaptureFile()
+	 */
 	boolean isLogAllPackets();
 
+	/**
+	 * Port of the HTTP endpoint serving metrics in Prometheus text format, <code>0</code> if
+	 * metrics are not served.
+	 */
+	int getMetricsPort();
+
+	/** Whether metrics are exported over JMX. */
+	boolean isMetricsJmx();
+
+	/**
+	 * Percentage of time the receiving thread may be busy dispatching messages before new
+	 * requests are rejected, <code>0</code> if not limited.
+	 *
+	 * @see OverloadControl
+	 */
+	int getOverloadOccupancy();
+
+	/**
+	 * Number of messages dispatched concurrently before new requests are rejected, <code>0</code>
+	 * if not limited.
+	 *
+	 * @see OverloadControl
+	 */
+	int getOverloadMaxPending();
+
+	/** Minimum <i>Retry-After</i> seconds of requests rejected due to overload. */
+	int getOverloadRetryAfter();
+
+	/**
+	 * Datagrams per second accepted from a single source address before parsing, <code>0</code>
+	 * if not limited.
+	 *
+	 * @see FloodFilter
+	 */
+	double getFloodRate();
+
+	/** Number of datagrams a single source address may send at once. */
+	int getFloodBurst();
+
+	/** Number of datagrams dropped from a source address before it is blocked, <code>0</code> to never block. */
+	int getFloodBlockAfter();
+
+	/** Milliseconds a flooding source address is blocked. */
+	long getFloodBlockTime();
+
+	/** Source addresses exempt from flood protection, or <code>null</code>. */
+	String[] getFloodExempt();
+
+	/**
+	 * Name of the pcap file to capture SIP traffic to, or <code>null</code>.
+	 *
+	 * @see org.mjsip.capture.PcapWriter
+	 */
+	String getCaptureFile();
+
+	/** Megabytes after which a new capture file is started, <code>0</code> for a single file. */
+	int getCaptureFileSize();
+
+	/** Number of capture files to keep, <code>0</code> for no limit. */
+	int getCaptureFiles();
+
+	/**
+	 * Address (<code>host:port</code>) of a HEP collector to send captured SIP traffic to, or
+	 * <code>null</code>.
+	 *
+	 * @see org.mjsip.capture.HepSender
+	 */
+	String getCaptureHep();
+
+	/** Capture agent ID sent to the HEP collector. */
+	int getCaptureHepId();
+
+	/** Number of packets buffered for capture before packets are dropped. */
+	int getCaptureBuffer();
+
+	/** Addresses to restrict capture to, or <code>null</code>. */
+	String[] getCaptureFilterAddress();
+
+	/** Call-IDs to restrict capture to, or <code>null</code>. */
+	String[] getCaptureFilterCallId();
+
+	/**
+	 * Whether to use the non-blocking {@link TlsEngineTransport} instead of the
+	 * {@link TlsTransport} with a thread per connection.
+	 */
+	boolean isTlsEngine();
+
+	/** Number of TLS sessions cached for resumption, <code>0</code> for no limit. */
+	int getTlsSessionCacheSize();
+
+	/** Seconds a cached TLS session can be resumed, <code>0</code> for no limit. */
+	int getTlsSessionTimeout();
+
+	/** Number of threads for TLS handshake computations, <code>0</code> for half of the processors. */
+	int getTlsHandshakeThreads();
+
+	/**
+	 * Number of concurrent TLS handshakes after which incoming connections are closed,
+	 * <code>0</code> for no limit.
+	 */
+	int getTlsMaxHandshakes();
+
+	/**
+	 * Number of sockets sharing each UDP port, each with its own receiving thread.
+	 *
+	 * @see MultiUdpTransport
+	 */
+	int getUdpSockets();
+
 	/**
 	 * Whether forcing this node to stay within the dialog route as peer, by means of the insertion
 	 * of a RecordRoute header. This is a non-standard behaviour and is normally not necessary.
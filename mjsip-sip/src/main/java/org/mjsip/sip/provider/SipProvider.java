@@ -26,25 +26,45 @@ package org.mjsip.sip.provider;
 
 
 import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Hashtable;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
+import org.mjsip.capture.CaptureFilter;
+import org.mjsip.capture.CaptureSink;
+import org.mjsip.capture.HepSender;
+import org.mjsip.capture.PacketCapture;
+import org.mjsip.capture.PcapWriter;
+
+import org.mjsip.metrics.MetricsMBean;
+import org.mjsip.metrics.MetricsRegistry;
+import org.mjsip.metrics.MetricsServer;
 import org.mjsip.sip.address.GenericURI;
 import org.mjsip.sip.address.NameAddress;
 import org.mjsip.sip.address.SipURI;
 import org.mjsip.sip.address.UnexpectedUriSchemeException;
+import org.mjsip.sip.header.CSeqHeader;
+import org.mjsip.sip.header.CallIdHeader;
+import org.mjsip.sip.header.FromHeader;
 import org.mjsip.sip.header.ViaHeader;
 import org.mjsip.sip.message.SipMessage;
 import org.mjsip.sip.message.SipMessageFactory;
 import org.mjsip.time.Scheduler;
 import org.slf4j.LoggerFactory;
 import org.zoolu.net.AddressType;
+import org.zoolu.net.ByteBufferPool;
 import org.zoolu.net.IpAddress;
 import org.zoolu.net.SocketAddress;
-import org.zoolu.util.Random;
-import org.zoolu.util.SimpleDigest;
 
 
 
@@ -140,17 +160,129 @@ public class SipProvider implements SipTransportListener {
 	
 	private final Scheduler _scheduler;
 
+	private volatile KeepAliveEngine _keepAliveEngine;
+
+	private volatile RawMessageHandler _rawMessageHandler;
+
+	private volatile SipResolver _resolver;
+
+	private final SipMetrics _metrics;
+
+	private final OverloadControl _overloadControl;
+
+	private final FloodFilter _floodFilter;
+
+	private final PacketCapture _capture;
+
+	private MetricsServer _metricsServer;
+
 	private final SipMessageFactory _sipMessageFactory;
 
 	/**
-	 * Creates a new {@link SipProvider}.
+	 * Creates a new {@link SipProvider} reporting to the {@link MetricsRegistry#global() global}
+	 * metrics registry.
 	 */
 	public SipProvider(SipOptions sipConfig, Scheduler scheduler) {
+		this(sipConfig, scheduler, MetricsRegistry.global());
+	}
+
+	/**
+	 * Creates a new {@link SipProvider}.
+	 *
+	 * @param metrics
+	 *        The registry to report metrics to.
+	 */
+	public SipProvider(SipOptions sipConfig, Scheduler scheduler, MetricsRegistry metrics) {
 		this._sipConfig = sipConfig;
 		_scheduler = scheduler;
 		_sipMessageFactory = new SipMessageFactory(sipConfig);
+		_metrics = new SipMetrics(metrics, sipConfig.getHostPort());
+		_metrics.registerTimerQueue(scheduler);
+		if (sipConfig.getOverloadOccupancy() > 0 || sipConfig.getOverloadMaxPending() > 0) {
+			_overloadControl = new OverloadControl(sipConfig, udpSockets());
+			_metrics.registerOverloadControl(_overloadControl);
+		} else {
+			_overloadControl = null;
+		}
+		_floodFilter = sipConfig.getFloodRate() > 0 ? new FloodFilter(sipConfig, metrics, _metrics.getLabels()) : null;
+		_capture = createCapture(metrics);
 		initLog();
-		initSipTrasport(sipConfig.getTransportProtocols(),sipConfig.getTransportPorts());
+		initSipTrasport(sipConfig.getTransportProtocols(),sipConfig.getTransportPorts(),metrics);
+		initMetricsExport(metrics);
+	}
+
+	/** Creates the capture of SIP traffic, if a capture file or HEP collector is configured. */
+	private PacketCapture createCapture(MetricsRegistry metrics) {
+		List<CaptureSink> sinks = new ArrayList<>();
+		try {
+			String file = _sipConfig.getCaptureFile();
+			if (file != null && !file.isEmpty()) {
+				sinks.add(new PcapWriter(file, _sipConfig.getCaptureFileSize() * 1024L * 1024L,
+						_sipConfig.getCaptureFiles()));
+			}
+			String hep = _sipConfig.getCaptureHep();
+			if (hep != null && !hep.isEmpty()) {
+				SocketAddress collector = new SocketAddress(hep);
+				InetSocketAddress address = new InetSocketAddress(collector.getAddress().toString(), collector.getPort());
+				if (address.isUnresolved()) {
+					throw new UnknownHostException(hep);
+				}
+				sinks.add(new HepSender(address, _sipConfig.getCaptureHepId()));
+			}
+		} catch (IOException ex) {
+			LOG.error("Cannot start capturing SIP traffic.", ex);
+			for (CaptureSink sink : sinks) {
+				try {
+					sink.close();
+				} catch (IOException ignored) {
+					// Already failed.
+				}
+			}
+			return null;
+		}
+		if (sinks.isEmpty()) {
+			return null;
+		}
+
+		Set<InetAddress> addresses = new HashSet<>();
+		String[] filterAddresses = _sipConfig.getCaptureFilterAddress();
+		if (filterAddresses != null) {
+			for (String address : filterAddresses) {
+				try {
+					addresses.add(InetAddress.getByName(address));
+				} catch (UnknownHostException ex) {
+					LOG.warn("Ignoring unknown capture filter address: {}", address);
+				}
+			}
+		}
+		String[] callIds = _sipConfig.getCaptureFilterCallId();
+		Set<String> callIdSet = callIds == null ? Set.of() : new HashSet<>(Arrays.asList(callIds));
+
+		return new PacketCapture(_sipConfig.getCaptureBuffer(), new CaptureFilter(addresses, callIdSet), sinks,
+				metrics, _metrics.getLabels());
+	}
+
+	/** Starts the configured metrics endpoints. */
+	private void initMetricsExport(MetricsRegistry metrics) {
+		if (_sipConfig.isMetricsJmx()) {
+			if (metrics == MetricsRegistry.global()) {
+				try {
+					MetricsMBean.registerGlobal();
+				} catch (Exception ex) {
+					LOG.warn("Registering metrics with JMX failed.", ex);
+				}
+			} else {
+				LOG.warn("Only the global metrics registry is exported over JMX.");
+			}
+		}
+		int metricsPort = _sipConfig.getMetricsPort();
+		if (metricsPort > 0) {
+			try {
+				_metricsServer = new MetricsServer(metrics, new InetSocketAddress(metricsPort));
+			} catch (IOException ex) {
+				LOG.warn("Starting metrics endpoint at port {} failed.", Integer.valueOf(metricsPort), ex);
+			}
+		}
 	}
 
 	/** Inits logs. */ 
@@ -173,6 +305,63 @@ public class SipProvider implements SipTransportListener {
 		return _scheduler;
 	}
 
+	/**
+	 * The {@link KeepAliveEngine} sending keep-alive tokens through this provider's transports,
+	 * created on first use.
+	 */
+	public synchronized KeepAliveEngine keepAliveEngine() {
+		if (_keepAliveEngine == null) {
+			_keepAliveEngine = new KeepAliveEngine(this);
+		}
+		return _keepAliveEngine;
+	}
+
+	/**
+	 * The {@link SipResolver} locating next-hops given by host name, created on first use.
+	 */
+	public SipResolver resolver() {
+		SipResolver result = _resolver;
+		if (result == null) {
+			synchronized (this) {
+				result = _resolver;
+				if (result == null) {
+					result = new SipResolver(_sipConfig);
+					_resolver = result;
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Replaces the {@link SipResolver}, e.g. to share a cache between providers.
+	 */
+	public void setResolver(SipResolver resolver) {
+		_resolver = resolver;
+	}
+
+	/**
+	 * The metrics of this provider.
+	 */
+	public SipMetrics metrics() {
+		return _metrics;
+	}
+
+	/**
+	 * The admission control for received requests, <code>null</code> if not configured.
+	 */
+	public OverloadControl overloadControl() {
+		return _overloadControl;
+	}
+
+	/**
+	 * Sets a handler that may process received datagrams before they are parsed, or
+	 * <code>null</code> to parse all datagrams.
+	 */
+	public void setRawMessageHandler(RawMessageHandler handler) {
+		_rawMessageHandler = handler;
+	}
+
 	/**
 	 * The {@link SipMessageFactory} in use.
 	 */
@@ -193,7 +382,7 @@ public class SipProvider implements SipTransportListener {
 	/**
 	 * Inits and starts the transport services.
 	 */
-	private void initSipTrasport(String[] transport_protocols, int[] transport_ports) {
+	private void initSipTrasport(String[] transport_protocols, int[] transport_ports, MetricsRegistry metrics) {
 		if (transport_protocols.length > 0) {
 			default_transport = transport_protocols[0];
 		}
@@ -207,7 +396,7 @@ public class SipProvider implements SipTransportListener {
 				if (proto.equals(PROTO_UDP)) {
 					if (port == 0)
 						port = _sipConfig.getHostPort();
-					transp = new UdpTransport(port, _sipConfig.getBindingIpAddr());
+					transp = createUdpTransport(port);
 				}
 				else
 				if (proto.equals(PROTO_TCP)) {
@@ -221,6 +410,10 @@ public class SipProvider implements SipTransportListener {
 						port = (_sipConfig.getHostPort() == _sipConfig.getDefaultPort())
 								? _sipConfig.getDefaultTlsPort()
 								: _sipConfig.getHostPort() + 1;
+					if (_sipConfig.isTlsEngine())
+						transp = new TlsEngineTransport(port, _sipConfig.getBindingIpAddr(), _sipConfig, metrics,
+								_metrics.getLabels());
+					else
 					if (_sipConfig.isTrustAll())
 						transp = new TlsTransport(port, _sipConfig.getBindingIpAddr(), _sipConfig.getMaxConnections(),
 								_sipConfig.getKeyFile(), _sipConfig.getCertFile());
@@ -271,6 +464,25 @@ public class SipProvider implements SipTransportListener {
 	}
 
 
+	/** Creates the UDP transport for the given port. */
+	private UdpTransport createUdpTransport(int port) throws IOException {
+		int sockets=udpSockets();
+		if (sockets>1) return new MultiUdpTransport(port, _sipConfig.getBindingIpAddr(), sockets);
+		return new UdpTransport(port, _sipConfig.getBindingIpAddr());
+	}
+
+
+	/** The number of sockets (and receiving threads) sharing the UDP port. */
+	private int udpSockets() {
+		int sockets=_sipConfig.getUdpSockets();
+		if (sockets>1 && !MultiUdpTransport.isSupported()) {
+			LOG.warn("Sharing UDP ports is not supported, using a single UDP socket.");
+			return 1;
+		}
+		return Math.max(1, sockets);
+	}
+
+
 	/** Stops the transport services. */ 
 	private void stopSipTrasport() {
 		if (sip_transports!=null)  {
@@ -292,6 +504,11 @@ public class SipProvider implements SipTransportListener {
 		removeSipTransport(proto);
 		sip_transports.put(proto,transport);
 		transport.setListener(this);
+		if (transport instanceof UdpTransport) ((UdpTransport)transport).setFloodFilter(_floodFilter);
+		if (_capture!=null) {
+			if (transport instanceof UdpTransport) ((UdpTransport)transport).setCapture(_capture);
+			if (transport instanceof SipTransportCO) ((SipTransportCO)transport).setCapture(_capture);
+		}
 		if (default_transport==null) default_transport=proto;
 		LOG.info("{} is up at port {}", proto, transport.getLocalPort());
 	}
@@ -312,10 +529,18 @@ public class SipProvider implements SipTransportListener {
 	/** Stops the SipProviders. */ 
 	public synchronized void halt() {
 		LOG.debug("halt: SipProvider is going down");
+		if (_keepAliveEngine!=null) _keepAliveEngine.halt();
+		if (_resolver!=null) _resolver.halt();
 		stopSipTrasport();
+		if (_capture!=null) _capture.close();
 		sip_listeners.clear();
 		promisquousListeners.clear();
 		exceptionListeners.clear();
+		if (_metricsServer!=null) {
+			_metricsServer.stop();
+			_metricsServer=null;
+		}
+		_metrics.unregister();
 	}
 
 	/** Converts the entire object into lines (to be saved into the config file) */
@@ -518,7 +743,7 @@ public class SipProvider implements SipTransportListener {
 	  * @param listener is the SipProviderListener that the specified type of messages has to be passed to. */
 	public synchronized void addSelectiveListener(SipId id, SipProviderListener listener) {
 		LOG.debug("Adding SipProviderListener: {}", id);
-		sip_listeners.put(id,listener);   
+		_metrics.listenerAdded(listener, sip_listeners.put(id,listener));
 	}
 
 
@@ -526,7 +751,7 @@ public class SipProvider implements SipTransportListener {
 	  * @param id specifies the messages that the listener was associated to. */
 	public synchronized void removeSelectiveListener(SipId id) {
 		LOG.debug("Removing SipProviderListener: {}", id);
-		sip_listeners.remove(id);
+		_metrics.listenerRemoved(sip_listeners.remove(id));
 	}
   
 	/** Adds a SipProvider listener for caputering any message in promiscuous mode.
@@ -606,6 +831,7 @@ public class SipProvider implements SipTransportListener {
 			if (sip_transport!=null)
 			try {
 				SipTransportConnection conn=((SipTransportCO)sip_transport).sendMessageCO(msg);
+				_metrics.sent(msg);
 
 				logMessage("Sent message to: ", conn.getProtocol(), conn.getRemoteAddress().toString(),
 						conn.getRemotePort(), msg);
@@ -697,10 +923,7 @@ public class SipProvider implements SipTransportListener {
 			if (dest_port<=0) dest_port=uri.getPort();
 		}
 
-		// if port <= use default port
-		if (dest_port <= 0)
-			dest_port = (isSecureTransport(transport)) ? _sipConfig.getDefaultPort() + 1 : _sipConfig.getDefaultPort();
-
+		// if no port is given, the resolver looks for SRV records or uses the default port
 		return sendMessage(msg, transport, dest_addr, dest_port, ttl);
 	}
 
@@ -800,22 +1023,111 @@ public class SipProvider implements SipTransportListener {
 
 
 	/** Sends the <i>msg</i> message, specifing the transport portocol, nexthop address and port.
-	  * It does the same as method {@link #sendMessage(SipMessage,String,String,int,int)}, but no via address is added (if not already present) in request messages.  */
+	  * It does the same as method {@link #sendMessage(SipMessage,String,String,int,int)}, but no via address is added (if not already present) in request messages.
+	  * <p>
+	  * A destination given by host name is located through the {@link #resolver()}; if no port is given (<i>dest_port</i>&lt;=0),
+	  * SRV records or the default port are used. If the name is not resolved from the cache,
+	  * the message is sent as soon as the lookup completes and <i>null</i> is returned. If sending
+	  * to a target fails, the next target is tried. */
 	public ConnectionId sendRawMessage(SipMessage msg, String proto, String dest_addr, int dest_port, int ttl) {
-		try {
-			IpAddress dest_ipaddr = IpAddress.getByName(dest_addr);
-			return sendRawMessage(msg,proto,dest_ipaddr,dest_port,ttl); 
-		}
-		catch (Exception e) {
-			LOG.warn("Exception.", e);
+		if (getTransport(proto)==null) return null;
+		// else
+		SipResolver resolver=resolver();
+		List<SipResolver.Target> targets=resolver.resolveCached(dest_addr,dest_port,proto);
+		if (targets!=null) return sendRawMessage(msg,proto,dest_addr,targets,ttl);
+		// else
+		LOG.debug("resolving {} before sending", dest_addr);
+		resolver.resolve(dest_addr,dest_port,proto).whenComplete((result,e) -> {
+			if (e!=null) LOG.warn("Resolving {} failed, message discarded.", dest_addr, e);
+			else sendRawMessage(msg,proto,dest_addr,result,ttl);
+		});
+		return null;
+	}
+
+
+	/** Sends the <i>msg</i> message to the first of the given targets that can be reached. */
+	private ConnectionId sendRawMessage(SipMessage msg, String proto, String dest_addr, List<SipResolver.Target> targets, int ttl) {
+		SipTransport sip_transport=getTransport(proto);
+		if (sip_transport==null) return null;
+		// else
+		if (targets.isEmpty()) {
+			LOG.warn("No address found for {}, message discarded.", dest_addr);
 			return null;
-		}     
+		}
+		// else
+		for (int i=0; ; i++) {
+			SipResolver.Target target=targets.get(i);
+			try {
+				return sendRawMessage(sip_transport,msg,proto,target.getAddress(),target.getPort(),ttl);
+			}
+			catch (IOException e) {
+				resolver().markFailed(target);
+				if (i+1>=targets.size()) {
+					LOG.warn("Exception", e);
+					return null;
+				}
+				LOG.info("Sending to {} failed, trying next target.", target, e);
+			}
+		}
 	}
 
 
 	/** Sends the <i>msg</i> message, specifing the transport protocol, nexthop address and port.
 	  * For request messages, no via address is added. */
-	private ConnectionId sendRawMessage(SipMessage msg, String proto, IpAddress dest_ipaddr, int dest_port, int ttl) {
+	ConnectionId sendRawMessage(SipMessage msg, String proto, IpAddress dest_ipaddr, int dest_port, int ttl) {
+		SipTransport sip_transport=getTransport(proto);
+		if (sip_transport==null) return null;
+		// else
+		try {
+			return sendRawMessage(sip_transport,msg,proto,dest_ipaddr,dest_port,ttl);
+		}
+		catch (IOException e) {
+			LOG.warn("Exception", e);
+			return null;
+		}
+	}
+
+
+	/** Sends the <i>msg</i> message to each of the given destinations, specifing the transport protocol.
+	  * For request messages, no via address is added. Over UDP, the message is encoded only once for all destinations. */
+	void sendRawMessage(SipMessage msg, String proto, List<SocketAddress> destinations, int ttl) {
+		SipTransport sip_transport=getTransport(proto);
+		if (sip_transport==null) return;
+		// else
+		if (!(sip_transport instanceof UdpTransport)) {
+			for (SocketAddress destination : destinations) sendRawMessage(msg,proto,destination.getAddress(),destination.getPort(),ttl);
+			return;
+		}
+		// else
+		UdpTransport udp_transport=(UdpTransport)sip_transport;
+		ByteBufferPool pool=ByteBufferPool.DATAGRAMS;
+		ByteBuffer buffer=pool.acquire();
+		try {
+			if (!msg.writeTo(buffer)) {
+				LOG.warn("Message too large for a datagram, discarded.");
+				return;
+			}
+			buffer.flip();
+			for (SocketAddress destination : destinations) {
+				buffer.rewind();
+				try {
+					udp_transport.sendBuffer(buffer,destination.getAddress(),destination.getPort());
+					_metrics.sent(msg);
+					logMessage("Sent message to: ", proto, destination.getAddress().toString(), destination.getPort(), msg);
+				}
+				catch (IOException e) {
+					LOG.debug("Sending to {} failed.", destination, e);
+				}
+			}
+		}
+		finally {
+			pool.release(buffer);
+		}
+	}
+
+
+	/** Gets the transport for the given protocol, or null (logging a warning) if not supported. */
+	private SipTransport getTransport(String proto) {
 		if (proto==null) {
 			LOG.warn("No protocol, message discarded.");
 			return null;
@@ -824,20 +1136,18 @@ public class SipProvider implements SipTransportListener {
 		SipTransport sip_transport = sip_transports.get(proto.toLowerCase());
 		if (sip_transport==null) {
 			LOG.warn("Unsupported protocol {}, message discarded.", proto);
-			return null;
 		}
-		// else
-		try {
-			ConnectionId connection_id=sip_transport.sendMessage(msg,dest_ipaddr,dest_port,ttl);
+		return sip_transport;
+	}
 
-			logMessage("Sent message to: ", proto, dest_ipaddr.toString(), dest_port, msg);
 
-			return connection_id;
-		}
-		catch (IOException e) {
-			LOG.warn("Exception", e);
-			return null;
-		}
+	private ConnectionId sendRawMessage(SipTransport sip_transport, SipMessage msg, String proto, IpAddress dest_ipaddr, int dest_port, int ttl) throws IOException {
+		ConnectionId connection_id=sip_transport.sendMessage(msg,dest_ipaddr,dest_port,ttl);
+		_metrics.sent(msg);
+
+		logMessage("Sent message to: ", proto, dest_ipaddr.toString(), dest_port, msg);
+
+		return connection_id;
 	}
 
 
@@ -865,15 +1175,34 @@ public class SipProvider implements SipTransportListener {
 
 
 	//************************* Callback methods *************************
+
+	/** From SipTransportListener. When a new datagram is received, before it is parsed. */
+	@Override
+	public boolean onReceivedRawMessage(SipTransport transport, byte[] buf, int off, int len, IpAddress src_addr, int src_port) {
+		RawMessageHandler handler=_rawMessageHandler;
+		if (handler==null) return false;
+		// else
+		if (!handler.onReceivedRawMessage(transport,buf,off,len,src_addr,src_port)) return false;
+		// else
+		KeepAliveEngine keepAliveEngine=_keepAliveEngine;
+		if (keepAliveEngine!=null) keepAliveEngine.onReceived(src_addr.toString(),src_port);
+		return true;
+	}
 	
 	/** From SipTransportListener. When a new SIP message is received. */
 	@Override
 	public void onReceivedMessage(SipTransport transport, SipMessage msg) {
+		OverloadControl overloadControl=_overloadControl;
+		long start=overloadControl!=null? overloadControl.enter() : System.nanoTime();
+		boolean dispatching=false;
 		try {
 			// logs
 			logMessage("Received message from: ", msg.getTransportProtocol(), msg.getRemoteAddress(),
 					msg.getRemotePort(), msg);
 			
+			KeepAliveEngine keepAliveEngine=_keepAliveEngine;
+			if (keepAliveEngine!=null) keepAliveEngine.onReceived(msg.getRemoteAddress(),msg.getRemotePort());
+
 			// discard too short messages (e.g. CRLFCRLF "PING", or CRLF "PONG")
 			if (msg.getLength()<=4) {
 				LOG.warn("message too short: discarded.");
@@ -881,7 +1210,8 @@ public class SipProvider implements SipTransportListener {
 			}
 			// discard non-SIP messages
 			String first_line=msg.getFirstLine();
-			if (first_line==null || first_line.toUpperCase().indexOf("SIP/2.0")<0) {
+			if (first_line==null || !containsSipVersion(first_line)) {
+				_metrics.notSip();
 				LOG.warn("NOT a SIP message: discarded.");
 				return;
 			}
@@ -890,6 +1220,7 @@ public class SipProvider implements SipTransportListener {
 			if (msg.isRequest()) {
 				ViaHeader vh=msg.getViaHeader();
 				if (vh == null) {
+					_metrics.noVia();
 					LOG.info("Message without via header discarded.");
 					return;
 				}
@@ -924,22 +1255,58 @@ public class SipProvider implements SipTransportListener {
 			
 			// check if the message is still valid
 			if (!msg.isRequest() && !msg.isResponse()) {
+				_metrics.notSip();
 				LOG.info("No valid SIP message, discarded.");
 				return;
 			}
+			_metrics.received(msg);
+
+			// shed new work, if overloaded
+			if (overloadControl!=null && msg.isRequest()) {
+				if (overloadControl.isRejectionAck(msg)) {
+					LOG.debug("ACK for overload rejection: discarded.");
+					return;
+				}
+				if (OverloadControl.isInitialRequest(msg) && !overloadControl.admit() && !hasServerTransaction(msg)) {
+					LOG.debug("Overloaded, rejecting: {}", msg.getFirstLine());
+					_metrics.overloadRejected();
+					sendMessage(overloadControl.createRejection(msg));
+					return;
+				}
+			}
 
 			// look for a specific listener
 			SipProviderListener listener=getListener(msg);
 			if (listener != null) {
+				dispatching=true;
 				listener.onReceivedMessage(this, msg);
+				_metrics.dispatched(System.nanoTime()-start);
 			} else {
+				_metrics.noListener();
 				LOG.info("No listener found for message, discarded.");
 			}
 		}
 		catch (Exception exception) {
+			if (dispatching) _metrics.listenerError(); else _metrics.parseError();
 			LOG.warn("Error handling a new incoming message", exception);
 			exceptionListeners.notify(new MessageProblem(msg, exception));
 		}
+		finally {
+			if (overloadControl!=null) overloadControl.exit(start);
+		}
+	}
+
+	/** Whether the given first line contains the SIP version, ignoring case. */
+	private static boolean containsSipVersion(String first_line) {
+		for (int i=0, last=first_line.length()-7; i<=last; i++) {
+			if (first_line.regionMatches(true,i,"SIP/2.0",0,7)) return true;
+		}
+		return false;
+	}
+
+	/** Whether a server transaction exists for the given request, e.g. for a retransmission. */
+	private synchronized boolean hasServerTransaction(SipMessage req) {
+		return sip_listeners.containsKey(SipId.createTransactionId(false, req));
 	}
 
 	/** Gets a listener for a given message.
@@ -993,7 +1360,7 @@ public class SipProvider implements SipTransportListener {
 				// Ignore.
 			}
 			try {
-				SipTransport udp = new UdpTransport(_sipConfig.getHostPort(), _sipConfig.getBindingIpAddr());
+				SipTransport udp = createUdpTransport(_sipConfig.getHostPort());
 				setTransport(udp);
 			}
 			catch (Exception e) {
@@ -1029,29 +1396,27 @@ public class SipProvider implements SipTransportListener {
 		//if (str.length()<5) str+="00000";
 		//return "z9hG4bK"+str.substring(0,5);
 		//return "z9hG4bK"+Random.nextHexString(8);
-		return ViaHeader.MAGIC_COOKIE+Random.nextHexString(8);
+		return IdGenerator.randomHex(ViaHeader.MAGIC_COOKIE,8);
 	}  
 
 	/** Picks an unique branch value based on a SIP message.
 	  * This value could also be used as transaction ID */
 	public String pickBranch(SipMessage msg) {
-		StringBuilder sb=new StringBuilder();
-		sb.append(msg.getRequestLine().getAddress().toString());
-		sb.append(getViaAddress()+getPort());
+		long hash=IdGenerator.hashStart();
+		hash=IdGenerator.hash(hash,msg.getRequestLine().getAddress().toString());
+		hash=IdGenerator.hash(hash,getViaAddress());
+		hash=IdGenerator.hash(hash,getPort());
 		ViaHeader top_via=msg.getViaHeader();
 		if (top_via.hasBranch())
-			sb.append(top_via.getBranch());
+			hash=IdGenerator.hash(hash,top_via.getBranch());
 		else {
-			sb.append(top_via.getHost());
-			sb.append(top_via.getPort());
-			//sb.append(msg.getToHeader().getTag());
-			sb.append(msg.getFromHeader().getTag());
-			sb.append(msg.getCallIdHeader().getCallId());
-			sb.append(msg.getCSeqHeader().getSequenceNumber());
+			hash=IdGenerator.hash(hash,top_via.getHost());
+			hash=IdGenerator.hash(hash,top_via.getPort());
+			hash=IdGenerator.hash(hash,msg.getFromHeader().getTag());
+			hash=IdGenerator.hash(hash,msg.getCallIdHeader().getCallId());
+			hash=IdGenerator.hash(hash,msg.getCSeqHeader().getSequenceNumber());
 		}
-		//return "z9hG4bK"+(new MD5(unique_str)).asHex().substring(0,9);
-		//return "z9hG4bK"+(new SimpleDigest(5,sb.toString())).asHex();
-		return ViaHeader.MAGIC_COOKIE+(new SimpleDigest(5,sb.toString())).asHex();
+		return IdGenerator.hashHex(ViaHeader.MAGIC_COOKIE,hash,10);
 	}  
 
 
@@ -1066,7 +1431,7 @@ public class SipProvider implements SipTransportListener {
 		//String str=Long.toString(Math.abs(Random.nextLong()),16);
 		//if (str.length()<8) str+="00000000";
 		//return str.substring(0,8);
-		return Random.nextNumString(12);
+		return IdGenerator.randomDecimal(12);
 	}   
 
 	/** Picks a new tag. The tag is generated uniquely based on message <i>req</i>.
@@ -1077,7 +1442,19 @@ public class SipProvider implements SipTransportListener {
 	public static String pickTag(SipMessage req) {
 		//return String.valueOf(tag_generator++);
 		//return (new MD5(request.toString())).asHex().substring(0,8);
-		return (new SimpleDigest(8,req.toString())).asHex();
+		long hash=IdGenerator.hashStart();
+		CallIdHeader call_id=req.getCallIdHeader();
+		hash=IdGenerator.hash(hash,call_id!=null? call_id.getCallId() : null);
+		FromHeader from=req.getFromHeader();
+		hash=IdGenerator.hash(hash,from!=null? from.getTag() : null);
+		CSeqHeader cseq=req.getCSeqHeader();
+		if (cseq!=null) {
+			hash=IdGenerator.hash(hash,cseq.getSequenceNumber());
+			hash=IdGenerator.hash(hash,cseq.getMethod());
+		}
+		ViaHeader top_via=req.getViaHeader();
+		hash=IdGenerator.hash(hash,top_via!=null && top_via.hasBranch()? top_via.getBranch() : null);
+		return IdGenerator.hashHex("",hash,16);
 	}
 
 
@@ -1099,7 +1476,7 @@ public class SipProvider implements SipTransportListener {
 		//String str=Long.toString(Math.abs(Random.nextLong()),16);
 		//if (str.length()<12) str+="000000000000";
 		//return str.substring(0,12)+"@"+hostaddr();
-		return Random.nextNumString(12)+"@"+hostaddr;
+		return IdGenerator.randomDecimal(12,'@',hostaddr);
 	}   
 
 
@@ -1172,6 +1549,13 @@ public class SipProvider implements SipTransportListener {
 		return sb.toString();
 	}
 
+	/**
+	 * The number of requests and responses retransmitted by transactions of this provider.
+	 */
+	public long getRetransmissions() {
+		return _metrics.getRetransmissions();
+	}
+
 	//******************************* Logs *******************************
 
 	/** Adds the SIP message to the message log. */
@@ -1184,8 +1568,14 @@ public class SipProvider implements SipTransportListener {
 
 	/**
 	 * Computes a new timeout based on the last retransmission timeout.
+	 *
+	 * <p>
+	 * Called by transactions for each retransmission, which is counted in
+	 * {@link #getRetransmissions()}.
+	 * </p>
 	 */
 	public long retransmissionSlowdown(long retransmissionTimeout) {
+		_metrics.retransmission();
 		return Math.min(2 * retransmissionTimeout, sipConfig().getMaxRetransmissionTimeout());
 	}
 
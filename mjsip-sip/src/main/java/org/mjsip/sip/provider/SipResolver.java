@@ -0,0 +1,592 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.sip.provider;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.mjsip.net.dns.DnsClient;
+import org.mjsip.net.dns.DnsRecord;
+import org.mjsip.net.dns.DnsResponse;
+import org.slf4j.LoggerFactory;
+import org.zoolu.net.IpAddress;
+
+/**
+ * Locates the next-hop of a SIP message by host name (RFC 3263) with a cache of DNS answers.
+ *
+ * <p>
+ * If no port is given, the SRV records of the host for the selected transport are looked up and
+ * ordered by priority and weight (RFC 2782). Otherwise, or if there are no SRV records, the
+ * address records of the host are used. Names that are not known to DNS are finally looked up
+ * through the system resolver, so that names from the hosts file keep working.
+ * </p>
+ *
+ * <p>
+ * Answers are cached for their DNS time-to-live, negative answers and failed lookups for the
+ * configured negative TTL. Lookups that are not answered from the cache run on a small pool of
+ * resolver threads, so that a thread sending a message never waits for a name server. Concurrent
+ * requests for the same name share a single lookup.
+ * </p>
+ *
+ * <p>
+ * Targets reported with {@link #markFailed(Target)} are moved to the end of the target list for
+ * the configured blacklist time.
+ * </p>
+ */
+public class SipResolver {
+
+	private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(SipResolver.class);
+
+	/** Upper bound in milliseconds for caching a DNS answer. */
+	private static final long MAX_TTL = 3600 * 1000;
+
+	/** Lower bound in milliseconds for caching a DNS answer, also if its TTL is zero. */
+	private static final long MIN_TTL = 1000;
+
+	/** Milliseconds answers of the system resolver are cached, which does not report TTLs. */
+	private static final long SYSTEM_TTL = 60 * 1000;
+
+	/** Number of cache entries above which expired entries are dropped. */
+	private static final int MAX_CACHE_SIZE = 10000;
+
+	private static final int THREADS = 4;
+
+	/** Number of times the list of name servers is tried. */
+	private static final int ATTEMPTS = 2;
+
+	/** Pseudo record type for system resolver answers in the cache. */
+	private static final int SYSTEM = -1;
+
+	private final DnsClient _dns;
+
+	private final int _defaultPort;
+
+	private final int _defaultTlsPort;
+
+	private final long _negativeTtl;
+
+	private final long _blacklistTime;
+
+	private final ThreadPoolExecutor _executor;
+
+	private final ConcurrentHashMap<String, CacheEntry> _cache = new ConcurrentHashMap<>();
+
+	private final ConcurrentHashMap<String, CompletableFuture<List<Target>>> _pending = new ConcurrentHashMap<>();
+
+	private final ConcurrentHashMap<String, Long> _blacklist = new ConcurrentHashMap<>();
+
+	private final LongAdder _hits = new LongAdder();
+
+	private final LongAdder _misses = new LongAdder();
+
+	private final LongAdder _queries = new LongAdder();
+
+	private final LongAdder _failures = new LongAdder();
+
+	private final LongAdder _queryTime = new LongAdder();
+
+	/**
+	 * Creates a {@link SipResolver} for the name servers configured in the given options.
+	 */
+	public SipResolver(SipOptions options) {
+		this(createClient(options), options.getDefaultPort(), options.getDefaultTlsPort(),
+				options.getDnsNegativeTtl(), options.getDnsBlacklistTime());
+	}
+
+	/**
+	 * Creates a {@link SipResolver}.
+	 *
+	 * @param dns
+	 *        The client for querying name servers, <code>null</code> to use the system resolver
+	 *        only (without SRV support).
+	 * @param defaultPort
+	 *        The port for non-secure transports, if neither given nor found in SRV records.
+	 * @param defaultTlsPort
+	 *        The port for secure transports, if neither given nor found in SRV records.
+	 * @param negativeTtl
+	 *        Maximum milliseconds a negative answer or a failed lookup is cached.
+	 * @param blacklistTime
+	 *        Milliseconds a failed target is avoided.
+	 */
+	public SipResolver(DnsClient dns, int defaultPort, int defaultTlsPort, long negativeTtl, long blacklistTime) {
+		_dns = dns;
+		_defaultPort = defaultPort;
+		_defaultTlsPort = defaultTlsPort;
+		_negativeTtl = negativeTtl;
+		_blacklistTime = blacklistTime;
+
+		AtomicInteger threadCnt = new AtomicInteger();
+		_executor = new ThreadPoolExecutor(THREADS, THREADS, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+				task -> {
+					Thread result = new Thread(task, "SipResolver-" + threadCnt.incrementAndGet());
+					result.setDaemon(true);
+					return result;
+				});
+		_executor.allowCoreThreadTimeOut(true);
+	}
+
+	private static DnsClient createClient(SipOptions options) {
+		List<InetSocketAddress> servers;
+		String[] configured = options.getDnsServers();
+		if (configured != null && configured.length > 0) {
+			servers = new ArrayList<>();
+			for (String server : configured) {
+				try {
+					servers.add(DnsClient.parseServer(server));
+				} catch (IOException | RuntimeException ex) {
+					LOG.error("Invalid name server '{}', ignored.", server, ex);
+				}
+			}
+		} else {
+			servers = DnsClient.systemServers();
+		}
+		if (servers.isEmpty()) {
+			LOG.info("No name servers known, using the system resolver without SRV support.");
+			return null;
+		}
+		return new DnsClient(servers, (int) options.getDnsTimeout(), ATTEMPTS);
+	}
+
+	/**
+	 * The targets for the given destination, if they can be determined without waiting for a name
+	 * server.
+	 *
+	 * @param host
+	 *        The host name or IP address.
+	 * @param port
+	 *        The port, <code>0</code> if not given.
+	 * @param transport
+	 *        The transport protocol.
+	 * @return The targets in the order they should be tried, empty if the host is unknown, or
+	 *         <code>null</code> if a lookup is required, see
+	 *         {@link #resolve(String, int, String)}.
+	 */
+	public List<Target> resolveCached(String host, int port, String transport) {
+		return targets(host, port, transport, false);
+	}
+
+	/**
+	 * Resolves the targets for the given destination.
+	 *
+	 * @see #resolveCached(String, int, String)
+	 */
+	public CompletableFuture<List<Target>> resolve(String host, int port, String transport) {
+		List<Target> cached = resolveCached(host, port, transport);
+		if (cached != null) {
+			return CompletableFuture.completedFuture(cached);
+		}
+
+		String key = transport.toLowerCase() + ":" + host.toLowerCase() + ":" + port;
+		CompletableFuture<List<Target>> result = new CompletableFuture<>();
+		CompletableFuture<List<Target>> pending = _pending.putIfAbsent(key, result);
+		if (pending != null) {
+			return pending;
+		}
+		try {
+			_executor.execute(() -> {
+				try {
+					result.complete(targets(host, port, transport, true));
+				} catch (RuntimeException ex) {
+					result.completeExceptionally(ex);
+				} finally {
+					_pending.remove(key, result);
+				}
+			});
+		} catch (RejectedExecutionException ex) {
+			_pending.remove(key, result);
+			result.completeExceptionally(ex);
+		}
+		return result;
+	}
+
+	private List<Target> targets(String host, int port, String transport, boolean lookup) {
+		if (isLiteral(host)) {
+			try {
+				return Collections.singletonList(
+						new Target(IpAddress.getByName(host), port > 0 ? port : defaultPort(transport), transport));
+			} catch (UnknownHostException ex) {
+				LOG.warn("Invalid IP address '{}'.", host);
+				return Collections.emptyList();
+			}
+		}
+
+		if (port <= 0) {
+			if (_dns != null) {
+				List<DnsRecord> services = records(srvName(host, transport), DnsRecord.SRV, lookup);
+				if (services == null) {
+					return null;
+				}
+				if (!services.isEmpty()) {
+					if (services.size() == 1 && services.get(0).getTarget().equals(".")) {
+						// Service explicitly not available (RFC 2782).
+						return Collections.emptyList();
+					}
+					List<Target> result = new ArrayList<>();
+					for (DnsRecord service : orderServices(services)) {
+						List<DnsRecord> addresses = addresses(service.getTarget(), lookup);
+						if (addresses == null) {
+							return null;
+						}
+						for (DnsRecord address : addresses) {
+							result.add(new Target(new IpAddress(address.getAddress()), service.getPort(), transport));
+						}
+					}
+					return avoidBlacklisted(result);
+				}
+			}
+			port = defaultPort(transport);
+		}
+
+		List<DnsRecord> addresses = addresses(host, lookup);
+		if (addresses == null) {
+			return null;
+		}
+		List<Target> result = new ArrayList<>(addresses.size());
+		for (DnsRecord address : addresses) {
+			result.add(new Target(new IpAddress(address.getAddress()), port, transport));
+		}
+		return avoidBlacklisted(result);
+	}
+
+	private List<DnsRecord> addresses(String host, boolean lookup) {
+		if (_dns != null) {
+			List<DnsRecord> v4 = records(host, DnsRecord.A, lookup);
+			if (v4 == null || !v4.isEmpty()) {
+				return v4;
+			}
+			List<DnsRecord> v6 = records(host, DnsRecord.AAAA, lookup);
+			if (v6 == null || !v6.isEmpty()) {
+				return v6;
+			}
+		}
+		return records(host, SYSTEM, lookup);
+	}
+
+	/**
+	 * The records of the given type, from the cache or by asking a name server.
+	 *
+	 * @return The records, empty if there are none, <code>null</code> if not cached and no lookup
+	 *         is allowed.
+	 */
+	private List<DnsRecord> records(String name, int type, boolean lookup) {
+		String key = type + " " + name.toLowerCase();
+		long now = now();
+		CacheEntry entry = _cache.get(key);
+		if (entry != null && entry._expires > now) {
+			_hits.increment();
+			return entry._records;
+		}
+		if (!lookup) {
+			return null;
+		}
+		_misses.increment();
+
+		List<DnsRecord> records;
+		long ttl;
+		long start = System.nanoTime();
+		_queries.increment();
+		try {
+			if (type == SYSTEM) {
+				records = new ArrayList<>();
+				for (InetAddress address : InetAddress.getAllByName(name)) {
+					records.add(DnsRecord.address(name, SYSTEM_TTL / 1000, address));
+				}
+				ttl = SYSTEM_TTL;
+			} else {
+				DnsResponse response = _dns.query(name, type);
+				records = response.getRecords();
+				if (records.isEmpty()) {
+					long negativeTtl = response.getNegativeTtl();
+					ttl = negativeTtl < 0 ? _negativeTtl : Math.min(_negativeTtl, negativeTtl * 1000);
+				} else {
+					long minTtl = Long.MAX_VALUE;
+					for (DnsRecord record : records) {
+						minTtl = Math.min(minTtl, record.getTtl());
+					}
+					ttl = Math.max(MIN_TTL, Math.min(MAX_TTL, minTtl * 1000));
+				}
+			}
+		} catch (UnknownHostException ex) {
+			records = Collections.emptyList();
+			ttl = _negativeTtl;
+		} catch (IOException ex) {
+			_failures.increment();
+			LOG.warn("Lookup of {} {} failed.", name, DnsRecord.typeName(type), ex);
+			records = Collections.emptyList();
+			ttl = _negativeTtl;
+		} finally {
+			_queryTime.add(System.nanoTime() - start);
+		}
+
+		if (ttl > 0) {
+			if (_cache.size() >= MAX_CACHE_SIZE) {
+				_cache.values().removeIf(e -> e._expires <= now);
+				if (_cache.size() >= MAX_CACHE_SIZE) {
+					_cache.clear();
+				}
+			}
+			_cache.put(key, new CacheEntry(records, now() + ttl));
+		}
+		return records;
+	}
+
+	/**
+	 * Orders SRV records by priority, and by a weighted random selection among records of the same
+	 * priority (RFC 2782).
+	 */
+	static List<DnsRecord> orderServices(List<DnsRecord> services) {
+		List<DnsRecord> sorted = new ArrayList<>(services);
+		// Zero weight records first, as required by the selection algorithm.
+		sorted.sort((a, b) -> a.getPriority() != b.getPriority() ? Integer.compare(a.getPriority(), b.getPriority())
+				: Integer.compare(Math.min(a.getWeight(), 1), Math.min(b.getWeight(), 1)));
+
+		List<DnsRecord> result = new ArrayList<>(sorted.size());
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		int start = 0;
+		while (start < sorted.size()) {
+			int priority = sorted.get(start).getPriority();
+			int end = start + 1;
+			while (end < sorted.size() && sorted.get(end).getPriority() == priority) {
+				end++;
+			}
+			List<DnsRecord> group = new ArrayList<>(sorted.subList(start, end));
+			while (!group.isEmpty()) {
+				int total = 0;
+				for (DnsRecord record : group) {
+					total += record.getWeight();
+				}
+				int selection = random.nextInt(total + 1);
+				int sum = 0;
+				for (int n = 0, cnt = group.size(); n < cnt; n++) {
+					sum += group.get(n).getWeight();
+					if (sum >= selection) {
+						result.add(group.remove(n));
+						break;
+					}
+				}
+			}
+			start = end;
+		}
+		return result;
+	}
+
+	private List<Target> avoidBlacklisted(List<Target> targets) {
+		if (_blacklist.isEmpty()) {
+			return targets;
+		}
+		long now = now();
+		List<Target> result = new ArrayList<>(targets.size());
+		List<Target> blacklisted = null;
+		for (Target target : targets) {
+			Long until = _blacklist.get(target.key());
+			if (until != null) {
+				if (until.longValue() > now) {
+					if (blacklisted == null) {
+						blacklisted = new ArrayList<>();
+					}
+					blacklisted.add(target);
+					continue;
+				}
+				_blacklist.remove(target.key(), until);
+			}
+			result.add(target);
+		}
+		if (blacklisted != null) {
+			result.addAll(blacklisted);
+		}
+		return result;
+	}
+
+	/**
+	 * Reports that the given target could not be reached.
+	 */
+	public void markFailed(Target target) {
+		LOG.info("Avoiding {} for {} ms.", target, _blacklistTime);
+		_blacklist.put(target.key(), Long.valueOf(now() + _blacklistTime));
+	}
+
+	/**
+	 * Whether the given target is currently avoided.
+	 */
+	public boolean isBlacklisted(Target target) {
+		Long until = _blacklist.get(target.key());
+		return until != null && until.longValue() > now();
+	}
+
+	private int defaultPort(String transport) {
+		return SipProvider.isSecureTransport(transport) ? _defaultTlsPort : _defaultPort;
+	}
+
+	private static String srvName(String host, String transport) {
+		if (transport.equalsIgnoreCase(SipProvider.PROTO_TLS)) {
+			return "_sips._tcp." + host;
+		}
+		return "_sip._" + transport.toLowerCase() + "." + host;
+	}
+
+	/**
+	 * Whether the given host is a numeric IPv4 or IPv6 address.
+	 */
+	static boolean isLiteral(String host) {
+		if (host.indexOf(':') >= 0) {
+			return true;
+		}
+		int dots = 0;
+		for (int n = 0, cnt = host.length(); n < cnt; n++) {
+			char c = host.charAt(n);
+			if (c == '.') {
+				dots++;
+			} else if (c < '0' || c > '9') {
+				return false;
+			}
+		}
+		return dots == 3;
+	}
+
+	private static long now() {
+		return System.nanoTime() / 1000000;
+	}
+
+	/**
+	 * Number of lookups answered from the cache.
+	 */
+	public long getCacheHits() {
+		return _hits.sum();
+	}
+
+	/**
+	 * Number of lookups that required a query.
+	 */
+	public long getCacheMisses() {
+		return _misses.sum();
+	}
+
+	/**
+	 * Number of queries sent to name servers (or the system resolver).
+	 */
+	public long getQueries() {
+		return _queries.sum();
+	}
+
+	/**
+	 * Number of queries that timed out or failed.
+	 */
+	public long getQueryFailures() {
+		return _failures.sum();
+	}
+
+	/**
+	 * Average time of a query in microseconds.
+	 */
+	public long getAverageQueryTime() {
+		long queries = _queries.sum();
+		return queries == 0 ? 0 : _queryTime.sum() / queries / 1000;
+	}
+
+	/**
+	 * Number of cached answers.
+	 */
+	public int getCacheSize() {
+		return _cache.size();
+	}
+
+	/**
+	 * Drops all cached answers and blacklisted targets.
+	 */
+	public void clear() {
+		_cache.clear();
+		_blacklist.clear();
+	}
+
+	/**
+	 * Stops the resolver threads.
+	 */
+	public void halt() {
+		_executor.shutdownNow();
+	}
+
+	@Override
+	public String toString() {
+		return "SipResolver(hits=" + getCacheHits() + ", misses=" + getCacheMisses() + ", queries=" + getQueries()
+				+ ", failures=" + getQueryFailures() + ", avg=" + getAverageQueryTime() + "us)";
+	}
+
+	private static final class CacheEntry {
+
+		final List<DnsRecord> _records;
+
+		final long _expires;
+
+		CacheEntry(List<DnsRecord> records, long expires) {
+			_records = records;
+			_expires = expires;
+		}
+	}
+
+	/**
+	 * A resolved next-hop.
+	 */
+	public static final class Target {
+
+		private final IpAddress _address;
+
+		private final int _port;
+
+		private final String _transport;
+
+		/**
+		 * Creates a {@link Target}.
+		 */
+		public Target(IpAddress address, int port, String transport) {
+			_address = address;
+			_port = port;
+			_transport = transport;
+		}
+
+		/**
+		 * The IP address.
+		 */
+		public IpAddress getAddress() {
+			return _address;
+		}
+
+		/**
+		 * The port.
+		 */
+		public int getPort() {
+			return _port;
+		}
+
+		/**
+		 * The transport protocol.
+		 */
+		public String getTransport() {
+			return _transport;
+		}
+
+		String key() {
+			return _transport.toLowerCase() + ":" + _address + ":" + _port;
+		}
+
+		@Override
+		public String toString() {
+			return _transport + ":" + _address + ":" + _port;
+		}
+	}
+
+}
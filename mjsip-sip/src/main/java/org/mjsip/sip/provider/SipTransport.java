@@ -52,6 +52,20 @@ public interface SipTransport {
 	  * @return Returns the id of the used connection for CO transport, or null for CL transport. */      
 	public ConnectionId sendMessage(SipMessage msg, IpAddress dest_ipaddr, int dest_port, int ttl) throws IOException;
 
+	/** Whether this transport supports {@link #sendRawData(byte[],int,int,IpAddress,int)}. */
+	default boolean supportsRawData() {
+		return false;
+	}
+
+	/** Sends already encoded message data to the given remote address and port.
+	  * This is supported by connection-less transports only, see {@link #supportsRawData()}.
+	  * @param buf the buffer containing the message
+	  * @param off the offset of the message within the buffer
+	  * @param len the length of the message */
+	default void sendRawData(byte[] buf, int off, int len, IpAddress dest_ipaddr, int dest_port) throws IOException {
+		throw new UnsupportedOperationException("Raw data not supported by "+getProtocol()+" transport.");
+	}
+
 	/** Gets a String representation of the Object */
 	@Override
 	public String toString();
@@ -30,6 +30,8 @@ import java.util.Enumeration;
 import java.util.Hashtable;
 import java.util.Map;
 
+import org.mjsip.capture.PacketCapture;
+
 import org.mjsip.sip.message.SipMessage;
 import org.slf4j.LoggerFactory;
 import org.zoolu.net.IpAddress;
@@ -61,6 +63,9 @@ public abstract class SipTransportCO implements SipTransport/*, SipTransportConn
 	/** Whether changing the Via protocol, sent-by, and port values of sending messages according to the transport connection */
 	boolean force_sent_by=false;   
 
+	/** Capture of data sent and received through connections, or null */
+	volatile PacketCapture capture=null;
+
 
 
 
@@ -104,6 +109,11 @@ public abstract class SipTransportCO implements SipTransport/*, SipTransportConn
 	}
 
 
+	/** Sets the capture of data sent and received through connections added from now on, or null to stop capturing. */
+	public void setCapture(PacketCapture capture) {
+		this.capture=capture;
+	}
+
 	/** Gets protocol type */ 
 	@Override
 	abstract public String getProtocol();
@@ -298,6 +308,10 @@ public abstract class SipTransportCO implements SipTransport/*, SipTransportConn
 			}
 			connections.put(connection_id,conn);
 			conn.setListener(this_conn_listener);
+			if (capture!=null) {
+				if (conn instanceof TcpTransportConnection) ((TcpTransportConnection)conn).setCapture(capture);
+				else if (conn instanceof TlsEngineConnection) ((TlsEngineConnection)conn).setCapture(capture);
+			}
 			//connection_id=new ConnectionId(conn);
 			//conn=(SipTransportConnection)connections.get(connection_id);
 			// DEBUG log:
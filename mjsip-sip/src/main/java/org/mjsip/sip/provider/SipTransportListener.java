@@ -26,6 +26,7 @@ package org.mjsip.sip.provider;
 
 
 import org.mjsip.sip.message.SipMessage;
+import org.zoolu.net.IpAddress;
 import org.zoolu.net.SocketAddress;
 
 
@@ -37,6 +38,13 @@ public interface SipTransportListener {
 	/** When a new SIP message is received. */
 	public void onReceivedMessage(SipTransport transport, SipMessage msg);
 
+	/** When a new datagram is received, before it is parsed. It is called only for CL transport protocols.
+	  * The given buffer is only valid during the call.
+	  * @return whether the datagram has been handled and must not be parsed into a SIP message */
+	default boolean onReceivedRawMessage(SipTransport transport, byte[] buf, int off, int len, IpAddress src_addr, int src_port) {
+		return false;
+	}
+
 	/** When a new incoming transport connection is established. It is called only for CO transport portocols. */ 
 	public void onIncomingTransportConnection(SipTransport transport, SocketAddress remote_soaddr);
 
@@ -26,6 +26,10 @@ package org.mjsip.sip.provider;
 
 
 import java.io.IOException;
+import java.net.InetAddress;
+
+import org.mjsip.capture.CapturedPacket;
+import org.mjsip.capture.PacketCapture;
 
 import org.mjsip.sip.message.SipMessage;
 import org.mjsip.sip.message.SipMessageBuffer;
@@ -61,6 +65,15 @@ public class TcpTransportConnection implements SipTransportConnection/*, TcpConn
 	/** SipTransportConnection listener */
 	SipTransportConnectionListener listener;   
 
+	/** Capture of sent and received data, or null */
+	volatile PacketCapture capture=null;
+
+	/** Local and remote addresses reported for captured data */
+	InetAddress capture_local, capture_remote;
+
+	/** Stream offsets of captured data in receive and send direction */
+	int capture_rcv_seq, capture_snd_seq;
+
 
 
 	/** Creates a new TcpTransportConnection. */ 
@@ -115,6 +128,16 @@ public class TcpTransportConnection implements SipTransportConnection/*, TcpConn
 	}
 
 
+	/** Sets the capture of sent and received data, or null to stop capturing.
+	  * Data is captured as plain TCP segments, also for encrypted connections. */
+	public void setCapture(PacketCapture capture) {
+		if (capture!=null && tcp_conn!=null) {
+			capture_local=tcp_conn.getLocalAddress().getInetAddress();
+			capture_remote=tcp_conn.getRemoteAddress().getInetAddress();
+		}
+		this.capture=capture;
+	}
+
 	/** Gets protocol type. */ 
 	@Override
 	public String getProtocol() {
@@ -167,6 +190,8 @@ public class TcpTransportConnection implements SipTransportConnection/*, TcpConn
 			last_time=System.currentTimeMillis();
 			byte[] data=msg.getBytes();
 			tcp_conn.send(data);
+			PacketCapture c=capture;
+			if (c!=null) captureSent(c,data);
 			
 			// DEBUG:
 			//int offset=data.length/2;
@@ -216,6 +241,12 @@ public class TcpTransportConnection implements SipTransportConnection/*, TcpConn
 	}
 
 
+	/** Captures data sent through the TcpConnection. */
+	private synchronized void captureSent(PacketCapture c, byte[] data) {
+		c.capture(CapturedPacket.TCP,capture_local,getLocalPort(),capture_remote,getRemotePort(),capture_snd_seq,data,0,data.length);
+		capture_snd_seq+=data.length;
+	}
+
 	/** When TcpConnection terminates. */
 	private void processConnectionTerminated(TcpConnection tcp_conn, Exception error)   {
 		if (listener!=null) listener.onConnectionTerminated(this,error);
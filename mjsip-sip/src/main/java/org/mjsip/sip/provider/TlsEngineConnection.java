@@ -0,0 +1,573 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.sip.provider;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLSession;
+
+import org.mjsip.capture.CapturedPacket;
+import org.mjsip.capture.PacketCapture;
+import org.mjsip.sip.message.SipMessage;
+import org.mjsip.sip.message.SipMessageBuffer;
+import org.slf4j.LoggerFactory;
+import org.zoolu.net.IpAddress;
+
+/**
+ * TLS connection of a {@link TlsEngineTransport} based on a non-blocking {@link SocketChannel}
+ * and an {@link SSLEngine}.
+ *
+ * <p>
+ * Received data is processed on the I/O thread of the transport, which also dispatches received
+ * messages. Messages are encrypted and written on the sending thread. If the channel cannot take
+ * all data, the remaining data is written by the I/O thread when the channel becomes writable.
+ * CPU intensive handshake steps (delegated tasks of the {@link SSLEngine}) are run by the
+ * handshake pool of the transport.
+ * </p>
+ */
+public class TlsEngineConnection implements SipTransportConnection {
+
+	private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(TlsEngineConnection.class);
+
+	/** Maximum number of bytes waiting to be encrypted before sending fails. */
+	static final int MAX_PENDING = 1024 * 1024;
+
+	private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+	private final TlsEngineTransport _transport;
+
+	private final SocketChannel _channel;
+
+	private final SSLEngine _engine;
+
+	private final IpAddress _remoteAddress;
+
+	private final int _remotePort;
+
+	private final IpAddress _localAddress;
+
+	private final int _localPort;
+
+	private final ConnectionId _connectionId;
+
+	private final SipMessageBuffer _buffer = new SipMessageBuffer();
+
+	private final ArrayDeque<ByteBuffer> _pending = new ArrayDeque<>();
+
+	private int _pendingBytes;
+
+	private ByteBuffer _netIn;
+
+	private ByteBuffer _appIn;
+
+	private ByteBuffer _netOut;
+
+	private SelectionKey _key;
+
+	private boolean _writeInterest;
+
+	private boolean _taskRunning;
+
+	/** {@link System#nanoTime()} of the handshake start, <code>0</code> if not handshaking. */
+	private long _handshakeStart;
+
+	private long _handshakeStartMillis;
+
+	private boolean _closed;
+
+	private volatile SipTransportConnectionListener _listener;
+
+	private volatile long _lastTime = System.currentTimeMillis();
+
+	private volatile PacketCapture _capture;
+
+	private int _captureRcvSeq;
+
+	private int _captureSndSeq;
+
+	/**
+	 * Creates a {@link TlsEngineConnection}.
+	 *
+	 * @param transport
+	 *        The owning transport.
+	 * @param channel
+	 *        The connected channel.
+	 * @param engine
+	 *        The engine in client or server mode.
+	 * @param listener
+	 *        The listener for received messages.
+	 */
+	TlsEngineConnection(TlsEngineTransport transport, SocketChannel channel, SSLEngine engine,
+			SipTransportConnectionListener listener) throws IOException {
+		_transport = transport;
+		_channel = channel;
+		_engine = engine;
+		_listener = listener;
+
+		channel.configureBlocking(false);
+		channel.socket().setTcpNoDelay(true);
+
+		InetSocketAddress remote = (InetSocketAddress) channel.getRemoteAddress();
+		InetSocketAddress local = (InetSocketAddress) channel.getLocalAddress();
+		_remoteAddress = new IpAddress(remote.getAddress());
+		_remotePort = remote.getPort();
+		_localAddress = new IpAddress(local.getAddress());
+		_localPort = local.getPort();
+		_connectionId = new ConnectionId(this);
+
+		SSLSession session = engine.getSession();
+		_netIn = ByteBuffer.allocate(session.getPacketBufferSize());
+		_netOut = ByteBuffer.allocate(session.getPacketBufferSize());
+		_appIn = ByteBuffer.allocate(session.getApplicationBufferSize());
+	}
+
+	/**
+	 * Registers the connection for reading and starts the handshake.
+	 */
+	void start(Selector selector) throws IOException {
+		synchronized (this) {
+			_handshakeStart = System.nanoTime();
+			_handshakeStartMillis = System.currentTimeMillis();
+			_transport.handshakeStarted();
+			_key = _channel.register(selector, SelectionKey.OP_READ, this);
+			// Registration takes effect with the next selection.
+			selector.wakeup();
+			_engine.beginHandshake();
+		}
+		resume();
+	}
+
+	@Override
+	public void setListener(SipTransportConnectionListener listener) {
+		_listener = listener;
+	}
+
+	/**
+	 * Sets the capture of sent and received data, or <code>null</code> to stop capturing.
+	 *
+	 * <p>
+	 * Data is captured as plain TCP segments before encryption and after decryption.
+	 * </p>
+	 */
+	public void setCapture(PacketCapture capture) {
+		_capture = capture;
+	}
+
+	@Override
+	public String getProtocol() {
+		return TlsEngineTransport.PROTO_TLS;
+	}
+
+	@Override
+	public IpAddress getRemoteAddress() {
+		return _remoteAddress;
+	}
+
+	@Override
+	public int getRemotePort() {
+		return _remotePort;
+	}
+
+	@Override
+	public IpAddress getLocalAddress() {
+		return _localAddress;
+	}
+
+	@Override
+	public int getLocalPort() {
+		return _localPort;
+	}
+
+	@Override
+	public long getLastTimeMillis() {
+		return _lastTime;
+	}
+
+	/**
+	 * Whether the TLS handshake has completed.
+	 */
+	public synchronized boolean isEstablished() {
+		return !_closed && _handshakeStart == 0;
+	}
+
+	@Override
+	public void sendMessage(SipMessage msg) throws IOException {
+		byte[] data = msg.getBytes();
+		List<SipMessage> received;
+		try {
+			synchronized (this) {
+				if (_closed) {
+					throw new IOException("Connection closed: " + this);
+				}
+				if (_pendingBytes + data.length > MAX_PENDING) {
+					throw new IOException("Send buffer exceeded: " + this);
+				}
+				_lastTime = System.currentTimeMillis();
+				_pending.add(ByteBuffer.wrap(data));
+				_pendingBytes += data.length;
+
+				PacketCapture capture = _capture;
+				if (capture != null) {
+					capture.capture(CapturedPacket.TCP, _localAddress.getInetAddress(), _localPort,
+						_remoteAddress.getInetAddress(), _remotePort, _captureSndSeq, data, 0, data.length);
+					_captureSndSeq += data.length;
+				}
+
+				received = advance();
+			}
+		} catch (IOException ex) {
+			close(ex);
+			throw ex;
+		}
+		deliver(received);
+	}
+
+	@Override
+	public void halt() {
+		close(null);
+	}
+
+	/**
+	 * Called by the I/O thread, when the channel has data to read.
+	 */
+	void onReadable() {
+		List<SipMessage> received;
+		try {
+			synchronized (this) {
+				if (_closed) {
+					return;
+				}
+				int cnt = _channel.read(_netIn);
+				if (cnt < 0) {
+					throw new EOFException("Connection closed by peer.");
+				}
+				received = advance();
+			}
+		} catch (IOException ex) {
+			close(ex);
+			return;
+		}
+		deliver(received);
+	}
+
+	/**
+	 * Called by the I/O thread, when the channel can take more data.
+	 */
+	void onWritable() {
+		resume();
+	}
+
+	/**
+	 * Continues processing after the channel became writable or delegated tasks completed.
+	 */
+	void resume() {
+		List<SipMessage> received;
+		try {
+			synchronized (this) {
+				if (_closed) {
+					return;
+				}
+				received = advance();
+			}
+		} catch (IOException ex) {
+			close(ex);
+			return;
+		}
+		deliver(received);
+	}
+
+	/**
+	 * Runs the delegated tasks of the engine, called by the handshake pool.
+	 */
+	void runTasks() {
+		Runnable task;
+		while ((task = _engine.getDelegatedTask()) != null) {
+			task.run();
+		}
+		synchronized (this) {
+			_taskRunning = false;
+		}
+		_transport.execute(this::resume);
+	}
+
+	/**
+	 * Drives the engine as far as possible with the currently available data.
+	 *
+	 * @return The messages received, or <code>null</code>.
+	 */
+	private List<SipMessage> advance() throws IOException {
+		List<SipMessage> received = null;
+		while (true) {
+			boolean progress;
+			HandshakeStatus status = _engine.getHandshakeStatus();
+			switch (status) {
+			case NEED_TASK:
+				if (!_taskRunning) {
+					_taskRunning = true;
+					_transport.runHandshakeTasks(this);
+				}
+				progress = false;
+				break;
+			case NEED_WRAP:
+				progress = wrap(EMPTY);
+				break;
+			case NEED_UNWRAP:
+			case NEED_UNWRAP_AGAIN:
+				progress = unwrap();
+				break;
+			default:
+				progress = false;
+				if (!_pending.isEmpty()) {
+					progress = wrap(_pending.peek());
+				}
+				if (_netIn.position() > 0) {
+					progress |= unwrap();
+				}
+			}
+
+			if (_appIn.position() > 0) {
+				received = receive(received);
+			}
+			if (!progress) {
+				break;
+			}
+		}
+		flush();
+
+		if (_engine.isInboundDone()) {
+			throw new EOFException("Connection closed by peer.");
+		}
+		return received;
+	}
+
+	private boolean wrap(ByteBuffer src) throws IOException {
+		SSLEngineResult result = _engine.wrap(src, _netOut);
+		switch (result.getStatus()) {
+		case OK:
+			if (src != EMPTY) {
+				_pendingBytes -= result.bytesConsumed();
+				if (!src.hasRemaining()) {
+					_pending.poll();
+				}
+			}
+			return checkFinished(result) || result.bytesConsumed() > 0 || result.bytesProduced() > 0;
+		case BUFFER_OVERFLOW:
+			if (_netOut.position() > 0) {
+				// Continue when the channel has taken the buffered data.
+				return flush();
+			}
+			_netOut = enlarge(_netOut, _engine.getSession().getPacketBufferSize());
+			return true;
+		case CLOSED:
+			if (result.bytesProduced() > 0) {
+				return true;
+			}
+			throw new EOFException("Connection closed.");
+		default:
+			throw new IOException("Unexpected wrap result: " + result);
+		}
+	}
+
+	private boolean unwrap() throws IOException {
+		_netIn.flip();
+		SSLEngineResult result;
+		try {
+			result = _engine.unwrap(_netIn, _appIn);
+		} finally {
+			_netIn.compact();
+		}
+		switch (result.getStatus()) {
+		case OK:
+			return checkFinished(result) || result.bytesConsumed() > 0 || result.bytesProduced() > 0;
+		case BUFFER_UNDERFLOW:
+			int packetSize = _engine.getSession().getPacketBufferSize();
+			if (_netIn.capacity() < packetSize) {
+				_netIn = enlarge(_netIn, packetSize);
+			}
+			return false;
+		case BUFFER_OVERFLOW:
+			if (_appIn.position() == 0) {
+				_appIn = enlarge(_appIn, _engine.getSession().getApplicationBufferSize());
+			}
+			// Received data is consumed before retrying.
+			return true;
+		case CLOSED:
+			return result.bytesConsumed() > 0;
+		default:
+			throw new IOException("Unexpected unwrap result: " + result);
+		}
+	}
+
+	private boolean checkFinished(SSLEngineResult result) {
+		if (result.getHandshakeStatus() != HandshakeStatus.FINISHED) {
+			return false;
+		}
+		if (_handshakeStart != 0) {
+			// A resumed session was created by an earlier handshake.
+			boolean resumed = _engine.getSession().getCreationTime() < _handshakeStartMillis;
+			_transport.handshakeFinished(System.nanoTime() - _handshakeStart, resumed);
+			_handshakeStart = 0;
+			LOG.debug("TLS handshake with {} completed ({}).", this, resumed ? "resumed" : "full");
+		}
+		return true;
+	}
+
+	/**
+	 * Writes as much buffered data as the channel takes.
+	 *
+	 * @return Whether all data was written.
+	 */
+	private boolean flush() throws IOException {
+		if (_netOut.position() > 0) {
+			_netOut.flip();
+			try {
+				while (_netOut.hasRemaining() && _channel.write(_netOut) > 0) {
+					// Continue writing.
+				}
+			} finally {
+				_netOut.compact();
+			}
+		}
+		boolean done = _netOut.position() == 0;
+		setWriteInterest(!done);
+		return done;
+	}
+
+	private void setWriteInterest(boolean enabled) {
+		if (enabled == _writeInterest || _key == null || !_key.isValid()) {
+			return;
+		}
+		_writeInterest = enabled;
+		_key.interestOps(enabled ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+		if (enabled) {
+			_key.selector().wakeup();
+		}
+	}
+
+	private List<SipMessage> receive(List<SipMessage> received) {
+		_lastTime = System.currentTimeMillis();
+		byte[] data = _appIn.array();
+		int length = _appIn.position();
+		PacketCapture capture = _capture;
+		if (capture != null) {
+			capture.capture(CapturedPacket.TCP, _remoteAddress.getInetAddress(), _remotePort,
+				_localAddress.getInetAddress(), _localPort, _captureRcvSeq, data, 0, length);
+			_captureRcvSeq += length;
+		}
+		_buffer.append(data, 0, length);
+		_appIn.clear();
+
+		SipMessage msg;
+		while ((msg = parseSipMessage()) != null) {
+			msg.setRemoteAddress(_remoteAddress.toString());
+			msg.setRemotePort(_remotePort);
+			msg.setTransportProtocol(getProtocol());
+			msg.setConnectionId(_connectionId);
+			if (received == null) {
+				received = new ArrayList<>();
+			}
+			received.add(msg);
+		}
+		return received;
+	}
+
+	/** Tries to get a SIP message from the receive buffer. */
+	private SipMessage parseSipMessage() {
+		// Skip keep-alive CRLFs.
+		byte b;
+		while (_buffer.getLength() > 0 && ((b = _buffer.byteAt(0)) == '\r' || b == '\n')) {
+			_buffer.skip(1);
+		}
+		try {
+			return _buffer.parseSipMessage();
+		} catch (Exception ex) {
+			return null;
+		}
+	}
+
+	private void deliver(List<SipMessage> received) {
+		if (received == null) {
+			return;
+		}
+		for (SipMessage msg : received) {
+			SipTransportConnectionListener listener = _listener;
+			if (listener != null) {
+				listener.onReceivedMessage(this, msg);
+			}
+		}
+	}
+
+	private static ByteBuffer enlarge(ByteBuffer buffer, int size) {
+		ByteBuffer result = ByteBuffer.allocate(Math.max(size, buffer.capacity() * 2));
+		buffer.flip();
+		result.put(buffer);
+		return result;
+	}
+
+	/**
+	 * Closes the connection and notifies the listener.
+	 *
+	 * @param error
+	 *        The reason, or <code>null</code> for a regular close.
+	 */
+	void close(Exception error) {
+		SipTransportConnectionListener listener;
+		synchronized (this) {
+			if (_closed) {
+				return;
+			}
+			_closed = true;
+			if (_handshakeStart != 0) {
+				_handshakeStart = 0;
+				_transport.handshakeFailed();
+			}
+			if (error == null) {
+				// Best effort close notification.
+				try {
+					_engine.closeOutbound();
+					_engine.wrap(EMPTY, _netOut);
+					flush();
+				} catch (IOException ex) {
+					// Ignore.
+				}
+			}
+			if (_key != null) {
+				_key.cancel();
+			}
+			try {
+				_channel.close();
+			} catch (IOException ex) {
+				LOG.debug("Closing {} failed.", this, ex);
+			}
+			listener = _listener;
+			_listener = null;
+		}
+
+		Exception reason = error instanceof EOFException ? null : error;
+		if (reason != null) {
+			LOG.info("TLS connection {} terminated: {}", this, reason.toString());
+		}
+		if (listener != null) {
+			listener.onConnectionTerminated(this, reason);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "tls " + _localAddress + ":" + _localPort + "<->" + _remoteAddress + ":" + _remotePort;
+	}
+
+}
@@ -0,0 +1,458 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.sip.provider;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509TrustManager;
+
+import org.mjsip.metrics.Counter;
+import org.mjsip.metrics.Histogram;
+import org.mjsip.metrics.MetricsRegistry;
+import org.slf4j.LoggerFactory;
+import org.zoolu.net.IpAddress;
+import org.zoolu.net.SocketAddress;
+import org.zoolu.net.TlsContext;
+
+/**
+ * TLS transport based on non-blocking channels and {@link SSLEngine}s.
+ *
+ * <p>
+ * In contrast to {@link TlsTransport}, which uses a blocking socket and a thread per connection,
+ * all connections are served by a single I/O thread. The CPU intensive parts of handshakes are
+ * offloaded to a bounded pool of handshake threads, so that a burst of reconnecting clients
+ * cannot occupy more processors than configured. Optionally, incoming connections are closed
+ * right away, while too many handshakes are in progress.
+ * </p>
+ *
+ * <p>
+ * Sessions are kept in the session caches of the {@link SSLContext} with configurable size and
+ * lifetime. Outgoing connections are created for the peer address, so that a reconnect to the
+ * same peer resumes the cached session instead of doing a full handshake. For TLS 1.3, the JDK
+ * additionally issues stateless session tickets to clients.
+ * </p>
+ */
+public class TlsEngineTransport extends SipTransportCO {
+
+	private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(TlsEngineTransport.class);
+
+	/** TLS protocol type */
+	public static final String PROTO_TLS = "tls";
+
+	/** Milliseconds to wait for an outgoing TCP connection to be established. */
+	static final int CONNECT_TIMEOUT = 10000;
+
+	private static final int BACKLOG = 128;
+
+	private final SSLContext _sslContext;
+
+	private final Selector _selector;
+
+	private final ServerSocketChannel _server;
+
+	private final int _localPort;
+
+	private final ThreadPoolExecutor _handshakeExecutor;
+
+	private final int _maxHandshakes;
+
+	private final Queue<Runnable> _actions = new ConcurrentLinkedQueue<>();
+
+	private final AtomicInteger _activeHandshakes = new AtomicInteger();
+
+	private final MetricsRegistry _registry;
+
+	private final String _labels;
+
+	private final Counter _fullHandshakes;
+
+	private final Counter _resumedHandshakes;
+
+	private final Counter _failedHandshakes;
+
+	private final Counter _rejectedConnections;
+
+	private final Histogram _handshakeTime;
+
+	private final Thread _thread;
+
+	private volatile boolean _stopped;
+
+	/**
+	 * Creates a {@link TlsEngineTransport} from the given options.
+	 *
+	 * @param local_port
+	 *        The local TLS port.
+	 * @param host_ipaddr
+	 *        The local address to bind to, <code>null</code> for all interfaces.
+	 * @param options
+	 *        The key, certificate, trust and session options.
+	 * @param registry
+	 *        The registry to report handshake metrics to.
+	 * @param labels
+	 *        The labels of the metrics.
+	 */
+	public TlsEngineTransport(int local_port, IpAddress host_ipaddr, SipOptions options, MetricsRegistry registry,
+			String labels) throws IOException {
+		this(local_port, host_ipaddr, options.getMaxConnections(), createContext(options),
+				options.getTlsSessionCacheSize(), options.getTlsSessionTimeout(), options.getTlsHandshakeThreads(),
+				options.getTlsMaxHandshakes(), registry, labels);
+	}
+
+	/**
+	 * Creates a {@link TlsEngineTransport}.
+	 *
+	 * @param local_port
+	 *        The local TLS port, <code>0</code> for an ephemeral port.
+	 * @param host_ipaddr
+	 *        The local address to bind to, <code>null</code> for all interfaces.
+	 * @param nmax_connections
+	 *        The maximum number of open connections.
+	 * @param sslContext
+	 *        The context providing keys, trust and session caches.
+	 * @param sessionCacheSize
+	 *        The number of sessions cached for resumption, <code>0</code> for no limit.
+	 * @param sessionTimeout
+	 *        The seconds a cached session can be resumed, <code>0</code> for no limit.
+	 * @param handshakeThreads
+	 *        The number of threads for handshake computations, <code>0</code> for half of the
+	 *        available processors.
+	 * @param maxHandshakes
+	 *        The number of concurrent handshakes, after which incoming connections are closed,
+	 *        <code>0</code> for no limit.
+	 * @param registry
+	 *        The registry to report handshake metrics to.
+	 * @param labels
+	 *        The labels of the metrics.
+	 */
+	TlsEngineTransport(int local_port, IpAddress host_ipaddr, int nmax_connections, SSLContext sslContext,
+			int sessionCacheSize, int sessionTimeout, int handshakeThreads, int maxHandshakes,
+			MetricsRegistry registry, String labels) throws IOException {
+		super(local_port, nmax_connections);
+		_sslContext = sslContext;
+		configure(sslContext.getServerSessionContext(), sessionCacheSize, sessionTimeout);
+		configure(sslContext.getClientSessionContext(), sessionCacheSize, sessionTimeout);
+		_maxHandshakes = maxHandshakes;
+
+		_registry = registry;
+		_labels = labels;
+		String handshakes = "sip_tls_handshakes_total";
+		String handshakesHelp = "Completed TLS handshakes.";
+		_fullHandshakes = registry.counter(handshakes, handshakesHelp,
+			MetricsRegistry.addLabels(labels, "result", "full"));
+		_resumedHandshakes = registry.counter(handshakes, handshakesHelp,
+			MetricsRegistry.addLabels(labels, "result", "resumed"));
+		_failedHandshakes = registry.counter(handshakes, handshakesHelp,
+			MetricsRegistry.addLabels(labels, "result", "failed"));
+		_rejectedConnections = registry.counter("sip_tls_rejected_total",
+			"Incoming TLS connections closed due to too many concurrent handshakes.", labels);
+		_handshakeTime = registry.histogram("sip_tls_handshake_microseconds",
+			"Time from the start to the completion of TLS handshakes.", labels);
+		registry.register("sip_tls_handshakes_active", "TLS handshakes in progress.", labels,
+			_activeHandshakes::get);
+		registry.register("sip_tls_connections", "Open TLS connections.", labels, () -> connections.size());
+
+		int threads = handshakeThreads > 0 ? handshakeThreads
+				: Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+		AtomicInteger threadCount = new AtomicInteger();
+		_handshakeExecutor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+			new LinkedBlockingQueue<>(), task -> {
+				Thread thread = new Thread(task, "TlsHandshake-" + threadCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			});
+		_handshakeExecutor.allowCoreThreadTimeOut(true);
+
+		_selector = Selector.open();
+		try {
+			_server = ServerSocketChannel.open();
+			_server.bind(host_ipaddr == null ? new InetSocketAddress(local_port)
+					: new InetSocketAddress(host_ipaddr.getInetAddress(), local_port), BACKLOG);
+			_server.configureBlocking(false);
+			_server.register(_selector, SelectionKey.OP_ACCEPT);
+			_localPort = _server.socket().getLocalPort();
+		} catch (IOException ex) {
+			_selector.close();
+			_handshakeExecutor.shutdownNow();
+			throw ex;
+		}
+
+		_thread = new Thread(this::run, "TlsEngineTransport-" + _localPort);
+		_thread.setDaemon(true);
+		_thread.start();
+	}
+
+	private static void configure(SSLSessionContext sessions, int cacheSize, int timeout) {
+		sessions.setSessionCacheSize(cacheSize);
+		sessions.setSessionTimeout(timeout);
+	}
+
+	/**
+	 * Creates the {@link SSLContext} for the key, certificate and trust settings of the given
+	 * options.
+	 */
+	public static SSLContext createContext(SipOptions options) throws IOException {
+		try {
+			TlsContext tls_context = new TlsContext();
+			tls_context.setKeyCert(options.getKeyFile(), options.getCertFile());
+			if (!options.isTrustAll()) {
+				String[] trusted_certs = options.getTrustedCerts();
+				if (trusted_certs != null) {
+					for (String cert : trusted_certs) {
+						tls_context.addTrustCert(cert);
+					}
+				} else if (options.getTrustFolder() != null) {
+					tls_context.addTrustFolder(options.getTrustFolder());
+				}
+			}
+			return createContext(tls_context.getKeyStore(), TlsContext.DEFAULT_PASSWORD, options.isTrustAll());
+		} catch (IOException ex) {
+			throw ex;
+		} catch (Exception ex) {
+			throw new IOException("Cannot initialize TLS: " + ex.getMessage(), ex);
+		}
+	}
+
+	/**
+	 * Creates an {@link SSLContext} with the keys and trusted certificates of the given key store.
+	 *
+	 * @param trustAll
+	 *        Whether all peer certificates are considered trusted.
+	 */
+	static SSLContext createContext(KeyStore keyStore, char[] password, boolean trustAll) throws Exception {
+		KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+		keyManagers.init(keyStore, password);
+
+		TrustManager[] trustManagers;
+		if (trustAll) {
+			trustManagers = new TrustManager[] { new X509TrustManager() {
+				@Override
+				public X509Certificate[] getAcceptedIssuers() {
+					return new X509Certificate[0];
+				}
+
+				@Override
+				public void checkClientTrusted(X509Certificate[] certs, String authType) {
+					// Trust all.
+				}
+
+				@Override
+				public void checkServerTrusted(X509Certificate[] certs, String authType) {
+					// Trust all.
+				}
+			} };
+		} else {
+			TrustManagerFactory trustFactory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+			trustFactory.init(keyStore);
+			trustManagers = trustFactory.getTrustManagers();
+		}
+
+		SSLContext result = SSLContext.getInstance("TLS");
+		result.init(keyManagers.getKeyManagers(), trustManagers, null);
+		return result;
+	}
+
+	@Override
+	public String getProtocol() {
+		return PROTO_TLS;
+	}
+
+	@Override
+	public int getLocalPort() {
+		return _localPort;
+	}
+
+	/**
+	 * The number of handshakes in progress.
+	 */
+	public int getActiveHandshakes() {
+		return _activeHandshakes.get();
+	}
+
+	@Override
+	protected SipTransportConnection createTransportConnection(SocketAddress remote_soaddr) throws IOException {
+		SocketChannel channel = SocketChannel.open();
+		TlsEngineConnection conn;
+		try {
+			channel.socket().connect(
+				new InetSocketAddress(remote_soaddr.getAddress().getInetAddress(), remote_soaddr.getPort()),
+				CONNECT_TIMEOUT);
+
+			// The peer identifies the session to resume.
+			SSLEngine engine = _sslContext.createSSLEngine(remote_soaddr.getAddress().toString(),
+				remote_soaddr.getPort());
+			engine.setUseClientMode(true);
+
+			conn = new TlsEngineConnection(this, channel, engine, this_conn_listener);
+		} catch (IOException ex) {
+			channel.close();
+			throw ex;
+		}
+		try {
+			conn.start(_selector);
+		} catch (IOException ex) {
+			conn.close(ex);
+			throw ex;
+		}
+		return conn;
+	}
+
+	@Override
+	public void halt() {
+		super.halt();
+		_stopped = true;
+		_selector.wakeup();
+		_handshakeExecutor.shutdownNow();
+		_registry.remove("sip_tls_handshakes_active", _labels);
+		_registry.remove("sip_tls_connections", _labels);
+	}
+
+	/**
+	 * Runs the given action on the I/O thread.
+	 */
+	void execute(Runnable action) {
+		_actions.add(action);
+		_selector.wakeup();
+	}
+
+	/**
+	 * Runs the delegated tasks of the given connection in the handshake pool.
+	 */
+	void runHandshakeTasks(TlsEngineConnection conn) {
+		try {
+			_handshakeExecutor.execute(conn::runTasks);
+		} catch (RejectedExecutionException ex) {
+			execute(() -> conn.close(ex));
+		}
+	}
+
+	void handshakeStarted() {
+		_activeHandshakes.incrementAndGet();
+	}
+
+	void handshakeFinished(long nanos, boolean resumed) {
+		_activeHandshakes.decrementAndGet();
+		(resumed ? _resumedHandshakes : _fullHandshakes).increment();
+		_handshakeTime.record(TimeUnit.NANOSECONDS.toMicros(nanos));
+	}
+
+	void handshakeFailed() {
+		_activeHandshakes.decrementAndGet();
+		_failedHandshakes.increment();
+	}
+
+	private void run() {
+		try {
+			while (!_stopped) {
+				_selector.select();
+
+				Runnable action;
+				while ((action = _actions.poll()) != null) {
+					action.run();
+				}
+
+				Iterator<SelectionKey> keys = _selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					try {
+						if (!key.isValid()) {
+							continue;
+						}
+						if (key.isAcceptable()) {
+							accept();
+						} else {
+							TlsEngineConnection conn = (TlsEngineConnection) key.attachment();
+							if (key.isWritable()) {
+								conn.onWritable();
+							}
+							if (key.isValid() && key.isReadable()) {
+								conn.onReadable();
+							}
+						}
+					} catch (CancelledKeyException ex) {
+						// Connection closed concurrently.
+					}
+				}
+			}
+		} catch (IOException | RuntimeException ex) {
+			LOG.error("TLS transport at port {} failed.", Integer.valueOf(_localPort), ex);
+			if (listener != null) {
+				listener.onTransportTerminated(this, ex);
+			}
+		} finally {
+			try {
+				_server.close();
+			} catch (IOException ex) {
+				LOG.debug("Closing server channel failed.", ex);
+			}
+			try {
+				_selector.close();
+			} catch (IOException ex) {
+				LOG.debug("Closing selector failed.", ex);
+			}
+		}
+	}
+
+	private void accept() throws IOException {
+		SocketChannel channel;
+		while ((channel = _server.accept()) != null) {
+			if (_maxHandshakes > 0 && _activeHandshakes.get() >= _maxHandshakes) {
+				_rejectedConnections.increment();
+				channel.close();
+				continue;
+			}
+			TlsEngineConnection conn;
+			try {
+				SSLEngine engine = _sslContext.createSSLEngine();
+				engine.setUseClientMode(false);
+				conn = new TlsEngineConnection(this, channel, engine, this_conn_listener);
+			} catch (IOException ex) {
+				LOG.info("Handling incoming connection failed: {}", ex.getMessage());
+				channel.close();
+				continue;
+			}
+			LOG.debug("tls connection {} opened", conn);
+			addConnection(conn);
+			try {
+				conn.start(_selector);
+			} catch (IOException ex) {
+				conn.close(ex);
+				continue;
+			}
+			if (listener != null) {
+				listener.onIncomingTransportConnection(this,
+					new SocketAddress(conn.getRemoteAddress(), conn.getRemotePort()));
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "tls:" + _localPort;
+	}
+
+}
@@ -23,8 +23,15 @@
 package org.mjsip.sip.provider;
 
 import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+import org.mjsip.capture.CapturedPacket;
+import org.mjsip.capture.PacketCapture;
 
 import org.mjsip.sip.message.SipMessage;
+import org.zoolu.net.ByteBufferPool;
 import org.zoolu.net.IpAddress;
 import org.zoolu.net.UdpPacket;
 import org.zoolu.net.UdpProvider;
@@ -52,6 +59,23 @@ public class UdpTransport implements SipTransport/*, UdpProviderListener*/ {
 	/** SipTransport listener */
 	SipTransportListener listener = null;
 
+	/** Filter applied to received datagrams before parsing, or null */
+	volatile FloodFilter flood_filter = null;
+
+	/** Capture of sent and received datagrams, or null */
+	volatile PacketCapture capture = null;
+
+	/** Local address reported for captured datagrams */
+	InetAddress capture_address = null;
+
+	/** Local port reported for captured datagrams */
+	int capture_port = 0;
+
+	/** Creates a new UdpTransport without own socket, for subclasses providing the sockets */ 
+	protected UdpTransport() {
+	}
+
+
 	/** Creates a new UdpTransport */ 
 	public UdpTransport(UdpSocket socket) {
 		init(socket);
@@ -118,6 +142,27 @@ public class UdpTransport implements SipTransport/*, UdpProviderListener*/ {
 	}
 
 
+	/** Sets a filter that drops received datagrams before they are parsed, or null to accept all datagrams. */
+	public void setFloodFilter(FloodFilter filter) {
+		this.flood_filter=filter;
+	}
+
+	/** Sets the capture of sent and received datagrams, or null to stop capturing. */
+	public void setCapture(PacketCapture capture) {
+		if (capture!=null) {
+			capture_address=getLocalInetAddress();
+			capture_port=getLocalPort();
+		}
+		this.capture=capture;
+	}
+
+
+	/** Gets the local address the socket is bound to, or null */
+	InetAddress getLocalInetAddress() {
+		return udp_provider!=null? udp_provider.getUdpSocket().getLocalAddress().getInetAddress() : null;
+	}
+
+
 	/** From SipTransport. Sends a SipMessage to the given remote address and port, with a given TTL.
 	  * <p>
 	  * If the transport protocol is Connection Oriented (CO), this method first looks for a proper active
@@ -127,18 +172,52 @@ public class UdpTransport implements SipTransport/*, UdpProviderListener*/ {
 	  * @return Returns the id of the used connection for CO transport, or null for CL transport. */      
 	@Override
 	public ConnectionId sendMessage(SipMessage msg, IpAddress dest_ipaddr, int dest_port, int ttl) throws IOException {
-		if (udp_provider!=null) {
-			byte[] data=msg.getBytes();
-			UdpPacket packet=new UdpPacket(data,data.length);
-			// if (ttl>0 && multicast_address) do something?
-			packet.setIpAddress(dest_ipaddr);
-			packet.setPort(dest_port);
-			udp_provider.send(packet);
+		// if (ttl>0 && multicast_address) do something?
+		ByteBufferPool pool=ByteBufferPool.DATAGRAMS;
+		ByteBuffer buffer=pool.acquire();
+		try {
+			if (msg.writeTo(buffer)) {
+				buffer.flip();
+				sendBuffer(buffer,dest_ipaddr,dest_port);
+				return null;
+			}
 		}
+		finally {
+			pool.release(buffer);
+		}
+		// larger than any datagram, let the socket report the error
+		byte[] data=msg.getBytes();
+		sendRawData(data,0,data.length,dest_ipaddr,dest_port);
 		return null;
 	}
 
 
+	/** Supports raw data. */
+	@Override
+	public boolean supportsRawData() {
+		return true;
+	}
+
+
+	/** Sends already encoded message data. */
+	@Override
+	public void sendRawData(byte[] buf, int off, int len, IpAddress dest_ipaddr, int dest_port) throws IOException {
+		sendBuffer(ByteBuffer.wrap(buf,off,len),dest_ipaddr,dest_port);
+	}
+
+
+	/** Sends the remaining bytes of the given buffer as one datagram. */
+	void sendBuffer(ByteBuffer data, IpAddress dest_ipaddr, int dest_port) throws IOException {
+		UdpProvider provider=udp_provider;
+		if (provider!=null) {
+			InetAddress dest_addr=dest_ipaddr.getInetAddress();
+			PacketCapture c=capture;
+			if (c!=null) c.capture(CapturedPacket.UDP,capture_address,capture_port,dest_addr,dest_port,0,data);
+			provider.send(data,new InetSocketAddress(dest_addr,dest_port));
+		}
+	}
+
+
 	/** Stops running */
 	@Override
 	public void halt() {
@@ -158,18 +237,32 @@ public class UdpTransport implements SipTransport/*, UdpProviderListener*/ {
 	
 	/** When a new UDP datagram is received. */
 	private void processReceivedPacket(UdpProvider udp, UdpPacket packet) {
-		if (ByteUtils.match(packet.getData(),packet.getOffset(),packet.getLength(),PING,0,PING.length)) {
-			if (udp_provider!=null)
-			try {  udp_provider.send(new UdpPacket(PONG,packet.getIpAddress(),packet.getPort()));  } catch (Exception e) {};
+		processReceivedData(packet.getData(),packet.getOffset(),packet.getLength(),packet.getInetAddress(),packet.getPort());
+	}   
+
+
+	/** When a new UDP datagram is received from the given source. */
+	void processReceivedData(byte[] buf, int off, int len, InetAddress src_addr, int src_port) {
+		FloodFilter filter=flood_filter;
+		if (filter!=null && !filter.accept(src_addr,buf,off,len)) {
+			// dropped before parsing
+			return;
+		}
+		PacketCapture c=capture;
+		if (c!=null) c.capture(CapturedPacket.UDP,src_addr,src_port,capture_address,capture_port,0,buf,off,len);
+		IpAddress src_ipaddr=new IpAddress(src_addr);
+		if (ByteUtils.match(buf,off,len,PING,0,PING.length)) {
+			try {  sendRawData(PONG,0,PONG.length,src_ipaddr,src_port);  } catch (Exception e) {};
 		}
 		else
-		if (ByteUtils.match(packet.getData(),packet.getOffset(),packet.getLength(),PONG,0,PONG.length)) {
-			// do something..
+		if (listener!=null && listener.onReceivedRawMessage(this,buf,off,len,src_ipaddr,src_port)) {
+			// handled without parsing
 		}
 		else {
-			SipMessage msg=new SipMessage(packet.getData(),packet.getOffset(),packet.getLength());
-			msg.setRemoteAddress(packet.getIpAddress().toString());
-			msg.setRemotePort(packet.getPort());
+			// also a PONG is passed to the listener, to keep track of the remote liveness
+			SipMessage msg=new SipMessage(buf,off,len);
+			msg.setRemoteAddress(src_ipaddr.toString());
+			msg.setRemotePort(src_port);
 			msg.setTransportProtocol(PROTO_UDP);
 			if (listener!=null) listener.onReceivedMessage(this,msg);
 		}
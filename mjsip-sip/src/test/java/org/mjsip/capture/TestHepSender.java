@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.capture;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test for {@link HepSender}.
+ */
+@SuppressWarnings("javadoc")
+class TestHepSender {
+
+	@Test
+	void testEncode() throws IOException {
+		byte[] payload = "SIP/2.0 200 OK\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+		CapturedPacket packet = TestPcapWriter.packet(CapturedPacket.UDP, "192.0.2.1", 5060, "192.0.2.2", 5070,
+			payload);
+		packet._timeMicros = 1_700_000_000_000_042L;
+
+		byte[] buf = new byte[1024];
+		int length = HepSender.encode(buf, packet, 7);
+
+		ByteBuffer message = ByteBuffer.wrap(buf, 0, length);
+		Assertions.assertEquals("HEP3", new String(buf, 0, 4, StandardCharsets.ISO_8859_1));
+		Assertions.assertEquals(length, message.getShort(4));
+
+		Map<Integer, byte[]> chunks = new HashMap<>();
+		int pos = 6;
+		while (pos < length) {
+			Assertions.assertEquals(0, message.getShort(pos));
+			int type = message.getShort(pos + 2);
+			int chunkLength = message.getShort(pos + 4);
+			byte[] value = new byte[chunkLength - 6];
+			System.arraycopy(buf, pos + 6, value, 0, value.length);
+			chunks.put(Integer.valueOf(type), value);
+			pos += chunkLength;
+		}
+		Assertions.assertEquals(length, pos);
+
+		Assertions.assertEquals(HepSender.FAMILY_IPV4, chunk(chunks, HepSender.CHUNK_FAMILY).get());
+		Assertions.assertEquals(CapturedPacket.UDP, chunk(chunks, HepSender.CHUNK_PROTOCOL).get());
+		Assertions.assertEquals(0xC0000201, chunk(chunks, HepSender.CHUNK_IPV4_SOURCE).getInt());
+		Assertions.assertEquals(0xC0000202, chunk(chunks, HepSender.CHUNK_IPV4_DESTINATION).getInt());
+		Assertions.assertEquals(5060, chunk(chunks, HepSender.CHUNK_SOURCE_PORT).getShort());
+		Assertions.assertEquals(5070, chunk(chunks, HepSender.CHUNK_DESTINATION_PORT).getShort());
+		Assertions.assertEquals(1_700_000_000, chunk(chunks, HepSender.CHUNK_SECONDS).getInt());
+		Assertions.assertEquals(42, chunk(chunks, HepSender.CHUNK_MICROS).getInt());
+		Assertions.assertEquals(HepSender.PROTOCOL_SIP, chunk(chunks, HepSender.CHUNK_PROTOCOL_TYPE).get());
+		Assertions.assertEquals(7, chunk(chunks, HepSender.CHUNK_CAPTURE_ID).getInt());
+		Assertions.assertArrayEquals(payload, chunks.get(Integer.valueOf(HepSender.CHUNK_PAYLOAD)));
+	}
+
+	private static ByteBuffer chunk(Map<Integer, byte[]> chunks, int type) {
+		byte[] value = chunks.get(Integer.valueOf(type));
+		Assertions.assertNotNull(value, "Missing chunk: " + type);
+		return ByteBuffer.wrap(value);
+	}
+
+}
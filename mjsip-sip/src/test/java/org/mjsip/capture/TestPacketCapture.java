@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.capture;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mjsip.metrics.MetricsRegistry;
+
+/**
+ * Test for {@link PacketCapture} and {@link CaptureFilter}.
+ */
+@SuppressWarnings("javadoc")
+class TestPacketCapture {
+
+	private static final InetAddress A = address("192.0.2.1");
+
+	private static final InetAddress B = address("192.0.2.2");
+
+	private static final InetAddress C = address("192.0.2.3");
+
+	@Test
+	void testWritesInOrder() throws Exception {
+		RecordingSink sink = new RecordingSink(null);
+		PacketCapture capture = new PacketCapture(8, CaptureFilter.ALL, List.of(sink), new MetricsRegistry(), "");
+		for (int n = 0; n < 100; n++) {
+			byte[] data = bytes("packet " + n);
+			Assertions.assertTrue(capture.capture(CapturedPacket.UDP, A, 5060, B, 5070, 0, data, 0, data.length));
+			while (capture.getCaptured() + 4 <= n) {
+				Thread.sleep(1);
+			}
+		}
+		capture.close();
+
+		Assertions.assertTrue(sink._closed);
+		Assertions.assertEquals(100, sink._packets.size());
+		for (int n = 0; n < 100; n++) {
+			Assertions.assertEquals("packet " + n, sink._packets.get(n));
+		}
+		Assertions.assertEquals(0, capture.getDropped());
+	}
+
+	@Test
+	void testDropsWhenFull() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		RecordingSink sink = new RecordingSink(release);
+		PacketCapture capture = new PacketCapture(4, CaptureFilter.ALL, List.of(sink), new MetricsRegistry(), "");
+
+		byte[] data = bytes("INVITE");
+		int accepted = 0;
+		for (int n = 0; n < 20; n++) {
+			if (capture.capture(CapturedPacket.UDP, A, 5060, B, 5070, 0, data, 0, data.length)) {
+				accepted++;
+			}
+		}
+
+		// The writer blocks in the first packet, which still occupies its slot.
+		Assertions.assertEquals(4, accepted);
+		Assertions.assertEquals(20 - accepted, capture.getDropped());
+
+		release.countDown();
+		capture.close();
+		Assertions.assertEquals(accepted, sink._packets.size());
+	}
+
+	@Test
+	void testAddressFilter() throws Exception {
+		RecordingSink sink = new RecordingSink(null);
+		PacketCapture capture = new PacketCapture(16, new CaptureFilter(Set.of(C), Set.of()), List.of(sink),
+			new MetricsRegistry(), "");
+		byte[] data = bytes("OPTIONS");
+		Assertions.assertFalse(capture.capture(CapturedPacket.UDP, A, 5060, B, 5060, 0, data, 0, data.length));
+		Assertions.assertTrue(capture.capture(CapturedPacket.UDP, A, 5060, C, 5060, 0, data, 0, data.length));
+		Assertions.assertTrue(capture.capture(CapturedPacket.UDP, C, 5060, B, 5060, 0, data, 0, data.length));
+		capture.close();
+		Assertions.assertEquals(2, sink._packets.size());
+	}
+
+	@Test
+	void testCallIdFilter() throws Exception {
+		RecordingSink sink = new RecordingSink(null);
+		PacketCapture capture = new PacketCapture(16, new CaptureFilter(Set.of(), Set.of("abc@host")),
+			List.of(sink), new MetricsRegistry(), "");
+		send(capture, "INVITE sip:b@h SIP/2.0\r\nVia: SIP/2.0/UDP h\r\nCall-ID: abc@host\r\n\r\n");
+		send(capture, "INVITE sip:b@h SIP/2.0\r\nCall-ID: other@host\r\n\r\n");
+		send(capture, "SIP/2.0 200 OK\r\ni:abc@host \r\n\r\n");
+		capture.close();
+		Assertions.assertEquals(2, sink._packets.size());
+	}
+
+	@Test
+	void testCallId() {
+		Assertions.assertEquals("abc", callId("OPTIONS sip:x SIP/2.0\r\nCALL-ID :  abc\r\n\r\n"));
+		Assertions.assertEquals("abc", callId("OPTIONS sip:x SIP/2.0\r\nVia: x\r\nI: abc\r\n"));
+		Assertions.assertEquals("abc", callId("OPTIONS sip:x SIP/2.0\nCall-Id: abc"));
+		Assertions.assertNull(callId("OPTIONS sip:x SIP/2.0\r\nCall-Info: abc\r\n\r\nCall-ID: abc\r\n"));
+		Assertions.assertNull(callId("\r\n\r\n"));
+		Assertions.assertNull(callId(""));
+	}
+
+	private static void send(PacketCapture capture, String message) {
+		byte[] data = bytes(message);
+		capture.capture(CapturedPacket.TCP, A, 5060, B, 5060, 0, data, 0, data.length);
+	}
+
+	private static String callId(String message) {
+		byte[] data = bytes(message);
+		return CaptureFilter.callId(data, 0, data.length);
+	}
+
+	private static byte[] bytes(String s) {
+		return s.getBytes(StandardCharsets.ISO_8859_1);
+	}
+
+	private static InetAddress address(String address) {
+		try {
+			return InetAddress.getByName(address);
+		} catch (UnknownHostException ex) {
+			throw new AssertionError(ex);
+		}
+	}
+
+	private static class RecordingSink implements CaptureSink {
+
+		final List<String> _packets = new ArrayList<>();
+
+		private final CountDownLatch _release;
+
+		volatile boolean _closed;
+
+		RecordingSink(CountDownLatch release) {
+			_release = release;
+		}
+
+		@Override
+		public void write(CapturedPacket packet) {
+			if (_release != null) {
+				try {
+					_release.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			_packets.add(new String(packet.getData(), 0, packet.getLength(), StandardCharsets.ISO_8859_1));
+		}
+
+		@Override
+		public void close() {
+			_closed = true;
+		}
+	}
+
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.capture;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Test for {@link PcapWriter}.
+ */
+@SuppressWarnings("javadoc")
+class TestPcapWriter {
+
+	@TempDir
+	File _dir;
+
+	@Test
+	void testUdpIPv4() throws IOException {
+		byte[] payload = "OPTIONS sip:x SIP/2.0\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+		CapturedPacket packet = packet(CapturedPacket.UDP, "192.0.2.1", 5060, "192.0.2.2", 5070, payload);
+		packet._timeMicros = 1_700_000_000_123_456L;
+
+		File file = new File(_dir, "sip.pcap");
+		try (PcapWriter writer = new PcapWriter(file.getPath(), 0, 0)) {
+			writer.write(packet);
+		}
+
+		ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+		Assertions.assertEquals(24 + 16 + 20 + 8 + payload.length, buf.limit());
+
+		// File header.
+		Assertions.assertEquals(PcapWriter.MAGIC, buf.getInt(0));
+		Assertions.assertEquals(2, buf.getShort(4));
+		Assertions.assertEquals(4, buf.getShort(6));
+		Assertions.assertEquals(PcapWriter.LINKTYPE_RAW, buf.getInt(20));
+
+		// Record header.
+		Assertions.assertEquals(1_700_000_000, buf.getInt(24));
+		Assertions.assertEquals(123_456, buf.getInt(28));
+		Assertions.assertEquals(28 + payload.length, buf.getInt(32));
+		Assertions.assertEquals(28 + payload.length, buf.getInt(36));
+
+		// IPv4 header.
+		int ip = 40;
+		Assertions.assertEquals(0x45, buf.get(ip));
+		Assertions.assertEquals(28 + payload.length, buf.getShort(ip + 2));
+		Assertions.assertEquals(CapturedPacket.UDP, buf.get(ip + 9));
+		Assertions.assertEquals(0, PcapWriter.checksum(buf.array(), ip, 20));
+		Assertions.assertEquals(0xC0000201, buf.getInt(ip + 12));
+		Assertions.assertEquals(0xC0000202, buf.getInt(ip + 16));
+
+		// UDP header.
+		int udp = ip + 20;
+		Assertions.assertEquals(5060, buf.getShort(udp));
+		Assertions.assertEquals(5070, buf.getShort(udp + 2));
+		Assertions.assertEquals(8 + payload.length, buf.getShort(udp + 4));
+
+		Assertions.assertEquals("OPTIONS", new String(buf.array(), udp + 8, 7, StandardCharsets.ISO_8859_1));
+	}
+
+	@Test
+	void testTcpMixedFamilies() throws IOException {
+		byte[] payload = new byte[10];
+		CapturedPacket packet = packet(CapturedPacket.TCP, "192.0.2.1", 40000, "2001:db8::1", 5061, payload);
+		packet._sequence = 1000;
+
+		byte[] buf = new byte[128];
+		int length = PcapWriter.writeHeaders(buf, packet);
+		Assertions.assertEquals(16 + 40 + 20, length);
+
+		ByteBuffer header = ByteBuffer.wrap(buf);
+		Assertions.assertEquals(6, header.get(16) >>> 4);
+		Assertions.assertEquals(20 + payload.length, header.getShort(16 + 4));
+		Assertions.assertEquals(CapturedPacket.TCP, header.get(16 + 6));
+		// IPv4 mapped source.
+		Assertions.assertEquals(0xFFFF, header.getShort(16 + 8 + 10) & 0xFFFF);
+		Assertions.assertEquals(0xC0000201, header.getInt(16 + 8 + 12));
+
+		int tcp = 16 + 40;
+		Assertions.assertEquals(40000, header.getShort(tcp) & 0xFFFF);
+		Assertions.assertEquals(5061, header.getShort(tcp + 2));
+		Assertions.assertEquals(1000, header.getInt(tcp + 4));
+		Assertions.assertEquals(0x50, header.get(tcp + 12));
+		Assertions.assertEquals(0x18, header.get(tcp + 13));
+	}
+
+	@Test
+	void testRotation() throws IOException {
+		byte[] payload = new byte[400];
+		CapturedPacket packet = packet(CapturedPacket.UDP, "192.0.2.1", 5060, "192.0.2.2", 5060, payload);
+
+		String name = new File(_dir, "rotate.pcap").getPath();
+		try (PcapWriter writer = new PcapWriter(name, 1000, 2)) {
+			for (int n = 0; n < 10; n++) {
+				writer.write(packet);
+			}
+		}
+
+		// Three records per file, the oldest two files have been deleted.
+		String[] files = _dir.list();
+		Assertions.assertEquals(2, files.length);
+		Assertions.assertTrue(new File(_dir, "rotate-3.pcap").exists());
+		Assertions.assertEquals(24 + 444, new File(_dir, "rotate-4.pcap").length());
+	}
+
+	static CapturedPacket packet(int protocol, String source, int sourcePort, String destination,
+			int destinationPort, byte[] payload) throws IOException {
+		CapturedPacket packet = new CapturedPacket();
+		packet._protocol = protocol;
+		packet._source = InetAddress.getByName(source);
+		packet._sourcePort = sourcePort;
+		packet._destination = InetAddress.getByName(destination);
+		packet._destinationPort = destinationPort;
+		packet._data = payload;
+		packet._length = payload.length;
+		packet._originalLength = payload.length;
+		return packet;
+	}
+
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.media.conference;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test for {@link ConferenceRoom}.
+ */
+@SuppressWarnings("javadoc")
+class TestConferenceRoom {
+
+	@Test
+	void testMinusOneMix() {
+		ConferenceRoom room = new ConferenceRoom("test", 8000, 20);
+		TestParticipant a = new TestParticipant("a", FrameCodec.LINEAR);
+		TestParticipant b = new TestParticipant("b", FrameCodec.LINEAR);
+		TestParticipant c = new TestParticipant("c", FrameCodec.LINEAR);
+		room.addParticipant(a);
+		room.addParticipant(b);
+		room.addParticipant(c);
+
+		a.receive(room.getFrameSize(), (short) 100);
+		b.receive(room.getFrameSize(), (short) 20);
+
+		room.tick();
+
+		Assertions.assertEquals(20, a.lastSample());
+		Assertions.assertEquals(100, b.lastSample());
+		Assertions.assertEquals(120, c.lastSample());
+		Assertions.assertEquals(1, room.getTickCount());
+
+		// Nobody talks.
+		room.tick();
+		Assertions.assertEquals(0, a.lastSample());
+		Assertions.assertEquals(0, c.lastSample());
+		Assertions.assertEquals(2, c.getMissingFrames());
+	}
+
+	@Test
+	void testSharedEncodingPerCodec() {
+		ConferenceRoom room = new ConferenceRoom("test", 8000, 20);
+		TestParticipant speaker = new TestParticipant("speaker", FrameCodec.ALAW);
+		TestParticipant l1 = new TestParticipant("l1", FrameCodec.ULAW);
+		TestParticipant l2 = new TestParticipant("l2", FrameCodec.ULAW);
+		TestParticipant l3 = new TestParticipant("l3", FrameCodec.ALAW);
+		room.addParticipant(speaker);
+		room.addParticipant(l1);
+		room.addParticipant(l2);
+		room.addParticipant(l3);
+
+		speaker.receive(room.getFrameSize(), (short) 1000);
+		room.tick();
+
+		Assertions.assertSame(l1._lastPayload, l2._lastPayload, "Listeners with same codec share the encoding.");
+		Assertions.assertNotSame(l1._lastPayload, l3._lastPayload);
+		Assertions.assertEquals(1000, l1.lastSample(), 50);
+		Assertions.assertEquals(1000, l3.lastSample(), 50);
+		Assertions.assertEquals(0, speaker.lastSample(), 10);
+	}
+
+	@Test
+	void testClipping() {
+		ConferenceRoom room = new ConferenceRoom("test", 8000, 20);
+		TestParticipant a = new TestParticipant("a", FrameCodec.LINEAR);
+		TestParticipant b = new TestParticipant("b", FrameCodec.LINEAR);
+		TestParticipant c = new TestParticipant("c", FrameCodec.LINEAR);
+		room.addParticipant(a);
+		room.addParticipant(b);
+		room.addParticipant(c);
+
+		a.receive(room.getFrameSize(), (short) 30000);
+		b.receive(room.getFrameSize(), (short) 30000);
+		room.tick();
+
+		Assertions.assertEquals(Short.MAX_VALUE, c.lastSample());
+	}
+
+	@Test
+	void testRemove() {
+		ConferenceRoom room = new ConferenceRoom("test", 8000, 20);
+		TestParticipant a = new TestParticipant("a", FrameCodec.LINEAR);
+		TestParticipant b = new TestParticipant("b", FrameCodec.LINEAR);
+		room.addParticipant(a);
+		room.addParticipant(b);
+
+		Assertions.assertTrue(room.removeParticipant(a));
+		Assertions.assertFalse(room.removeParticipant(a));
+		Assertions.assertTrue(a._halted);
+		Assertions.assertEquals(List.of(b), room.getParticipants());
+	}
+
+	static class TestParticipant extends ConferenceParticipant {
+
+		final List<short[]> _sent = new ArrayList<>();
+
+		byte[] _lastPayload;
+
+		boolean _halted;
+
+		TestParticipant(String id, FrameCodec codec) {
+			super(id, codec);
+		}
+
+		void receive(int samples, short value) {
+			short[] frame = new short[samples];
+			Arrays.fill(frame, value);
+			byte[] payload = new byte[getCodec().getPayloadSize(samples)];
+			int length = getCodec().encode(frame, 0, samples, payload, 0);
+			onPayload(payload, 0, length);
+		}
+
+		int lastSample() {
+			short[] frame = _sent.get(_sent.size() - 1);
+			return frame[frame.length - 1];
+		}
+
+		@Override
+		protected void start() {
+			// Ignore.
+		}
+
+		@Override
+		protected void halt() {
+			_halted = true;
+		}
+
+		@Override
+		protected void sendFrame(byte[] payload, int length, int samples) {
+			_lastPayload = payload;
+			short[] frame = new short[samples];
+			getCodec().decode(payload, 0, length, frame, 0);
+			_sent.add(frame);
+		}
+	}
+
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.media.conference;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mjsip.rtp.RtpPacket;
+import org.zoolu.net.IpAddress;
+import org.zoolu.net.UdpPacket;
+import org.zoolu.net.UdpSocket;
+
+/**
+ * Test for {@link RtpConferenceParticipant}.
+ */
+@SuppressWarnings("javadoc")
+class TestRtpConferenceParticipant {
+
+	private static final int PCMU = 0;
+
+	private static final int CN = 13;
+
+	@Test
+	void testDropForeignPayloadType() throws IOException, InterruptedException {
+		IpAddress localhost = new IpAddress(InetAddress.getLoopbackAddress());
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		ConferenceRoom room = new ConferenceRoom("test", 8000, 20);
+		UdpSocket socket = new UdpSocket(0, localhost);
+		RtpConferenceParticipant participant = new RtpConferenceParticipant("p", executor, socket, FrameCodec.ULAW,
+			PCMU, null);
+		room.addParticipant(participant);
+		try (UdpSocket sender = new UdpSocket(0, localhost)) {
+			int frameSize = room.getFrameSize();
+			send(sender, socket.getLocalPort(), CN, 1, frameSize, (short) 5000);
+			send(sender, socket.getLocalPort(), PCMU, 2, frameSize, (short) 1000);
+
+			long deadline = System.currentTimeMillis() + 5000;
+			while (!participant.readFrame()) {
+				Assertions.assertTrue(System.currentTimeMillis() < deadline, "No frame received.");
+				Thread.sleep(10);
+			}
+			Assertions.assertEquals(1000, participant._frame[frameSize - 1], 50);
+
+			// The comfort noise packet was not buffered.
+			Thread.sleep(100);
+			Assertions.assertFalse(participant.readFrame());
+		} finally {
+			room.close();
+			executor.shutdown();
+		}
+	}
+
+	private static void send(UdpSocket sender, int port, int payloadType, int seq, int samples, short value)
+			throws IOException {
+		short[] frame = new short[samples];
+		Arrays.fill(frame, value);
+		byte[] payload = new byte[FrameCodec.ULAW.getPayloadSize(samples)];
+		int length = FrameCodec.ULAW.encode(frame, 0, samples, payload, 0);
+		RtpPacket rtp = new RtpPacket(payloadType, 1234, seq, 160L * seq, payload, 0, length);
+		UdpPacket packet = new UdpPacket(rtp.getPacketBuffer(), rtp.getPacketOffset(), rtp.getPacketLength());
+		packet.setIpAddress(new IpAddress(InetAddress.getLoopbackAddress()));
+		packet.setPort(port);
+		sender.send(packet);
+	}
+
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.metrics;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test for {@link Histogram}.
+ */
+@SuppressWarnings("javadoc")
+class TestHistogram {
+
+	@Test
+	void testEmpty() {
+		Histogram histogram = new Histogram();
+		Assertions.assertEquals(0, histogram.getCount());
+		Assertions.assertEquals(0, histogram.getPercentile(99));
+	}
+
+	@Test
+	void testBuckets() {
+		long last = -1;
+		for (long value = 0; value < 1_000_000; value += 1 + value / 100) {
+			int index = Histogram.index(value);
+			long upper = Histogram.upperBound(index);
+			Assertions.assertTrue(upper >= value, "Bucket " + index + " of " + value);
+			Assertions.assertTrue(upper - value <= Math.max(1, value / 16), "Precision of " + value);
+			Assertions.assertTrue(upper >= last);
+			last = upper;
+		}
+	}
+
+	@Test
+	void testPercentiles() {
+		Histogram histogram = new Histogram();
+		for (int n = 1; n <= 1000; n++) {
+			histogram.record(n * 1000);
+		}
+		Assertions.assertEquals(1000, histogram.getCount());
+		Assertions.assertEquals(1_000_000, histogram.getMax());
+		assertAbout(500_000, histogram.getPercentile(50));
+		assertAbout(990_000, histogram.getPercentile(99));
+		Assertions.assertEquals(1_000_000, histogram.getPercentile(100));
+	}
+
+	private static void assertAbout(long expected, long actual) {
+		Assertions.assertTrue(actual >= expected && actual <= expected * 1.04, "Expected about " + expected + ": " + actual);
+	}
+
+}
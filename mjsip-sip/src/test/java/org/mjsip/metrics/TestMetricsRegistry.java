@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.metrics;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test for {@link MetricsRegistry}.
+ */
+@SuppressWarnings("javadoc")
+class TestMetricsRegistry {
+
+	@Test
+	void testTextFormat() {
+		MetricsRegistry registry = new MetricsRegistry();
+		registry.counter("sip_requests_received_total", "Received requests.",
+			MetricsRegistry.labels("method", "INVITE")).add(3);
+		registry.counter("sip_requests_received_total", "Received requests.",
+			MetricsRegistry.labels("method", "BYE")).increment();
+		registry.gauge("sip_dialogs_active", "Active dialogs.", "").increment();
+		registry.register("queue_depth", "Queued tasks.", "", () -> 7);
+
+		Assertions.assertEquals(""
+			+ "# HELP queue_depth Queued tasks.\n"
+			+ "# TYPE queue_depth gauge\n"
+			+ "queue_depth 7\n"
+			+ "# HELP sip_dialogs_active Active dialogs.\n"
+			+ "# TYPE sip_dialogs_active gauge\n"
+			+ "sip_dialogs_active 1\n"
+			+ "# HELP sip_requests_received_total Received requests.\n"
+			+ "# TYPE sip_requests_received_total counter\n"
+			+ "sip_requests_received_total{method=\"BYE\"} 1\n"
+			+ "sip_requests_received_total{method=\"INVITE\"} 3\n",
+			registry.toText());
+	}
+
+	@Test
+	void testSummary() {
+		MetricsRegistry registry = new MetricsRegistry();
+		Histogram histogram = registry.histogram("latency_microseconds", "Latency.", "");
+		for (int n = 1; n <= 10; n++) {
+			histogram.record(n);
+		}
+
+		Map<String, Long> snapshot = registry.snapshot();
+		Assertions.assertEquals(Long.valueOf(10), snapshot.get("latency_microseconds_count"));
+		Assertions.assertEquals(Long.valueOf(55), snapshot.get("latency_microseconds_sum"));
+		Assertions.assertEquals(Long.valueOf(10), snapshot.get("latency_microseconds{quantile=\"1.0\"}"));
+		Assertions.assertTrue(registry.toText().contains("# TYPE latency_microseconds summary\n"));
+	}
+
+	@Test
+	void testLabels() {
+		Assertions.assertEquals("", MetricsRegistry.labels());
+		Assertions.assertEquals("a=\"1\",b=\"x\\\"y\\\\z\\n\"", MetricsRegistry.labels("a", "1", "b", "x\"y\\z\n"));
+		Assertions.assertEquals("port=\"5060\",code=\"200\"",
+			MetricsRegistry.addLabels(MetricsRegistry.labels("port", "5060"), "code", "200"));
+		Assertions.assertEquals("code=\"200\"", MetricsRegistry.addLabels("", "code", "200"));
+	}
+
+	@Test
+	void testRemoveAll() {
+		MetricsRegistry registry = new MetricsRegistry();
+		String port1 = MetricsRegistry.labels("port", "1");
+		String port10 = MetricsRegistry.labels("port", "10");
+		registry.counter("c", "C.", port1).increment();
+		registry.counter("c", "C.", MetricsRegistry.addLabels(port1, "x", "y")).increment();
+		registry.counter("c", "C.", port10).increment();
+		registry.gauge("g", "G.", port1).increment();
+
+		registry.removeAll(port1);
+
+		Assertions.assertEquals(Map.of("c{port=\"10\"}", Long.valueOf(1)), registry.snapshot());
+	}
+
+	@Test
+	void testTypeConflict() {
+		MetricsRegistry registry = new MetricsRegistry();
+		registry.counter("x", "X.", "");
+		Assertions.assertThrows(IllegalArgumentException.class, () -> registry.gauge("x", "X.", ""));
+
+		registry.register("y", "Y.", "", () -> 1);
+		Assertions.assertThrows(IllegalArgumentException.class, () -> registry.gauge("y", "Y.", ""));
+	}
+
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.rtp;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test for {@link RtpReceptionStatistics}.
+ */
+@SuppressWarnings("javadoc")
+class TestRtpReceptionStatistics {
+
+	private static final long PACKET_NANOS = 20_000_000;
+
+	private static final int PACKET_SAMPLES = 160;
+
+	@Test
+	void testNoLoss() {
+		RtpReceptionStatistics statistics = new RtpReceptionStatistics(8000);
+		for (int n = 0; n < 100; n++) {
+			statistics.update(42, 1000 + n, n * PACKET_SAMPLES, n * PACKET_NANOS);
+		}
+		Assertions.assertEquals(42, statistics.getSsrc());
+		Assertions.assertEquals(100, statistics.getReceived());
+		Assertions.assertEquals(100, statistics.getExpected());
+		Assertions.assertEquals(0, statistics.getCumulativeLost());
+		Assertions.assertEquals(0, statistics.getFractionLost());
+		Assertions.assertEquals(0, statistics.getJitter());
+	}
+
+	@Test
+	void testLoss() {
+		RtpReceptionStatistics statistics = new RtpReceptionStatistics(8000);
+		for (int n = 0; n < 100; n++) {
+			if (n % 4 == 1) {
+				continue;
+			}
+			statistics.update(1, n, n * PACKET_SAMPLES, n * PACKET_NANOS);
+		}
+		Assertions.assertEquals(25, statistics.getCumulativeLost());
+		Assertions.assertEquals(64, statistics.getFractionLost());
+
+		// Interval since last report without loss.
+		for (int n = 100; n < 110; n++) {
+			statistics.update(1, n, n * PACKET_SAMPLES, n * PACKET_NANOS);
+		}
+		Assertions.assertEquals(0, statistics.getFractionLost());
+	}
+
+	@Test
+	void testSequenceWrap() {
+		RtpReceptionStatistics statistics = new RtpReceptionStatistics(8000);
+		for (int n = 0; n < 20; n++) {
+			statistics.update(1, (65530 + n) & 0xFFFF, n * PACKET_SAMPLES, n * PACKET_NANOS);
+		}
+		Assertions.assertEquals(20, statistics.getExpected());
+		Assertions.assertEquals(0, statistics.getCumulativeLost());
+		Assertions.assertEquals((1 << 16) + 13, statistics.getExtendedHighestSeq());
+	}
+
+	@Test
+	void testJitter() {
+		RtpReceptionStatistics statistics = new RtpReceptionStatistics(8000);
+		for (int n = 0; n < 1000; n++) {
+			// Every other packet arrives 5ms (40 timestamp units) late.
+			long delay = (n % 2) * 5_000_000L;
+			statistics.update(1, n, n * PACKET_SAMPLES, n * PACKET_NANOS + delay);
+		}
+		Assertions.assertEquals(40, statistics.getJitter(), 1);
+		Assertions.assertEquals(5000, statistics.getJitterMicros(), 200);
+	}
+
+}
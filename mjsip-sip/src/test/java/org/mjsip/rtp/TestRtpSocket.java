@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.rtp;
+
+import java.io.IOException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.zoolu.net.IpAddress;
+import org.zoolu.net.SocketAddress;
+import org.zoolu.net.UdpSocket;
+
+/**
+ * Test for {@link RtpSocket}.
+ */
+@SuppressWarnings("javadoc")
+class TestRtpSocket {
+
+	private static final IpAddress LOCALHOST = new IpAddress("127.0.0.1");
+
+	private UdpSocket _senderSocket;
+
+	private UdpSocket _receiverSocket;
+
+	private RtpSocket _sender;
+
+	private RtpSocket _receiver;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		_senderSocket = new UdpSocket(0, LOCALHOST);
+		_receiverSocket = new UdpSocket(0, LOCALHOST);
+		_receiverSocket.setSoTimeout(5000);
+		_sender = new RtpSocket(_senderSocket, new SocketAddress(LOCALHOST, _receiverSocket.getLocalPort()));
+		_receiver = new RtpSocket(_receiverSocket);
+	}
+
+	@AfterEach
+	void tearDown() {
+		_sender.close();
+		_receiver.close();
+		_senderSocket.close();
+		_receiverSocket.close();
+	}
+
+	@Test
+	void testBatch() throws IOException {
+		byte[] payload = new byte[160];
+		RtpPacket[] packets = new RtpPacket[10];
+		for (int n = 0; n < packets.length; n++) {
+			payload[0] = (byte) n;
+			packets[n] = new RtpPacket(8, 42, 100 + n, 160L * n, payload, 0, payload.length);
+		}
+
+		_sender.send(packets, 2, 5);
+		_sender.send(packets[9]);
+
+		RtpPacket received = new RtpPacket(new byte[1500], 0);
+		for (int n : new int[] { 2, 3, 4, 5, 6, 9 }) {
+			_receiver.receive(received);
+			Assertions.assertEquals(100 + n, received.getSequenceNumber());
+			Assertions.assertEquals(160L * n, received.getTimestamp());
+			Assertions.assertEquals(packets[n].getPacketLength(), received.getPacketLength());
+			Assertions.assertEquals(n, received.getPayload()[0]);
+		}
+		Assertions.assertEquals(_senderSocket.getLocalPort(), _receiver.getRemoteSourceSoAddress().getPort());
+		Assertions.assertEquals(6, _senderSocket.getSenderPacketCounter());
+	}
+
+	@Test
+	void testSymmetricWithoutDestination() throws IOException {
+		RtpSocket socket = new RtpSocket(_senderSocket);
+		RtpPacket packet = new RtpPacket(8, 42, 1, 160, new byte[160], 0, 160);
+
+		// Silently dropped until the remote address is learned.
+		socket.send(packet);
+		Assertions.assertEquals(0, _senderSocket.getSenderPacketCounter());
+
+		socket.setSymmetricRtpMode(false);
+		Assertions.assertThrows(IOException.class, () -> socket.send(packet));
+	}
+
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.sdp;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test for {@link SdpDocument}.
+ */
+@SuppressWarnings("javadoc")
+class TestSdpDocument {
+
+	private static final String OFFER = "v=0\r\n"
+		+ "o=alice 2890844526 2890844526 IN IP4 10.0.0.1\r\n"
+		+ "s=-\r\n"
+		+ "c=IN IP4 10.0.0.1/127\r\n"
+		+ "t=0 0\r\n"
+		+ "m=audio 49172 RTP/AVP 0 8 101\r\n"
+		+ "a=rtpmap:0 PCMU/8000\r\n"
+		+ "a=rtpmap:8 PCMA/8000\r\n"
+		+ "a=rtpmap:101 telephone-event/8000\r\n"
+		+ "a=fmtp:101 0-15\r\n"
+		+ "a=sendrecv\r\n"
+		+ "m=video 51372/2 RTP/AVP 31\n"
+		+ "a=rtpmap:31 H261/90000\n";
+
+	@Test
+	void testRoundTrip() {
+		SdpDocument sdp = parse(OFFER);
+		Assertions.assertFalse(sdp.isModified());
+		Assertions.assertEquals(OFFER, toString(sdp.toBytes()));
+		Assertions.assertEquals(OFFER, sdp.toString());
+	}
+
+	@Test
+	void testAccess() {
+		SdpDocument sdp = parse(OFFER);
+		Assertions.assertTrue(sdp.hasConnection());
+		Assertions.assertEquals("10.0.0.1", sdp.getConnectionAddress());
+		Assertions.assertEquals(2, sdp.getMediaCount());
+		Assertions.assertEquals("audio", sdp.getMediaType(0));
+		Assertions.assertTrue(sdp.isMediaType(1, "video"));
+		Assertions.assertFalse(sdp.isMediaType(1, "vid"));
+		Assertions.assertEquals(49172, sdp.getMediaPort(0));
+		Assertions.assertEquals(51372, sdp.getMediaPort(1));
+	}
+
+	@Test
+	void testRewrite() {
+		byte[] body = OFFER.getBytes(StandardCharsets.ISO_8859_1);
+		SdpDocument sdp = SdpDocument.parse(body);
+		Assertions.assertTrue(sdp.setConnectionAddress("192.0.2.2"));
+		sdp.setMediaPort(0, 40000);
+		sdp.setMediaPort(1, 40002);
+		Assertions.assertTrue(sdp.isModified());
+
+		byte[] result = sdp.toBytes();
+		Assertions.assertEquals(OFFER
+			.replace("c=IN IP4 10.0.0.1/127", "c=IN IP4 192.0.2.2/127")
+			.replace("m=audio 49172 ", "m=audio 40000 ")
+			.replace("m=video 51372/2 ", "m=video 40002 "), toString(result));
+
+		// The document now indexes the serialized body.
+		Assertions.assertFalse(sdp.isModified());
+		Assertions.assertTrue(sdp.isIndexOf(result));
+		Assertions.assertFalse(sdp.isIndexOf(body));
+		Assertions.assertEquals("192.0.2.2", sdp.getConnectionAddress());
+		Assertions.assertEquals(40002, sdp.getMediaPort(1));
+	}
+
+	@Test
+	void testNoConnection() {
+		SdpDocument sdp = parse("v=0\r\no=- 1 1 IN IP4 h\r\ns=-\r\nt=0 0\r\nm=audio 4000 RTP/AVP 0\r\nc=IN IP4 10.0.0.2\r\n");
+		Assertions.assertFalse(sdp.hasConnection());
+		Assertions.assertNull(sdp.getConnectionAddress());
+		Assertions.assertFalse(sdp.setConnectionAddress("192.0.2.2"));
+		Assertions.assertFalse(sdp.isModified());
+	}
+
+	@Test
+	void testInvalidMedia() {
+		SdpDocument sdp = parse("v=0\r\nc=IN IP4 10.0.0.2\r\nm=audio 4000 RTP/AVP 0\r\nm=video\r\n");
+		Assertions.assertTrue(sdp.hasMediaPort(0));
+		Assertions.assertFalse(sdp.hasMediaPort(1));
+		Assertions.assertThrows(IllegalArgumentException.class, () -> sdp.setMediaPort(1, 40000));
+		Assertions.assertFalse(sdp.isModified());
+	}
+
+	@Test
+	void testSdpMessage() {
+		Assertions.assertEquals(new SdpMessage(OFFER).toString(), parse(OFFER).toSdpMessage().toString());
+
+		String minimal = "v=0\r\nm=audio 4000 RTP/AVP 0\r\n";
+		Assertions.assertEquals(new SdpMessage(minimal).toString(), parse(minimal).toSdpMessage().toString());
+	}
+
+	@Test
+	void testLazyAttributes() {
+		MediaDescriptor audio = parse(OFFER).toSdpMessage().getMediaDescriptor("audio");
+		Assertions.assertTrue(audio.hasAttribute("sendrecv"));
+		Assertions.assertFalse(audio.hasAttribute("send"));
+		Assertions.assertEquals(3, audio.getAttributes("rtpmap").length);
+		Assertions.assertEquals("101 0-15", audio.getAttribute("fmtp").getAttributeValue());
+
+		audio.addAttribute(new AttributeField("ptime", "20"));
+		Assertions.assertEquals(6, audio.getAttributes().size());
+		Assertions.assertEquals("20", audio.getAttribute("ptime").getAttributeValue());
+	}
+
+	private static SdpDocument parse(String sdp) {
+		return SdpDocument.parse(sdp.getBytes(StandardCharsets.ISO_8859_1));
+	}
+
+	private static String toString(byte[] body) {
+		return new String(body, StandardCharsets.ISO_8859_1);
+	}
+
+}
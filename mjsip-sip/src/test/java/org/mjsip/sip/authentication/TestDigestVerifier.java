@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.sip.authentication;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mjsip.sip.header.AuthorizationHeader;
+import org.mjsip.sip.header.WwwAuthenticateHeader;
+import org.zoolu.util.ByteUtils;
+
+/**
+ * Test for {@link DigestVerifier}.
+ */
+@SuppressWarnings("javadoc")
+class TestDigestVerifier {
+
+	private static final String REALM = "testrealm@host.com";
+
+	@Test
+	void testHa1() {
+		Assertions.assertEquals("939e7578ed9e3c518a452acee763bce9",
+				ByteUtils.asHex(DigestVerifier.ha1("Mufasa", REALM, "Circle Of Life")));
+	}
+
+	@Test
+	void testRfcExample() {
+		AuthorizationHeader ah = new AuthorizationHeader(
+				"Digest username=\"Mufasa\", "
+				+ "realm=\"testrealm@host.com\", "
+				+ "nonce=\"dcd98b7102dd2f0e8b11d0f600bfb0c093\", "
+				+ "uri=\"/dir/index.html\", "
+				+ "qop=auth, "
+				+ "nc=00000001, "
+				+ "cnonce=\"0a4f113b\", "
+				+ "response=\"6629fae49393a05397450978507c4ef1\", "
+				+ "opaque=\"5ccc069c403ebaf9f0171e9517f40e41\"\n");
+
+		Assertions.assertTrue(DigestVerifier.checkResponse("GET", ah, null, DigestVerifier.ha1("Mufasa", REALM, "Circle Of Life")));
+		Assertions.assertFalse(DigestVerifier.checkResponse("GET", ah, null, DigestVerifier.ha1("Mufasa", REALM, "Circle of Life")));
+		Assertions.assertFalse(DigestVerifier.checkResponse("POST", ah, null, DigestVerifier.ha1("Mufasa", REALM, "Circle Of Life")));
+		Assertions.assertFalse(DigestVerifier.checkResponse("GET", ah, null, null));
+	}
+
+	@Test
+	void testSameAsDigestAuthentication() {
+		byte[] body = "v=0\r\n".getBytes();
+		byte[] ha1 = DigestVerifier.ha1("alice", "example.com", "secret");
+		for (String algorithm : new String[] { null, "MD5", "MD5-sess" }) {
+			for (String qop : new String[] { null, "auth", "auth-int" }) {
+				WwwAuthenticateHeader wah = new WwwAuthenticateHeader("Digest");
+				wah.addRealmParam("example.com");
+				wah.addNonceParam("5f3c1a2b");
+				if (algorithm != null) {
+					wah.addAlgorithParam(algorithm);
+				}
+				AuthorizationHeader ah = new DigestAuthentication("INVITE", "sip:bob@example.com", wah, qop, null, 1,
+						body, "alice", "secret").getAuthorizationHeader();
+
+				String test = algorithm + "/" + qop;
+				Assertions.assertTrue(DigestVerifier.checkResponse("INVITE", ah, body, ha1), test);
+				Assertions.assertFalse(DigestVerifier.checkResponse("INVITE", ah, body,
+						DigestVerifier.ha1("alice", "example.com", "Secret")), test);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.sip.message;
+
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test for {@link BasicSipMessage#writeTo(ByteBuffer)}.
+ */
+@SuppressWarnings("javadoc")
+class TestSipMessageWriteTo {
+
+	private static final String MESSAGE = "MESSAGE sip:bob@127.0.0.1 SIP/2.0\r\n"
+			+ "Via: SIP/2.0/UDP 127.0.0.1:5060;branch=z9hG4bK1\r\n" + "From: <sip:alice@127.0.0.1>;tag=1\r\n"
+			+ "To: <sip:bob@127.0.0.1>\r\n" + "Call-ID: 1@test\r\n" + "CSeq: 1 MESSAGE\r\n"
+			+ "Content-Type: text/plain\r\n" + "Content-Length: 5\r\n\r\n" + "Hello";
+
+	@Test
+	void testSameAsBytes() {
+		SipMessage msg = new SipMessage(MESSAGE);
+		byte[] expected = msg.getBytes();
+
+		for (ByteBuffer buffer : new ByteBuffer[] { ByteBuffer.allocate(4096), ByteBuffer.allocateDirect(4096) }) {
+			buffer.put((byte) 'x');
+			Assertions.assertTrue(msg.writeTo(buffer));
+			buffer.flip();
+			Assertions.assertEquals('x', buffer.get());
+
+			byte[] written = new byte[buffer.remaining()];
+			buffer.get(written);
+			Assertions.assertArrayEquals(expected, written);
+		}
+	}
+
+	@Test
+	void testOverflow() {
+		SipMessage msg = new SipMessage(MESSAGE);
+		int length = msg.getBytes().length;
+
+		// Neither the header nor the body fit.
+		for (int size : new int[] { 10, length - 1 }) {
+			ByteBuffer buffer = ByteBuffer.allocate(size);
+			buffer.put((byte) 'x');
+			Assertions.assertFalse(msg.writeTo(buffer));
+			Assertions.assertEquals(1, buffer.position());
+		}
+
+		ByteBuffer exact = ByteBuffer.allocate(length);
+		Assertions.assertTrue(msg.writeTo(exact));
+		Assertions.assertFalse(exact.hasRemaining());
+	}
+
+}
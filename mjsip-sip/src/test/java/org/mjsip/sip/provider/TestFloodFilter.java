@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.sip.provider;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mjsip.metrics.MetricsRegistry;
+
+/**
+ * Test for {@link FloodFilter}.
+ */
+@SuppressWarnings("javadoc")
+class TestFloodFilter {
+
+	private static final byte[] OPTIONS = bytes("OPTIONS sip:bob@example.com SIP/2.0\r\nVia: x\r\n\r\n");
+
+	private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	@Test
+	void testFirstLine() {
+		Assertions.assertTrue(valid("INVITE sip:bob@example.com SIP/2.0\r\n"));
+		Assertions.assertTrue(valid("X-CUSTOM.method sip:bob@example.com sip/2.0\r\n"));
+		Assertions.assertTrue(valid("SIP/2.0 200 OK\r\n"));
+		Assertions.assertTrue(valid("SIP/2.0 503\r\n"));
+		Assertions.assertTrue(valid("\r\n"));
+		Assertions.assertTrue(valid("\r\n\r\n"));
+
+		Assertions.assertFalse(valid(""));
+		Assertions.assertFalse(valid("GET / HTTP/1.1\r\n"));
+		Assertions.assertFalse(valid("INVITE sip:bob@example.com\r\n"));
+		Assertions.assertFalse(valid("INVITE  SIP/2.0\r\n"));
+		Assertions.assertFalse(valid("INVITE sip:bob@example.com SIP/2.0"));
+		Assertions.assertFalse(valid("INV(TE sip:bob@example.com SIP/2.0\r\n"));
+		Assertions.assertFalse(valid("SIP/2.0 20 OK\r\n"));
+		Assertions.assertFalse(valid("SIP/2.0 2000 OK\r\n"));
+		Assertions.assertFalse(valid("\r\nxx"));
+		Assertions.assertFalse(valid("INVITE sip:" + "x".repeat(FloodFilter.MAX_FIRST_LINE) + " SIP/2.0\r\n"));
+
+		byte[] framed = bytes("garbageSIP/2.0 200 OK\r\n");
+		Assertions.assertTrue(FloodFilter.isValidFirstLine(framed, 7, framed.length - 7));
+	}
+
+	@Test
+	void testRate() throws UnknownHostException {
+		MetricsRegistry registry = new MetricsRegistry();
+		FloodFilter filter = new FloodFilter(100, 5, 0, 1000, Set.of(), registry, "");
+		InetAddress source = InetAddress.getByName("10.0.0.1");
+		InetAddress other = InetAddress.getByName("10.0.0.2");
+
+		long now = 1000 * MS;
+		for (int n = 0; n < 5; n++) {
+			Assertions.assertTrue(accept(filter, source, now), "Burst " + n);
+		}
+		Assertions.assertFalse(accept(filter, source, now));
+		Assertions.assertTrue(accept(filter, other, now));
+
+		// One datagram per 10ms.
+		Assertions.assertTrue(accept(filter, source, now + 10 * MS));
+		Assertions.assertFalse(accept(filter, source, now + 10 * MS));
+
+		Assertions.assertEquals(Long.valueOf(2),
+			registry.snapshot().get("sip_flood_dropped_total{reason=\"rate\"}"));
+	}
+
+	@Test
+	void testBlock() throws UnknownHostException {
+		MetricsRegistry registry = new MetricsRegistry();
+		FloodFilter filter = new FloodFilter(100, 1, 3, 1000, Set.of(), registry, "");
+		InetAddress source = InetAddress.getByName("10.0.0.1");
+
+		long now = 1000 * MS;
+		Assertions.assertTrue(accept(filter, source, now));
+		for (int n = 0; n < 3; n++) {
+			Assertions.assertFalse(accept(filter, source, now));
+		}
+		Assertions.assertEquals(1, filter.getBlockedSources(now));
+
+		// Blocked although within rate.
+		Assertions.assertFalse(accept(filter, source, now + 500 * MS));
+		Assertions.assertTrue(accept(filter, source, now + 1001 * MS));
+		Assertions.assertEquals(0, filter.getBlockedSources(now + 1001 * MS));
+
+		Assertions.assertEquals(Long.valueOf(1), registry.snapshot().get("sip_flood_blocks_total"));
+		Assertions.assertEquals(Long.valueOf(1),
+			registry.snapshot().get("sip_flood_dropped_total{reason=\"blocked\"}"));
+	}
+
+	@Test
+	void testInvalidBlocks() throws UnknownHostException {
+		MetricsRegistry registry = new MetricsRegistry();
+		FloodFilter filter = new FloodFilter(1000, 100, 2, 1000, Set.of(), registry, "");
+		InetAddress source = InetAddress.getByName("10.0.0.1");
+		byte[] garbage = bytes("\u0000\u0001garbage");
+
+		long now = 1000 * MS;
+		Assertions.assertFalse(filter.accept(source, garbage, 0, garbage.length, now));
+		Assertions.assertFalse(filter.accept(source, garbage, 0, garbage.length, now));
+		Assertions.assertFalse(accept(filter, source, now));
+		Assertions.assertEquals(Long.valueOf(2),
+			registry.snapshot().get("sip_flood_dropped_total{reason=\"invalid\"}"));
+	}
+
+	@Test
+	void testExempt() throws UnknownHostException {
+		InetAddress peer = InetAddress.getByName("10.0.0.1");
+		FloodFilter filter = new FloodFilter(1, 1, 1, 1000, Set.of(peer), new MetricsRegistry(), "");
+		for (int n = 0; n < 100; n++) {
+			Assertions.assertTrue(accept(filter, peer, 0));
+		}
+	}
+
+	@Test
+	void testHashCollision() throws UnknownHostException {
+		FloodFilter filter = new FloodFilter(100, 1, 0, 1000, Set.of(), new MetricsRegistry(), "");
+
+		// The hash code of an IPv6 address is the sum of its 32 bit words, swapping words collides.
+		InetAddress source = InetAddress.getByName("2001:db8::1");
+		InetAddress other = InetAddress.getByName("0:1::2001:db8");
+		Assertions.assertEquals(source.hashCode(), other.hashCode());
+		Assertions.assertNotEquals(source, other);
+
+		long now = 1000 * MS;
+		Assertions.assertTrue(accept(filter, source, now));
+		Assertions.assertFalse(accept(filter, source, now));
+		Assertions.assertTrue(accept(filter, other, now));
+		Assertions.assertFalse(accept(filter, other, now));
+
+		// An IPv4 address does not share a slot with an IPv6 address of the same value.
+		InetAddress v4 = InetAddress.getByName("10.0.0.1");
+		InetAddress v6 = InetAddress.getByName("::a00:1");
+		Assertions.assertTrue(accept(filter, v4, now));
+		Assertions.assertTrue(accept(filter, v6, now));
+	}
+
+	@Test
+	void testManySources() throws UnknownHostException {
+		FloodFilter filter = new FloodFilter(1, 1, 0, 1000, Set.of(), new MetricsRegistry(), "");
+		long now = 1000 * MS;
+		for (int n = 0; n < 200_000; n++) {
+			InetAddress source = InetAddress.getByAddress(new byte[] { 10, (byte) (n >> 16), (byte) (n >> 8), (byte) n });
+			Assertions.assertTrue(accept(filter, source, now + n * MS));
+		}
+	}
+
+	private static boolean accept(FloodFilter filter, InetAddress source, long now) {
+		return filter.accept(source, OPTIONS, 0, OPTIONS.length, now);
+	}
+
+	private static boolean valid(String line) {
+		byte[] data = bytes(line);
+		return FloodFilter.isValidFirstLine(data, 0, data.length);
+	}
+
+	private static byte[] bytes(String str) {
+		return str.getBytes(StandardCharsets.ISO_8859_1);
+	}
+
+}
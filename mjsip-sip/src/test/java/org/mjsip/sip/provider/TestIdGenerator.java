@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.sip.provider;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test for {@link IdGenerator}.
+ */
+@SuppressWarnings("javadoc")
+class TestIdGenerator {
+
+	@Test
+	void testRandomHex() {
+		String id = IdGenerator.randomHex("z9hG4bK", 20);
+		Assertions.assertEquals(27, id.length());
+		Assertions.assertTrue(id.matches("z9hG4bK[0-9a-f]{20}"), id);
+	}
+
+	@Test
+	void testRandomDecimal() {
+		Assertions.assertTrue(IdGenerator.randomDecimal(12).matches("[0-9]{12}"));
+
+		String callId = IdGenerator.randomDecimal(20, '@', "example.com");
+		Assertions.assertTrue(callId.matches("[0-9]{20}@example\\.com"), callId);
+	}
+
+	@Test
+	void testUnique() {
+		Set<String> ids = new HashSet<>();
+		for (int n = 0; n < 10000; n++) {
+			Assertions.assertTrue(ids.add(IdGenerator.randomHex("", 12)));
+		}
+	}
+
+	@Test
+	void testStateless() {
+		String tag1 = IdGenerator.hashHex("", hash("call-1", "tag", 1), 16);
+		String tag2 = IdGenerator.hashHex("", hash("call-1", "tag", 1), 16);
+		Assertions.assertEquals(tag1, tag2);
+		Assertions.assertEquals(16, tag1.length());
+
+		Assertions.assertNotEquals(tag1, IdGenerator.hashHex("", hash("call-1", "tag", 2), 16));
+		Assertions.assertNotEquals(tag1, IdGenerator.hashHex("", hash("call-1t", "ag", 1), 16));
+	}
+
+	private static long hash(String callId, String tag, long cseq) {
+		long hash = IdGenerator.hashStart();
+		hash = IdGenerator.hash(hash, callId);
+		hash = IdGenerator.hash(hash, tag);
+		hash = IdGenerator.hash(hash, cseq);
+		return hash;
+	}
+
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.sip.provider;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mjsip.metrics.MetricsRegistry;
+import org.mjsip.time.ConfiguredScheduler;
+import org.mjsip.time.SchedulerConfig;
+import org.zoolu.net.SocketAddress;
+
+/**
+ * Test for {@link KeepAliveEngine}.
+ */
+@SuppressWarnings("javadoc")
+class TestKeepAliveEngine {
+
+	private static final String LOCALHOST = "127.0.0.1";
+
+	private SipProvider _sipProvider;
+
+	private DatagramSocket _peer1;
+
+	private DatagramSocket _peer2;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		int port;
+		try (DatagramSocket probe = new DatagramSocket(0, InetAddress.getByName(LOCALHOST))) {
+			port = probe.getLocalPort();
+		}
+		SipConfig sipConfig = new SipConfig();
+		sipConfig.setViaAddrIPv4(LOCALHOST);
+		sipConfig.setHostPort(port);
+		sipConfig.setTransportProtocols(new String[] { SipProvider.PROTO_UDP });
+		sipConfig.normalize();
+		_sipProvider = new SipProvider(sipConfig, new ConfiguredScheduler(new SchedulerConfig()),
+			new MetricsRegistry());
+
+		_peer1 = new DatagramSocket(0, InetAddress.getByName(LOCALHOST));
+		_peer1.setSoTimeout(5000);
+		_peer2 = new DatagramSocket(0, InetAddress.getByName(LOCALHOST));
+		_peer2.setSoTimeout(5000);
+	}
+
+	@AfterEach
+	void tearDown() {
+		_sipProvider.halt();
+		_peer1.close();
+		_peer2.close();
+	}
+
+	@Test
+	void testPeriodicPing() throws IOException {
+		KeepAliveEngine engine = engine(10);
+		engine.add(address(_peer1), 100);
+		engine.add(address(_peer2), 100);
+		Assertions.assertEquals(2, engine.size());
+
+		long last = 0;
+		for (int n = 0; n < 4; n++) {
+			Assertions.assertEquals(KeepAliveEngine.PING, receive(_peer1));
+			long now = System.currentTimeMillis();
+			if (n > 0) {
+				Assertions.assertTrue(now - last >= 70, "Interval too short: " + (now - last) + "ms");
+			}
+			last = now;
+		}
+		Assertions.assertEquals(KeepAliveEngine.PING, receive(_peer2));
+	}
+
+	@Test
+	void testIntervalLongerThanWheel() throws IOException {
+		// The wheel has 1024 slots, the interval spans more than one round.
+		KeepAliveEngine engine = engine(1);
+		engine.add(address(_peer1), 1500);
+
+		receive(_peer1);
+		long first = System.currentTimeMillis();
+		receive(_peer1);
+		long interval = System.currentTimeMillis() - first;
+		Assertions.assertTrue(interval >= 1400, "Sent before the interval elapsed: " + interval + "ms");
+	}
+
+	@Test
+	void testExpiry() throws IOException, InterruptedException {
+		KeepAliveEngine engine = engine(10);
+		KeepAliveEngine.Target target = engine.add(address(_peer1), 20);
+		target.setExpirationTime(50);
+
+		waitUntil(() -> !target.isRunning());
+		Assertions.assertEquals(0, engine.size());
+
+		// Drain tokens sent before expiry, no more tokens follow.
+		_peer1.setSoTimeout(200);
+		Assertions.assertThrows(SocketTimeoutException.class, () -> {
+			while (true) {
+				receive(_peer1);
+			}
+		});
+	}
+
+	@Test
+	void testPongKeepsAlive() throws IOException, InterruptedException {
+		KeepAliveEngine engine = engine(10);
+		engine.setDeadTime(300);
+		List<KeepAliveEngine.Target> dead = new CopyOnWriteArrayList<>();
+		engine.setListener((e, target) -> dead.add(target));
+
+		KeepAliveEngine.Target alive = engine.add(address(_peer1), 50);
+		KeepAliveEngine.Target silent = engine.add(address(_peer2), 50);
+
+		long stop = System.currentTimeMillis() + 1000;
+		while (System.currentTimeMillis() < stop) {
+			Assertions.assertEquals(KeepAliveEngine.PING, receive(_peer1));
+			engine.onReceived(LOCALHOST, _peer1.getLocalPort());
+		}
+
+		Assertions.assertEquals(List.of(silent), dead);
+		Assertions.assertFalse(silent.isRunning());
+		Assertions.assertTrue(alive.isRunning());
+		Assertions.assertEquals(1, engine.size());
+	}
+
+	@Test
+	void testPongThroughProvider() throws IOException, InterruptedException {
+		KeepAliveEngine.Target target = _sipProvider.keepAliveEngine().add(address(_peer1), 60000);
+		long before = target.getLastReceivedTime();
+
+		waitMillis(5);
+		send(_peer1, "\r\n");
+		waitUntil(() -> target.getLastReceivedTime() > before);
+	}
+
+	@Test
+	void testTargetsBehindSameAddress() throws IOException {
+		KeepAliveEngine engine = engine(1000);
+		KeepAliveEngine.Target target1 = engine.add(address(_peer1), 60000);
+		KeepAliveEngine.Target target2 = engine.add(address(_peer2), 60000);
+		long before1 = target1.getLastReceivedTime();
+		long before2 = target2.getLastReceivedTime();
+
+		waitMillis(5);
+		engine.onReceived(LOCALHOST, _peer2.getLocalPort());
+		Assertions.assertEquals(before1, target1.getLastReceivedTime());
+		Assertions.assertTrue(target2.getLastReceivedTime() > before2);
+
+		// Replacing a target stops the previous one.
+		KeepAliveEngine.Target replacement = engine.add(address(_peer1), 60000);
+		Assertions.assertFalse(target1.isRunning());
+		Assertions.assertEquals(2, engine.size());
+
+		// Moving a target to another port.
+		replacement.setDestSoAddress(new SocketAddress(LOCALHOST, 1));
+		long before = replacement.getLastReceivedTime();
+		waitMillis(5);
+		engine.onReceived(LOCALHOST, _peer1.getLocalPort());
+		Assertions.assertEquals(before, replacement.getLastReceivedTime());
+		engine.onReceived(LOCALHOST, 1);
+		Assertions.assertTrue(replacement.getLastReceivedTime() > before);
+
+		replacement.halt();
+		target2.halt();
+		Assertions.assertEquals(0, engine.size());
+	}
+
+	private KeepAliveEngine engine(long tick) {
+		return new KeepAliveEngine(_sipProvider, new SipKeepAlive.SipToken(KeepAliveEngine.PING), tick);
+	}
+
+	private static SocketAddress address(DatagramSocket peer) {
+		return new SocketAddress(LOCALHOST, peer.getLocalPort());
+	}
+
+	private static String receive(DatagramSocket peer) throws IOException {
+		DatagramPacket packet = new DatagramPacket(new byte[100], 100);
+		peer.receive(packet);
+		return new String(packet.getData(), 0, packet.getLength(), StandardCharsets.ISO_8859_1);
+	}
+
+	private void send(DatagramSocket peer, String data) throws IOException {
+		byte[] bytes = data.getBytes(StandardCharsets.ISO_8859_1);
+		peer.send(new DatagramPacket(bytes, bytes.length, InetAddress.getByName(LOCALHOST), _sipProvider.getPort()));
+	}
+
+	private static void waitUntil(java.util.function.BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (!condition.getAsBoolean()) {
+			Assertions.assertTrue(System.currentTimeMillis() < deadline, "Timeout.");
+			Thread.sleep(10);
+		}
+	}
+
+	private static void waitMillis(long millis) {
+		long until = System.currentTimeMillis() + millis;
+		while (System.currentTimeMillis() <= until) {
+			Thread.onSpinWait();
+		}
+	}
+
+}
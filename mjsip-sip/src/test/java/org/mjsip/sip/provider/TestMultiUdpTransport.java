@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.sip.provider;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mjsip.sip.message.SipMessage;
+import org.zoolu.net.IpAddress;
+import org.zoolu.net.SocketAddress;
+
+/**
+ * Test for {@link MultiUdpTransport}.
+ */
+@SuppressWarnings("javadoc")
+class TestMultiUdpTransport {
+
+	private static final IpAddress LOCALHOST = new IpAddress("127.0.0.1");
+
+	private MultiUdpTransport _transport;
+
+	private final Set<String> _threads = ConcurrentHashMap.newKeySet();
+
+	@BeforeEach
+	void setUp() throws IOException {
+		Assumptions.assumeTrue(MultiUdpTransport.isSupported());
+
+		_transport = new MultiUdpTransport(0, LOCALHOST, 4);
+		_transport.setListener(new SipTransportListener() {
+			@Override
+			public void onReceivedMessage(SipTransport transport, SipMessage msg) {
+				_threads.add(Thread.currentThread().getName());
+				SipMessage response = new SipMessage("SIP/2.0 200 OK\r\n" + headers(msg.getCSeqHeader().getSequenceNumber()));
+				try {
+					transport.sendMessage(response, new IpAddress(msg.getRemoteAddress()), msg.getRemotePort(), 0);
+				} catch (IOException ex) {
+					throw new RuntimeException(ex);
+				}
+			}
+
+			@Override
+			public void onIncomingTransportConnection(SipTransport transport, SocketAddress remote_soaddr) {
+				// Ignore.
+			}
+
+			@Override
+			public void onTransportConnectionTerminated(SipTransport transport, SocketAddress remote_soaddr,
+					Exception error) {
+				// Ignore.
+			}
+
+			@Override
+			public void onTransportTerminated(SipTransport transport, Exception error) {
+				// Ignore.
+			}
+		});
+	}
+
+	@AfterEach
+	void tearDown() {
+		if (_transport != null) {
+			_transport.halt();
+		}
+	}
+
+	@Test
+	void testRequestResponse() throws IOException {
+		Assertions.assertEquals(4, _transport.getSockets());
+		Assertions.assertNotEquals(0, _transport.getLocalPort());
+
+		for (int n = 1; n <= 20; n++) {
+			try (DatagramSocket client = new DatagramSocket(0, LOCALHOST.getInetAddress())) {
+				client.setSoTimeout(5000);
+				send(client, "OPTIONS sip:bob@127.0.0.1 SIP/2.0\r\n" + headers(n));
+
+				DatagramPacket reply = receive(client);
+				Assertions.assertEquals(_transport.getLocalPort(), reply.getPort());
+				SipMessage response = new SipMessage(reply.getData(), reply.getOffset(), reply.getLength());
+				Assertions.assertEquals(200, response.getStatusLine().getCode());
+				Assertions.assertEquals(n, response.getCSeqHeader().getSequenceNumber());
+			}
+		}
+
+		for (String name : _threads) {
+			Assertions.assertTrue(name.startsWith("SipUdp-" + _transport.getLocalPort() + "-"), name);
+		}
+	}
+
+	@Test
+	void testPing() throws IOException {
+		try (DatagramSocket client = new DatagramSocket(0, LOCALHOST.getInetAddress())) {
+			client.setSoTimeout(5000);
+			send(client, "\r\n\r\n");
+
+			DatagramPacket reply = receive(client);
+			Assertions.assertEquals("\r\n", new String(reply.getData(), reply.getOffset(), reply.getLength(),
+				StandardCharsets.ISO_8859_1));
+		}
+	}
+
+	@Test
+	void testHalt() throws IOException, InterruptedException {
+		int port = _transport.getLocalPort();
+		_transport.halt();
+		_transport = null;
+
+		// The port is free again.
+		Thread.sleep(100);
+		MultiUdpTransport other = new MultiUdpTransport(port, LOCALHOST, 1);
+		other.halt();
+	}
+
+	private void send(DatagramSocket client, String message) throws IOException {
+		byte[] data = message.getBytes(StandardCharsets.ISO_8859_1);
+		client.send(new DatagramPacket(data, data.length, InetAddress.getByName("127.0.0.1"), _transport.getLocalPort()));
+	}
+
+	private static DatagramPacket receive(DatagramSocket client) throws IOException {
+		DatagramPacket reply = new DatagramPacket(new byte[4096], 4096);
+		client.receive(reply);
+		return reply;
+	}
+
+	static String headers(long cseq) {
+		return "Via: SIP/2.0/UDP 127.0.0.1:5060;branch=z9hG4bK" + cseq + "\r\n" + "From: <sip:alice@127.0.0.1>;tag=1\r\n"
+				+ "To: <sip:bob@127.0.0.1>\r\n" + "Call-ID: " + cseq + "@test\r\n" + "CSeq: " + cseq + " OPTIONS\r\n"
+				+ "Content-Length: 0\r\n\r\n";
+	}
+
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.sip.provider;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mjsip.sip.message.SipMessage;
+
+/**
+ * Test for {@link OverloadControl}.
+ */
+@SuppressWarnings("javadoc")
+class TestOverloadControl {
+
+	private static final String INVITE = "INVITE sip:bob@example.com SIP/2.0\r\n"
+			+ "Via: SIP/2.0/UDP 10.0.0.1:5060;branch=z9hG4bK776asdhds;rport=5060;received=10.0.0.1\r\n"
+			+ "Via: SIP/2.0/UDP 10.0.0.2:5060;branch=z9hG4bK1234\r\n"
+			+ "Max-Forwards: 70\r\n"
+			+ "To: Bob <sip:bob@example.com>\r\n"
+			+ "From: Alice <sip:alice@example.com>;tag=1928301774\r\n"
+			+ "Call-ID: a84b4c76e66710@10.0.0.1\r\n"
+			+ "CSeq: 314159 INVITE\r\n"
+			+ "Contact: <sip:alice@10.0.0.1>\r\n"
+			+ "Content-Length: 0\r\n"
+			+ "\r\n";
+
+	@Test
+	void testInitialRequest() {
+		Assertions.assertTrue(OverloadControl.isInitialRequest(new SipMessage(INVITE)));
+		Assertions.assertFalse(OverloadControl.isInitialRequest(
+			new SipMessage(INVITE.replace("To: Bob <sip:bob@example.com>", "To: Bob <sip:bob@example.com>;tag=x"))));
+		Assertions.assertFalse(OverloadControl.isInitialRequest(
+			new SipMessage(INVITE.replace("INVITE", "CANCEL"))));
+		Assertions.assertFalse(OverloadControl.isInitialRequest(
+			new SipMessage("SIP/2.0 200 OK\r\n" + INVITE.substring(INVITE.indexOf("\r\n") + 2))));
+	}
+
+	@Test
+	void testRejection() {
+		OverloadControl control = new OverloadControl(0.9, 0, 1, 10, "test", 0);
+		SipMessage resp = control.createRejection(new SipMessage(INVITE));
+
+		Assertions.assertTrue(resp.isResponse());
+		Assertions.assertEquals(503, resp.getStatusLine().getCode());
+		Assertions.assertEquals(2, resp.getVias().size());
+		Assertions.assertEquals("z9hG4bK776asdhds", resp.getViaHeader().getBranch());
+		Assertions.assertEquals("1928301774", resp.getFromHeader().getTag());
+		Assertions.assertTrue(resp.getToHeader().hasTag());
+		Assertions.assertEquals("a84b4c76e66710@10.0.0.1", resp.getCallIdHeader().getCallId());
+		Assertions.assertEquals("INVITE", resp.getCSeqHeader().getMethod());
+		Assertions.assertEquals("test", resp.getServerHeader().getInfo());
+		Assertions.assertEquals(0, resp.getContentLengthHeader().getContentLength());
+
+		int retryAfter = Integer.parseInt(resp.getHeader("Retry-After").getValue());
+		Assertions.assertTrue(retryAfter >= 10 && retryAfter <= 20, "Retry-After: " + retryAfter);
+
+		String ack = INVITE.replace("INVITE", "ACK").replace("To: Bob <sip:bob@example.com>",
+			"To: Bob <sip:bob@example.com>;tag=" + resp.getToHeader().getTag());
+		Assertions.assertTrue(control.isRejectionAck(new SipMessage(ack)));
+		Assertions.assertFalse(control.isRejectionAck(new SipMessage(ack.replace(";tag=", ";tag=0"))));
+	}
+
+	@Test
+	void testOccupancy() {
+		long interval = OverloadControl.INTERVAL;
+		OverloadControl control = new OverloadControl(0.5, 0, 1, 5, null, 0);
+		Assertions.assertEquals(1.0, control.getAdmitRatio());
+
+		// Fully busy: Admitted fraction halves.
+		long now = busy(control, 0, interval, interval);
+		Assertions.assertEquals(1.0, control.getOccupancy(), 0.001);
+		Assertions.assertEquals(0.5, control.getAdmitRatio(), 0.001);
+
+		now = busy(control, now, interval, interval);
+		Assertions.assertEquals(0.25, control.getAdmitRatio(), 0.001);
+
+		// Lower bound.
+		for (int n = 0; n < 20; n++) {
+			now = busy(control, now, interval, interval);
+		}
+		Assertions.assertEquals(OverloadControl.MIN_ADMIT, control.getAdmitRatio(), 0.0001);
+
+		// Idle: Admitted fraction recovers with bounded increase.
+		now = busy(control, now, interval, 0);
+		Assertions.assertEquals(0.0, control.getOccupancy(), 0.001);
+		Assertions.assertEquals(OverloadControl.MIN_ADMIT * OverloadControl.MAX_INCREASE, control.getAdmitRatio(),
+			0.0001);
+		for (int n = 0; n < 10; n++) {
+			now = busy(control, now, interval, interval / 10);
+		}
+		Assertions.assertEquals(1.0, control.getAdmitRatio());
+		Assertions.assertTrue(control.admit());
+	}
+
+	@Test
+	void testMaxPending() {
+		OverloadControl control = new OverloadControl(0, 2, 1, 5, null, 0);
+		control.enter(1);
+		control.enter(2);
+		Assertions.assertTrue(control.admit());
+		control.enter(3);
+		Assertions.assertEquals(3, control.getPending());
+		Assertions.assertFalse(control.admit());
+		control.exit(3, 4);
+		Assertions.assertTrue(control.admit());
+	}
+
+	/**
+	 * Simulates an interval in which dispatching took the given time and a message that starts
+	 * the next interval.
+	 */
+	private static long busy(OverloadControl control, long now, long interval, long busy) {
+		if (busy > 0) {
+			control.enter(now);
+			control.exit(now, now + busy);
+		}
+		long next = now + interval;
+		control.enter(next);
+		control.exit(next, next);
+		return next;
+	}
+
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.sip.provider;
+
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mjsip.metrics.MetricsRegistry;
+import org.mjsip.sip.message.SipMessage;
+import org.mjsip.sip.message.SipMethods;
+import org.mjsip.time.ConfiguredScheduler;
+import org.mjsip.time.SchedulerConfig;
+
+/**
+ * Test for {@link SipProvider}.
+ */
+@SuppressWarnings("javadoc")
+class TestSipProvider {
+
+	private static final String LOCALHOST = "127.0.0.1";
+
+	private MetricsRegistry _registry;
+
+	private SipProvider _sipProvider;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		int port;
+		try (DatagramSocket probe = new DatagramSocket(0, InetAddress.getByName(LOCALHOST))) {
+			port = probe.getLocalPort();
+		}
+		SipConfig sipConfig = new SipConfig();
+		sipConfig.setViaAddrIPv4(LOCALHOST);
+		sipConfig.setHostPort(port);
+		sipConfig.setTransportProtocols(new String[] { SipProvider.PROTO_UDP });
+		sipConfig.normalize();
+		_registry = new MetricsRegistry();
+		_sipProvider = new SipProvider(sipConfig, new ConfiguredScheduler(new SchedulerConfig()), _registry);
+	}
+
+	@AfterEach
+	void tearDown() {
+		_sipProvider.halt();
+	}
+
+	@Test
+	void testListenerErrorIsNoParseError() {
+		_sipProvider.addSelectiveListener(SipId.createMethodId(SipMethods.OPTIONS), (provider, msg) -> {
+			throw new IllegalStateException("Listener failure.");
+		});
+
+		_sipProvider.onReceivedMessage(null, received("OPTIONS sip:bob@127.0.0.1 SIP/2.0\r\n"
+			+ "Via: SIP/2.0/UDP 127.0.0.1:5070;branch=z9hG4bK1\r\n"
+			+ "From: <sip:alice@127.0.0.1>;tag=1\r\n"
+			+ "To: <sip:bob@127.0.0.1>\r\n"
+			+ "Call-ID: 1@test\r\n"
+			+ "CSeq: 1 OPTIONS\r\n"
+			+ "Content-Length: 0\r\n\r\n"));
+
+		Assertions.assertEquals(1, metric("sip_listener_errors_total"));
+		Assertions.assertEquals(0, metric("sip_messages_discarded_total", SipMetrics.PARSE_ERROR));
+	}
+
+	@Test
+	void testParseError() {
+		_sipProvider.onReceivedMessage(null, received("OPTIONS sip:bob@127.0.0.1 SIP/2.0\r\n"
+			+ "Via: SIP/2.0/UDP 127.0.0.1:5070;branch=z9hG4bK1\r\n"
+			+ "Via: SIP/2.0/UDP \r\n"
+			+ "CSeq: x\r\n"
+			+ "Content-Length: 0\r\n\r\n"));
+
+		Assertions.assertEquals(0, metric("sip_listener_errors_total"));
+		Assertions.assertEquals(1, metric("sip_messages_discarded_total", SipMetrics.PARSE_ERROR));
+	}
+
+	private static SipMessage received(String text) {
+		SipMessage result = new SipMessage(text);
+		result.setRemoteAddress(LOCALHOST);
+		result.setRemotePort(5070);
+		return result;
+	}
+
+	private long metric(String name) {
+		return sample(name, _sipProvider.metrics().getLabels());
+	}
+
+	private long metric(String name, String reason) {
+		return sample(name, MetricsRegistry.addLabels(_sipProvider.metrics().getLabels(), "reason", reason));
+	}
+
+	private long sample(String name, String labels) {
+		Map<String, Long> snapshot = _registry.snapshot();
+		Long value = snapshot.get(name + "{" + labels + "}");
+		Assertions.assertNotNull(value, "No such metric: " + name);
+		return value.longValue();
+	}
+
+}
@@ -0,0 +1,316 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.sip.provider;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mjsip.net.dns.DnsClient;
+import org.mjsip.net.dns.DnsRecord;
+
+/**
+ * Test for {@link SipResolver} against a local stub name server.
+ */
+@SuppressWarnings("javadoc")
+class TestSipResolver {
+
+	private StubDnsServer _server;
+
+	private SipResolver _resolver;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		_server = new StubDnsServer();
+		_server.add("_sip._udp.example.com", DnsRecord.srv("_sip._udp.example.com", 300, 20, 0, 5080, "b.example.com"));
+		_server.add("_sip._udp.example.com", DnsRecord.srv("_sip._udp.example.com", 300, 10, 0, 5070, "a.example.com"));
+		_server.add("a.example.com", DnsRecord.address("a.example.com", 300, InetAddress.getByName("192.0.2.1")));
+		_server.add("b.example.com", DnsRecord.address("b.example.com", 300, InetAddress.getByName("192.0.2.2")));
+		_server.add("b.example.com", DnsRecord.address("b.example.com", 300, InetAddress.getByName("192.0.2.3")));
+		_server.add("c.example.com", DnsRecord.address("c.example.com", 300, InetAddress.getByName("192.0.2.4")));
+		_server.add("d.example.com", DnsRecord.address("d.example.com", 300, InetAddress.getByName("2001:db8::1")));
+		_server.add("slow.example.com", DnsRecord.address("slow.example.com", 300, InetAddress.getByName("192.0.2.5")));
+		_server.silent("_sip._udp.slow.example.com");
+		_server.start();
+
+		DnsClient dns = new DnsClient(Collections.singletonList(_server.getAddress()), 200, 1);
+		_resolver = new SipResolver(dns, 5060, 5061, 30000, 60000);
+	}
+
+	@AfterEach
+	void tearDown() {
+		_resolver.halt();
+		_server.close();
+	}
+
+	@Test
+	void testSrv() throws Exception {
+		Assertions.assertNull(_resolver.resolveCached("example.com", 0, "udp"));
+
+		List<SipResolver.Target> targets = _resolver.resolve("example.com", 0, "udp").get();
+		Assertions.assertEquals("[udp:192.0.2.1:5070, udp:192.0.2.2:5080, udp:192.0.2.3:5080]", targets.toString());
+		Assertions.assertEquals(3, _server.getQueries());
+
+		// Now answered from the cache.
+		Assertions.assertEquals(targets.toString(), String.valueOf(_resolver.resolveCached("example.com", 0, "udp")));
+		Assertions.assertEquals(3, _server.getQueries());
+		Assertions.assertEquals(3, _resolver.getQueries());
+		Assertions.assertEquals(0, _resolver.getQueryFailures());
+		Assertions.assertTrue(_resolver.getCacheHits() >= 3);
+	}
+
+	@Test
+	void testExplicitPort() throws Exception {
+		List<SipResolver.Target> targets = _resolver.resolve("a.example.com", 5090, "tcp").get();
+		Assertions.assertEquals("[tcp:192.0.2.1:5090]", targets.toString());
+		Assertions.assertEquals(1, _server.getQueries("a.example.com"));
+		Assertions.assertEquals(0, _server.getQueries("_sip._tcp.a.example.com"));
+	}
+
+	@Test
+	void testNoSrv() throws Exception {
+		Assertions.assertEquals("[udp:192.0.2.4:5060]", _resolver.resolve("c.example.com", 0, "udp").get().toString());
+		Assertions.assertEquals("[tls:192.0.2.4:5061]", _resolver.resolve("c.example.com", 0, "tls").get().toString());
+		Assertions.assertEquals(1, _server.getQueries("_sips._tcp.c.example.com"));
+
+		// Negative answers are cached.
+		_resolver.resolve("c.example.com", 0, "udp").get();
+		Assertions.assertEquals(1, _server.getQueries("_sip._udp.c.example.com"));
+	}
+
+	@Test
+	void testIpv6() throws Exception {
+		List<SipResolver.Target> targets = _resolver.resolve("d.example.com", 5060, "udp").get();
+		Assertions.assertEquals(1, targets.size());
+		Assertions.assertEquals(InetAddress.getByName("2001:db8::1"), targets.get(0).getAddress().getInetAddress());
+	}
+
+	@Test
+	void testSystemFallback() throws Exception {
+		List<SipResolver.Target> targets = _resolver.resolve("localhost", 5060, "udp").get();
+		Assertions.assertFalse(targets.isEmpty());
+		Assertions.assertTrue(targets.get(0).getAddress().getInetAddress().isLoopbackAddress());
+	}
+
+	@Test
+	void testLiteral() {
+		Assertions.assertEquals("[udp:192.0.2.9:5060]", String.valueOf(_resolver.resolveCached("192.0.2.9", 0, "udp")));
+		Assertions.assertEquals("[tls:192.0.2.9:5061]", String.valueOf(_resolver.resolveCached("192.0.2.9", 0, "tls")));
+		Assertions.assertEquals(1, _resolver.resolveCached("[2001:db8::2]", 5062, "udp").size());
+		Assertions.assertEquals(0, _server.getQueries());
+	}
+
+	@Test
+	void testTimeout() throws Exception {
+		List<SipResolver.Target> targets = _resolver.resolve("slow.example.com", 0, "udp").get();
+		Assertions.assertEquals("[udp:192.0.2.5:5060]", targets.toString());
+		Assertions.assertEquals(1, _resolver.getQueryFailures());
+
+		// The failure is remembered.
+		_resolver.resolve("slow.example.com", 0, "udp").get();
+		Assertions.assertEquals(1, _resolver.getQueryFailures());
+	}
+
+	@Test
+	void testBlacklist() throws Exception {
+		List<SipResolver.Target> targets = _resolver.resolve("example.com", 0, "udp").get();
+		_resolver.markFailed(targets.get(0));
+		Assertions.assertTrue(_resolver.isBlacklisted(targets.get(0)));
+
+		Assertions.assertEquals("[udp:192.0.2.2:5080, udp:192.0.2.3:5080, udp:192.0.2.1:5070]",
+				String.valueOf(_resolver.resolveCached("example.com", 0, "udp")));
+	}
+
+	@Test
+	void testServiceOrder() {
+		List<DnsRecord> services = new ArrayList<>();
+		services.add(DnsRecord.srv("s", 60, 2, 0, 3, "c"));
+		services.add(DnsRecord.srv("s", 60, 1, 0, 1, "a"));
+		services.add(DnsRecord.srv("s", 60, 1, 100, 2, "b"));
+
+		int bFirst = 0;
+		for (int n = 0; n < 1000; n++) {
+			List<DnsRecord> ordered = SipResolver.orderServices(services);
+			Assertions.assertEquals("c", ordered.get(2).getTarget());
+			if (ordered.get(0).getTarget().equals("b")) {
+				bFirst++;
+			}
+		}
+		// The zero weight record is only selected first by chance.
+		Assertions.assertTrue(bFirst > 900, "Weighted selection: " + bFirst);
+	}
+
+	/**
+	 * Name server answering from a fixed table of records.
+	 */
+	static class StubDnsServer extends Thread {
+
+		private final DatagramSocket _socket;
+
+		private final Map<String, List<DnsRecord>> _records = new HashMap<>();
+
+		private final List<String> _silent = new ArrayList<>();
+
+		private final Map<String, AtomicInteger> _queries = new ConcurrentHashMap<>();
+
+		StubDnsServer() throws SocketException {
+			super("StubDnsServer");
+			setDaemon(true);
+			_socket = new DatagramSocket(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+		}
+
+		InetSocketAddress getAddress() {
+			return (InetSocketAddress) _socket.getLocalSocketAddress();
+		}
+
+		void add(String name, DnsRecord record) {
+			_records.computeIfAbsent(name, x -> new ArrayList<>()).add(record);
+		}
+
+		void silent(String name) {
+			_silent.add(name);
+		}
+
+		int getQueries() {
+			return _queries.values().stream().mapToInt(AtomicInteger::get).sum();
+		}
+
+		int getQueries(String name) {
+			AtomicInteger result = _queries.get(name);
+			return result == null ? 0 : result.get();
+		}
+
+		void close() {
+			_socket.close();
+		}
+
+		@Override
+		public void run() {
+			byte[] buffer = new byte[512];
+			while (true) {
+				DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+				try {
+					_socket.receive(packet);
+				} catch (IOException ex) {
+					return;
+				}
+
+				// Question starts after the 12 byte header.
+				StringBuilder name = new StringBuilder();
+				int pos = 12;
+				while (buffer[pos] != 0) {
+					int len = buffer[pos++];
+					if (name.length() > 0) {
+						name.append('.');
+					}
+					name.append(new String(buffer, pos, len, StandardCharsets.US_ASCII));
+					pos += len;
+				}
+				pos++;
+				int type = ((buffer[pos] & 0xFF) << 8) | (buffer[pos + 1] & 0xFF);
+				int questionEnd = pos + 4;
+
+				String qname = name.toString();
+				_queries.computeIfAbsent(qname, x -> new AtomicInteger()).incrementAndGet();
+				if (_silent.contains(qname)) {
+					continue;
+				}
+
+				List<DnsRecord> answers = new ArrayList<>();
+				for (DnsRecord record : _records.getOrDefault(qname, Collections.emptyList())) {
+					if (record.getType() == type) {
+						answers.add(record);
+					}
+				}
+				boolean exists = _records.containsKey(qname);
+
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				out.write(buffer, 0, 2);
+				writeShort(out, 0x8180 | (exists ? 0 : 3));
+				writeShort(out, 1);
+				writeShort(out, answers.size());
+				writeShort(out, answers.isEmpty() ? 1 : 0);
+				writeShort(out, 0);
+				out.write(buffer, 12, questionEnd - 12);
+				for (DnsRecord record : answers) {
+					// Owner name compressed as pointer to the question.
+					writeShort(out, 0xC00C);
+					writeShort(out, type);
+					writeShort(out, 1);
+					writeShort(out, 0);
+					writeShort(out, (int) record.getTtl());
+					ByteArrayOutputStream rdata = new ByteArrayOutputStream();
+					if (type == DnsRecord.SRV) {
+						writeShort(rdata, record.getPriority());
+						writeShort(rdata, record.getWeight());
+						writeShort(rdata, record.getPort());
+						writeName(rdata, record.getTarget());
+					} else {
+						byte[] address = record.getAddress().getAddress();
+						rdata.write(address, 0, address.length);
+					}
+					writeShort(out, rdata.size());
+					out.write(rdata.toByteArray(), 0, rdata.size());
+				}
+				if (answers.isEmpty()) {
+					// SOA with a negative TTL of 5 seconds.
+					writeName(out, "example.com");
+					writeShort(out, DnsRecord.SOA);
+					writeShort(out, 1);
+					writeShort(out, 0);
+					writeShort(out, 3600);
+					ByteArrayOutputStream rdata = new ByteArrayOutputStream();
+					writeName(rdata, "ns.example.com");
+					writeName(rdata, "admin.example.com");
+					for (int n = 0; n < 4; n++) {
+						writeShort(rdata, 0);
+						writeShort(rdata, 1);
+					}
+					writeShort(rdata, 0);
+					writeShort(rdata, 5);
+					writeShort(out, rdata.size());
+					out.write(rdata.toByteArray(), 0, rdata.size());
+				}
+
+				byte[] response = out.toByteArray();
+				try {
+					_socket.send(new DatagramPacket(response, response.length, packet.getSocketAddress()));
+				} catch (IOException ex) {
+					return;
+				}
+			}
+		}
+
+		private static void writeShort(ByteArrayOutputStream out, int value) {
+			out.write(value >> 8);
+			out.write(value);
+		}
+
+		private static void writeName(ByteArrayOutputStream out, String name) {
+			for (String label : name.split("\\.")) {
+				byte[] bytes = label.getBytes(StandardCharsets.US_ASCII);
+				out.write(bytes.length);
+				out.write(bytes, 0, bytes.length);
+			}
+			out.write(0);
+		}
+	}
+
+}
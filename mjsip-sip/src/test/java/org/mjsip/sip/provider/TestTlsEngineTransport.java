@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.sip.provider;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLContext;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mjsip.metrics.MetricsRegistry;
+import org.mjsip.sip.message.SipMessage;
+import org.zoolu.net.IpAddress;
+import org.zoolu.net.SocketAddress;
+
+/**
+ * Test for {@link TlsEngineTransport}.
+ */
+@SuppressWarnings("javadoc")
+class TestTlsEngineTransport {
+
+	private static final char[] PASSWORD = "secret".toCharArray();
+
+	private static final IpAddress LOCALHOST = new IpAddress("127.0.0.1");
+
+	@TempDir
+	static Path _dir;
+
+	private static KeyStore _keyStore;
+
+	private MetricsRegistry _serverMetrics;
+
+	private TlsEngineTransport _server;
+
+	private TlsEngineTransport _client;
+
+	private Recorder _serverReceived;
+
+	private Recorder _clientReceived;
+
+	@BeforeAll
+	static void createKeys() throws Exception {
+		File file = _dir.resolve("keys.p12").toFile();
+		String keytool = System.getProperty("java.home") + File.separator + "bin" + File.separator + "keytool";
+		Process process = new ProcessBuilder(keytool, "-genkeypair", "-alias", "sip", "-keyalg", "EC", "-groupname",
+			"secp256r1", "-dname", "CN=localhost", "-validity", "1", "-storetype", "PKCS12", "-keystore",
+			file.getPath(), "-storepass", new String(PASSWORD), "-keypass", new String(PASSWORD))
+				.redirectErrorStream(true).start();
+		String output = new String(process.getInputStream().readAllBytes());
+		Assertions.assertEquals(0, process.waitFor(), output);
+
+		_keyStore = KeyStore.getInstance("PKCS12");
+		try (InputStream in = new FileInputStream(file)) {
+			_keyStore.load(in, PASSWORD);
+		}
+	}
+
+	@BeforeEach
+	void setUp() throws Exception {
+		_serverMetrics = new MetricsRegistry();
+		_server = new TlsEngineTransport(0, LOCALHOST, 10, context(), 100, 3600, 1, 0, _serverMetrics, "");
+		_client = new TlsEngineTransport(0, LOCALHOST, 10, context(), 100, 3600, 1, 0, new MetricsRegistry(), "");
+		_serverReceived = new Recorder();
+		_clientReceived = new Recorder();
+		_server.setListener(_serverReceived);
+		_client.setListener(_clientReceived);
+	}
+
+	@AfterEach
+	void tearDown() {
+		_client.halt();
+		_server.halt();
+	}
+
+	private static SSLContext context() throws Exception {
+		return TlsEngineTransport.createContext(_keyStore, PASSWORD, true);
+	}
+
+	@Test
+	void testExchange() throws Exception {
+		_client.sendMessage(options(1), LOCALHOST, _server.getLocalPort(), 0);
+
+		SipMessage request = _serverReceived.take();
+		Assertions.assertTrue(request.isOptions());
+		Assertions.assertEquals("tls", request.getTransportProtocol());
+
+		// Answer through the incoming connection.
+		SipMessage response = new SipMessage("SIP/2.0 200 OK\r\n" + headers(1));
+		_server.sendMessage(response, new IpAddress(request.getRemoteAddress()), request.getRemotePort(), 0);
+
+		SipMessage received = _clientReceived.take();
+		Assertions.assertEquals(200, received.getStatusLine().getCode());
+
+		// Large messages span several TLS records.
+		StringBuilder body = new StringBuilder();
+		for (int n = 0; n < 5000; n++) {
+			body.append("0123456789");
+		}
+		SipMessage large = new SipMessage("MESSAGE sip:bob@127.0.0.1 SIP/2.0\r\n" + headers(2, body.length())
+				+ body);
+		_client.sendMessage(large, LOCALHOST, _server.getLocalPort(), 0);
+		Assertions.assertEquals(body.toString(), _serverReceived.take().getStringBody());
+
+		Assertions.assertEquals(1, metric("sip_tls_handshakes_total{result=\"full\"}"));
+	}
+
+	@Test
+	void testResumption() throws Exception {
+		_client.sendMessage(options(1), LOCALHOST, _server.getLocalPort(), 0);
+		SipMessage request = _serverReceived.take();
+
+		// The response follows the session ticket in the stream.
+		_server.sendMessage(new SipMessage("SIP/2.0 200 OK\r\n" + headers(1)),
+			new IpAddress(request.getRemoteAddress()), request.getRemotePort(), 0);
+		_clientReceived.take();
+
+		_client.removeConnection(new ConnectionId(TlsEngineTransport.PROTO_TLS,
+			new SocketAddress(LOCALHOST, _server.getLocalPort())));
+
+		_client.sendMessage(options(2), LOCALHOST, _server.getLocalPort(), 0);
+		_serverReceived.take();
+
+		Assertions.assertEquals(1, metric("sip_tls_handshakes_total{result=\"full\"}"));
+		Assertions.assertEquals(1, metric("sip_tls_handshakes_total{result=\"resumed\"}"));
+		Assertions.assertEquals(0, metric("sip_tls_handshakes_active"));
+		Assertions.assertEquals(2, metric("sip_tls_handshake_microseconds_count"));
+	}
+
+	private long metric(String sample) {
+		Long value = _serverMetrics.snapshot().get(sample);
+		Assertions.assertNotNull(value, "No such metric: " + sample);
+		return value.longValue();
+	}
+
+	private static SipMessage options(int cseq) {
+		return new SipMessage("OPTIONS sip:bob@127.0.0.1 SIP/2.0\r\n" + headers(cseq));
+	}
+
+	private static String headers(int cseq) {
+		return headers(cseq, 0);
+	}
+
+	private static String headers(int cseq, int length) {
+		return "Via: SIP/2.0/TLS 127.0.0.1:5061;branch=z9hG4bK" + cseq + "\r\n" + "From: <sip:alice@127.0.0.1>;tag=1\r\n"
+				+ "To: <sip:bob@127.0.0.1>\r\n" + "Call-ID: " + cseq + "@test\r\n" + "CSeq: " + cseq + " OPTIONS\r\n"
+				+ "Content-Length: " + length + "\r\n\r\n";
+	}
+
+	private static class Recorder implements SipTransportListener {
+
+		private final BlockingQueue<SipMessage> _messages = new LinkedBlockingQueue<>();
+
+		@Override
+		public void onReceivedMessage(SipTransport transport, SipMessage msg) {
+			_messages.add(msg);
+		}
+
+		SipMessage take() throws InterruptedException {
+			SipMessage result = _messages.poll(10, TimeUnit.SECONDS);
+			Assertions.assertNotNull(result, "No message received.");
+			return result;
+		}
+
+		@Override
+		public void onIncomingTransportConnection(SipTransport transport, SocketAddress remote_soaddr) {
+			// Ignore.
+		}
+
+		@Override
+		public void onTransportConnectionTerminated(SipTransport transport, SocketAddress remote_soaddr,
+				Exception error) {
+			// Ignore.
+		}
+
+		@Override
+		public void onTransportTerminated(SipTransport transport, Exception error) {
+			// Ignore.
+		}
+	}
+
+}
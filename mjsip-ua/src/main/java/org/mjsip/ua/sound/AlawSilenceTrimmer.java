@@ -30,6 +30,12 @@ public class AlawSilenceTrimmer extends OutputStream {
 	private final int _bufferTime;
 	private final int _minSilenceTime;
 	
+	/**
+	 * Time of continuous silence after which {@link SilenceListener#onSilenceTimeout(long)} is
+	 * fired, <code>0</code> for no limit.
+	 */
+	private int _maxSilenceTime;
+	
 	private long _squareSum;
 	
 	/**
@@ -39,6 +45,12 @@ public class AlawSilenceTrimmer extends OutputStream {
 	
 	private int _silenceTime;
 	
+	/**
+	 * Whether {@link SilenceListener#onSilenceTimeout(long)} has been fired for the current
+	 * silence period.
+	 */
+	private boolean _timeout;
+	
 	/**
 	 * Whether the input is currently silent.
 	 * 
@@ -91,7 +103,7 @@ public class AlawSilenceTrimmer extends OutputStream {
 		
 		int paddingSamples = sampleRate * paddingTime / 1000;
 		
-		_buffer = new IntRingBuffer(bufferTime + paddingSamples);
+		_buffer = new IntRingBuffer(bufferSize + paddingSamples);
 		_bufferSize = bufferSize;
 		
 		
@@ -129,6 +141,31 @@ public class AlawSilenceTrimmer extends OutputStream {
 		return before;
 	}
 
+	/**
+	 * Sets the time of continuous silence after which the listener is informed through
+	 * {@link SilenceListener#onSilenceTimeout(long)}.
+	 * 
+	 * <p>
+	 * This allows stopping a live recording, e.g. when the caller left a voicemail but did not hang
+	 * up.
+	 * </p>
+	 *
+	 * @param maxSilenceTime
+	 *        The time in milliseconds, <code>0</code> for no limit.
+	 * @return This instance for call chaining.
+	 */
+	public AlawSilenceTrimmer setMaxSilenceTime(int maxSilenceTime) {
+		_maxSilenceTime = maxSilenceTime;
+		return this;
+	}
+
+	/**
+	 * Whether the input is currently considered silent.
+	 */
+	public boolean isSilence() {
+		return _silence;
+	}
+
 	/**
 	 * The limit of the square sum of a signal to be less than the given db value.
 	 *
@@ -176,6 +213,10 @@ public class AlawSilenceTrimmer extends OutputStream {
 					
 					_listener.onSilenceStarted(_clock);
 				}
+				if (_maxSilenceTime > 0 && _silenceTime >= _maxSilenceTime && !_timeout) {
+					_timeout = true;
+					_listener.onSilenceTimeout(_clock);
+				}
 			} else {
 				// Noise was read.
 				if (_silence) {
@@ -188,6 +229,7 @@ public class AlawSilenceTrimmer extends OutputStream {
 				forwardBuffer();
 				
 				_silenceTime = 0;
+				_timeout = false;
 			}
 			
 			_cnt = 0;
@@ -197,6 +239,13 @@ public class AlawSilenceTrimmer extends OutputStream {
 		_clock++;
 	}
 
+	@Override
+	public void write(byte[] buffer, int offset, int length) throws IOException {
+		for (int n = offset, stop = offset + length; n < stop; n++) {
+			write(buffer[n]);
+		}
+	}
+
 	private void forwardBuffer() throws IOException {
 		for (int n = _buffer.length(); n > 0; n--) {
 			_out.write(_buffer.read());
@@ -12,6 +12,19 @@ public interface SilenceListener {
 	
 	void onSilenceEnded(long clock);
 	
+	/**
+	 * Informs that silence has lasted longer than the configured maximum silence time.
+	 * 
+	 * <p>
+	 * The event is fired at most once per silence period.
+	 * </p>
+	 * 
+	 * @see AlawSilenceTrimmer#setMaxSilenceTime(int)
+	 */
+	default void onSilenceTimeout(long clock) {
+		// Ignore.
+	}
+	
 	/**
 	 * Creates a guard when the given listener is <code>null</code>.
 	 */
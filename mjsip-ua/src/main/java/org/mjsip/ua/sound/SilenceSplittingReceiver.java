@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.ua.sound;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+import org.mjsip.media.RtpStreamReceiver;
+import org.mjsip.media.RtpStreamReceiverListener;
+import org.mjsip.media.rx.AudioReceiver;
+import org.mjsip.media.rx.AudioRxHandle;
+import org.mjsip.media.rx.RtpAudioRxHandler;
+import org.mjsip.media.rx.RtpReceiverOptions;
+import org.mjsip.rtp.RtpPayloadFormat;
+import org.mjsip.sound.AudioFile;
+import org.slf4j.LoggerFactory;
+import org.zoolu.net.UdpSocket;
+import org.zoolu.sound.CodecType;
+import org.zoolu.util.Encoder;
+
+/**
+ * {@link AudioReceiver} recording an ALAW stream while the call is running, splitting the
+ * recording into parts separated by regions of silence.
+ *
+ * <p>
+ * In contrast to {@link WavFileSplitter}, silence detection is done on the fly in the receive path,
+ * so that no second pass over a finished recording is required. Optionally, the recording is
+ * stopped after a configurable time of continuous silence.
+ * </p>
+ *
+ * @see AlawSilenceTrimmer
+ */
+public class SilenceSplittingReceiver implements AudioReceiver {
+
+	private static final org.slf4j.Logger LOG = LoggerFactory.getLogger(SilenceSplittingReceiver.class);
+
+	private final File _file;
+
+	private int _bufferTime = 20;
+	private int _minSilenceTime = 1000;
+	private int _paddingTime = 500;
+	private double _silenceDb = -30;
+	private int _maxSilenceTime = 0;
+
+	private SilenceListener _listener;
+
+	/**
+	 * Creates a {@link SilenceSplittingReceiver}.
+	 *
+	 * @param file
+	 *        The WAV file name template. Parts are created in the same directory with the suffix
+	 *        <code>-part&lt;n&gt;</code>.
+	 */
+	public SilenceSplittingReceiver(File file) {
+		_file = file;
+	}
+
+	/**
+	 * Sets the length of the silence detection window in milliseconds.
+	 */
+	public SilenceSplittingReceiver setBufferTime(int bufferTime) {
+		_bufferTime = bufferTime;
+		return this;
+	}
+
+	/**
+	 * Sets the minimum time in milliseconds silence must be detected before a part is closed.
+	 */
+	public SilenceSplittingReceiver setMinSilenceTime(int minSilenceTime) {
+		_minSilenceTime = minSilenceTime;
+		return this;
+	}
+
+	/**
+	 * Sets the time of silence in milliseconds kept surrounding non-silent parts.
+	 */
+	public SilenceSplittingReceiver setPaddingTime(int paddingTime) {
+		_paddingTime = paddingTime;
+		return this;
+	}
+
+	/**
+	 * Sets the decibel value that is considered silence.
+	 */
+	public SilenceSplittingReceiver setSilenceDb(double silenceDb) {
+		_silenceDb = silenceDb;
+		return this;
+	}
+
+	/**
+	 * Sets the time in milliseconds of continuous silence after which the recording is stopped,
+	 * <code>0</code> for recording until the call ends.
+	 */
+	public SilenceSplittingReceiver setMaxSilenceTime(int maxSilenceTime) {
+		_maxSilenceTime = maxSilenceTime;
+		return this;
+	}
+
+	/**
+	 * Sets a listener that is additionally informed about silence events.
+	 */
+	public SilenceSplittingReceiver setListener(SilenceListener listener) {
+		_listener = listener;
+		return this;
+	}
+
+	@Override
+	public AudioRxHandle createReceiver(RtpReceiverOptions options, UdpSocket socket, AudioFormat audio_format,
+			CodecType codec, int payload_type, RtpPayloadFormat payloadFormat, int sample_rate, int channels,
+			Encoder additional_decoder, RtpStreamReceiverListener listener)
+			throws IOException, UnsupportedAudioFileException {
+		if (!CodecType.G711_ALAW.equals(codec) || channels != 1) {
+			throw new UnsupportedAudioFileException("Silence detection requires a mono ALAW stream, got: " + codec
+					+ " with " + channels + " channels.");
+		}
+
+		LOG.info("Storing audio stream in parts to {} format: {}", _file, audio_format);
+		Recording recording = new Recording(audio_format, sample_rate);
+		AlawSilenceTrimmer trimmer = recording.getTrimmer();
+		RtpStreamReceiver receiver = new RtpStreamReceiver(options, trimmer, additional_decoder, payloadFormat,
+				socket, listener) {
+			@Override
+			protected void onRtpStreamReceiverTerminated(Exception error) {
+				super.onRtpStreamReceiverTerminated(error);
+
+				try {
+					trimmer.close();
+					recording.close();
+				} catch (IOException ex) {
+					LOG.error("Closing audio stream failed: {}", _file, ex);
+				}
+			}
+		};
+		receiver.setClockRate(sample_rate);
+		recording.init(receiver::halt);
+		return new RtpAudioRxHandler(receiver);
+	}
+
+	/**
+	 * Creates the output file name for the part with the given ID.
+	 */
+	protected String getOutputFileName(int partId) {
+		String fileName = _file.getName();
+		int dot = fileName.lastIndexOf('.');
+		String baseName = dot < 0 ? fileName : fileName.substring(0, dot);
+		return baseName + "-part" + partId + ".wav";
+	}
+
+	/**
+	 * State of a single recording that switches output files on silence events.
+	 */
+	class Recording implements SilenceListener {
+
+		private final AudioFormat _format;
+
+		private final SilenceListener _delegate;
+
+		private final AlawSilenceTrimmer _trimmer;
+
+		private Runnable _halt;
+
+		private OutputStream _out;
+
+		private int _part = 1;
+
+		/**
+		 * Creates a {@link Recording}.
+		 *
+		 * @param format
+		 *        The format of the written parts.
+		 * @param sampleRate
+		 *        Number of samples per second in the received stream.
+		 */
+		Recording(AudioFormat format, int sampleRate) {
+			_format = format;
+			_delegate = SilenceListener.nonNull(_listener);
+			_trimmer = new AlawSilenceTrimmer(sampleRate, _bufferTime, _minSilenceTime, _paddingTime, _silenceDb,
+					null, this).setMaxSilenceTime(_maxSilenceTime);
+		}
+
+		/**
+		 * Sets the action stopping the receiver, when the maximum silence time is exceeded.
+		 */
+		void init(Runnable halt) {
+			_halt = halt;
+		}
+
+		/**
+		 * The stream the received ALAW samples are written to.
+		 */
+		AlawSilenceTrimmer getTrimmer() {
+			return _trimmer;
+		}
+
+		@Override
+		public void onSilenceEnded(long clock) {
+			try {
+				close();
+				File partFile = new File(_file.getAbsoluteFile().getParentFile(), getOutputFileName(_part++));
+				_out = AudioFile.getAudioFileOutputStream(partFile.getAbsolutePath(), _format);
+				_trimmer.setOut(_out);
+			} catch (IOException ex) {
+				LOG.error("Creating recording part failed: {}", _file, ex);
+				_trimmer.setOut(OutputStream.nullOutputStream());
+				_halt.run();
+			}
+			_delegate.onSilenceEnded(clock);
+		}
+
+		@Override
+		public void onSilenceStarted(long clock) {
+			try {
+				close();
+			} catch (IOException ex) {
+				LOG.error("Closing recording part failed: {}", _file, ex);
+			}
+			_delegate.onSilenceStarted(clock);
+		}
+
+		@Override
+		public void onSilenceTimeout(long clock) {
+			LOG.info("Stopping recording {} after {} ms of silence.", _file, _maxSilenceTime);
+			_halt.run();
+			_delegate.onSilenceTimeout(clock);
+		}
+
+		void close() throws IOException {
+			if (_out != null) {
+				_out.close();
+				_out = null;
+			}
+		}
+	}
+
+}
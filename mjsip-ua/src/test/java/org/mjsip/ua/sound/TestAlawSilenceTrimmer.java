@@ -3,8 +3,12 @@
  */
 package org.mjsip.ua.sound;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioInputStream;
@@ -14,6 +18,7 @@ import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.mjsip.sound.AudioFile;
 import org.mjsip.sound.ToneGenerator;
+import org.zoolu.sound.codec.G711;
 
 /**
  * Test for {@link AlawSilenceTrimmer}.
@@ -76,6 +81,46 @@ class TestAlawSilenceTrimmer {
 		return squareSum;
 	}
 	
+	/**
+	 * Test that continuous silence is reported once after the configured maximum silence time.
+	 */
+	@Test
+	void testSilenceTimeout() throws IOException {
+		int sampleRate = 8000;
+		List<Long> timeouts = new ArrayList<>();
+		SilenceListener listener = new SilenceListenerAdapter() {
+			@Override
+			public void onSilenceTimeout(long clock) {
+				timeouts.add(Long.valueOf(clock));
+			}
+		};
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (AlawSilenceTrimmer trimmer = new AlawSilenceTrimmer(sampleRate, 20, 100, 20, -30, out, listener)) {
+			trimmer.setMaxSilenceTime(1000);
+
+			ToneGenerator tone = new ToneGenerator(1000, 0.5, sampleRate, 2, ToneGenerator.Encoding.PCM_LINEAR_SIGNED);
+			byte[] noise = new byte[sampleRate / 2];
+			for (int n = 0; n < noise.length; n++) {
+				noise[n] = (byte) G711.linear2alaw((int) tone.nextSample());
+			}
+			byte[] silence = new byte[sampleRate * 2];
+			Arrays.fill(silence, (byte) G711.linear2alaw(0));
+
+			trimmer.write(noise);
+			trimmer.write(silence);
+			Assertions.assertEquals(1, timeouts.size());
+			Assertions.assertEquals(sampleRate / 2 + sampleRate - 1, timeouts.get(0).longValue());
+			Assertions.assertTrue(trimmer.isSilence());
+
+			trimmer.write(noise);
+			Assertions.assertFalse(trimmer.isSilence());
+			trimmer.write(silence);
+			Assertions.assertEquals(2, timeouts.size());
+		}
+		Assertions.assertTrue(out.size() >= sampleRate);
+	}
+
 	/**
 	 * Test silence trimming with a real world recording.
 	 */
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2023 Bernhard Haumacher et al. All Rights Reserved.
+ */
+package org.mjsip.ua.sound;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mjsip.sound.ToneGenerator;
+import org.zoolu.sound.codec.G711;
+
+/**
+ * Test for {@link SilenceSplittingReceiver}.
+ */
+@SuppressWarnings("javadoc")
+class TestSilenceSplittingReceiver {
+
+	private static final int SAMPLE_RATE = 8000;
+
+	@TempDir
+	File _dir;
+
+	@Test
+	void testSplitOnSilence() throws IOException, UnsupportedAudioFileException {
+		AtomicInteger timeouts = new AtomicInteger();
+		SilenceSplittingReceiver receiver = new SilenceSplittingReceiver(new File(_dir, "recording.wav"))
+			.setMinSilenceTime(100)
+			.setPaddingTime(20)
+			.setMaxSilenceTime(1000)
+			.setListener(new SilenceListenerAdapter() {
+				@Override
+				public void onSilenceTimeout(long clock) {
+					timeouts.incrementAndGet();
+				}
+			});
+
+		AudioFormat format = new AudioFormat(AudioFormat.Encoding.ALAW, SAMPLE_RATE, 8, 1, 1, SAMPLE_RATE, false);
+		SilenceSplittingReceiver.Recording recording = receiver.new Recording(format, SAMPLE_RATE);
+		AtomicInteger halted = new AtomicInteger();
+		recording.init(halted::incrementAndGet);
+
+		byte[] noise = noise(SAMPLE_RATE / 2);
+		byte[] pause = silence(SAMPLE_RATE / 2);
+
+		AlawSilenceTrimmer trimmer = recording.getTrimmer();
+		trimmer.write(noise);
+		trimmer.write(pause);
+		Assertions.assertTrue(new File(_dir, "recording-part1.wav").isFile());
+		Assertions.assertFalse(new File(_dir, "recording-part2.wav").exists());
+
+		trimmer.write(noise);
+		Assertions.assertEquals(0, halted.get());
+
+		// Silence exceeding the maximum silence time stops the receiver.
+		trimmer.write(silence(SAMPLE_RATE * 3 / 2));
+		Assertions.assertEquals(1, halted.get());
+		Assertions.assertEquals(1, timeouts.get());
+
+		trimmer.close();
+		recording.close();
+
+		assertPart("recording-part1.wav", noise.length);
+		assertPart("recording-part2.wav", noise.length);
+		Assertions.assertFalse(new File(_dir, "recording-part3.wav").exists());
+	}
+
+	private void assertPart(String name, int noiseSamples) throws IOException, UnsupportedAudioFileException {
+		try (AudioInputStream in = AudioSystem.getAudioInputStream(new File(_dir, name))) {
+			Assertions.assertEquals(AudioFormat.Encoding.ALAW, in.getFormat().getEncoding());
+
+			// The noise plus some padding, but not the complete silence.
+			long samples = in.getFrameLength();
+			Assertions.assertTrue(samples >= noiseSamples, name + ": " + samples);
+			Assertions.assertTrue(samples < noiseSamples + SAMPLE_RATE / 4, name + ": " + samples);
+		}
+	}
+
+	private static byte[] noise(int samples) {
+		ToneGenerator tone = new ToneGenerator(1000, 0.5, SAMPLE_RATE, 2, ToneGenerator.Encoding.PCM_LINEAR_SIGNED);
+		byte[] result = new byte[samples];
+		for (int n = 0; n < samples; n++) {
+			result[n] = (byte) G711.linear2alaw((int) tone.nextSample());
+		}
+		return result;
+	}
+
+	private static byte[] silence(int samples) {
+		byte[] result = new byte[samples];
+		Arrays.fill(result, (byte) G711.linear2alaw(0));
+		return result;
+	}
+
+}
@@ -10,7 +10,9 @@ import java.io.Writer;
 
 
 /** Packet logger.
+  * @deprecated Use org.mjsip.capture.PacketCapture, which writes pcap files or HEP from a background thread.
   */
+@Deprecated
 public class PacketLogger implements Closeable {
 	
 	/** Default logger */